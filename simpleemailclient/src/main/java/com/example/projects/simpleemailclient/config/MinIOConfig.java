@@ -2,12 +2,14 @@ package com.example.projects.simpleemailclient.config;
 
 import io.minio.MinioClient;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 /**
  * MinIO configuration for object storage
- * Stores MIME content and email attachments
+ * Stores MIME content and email attachments. The bucket names also name the local blob
+ * store's top-level directories; the client is only created when email.blob.backend=minio.
  */
 @Configuration
 public class MinIOConfig {
@@ -28,6 +30,7 @@ public class MinIOConfig {
     private String attachmentsBucket;
 
     @Bean
+    @ConditionalOnProperty(name = "email.blob.backend", havingValue = "minio", matchIfMissing = true)
     public MinioClient minioClient() {
         return MinioClient.builder()
             .endpoint(endpoint)
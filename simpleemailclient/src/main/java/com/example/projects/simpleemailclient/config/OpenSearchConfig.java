@@ -0,0 +1,55 @@
+package com.example.projects.simpleemailclient.config;
+
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.opensearch.client.RestClient;
+import org.opensearch.client.RestHighLevelClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * OpenSearch configuration for full-text and header search
+ * Only active when email.search.backend=opensearch
+ */
+@Configuration
+@ConditionalOnProperty(name = "email.search.backend", havingValue = "opensearch")
+public class OpenSearchConfig {
+
+    @Value("${opensearch.host:localhost}")
+    private String host;
+
+    @Value("${opensearch.port:9200}")
+    private int port;
+
+    @Value("${opensearch.scheme:http}")
+    private String scheme;
+
+    @Value("${opensearch.username:}")
+    private String username;
+
+    @Value("${opensearch.password:}")
+    private String password;
+
+    @Value("${opensearch.connect-timeout-ms:1000}")
+    private int connectTimeoutMs;
+
+    @Value("${opensearch.socket-timeout-ms:30000}")
+    private int socketTimeoutMs;
+
+    @Bean(destroyMethod = "close")
+    public RestHighLevelClient openSearchClient() {
+        BasicCredentialsProvider credentials = new BasicCredentialsProvider();
+        if (!username.isEmpty()) {
+            credentials.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
+        }
+        return new RestHighLevelClient(RestClient.builder(new HttpHost(host, port, scheme))
+            .setRequestConfigCallback(config -> config
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(socketTimeoutMs))
+            .setHttpClientConfigCallback(client -> client.setDefaultCredentialsProvider(credentials)));
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.projects.simpleemailclient.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Scheduling configuration for background maintenance jobs
+ * e.g. tombstone purging for mailbox delta sync
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,79 @@
+package com.example.projects.simpleemailclient.controller;
+
+import com.example.projects.simpleemailclient.dto.AttachmentDTO;
+import com.example.projects.simpleemailclient.model.Attachment;
+import com.example.projects.simpleemailclient.service.attachment.AttachmentContentStore;
+import com.example.projects.simpleemailclient.service.attachment.AttachmentUploader;
+import com.example.projects.simpleemailclient.service.attachment.ContentDownloader;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * REST Controller for message attachments
+ * Uploads are streamed to storage from the multipart part, never buffered whole, and
+ * downloads are streamed back with support for Range and conditional requests.
+ */
+@RestController
+@RequestMapping("/api/v1/users/{userId}/messages/{messageId}/attachments")
+@RequiredArgsConstructor
+@Slf4j
+public class AttachmentController {
+
+    private final AttachmentUploader attachmentUploader;
+    private final AttachmentContentStore attachmentContentStore;
+    private final ContentDownloader contentDownloader;
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<AttachmentDTO> uploadAttachment(@PathVariable Long userId,
+                                                          @PathVariable Long messageId,
+                                                          @RequestPart("file") MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            Attachment attachment = attachmentUploader.upload(userId, messageId, file.getOriginalFilename(),
+                file.getContentType(), in);
+            return ResponseEntity.status(HttpStatus.CREATED).body(mapToDTO(attachment));
+        }
+    }
+
+    @GetMapping("/{attachmentId}")
+    public ResponseEntity<StreamingResponseBody> downloadAttachment(
+            @PathVariable Long userId,
+            @PathVariable Long messageId,
+            @PathVariable Long attachmentId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange) {
+        return contentDownloader.attachment(userId, messageId, attachmentId, range, ifNoneMatch, ifRange)
+            .toResponseEntity();
+    }
+
+    @DeleteMapping("/{attachmentId}")
+    public ResponseEntity<Void> deleteAttachment(@PathVariable Long userId,
+                                                 @PathVariable Long messageId,
+                                                 @PathVariable Long attachmentId) {
+        attachmentContentStore.deleteAttachment(userId, messageId, attachmentId);
+        return ResponseEntity.noContent().build();
+    }
+
+    private AttachmentDTO mapToDTO(Attachment attachment) {
+        return AttachmentDTO.builder()
+            .id(attachment.getId())
+            .messageId(attachment.getMessageId())
+            .filename(attachment.getFilename())
+            .mimeType(attachment.getMimeType())
+            .sizeBytes(attachment.getSizeBytes())
+            .checksumSha256(attachment.getChecksumSha256())
+            .isInline(attachment.getIsInline())
+            .createdAt(attachment.getCreatedAt())
+            .build();
+    }
+}
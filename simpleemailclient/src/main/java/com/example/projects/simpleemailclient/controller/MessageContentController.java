@@ -0,0 +1,30 @@
+package com.example.projects.simpleemailclient.controller;
+
+import com.example.projects.simpleemailclient.service.attachment.ContentDownloader;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * REST Controller for a message's raw RFC 822 content
+ * Streamed from storage, with support for Range and conditional requests.
+ */
+@RestController
+@RequestMapping("/api/v1/users/{userId}/messages/{messageId}")
+@RequiredArgsConstructor
+public class MessageContentController {
+
+    private final ContentDownloader contentDownloader;
+
+    @GetMapping("/raw")
+    public ResponseEntity<StreamingResponseBody> downloadMessage(
+            @PathVariable Long userId,
+            @PathVariable Long messageId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange) {
+        return contentDownloader.message(userId, messageId, range, ifNoneMatch, ifRange).toResponseEntity();
+    }
+}
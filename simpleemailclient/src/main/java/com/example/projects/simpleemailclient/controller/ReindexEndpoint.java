@@ -0,0 +1,40 @@
+package com.example.projects.simpleemailclient.controller;
+
+import com.example.projects.simpleemailclient.dto.ReindexStatusDTO;
+import com.example.projects.simpleemailclient.service.search.ReindexPipeline;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint for search reindex jobs
+ * GET /actuator/reindex reports progress, POST starts a job, DELETE cancels it
+ */
+@Component
+@Endpoint(id = "reindex")
+@RequiredArgsConstructor
+public class ReindexEndpoint {
+
+    private final ReindexPipeline reindexPipeline;
+
+    @ReadOperation
+    public ReindexStatusDTO status() {
+        return reindexPipeline.status().orElse(null);
+    }
+
+    @WriteOperation
+    public Map<String, String> start() {
+        String jobId = reindexPipeline.start();
+        return jobId != null ? Map.of("jobId", jobId) : Map.of();
+    }
+
+    @DeleteOperation
+    public Map<String, Integer> cancel() {
+        return Map.of("cancelledShards", reindexPipeline.cancel());
+    }
+}
@@ -1,8 +1,13 @@
 package com.example.projects.simpleemailclient.controller;
 
+import com.example.projects.simpleemailclient.dto.RecipientSuggestionDTO;
 import com.example.projects.simpleemailclient.dto.UserDTO;
+import com.example.projects.simpleemailclient.dto.VirtualFolderDTO;
+import com.example.projects.simpleemailclient.model.SavedSearch;
 import com.example.projects.simpleemailclient.model.User;
 import com.example.projects.simpleemailclient.service.UserService;
+import com.example.projects.simpleemailclient.service.search.RecipientCompletionService;
+import com.example.projects.simpleemailclient.service.search.VirtualFolderService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -23,6 +28,8 @@ import java.util.stream.Collectors;
 public class UserController {
 
     private final UserService userService;
+    private final RecipientCompletionService recipientCompletionService;
+    private final VirtualFolderService virtualFolderService;
 
     @PostMapping
     public ResponseEntity<UserDTO> createUser(@RequestBody UserDTO userDTO) {
@@ -81,6 +88,35 @@ public class UserController {
         return ResponseEntity.ok(users);
     }
 
+    @GetMapping("/{id}/recipients")
+    public ResponseEntity<List<RecipientSuggestionDTO>> completeRecipients(@PathVariable Long id,
+                                                                           @RequestParam String prefix,
+                                                                           @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(recipientCompletionService.complete(id, prefix, limit));
+    }
+
+    @GetMapping("/{id}/folders")
+    public ResponseEntity<List<VirtualFolderDTO>> getVirtualFolders(@PathVariable Long id) {
+        List<VirtualFolderDTO> folders = virtualFolderService.getFolders(id).stream()
+            .map(this::mapToDTO)
+            .collect(Collectors.toList());
+
+        return ResponseEntity.ok(folders);
+    }
+
+    @PostMapping("/{id}/folders")
+    public ResponseEntity<VirtualFolderDTO> saveVirtualFolder(@PathVariable Long id,
+                                                              @RequestBody VirtualFolderDTO folderDTO) {
+        SavedSearch folder = virtualFolderService.saveFolder(id, folderDTO.getName(), folderDTO.getQuery());
+        return ResponseEntity.status(HttpStatus.CREATED).body(mapToDTO(folder));
+    }
+
+    @DeleteMapping("/{id}/folders/{folderId}")
+    public ResponseEntity<Void> deleteVirtualFolder(@PathVariable Long id, @PathVariable Long folderId) {
+        virtualFolderService.deleteFolder(id, folderId);
+        return ResponseEntity.noContent().build();
+    }
+
     // Simple mapping methods (in real app, use MapStruct)
     private UserDTO mapToDTO(User user) {
         Double usagePercentage = user.getQuotaBytes() > 0 
@@ -104,6 +140,16 @@ public class UserController {
             .build();
     }
 
+    private VirtualFolderDTO mapToDTO(SavedSearch folder) {
+        return VirtualFolderDTO.builder()
+            .id(folder.getId())
+            .name(folder.getName())
+            .query(folder.getQuery())
+            .unreadCount(folder.getUnreadCount())
+            .totalCount(folder.getTotalCount())
+            .build();
+    }
+
     private User mapToEntity(UserDTO dto) {
         return User.builder()
             .id(dto.getId())
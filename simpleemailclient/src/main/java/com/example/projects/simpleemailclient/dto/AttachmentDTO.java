@@ -0,0 +1,26 @@
+package com.example.projects.simpleemailclient.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for Attachment entity
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentDTO {
+    private Long id;
+    private Long messageId;
+    private String filename;
+    private String mimeType;
+    private Long sizeBytes;
+    private String checksumSha256;
+    private Boolean isInline;
+    private LocalDateTime createdAt;
+}
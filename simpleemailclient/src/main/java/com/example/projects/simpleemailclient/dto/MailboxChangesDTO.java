@@ -0,0 +1,28 @@
+package com.example.projects.simpleemailclient.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for modseq-based mailbox delta sync
+ * Carries only the message IDs that changed since the client's last known modseq
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailboxChangesDTO {
+    private Long mailboxId;
+    private Long sinceModseq;
+    private Long highestModseq;
+    private List<Long> added;
+    private List<Long> changed;
+    private List<Long> expunged;
+
+    // Set when sinceModseq predates the tombstone retention window
+    private Boolean fullResyncRequired;
+}
@@ -0,0 +1,18 @@
+package com.example.projects.simpleemailclient.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for a recipient autocomplete suggestion
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecipientSuggestionDTO {
+    private String address;
+    private String name;
+}
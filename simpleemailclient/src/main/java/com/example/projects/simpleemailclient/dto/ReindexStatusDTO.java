@@ -0,0 +1,34 @@
+package com.example.projects.simpleemailclient.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * DTO for the progress of a search reindex job across all nodes
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReindexStatusDTO {
+    private String jobId;
+    private LocalDateTime startedAt;
+    private Map<String, Long> shards;
+    private Long indexed;
+    private Long estimated;
+
+    // Cluster-wide average since the job started
+    private Double docsPerSecond;
+    private Long etaSeconds;
+
+    // This node's current throttle and smoothed batch latencies
+    private Double throttleRate;
+    private Long dbLatencyMillis;
+    private Long indexLatencyMillis;
+    private Integer activeShards;
+}
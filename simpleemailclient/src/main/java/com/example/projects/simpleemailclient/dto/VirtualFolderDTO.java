@@ -0,0 +1,21 @@
+package com.example.projects.simpleemailclient.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for a saved search kept as a virtual folder
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VirtualFolderDTO {
+    private Long id;
+    private String name;
+    private String query;
+    private Integer unreadCount;
+    private Integer totalCount;
+}
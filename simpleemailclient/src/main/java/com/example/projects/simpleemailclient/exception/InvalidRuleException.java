@@ -0,0 +1,14 @@
+package com.example.projects.simpleemailclient.exception;
+
+/**
+ * Custom exception for rule definitions that cannot be compiled
+ */
+public class InvalidRuleException extends IllegalArgumentException {
+    public InvalidRuleException(String message) {
+        super(message);
+    }
+
+    public InvalidRuleException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.projects.simpleemailclient.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * AttachmentBlob entity: one stored attachment content per tenant and SHA-256
+ * Attachments with the same content share the blob through their blobPointer, and
+ * refCount counts them. A blob whose count has stayed at zero for the grace period is
+ * removed by the garbage collector.
+ */
+@Entity
+@Table(name = "attachment_blobs", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_attachment_blob_hash", columnNames = {"tenant_id", "sha256"}),
+    @UniqueConstraint(name = "uk_attachment_blob_key", columnNames = {"blob_key"})
+}, indexes = {
+    @Index(name = "idx_attachment_blob_orphans", columnList = "ref_count, updated_at")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentBlob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long tenantId;
+
+    @Column(nullable = false, length = 64)
+    private String sha256;
+
+    @Column(nullable = false, length = 500)
+    private String blobKey;
+
+    @Column(nullable = false)
+    private Long sizeBytes;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer refCount = 1;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Set by the reference updates, which bypass the entity
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
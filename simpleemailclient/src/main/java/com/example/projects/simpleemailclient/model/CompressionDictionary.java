@@ -0,0 +1,44 @@
+package com.example.projects.simpleemailclient.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * CompressionDictionary entity: a preset dictionary trained on one tenant's mail
+ * Stored messages name the dictionary they were compressed with by id, so a dictionary
+ * is never changed or deleted while messages may use it; retraining adds a new one.
+ */
+@Entity
+@Table(name = "compression_dictionaries", indexes = {
+    @Index(name = "idx_compression_dictionary_tenant", columnList = "tenant_id, id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompressionDictionary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long tenantId;
+
+    @Column(nullable = false, length = 32768)
+    private byte[] content;
+
+    // Messages the dictionary was trained on
+    @Column(nullable = false)
+    private Integer sampleCount;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
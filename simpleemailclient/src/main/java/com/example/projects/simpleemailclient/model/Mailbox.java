@@ -53,6 +53,20 @@ public class Mailbox {
     @Column(length = 500)
     private String attributes;
 
+    /**
+     * Highest modification sequence handed out in this mailbox (CONDSTORE-style)
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private Long highestModseq = 0L;
+
+    /**
+     * Highest modseq of purged tombstones; clients synced before it must fully resync
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private Long tombstoneHorizonModseq = 0L;
+
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -20,7 +20,10 @@ import java.time.LocalDateTime;
     @Index(name = "idx_message_mailbox", columnList = "mailbox_id"),
     @Index(name = "idx_message_thread", columnList = "thread_id"),
     @Index(name = "idx_message_date", columnList = "message_date"),
-    @Index(name = "idx_message_uid", columnList = "msg_uid")
+    @Index(name = "idx_message_uid", columnList = "msg_uid"),
+    @Index(name = "idx_message_mailbox_modseq", columnList = "mailbox_id, modseq"),
+    @Index(name = "idx_message_user_date", columnList = "user_id, message_date DESC, id DESC"),
+    @Index(name = "idx_message_mailbox_date", columnList = "mailbox_id, message_date DESC, id DESC")
 })
 @Data
 @Builder
@@ -62,6 +65,10 @@ public class Message {
     @Column(nullable = false)
     private Long sizeBytes;
 
+    // Bytes the stored MIME object takes after compression; null if stored before compression
+    @Column
+    private Long storedSizeBytes;
+
     @Column(nullable = false, length = 100)
     private String flags;
 
@@ -83,6 +90,9 @@ public class Message {
     @Column(length = 1000)
     private String references;
 
+    @Column(length = 500)
+    private String listId;
+
     @Column(length = 50)
     private String dkimResult;
 
@@ -98,6 +108,18 @@ public class Message {
     @Column(length = 50)
     private String priority;
 
+    /**
+     * Mailbox modification sequence of the last insert, flag change or move
+     */
+    @Column(nullable = false)
+    private Long modseq;
+
+    /**
+     * Mailbox modification sequence at which the message entered its current mailbox
+     */
+    @Column(nullable = false)
+    private Long addedModseq;
+
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -0,0 +1,42 @@
+package com.example.projects.simpleemailclient.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * MessageTombstone entity recording a message leaving a mailbox (delete or move)
+ * Kept for a retention window so clients can delta-sync expunges by modseq
+ */
+@Entity
+@Table(name = "message_tombstones", indexes = {
+    @Index(name = "idx_tombstone_mailbox_modseq", columnList = "mailbox_id, modseq"),
+    @Index(name = "idx_tombstone_expunged_at", columnList = "expunged_at"),
+    @Index(name = "idx_tombstone_message", columnList = "message_id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageTombstone {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long mailboxId;
+
+    @Column(nullable = false)
+    private Long messageId;
+
+    @Column(nullable = false)
+    private Long modseq;
+
+    @Column(nullable = false)
+    private LocalDateTime expungedAt;
+}
@@ -0,0 +1,87 @@
+package com.example.projects.simpleemailclient.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * OutboundDelivery entity: a sent message's recipients at one domain, queued for SMTP
+ * Recipients still to be tried are in recipients; each attempt removes those the
+ * destination accepted or refused for good, and the row is DONE once none are left.
+ * A node delivers a row only while it holds the lease, as with ReindexShard.
+ */
+@Entity
+@Table(name = "outbound_deliveries", indexes = {
+    @Index(name = "idx_outbound_delivery_due", columnList = "status, next_attempt_at"),
+    @Index(name = "idx_outbound_delivery_message", columnList = "message_id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboundDelivery {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private Long messageId;
+
+    // Envelope sender (MAIL FROM)
+    @Column(nullable = false, length = 500)
+    private String sender;
+
+    // Lower-cased recipient domain
+    @Column(nullable = false, length = 255)
+    private String domain;
+
+    // Comma-separated recipients still to be tried
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String recipients;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer deliveredCount = 0;
+
+    // One "address: reply" line per recipient refused for good
+    @Column(columnDefinition = "TEXT")
+    private String failedRecipients;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 100)
+    private String owner;
+
+    private LocalDateTime leaseUntil;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    public enum Status {
+        QUEUED, SENDING, DONE
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.projects.simpleemailclient.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * ReindexShard entity: one user-id range of a search reindex job and its checkpoint
+ * A node works on a shard only while it holds the lease; the checkpoint is the last
+ * (userId, messageId) handed to the index, so a resumed shard continues after it.
+ */
+@Entity
+@Table(name = "reindex_shards", indexes = {
+    @Index(name = "idx_reindex_shard_job_status", columnList = "job_id, status")
+}, uniqueConstraints = {
+    @UniqueConstraint(name = "uk_reindex_shard_job_number", columnNames = {"job_id", "shard_number"})
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReindexShard {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 36)
+    private String jobId;
+
+    @Column(nullable = false)
+    private Integer shardNumber;
+
+    // Inclusive user id range
+    @Column(nullable = false)
+    private Long fromUserId;
+
+    @Column(nullable = false)
+    private Long toUserId;
+
+    @Column(nullable = false)
+    private Long lastUserId;
+
+    @Column(nullable = false)
+    private Long lastMessageId;
+
+    @Column(nullable = false)
+    private Long indexedCount;
+
+    // Messages in the range when the job was created
+    @Column(nullable = false)
+    private Long estimatedCount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status;
+
+    @Column(length = 100)
+    private String owner;
+
+    private LocalDateTime leaseUntil;
+
+    @Column(length = 1000)
+    private String failure;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    public enum Status {
+        PENDING, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+}
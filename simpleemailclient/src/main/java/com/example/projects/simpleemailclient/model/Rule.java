@@ -52,10 +52,11 @@ public class Rule {
     @Column(nullable = false)
     private Integer priority;
 
-    @Column
+    // Written only by RuleExecutionStats flushes, never by entity updates
+    @Column(updatable = false)
     private Long executionCount;
 
-    @Column
+    @Column(updatable = false)
     private LocalDateTime lastExecutedAt;
 
     @CreationTimestamp
@@ -76,6 +77,8 @@ public class Rule {
         AUTO_REPLY,
         MOVE_TO_FOLDER,
         LABEL,
-        DELETE
+        DELETE,
+        // Compiled from the user's Sieve script; has no rules row
+        SIEVE
     }
 }
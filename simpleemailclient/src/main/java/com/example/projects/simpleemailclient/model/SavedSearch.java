@@ -0,0 +1,56 @@
+package com.example.projects.simpleemailclient.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * SavedSearch entity: a saved query kept as a virtual folder
+ * Matching messages are stored as SavedSearchMember rows as they arrive, and the
+ * counters are maintained like a Mailbox's, so opening one never re-runs the query.
+ */
+@Entity
+@Table(name = "saved_searches", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_saved_search_user_name", columnNames = {"user_id", "name"})
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SavedSearch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false, length = 100)
+    private String name;
+
+    @Column(nullable = false, length = 2000)
+    private String query;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer totalCount = 0;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer unreadCount = 0;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,40 @@
+package com.example.projects.simpleemailclient.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * SavedSearchMember entity: one message matching a saved search
+ * The message date is copied so a folder lists newest first straight from its index.
+ */
+@Entity
+@Table(name = "saved_search_members", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_saved_search_member", columnNames = {"saved_search_id", "message_id"})
+}, indexes = {
+    @Index(name = "idx_saved_search_member_date", columnList = "saved_search_id, message_date"),
+    @Index(name = "idx_saved_search_member_message", columnList = "message_id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SavedSearchMember {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long savedSearchId;
+
+    @Column(nullable = false)
+    private Long messageId;
+
+    @Column
+    private LocalDateTime messageDate;
+}
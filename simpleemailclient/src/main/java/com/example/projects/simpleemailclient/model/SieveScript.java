@@ -0,0 +1,57 @@
+package com.example.projects.simpleemailclient.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * SieveScript entity holding a user's Sieve filter script
+ * One script per user; compiled into the user's rule set alongside native rules
+ */
+@Entity
+@Table(name = "sieve_scripts", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_sieve_script_user", columnNames = "user_id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SieveScript {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false, length = 200)
+    private String name;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String script;
+
+    @Column(nullable = false)
+    private Boolean active;
+
+    // Position of the script's rules relative to native rule priorities
+    @Column(nullable = false)
+    private Integer priority;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Version
+    private Long version;
+}
@@ -0,0 +1,49 @@
+package com.example.projects.simpleemailclient.repository;
+
+import com.example.projects.simpleemailclient.model.AttachmentBlob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository interface for AttachmentBlob entity
+ * Reference counts only change through the atomic updates here
+ */
+@Repository
+public interface AttachmentBlobRepository extends JpaRepository<AttachmentBlob, Long> {
+
+    Optional<AttachmentBlob> findByTenantIdAndSha256(Long tenantId, String sha256);
+
+    /**
+     * Add a reference to an existing blob; a blob waiting for collection is revived
+     * @return 1 if the tenant already stores the content, else 0
+     */
+    @Modifying
+    @Query("UPDATE AttachmentBlob b SET b.refCount = b.refCount + 1, b.updatedAt = :now " +
+           "WHERE b.tenantId = :tenantId AND b.sha256 = :sha256")
+    int addReference(@Param("tenantId") Long tenantId, @Param("sha256") String sha256,
+                     @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE AttachmentBlob b SET b.refCount = b.refCount - 1, b.updatedAt = :now " +
+           "WHERE b.blobKey = :blobKey AND b.refCount > 0")
+    int releaseReference(@Param("blobKey") String blobKey, @Param("now") LocalDateTime now);
+
+    @Query("SELECT b FROM AttachmentBlob b WHERE b.refCount = 0 AND b.updatedAt < :cutoff ORDER BY b.id")
+    List<AttachmentBlob> findOrphans(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+
+    /**
+     * Delete a blob row only if it is still unreferenced
+     * @return 1 if deleted; 0 if a reference was added since it was found
+     */
+    @Modifying
+    @Query("DELETE FROM AttachmentBlob b WHERE b.id = :id AND b.refCount = 0")
+    int deleteOrphan(@Param("id") Long id);
+}
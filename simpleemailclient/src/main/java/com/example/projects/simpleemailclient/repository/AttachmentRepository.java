@@ -2,10 +2,12 @@ package com.example.projects.simpleemailclient.repository;
 
 import com.example.projects.simpleemailclient.model.Attachment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -17,7 +19,7 @@ public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
     List<Attachment> findByMessageId(Long messageId);
 
     @Query("SELECT a FROM Attachment a WHERE a.messageId IN :messageIds")
-    List<Attachment> findByMessageIds(@Param("messageIds") List<Long> messageIds);
+    List<Attachment> findByMessageIds(@Param("messageIds") Collection<Long> messageIds);
 
     @Query("SELECT SUM(a.sizeBytes) FROM Attachment a WHERE a.messageId = :messageId")
     Long calculateTotalSizeByMessageId(@Param("messageId") Long messageId);
@@ -26,4 +28,8 @@ public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
     List<Attachment> findByScanStatus(@Param("status") String status);
 
     void deleteByMessageId(Long messageId);
+
+    @Modifying
+    @Query("DELETE FROM Attachment a WHERE a.messageId IN :messageIds")
+    int deleteByMessageIds(@Param("messageIds") Collection<Long> messageIds);
 }
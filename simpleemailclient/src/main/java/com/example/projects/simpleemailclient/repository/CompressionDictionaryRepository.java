@@ -0,0 +1,19 @@
+package com.example.projects.simpleemailclient.repository;
+
+import com.example.projects.simpleemailclient.model.CompressionDictionary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Repository interface for CompressionDictionary entity
+ */
+@Repository
+public interface CompressionDictionaryRepository extends JpaRepository<CompressionDictionary, Long> {
+
+    /**
+     * The tenant's newest dictionary, used for new messages
+     */
+    Optional<CompressionDictionary> findFirstByTenantIdOrderByIdDesc(Long tenantId);
+}
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -39,5 +40,44 @@ public interface MailboxRepository extends JpaRepository<Mailbox, Long> {
     @Query("UPDATE Mailbox m SET m.totalCount = m.totalCount + :delta WHERE m.id = :mailboxId")
     void incrementTotalCount(@Param("mailboxId") Long mailboxId, @Param("delta") int delta);
 
+    /**
+     * Recount total and unread messages from the messages table
+     */
+    @Modifying
+    @Query("UPDATE Mailbox b SET " +
+           "b.totalCount = (SELECT CAST(COUNT(m) AS Integer) FROM Message m WHERE m.mailboxId = b.id), " +
+           "b.unreadCount = (SELECT CAST(COUNT(m) AS Integer) FROM Message m " +
+           "WHERE m.mailboxId = b.id AND m.flags NOT LIKE '%READ%') " +
+           "WHERE b.id IN :mailboxIds")
+    int recalculateCounts(@Param("mailboxIds") Collection<Long> mailboxIds);
+
     boolean existsByUserIdAndName(Long userId, String name);
+
+    Optional<Mailbox> findByUserIdAndName(Long userId, String name);
+
+    @Modifying
+    @Query("UPDATE Mailbox m SET m.highestModseq = m.highestModseq + 1 WHERE m.id = :mailboxId")
+    int incrementHighestModseq(@Param("mailboxId") Long mailboxId);
+
+    @Query("SELECT m.highestModseq FROM Mailbox m WHERE m.id = :mailboxId")
+    Long findHighestModseq(@Param("mailboxId") Long mailboxId);
+
+    @Modifying
+    @Query("UPDATE Mailbox m SET m.tombstoneHorizonModseq = :modseq " +
+           "WHERE m.id = :mailboxId AND m.tombstoneHorizonModseq < :modseq")
+    void advanceTombstoneHorizon(@Param("mailboxId") Long mailboxId, @Param("modseq") Long modseq);
+
+    /**
+     * Allocate the next modification sequence for a mailbox.
+     * The increment takes the row lock, so allocations serialize per mailbox
+     * until the surrounding transaction commits.
+     * @param mailboxId Mailbox ID
+     * @return Newly allocated modseq
+     */
+    default long nextModseq(Long mailboxId) {
+        if (incrementHighestModseq(mailboxId) == 0) {
+            throw new IllegalArgumentException("Mailbox not found: " + mailboxId);
+        }
+        return findHighestModseq(mailboxId);
+    }
 }
@@ -1,14 +1,17 @@
 package com.example.projects.simpleemailclient.repository;
 
+import com.example.projects.simpleemailclient.model.Mailbox.MailboxType;
 import com.example.projects.simpleemailclient.model.Message;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,6 +22,11 @@ import java.util.Optional;
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
+    /**
+     * Keyword search expression; must match idx_message_search_trgm (db/migration/postgresql)
+     */
+    String SEARCH_TEXT = "lower(m.subject || ' ' || m.from_address)";
+
     Optional<Message> findByMsgUid(String msgUid);
 
     Optional<Message> findByIdAndUserId(Long id, Long userId);
@@ -29,6 +37,8 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
 
     List<Message> findByThreadId(Long threadId);
 
+    Optional<Message> findFirstByUserIdAndMessageId(Long userId, String messageId);
+
     @Query("SELECT m FROM Message m WHERE m.userId = :userId AND m.mailboxId = :mailboxId " +
            "AND m.flags LIKE %:flag% ORDER BY m.messageDate DESC")
     Page<Message> findByUserIdAndMailboxIdAndFlag(@Param("userId") Long userId, 
@@ -54,12 +64,154 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("SELECT SUM(m.sizeBytes) FROM Message m WHERE m.userId = :userId")
     Long calculateTotalSizeByUserId(@Param("userId") Long userId);
 
-    @Query("SELECT m FROM Message m WHERE m.userId = :userId AND " +
-           "(LOWER(m.subject) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "LOWER(m.fromAddress) LIKE LOWER(CONCAT('%', :keyword, '%')))")
-    Page<Message> searchMessages(@Param("userId") Long userId, 
-                                 @Param("keyword") String keyword, 
+    /**
+     * Bytes the user's messages take in storage; messages stored uncompressed count in full
+     */
+    @Query("SELECT COALESCE(SUM(COALESCE(m.storedSizeBytes, m.sizeBytes)), 0) FROM Message m " +
+           "WHERE m.userId = :userId")
+    Long calculateStoredSizeByUserId(@Param("userId") Long userId);
+
+    /**
+     * Stored MIME of a tenant's newest messages, for training its compression dictionary
+     */
+    @Query("SELECT m.mimePointer FROM Message m WHERE m.userId IN " +
+           "(SELECT u.id FROM User u WHERE u.tenantId = :tenantId) ORDER BY m.id DESC")
+    List<String> findRecentMimePointersByTenantId(@Param("tenantId") Long tenantId, Pageable pageable);
+
+    /**
+     * Substring search over subject and sender through the (user_id, SEARCH_TEXT) trigram
+     * index, ranked by trigram word similarity damped by age in 30-day units
+     * @param keyword Lower-cased keyword
+     * @param pattern LIKE pattern of the lower-cased keyword with %, _ and \ escaped
+     * @param pageable Unsorted page; the ranking is fixed
+     */
+    @Query(value = "SELECT m.* FROM messages m WHERE m.user_id = :userId AND " + SEARCH_TEXT + " LIKE :pattern " +
+                   "ORDER BY word_similarity(:keyword, " + SEARCH_TEXT + ") / " +
+                   "(1 + GREATEST(0, EXTRACT(EPOCH FROM (now() - m.message_date))) / 2592000) DESC, m.id DESC",
+           countQuery = "SELECT count(*) FROM messages m WHERE m.user_id = :userId AND " + SEARCH_TEXT + " LIKE :pattern",
+           nativeQuery = true)
+    Page<Message> searchMessages(@Param("userId") Long userId,
+                                 @Param("keyword") String keyword,
+                                 @Param("pattern") String pattern,
                                  Pageable pageable);
 
     void deleteByMailboxId(Long mailboxId);
+
+    @Query("SELECT m.id AS id, m.modseq AS modseq, m.addedModseq AS addedModseq FROM Message m " +
+           "WHERE m.mailboxId = :mailboxId AND m.modseq > :modseq ORDER BY m.modseq ASC")
+    List<ModseqView> findChangedSince(@Param("mailboxId") Long mailboxId,
+                                      @Param("modseq") Long modseq);
+
+    /**
+     * Keyset page of a user's messages in id order; pass the last seen id to continue
+     */
+    @Query("SELECT m FROM Message m WHERE m.userId = :userId AND m.id > :afterId ORDER BY m.id ASC")
+    List<Message> findPageByUserIdAfter(@Param("userId") Long userId,
+                                        @Param("afterId") Long afterId,
+                                        Pageable pageable);
+
+    /**
+     * Keyset page of a user's messages, newest id first; pass the last seen id to continue
+     */
+    @Query("SELECT m FROM Message m WHERE m.userId = :userId AND m.id < :beforeId ORDER BY m.id DESC")
+    List<Message> findPageByUserIdBefore(@Param("userId") Long userId,
+                                         @Param("beforeId") Long beforeId,
+                                         Pageable pageable);
+
+    @Query("SELECT MIN(m.userId) FROM Message m")
+    Long findMinUserId();
+
+    @Query("SELECT MAX(m.userId) FROM Message m")
+    Long findMaxUserId();
+
+    long countByUserIdBetween(Long fromUserId, Long toUserId);
+
+    /**
+     * Keyset page of message keys in a user id range, in (userId, id) order;
+     * pass the last seen key to continue
+     */
+    @Query("SELECT m.userId AS userId, m.id AS id FROM Message m " +
+           "WHERE m.userId BETWEEN :fromUserId AND :toUserId " +
+           "AND (m.userId > :afterUserId OR (m.userId = :afterUserId AND m.id > :afterId)) " +
+           "ORDER BY m.userId ASC, m.id ASC")
+    List<MessageKey> findKeysInUserRangeAfter(@Param("fromUserId") Long fromUserId,
+                                              @Param("toUserId") Long toUserId,
+                                              @Param("afterUserId") Long afterUserId,
+                                              @Param("afterId") Long afterId,
+                                              Pageable pageable);
+
+    /**
+     * Keyset page of a mailbox's messages in id order; pass the last seen id to continue
+     */
+    @Query("SELECT m FROM Message m WHERE m.mailboxId = :mailboxId AND m.id > :afterId ORDER BY m.id ASC")
+    List<Message> findPageByMailboxIdAfter(@Param("mailboxId") Long mailboxId,
+                                           @Param("afterId") Long afterId,
+                                           Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE Message m SET m.mailboxId = :targetMailboxId, m.modseq = :modseq, m.addedModseq = :modseq, " +
+           "m.version = m.version + 1, m.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE m.id IN :ids AND m.mailboxId = :sourceMailboxId")
+    int moveAll(@Param("ids") Collection<Long> ids,
+                @Param("sourceMailboxId") Long sourceMailboxId,
+                @Param("targetMailboxId") Long targetMailboxId,
+                @Param("modseq") Long modseq);
+
+    /**
+     * Replace flags only where they are still unchanged, so concurrent flag edits win
+     */
+    @Modifying
+    @Query("UPDATE Message m SET m.flags = :newFlags, m.modseq = :modseq, m.version = m.version + 1, " +
+           "m.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE m.id IN :ids AND m.mailboxId = :mailboxId AND m.flags = :oldFlags")
+    int replaceFlags(@Param("ids") Collection<Long> ids,
+                     @Param("mailboxId") Long mailboxId,
+                     @Param("oldFlags") String oldFlags,
+                     @Param("newFlags") String newFlags,
+                     @Param("modseq") Long modseq);
+
+    @Query("SELECT COALESCE(SUM(m.sizeBytes), 0) FROM Message m WHERE m.id IN :ids AND m.mailboxId = :mailboxId")
+    Long sumSizeBytes(@Param("ids") Collection<Long> ids, @Param("mailboxId") Long mailboxId);
+
+    @Modifying
+    @Query("DELETE FROM Message m WHERE m.id IN :ids AND m.mailboxId = :mailboxId")
+    int deleteAllInMailbox(@Param("ids") Collection<Long> ids, @Param("mailboxId") Long mailboxId);
+
+    /**
+     * Address headers of a user's messages, newest first, with the type of the
+     * mailbox holding each; sent messages are the ones in the SENT mailbox
+     */
+    @Query("SELECT m.fromAddress AS fromAddress, m.toAddresses AS toAddresses, m.ccAddresses AS ccAddresses, " +
+           "m.messageDate AS messageDate, b.mailboxType AS mailboxType " +
+           "FROM Message m, Mailbox b WHERE b.id = m.mailboxId AND m.userId = :userId " +
+           "ORDER BY m.messageDate DESC")
+    List<AddressView> findAddressesByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * Owner and id of a message, for streaming reads that do not need the row
+     */
+    interface MessageKey {
+        Long getUserId();
+        Long getId();
+    }
+
+    /**
+     * Address headers of a message, for recipient autocomplete
+     */
+    interface AddressView {
+        String getFromAddress();
+        String getToAddresses();
+        String getCcAddresses();
+        LocalDateTime getMessageDate();
+        MailboxType getMailboxType();
+    }
+
+    /**
+     * Lightweight projection used for modseq delta sync
+     */
+    interface ModseqView {
+        Long getId();
+        Long getModseq();
+        Long getAddedModseq();
+    }
 }
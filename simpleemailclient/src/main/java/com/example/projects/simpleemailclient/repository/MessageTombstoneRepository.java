@@ -0,0 +1,60 @@
+package com.example.projects.simpleemailclient.repository;
+
+import com.example.projects.simpleemailclient.model.MessageTombstone;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository interface for MessageTombstone entity
+ * Backs expunge reporting for modseq-based mailbox delta sync
+ */
+@Repository
+public interface MessageTombstoneRepository extends JpaRepository<MessageTombstone, Long> {
+
+    @Query("SELECT t.messageId FROM MessageTombstone t WHERE t.mailboxId = :mailboxId " +
+           "AND t.modseq > :modseq ORDER BY t.modseq ASC")
+    List<Long> findExpungedMessageIdsSince(@Param("mailboxId") Long mailboxId,
+                                           @Param("modseq") Long modseq);
+
+    @Query("SELECT t.mailboxId AS mailboxId, MAX(t.modseq) AS modseq FROM MessageTombstone t " +
+           "WHERE t.expungedAt < :cutoff GROUP BY t.mailboxId")
+    List<MailboxHorizon> findPurgeHorizons(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Most recent tombstone of a message; locates its owner after the row is gone
+     */
+    Optional<MessageTombstone> findFirstByMessageIdOrderByModseqDesc(Long messageId);
+
+    @Modifying
+    @Query("DELETE FROM MessageTombstone t WHERE t.expungedAt < :cutoff")
+    int deleteExpiredBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Record one tombstone per message still in the mailbox, in a single statement
+     */
+    @Modifying
+    @Query(value = "INSERT INTO message_tombstones (mailbox_id, message_id, modseq, expunged_at) " +
+                   "SELECT m.mailbox_id, m.id, :modseq, :expungedAt FROM messages m " +
+                   "WHERE m.id IN (:ids) AND m.mailbox_id = :mailboxId",
+           nativeQuery = true)
+    int insertForMessages(@Param("ids") Collection<Long> ids,
+                          @Param("mailboxId") Long mailboxId,
+                          @Param("modseq") Long modseq,
+                          @Param("expungedAt") LocalDateTime expungedAt);
+
+    /**
+     * Highest purged tombstone modseq per mailbox
+     */
+    interface MailboxHorizon {
+        Long getMailboxId();
+        Long getModseq();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.projects.simpleemailclient.repository;
+
+import com.example.projects.simpleemailclient.model.OutboundDelivery;
+import com.example.projects.simpleemailclient.model.OutboundDelivery.Status;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository interface for OutboundDelivery entity
+ * Leases are conditional updates, so nodes share the queue through the table
+ */
+@Repository
+public interface OutboundDeliveryRepository extends JpaRepository<OutboundDelivery, Long> {
+
+    List<OutboundDelivery> findByMessageId(Long messageId);
+
+    /**
+     * Rows whose next attempt is due, and rows whose sender's lease ran out
+     */
+    @Query("SELECT d FROM OutboundDelivery d WHERE (d.status = :queued AND d.nextAttemptAt <= :now) " +
+           "OR (d.status = :sending AND d.leaseUntil < :now) ORDER BY d.nextAttemptAt, d.id")
+    List<OutboundDelivery> findDue(@Param("now") LocalDateTime now,
+                                   @Param("queued") Status queued,
+                                   @Param("sending") Status sending,
+                                   Pageable pageable);
+
+    /**
+     * Take the lease of a due row
+     * @return 1 if the lease was taken
+     */
+    @Modifying
+    @Query("UPDATE OutboundDelivery d SET d.status = :sending, d.owner = :owner, d.leaseUntil = :leaseUntil, " +
+           "d.updatedAt = :now WHERE d.id = :id AND ((d.status = :queued AND d.nextAttemptAt <= :now) " +
+           "OR (d.status = :sending AND d.leaseUntil < :now))")
+    int claim(@Param("id") Long id,
+              @Param("owner") String owner,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil,
+              @Param("queued") Status queued,
+              @Param("sending") Status sending);
+
+    /**
+     * Extend the lease of a row being sent
+     * @return 0 if the lease was lost; another node has taken the row over
+     */
+    @Modifying
+    @Query("UPDATE OutboundDelivery d SET d.leaseUntil = :leaseUntil, d.updatedAt = :now " +
+           "WHERE d.id = :id AND d.owner = :owner AND d.status = :sending")
+    int renew(@Param("id") Long id,
+              @Param("owner") String owner,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil,
+              @Param("sending") Status sending);
+
+    /**
+     * Record an attempt and give up the lease
+     * @param status QUEUED to retry the remaining recipients at nextAttemptAt, or DONE
+     * @return 0 if the lease was lost; another node has taken the row over
+     */
+    @Modifying
+    @Query("UPDATE OutboundDelivery d SET d.status = :status, d.recipients = :recipients, " +
+           "d.deliveredCount = d.deliveredCount + :delivered, d.failedRecipients = :failedRecipients, " +
+           "d.attempts = d.attempts + 1, d.nextAttemptAt = :nextAttemptAt, d.lastError = :lastError, " +
+           "d.owner = NULL, d.leaseUntil = NULL, d.updatedAt = :now " +
+           "WHERE d.id = :id AND d.owner = :owner AND d.status = :sending")
+    int finish(@Param("id") Long id,
+               @Param("owner") String owner,
+               @Param("status") Status status,
+               @Param("recipients") String recipients,
+               @Param("delivered") int delivered,
+               @Param("failedRecipients") String failedRecipients,
+               @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+               @Param("lastError") String lastError,
+               @Param("now") LocalDateTime now,
+               @Param("sending") Status sending);
+}
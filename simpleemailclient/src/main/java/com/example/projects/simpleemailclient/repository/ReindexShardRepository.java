@@ -0,0 +1,80 @@
+package com.example.projects.simpleemailclient.repository;
+
+import com.example.projects.simpleemailclient.model.ReindexShard;
+import com.example.projects.simpleemailclient.model.ReindexShard.Status;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository interface for ReindexShard entity
+ * Leases and checkpoints are conditional updates, so nodes coordinate through the table
+ */
+@Repository
+public interface ReindexShardRepository extends JpaRepository<ReindexShard, Long> {
+
+    List<ReindexShard> findByJobIdOrderByShardNumber(String jobId);
+
+    @Query("SELECT DISTINCT s.jobId FROM ReindexShard s WHERE s.status IN :statuses")
+    List<String> findJobIdsWithStatus(@Param("statuses") Collection<Status> statuses);
+
+    @Query("SELECT s.jobId FROM ReindexShard s ORDER BY s.createdAt DESC, s.id DESC")
+    List<String> findRecentJobIds(Pageable pageable);
+
+    /**
+     * Take the lease of an open shard that is unowned, owned by this node or whose lease ran out
+     * @return 1 if the lease was taken
+     */
+    @Modifying
+    @Query("UPDATE ReindexShard s SET s.owner = :owner, s.leaseUntil = :leaseUntil, s.status = :running, " +
+           "s.updatedAt = :now WHERE s.id = :id AND s.status IN (:pending, :running) " +
+           "AND (s.owner IS NULL OR s.owner = :owner OR s.leaseUntil < :now)")
+    int claim(@Param("id") Long id,
+              @Param("owner") String owner,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil,
+              @Param("pending") Status pending,
+              @Param("running") Status running);
+
+    /**
+     * Record progress and extend the lease
+     * @return 0 if the lease was lost or the job cancelled; the caller must stop
+     */
+    @Modifying
+    @Query("UPDATE ReindexShard s SET s.lastUserId = :lastUserId, s.lastMessageId = :lastMessageId, " +
+           "s.indexedCount = s.indexedCount + :indexed, s.leaseUntil = :leaseUntil, s.updatedAt = :now " +
+           "WHERE s.id = :id AND s.owner = :owner AND s.status = :running")
+    int checkpoint(@Param("id") Long id,
+                   @Param("owner") String owner,
+                   @Param("lastUserId") Long lastUserId,
+                   @Param("lastMessageId") Long lastMessageId,
+                   @Param("indexed") long indexed,
+                   @Param("now") LocalDateTime now,
+                   @Param("leaseUntil") LocalDateTime leaseUntil,
+                   @Param("running") Status running);
+
+    @Modifying
+    @Query("UPDATE ReindexShard s SET s.status = :status, s.failure = :failure, s.owner = NULL, " +
+           "s.leaseUntil = NULL, s.updatedAt = :now WHERE s.id = :id AND s.owner = :owner AND s.status = :running")
+    int finish(@Param("id") Long id,
+               @Param("owner") String owner,
+               @Param("status") Status status,
+               @Param("failure") String failure,
+               @Param("now") LocalDateTime now,
+               @Param("running") Status running);
+
+    @Modifying
+    @Query("UPDATE ReindexShard s SET s.status = :cancelled, s.owner = NULL, s.leaseUntil = NULL, " +
+           "s.updatedAt = :now WHERE s.jobId = :jobId AND s.status IN :open")
+    int cancel(@Param("jobId") String jobId,
+               @Param("now") LocalDateTime now,
+               @Param("open") Collection<Status> open,
+               @Param("cancelled") Status cancelled);
+}
@@ -8,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository interface for Rule entity
@@ -16,6 +17,8 @@ import java.util.List;
 @Repository
 public interface RuleRepository extends JpaRepository<Rule, Long> {
 
+    Optional<Rule> findByIdAndUserId(Long id, Long userId);
+
     List<Rule> findByUserIdAndEnabledOrderByPriorityAsc(Long userId, Boolean enabled);
 
     List<Rule> findByUserIdOrderByPriorityAsc(Long userId);
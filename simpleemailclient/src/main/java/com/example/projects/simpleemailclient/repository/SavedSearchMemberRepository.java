@@ -0,0 +1,52 @@
+package com.example.projects.simpleemailclient.repository;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.SavedSearchMember;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository interface for SavedSearchMember entity
+ * Handles virtual folder membership
+ */
+@Repository
+public interface SavedSearchMemberRepository extends JpaRepository<SavedSearchMember, Long> {
+
+    /**
+     * Messages of a virtual folder, newest first; walks idx_saved_search_member_date
+     */
+    @Query(value = "SELECT m FROM SavedSearchMember s JOIN Message m ON m.id = s.messageId " +
+                   "WHERE s.savedSearchId = :savedSearchId ORDER BY s.messageDate DESC, s.messageId DESC",
+           countQuery = "SELECT COUNT(s) FROM SavedSearchMember s JOIN Message m ON m.id = s.messageId " +
+                        "WHERE s.savedSearchId = :savedSearchId")
+    Page<Message> findMessages(@Param("savedSearchId") Long savedSearchId, Pageable pageable);
+
+    @Query("SELECT s.savedSearchId FROM SavedSearchMember s WHERE s.messageId = :messageId")
+    List<Long> findSavedSearchIdsByMessageId(@Param("messageId") Long messageId);
+
+    @Modifying
+    @Query("DELETE FROM SavedSearchMember s WHERE s.messageId = :messageId AND s.savedSearchId IN :savedSearchIds")
+    int deleteByMessageIdAndSavedSearchIds(@Param("messageId") Long messageId,
+                                           @Param("savedSearchIds") Collection<Long> savedSearchIds);
+
+    @Modifying
+    @Query("DELETE FROM SavedSearchMember s WHERE s.savedSearchId = :savedSearchId")
+    int deleteBySavedSearchId(@Param("savedSearchId") Long savedSearchId);
+
+    /**
+     * Drop the members of a user's saved searches whose message no longer exists
+     */
+    @Modifying
+    @Query("DELETE FROM SavedSearchMember s WHERE s.savedSearchId IN " +
+           "(SELECT ss.id FROM SavedSearch ss WHERE ss.userId = :userId) " +
+           "AND NOT EXISTS (SELECT m.id FROM Message m WHERE m.id = s.messageId)")
+    int deleteOrphans(@Param("userId") Long userId);
+}
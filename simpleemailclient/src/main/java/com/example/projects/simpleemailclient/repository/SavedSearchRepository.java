@@ -0,0 +1,46 @@
+package com.example.projects.simpleemailclient.repository;
+
+import com.example.projects.simpleemailclient.model.SavedSearch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository interface for SavedSearch entity
+ * Handles virtual folder definitions and their counters
+ */
+@Repository
+public interface SavedSearchRepository extends JpaRepository<SavedSearch, Long> {
+
+    List<SavedSearch> findByUserIdOrderByNameAsc(Long userId);
+
+    Optional<SavedSearch> findByIdAndUserId(Long id, Long userId);
+
+    Optional<SavedSearch> findByUserIdAndName(Long userId, String name);
+
+    @Modifying
+    @Query("UPDATE SavedSearch s SET s.totalCount = s.totalCount + :delta WHERE s.id IN :ids")
+    void incrementTotalCount(@Param("ids") Collection<Long> ids, @Param("delta") int delta);
+
+    @Modifying
+    @Query("UPDATE SavedSearch s SET s.unreadCount = s.unreadCount + :delta WHERE s.id IN :ids")
+    void incrementUnreadCount(@Param("ids") Collection<Long> ids, @Param("delta") int delta);
+
+    /**
+     * Recount total and unread members of a user's saved searches from the messages table
+     */
+    @Modifying
+    @Query("UPDATE SavedSearch s SET " +
+           "s.totalCount = (SELECT CAST(COUNT(m) AS Integer) FROM SavedSearchMember sm, Message m " +
+           "WHERE sm.savedSearchId = s.id AND m.id = sm.messageId), " +
+           "s.unreadCount = (SELECT CAST(COUNT(m) AS Integer) FROM SavedSearchMember sm, Message m " +
+           "WHERE sm.savedSearchId = s.id AND m.id = sm.messageId AND m.flags NOT LIKE '%READ%') " +
+           "WHERE s.userId = :userId")
+    int recalculateCounts(@Param("userId") Long userId);
+}
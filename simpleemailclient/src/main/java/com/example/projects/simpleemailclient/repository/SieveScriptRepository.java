@@ -0,0 +1,18 @@
+package com.example.projects.simpleemailclient.repository;
+
+import com.example.projects.simpleemailclient.model.SieveScript;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Repository interface for SieveScript entity
+ */
+@Repository
+public interface SieveScriptRepository extends JpaRepository<SieveScript, Long> {
+
+    Optional<SieveScript> findByUserId(Long userId);
+
+    Optional<SieveScript> findByUserIdAndActiveTrue(Long userId);
+}
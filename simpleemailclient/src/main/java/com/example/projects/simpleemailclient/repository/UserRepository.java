@@ -38,6 +38,9 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     boolean existsByEmail(String email);
 
+    @Query("SELECT DISTINCT u.tenantId FROM User u")
+    List<Long> findTenantIds();
+
     @Query("SELECT COUNT(u) FROM User u WHERE u.tenantId = :tenantId AND u.status = :status")
     Long countByTenantIdAndStatus(@Param("tenantId") Long tenantId, 
                                    @Param("status") UserStatus status);
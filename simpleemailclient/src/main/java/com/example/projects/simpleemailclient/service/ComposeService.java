@@ -1,7 +1,10 @@
 package com.example.projects.simpleemailclient.service;
 
+import com.example.projects.simpleemailclient.model.Attachment;
 import com.example.projects.simpleemailclient.model.Message;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -55,9 +58,26 @@ public interface ComposeService {
      * @param data File data
      * @param userId User ID for security check
      * @return Blob pointer/key in MinIO
+     * @deprecated Holds the whole attachment in memory; use the streaming variant
      */
-    String addAttachment(Long messageId, String filename, String contentType, 
-                        byte[] data, Long userId);
+    @Deprecated
+    default String addAttachment(Long messageId, String filename, String contentType, 
+                        byte[] data, Long userId) {
+        return addAttachment(messageId, filename, contentType, new ByteArrayInputStream(data), userId)
+            .getBlobPointer();
+    }
+
+    /**
+     * Add attachment to message, streaming its content to storage
+     * @param messageId Message ID
+     * @param filename Attachment filename
+     * @param contentType MIME type
+     * @param data File content; read to the end but not closed
+     * @param userId User ID for security check
+     * @return Stored attachment with size and SHA-256 checksum
+     */
+    Attachment addAttachment(Long messageId, String filename, String contentType,
+                             InputStream data, Long userId);
 
     /**
      * Remove attachment from message
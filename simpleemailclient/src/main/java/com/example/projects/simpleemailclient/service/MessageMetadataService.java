@@ -1,5 +1,6 @@
 package com.example.projects.simpleemailclient.service;
 
+import com.example.projects.simpleemailclient.dto.MailboxChangesDTO;
 import com.example.projects.simpleemailclient.model.Message;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -141,4 +142,19 @@ public interface MessageMetadataService {
      * @return Total bytes used
      */
     Long getTotalStorageUsed(Long userId);
+
+    /**
+     * Get messages added, changed and expunged in a mailbox since a modseq
+     * @param mailboxId Mailbox ID
+     * @param modseq Highest modseq the client has already seen
+     * @param userId User ID for security check
+     * @return Delta of message IDs, or a full-resync marker if tombstones were purged
+     */
+    MailboxChangesDTO changesSince(Long mailboxId, Long modseq, Long userId);
+
+    /**
+     * Purge expunge tombstones older than the retention window
+     * @return Number of tombstones removed
+     */
+    int purgeExpiredTombstones();
 }
@@ -3,6 +3,8 @@ package com.example.projects.simpleemailclient.service;
 import com.example.projects.simpleemailclient.model.Rule;
 import com.example.projects.simpleemailclient.model.Message;
 import com.example.projects.simpleemailclient.model.Rule.RuleType;
+import com.example.projects.simpleemailclient.model.SieveScript;
+import com.example.projects.simpleemailclient.service.rules.BulkRuleJob;
 
 import java.util.List;
 import java.util.Optional;
@@ -95,6 +97,32 @@ public interface RulesService {
      */
     boolean applyRule(Long ruleId, Message message);
 
+    /**
+     * Apply rules to every message already in a mailbox, in the background
+     * Moves, flag changes and deletes are applied; forwards and replies are not
+     * @param userId User ID for security check
+     * @param mailboxId Mailbox to process
+     * @param ruleId Rule to apply, or null for all active rules
+     * @return Job handle for progress and cancellation
+     */
+    BulkRuleJob applyRulesToMailbox(Long userId, Long mailboxId, Long ruleId);
+
+    /**
+     * Get a bulk rule application job
+     * @param jobId Job ID
+     * @param userId User ID for security check
+     * @return Optional containing the job if found and owned by the user
+     */
+    Optional<BulkRuleJob> getBulkRuleJob(String jobId, Long userId);
+
+    /**
+     * Cancel a bulk rule application job; pages already processed stay applied
+     * @param jobId Job ID
+     * @param userId User ID for security check
+     * @return true if the job was still running
+     */
+    boolean cancelBulkRuleJob(String jobId, Long userId);
+
     /**
      * Evaluate rule condition against message
      * @param rule Rule to evaluate
@@ -120,10 +148,48 @@ public interface RulesService {
     Rule updatePriority(Long ruleId, Integer newPriority, Long userId);
 
     /**
-     * Validate rule syntax
+     * Validate rule syntax and cost
      * @param conditionJson Condition JSON
      * @param actionJson Action JSON
-     * @return true if valid
+     * @return true if valid and the condition's worst case fits in the per-message evaluation budget
      */
     boolean validateRule(String conditionJson, String actionJson);
+
+    /**
+     * Create or replace a user's Sieve script
+     * @param userId User ID
+     * @param name Script name
+     * @param script Sieve source
+     * @return Saved script
+     * @throws com.example.projects.simpleemailclient.exception.InvalidRuleException if the script does not compile
+     */
+    SieveScript saveSieveScript(Long userId, String name, String script);
+
+    /**
+     * Get a user's Sieve script
+     * @param userId User ID
+     * @return Script if present
+     */
+    Optional<SieveScript> getSieveScript(Long userId);
+
+    /**
+     * Enable or disable a user's Sieve script
+     * @param userId User ID
+     * @param active Whether the script runs on new mail
+     * @return Updated script
+     */
+    SieveScript setSieveScriptActive(Long userId, boolean active);
+
+    /**
+     * Delete a user's Sieve script
+     * @param userId User ID
+     */
+    void deleteSieveScript(Long userId);
+
+    /**
+     * Validate Sieve script syntax and supported extensions
+     * @param script Sieve source
+     * @return true if valid
+     */
+    boolean validateSieveScript(String script);
 }
@@ -85,6 +85,7 @@ public interface SearchService {
 
     /**
      * Save search query for later use
+     * Only the query string is kept; VirtualFolderService keeps saved searches as live folders.
      * @param userId User ID
      * @param queryName Query name
      * @param query Query string
@@ -0,0 +1,259 @@
+package com.example.projects.simpleemailclient.service.attachment;
+
+import com.example.projects.simpleemailclient.config.MinIOConfig;
+import com.example.projects.simpleemailclient.exception.ResourceNotFoundException;
+import com.example.projects.simpleemailclient.model.Attachment;
+import com.example.projects.simpleemailclient.model.AttachmentBlob;
+import com.example.projects.simpleemailclient.repository.AttachmentBlobRepository;
+import com.example.projects.simpleemailclient.repository.AttachmentRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.service.UserService;
+import com.example.projects.simpleemailclient.service.storage.BlobStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Content-addressed attachment storage with per-tenant deduplication
+ * An attachment's content is stored once per tenant under a key derived from its
+ * SHA-256, and an AttachmentBlob row counts the attachments pointing at it. Storing
+ * content the tenant already has only adds a reference: nothing is written to storage.
+ * Deleting an attachment releases its reference, and blobs left unreferenced for the
+ * grace period are removed by a background collector. The collector deletes the row
+ * first, and only if it is still unreferenced, so a concurrent upload either revives the
+ * blob in time or misses it and stores a new object under a fresh key.
+ */
+@Component
+@Slf4j
+public class AttachmentContentStore {
+
+    private final BlobStore blobStore;
+    private final MinIOConfig minIOConfig;
+    private final AttachmentBlobRepository blobRepository;
+    private final AttachmentRepository attachmentRepository;
+    private final MessageRepository messageRepository;
+    private final UserService userService;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter deduplicated;
+    private final Counter stored;
+    private final Counter collected;
+
+    private final Duration gcGrace;
+    private final int gcBatchSize;
+
+    public AttachmentContentStore(BlobStore blobStore,
+                                  MinIOConfig minIOConfig,
+                                  AttachmentBlobRepository blobRepository,
+                                  AttachmentRepository attachmentRepository,
+                                  MessageRepository messageRepository,
+                                  UserService userService,
+                                  TransactionTemplate transactionTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${email.attachment.gc.grace-minutes:1440}") long gcGraceMinutes,
+                                  @Value("${email.attachment.gc.batch-size:500}") int gcBatchSize) {
+        this.blobStore = blobStore;
+        this.minIOConfig = minIOConfig;
+        this.blobRepository = blobRepository;
+        this.attachmentRepository = attachmentRepository;
+        this.messageRepository = messageRepository;
+        this.userService = userService;
+        this.transactionTemplate = transactionTemplate;
+        this.gcGrace = Duration.ofMinutes(gcGraceMinutes);
+        this.gcBatchSize = gcBatchSize;
+        this.deduplicated = Counter.builder("email.attachments.blobs")
+            .description("Attachment contents stored, by whether the tenant already had them")
+            .tag("result", "deduplicated")
+            .register(meterRegistry);
+        this.stored = Counter.builder("email.attachments.blobs")
+            .description("Attachment contents stored, by whether the tenant already had them")
+            .tag("result", "stored")
+            .register(meterRegistry);
+        this.collected = Counter.builder("email.attachments.blobs.collected")
+            .description("Unreferenced attachment blobs removed")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Take a reference to content, uploading it only if the tenant does not have it yet
+     * @param file Spooled content whose SHA-256 and size are given
+     * @return Blob key to record as the attachment's blobPointer
+     */
+    public String store(Long tenantId, String sha256, long sizeBytes, Path file, String contentType) {
+        String existing = reference(tenantId, sha256);
+        if (existing != null) {
+            deduplicated.increment();
+            return existing;
+        }
+
+        String key = blobKey(tenantId, sha256);
+        upload(key, file, contentType);
+        try {
+            blobRepository.saveAndFlush(AttachmentBlob.builder()
+                .tenantId(tenantId)
+                .sha256(sha256)
+                .blobKey(key)
+                .sizeBytes(sizeBytes)
+                .refCount(1)
+                .updatedAt(LocalDateTime.now())
+                .build());
+            stored.increment();
+            return key;
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent upload of the same content registered it first
+            remove(key);
+            existing = reference(tenantId, sha256);
+            if (existing == null) {
+                throw new IllegalStateException("Attachment blob " + sha256 + " vanished while being stored", e);
+            }
+            deduplicated.increment();
+            return existing;
+        }
+    }
+
+    /**
+     * Give back a reference taken by store; the blob is collected once unreferenced
+     */
+    public void release(String blobKey) {
+        transactionTemplate.executeWithoutResult(status ->
+            blobRepository.releaseReference(blobKey, LocalDateTime.now()));
+    }
+
+    /**
+     * Delete one attachment of a user's message
+     */
+    public void deleteAttachment(Long userId, Long messageId, Long attachmentId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            messageRepository.findById(messageId)
+                .filter(message -> userId.equals(message.getUserId()))
+                .orElseThrow(() -> new ResourceNotFoundException("Message", messageId));
+            Attachment attachment = attachmentRepository.findById(attachmentId)
+                .filter(candidate -> messageId.equals(candidate.getMessageId()))
+                .orElseThrow(() -> new ResourceNotFoundException("Attachment", attachmentId));
+            blobRepository.releaseReference(attachment.getBlobPointer(), LocalDateTime.now());
+            attachmentRepository.delete(attachment);
+            userService.updateUsedStorage(userId, -attachment.getSizeBytes());
+        });
+    }
+
+    /**
+     * Delete all attachments of a message; joins the caller's transaction
+     */
+    public void deleteAttachments(Long userId, Long messageId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Attachment> attachments = attachmentRepository.findByMessageId(messageId);
+            if (attachments.isEmpty()) {
+                return;
+            }
+            releaseAll(userId, attachments);
+            attachmentRepository.deleteByMessageId(messageId);
+        });
+    }
+
+    /**
+     * Delete all attachments of several messages of a user; joins the caller's transaction
+     */
+    public void deleteAttachments(Long userId, Collection<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Attachment> attachments = attachmentRepository.findByMessageIds(messageIds);
+            if (attachments.isEmpty()) {
+                return;
+            }
+            releaseAll(userId, attachments);
+            attachmentRepository.deleteByMessageIds(messageIds);
+        });
+    }
+
+    /**
+     * Remove blobs that have been unreferenced for longer than the grace period
+     * @return Number of blobs removed
+     */
+    @Scheduled(fixedDelayString = "${email.attachment.gc.interval-ms:3600000}")
+    public int collectGarbage() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(gcGrace);
+        int removed = 0;
+        List<AttachmentBlob> orphans;
+        do {
+            orphans = blobRepository.findOrphans(cutoff, PageRequest.of(0, gcBatchSize));
+            for (AttachmentBlob orphan : orphans) {
+                Integer deleted = transactionTemplate.execute(status -> blobRepository.deleteOrphan(orphan.getId()));
+                if (deleted != null && deleted == 1) {
+                    remove(orphan.getBlobKey());
+                    removed++;
+                }
+            }
+        } while (orphans.size() == gcBatchSize);
+
+        if (removed > 0) {
+            collected.increment(removed);
+            log.info("Removed {} unreferenced attachment blobs", removed);
+        }
+        return removed;
+    }
+
+    private String reference(Long tenantId, String sha256) {
+        Integer updated = transactionTemplate.execute(status ->
+            blobRepository.addReference(tenantId, sha256, LocalDateTime.now()));
+        if (updated == null || updated == 0) {
+            return null;
+        }
+        // Referenced now, so the collector leaves it alone
+        return blobRepository.findByTenantIdAndSha256(tenantId, sha256)
+            .map(AttachmentBlob::getBlobKey)
+            .orElseThrow(() -> new IllegalStateException("Attachment blob " + sha256 + " not found"));
+    }
+
+    /**
+     * Drop one blob reference per attachment and give the attachments' bytes back to the user's quota
+     */
+    private void releaseAll(Long userId, List<Attachment> attachments) {
+        LocalDateTime now = LocalDateTime.now();
+        long bytes = 0;
+        for (Attachment attachment : attachments) {
+            blobRepository.releaseReference(attachment.getBlobPointer(), now);
+            bytes += attachment.getSizeBytes();
+        }
+        userService.updateUsedStorage(userId, -bytes);
+    }
+
+    /**
+     * Derived from the hash; the random suffix keeps a collected blob's key from being reused
+     */
+    static String blobKey(Long tenantId, String sha256) {
+        return "tenants/" + tenantId + "/blobs/" + sha256.substring(0, 2) + "/" + sha256 + "-"
+            + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private void upload(String key, Path file, String contentType) {
+        try {
+            blobStore.put(minIOConfig.getAttachmentsBucket(), key, file, contentType);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store attachment blob " + key, e);
+        }
+    }
+
+    private void remove(String key) {
+        try {
+            blobStore.delete(minIOConfig.getAttachmentsBucket(), key);
+        } catch (IOException e) {
+            log.warn("Failed to remove attachment blob {}: {}", key, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.projects.simpleemailclient.service.attachment;
+
+import com.example.projects.simpleemailclient.exception.QuotaExceededException;
+import com.example.projects.simpleemailclient.exception.ResourceNotFoundException;
+import com.example.projects.simpleemailclient.model.Attachment;
+import com.example.projects.simpleemailclient.model.User;
+import com.example.projects.simpleemailclient.repository.AttachmentRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams attachment uploads into content-addressed storage
+ * The data is never held whole: it is copied through a small buffer into a spool file,
+ * and the SHA-256 checksum and size are computed from the same bytes on the way
+ * through. Once the hash is known, AttachmentContentStore either adds a reference to
+ * content the tenant already has or uploads the file, so a duplicate costs no storage
+ * write at all. At most max-concurrent uploads run at once. Quota is enforced as bytes
+ * arrive: the bytes of a user's uploads still in flight count against the quota
+ * alongside the stored total, and an upload that crosses it, or the maximum attachment
+ * size, is cut off there.
+ */
+@Component
+@Slf4j
+public class AttachmentUploader {
+
+    private static final String PENDING_SCAN = "PENDING";
+
+    private final AttachmentContentStore contentStore;
+    private final AttachmentRepository attachmentRepository;
+    private final MessageRepository messageRepository;
+    private final UserService userService;
+    private final Map<Long, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final Semaphore uploadSlots;
+
+    private final long maxSize;
+    private final long slotWaitMs;
+    private final Path spoolDirectory;
+
+    public AttachmentUploader(AttachmentContentStore contentStore,
+                              AttachmentRepository attachmentRepository,
+                              MessageRepository messageRepository,
+                              UserService userService,
+                              @Value("${email.attachment.max-size:26214400}") long maxSize,
+                              @Value("${email.attachment.upload.max-concurrent:32}") int maxConcurrent,
+                              @Value("${email.attachment.upload.slot-wait-ms:30000}") long slotWaitMs,
+                              @Value("${email.attachment.upload.spool-dir:${java.io.tmpdir}}") String spoolDirectory) {
+        this.contentStore = contentStore;
+        this.attachmentRepository = attachmentRepository;
+        this.messageRepository = messageRepository;
+        this.userService = userService;
+        this.maxSize = maxSize;
+        this.slotWaitMs = slotWaitMs;
+        this.spoolDirectory = Path.of(spoolDirectory);
+        this.uploadSlots = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Store an attachment of one of a user's messages
+     * @param data Attachment content; read to the end but not closed
+     * @return Saved attachment with its size and checksum
+     * @throws QuotaExceededException if the upload would take the user over quota
+     * @throws IllegalArgumentException if the attachment is larger than the maximum size
+     */
+    public Attachment upload(Long userId, Long messageId, String filename, String contentType, InputStream data) {
+        if (filename == null || filename.isBlank()) {
+            throw new IllegalArgumentException("Attachment filename is required");
+        }
+        messageRepository.findById(messageId)
+            .filter(message -> userId.equals(message.getUserId()))
+            .orElseThrow(() -> new ResourceNotFoundException("Message", messageId));
+        User user = userService.getUserById(userId)
+            .orElseThrow(() -> new ResourceNotFoundException("User", userId));
+        if (user.getUsedBytes() >= user.getQuotaBytes()) {
+            throw new QuotaExceededException(userId, user.getQuotaBytes());
+        }
+        String mimeType = contentType == null || contentType.isBlank() ? "application/octet-stream" : contentType;
+
+        acquireSlot();
+        InFlight reservation = reserve(userId);
+        UploadStream in = new UploadStream(data, reservation, maxSize, user.getQuotaBytes(),
+            user.getQuotaBytes() - user.getUsedBytes());
+        Path spool = null;
+        try {
+            spool = Files.createTempFile(spoolDirectory, "attachment-", ".part");
+            spool(in, spool);
+            String sha256 = HexFormat.of().formatHex(in.digest.digest());
+            String key = contentStore.store(user.getTenantId(), sha256, in.size, spool, mimeType);
+            Attachment attachment;
+            try {
+                attachment = attachmentRepository.save(Attachment.builder()
+                    .messageId(messageId)
+                    .filename(filename)
+                    .sizeBytes(in.size)
+                    .mimeType(mimeType)
+                    .blobPointer(key)
+                    .checksumSha256(sha256)
+                    .isInline(false)
+                    .scanStatus(PENDING_SCAN)
+                    .build());
+                userService.updateUsedStorage(userId, in.size);
+            } catch (RuntimeException e) {
+                contentStore.release(key);
+                throw e;
+            }
+            log.info("Stored attachment {} ({} bytes) for message {}", attachment.getId(), in.size, messageId);
+            return attachment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spool attachment for message " + messageId, e);
+        } finally {
+            deleteSpool(spool);
+            release(userId, in.size);
+            uploadSlots.release();
+        }
+    }
+
+    private void spool(UploadStream in, Path spool) throws IOException {
+        try (OutputStream out = Files.newOutputStream(spool)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            if (in.overQuota) {
+                throw new QuotaExceededException(in.reservation.userId, in.quotaBytes);
+            }
+            if (in.overSize) {
+                throw new IllegalArgumentException("Attachment exceeds the maximum size of " + maxSize + " bytes");
+            }
+            throw e;
+        }
+    }
+
+    private static void deleteSpool(Path spool) {
+        if (spool == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spool);
+        } catch (IOException e) {
+            log.warn("Failed to delete attachment spool file {}: {}", spool, e.getMessage());
+        }
+    }
+
+    private void acquireSlot() {
+        try {
+            if (!uploadSlots.tryAcquire(slotWaitMs, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Too many attachment uploads in progress; try again later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting to upload an attachment", e);
+        }
+    }
+
+    private InFlight reserve(Long userId) {
+        return inFlight.compute(userId, (id, current) -> {
+            InFlight reservation = current != null ? current : new InFlight(id);
+            reservation.uploads++;
+            return reservation;
+        });
+    }
+
+    private void release(Long userId, long bytes) {
+        inFlight.compute(userId, (id, reservation) -> {
+            reservation.bytes.addAndGet(-bytes);
+            return --reservation.uploads == 0 ? null : reservation;
+        });
+    }
+
+    /**
+     * Bytes of a user's uploads that are not yet counted in usedBytes
+     */
+    private static final class InFlight {
+        final Long userId;
+        final AtomicLong bytes = new AtomicLong();
+        // Guarded by the map's compute
+        int uploads;
+
+        InFlight(Long userId) {
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * Hashes, counts and limits the bytes being spooled
+     */
+    private static final class UploadStream extends FilterInputStream {
+        final InFlight reservation;
+        final MessageDigest digest;
+        final long maxSize;
+        final long quotaBytes;
+        // Free quota when the upload started
+        final long available;
+        long size;
+        boolean overSize;
+        boolean overQuota;
+
+        UploadStream(InputStream in, InFlight reservation, long maxSize, long quotaBytes, long available) {
+            super(in);
+            this.reservation = reservation;
+            this.maxSize = maxSize;
+            this.quotaBytes = quotaBytes;
+            this.available = available;
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                digest.update((byte) b);
+                consumed(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                digest.update(buffer, offset, read);
+                consumed(read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // The caller owns the source stream
+        }
+
+        private void consumed(int bytes) throws IOException {
+            size += bytes;
+            long reserved = reservation.bytes.addAndGet(bytes);
+            if (size > maxSize) {
+                overSize = true;
+                throw new IOException("Attachment exceeds " + maxSize + " bytes");
+            }
+            if (reserved > available) {
+                overQuota = true;
+                throw new IOException("Upload exceeds the remaining quota");
+            }
+        }
+    }
+}
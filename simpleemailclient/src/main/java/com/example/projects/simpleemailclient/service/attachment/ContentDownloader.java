@@ -0,0 +1,203 @@
+package com.example.projects.simpleemailclient.service.attachment;
+
+import com.example.projects.simpleemailclient.config.MinIOConfig;
+import com.example.projects.simpleemailclient.exception.ResourceNotFoundException;
+import com.example.projects.simpleemailclient.model.Attachment;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.AttachmentRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.service.storage.BlobInfo;
+import com.example.projects.simpleemailclient.service.storage.BlobStore;
+import com.example.projects.simpleemailclient.service.storage.MessageContentStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+
+/**
+ * Downloads of attachments and raw messages, streamed from blob storage
+ * Only the requested bytes are fetched: a single HTTP Range maps to a ranged read of the
+ * object, copied to the response by BlobStore.transferTo (a fixed-size buffer from
+ * MinIO, FileChannel.transferTo from the local store), so memory per download is flat
+ * whatever the object's size; a raw message is decompressed as it is sent (see
+ * MessageContentStore), and its size is the uncompressed one. Attachments are content-addressed and
+ * never change, so their ETag is the SHA-256 and clients may cache them indefinitely; a
+ * raw message's ETag is its object's. Multiple ranges in one request are not supported
+ * and get the whole object, as HTTP allows.
+ */
+@Component
+@RequiredArgsConstructor
+public class ContentDownloader {
+
+    private static final String MESSAGE_CONTENT_TYPE = "message/rfc822";
+
+    private final BlobStore blobStore;
+    private final MessageContentStore messageContentStore;
+    private final MinIOConfig minIOConfig;
+    private final AttachmentRepository attachmentRepository;
+    private final MessageRepository messageRepository;
+
+    /**
+     * @param range Range request header, or null
+     * @param ifNoneMatch If-None-Match request header, or null
+     * @param ifRange If-Range request header, or null
+     */
+    public Download attachment(Long userId, Long messageId, Long attachmentId,
+                               String range, String ifNoneMatch, String ifRange) {
+        messageRepository.findByIdAndUserId(messageId, userId)
+            .orElseThrow(() -> new ResourceNotFoundException("Message", messageId));
+        Attachment attachment = attachmentRepository.findById(attachmentId)
+            .filter(candidate -> messageId.equals(candidate.getMessageId()))
+            .orElseThrow(() -> new ResourceNotFoundException("Attachment", attachmentId));
+        String etag = "\"" + attachment.getChecksumSha256() + "\"";
+        String bucket = minIOConfig.getAttachmentsBucket();
+        String key = attachment.getBlobPointer();
+        return prepare((offset, length, out) -> blobStore.transferTo(bucket, key, offset, length, out),
+            attachment.getSizeBytes(), etag, attachment.getMimeType(), attachment.getFilename(), true, range,
+            ifNoneMatch, ifRange);
+    }
+
+    /**
+     * The message as stored, in RFC 822 form
+     */
+    public Download message(Long userId, Long messageId, String range, String ifNoneMatch, String ifRange) {
+        Message message = messageRepository.findByIdAndUserId(messageId, userId)
+            .orElseThrow(() -> new ResourceNotFoundException("Message", messageId));
+        if (message.getMimePointer() == null || message.getMimePointer().isBlank()) {
+            throw new ResourceNotFoundException("No stored content for message " + messageId);
+        }
+        String pointer = message.getMimePointer();
+        BlobInfo stat = stat(pointer, messageId);
+        String etag = "\"" + stat.getEtag() + "\"";
+        return prepare((offset, length, out) -> messageContentStore.transferTo(pointer, offset, length, out),
+            stat.getSize(), etag, MESSAGE_CONTENT_TYPE, message.getId() + ".eml", false, range, ifNoneMatch,
+            ifRange);
+    }
+
+    private Download prepare(Source source, long size, String etag, String contentType,
+                             String filename, boolean immutable, String range, String ifNoneMatch,
+                             String ifRange) {
+        if (matches(ifNoneMatch, etag)) {
+            return new Download(HttpStatus.NOT_MODIFIED, etag, size, 0, null, contentType, filename, immutable,
+                null);
+        }
+        // A resumed download of content that has since changed starts over
+        ByteRange requested = ifRange == null || ifRange.trim().equals(etag) ? ByteRange.parse(range, size) : null;
+        if (requested == ByteRange.UNSATISFIABLE) {
+            return new Download(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, etag, size, 0, null, contentType,
+                filename, immutable, null);
+        }
+        if (requested == null) {
+            return new Download(HttpStatus.OK, etag, size, size, null, contentType, filename, immutable,
+                body(source, 0, size));
+        }
+        long length = requested.end - requested.start + 1;
+        return new Download(HttpStatus.PARTIAL_CONTENT, etag, size, length,
+            "bytes " + requested.start + "-" + requested.end + "/" + size, contentType, filename, immutable,
+            body(source, requested.start, length));
+    }
+
+    private StreamingResponseBody body(Source source, long offset, long length) {
+        return out -> {
+            if (length > 0) {
+                source.transferTo(offset, length, out);
+            }
+        };
+    }
+
+    private BlobInfo stat(String pointer, Long messageId) {
+        try {
+            return messageContentStore.stat(pointer);
+        } catch (NoSuchFileException e) {
+            throw new ResourceNotFoundException("No stored content for message " + messageId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read object " + pointer, e);
+        }
+    }
+
+    /**
+     * Weak comparison, as If-None-Match requires
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies part of the content being downloaded
+     */
+    private interface Source {
+        void transferTo(long offset, long length, OutputStream out) throws IOException;
+    }
+
+    /**
+     * One byte range, inclusive at both ends
+     */
+    static final class ByteRange {
+
+        static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+        final long start;
+        final long end;
+
+        ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return The range to send; UNSATISFIABLE if it lies outside the object; null to
+         * send the whole object (no header, a malformed one, or several ranges)
+         */
+        static ByteRange parse(String header, long size) {
+            if (header == null || !header.trim().startsWith("bytes=")) {
+                return null;
+            }
+            String spec = header.trim().substring("bytes=".length()).trim();
+            int dash = spec.indexOf('-');
+            if (spec.contains(",") || dash < 0) {
+                return null;
+            }
+            try {
+                if (dash == 0) {
+                    long suffix = Long.parseLong(spec.substring(1).trim());
+                    if (suffix <= 0 || size == 0) {
+                        return UNSATISFIABLE;
+                    }
+                    return new ByteRange(Math.max(0, size - suffix), size - 1);
+                }
+                long start = Long.parseLong(spec.substring(0, dash).trim());
+                String last = spec.substring(dash + 1).trim();
+                long end = last.isEmpty() ? size - 1 : Long.parseLong(last);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                if (start >= size) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(start, Math.min(end, size - 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
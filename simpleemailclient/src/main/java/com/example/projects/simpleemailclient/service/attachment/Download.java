@@ -0,0 +1,98 @@
+package com.example.projects.simpleemailclient.service.attachment;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A prepared download: the response status and headers, and a body that streams the
+ * requested bytes when the response is written
+ */
+public final class Download {
+
+    private final HttpStatus status;
+    private final String etag;
+    private final long objectSize;
+    private final long contentLength;
+    private final String contentRange;
+    private final String contentType;
+    private final String filename;
+    private final boolean immutable;
+    private final StreamingResponseBody body;
+
+    Download(HttpStatus status, String etag, long objectSize, long contentLength, String contentRange,
+             String contentType, String filename, boolean immutable, StreamingResponseBody body) {
+        this.status = status;
+        this.etag = etag;
+        this.objectSize = objectSize;
+        this.contentLength = contentLength;
+        this.contentRange = contentRange;
+        this.contentType = contentType;
+        this.filename = filename;
+        this.immutable = immutable;
+        this.body = body;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public String getContentRange() {
+        return contentRange;
+    }
+
+    public StreamingResponseBody getBody() {
+        return body;
+    }
+
+    public ResponseEntity<StreamingResponseBody> toResponseEntity() {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(status)
+            .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+            .eTag(etag);
+        if (immutable) {
+            response.cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable());
+        } else {
+            response.cacheControl(CacheControl.noCache().cachePrivate());
+        }
+        if (status == HttpStatus.NOT_MODIFIED) {
+            return response.build();
+        }
+        if (status == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE) {
+            return response.header(HttpHeaders.CONTENT_RANGE, "bytes */" + objectSize).build();
+        }
+        if (contentRange != null) {
+            response.header(HttpHeaders.CONTENT_RANGE, contentRange);
+        }
+        if (filename != null) {
+            response.header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(filename, StandardCharsets.UTF_8).build().toString());
+        }
+        return response.contentType(mediaType(contentType))
+            .contentLength(contentLength)
+            .body(body);
+    }
+
+    private static MediaType mediaType(String contentType) {
+        try {
+            return MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+}
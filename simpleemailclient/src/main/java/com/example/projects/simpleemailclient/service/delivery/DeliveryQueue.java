@@ -0,0 +1,479 @@
+package com.example.projects.simpleemailclient.service.delivery;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.OutboundDelivery;
+import com.example.projects.simpleemailclient.model.OutboundDelivery.Status;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.OutboundDeliveryRepository;
+import com.example.projects.simpleemailclient.service.NotificationService;
+import com.example.projects.simpleemailclient.service.storage.MessageContentStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent outbound SMTP queue
+ * A sent message is queued as one outbound_deliveries row per recipient domain, so all
+ * of a domain's recipients go in the same transactions (up to
+ * max-recipients-per-transaction each) rather than one per recipient. Every node polls
+ * for due rows and leases them, as ReindexPipeline does with shards; a node that dies
+ * loses its lease and another picks the rows up. Claimed rows are grouped by the
+ * servers they resolve to, and each group is spread over at most
+ * max-connections-per-host lanes, each working through its rows on one pooled,
+ * pipelined session (see SmtpConnectionPool). A bulk send to thousands of recipients
+ * therefore opens a handful of connections. A lane renews a row's lease before each
+ * mail transaction and leaves a row whose lease was lost to its new owner. Recipients
+ * refused with a 5xx fail at once; 4xx replies and connection failures are retried with
+ * exponential backoff until max-attempts, then fail. Each deferral and each message's
+ * final outcome are reported through NotificationService.notifyDeliveryStatus.
+ */
+@Component
+@Slf4j
+public class DeliveryQueue {
+
+    public static final String DELIVERED = "DELIVERED";
+    public static final String PARTIALLY_DELIVERED = "PARTIALLY_DELIVERED";
+    public static final String DEFERRED = "DEFERRED";
+    public static final String FAILED = "FAILED";
+
+    private final OutboundDeliveryRepository deliveryRepository;
+    private final MessageRepository messageRepository;
+    private final MessageContentStore messageContentStore;
+    private final SmtpConnectionPool connectionPool;
+    private final MxResolver mxResolver;
+    private final NotificationService notificationService;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter delivered;
+    private final Counter deferred;
+    private final Counter failed;
+    private final Counter transactions;
+
+    private final int batchSize;
+    private final Duration lease;
+    private final int maxRecipients;
+    private final Duration initialDelay;
+    private final Duration maxDelay;
+    private final int maxAttempts;
+    private final String nodeId;
+    private final ExecutorService workers;
+    private volatile boolean stopping;
+
+    Clock clock = Clock.systemUTC();
+
+    public DeliveryQueue(OutboundDeliveryRepository deliveryRepository,
+                         MessageRepository messageRepository,
+                         MessageContentStore messageContentStore,
+                         SmtpConnectionPool connectionPool,
+                         MxResolver mxResolver,
+                         NotificationService notificationService,
+                         TransactionTemplate transactionTemplate,
+                         MeterRegistry meterRegistry,
+                         @Value("${email.delivery.threads:8}") int threads,
+                         @Value("${email.delivery.batch-size:200}") int batchSize,
+                         @Value("${email.delivery.lease-seconds:600}") long leaseSeconds,
+                         @Value("${email.delivery.max-recipients-per-transaction:100}") int maxRecipients,
+                         @Value("${email.delivery.retry.initial-delay-seconds:300}") long initialDelaySeconds,
+                         @Value("${email.delivery.retry.max-delay-seconds:14400}") long maxDelaySeconds,
+                         @Value("${email.delivery.retry.max-attempts:12}") int maxAttempts) {
+        this.deliveryRepository = deliveryRepository;
+        this.messageRepository = messageRepository;
+        this.messageContentStore = messageContentStore;
+        this.connectionPool = connectionPool;
+        this.mxResolver = mxResolver;
+        this.notificationService = notificationService;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.maxRecipients = maxRecipients;
+        this.initialDelay = Duration.ofSeconds(initialDelaySeconds);
+        this.maxDelay = Duration.ofSeconds(maxDelaySeconds);
+        this.maxAttempts = maxAttempts;
+        this.nodeId = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "smtp-delivery-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.delivered = recipientCounter(meterRegistry, "delivered");
+        this.deferred = recipientCounter(meterRegistry, "deferred");
+        this.failed = recipientCounter(meterRegistry, "failed");
+        this.transactions = Counter.builder("email.delivery.transactions")
+            .description("SMTP mail transactions run")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Queue a stored message for delivery; ComposeService.sendMessage hands sent mail here
+     * @param sender Envelope sender
+     * @param recipients Envelope recipients, Bcc included; duplicates are sent once
+     * @return The rows queued, one per recipient domain
+     */
+    public List<OutboundDelivery> enqueue(Long userId, Long messageId, String sender, Collection<String> recipients) {
+        Map<String, Set<String>> byDomain = new LinkedHashMap<>();
+        Set<String> seen = new LinkedHashSet<>();
+        for (String recipient : recipients) {
+            String address = recipient.trim();
+            int at = address.lastIndexOf('@');
+            if (at <= 0 || at == address.length() - 1) {
+                throw new IllegalArgumentException("Invalid recipient address: " + recipient);
+            }
+            if (seen.add(address.toLowerCase(Locale.ROOT))) {
+                String domain = address.substring(at + 1).toLowerCase(Locale.ROOT);
+                byDomain.computeIfAbsent(domain, key -> new LinkedHashSet<>()).add(address);
+            }
+        }
+        if (byDomain.isEmpty()) {
+            throw new IllegalArgumentException("At least one recipient is required");
+        }
+
+        LocalDateTime now = LocalDateTime.now(clock);
+        List<OutboundDelivery> rows = new ArrayList<>(byDomain.size());
+        for (Map.Entry<String, Set<String>> entry : byDomain.entrySet()) {
+            rows.add(OutboundDelivery.builder()
+                .userId(userId)
+                .messageId(messageId)
+                .sender(sender)
+                .domain(entry.getKey())
+                .recipients(String.join(",", entry.getValue()))
+                .status(Status.QUEUED)
+                .nextAttemptAt(now)
+                .updatedAt(now)
+                .build());
+        }
+        List<OutboundDelivery> saved = transactionTemplate.execute(status -> deliveryRepository.saveAll(rows));
+        log.info("Queued message {} for {} recipients at {} domains", messageId, seen.size(), rows.size());
+        return saved;
+    }
+
+    /**
+     * Lease due rows and deliver them; returns once the batch is done
+     * @return Number of rows attempted
+     */
+    @Scheduled(fixedDelayString = "${email.delivery.poll-interval-ms:5000}")
+    public int dispatch() {
+        if (stopping) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now(clock);
+        List<OutboundDelivery> claimed = new ArrayList<>();
+        for (OutboundDelivery row : deliveryRepository.findDue(now, Status.QUEUED, Status.SENDING,
+                PageRequest.of(0, batchSize))) {
+            Integer taken = transactionTemplate.execute(status -> deliveryRepository.claim(
+                row.getId(), nodeId, now, now.plus(lease), Status.QUEUED, Status.SENDING));
+            if (taken != null && taken == 1) {
+                claimed.add(row);
+            }
+        }
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+
+        // Domains served by the same servers share their connections
+        Map<List<Route>, List<OutboundDelivery>> byRoutes = new LinkedHashMap<>();
+        for (OutboundDelivery row : claimed) {
+            try {
+                byRoutes.computeIfAbsent(mxResolver.resolve(row.getDomain()), key -> new ArrayList<>()).add(row);
+            } catch (IOException e) {
+                finish(row, Map.of(), failure(e));
+            }
+        }
+        List<Callable<Void>> lanes = new ArrayList<>();
+        for (Map.Entry<List<Route>, List<OutboundDelivery>> entry : byRoutes.entrySet()) {
+            int laneCount = Math.min(connectionPool.getMaxConnections(), entry.getValue().size());
+            for (int lane = 0; lane < laneCount; lane++) {
+                List<OutboundDelivery> rows = new ArrayList<>();
+                for (int i = lane; i < entry.getValue().size(); i += laneCount) {
+                    rows.add(entry.getValue().get(i));
+                }
+                lanes.add(() -> {
+                    deliverLane(entry.getKey(), rows);
+                    return null;
+                });
+            }
+        }
+        try {
+            workers.invokeAll(lanes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return claimed.size();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        stopping = true;
+        workers.shutdown();
+        // Rows still being sent are retried elsewhere once their lease runs out
+        workers.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Deliver rows one after another over one session, opening another only if it breaks
+     */
+    private void deliverLane(List<Route> routes, List<OutboundDelivery> rows) {
+        SmtpConnection connection = null;
+        try {
+            for (OutboundDelivery row : rows) {
+                Map<String, SmtpReply> outcome = new LinkedHashMap<>();
+                SmtpReply error = null;
+                boolean leaseLost = false;
+                try {
+                    String pointer = messageRepository.findById(row.getMessageId())
+                        .map(Message::getMimePointer)
+                        .filter(value -> !value.isBlank())
+                        .orElse(null);
+                    if (pointer == null) {
+                        throw new SmtpException(new SmtpReply(554, "5.6.0 Message content not found"));
+                    }
+                    List<String> pending = recipients(row);
+                    for (int start = 0; start < pending.size(); start += maxRecipients) {
+                        // Rows late in a lane may have been claimed longer ago than the lease lasts
+                        if (!renewLease(row)) {
+                            leaseLost = true;
+                            break;
+                        }
+                        List<String> chunk = pending.subList(start, Math.min(pending.size(), start + maxRecipients));
+                        boolean fresh = connection == null;
+                        if (connection == null) {
+                            connection = connect(routes);
+                        }
+                        try {
+                            outcome.putAll(send(connection, row.getSender(), chunk, pointer));
+                        } catch (IOException e) {
+                            connectionPool.release(connection, false);
+                            connection = null;
+                            if (fresh) {
+                                throw e;
+                            }
+                            // A reused session may have been dropped while idle; retry once on a new one
+                            connection = connect(routes);
+                            outcome.putAll(send(connection, row.getSender(), chunk, pointer));
+                        }
+                    }
+                } catch (IOException e) {
+                    error = failure(e);
+                    if (connection != null) {
+                        connectionPool.release(connection, false);
+                        connection = null;
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Delivery {} of message {} failed: {}", row.getId(), row.getMessageId(), e.toString());
+                    error = new SmtpReply(451, "4.3.0 " + e);
+                }
+                if (leaseLost) {
+                    log.warn("Lost the lease of delivery {} of message {}; not sending it", row.getId(),
+                        row.getMessageId());
+                    continue;
+                }
+                finish(row, outcome, error);
+            }
+        } finally {
+            if (connection != null) {
+                connectionPool.release(connection, true);
+            }
+        }
+    }
+
+    /**
+     * Extend a row's lease before another transaction for it
+     * @return false if another node has taken the row over
+     */
+    private boolean renewLease(OutboundDelivery row) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        Integer renewed = transactionTemplate.execute(status -> deliveryRepository.renew(
+            row.getId(), nodeId, now, now.plus(lease), Status.SENDING));
+        return renewed != null && renewed == 1;
+    }
+
+    private Map<String, SmtpReply> send(SmtpConnection connection, String sender, List<String> recipients,
+                                        String pointer) throws IOException {
+        try (InputStream content = messageContentStore.open(pointer)) {
+            transactions.increment();
+            return connection.send(sender, recipients, content);
+        }
+    }
+
+    /**
+     * Borrow a session to the most preferred server that answers
+     */
+    private SmtpConnection connect(List<Route> routes) throws IOException {
+        IOException last = null;
+        for (Route route : routes) {
+            try {
+                return connectionPool.borrow(route);
+            } catch (SmtpException e) {
+                last = e;
+            } catch (IOException e) {
+                last = new SmtpException(new SmtpReply(451, "4.4.1 Cannot connect to " + route + ": " + e));
+            }
+        }
+        throw last;
+    }
+
+    /**
+     * Record an attempt: remove accepted and refused recipients, and reschedule or fail the rest
+     * @param outcome Replies for the recipients tried
+     * @param error Reply for recipients not tried, or null if all were
+     */
+    private void finish(OutboundDelivery row, Map<String, SmtpReply> outcome, SmtpReply error) {
+        List<String> pending = new ArrayList<>();
+        StringBuilder refused = new StringBuilder(row.getFailedRecipients() != null ? row.getFailedRecipients() : "");
+        int accepted = 0;
+        int rejected = 0;
+        SmtpReply lastTransient = null;
+        for (String recipient : recipients(row)) {
+            SmtpReply reply = outcome.containsKey(recipient) ? outcome.get(recipient) : error;
+            if (reply == null) {
+                reply = new SmtpReply(451, "4.3.0 Not attempted");
+            }
+            if (reply.isPositive()) {
+                accepted++;
+            } else if (reply.isPermanent()) {
+                appendFailure(refused, recipient, reply.toString());
+                rejected++;
+            } else {
+                pending.add(recipient);
+                lastTransient = reply;
+            }
+        }
+
+        int attempts = row.getAttempts() + 1;
+        LocalDateTime now = LocalDateTime.now(clock);
+        Status status = Status.QUEUED;
+        LocalDateTime nextAttemptAt = now.plus(jittered(backoff(attempts, initialDelay, maxDelay)));
+        if (!pending.isEmpty() && attempts >= maxAttempts) {
+            for (String recipient : pending) {
+                appendFailure(refused, recipient, "Gave up after " + attempts + " attempts: " + lastTransient);
+            }
+            rejected += pending.size();
+            pending.clear();
+        }
+        if (pending.isEmpty()) {
+            status = Status.DONE;
+            nextAttemptAt = now;
+        }
+        String lastError = lastTransient != null ? truncate(lastTransient.toString()) : null;
+        Status finalStatus = status;
+        LocalDateTime next = nextAttemptAt;
+        int done = accepted;
+        Integer updated = transactionTemplate.execute(state -> deliveryRepository.finish(row.getId(), nodeId,
+            finalStatus, String.join(",", pending), done, refused.length() > 0 ? refused.toString() : null,
+            next, lastError, now, Status.SENDING));
+        if (updated == null || updated == 0) {
+            log.warn("Lost the lease of delivery {} of message {}", row.getId(), row.getMessageId());
+            return;
+        }
+        delivered.increment(accepted);
+        failed.increment(rejected);
+        deferred.increment(pending.size());
+        report(row, status);
+    }
+
+    /**
+     * Tell the sender about a deferral, or about the message once none of its rows is open
+     * Two rows of a message finishing together may both report the final outcome.
+     */
+    private void report(OutboundDelivery row, Status status) {
+        try {
+            if (status == Status.QUEUED) {
+                notificationService.notifyDeliveryStatus(row.getUserId(), row.getMessageId(), DEFERRED);
+                return;
+            }
+            List<OutboundDelivery> rows = deliveryRepository.findByMessageId(row.getMessageId());
+            if (rows.stream().anyMatch(candidate -> candidate.getStatus() != Status.DONE)) {
+                return;
+            }
+            int accepted = rows.stream().mapToInt(OutboundDelivery::getDeliveredCount).sum();
+            boolean anyFailed = rows.stream().anyMatch(candidate -> candidate.getFailedRecipients() != null);
+            String outcome = !anyFailed ? DELIVERED : accepted == 0 ? FAILED : PARTIALLY_DELIVERED;
+            notificationService.notifyDeliveryStatus(row.getUserId(), row.getMessageId(), outcome);
+        } catch (RuntimeException e) {
+            log.warn("Failed to report delivery status of message {}: {}", row.getMessageId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Delay before the next attempt: initial, doubling with each attempt, up to max
+     */
+    static Duration backoff(int attempts, Duration initial, Duration max) {
+        int doublings = Math.min(Math.max(attempts - 1, 0), 30);
+        Duration delay = initial.multipliedBy(1L << doublings);
+        return delay.compareTo(max) > 0 ? max : delay;
+    }
+
+    /**
+     * Add up to a tenth, so rows deferred together do not all come back together
+     */
+    private static Duration jittered(Duration delay) {
+        long bound = delay.toMillis() / 10;
+        return bound > 0 ? delay.plusMillis(ThreadLocalRandom.current().nextLong(bound)) : delay;
+    }
+
+    private static List<String> recipients(OutboundDelivery row) {
+        return row.getRecipients().isEmpty() ? List.of() : Arrays.asList(row.getRecipients().split(","));
+    }
+
+    private static SmtpReply failure(IOException e) {
+        if (e instanceof SmtpException) {
+            return ((SmtpException) e).getReply();
+        }
+        return new SmtpReply(451, "4.4.2 " + e);
+    }
+
+    private static void appendFailure(StringBuilder refused, String recipient, String reason) {
+        if (refused.length() > 0) {
+            refused.append('\n');
+        }
+        refused.append(recipient).append(": ").append(reason.replace('\n', ' '));
+    }
+
+    private static String truncate(String text) {
+        return text.length() > 1000 ? text.substring(0, 1000) : text;
+    }
+
+    private static Counter recipientCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("email.delivery.recipients")
+            .description("Recipients by delivery attempt outcome")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "node";
+        }
+    }
+}
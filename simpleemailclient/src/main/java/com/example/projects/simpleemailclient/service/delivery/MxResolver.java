@@ -0,0 +1,119 @@
+package com.example.projects.simpleemailclient.service.delivery;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the servers that take mail for a domain
+ * With a relay configured every domain goes to it; otherwise the domain's MX hosts are
+ * looked up in DNS, in order of preference, falling back to the domain itself when it
+ * has none (RFC 5321 section 5.1). Answers are cached for a few minutes, so a bulk send
+ * resolves each domain once.
+ */
+@Component
+public class MxResolver {
+
+    private static final Duration CACHE_TTL = Duration.ofMinutes(5);
+
+    private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+
+    private final String relayHost;
+    private final int relayPort;
+    private final int smtpPort;
+
+    public MxResolver(@Value("${email.delivery.relay-host:}") String relayHost,
+                      @Value("${email.delivery.relay-port:25}") int relayPort,
+                      @Value("${email.delivery.smtp-port:25}") int smtpPort) {
+        this.relayHost = relayHost;
+        this.relayPort = relayPort;
+        this.smtpPort = smtpPort;
+    }
+
+    /**
+     * @return Servers to try in order
+     * @throws SmtpException with a permanent reply if the domain does not exist or takes no mail
+     */
+    public List<Route> resolve(String domain) throws IOException {
+        if (!relayHost.isBlank()) {
+            return List.of(new Route(relayHost, relayPort));
+        }
+        Cached cached = cache.get(domain);
+        if (cached != null && cached.expiresAt > System.nanoTime()) {
+            return cached.routes;
+        }
+        List<Route> routes = lookup(domain);
+        cache.put(domain, new Cached(routes, System.nanoTime() + CACHE_TTL.toNanos()));
+        return routes;
+    }
+
+    private List<Route> lookup(String domain) throws IOException {
+        Hashtable<String, String> environment = new Hashtable<>();
+        environment.put("java.naming.factory.initial", "com.sun.jndi.dns.DnsContextFactory");
+        try {
+            DirContext context = new InitialDirContext(environment);
+            try {
+                Attributes attributes = context.getAttributes(domain, new String[] {"MX"});
+                Attribute mx = attributes.get("MX");
+                if (mx == null || mx.size() == 0) {
+                    return List.of(new Route(domain, smtpPort));
+                }
+                List<String[]> records = new ArrayList<>();
+                NamingEnumeration<?> values = mx.getAll();
+                while (values.hasMore()) {
+                    // "preference exchange."
+                    String[] record = values.next().toString().trim().split("\\s+");
+                    if (record.length == 2) {
+                        records.add(record);
+                    }
+                }
+                records.sort(Comparator.comparingInt(record -> Integer.parseInt(record[0])));
+                List<Route> routes = new ArrayList<>(records.size());
+                for (String[] record : records) {
+                    String host = record[1].endsWith(".") ? record[1].substring(0, record[1].length() - 1) : record[1];
+                    if (host.isEmpty()) {
+                        // Null MX (RFC 7505)
+                        throw new SmtpException(new SmtpReply(556, "5.1.10 " + domain + " does not accept mail"));
+                    }
+                    routes.add(new Route(host, smtpPort));
+                }
+                if (routes.isEmpty()) {
+                    throw new IOException("No usable MX records for " + domain);
+                }
+                return routes;
+            } finally {
+                context.close();
+            }
+        } catch (NameNotFoundException e) {
+            throw new SmtpException(new SmtpReply(550, "5.1.2 Domain " + domain + " not found"));
+        } catch (NamingException | NumberFormatException e) {
+            throw new IOException("MX lookup for " + domain + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static final class Cached {
+
+        final List<Route> routes;
+        final long expiresAt;
+
+        Cached(List<Route> routes, long expiresAt) {
+            this.routes = routes;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.projects.simpleemailclient.service.delivery;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * An SMTP server to hand mail to: an MX host of the recipient domain, or the relay
+ */
+public final class Route {
+
+    private final String host;
+    private final int port;
+
+    public Route(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Route)) {
+            return false;
+        }
+        Route route = (Route) other;
+        return port == route.port && host.equalsIgnoreCase(route.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host.toLowerCase(Locale.ROOT), port);
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
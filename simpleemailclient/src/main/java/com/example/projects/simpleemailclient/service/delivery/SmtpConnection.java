@@ -0,0 +1,318 @@
+package com.example.projects.simpleemailclient.service.delivery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A client session with one SMTP server, reused for many mail transactions
+ * With PIPELINING (RFC 2920), MAIL, every RCPT and DATA of a transaction go out in one
+ * write and their replies are read afterwards, so a transaction takes two round trips
+ * however many recipients it has; without it each command waits for its reply. After
+ * a failed transaction the session is RSET, so the next can use it.
+ */
+final class SmtpConnection implements Closeable {
+
+    private static final int MAX_LINE_BYTES = 4096;
+    private static final int BUFFER_BYTES = 16384;
+
+    private final Route route;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Set<String> extensions = new HashSet<>();
+    private int transactions;
+    private long idleSince = System.nanoTime();
+    // False once the session is in an unknown state
+    private boolean usable = true;
+
+    private SmtpConnection(Route route, Socket socket) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_BYTES);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_BYTES);
+    }
+
+    /**
+     * Connect and greet
+     * @throws SmtpException if the server will not take mail from us now
+     */
+    static SmtpConnection open(Route route, String heloName, int connectTimeoutMs, int readTimeoutMs)
+            throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(route.getHost(), route.getPort()), connectTimeoutMs);
+            socket.setSoTimeout(readTimeoutMs);
+            SmtpConnection connection = new SmtpConnection(route, socket);
+            connection.handshake(heloName);
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    Route getRoute() {
+        return route;
+    }
+
+    int getTransactions() {
+        return transactions;
+    }
+
+    boolean isUsable() {
+        return usable && !socket.isClosed();
+    }
+
+    boolean supportsPipelining() {
+        return extensions.contains("PIPELINING");
+    }
+
+    long idleNanos() {
+        return System.nanoTime() - idleSince;
+    }
+
+    void markIdle() {
+        idleSince = System.nanoTime();
+    }
+
+    /**
+     * Run one mail transaction
+     * @param content The message; line endings are made CRLF and leading dots doubled
+     * @return The reply deciding each recipient: the final DATA reply for those accepted,
+     *     otherwise the RCPT or MAIL reply that refused them
+     */
+    Map<String, SmtpReply> send(String sender, List<String> recipients, InputStream content) throws IOException {
+        transactions++;
+        try {
+            return transaction(sender, recipients, content);
+        } catch (IOException | RuntimeException e) {
+            usable = false;
+            throw e;
+        }
+    }
+
+    private Map<String, SmtpReply> transaction(String sender, List<String> recipients, InputStream content)
+            throws IOException {
+        SmtpReply mail;
+        List<SmtpReply> rcpts = new ArrayList<>(recipients.size());
+        SmtpReply data = null;
+        if (supportsPipelining()) {
+            write("MAIL FROM:<" + sender + ">");
+            for (String recipient : recipients) {
+                write("RCPT TO:<" + recipient + ">");
+            }
+            write("DATA");
+            out.flush();
+            mail = readReply();
+            for (int i = 0; i < recipients.size(); i++) {
+                rcpts.add(readReply());
+            }
+            data = readReply();
+        } else {
+            mail = command("MAIL FROM:<" + sender + ">");
+            if (mail.isPositive()) {
+                for (String recipient : recipients) {
+                    rcpts.add(command("RCPT TO:<" + recipient + ">"));
+                }
+                if (rcpts.stream().anyMatch(SmtpReply::isPositive)) {
+                    data = command("DATA");
+                }
+            }
+        }
+
+        boolean anyAccepted = mail.isPositive() && rcpts.stream().anyMatch(SmtpReply::isPositive);
+        SmtpReply result = data;
+        if (data != null && data.getCode() == 354) {
+            if (anyAccepted) {
+                writeContent(content);
+            }
+            // With nothing accepted a pipelining server may still open DATA; end it empty
+            write(".");
+            out.flush();
+            result = readReply();
+        }
+
+        Map<String, SmtpReply> outcome = new LinkedHashMap<>();
+        for (int i = 0; i < recipients.size(); i++) {
+            SmtpReply reply;
+            if (!mail.isPositive()) {
+                reply = mail;
+            } else if (!rcpts.get(i).isPositive()) {
+                reply = rcpts.get(i);
+            } else {
+                reply = result;
+            }
+            outcome.put(recipients.get(i), reply);
+        }
+        if (result == null || !result.isPositive() || !anyAccepted) {
+            if (!command("RSET").isPositive()) {
+                usable = false;
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * End the session politely; the socket is closed whatever the server says
+     */
+    void quit() {
+        try {
+            if (isUsable()) {
+                command("QUIT");
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        usable = false;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    private void handshake(String heloName) throws IOException {
+        SmtpReply greeting = readReply();
+        if (greeting.getCode() != 220) {
+            throw new SmtpException(greeting);
+        }
+        SmtpReply ehlo = command("EHLO " + heloName);
+        if (ehlo.getCode() == 250) {
+            String[] lines = ehlo.getText().split("\n");
+            // The first line is the server's greeting, the rest its extensions
+            for (int i = 1; i < lines.length; i++) {
+                String keyword = lines[i].trim().split(" ", 2)[0];
+                extensions.add(keyword.toUpperCase(Locale.ROOT));
+            }
+            return;
+        }
+        SmtpReply helo = command("HELO " + heloName);
+        if (helo.getCode() != 250) {
+            throw new SmtpException(helo);
+        }
+    }
+
+    private SmtpReply command(String line) throws IOException {
+        write(line);
+        out.flush();
+        return readReply();
+    }
+
+    private void write(String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.US_ASCII));
+        out.write('\r');
+        out.write('\n');
+    }
+
+    /**
+     * Read a reply, joining the lines of a multi-line one
+     */
+    private SmtpReply readReply() throws IOException {
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            String line = readLine();
+            if (line.length() < 3) {
+                throw new IOException("Malformed SMTP reply from " + route + ": " + line);
+            }
+            int code;
+            try {
+                code = Integer.parseInt(line.substring(0, 3));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed SMTP reply from " + route + ": " + line);
+            }
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(line.length() > 4 ? line.substring(4) : "");
+            if (line.length() == 3 || line.charAt(3) != '-') {
+                return new SmtpReply(code, text.toString());
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') {
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    line.setLength(end - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_BYTES) {
+                throw new IOException("SMTP reply line from " + route + " is too long");
+            }
+            line.append((char) b);
+        }
+        throw new EOFException("Connection to " + route + " closed");
+    }
+
+    /**
+     * Send the message as DATA content: every line ending becomes CRLF, a line starting
+     * with '.' gets another, and the content ends with a line break
+     */
+    private void writeContent(InputStream content) throws IOException {
+        byte[] input = new byte[BUFFER_BYTES];
+        // Each input byte becomes at most three output bytes
+        byte[] output = new byte[BUFFER_BYTES * 3];
+        boolean lineStart = true;
+        boolean pendingCr = false;
+        int read;
+        while ((read = content.read(input)) > 0) {
+            int length = 0;
+            for (int i = 0; i < read; i++) {
+                byte b = input[i];
+                if (pendingCr) {
+                    pendingCr = false;
+                    output[length++] = '\r';
+                    output[length++] = '\n';
+                    lineStart = true;
+                    if (b == '\n') {
+                        continue;
+                    }
+                }
+                if (b == '\r') {
+                    pendingCr = true;
+                } else if (b == '\n') {
+                    output[length++] = '\r';
+                    output[length++] = '\n';
+                    lineStart = true;
+                } else {
+                    if (lineStart && b == '.') {
+                        output[length++] = '.';
+                    }
+                    output[length++] = b;
+                    lineStart = false;
+                }
+            }
+            out.write(output, 0, length);
+        }
+        if (pendingCr || !lineStart) {
+            out.write('\r');
+            out.write('\n');
+        }
+    }
+}
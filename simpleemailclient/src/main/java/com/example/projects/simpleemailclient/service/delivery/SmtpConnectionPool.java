@@ -0,0 +1,150 @@
+package com.example.projects.simpleemailclient.service.delivery;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open SMTP sessions, kept per destination server for reuse
+ * At most max-connections-per-host sessions to one server are in use at once, which is
+ * both the parallelism toward it and the politeness limit receivers expect. A returned
+ * session is kept until it has been idle for the timeout or has run its share of
+ * transactions; the most recently used is handed out first, so the others age out.
+ */
+@Component
+public class SmtpConnectionPool {
+
+    private final Map<Route, Slots> routes = new ConcurrentHashMap<>();
+    private final Counter opened;
+    private final Counter reused;
+
+    private final String heloName;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int maxConnections;
+    private final long idleTimeoutNanos;
+    private final int maxTransactions;
+
+    public SmtpConnectionPool(MeterRegistry meterRegistry,
+                              @Value("${email.delivery.helo-name:localhost}") String heloName,
+                              @Value("${email.delivery.connect-timeout-ms:30000}") int connectTimeoutMs,
+                              @Value("${email.delivery.read-timeout-ms:300000}") int readTimeoutMs,
+                              @Value("${email.delivery.pool.max-connections-per-host:4}") int maxConnections,
+                              @Value("${email.delivery.pool.idle-timeout-seconds:60}") long idleTimeoutSeconds,
+                              @Value("${email.delivery.pool.max-transactions:200}") int maxTransactions) {
+        this.heloName = heloName;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.maxConnections = maxConnections;
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.maxTransactions = maxTransactions;
+        this.opened = Counter.builder("email.delivery.connections")
+            .description("SMTP sessions handed out, by whether they were opened or reused")
+            .tag("result", "opened")
+            .register(meterRegistry);
+        this.reused = Counter.builder("email.delivery.connections")
+            .description("SMTP sessions handed out, by whether they were opened or reused")
+            .tag("result", "reused")
+            .register(meterRegistry);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Take a session to a server, waiting while all of its sessions are in use
+     * Every session borrowed must be released.
+     */
+    SmtpConnection borrow(Route route) throws IOException {
+        Slots slots = routes.computeIfAbsent(route, key -> new Slots(maxConnections));
+        try {
+            slots.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection to " + route);
+        }
+        try {
+            SmtpConnection connection;
+            while ((connection = slots.idle.pollFirst()) != null) {
+                if (reusable(connection)) {
+                    reused.increment();
+                    return connection;
+                }
+                connection.quit();
+            }
+            connection = SmtpConnection.open(route, heloName, connectTimeoutMs, readTimeoutMs);
+            opened.increment();
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            slots.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Give a session back
+     * @param keep False to close it, as after an error
+     */
+    void release(SmtpConnection connection, boolean keep) {
+        Slots slots = routes.get(connection.getRoute());
+        if (keep && connection.isUsable() && connection.getTransactions() < maxTransactions) {
+            connection.markIdle();
+            slots.idle.addFirst(connection);
+        } else {
+            connection.quit();
+        }
+        slots.permits.release();
+    }
+
+    /**
+     * Close sessions that have been idle too long, before the server drops them
+     */
+    @Scheduled(fixedDelayString = "${email.delivery.pool.evict-interval-ms:30000}")
+    public void evictIdle() {
+        for (Slots slots : routes.values()) {
+            for (SmtpConnection connection : slots.idle) {
+                if (!reusable(connection) && slots.idle.remove(connection)) {
+                    connection.quit();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Slots slots : routes.values()) {
+            SmtpConnection connection;
+            while ((connection = slots.idle.pollFirst()) != null) {
+                connection.quit();
+            }
+        }
+    }
+
+    private boolean reusable(SmtpConnection connection) {
+        return connection.isUsable() && connection.idleNanos() < idleTimeoutNanos
+            && connection.getTransactions() < maxTransactions;
+    }
+
+    private static final class Slots {
+
+        final Semaphore permits;
+        final Deque<SmtpConnection> idle = new ConcurrentLinkedDeque<>();
+
+        Slots(int maxConnections) {
+            this.permits = new Semaphore(maxConnections, true);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.projects.simpleemailclient.service.delivery;
+
+import java.io.IOException;
+
+/**
+ * A destination that could not be used for a session: its reply says whether to retry
+ */
+class SmtpException extends IOException {
+
+    private final SmtpReply reply;
+
+    SmtpException(SmtpReply reply) {
+        super(reply.toString());
+        this.reply = reply;
+    }
+
+    SmtpReply getReply() {
+        return reply;
+    }
+}
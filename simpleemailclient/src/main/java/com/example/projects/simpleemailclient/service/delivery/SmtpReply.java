@@ -0,0 +1,49 @@
+package com.example.projects.simpleemailclient.service.delivery;
+
+/**
+ * An SMTP reply: its code and text, the lines of a multi-line reply joined by newlines
+ */
+final class SmtpReply {
+
+    private final int code;
+    private final String text;
+
+    SmtpReply(int code, String text) {
+        this.code = code;
+        this.text = text;
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    /**
+     * 2xx or 3xx
+     */
+    boolean isPositive() {
+        return code >= 200 && code < 400;
+    }
+
+    /**
+     * 4xx: the same command may succeed later
+     */
+    boolean isTransient() {
+        return code >= 400 && code < 500;
+    }
+
+    /**
+     * 5xx, or anything unintelligible: retrying will not help
+     */
+    boolean isPermanent() {
+        return !isPositive() && !isTransient();
+    }
+
+    @Override
+    public String toString() {
+        return code + " " + text;
+    }
+}
@@ -0,0 +1,490 @@
+package com.example.projects.simpleemailclient.service.impl;
+
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.MessageTombstone;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageTombstoneRepository;
+import com.example.projects.simpleemailclient.service.SearchService;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import com.example.projects.simpleemailclient.service.search.IndexPartition;
+import com.example.projects.simpleemailclient.service.search.IndexedDocument;
+import com.example.projects.simpleemailclient.service.search.SearchQuery;
+import com.example.projects.simpleemailclient.service.search.SearchResultCache;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * SearchService backed by an embedded inverted index on local disk
+ * Each user has an independent partition (see IndexPartition), so a query never touches
+ * another user's data and partitions can be opened and closed on demand. Documents are
+ * searchable as soon as they are indexed; buffered documents are flushed to immutable,
+ * memory-mapped segments by size or on a timer, and a background thread merges segments.
+ * Since writes are visible immediately, a user's cached results are invalidated right after them.
+ * Intended for small deployments and tests that run without an OpenSearch cluster.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "email.search.backend", havingValue = "embedded")
+public class EmbeddedSearchService implements SearchService {
+
+    private static final int MAX_UNPAGED_RESULTS = 1000;
+
+    private final MessageRepository messageRepository;
+    private final MailboxRepository mailboxRepository;
+    private final MessageTombstoneRepository tombstoneRepository;
+    private final MessageBodySource messageBodySource;
+    private final SearchResultCache resultCache;
+
+    private final Path directory;
+    private final int maxOpenPartitions;
+    private final int flushDocs;
+    private final int mergeFactor;
+    private final long maxSegmentBytes;
+    private final long maxBodyChars;
+    // Open partitions in access order; guarded by itself
+    private final LinkedHashMap<Long, IndexPartition> partitions = new LinkedHashMap<>(16, 0.75f, true);
+    // Users with a merge queued or running; added under the partitions lock
+    final Set<Long> mergesQueued = ConcurrentHashMap.newKeySet();
+    // Serialize opening and closing of one user's directory, striped by user id; taken before partitions
+    private final Object[] directoryLocks = new Object[64];
+    private final ExecutorService mergeExecutor;
+
+    public EmbeddedSearchService(MessageRepository messageRepository,
+                                 MailboxRepository mailboxRepository,
+                                 MessageTombstoneRepository tombstoneRepository,
+                                 MessageBodySource messageBodySource,
+                                 SearchResultCache resultCache,
+                                 @Value("${email.search.embedded.directory:data/search-index}") String directory,
+                                 @Value("${email.search.embedded.max-open-partitions:1000}") int maxOpenPartitions,
+                                 @Value("${email.search.embedded.flush-docs:1000}") int flushDocs,
+                                 @Value("${email.search.embedded.merge-factor:8}") int mergeFactor,
+                                 @Value("${email.search.embedded.max-segment-mb:512}") long maxSegmentMb,
+                                 @Value("${email.search.embedded.max-body-chars:65536}") long maxBodyChars) {
+        this.messageRepository = messageRepository;
+        this.mailboxRepository = mailboxRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.messageBodySource = messageBodySource;
+        this.resultCache = resultCache;
+        this.directory = Paths.get(directory);
+        this.maxOpenPartitions = maxOpenPartitions;
+        this.flushDocs = flushDocs;
+        this.mergeFactor = mergeFactor;
+        this.maxSegmentBytes = maxSegmentMb * 1024 * 1024;
+        this.maxBodyChars = maxBodyChars;
+        for (int i = 0; i < directoryLocks.length; i++) {
+            directoryLocks[i] = new Object();
+        }
+        this.mergeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-index-merge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Page<SearchResult> searchMessages(Long userId, String query, Pageable pageable) {
+        return search(userId, new SearchQuery().text("", query), pageable);
+    }
+
+    @Override
+    public Page<SearchResult> searchBySender(Long userId, String fromAddress, Pageable pageable) {
+        return search(userId, new SearchQuery().text(IndexedDocument.FROM, fromAddress), pageable);
+    }
+
+    @Override
+    public Page<SearchResult> searchBySubject(Long userId, String subject, Pageable pageable) {
+        return search(userId, new SearchQuery().text(IndexedDocument.SUBJECT, subject), pageable);
+    }
+
+    /**
+     * Supported criteria: query, from, to, subject (text), startDate, endDate
+     * (LocalDateTime or ISO-8601 string) and messageIds (collection of ids the
+     * results are restricted to); all given criteria must match
+     */
+    @Override
+    public Page<SearchResult> advancedSearch(Long userId, Map<String, Object> criteria, Pageable pageable) {
+        SearchQuery query = new SearchQuery();
+        for (Map.Entry<String, Object> criterion : criteria.entrySet()) {
+            Object value = criterion.getValue();
+            if (value == null) {
+                continue;
+            }
+            switch (criterion.getKey()) {
+                case "query":
+                    query.text("", value.toString());
+                    break;
+                case "from":
+                    query.text(IndexedDocument.FROM, value.toString());
+                    break;
+                case "to":
+                    query.text(IndexedDocument.TO, value.toString());
+                    break;
+                case "subject":
+                    query.text(IndexedDocument.SUBJECT, value.toString());
+                    break;
+                case "startDate":
+                    query.between(toDateTime(value), null);
+                    break;
+                case "endDate":
+                    query.between(null, toDateTime(value));
+                    break;
+                case "messageIds":
+                    query.restrictTo(toMessageIds(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported search criterion: " + criterion.getKey());
+            }
+        }
+        return search(userId, query, pageable);
+    }
+
+    @Override
+    public Page<SearchResult> searchByDateRange(Long userId, LocalDateTime startDate,
+                                                LocalDateTime endDate, Pageable pageable) {
+        return search(userId, new SearchQuery().between(startDate, endDate), pageable);
+    }
+
+    private static List<Long> toMessageIds(Object value) {
+        if (!(value instanceof Collection)) {
+            throw new IllegalArgumentException("messageIds must be a collection of ids");
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Object id : (Collection<?>) value) {
+            ids.add(id instanceof Number ? ((Number) id).longValue() : Long.parseLong(id.toString()));
+        }
+        return ids;
+    }
+
+    private static LocalDateTime toDateTime(Object value) {
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        try {
+            return LocalDateTime.parse(value.toString());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value, e);
+        }
+    }
+
+    private Page<SearchResult> search(Long userId, SearchQuery query, Pageable pageable) {
+        if (query.isRestricted()) {
+            // Id sets are per request; caching them would only fill the cache
+            return searchIndex(userId, query, pageable);
+        }
+        return resultCache.search(userId, query.toString(), pageable, page -> searchIndex(userId, query, page));
+    }
+
+    private Page<SearchResult> searchIndex(Long userId, SearchQuery query, Pageable pageable) {
+        Pageable page = pageable.isPaged() ? pageable : PageRequest.of(0, MAX_UNPAGED_RESULTS);
+        long start = System.nanoTime();
+        IndexPartition.Hits hits = partition(userId).search(query, (int) page.getOffset(), page.getPageSize());
+        log.debug("Search {} for user {}: {} hits in {} us", query, userId, hits.getTotal(),
+            (System.nanoTime() - start) / 1000);
+        return new PageImpl<>(new ArrayList<>(hits.getHits()), page, hits.getTotal());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void indexMessage(Long messageId) {
+        Optional<Message> message = messageRepository.findById(messageId);
+        if (message.isEmpty()) {
+            log.debug("Message {} not found; nothing to index", messageId);
+            return;
+        }
+        IndexedDocument document = analyze(message.get());
+        write(message.get().getUserId(), partition -> partition.add(document));
+        resultCache.invalidate(message.get().getUserId());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void bulkIndexMessages(Iterable<Long> messageIds) {
+        List<Long> ids = new ArrayList<>();
+        messageIds.forEach(ids::add);
+        Set<Long> userIds = new HashSet<>();
+        for (int from = 0; from < ids.size(); from += flushDocs) {
+            for (Message message : messageRepository.findAllById(ids.subList(from, Math.min(ids.size(), from + flushDocs)))) {
+                IndexedDocument document = analyze(message);
+                write(message.getUserId(), partition -> partition.add(document));
+                userIds.add(message.getUserId());
+            }
+        }
+        resultCache.invalidateAll(userIds);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void removeFromIndex(Long messageId) {
+        Optional<Long> userId = messageRepository.findById(messageId).map(Message::getUserId);
+        if (userId.isEmpty()) {
+            userId = tombstoneRepository.findFirstByMessageIdOrderByModseqDesc(messageId)
+                .map(MessageTombstone::getMailboxId)
+                .flatMap(mailboxRepository::findById)
+                .map(Mailbox::getUserId);
+        }
+        if (userId.isEmpty()) {
+            log.debug("Owner of message {} not found; nothing to remove", messageId);
+            return;
+        }
+        write(userId.get(), partition -> partition.delete(messageId));
+        resultCache.invalidate(userId.get());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void reindexUserMessages(Long userId) {
+        log.info("Reindexing messages of user {}", userId);
+        IndexPartition partition = partition(userId);
+        try {
+            partition.clear();
+            long afterId = 0L;
+            long indexed = 0;
+            List<Message> page;
+            do {
+                page = messageRepository.findPageByUserIdAfter(userId, afterId, PageRequest.of(0, flushDocs));
+                for (Message message : page) {
+                    partition.add(analyze(message));
+                    afterId = message.getId();
+                }
+                partition.flush();
+                indexed += page.size();
+            } while (page.size() == flushDocs);
+            while (partition.maybeMerge(mergeFactor, maxSegmentBytes)) {
+                // Merge down to the target segment count before returning
+            }
+            log.info("Reindexed {} messages of user {} into {} segments", indexed, userId, partition.segmentCount());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to reindex messages of user " + userId, e);
+        } finally {
+            resultCache.invalidate(userId);
+        }
+    }
+
+    @Override
+    public void saveSearch(Long userId, String queryName, String query) {
+        try {
+            partition(userId).saveSearch(queryName, query);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save search for user " + userId, e);
+        }
+    }
+
+    @Override
+    public Map<String, String> getSavedSearches(Long userId) {
+        try {
+            return partition(userId).savedSearches();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read saved searches of user " + userId, e);
+        }
+    }
+
+    /**
+     * Flush buffered documents of all open partitions so they survive a restart
+     */
+    @Scheduled(fixedDelayString = "${email.search.embedded.flush-interval-ms:5000}")
+    public void flushAll() {
+        List<Map.Entry<Long, IndexPartition>> open;
+        synchronized (partitions) {
+            open = new ArrayList<>(partitions.entrySet());
+        }
+        for (Map.Entry<Long, IndexPartition> entry : open) {
+            try {
+                entry.getValue().flush();
+                scheduleMerge(entry.getKey(), entry.getValue());
+            } catch (IOException e) {
+                log.error("Failed to flush search index of user {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        mergeExecutor.shutdown();
+        try {
+            mergeExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (partitions) {
+            for (Map.Entry<Long, IndexPartition> entry : partitions.entrySet()) {
+                closeQuietly(entry.getKey(), entry.getValue());
+            }
+            partitions.clear();
+        }
+    }
+
+    private IndexedDocument analyze(Message message) {
+        try (Reader body = messageBodySource.open(message)) {
+            return IndexedDocument.of(message, body, maxBodyChars);
+        } catch (IOException e) {
+            log.warn("Could not read body of message {} for indexing; indexing headers only: {}",
+                message.getId(), e.getMessage());
+            try {
+                return IndexedDocument.of(message, null, 0);
+            } catch (IOException unreachable) {
+                throw new UncheckedIOException(unreachable);
+            }
+        }
+    }
+
+    /**
+     * Apply a change to a user's partition, flushing when the buffer is full
+     */
+    private void write(Long userId, Consumer<IndexPartition> change) {
+        IndexPartition partition = partition(userId);
+        try {
+            change.accept(partition);
+        } catch (IllegalStateException e) {
+            // Evicted and closed after lookup; the next lookup reopens it
+            partition = partition(userId);
+            change.accept(partition);
+        }
+        if (partition.pendingCount() >= flushDocs) {
+            try {
+                partition.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to flush search index of user " + userId, e);
+            }
+            scheduleMerge(userId, partition);
+        }
+    }
+
+    private void scheduleMerge(Long userId, IndexPartition partition) {
+        if (partition.segmentCount() < mergeFactor) {
+            return;
+        }
+        synchronized (partitions) {
+            // Only the open instance: an evicted one is closing, and eviction skips users with a merge queued
+            if (!partitions.containsKey(userId) || partition.isClosed() || !mergesQueued.add(userId)) {
+                return;
+            }
+        }
+        mergeExecutor.execute(() -> {
+            try {
+                while (partition.maybeMerge(mergeFactor, maxSegmentBytes)) {
+                    log.debug("Merged search index segments of user {}", userId);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to merge search index of user {}", userId, e);
+            } finally {
+                mergesQueued.remove(userId);
+            }
+        });
+    }
+
+    IndexPartition partition(Long userId) {
+        IndexPartition partition = cachedPartition(userId);
+        if (partition != null) {
+            return partition;
+        }
+        // Opening reads the directory; only this user's directory lock is held meanwhile
+        synchronized (directoryLock(userId)) {
+            partition = cachedPartition(userId);
+            if (partition == null) {
+                try {
+                    partition = IndexPartition.open(partitionDirectory(userId));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to open search index of user " + userId, e);
+                }
+                synchronized (partitions) {
+                    partitions.put(userId, partition);
+                }
+            }
+        }
+        evictIfFull();
+        return partition;
+    }
+
+    private IndexPartition cachedPartition(Long userId) {
+        synchronized (partitions) {
+            IndexPartition partition = partitions.get(userId);
+            return partition != null && !partition.isClosed() ? partition : null;
+        }
+    }
+
+    /**
+     * Close least recently used partitions beyond max-open-partitions
+     * A partition with a merge queued stays open until the merge is done. Closing flushes, so it
+     * runs under the evicted user's directory lock only; that user's next lookup waits for it.
+     */
+    private void evictIfFull() {
+        while (true) {
+            Map.Entry<Long, IndexPartition> eldest = null;
+            synchronized (partitions) {
+                if (partitions.size() <= maxOpenPartitions) {
+                    return;
+                }
+                for (Map.Entry<Long, IndexPartition> entry : partitions.entrySet()) {
+                    if (!mergesQueued.contains(entry.getKey())) {
+                        eldest = Map.entry(entry.getKey(), entry.getValue());
+                        break;
+                    }
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            synchronized (directoryLock(eldest.getKey())) {
+                synchronized (partitions) {
+                    // A merge may have been queued, or another thread evicted it, since it was picked
+                    if (partitions.size() <= maxOpenPartitions || mergesQueued.contains(eldest.getKey())
+                            || !partitions.remove(eldest.getKey(), eldest.getValue())) {
+                        continue;
+                    }
+                }
+                closeQuietly(eldest.getKey(), eldest.getValue());
+            }
+        }
+    }
+
+    private Object directoryLock(Long userId) {
+        return directoryLocks[(int) (userId & (directoryLocks.length - 1))];
+    }
+
+    /**
+     * Spread partitions over 256 subdirectories to keep directory listings short
+     */
+    private Path partitionDirectory(Long userId) {
+        return directory.resolve(String.format("%02x", userId & 0xff)).resolve(String.valueOf(userId));
+    }
+
+    private void closeQuietly(Long userId, IndexPartition partition) {
+        try {
+            partition.close();
+        } catch (IOException e) {
+            log.error("Failed to close search index of user {}", userId, e);
+        }
+    }
+}
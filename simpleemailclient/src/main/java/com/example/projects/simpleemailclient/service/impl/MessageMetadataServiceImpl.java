@@ -0,0 +1,429 @@
+package com.example.projects.simpleemailclient.service.impl;
+
+import com.example.projects.simpleemailclient.dto.MailboxChangesDTO;
+import com.example.projects.simpleemailclient.exception.QuotaExceededException;
+import com.example.projects.simpleemailclient.exception.ResourceNotFoundException;
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.MessageTombstone;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository.ModseqView;
+import com.example.projects.simpleemailclient.repository.MessageTombstoneRepository;
+import com.example.projects.simpleemailclient.repository.MessageTombstoneRepository.MailboxHorizon;
+import com.example.projects.simpleemailclient.service.MessageMetadataService;
+import com.example.projects.simpleemailclient.service.SearchService;
+import com.example.projects.simpleemailclient.service.UserService;
+import com.example.projects.simpleemailclient.service.attachment.AttachmentContentStore;
+import com.example.projects.simpleemailclient.service.search.RecipientCompletionService;
+import com.example.projects.simpleemailclient.service.search.VirtualFolderService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of MessageMetadataService
+ * Handles message operations and keeps per-mailbox modification sequences
+ * current so clients can delta-sync instead of re-listing mailboxes
+ * Every change is passed to the search index once its transaction commits.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@Transactional
+public class MessageMetadataServiceImpl implements MessageMetadataService {
+
+    public static final String FLAG_READ = "READ";
+
+    private final MessageRepository messageRepository;
+    private final MailboxRepository mailboxRepository;
+    private final MessageTombstoneRepository tombstoneRepository;
+    private final UserService userService;
+    private final RecipientCompletionService recipientCompletionService;
+    private final VirtualFolderService virtualFolderService;
+    private final AttachmentContentStore attachmentContentStore;
+    private final SearchService searchService;
+
+    @Value("${email.sync.tombstone-retention-days:30}")
+    private int tombstoneRetentionDays;
+
+    @Override
+    public Message createMessage(Message message) {
+        log.debug("Creating message {} in mailbox {}", message.getMsgUid(), message.getMailboxId());
+
+        if (!userService.hasQuota(message.getUserId(), message.getSizeBytes())) {
+            throw new QuotaExceededException("Storage quota exceeded for user: " + message.getUserId());
+        }
+
+        // Set defaults
+        if (message.getFlags() == null) {
+            message.setFlags("");
+        }
+        if (message.getHasAttachments() == null) {
+            message.setHasAttachments(false);
+        }
+        if (message.getThreadId() == null) {
+            message.setThreadId(calculateThreadId(message));
+        }
+
+        long modseq = mailboxRepository.nextModseq(message.getMailboxId());
+        message.setModseq(modseq);
+        message.setAddedModseq(modseq);
+
+        Message savedMessage = messageRepository.save(message);
+        if (savedMessage.getThreadId() == null) {
+            savedMessage.setThreadId(savedMessage.getId());
+        }
+
+        mailboxRepository.incrementTotalCount(savedMessage.getMailboxId(), 1);
+        if (!hasFlag(savedMessage.getFlags(), FLAG_READ)) {
+            mailboxRepository.incrementUnreadCount(savedMessage.getMailboxId(), 1);
+        }
+        userService.updateUsedStorage(savedMessage.getUserId(), savedMessage.getSizeBytes());
+        recipientCompletionService.recordMessage(savedMessage);
+        virtualFolderService.percolate(savedMessage);
+        indexAfterCommit(savedMessage.getId(), false);
+
+        return savedMessage;
+    }
+
+    @Override
+    public Message updateMessage(Message message) {
+        Message existingMessage = messageRepository.findById(message.getId())
+            .orElseThrow(() -> new ResourceNotFoundException("Message", message.getId()));
+
+        // Mailbox and flag changes go through moveMessage/updateFlags so counters stay correct
+        message.setMailboxId(existingMessage.getMailboxId());
+        message.setFlags(existingMessage.getFlags());
+        message.setAddedModseq(existingMessage.getAddedModseq());
+        message.setModseq(mailboxRepository.nextModseq(existingMessage.getMailboxId()));
+
+        Message updatedMessage = messageRepository.save(message);
+        virtualFolderService.refresh(updatedMessage, !hasFlag(updatedMessage.getFlags(), FLAG_READ));
+        indexAfterCommit(updatedMessage.getId(), false);
+        return updatedMessage;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Message> getMessageById(Long id, Long userId) {
+        return messageRepository.findByIdAndUserId(id, userId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Message> getMessageByUid(String msgUid) {
+        return messageRepository.findByMsgUid(msgUid);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Message> getMailboxMessages(Long userId, Long mailboxId, Pageable pageable) {
+        return messageRepository.findByUserIdAndMailboxIdOrderByMessageDateDesc(userId, mailboxId, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Message> getThreadMessages(Long threadId) {
+        return messageRepository.findByThreadId(threadId);
+    }
+
+    @Override
+    public Message moveMessage(Long messageId, Long targetMailboxId, Long userId) {
+        Message message = findOwnedMessage(messageId, userId);
+        mailboxRepository.findByIdAndUserId(targetMailboxId, userId)
+            .orElseThrow(() -> new ResourceNotFoundException("Mailbox", targetMailboxId));
+
+        Long sourceMailboxId = message.getMailboxId();
+        if (sourceMailboxId.equals(targetMailboxId)) {
+            return message;
+        }
+
+        log.debug("Moving message {} from mailbox {} to {}", messageId, sourceMailboxId, targetMailboxId);
+
+        // The source mailbox sees an expunge, the target mailbox sees an add
+        recordTombstone(sourceMailboxId, messageId);
+
+        long modseq = mailboxRepository.nextModseq(targetMailboxId);
+        message.setMailboxId(targetMailboxId);
+        message.setModseq(modseq);
+        message.setAddedModseq(modseq);
+        Message movedMessage = messageRepository.save(message);
+
+        mailboxRepository.incrementTotalCount(sourceMailboxId, -1);
+        mailboxRepository.incrementTotalCount(targetMailboxId, 1);
+        if (!hasFlag(movedMessage.getFlags(), FLAG_READ)) {
+            mailboxRepository.incrementUnreadCount(sourceMailboxId, -1);
+            mailboxRepository.incrementUnreadCount(targetMailboxId, 1);
+        }
+        virtualFolderService.refresh(movedMessage, !hasFlag(movedMessage.getFlags(), FLAG_READ));
+        indexAfterCommit(movedMessage.getId(), false);
+
+        return movedMessage;
+    }
+
+    @Override
+    public Message updateFlags(Long messageId, String flags, Long userId) {
+        Message message = findOwnedMessage(messageId, userId);
+        String newFlags = flags != null ? flags : "";
+
+        if (parseFlags(newFlags).equals(parseFlags(message.getFlags()))) {
+            return message;
+        }
+
+        boolean wasRead = hasFlag(message.getFlags(), FLAG_READ);
+        boolean isRead = hasFlag(newFlags, FLAG_READ);
+
+        message.setFlags(newFlags);
+        message.setModseq(mailboxRepository.nextModseq(message.getMailboxId()));
+        Message updatedMessage = messageRepository.save(message);
+
+        if (wasRead != isRead) {
+            mailboxRepository.incrementUnreadCount(message.getMailboxId(), isRead ? -1 : 1);
+        }
+        virtualFolderService.refresh(updatedMessage, !wasRead);
+        indexAfterCommit(updatedMessage.getId(), false);
+
+        return updatedMessage;
+    }
+
+    @Override
+    public Message markAsRead(Long messageId, Long userId) {
+        Message message = findOwnedMessage(messageId, userId);
+        Set<String> flags = parseFlags(message.getFlags());
+        flags.add(FLAG_READ);
+        return updateFlags(messageId, String.join(",", flags), userId);
+    }
+
+    @Override
+    public Message markAsUnread(Long messageId, Long userId) {
+        Message message = findOwnedMessage(messageId, userId);
+        Set<String> flags = parseFlags(message.getFlags());
+        flags.remove(FLAG_READ);
+        return updateFlags(messageId, String.join(",", flags), userId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Message> searchMessages(Long userId, String keyword, Pageable pageable) {
+        String normalized = keyword.trim().toLowerCase(Locale.ROOT);
+        // Ranking is fixed by the query; a caller's sort would override it
+        Pageable page = pageable.isPaged() ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()) : pageable;
+        return messageRepository.searchMessages(userId, normalized, "%" + escapeLike(normalized) + "%", page);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Message> getMessagesWithAttachments(Long userId, Pageable pageable) {
+        return messageRepository.findMessagesWithAttachments(userId, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Message> getMessagesByDateRange(Long userId, LocalDateTime startDate,
+                                                LocalDateTime endDate, Pageable pageable) {
+        return messageRepository.findByUserIdAndDateRange(userId, startDate, endDate, pageable);
+    }
+
+    @Override
+    public void deleteMessage(Long messageId, Long userId) {
+        Message message = findOwnedMessage(messageId, userId);
+
+        log.debug("Deleting message {} from mailbox {}", messageId, message.getMailboxId());
+
+        recordTombstone(message.getMailboxId(), messageId);
+        virtualFolderService.remove(message);
+        attachmentContentStore.deleteAttachments(userId, messageId);
+        messageRepository.delete(message);
+
+        mailboxRepository.incrementTotalCount(message.getMailboxId(), -1);
+        if (!hasFlag(message.getFlags(), FLAG_READ)) {
+            mailboxRepository.incrementUnreadCount(message.getMailboxId(), -1);
+        }
+        userService.updateUsedStorage(userId, -message.getSizeBytes());
+        indexAfterCommit(messageId, true);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Long calculateThreadId(Message message) {
+        List<String> parents = new ArrayList<>();
+        if (message.getInReplyTo() != null && !message.getInReplyTo().isBlank()) {
+            parents.add(message.getInReplyTo().trim());
+        }
+        if (message.getReferences() != null && !message.getReferences().isBlank()) {
+            // Closest ancestor is listed last in References
+            List<String> references = Arrays.asList(message.getReferences().trim().split("\\s+"));
+            Collections.reverse(references);
+            parents.addAll(references);
+        }
+
+        for (String parentMessageId : parents) {
+            Optional<Message> parent = messageRepository.findFirstByUserIdAndMessageId(
+                message.getUserId(), parentMessageId);
+            if (parent.isPresent() && parent.get().getThreadId() != null) {
+                return parent.get().getThreadId();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Long getTotalStorageUsed(Long userId) {
+        Long total = messageRepository.calculateTotalSizeByUserId(userId);
+        return total != null ? total : 0L;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MailboxChangesDTO changesSince(Long mailboxId, Long modseq, Long userId) {
+        Mailbox mailbox = mailboxRepository.findByIdAndUserId(mailboxId, userId)
+            .orElseThrow(() -> new ResourceNotFoundException("Mailbox", mailboxId));
+
+        long since = modseq != null ? modseq : 0L;
+        MailboxChangesDTO.MailboxChangesDTOBuilder changes = MailboxChangesDTO.builder()
+            .mailboxId(mailboxId)
+            .sinceModseq(since)
+            .highestModseq(mailbox.getHighestModseq())
+            .added(Collections.emptyList())
+            .changed(Collections.emptyList())
+            .expunged(Collections.emptyList())
+            .fullResyncRequired(false);
+
+        if (since < mailbox.getTombstoneHorizonModseq()) {
+            // Expunges the client has not seen were already purged
+            return changes.fullResyncRequired(true).build();
+        }
+        if (since >= mailbox.getHighestModseq()) {
+            return changes.build();
+        }
+
+        List<Long> added = new ArrayList<>();
+        List<Long> changed = new ArrayList<>();
+        for (ModseqView view : messageRepository.findChangedSince(mailboxId, since)) {
+            if (view.getAddedModseq() > since) {
+                added.add(view.getId());
+            } else {
+                changed.add(view.getId());
+            }
+        }
+
+        // A message moved out and back in is reported as added only
+        Set<Long> present = new HashSet<>(added);
+        List<Long> expunged = tombstoneRepository.findExpungedMessageIdsSince(mailboxId, since).stream()
+            .filter(id -> !present.contains(id))
+            .distinct()
+            .collect(Collectors.toList());
+
+        return changes
+            .added(added)
+            .changed(changed)
+            .expunged(expunged)
+            .build();
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${email.sync.tombstone-purge-interval-ms:3600000}")
+    public int purgeExpiredTombstones() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(tombstoneRetentionDays);
+
+        // Raise each mailbox's horizon first so stale clients are told to resync
+        for (MailboxHorizon horizon : tombstoneRepository.findPurgeHorizons(cutoff)) {
+            mailboxRepository.advanceTombstoneHorizon(horizon.getMailboxId(), horizon.getModseq());
+        }
+        int purged = tombstoneRepository.deleteExpiredBefore(cutoff);
+
+        if (purged > 0) {
+            log.info("Purged {} message tombstones older than {}", purged, cutoff);
+        }
+        return purged;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private Message findOwnedMessage(Long messageId, Long userId) {
+        return messageRepository.findByIdAndUserId(messageId, userId)
+            .orElseThrow(() -> new ResourceNotFoundException("Message", messageId));
+    }
+
+    private void recordTombstone(Long mailboxId, Long messageId) {
+        tombstoneRepository.save(MessageTombstone.builder()
+            .mailboxId(mailboxId)
+            .messageId(messageId)
+            .modseq(mailboxRepository.nextModseq(mailboxId))
+            .expungedAt(LocalDateTime.now())
+            .build());
+    }
+
+    /**
+     * Reindex or drop a message once the current transaction commits, so the index never
+     * shows a change that was rolled back; the change is already stored if indexing fails
+     */
+    private void indexAfterCommit(Long messageId, boolean removed) {
+        Runnable update = () -> {
+            try {
+                if (removed) {
+                    searchService.removeFromIndex(messageId);
+                } else {
+                    searchService.indexMessage(messageId);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to update search index for message {}: {}", messageId, e.getMessage());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    update.run();
+                }
+            });
+        } else {
+            update.run();
+        }
+    }
+
+    /**
+     * Parse Message.flags (comma-separated) into a mutable set in stored order
+     */
+    public static Set<String> parseFlags(String flags) {
+        Set<String> parsed = new LinkedHashSet<>();
+        if (flags == null) {
+            return parsed;
+        }
+        for (String flag : flags.split(",")) {
+            String trimmed = flag.trim();
+            if (!trimmed.isEmpty()) {
+                parsed.add(trimmed);
+            }
+        }
+        return parsed;
+    }
+
+    static boolean hasFlag(String flags, String flag) {
+        return parseFlags(flags).contains(flag);
+    }
+}
@@ -0,0 +1,619 @@
+package com.example.projects.simpleemailclient.service.impl;
+
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.MessageTombstone;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageTombstoneRepository;
+import com.example.projects.simpleemailclient.service.SearchService;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import com.example.projects.simpleemailclient.service.search.IndexedDocument;
+import com.example.projects.simpleemailclient.service.search.SearchHit;
+import com.example.projects.simpleemailclient.service.search.SearchResultCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.action.DocWriteRequest;
+import org.opensearch.action.bulk.BackoffPolicy;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkProcessor;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.delete.DeleteRequest;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.action.search.SearchRequest;
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.action.support.WriteRequest;
+import org.opensearch.client.RequestOptions;
+import org.opensearch.client.RestHighLevelClient;
+import org.opensearch.client.indices.CreateIndexRequest;
+import org.opensearch.client.indices.GetIndexRequest;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.common.unit.ByteSizeUnit;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.index.query.BoolQueryBuilder;
+import org.opensearch.index.query.Operator;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.index.reindex.DeleteByQueryRequest;
+import org.opensearch.search.builder.SearchSourceBuilder;
+import org.opensearch.search.sort.SortOrder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SearchService backed by an OpenSearch cluster
+ * All messages share one index whose documents are routed by userId, so every user's
+ * messages live on a single shard and a search touches one shard instead of all of them.
+ * Writes go through an asynchronous bulk processor that flushes by action count, payload
+ * size or elapsed time, and retries rejected bulks with exponential backoff. A user's cached
+ * results are invalidated one refresh interval after a bulk touching their documents succeeds,
+ * once the change is visible to searches.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "email.search.backend", havingValue = "opensearch")
+public class OpenSearchSearchService implements SearchService {
+
+    private static final int MAX_UNPAGED_RESULTS = 1000;
+    private static final int MAX_SAVED_SEARCHES = 1000;
+    private static final String[] RESULT_FIELDS = {"subject", "fromAddress", "messageDate", "snippet"};
+    private static final String[] TEXT_FIELDS = {"subject^3", "fromAddress^2", "toAddresses", "ccAddresses", "body"};
+
+    private final RestHighLevelClient client;
+    private final MessageRepository messageRepository;
+    private final MailboxRepository mailboxRepository;
+    private final MessageTombstoneRepository tombstoneRepository;
+    private final MessageBodySource messageBodySource;
+    private final SearchResultCache resultCache;
+
+    private final String messagesIndex;
+    private final String savedSearchesIndex;
+    private final int shards;
+    private final int replicas;
+    private final int pageSize;
+    private final long maxBodyChars;
+    private final TimeValue searchTimeout;
+    private final BulkProcessor bulkProcessor;
+    // Deletes whose owner is no longer known cannot be routed; removed together by query
+    private final ConcurrentLinkedQueue<Long> unroutedDeletes = new ConcurrentLinkedQueue<>();
+    // Bulk items that failed with a transient error, resent on the next flush
+    private final ConcurrentLinkedQueue<DocWriteRequest<?>> failedWrites = new ConcurrentLinkedQueue<>();
+    // Owners of documents in completed bulks, and those already waiting out a refresh interval
+    private final Set<Long> indexedUsers = ConcurrentHashMap.newKeySet();
+    private Set<Long> awaitingRefresh = new HashSet<>();
+
+    public OpenSearchSearchService(RestHighLevelClient client,
+                                   MessageRepository messageRepository,
+                                   MailboxRepository mailboxRepository,
+                                   MessageTombstoneRepository tombstoneRepository,
+                                   MessageBodySource messageBodySource,
+                                   SearchResultCache resultCache,
+                                   @Value("${opensearch.index.messages:email-messages}") String messagesIndex,
+                                   @Value("${opensearch.index.saved-searches:email-saved-searches}") String savedSearchesIndex,
+                                   @Value("${opensearch.index.shards:12}") int shards,
+                                   @Value("${opensearch.index.replicas:1}") int replicas,
+                                   @Value("${opensearch.index.max-body-chars:65536}") long maxBodyChars,
+                                   @Value("${opensearch.bulk.actions:1000}") int bulkActions,
+                                   @Value("${opensearch.bulk.size-mb:5}") long bulkSizeMb,
+                                   @Value("${opensearch.bulk.flush-interval-ms:1000}") long flushIntervalMs,
+                                   @Value("${opensearch.bulk.concurrent-requests:2}") int concurrentRequests,
+                                   @Value("${opensearch.search.timeout-ms:2000}") long searchTimeoutMs) {
+        this.client = client;
+        this.messageRepository = messageRepository;
+        this.mailboxRepository = mailboxRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.messageBodySource = messageBodySource;
+        this.resultCache = resultCache;
+        this.messagesIndex = messagesIndex;
+        this.savedSearchesIndex = savedSearchesIndex;
+        this.shards = shards;
+        this.replicas = replicas;
+        this.pageSize = bulkActions;
+        this.maxBodyChars = maxBodyChars;
+        this.searchTimeout = TimeValue.timeValueMillis(searchTimeoutMs);
+        this.bulkProcessor = BulkProcessor.builder(
+                (request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener),
+                new BulkListener())
+            .setBulkActions(bulkActions)
+            .setBulkSize(new ByteSizeValue(bulkSizeMb, ByteSizeUnit.MB))
+            .setFlushInterval(TimeValue.timeValueMillis(flushIntervalMs))
+            .setConcurrentRequests(concurrentRequests)
+            .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(100), 5))
+            .build();
+    }
+
+    /**
+     * Create the indices with routing required, so an unrouted write fails instead of
+     * landing on an arbitrary shard
+     */
+    @PostConstruct
+    public void createIndices() {
+        createIndex(messagesIndex, Map.of(
+            "_routing", Map.of("required", true),
+            // The body is searchable but not returned, which keeps stored documents small
+            "_source", Map.of("excludes", List.of("body")),
+            "properties", Map.of(
+                "userId", Map.of("type", "long"),
+                "mailboxId", Map.of("type", "long"),
+                "subject", Map.of("type", "text"),
+                "fromAddress", Map.of("type", "text", "fields", Map.of("keyword", Map.of("type", "keyword", "ignore_above", 256))),
+                "toAddresses", Map.of("type", "text"),
+                "ccAddresses", Map.of("type", "text"),
+                "body", Map.of("type", "text"),
+                "snippet", Map.of("type", "text", "index", false),
+                "messageDate", Map.of("type", "date", "format", "epoch_millis"),
+                "hasAttachments", Map.of("type", "boolean"))));
+        createIndex(savedSearchesIndex, Map.of(
+            "_routing", Map.of("required", true),
+            "properties", Map.of(
+                "userId", Map.of("type", "long"),
+                "name", Map.of("type", "keyword"),
+                "query", Map.of("type", "keyword", "index", false))));
+    }
+
+    private void createIndex(String index, Map<String, Object> mapping) {
+        try {
+            if (client.indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT)) {
+                return;
+            }
+            client.indices().create(new CreateIndexRequest(index)
+                .settings(Settings.builder()
+                    .put("index.number_of_shards", shards)
+                    .put("index.number_of_replicas", replicas))
+                .mapping(mapping), RequestOptions.DEFAULT);
+            log.info("Created search index {} with {} shards", index, shards);
+        } catch (IOException e) {
+            log.warn("Could not create search index {}; it must exist before messages are indexed: {}",
+                index, e.getMessage());
+        }
+    }
+
+    @Override
+    public Page<SearchResult> searchMessages(Long userId, String query, Pageable pageable) {
+        return search(userId, QueryBuilders.multiMatchQuery(SearchResultCache.normalize(query), TEXT_FIELDS)
+            .operator(Operator.AND), pageable);
+    }
+
+    @Override
+    public Page<SearchResult> searchBySender(Long userId, String fromAddress, Pageable pageable) {
+        return search(userId, QueryBuilders.matchQuery("fromAddress", SearchResultCache.normalize(fromAddress))
+            .operator(Operator.AND), pageable);
+    }
+
+    @Override
+    public Page<SearchResult> searchBySubject(Long userId, String subject, Pageable pageable) {
+        return search(userId, QueryBuilders.matchQuery("subject", SearchResultCache.normalize(subject))
+            .operator(Operator.AND), pageable);
+    }
+
+    /**
+     * Supported criteria: query, from, to, subject (text), startDate, endDate
+     * (LocalDateTime or ISO-8601 string) and messageIds (collection of ids the
+     * results are restricted to); all given criteria must match
+     */
+    @Override
+    public Page<SearchResult> advancedSearch(Long userId, Map<String, Object> criteria, Pageable pageable) {
+        BoolQueryBuilder query = QueryBuilders.boolQuery();
+        boolean restricted = false;
+        for (Map.Entry<String, Object> criterion : criteria.entrySet()) {
+            Object value = criterion.getValue();
+            if (value == null) {
+                continue;
+            }
+            String text = SearchResultCache.normalize(value.toString());
+            switch (criterion.getKey()) {
+                case "query":
+                    query.must(QueryBuilders.multiMatchQuery(text, TEXT_FIELDS).operator(Operator.AND));
+                    break;
+                case "from":
+                    query.must(QueryBuilders.matchQuery("fromAddress", text).operator(Operator.AND));
+                    break;
+                case "to":
+                    query.must(QueryBuilders.multiMatchQuery(text, "toAddresses", "ccAddresses")
+                        .operator(Operator.AND));
+                    break;
+                case "subject":
+                    query.must(QueryBuilders.matchQuery("subject", text).operator(Operator.AND));
+                    break;
+                case "startDate":
+                    query.filter(QueryBuilders.rangeQuery("messageDate").gte(IndexedDocument.toMillis(toDateTime(value))));
+                    break;
+                case "endDate":
+                    query.filter(QueryBuilders.rangeQuery("messageDate").lte(IndexedDocument.toMillis(toDateTime(value))));
+                    break;
+                case "messageIds":
+                    query.filter(QueryBuilders.idsQuery().addIds(toMessageIds(value).stream()
+                        .map(String::valueOf).toArray(String[]::new)));
+                    restricted = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported search criterion: " + criterion.getKey());
+            }
+        }
+        // Id sets are per request; caching them would only fill the cache
+        return restricted ? searchShard(userId, query, pageable) : search(userId, query, pageable);
+    }
+
+    @Override
+    public Page<SearchResult> searchByDateRange(Long userId, LocalDateTime startDate,
+                                                LocalDateTime endDate, Pageable pageable) {
+        return search(userId, QueryBuilders.boolQuery().filter(QueryBuilders.rangeQuery("messageDate")
+            .gte(startDate != null ? IndexedDocument.toMillis(startDate) : null)
+            .lte(endDate != null ? IndexedDocument.toMillis(endDate) : null)), pageable);
+    }
+
+    private static List<Long> toMessageIds(Object value) {
+        if (!(value instanceof Collection)) {
+            throw new IllegalArgumentException("messageIds must be a collection of ids");
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Object id : (Collection<?>) value) {
+            ids.add(id instanceof Number ? ((Number) id).longValue() : Long.parseLong(id.toString()));
+        }
+        return ids;
+    }
+
+    private static LocalDateTime toDateTime(Object value) {
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        try {
+            return LocalDateTime.parse(value.toString());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value, e);
+        }
+    }
+
+    /**
+     * Run a query through the result cache; the query's JSON form is the cache key
+     */
+    private Page<SearchResult> search(Long userId, QueryBuilder query, Pageable pageable) {
+        return resultCache.search(userId, query.toString(), pageable, page -> searchShard(userId, query, page));
+    }
+
+    /**
+     * Run a query against the owner's shard only; scored queries rank by relevance,
+     * filter-only queries newest first
+     */
+    private Page<SearchResult> searchShard(Long userId, QueryBuilder query, Pageable pageable) {
+        Pageable page = pageable.isPaged() ? pageable : PageRequest.of(0, MAX_UNPAGED_RESULTS);
+        boolean scored = !(query instanceof BoolQueryBuilder) || !((BoolQueryBuilder) query).must().isEmpty();
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .query(QueryBuilders.boolQuery()
+                .filter(QueryBuilders.termQuery("userId", userId))
+                .must(query))
+            .from((int) page.getOffset())
+            .size(page.getPageSize())
+            .fetchSource(RESULT_FIELDS, null)
+            .timeout(searchTimeout);
+        if (!scored) {
+            source.sort("messageDate", SortOrder.DESC);
+        }
+        SearchRequest request = new SearchRequest(messagesIndex)
+            .routing(routing(userId))
+            .source(source);
+        try {
+            SearchResponse response = client.search(request, RequestOptions.DEFAULT);
+            if (response.isTimedOut()) {
+                log.warn("Search for user {} timed out after {}; returning partial results", userId, searchTimeout);
+            }
+            List<SearchResult> results = new ArrayList<>();
+            for (org.opensearch.search.SearchHit hit : response.getHits().getHits()) {
+                results.add(toResult(hit, scored));
+            }
+            long total = response.getHits().getTotalHits() != null ? response.getHits().getTotalHits().value : results.size();
+            return new PageImpl<>(results, page, total);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Search failed for user " + userId, e);
+        }
+    }
+
+    private static SearchResult toResult(org.opensearch.search.SearchHit hit, boolean scored) {
+        Map<String, Object> fields = hit.getSourceAsMap();
+        Object date = fields.get("messageDate");
+        return new SearchHit(Long.valueOf(hit.getId()),
+            (String) fields.get("subject"),
+            (String) fields.get("fromAddress"),
+            date != null ? LocalDateTime.ofInstant(Instant.ofEpochMilli(((Number) date).longValue()), ZoneOffset.UTC) : null,
+            (String) fields.get("snippet"),
+            scored && !Float.isNaN(hit.getScore()) ? (double) hit.getScore() : null);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void indexMessage(Long messageId) {
+        messageRepository.findById(messageId).ifPresentOrElse(
+            message -> bulkProcessor.add(indexRequest(message)),
+            () -> log.debug("Message {} not found; nothing to index", messageId));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void bulkIndexMessages(Iterable<Long> messageIds) {
+        List<Long> ids = new ArrayList<>();
+        messageIds.forEach(ids::add);
+        for (int from = 0; from < ids.size(); from += pageSize) {
+            for (Message message : messageRepository.findAllById(ids.subList(from, Math.min(ids.size(), from + pageSize)))) {
+                bulkProcessor.add(indexRequest(message));
+            }
+        }
+    }
+
+    /**
+     * Queue a delete; routed deletes ride the bulk processor, the rest are batched
+     * into one delete-by-query on the next flush
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void removeFromIndex(Long messageId) {
+        Optional<Long> userId = messageRepository.findById(messageId).map(Message::getUserId);
+        if (userId.isEmpty()) {
+            userId = tombstoneRepository.findFirstByMessageIdOrderByModseqDesc(messageId)
+                .map(MessageTombstone::getMailboxId)
+                .flatMap(mailboxRepository::findById)
+                .map(Mailbox::getUserId);
+        }
+        if (userId.isPresent()) {
+            bulkProcessor.add(new DeleteRequest(messagesIndex, String.valueOf(messageId)).routing(routing(userId.get())));
+        } else {
+            unroutedDeletes.add(messageId);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void reindexUserMessages(Long userId) {
+        log.info("Reindexing messages of user {}", userId);
+        DeleteByQueryRequest delete = new DeleteByQueryRequest(messagesIndex)
+            .setQuery(QueryBuilders.termQuery("userId", userId))
+            .setRouting(routing(userId))
+            .setConflicts("proceed")
+            .setRefresh(true);
+        try {
+            client.deleteByQuery(delete, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear search index of user " + userId, e);
+        }
+        // The delete refreshed the index; the re-added documents follow through the bulk listener
+        resultCache.invalidate(userId);
+        long afterId = 0L;
+        long indexed = 0;
+        List<Message> page;
+        do {
+            page = messageRepository.findPageByUserIdAfter(userId, afterId, PageRequest.of(0, pageSize));
+            for (Message message : page) {
+                bulkProcessor.add(indexRequest(message));
+                afterId = message.getId();
+            }
+            indexed += page.size();
+        } while (page.size() == pageSize);
+        bulkProcessor.flush();
+        log.info("Queued {} messages of user {} for indexing", indexed, userId);
+    }
+
+    @Override
+    public void saveSearch(Long userId, String queryName, String query) {
+        IndexRequest request = new IndexRequest(savedSearchesIndex)
+            .id(userId + ":" + queryName)
+            .routing(routing(userId))
+            .source(Map.of("userId", userId, "name", queryName, "query", query))
+            .setRefreshPolicy(WriteRequest.RefreshPolicy.WAIT_UNTIL);
+        try {
+            client.index(request, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save search for user " + userId, e);
+        }
+    }
+
+    @Override
+    public Map<String, String> getSavedSearches(Long userId) {
+        SearchRequest request = new SearchRequest(savedSearchesIndex)
+            .routing(routing(userId))
+            .source(new SearchSourceBuilder()
+                .query(QueryBuilders.termQuery("userId", userId))
+                .size(MAX_SAVED_SEARCHES));
+        try {
+            Map<String, String> searches = new TreeMap<>();
+            for (org.opensearch.search.SearchHit hit : client.search(request, RequestOptions.DEFAULT).getHits().getHits()) {
+                Map<String, Object> fields = hit.getSourceAsMap();
+                searches.put((String) fields.get("name"), (String) fields.get("query"));
+            }
+            return searches;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read saved searches of user " + userId, e);
+        }
+    }
+
+    /**
+     * Invalidate cached results of users whose documents changed at least one refresh
+     * interval ago; the interval must not be shorter than the index's refresh_interval
+     */
+    @Scheduled(fixedDelayString = "${opensearch.index.refresh-interval-ms:1000}")
+    public synchronized void invalidateRefreshedResults() {
+        resultCache.invalidateAll(awaitingRefresh);
+        Set<Long> drained = new HashSet<>();
+        for (Iterator<Long> users = indexedUsers.iterator(); users.hasNext(); ) {
+            drained.add(users.next());
+            users.remove();
+        }
+        awaitingRefresh = drained;
+    }
+
+    /**
+     * Remove queued deletes whose owner could not be resolved, in one request
+     */
+    @Scheduled(fixedDelayString = "${opensearch.bulk.flush-interval-ms:1000}")
+    public void flushUnroutedDeletes() {
+        List<String> ids = new ArrayList<>();
+        for (Long id = unroutedDeletes.poll(); id != null && ids.size() < pageSize; id = unroutedDeletes.poll()) {
+            ids.add(String.valueOf(id));
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        DeleteByQueryRequest delete = new DeleteByQueryRequest(messagesIndex)
+            .setQuery(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0])))
+            .setConflicts("proceed");
+        try {
+            client.deleteByQuery(delete, RequestOptions.DEFAULT);
+            log.debug("Removed {} unrouted messages from the search index", ids.size());
+        } catch (IOException e) {
+            log.error("Failed to remove {} messages from the search index; retrying", ids.size(), e);
+            ids.forEach(id -> unroutedDeletes.add(Long.valueOf(id)));
+        }
+    }
+
+    /**
+     * Resend writes that failed with a transient error; an index request is rebuilt from the
+     * current message, so a retry never overwrites a newer version of the document
+     */
+    @Scheduled(fixedDelayString = "${opensearch.bulk.flush-interval-ms:1000}")
+    public void retryFailedWrites() {
+        // Only what is queued now; writes failing again during the retry wait for the next run
+        List<Long> reindex = new ArrayList<>();
+        for (int i = failedWrites.size(); i > 0; i--) {
+            DocWriteRequest<?> write = failedWrites.poll();
+            if (write == null) {
+                break;
+            }
+            if (write instanceof IndexRequest) {
+                reindex.add(Long.valueOf(write.id()));
+            } else {
+                bulkProcessor.add(write);
+            }
+        }
+        if (!reindex.isEmpty()) {
+            log.info("Retrying {} failed search index writes", reindex.size());
+            bulkIndexMessages(reindex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushUnroutedDeletes();
+        try {
+            if (!bulkProcessor.awaitClose(30, TimeUnit.SECONDS)) {
+                log.warn("Search bulk processor did not drain within 30s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private IndexRequest indexRequest(Message message) {
+        Map<String, Object> document = new HashMap<>();
+        document.put("userId", message.getUserId());
+        document.put("mailboxId", message.getMailboxId());
+        document.put("subject", message.getSubject());
+        document.put("fromAddress", message.getFromAddress());
+        document.put("toAddresses", message.getToAddresses());
+        document.put("ccAddresses", message.getCcAddresses());
+        document.put("snippet", message.getSnippet());
+        document.put("messageDate", IndexedDocument.toMillis(message.getMessageDate()));
+        document.put("hasAttachments", message.getHasAttachments());
+        document.put("body", body(message));
+        return new IndexRequest(messagesIndex)
+            .id(String.valueOf(message.getId()))
+            .routing(routing(message.getUserId()))
+            .source(document);
+    }
+
+    private String body(Message message) {
+        try (Reader reader = messageBodySource.open(message)) {
+            if (reader == null) {
+                return null;
+            }
+            StringBuilder body = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while (body.length() < maxBodyChars
+                    && (read = reader.read(buffer, 0, (int) Math.min(buffer.length, maxBodyChars - body.length()))) > 0) {
+                body.append(buffer, 0, read);
+            }
+            return body.toString();
+        } catch (IOException e) {
+            log.warn("Could not read body of message {} for indexing; indexing headers only: {}",
+                message.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static String routing(Long userId) {
+        return String.valueOf(userId);
+    }
+
+    /**
+     * Records whose documents changed and queues failed items for retry; rejected bulks are
+     * already retried by the backoff policy, and items the index refused (mapping errors and
+     * other 4xx) are only logged, since resending them cannot succeed
+     */
+    private final class BulkListener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            log.debug("Sending search bulk {} with {} actions ({} bytes)",
+                executionId, request.numberOfActions(), request.estimatedSizeInBytes());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            if (response.hasFailures()) {
+                log.warn("Search bulk {} had failures: {}", executionId, response.buildFailureMessage());
+            }
+            for (BulkItemResponse item : response.getItems()) {
+                DocWriteRequest<?> action = request.requests().get(item.getItemId());
+                if (!item.isFailed()) {
+                    // Only users whose documents changed need their cached results invalidated
+                    if (action.routing() != null) {
+                        indexedUsers.add(Long.valueOf(action.routing()));
+                    }
+                } else if (isTransient(item.getFailure().getStatus())) {
+                    failedWrites.add(action);
+                }
+            }
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            log.error("Search bulk {} with {} actions failed; retrying", executionId, request.numberOfActions(),
+                failure);
+            failedWrites.addAll(request.requests());
+        }
+
+        private boolean isTransient(RestStatus status) {
+            return status == RestStatus.TOO_MANY_REQUESTS || status.getStatus() >= 500;
+        }
+    }
+}
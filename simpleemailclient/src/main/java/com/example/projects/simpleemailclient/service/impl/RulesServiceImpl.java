@@ -0,0 +1,468 @@
+package com.example.projects.simpleemailclient.service.impl;
+
+import com.example.projects.simpleemailclient.exception.InvalidRuleException;
+import com.example.projects.simpleemailclient.exception.ResourceNotFoundException;
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Mailbox.MailboxType;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.Rule;
+import com.example.projects.simpleemailclient.model.Rule.RuleType;
+import com.example.projects.simpleemailclient.model.SieveScript;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.RuleRepository;
+import com.example.projects.simpleemailclient.repository.SieveScriptRepository;
+import com.example.projects.simpleemailclient.service.AuditService;
+import com.example.projects.simpleemailclient.service.ComposeService;
+import com.example.projects.simpleemailclient.service.MessageMetadataService;
+import com.example.projects.simpleemailclient.service.RulesService;
+import com.example.projects.simpleemailclient.service.rules.BulkRuleApplier;
+import com.example.projects.simpleemailclient.service.rules.BulkRuleJob;
+import com.example.projects.simpleemailclient.service.rules.CompiledRule;
+import com.example.projects.simpleemailclient.service.rules.CompiledRuleSet;
+import com.example.projects.simpleemailclient.service.rules.Condition;
+import com.example.projects.simpleemailclient.service.rules.Conditions;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import com.example.projects.simpleemailclient.service.rules.ReplySuppressionCache;
+import com.example.projects.simpleemailclient.service.rules.RuleAction;
+import com.example.projects.simpleemailclient.service.rules.RuleCompiler;
+import com.example.projects.simpleemailclient.service.rules.RuleEvaluationContext;
+import com.example.projects.simpleemailclient.service.rules.RuleExecutionStats;
+import com.example.projects.simpleemailclient.service.rules.RuleSetCache;
+import com.example.projects.simpleemailclient.service.sieve.SieveCompiler;
+import com.example.projects.simpleemailclient.service.sieve.SieveProgram;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Implementation of RulesService
+ * Rules and the user's Sieve script are compiled once into immutable
+ * condition/action trees and cached per user; applying rules to a message
+ * touches neither the rules table nor JSON
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@Transactional
+public class RulesServiceImpl implements RulesService {
+
+    private static final int DEFAULT_PRIORITY = 100;
+    // Sieve scripts run after native rules at the default priority
+    private static final int DEFAULT_SIEVE_PRIORITY = 1000;
+
+    private final RuleRepository ruleRepository;
+    private final SieveScriptRepository sieveScriptRepository;
+    private final MailboxRepository mailboxRepository;
+    private final RuleCompiler ruleCompiler;
+    private final SieveCompiler sieveCompiler;
+    private final RuleSetCache ruleSetCache;
+    private final MessageBodySource messageBodySource;
+    private final RuleExecutionStats ruleExecutionStats;
+    private final BulkRuleApplier bulkRuleApplier;
+    private final ReplySuppressionCache replySuppressionCache;
+    private final MessageMetadataService messageMetadataService;
+    private final ComposeService composeService;
+    private final AuditService auditService;
+
+    @Override
+    public Rule createRule(Rule rule) {
+        log.info("Creating rule '{}' for user {}", rule.getName(), rule.getUserId());
+
+        // Fail fast on rules that would not compile at evaluation time
+        ruleCompiler.compile(rule);
+
+        // Set defaults
+        if (rule.getEnabled() == null) {
+            rule.setEnabled(true);
+        }
+        if (rule.getPriority() == null) {
+            rule.setPriority(DEFAULT_PRIORITY);
+        }
+        if (rule.getExecutionCount() == null) {
+            rule.setExecutionCount(0L);
+        }
+
+        Rule savedRule = ruleRepository.save(rule);
+        ruleSetCache.invalidate(savedRule.getUserId());
+
+        auditService.log(savedRule.getUserId(), "RULE_CREATED", savedRule.getId(), "RULE");
+        return savedRule;
+    }
+
+    @Override
+    public Rule updateRule(Rule rule) {
+        log.info("Updating rule: {}", rule.getId());
+
+        Rule existingRule = ruleRepository.findById(rule.getId())
+            .orElseThrow(() -> new ResourceNotFoundException("Rule", rule.getId()));
+
+        // Prevent ownership changes
+        rule.setUserId(existingRule.getUserId());
+        ruleCompiler.compile(rule);
+
+        Rule updatedRule = ruleRepository.save(rule);
+        ruleSetCache.invalidate(updatedRule.getUserId());
+
+        auditService.log(updatedRule.getUserId(), "RULE_UPDATED", updatedRule.getId(), "RULE");
+        return updatedRule;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Rule> getRuleById(Long ruleId, Long userId) {
+        return ruleRepository.findByIdAndUserId(ruleId, userId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Rule> getUserRules(Long userId) {
+        return ruleRepository.findByUserIdOrderByPriorityAsc(userId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Rule> getActiveRules(Long userId) {
+        return ruleRepository.findActiveRulesByUserId(userId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Rule> getRulesByType(Long userId, RuleType ruleType) {
+        return ruleRepository.findByUserIdAndRuleType(userId, ruleType);
+    }
+
+    @Override
+    public Rule enableRule(Long ruleId, Long userId) {
+        return setEnabled(ruleId, userId, true);
+    }
+
+    @Override
+    public Rule disableRule(Long ruleId, Long userId) {
+        return setEnabled(ruleId, userId, false);
+    }
+
+    @Override
+    public void deleteRule(Long ruleId, Long userId) {
+        log.info("Deleting rule {} for user {}", ruleId, userId);
+
+        Rule rule = findOwnedRule(ruleId, userId);
+        ruleRepository.delete(rule);
+        ruleSetCache.invalidate(userId);
+        ruleExecutionStats.forget(ruleId);
+        replySuppressionCache.forget(userId, ruleId);
+
+        auditService.log(userId, "RULE_DELETED", ruleId, "RULE");
+    }
+
+    @Override
+    public List<Long> applyRules(Message message) {
+        CompiledRuleSet ruleSet = compiledRules(message.getUserId());
+        if (ruleSet.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        RuleEvaluationContext context = RuleEvaluationContext.of(message, messageBodySource);
+        List<CompiledRule> matched = ruleSet.match(context);
+        if (context.isBudgetExceeded()) {
+            log.warn("Rule evaluation for message {} of user {} stopped after {} steps; budget exceeded",
+                message.getId(), message.getUserId(), context.getBudgetUsed());
+        }
+        List<Long> appliedRuleIds = new ArrayList<>(matched.size());
+        for (CompiledRule rule : matched) {
+            appliedRuleIds.add(rule.getRuleId());
+            ruleExecutionStats.record(rule);
+            if (!execute(rule, message)) {
+                break;
+            }
+        }
+
+        if (!appliedRuleIds.isEmpty()) {
+            log.debug("Applied rules {} to message {}", appliedRuleIds, message.getId());
+        }
+        return appliedRuleIds;
+    }
+
+    @Override
+    public boolean applyRule(Long ruleId, Message message) {
+        CompiledRule rule = compiledRules(message.getUserId()).getRule(ruleId);
+        if (rule == null) {
+            // Disabled rules are not cached but may still be applied explicitly
+            rule = ruleCompiler.compile(findOwnedRule(ruleId, message.getUserId()));
+        }
+
+        if (!rule.matches(budgeted(message))) {
+            return false;
+        }
+        ruleExecutionStats.record(rule);
+        execute(rule, message);
+        return true;
+    }
+
+    @Override
+    public BulkRuleJob applyRulesToMailbox(Long userId, Long mailboxId, Long ruleId) {
+        mailboxRepository.findByIdAndUserId(mailboxId, userId)
+            .orElseThrow(() -> new ResourceNotFoundException("Mailbox", mailboxId));
+
+        CompiledRuleSet ruleSet = compiledRules(userId);
+        if (ruleId != null) {
+            CompiledRule rule = ruleSet.getRule(ruleId);
+            if (rule == null) {
+                rule = ruleCompiler.compile(findOwnedRule(ruleId, userId));
+            }
+            ruleSet = new CompiledRuleSet(userId, List.of(rule), 0, ruleCompiler.getEvaluationBudget());
+        }
+
+        BulkRuleJob job = bulkRuleApplier.submit(ruleSet, mailboxId, ruleId);
+        auditService.log(userId, "RULES_BULK_APPLY_STARTED", mailboxId, "MAILBOX");
+        return job;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<BulkRuleJob> getBulkRuleJob(String jobId, Long userId) {
+        return bulkRuleApplier.getJob(jobId)
+            .filter(job -> job.getUserId().equals(userId));
+    }
+
+    @Override
+    public boolean cancelBulkRuleJob(String jobId, Long userId) {
+        BulkRuleJob job = getBulkRuleJob(jobId, userId)
+            .orElseThrow(() -> new ResourceNotFoundException("BulkRuleJob with id " + jobId + " not found"));
+        boolean cancelled = job.cancel();
+        if (cancelled) {
+            auditService.log(userId, "RULES_BULK_APPLY_CANCELLED", job.getMailboxId(), "MAILBOX");
+        }
+        return cancelled;
+    }
+
+    @Override
+    public boolean evaluateCondition(Rule rule, Message message) {
+        return compiled(rule).matches(budgeted(message));
+    }
+
+    @Override
+    public void executeAction(Rule rule, Message message) {
+        execute(compiled(rule), message);
+    }
+
+    @Override
+    public Rule updatePriority(Long ruleId, Integer newPriority, Long userId) {
+        Rule rule = findOwnedRule(ruleId, userId);
+        rule.setPriority(newPriority);
+
+        Rule updatedRule = ruleRepository.save(rule);
+        ruleSetCache.invalidate(userId);
+        return updatedRule;
+    }
+
+    @Override
+    public boolean validateRule(String conditionJson, String actionJson) {
+        try {
+            Condition condition = ruleCompiler.compileCondition(conditionJson);
+            ruleCompiler.compileActions(actionJson);
+            if (!ruleCompiler.fitsBudget(condition)) {
+                log.debug("Rule validation failed: worst case of {} steps exceeds the budget of {}",
+                    Conditions.worstCaseSteps(condition), ruleCompiler.getEvaluationBudget());
+                return false;
+            }
+            return true;
+        } catch (InvalidRuleException e) {
+            log.debug("Rule validation failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public SieveScript saveSieveScript(Long userId, String name, String script) {
+        log.info("Saving Sieve script '{}' for user {}", name, userId);
+
+        SieveScript sieveScript = sieveScriptRepository.findByUserId(userId)
+            .orElseGet(() -> SieveScript.builder()
+                .userId(userId)
+                .active(true)
+                .priority(DEFAULT_SIEVE_PRIORITY)
+                .build());
+        sieveCompiler.compile(script, sieveScript.getPriority());
+        sieveScript.setName(name);
+        sieveScript.setScript(script);
+
+        SieveScript saved = sieveScriptRepository.save(sieveScript);
+        ruleSetCache.invalidate(userId);
+
+        auditService.log(userId, "SIEVE_SCRIPT_SAVED", saved.getId(), "SIEVE_SCRIPT");
+        return saved;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<SieveScript> getSieveScript(Long userId) {
+        return sieveScriptRepository.findByUserId(userId);
+    }
+
+    @Override
+    public SieveScript setSieveScriptActive(Long userId, boolean active) {
+        SieveScript sieveScript = sieveScriptRepository.findByUserId(userId)
+            .orElseThrow(() -> new ResourceNotFoundException("SieveScript", userId));
+        sieveScript.setActive(active);
+
+        SieveScript saved = sieveScriptRepository.save(sieveScript);
+        ruleSetCache.invalidate(userId);
+
+        auditService.log(userId, active ? "SIEVE_SCRIPT_ENABLED" : "SIEVE_SCRIPT_DISABLED", saved.getId(), "SIEVE_SCRIPT");
+        return saved;
+    }
+
+    @Override
+    public void deleteSieveScript(Long userId) {
+        SieveScript sieveScript = sieveScriptRepository.findByUserId(userId)
+            .orElseThrow(() -> new ResourceNotFoundException("SieveScript", userId));
+        sieveScriptRepository.delete(sieveScript);
+        ruleSetCache.invalidate(userId);
+
+        auditService.log(userId, "SIEVE_SCRIPT_DELETED", sieveScript.getId(), "SIEVE_SCRIPT");
+    }
+
+    @Override
+    public boolean validateSieveScript(String script) {
+        try {
+            sieveCompiler.compile(script, DEFAULT_SIEVE_PRIORITY);
+            return true;
+        } catch (InvalidRuleException e) {
+            log.debug("Sieve script validation failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private CompiledRuleSet compiledRules(Long userId) {
+        return ruleSetCache.get(userId, this::loadRuleSet);
+    }
+
+    /**
+     * Compile a user's active rules and active Sieve script into one rule set
+     */
+    private CompiledRuleSet loadRuleSet(Long userId) {
+        List<Rule> rules = ruleRepository.findActiveRulesByUserId(userId);
+        Optional<SieveScript> script = sieveScriptRepository.findByUserIdAndActiveTrue(userId);
+        if (script.isEmpty()) {
+            return ruleCompiler.compileAll(userId, rules);
+        }
+        try {
+            SieveProgram program = sieveCompiler.compile(script.get().getScript(), script.get().getPriority());
+            return ruleCompiler.compileAll(userId, rules, program.getRules(), program.getSharedConditions());
+        } catch (InvalidRuleException e) {
+            // Scripts are validated on save; keep native rules running if one no longer compiles
+            log.error("Sieve script {} of user {} does not compile: {}", script.get().getId(), userId, e.getMessage());
+            return ruleCompiler.compileAll(userId, rules);
+        }
+    }
+
+    private RuleEvaluationContext budgeted(Message message) {
+        return RuleEvaluationContext.of(message, messageBodySource).withBudget(ruleCompiler.getEvaluationBudget());
+    }
+
+    /**
+     * Reuse the cached compiled form when it was compiled from the same row version
+     */
+    private CompiledRule compiled(Rule rule) {
+        if (rule.getId() != null && rule.getUserId() != null) {
+            CompiledRule cached = compiledRules(rule.getUserId()).getRule(rule.getId());
+            if (cached != null && Objects.equals(cached.getVersion(), rule.getVersion())) {
+                return cached;
+            }
+        }
+        return ruleCompiler.compile(rule);
+    }
+
+    /**
+     * Execute a compiled rule's actions against a message
+     * @return false if the message no longer exists and evaluation must stop
+     */
+    private boolean execute(CompiledRule rule, Message message) {
+        Long userId = message.getUserId();
+        for (RuleAction action : rule.getActions()) {
+            switch (action.getType()) {
+                case MOVE:
+                    apply(message, messageMetadataService.moveMessage(message.getId(), action.getMailboxId(), userId));
+                    break;
+                case FILE_INTO:
+                    Optional<Mailbox> target = findMailboxByName(userId, action.getValue());
+                    if (target.isEmpty()) {
+                        // Sieve: filing into a missing mailbox falls back to keep
+                        log.warn("Mailbox '{}' not found for user {}; keeping message {}", action.getValue(), userId, message.getId());
+                    } else if (!target.get().getId().equals(message.getMailboxId())) {
+                        apply(message, messageMetadataService.moveMessage(message.getId(), target.get().getId(), userId));
+                    }
+                    break;
+                case ADD_FLAG:
+                case REMOVE_FLAG:
+                    Set<String> flags = MessageMetadataServiceImpl.parseFlags(message.getFlags());
+                    boolean changed = action.getType() == RuleAction.Type.ADD_FLAG
+                        ? flags.add(action.getValue())
+                        : flags.remove(action.getValue());
+                    if (changed) {
+                        apply(message, messageMetadataService.updateFlags(message.getId(), String.join(",", flags), userId));
+                    }
+                    break;
+                case MARK_READ:
+                    apply(message, messageMetadataService.markAsRead(message.getId(), userId));
+                    break;
+                case DELETE:
+                    messageMetadataService.deleteMessage(message.getId(), userId);
+                    return false;
+                case FORWARD:
+                    Message forward = composeService.createForward(message.getId(), List.of(action.getValue()), userId);
+                    composeService.sendMessage(forward.getId(), userId);
+                    break;
+                case REPLY:
+                    if (!replySuppressionCache.tryAcquire(userId, rule.getRuleId(), message, action.getDays())) {
+                        log.debug("Suppressed auto-reply of rule {} to message {}", rule.getRuleId(), message.getId());
+                        break;
+                    }
+                    Message reply = composeService.createReply(message.getId(), action.getValue(), userId);
+                    composeService.sendMessage(reply.getId(), userId);
+                    break;
+                default:
+                    throw new IllegalStateException("Unhandled rule action: " + action.getType());
+            }
+        }
+        return true;
+    }
+
+    private Optional<Mailbox> findMailboxByName(Long userId, String name) {
+        Optional<Mailbox> mailbox = mailboxRepository.findByUserIdAndName(userId, name);
+        if (mailbox.isEmpty() && "INBOX".equalsIgnoreCase(name)) {
+            return mailboxRepository.findByUserIdAndMailboxType(userId, MailboxType.INBOX);
+        }
+        return mailbox;
+    }
+
+    private static void apply(Message target, Message updated) {
+        target.setMailboxId(updated.getMailboxId());
+        target.setFlags(updated.getFlags());
+        target.setModseq(updated.getModseq());
+    }
+
+    private Rule setEnabled(Long ruleId, Long userId, boolean enabled) {
+        Rule rule = findOwnedRule(ruleId, userId);
+        rule.setEnabled(enabled);
+
+        Rule updatedRule = ruleRepository.save(rule);
+        ruleSetCache.invalidate(userId);
+
+        auditService.log(userId, enabled ? "RULE_ENABLED" : "RULE_DISABLED", ruleId, "RULE");
+        return updatedRule;
+    }
+
+    private Rule findOwnedRule(Long ruleId, Long userId) {
+        return ruleRepository.findByIdAndUserId(ruleId, userId)
+            .orElseThrow(() -> new ResourceNotFoundException("Rule", ruleId));
+    }
+}
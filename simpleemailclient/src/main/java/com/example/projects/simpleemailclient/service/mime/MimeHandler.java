@@ -0,0 +1,35 @@
+package com.example.projects.simpleemailclient.service.mime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Receives the events of a StreamingMimeParser run, in message order
+ * For each entity, the message first: its headers, then (for a part with a body, not a
+ * multipart) the body, then its end. The parts of a multipart come between its headers
+ * and its end.
+ */
+public interface MimeHandler {
+
+    /**
+     * One header of the message or a part, unfolded
+     * @param value Raw value; encoded words are not decoded
+     */
+    default void header(MimePart part, String name, String value) throws IOException {
+    }
+
+    /**
+     * A part's headers are complete and its body follows
+     * @return Where to write the body, with its transfer encoding removed; null to skip it
+     * without decoding. The parser writes in small pieces and never closes the stream.
+     */
+    default OutputStream body(MimePart part) throws IOException {
+        return null;
+    }
+
+    /**
+     * The entity has been read to its end
+     */
+    default void endPart(MimePart part) throws IOException {
+    }
+}
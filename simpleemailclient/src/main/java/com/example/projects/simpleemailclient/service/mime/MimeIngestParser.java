@@ -0,0 +1,332 @@
+package com.example.projects.simpleemailclient.service.mime;
+
+import com.example.projects.simpleemailclient.model.Attachment;
+import com.example.projects.simpleemailclient.service.attachment.AttachmentContentStore;
+import com.example.projects.simpleemailclient.service.search.MimeTextExtractor;
+import jakarta.mail.internet.MailDateFormat;
+import jakarta.mail.internet.MimeUtility;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts headers, snippet, content type and attachments from a raw message in one pass
+ * The message is read once with StreamingMimeParser. Only the first readable text part
+ * is decoded, and only as far as the snippet needs; attachment bodies are decoded
+ * straight into a spool file, hashed on the way, and handed to AttachmentContentStore,
+ * so a duplicate attachment is stored once per tenant. Memory stays bounded however
+ * large the message or its attachments.
+ */
+@Component
+@Slf4j
+public class MimeIngestParser {
+
+    private static final String PENDING_SCAN = "PENDING";
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final AttachmentContentStore contentStore;
+
+    private final int snippetChars;
+    private final Path spoolDirectory;
+
+    public MimeIngestParser(AttachmentContentStore contentStore,
+                            @Value("${email.ingest.snippet-chars:200}") int snippetChars,
+                            @Value("${email.attachment.upload.spool-dir:${java.io.tmpdir}}") String spoolDirectory) {
+        this.contentStore = contentStore;
+        this.snippetChars = snippetChars;
+        this.spoolDirectory = Path.of(spoolDirectory);
+    }
+
+    /**
+     * Parse a raw message, storing its attachments for the tenant as they are read
+     * @param raw Raw message; read to the end but not closed
+     * @return The parsed message. Its attachments hold references on stored content: a
+     * caller that does not save them must give those back with AttachmentContentStore.release.
+     */
+    public ParsedMessage parse(Long tenantId, InputStream raw) {
+        CountingInputStream in = new CountingInputStream(raw);
+        IngestHandler handler = new IngestHandler(tenantId);
+        try {
+            StreamingMimeParser.parse(in, handler);
+        } catch (IOException e) {
+            handler.abort();
+            throw new UncheckedIOException("Failed to parse message", e);
+        } catch (RuntimeException e) {
+            handler.abort();
+            throw e;
+        }
+        handler.message.setSizeBytes(in.count);
+        handler.message.setHasAttachments(handler.message.getAttachments().stream()
+            .anyMatch(attachment -> !attachment.getIsInline()));
+        return handler.message;
+    }
+
+    private static String decode(String value) {
+        try {
+            return MimeUtility.decodeText(value);
+        } catch (UnsupportedEncodingException e) {
+            return value;
+        }
+    }
+
+    /**
+     * Builds the ParsedMessage from the parser's events
+     */
+    private final class IngestHandler implements MimeHandler {
+
+        final ParsedMessage message = ParsedMessage.builder().build();
+        private final Long tenantId;
+        private final MailDateFormat dateFormat = new MailDateFormat();
+        private MimePart open;
+        private ByteArrayOutputStream text;
+        private Path spool;
+        private OutputStream spoolOut;
+        private MessageDigest digest;
+
+        IngestHandler(Long tenantId) {
+            this.tenantId = tenantId;
+        }
+
+        @Override
+        public void header(MimePart part, String name, String value) {
+            if (part.getDepth() > 0) {
+                return;
+            }
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "subject":
+                    message.setSubject(decode(value));
+                    break;
+                case "from":
+                    message.setFromAddress(decode(value));
+                    break;
+                case "to":
+                    message.setToAddresses(decode(value));
+                    break;
+                case "cc":
+                    message.setCcAddresses(decode(value));
+                    break;
+                case "date":
+                    message.setMessageDate(date(value));
+                    break;
+                case "message-id":
+                    message.setMessageId(value);
+                    break;
+                case "in-reply-to":
+                    message.setInReplyTo(value);
+                    break;
+                case "references":
+                    message.setReferences(value);
+                    break;
+                case "list-id":
+                    message.setListId(decode(value));
+                    break;
+                case "x-priority":
+                case "importance":
+                    message.setPriority(value);
+                    break;
+                case "content-type":
+                    message.setContentType(part.getContentType());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public OutputStream body(MimePart part) throws IOException {
+            if (part.getDepth() == 0 && message.getContentType() == null) {
+                message.setContentType(part.getContentType());
+            }
+            if (part.isAttachment()) {
+                open = part;
+                spool = Files.createTempFile(spoolDirectory, "ingest-", ".part");
+                digest = sha256();
+                spoolOut = new DigestOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(spool), 65536), digest);
+                return spoolOut;
+            }
+            if (message.getSnippet() == null && part.isText()) {
+                open = part;
+                // Enough bytes for the snippet even at four bytes per character
+                text = new BoundedBuffer(snippetChars * 4);
+                return text;
+            }
+            return null;
+        }
+
+        @Override
+        public void endPart(MimePart part) throws IOException {
+            if (part != open) {
+                return;
+            }
+            open = null;
+            if (spoolOut != null) {
+                spoolOut.close();
+                spoolOut = null;
+                try {
+                    store(part);
+                } finally {
+                    deleteSpool();
+                }
+            } else if (text != null) {
+                String decoded = text.toString(part.charset());
+                text = null;
+                String collapsed = WHITESPACE.matcher(
+                    part.getContentType().equals("text/html") ? MimeTextExtractor.stripHtml(decoded) : decoded)
+                    .replaceAll(" ").trim();
+                if (!collapsed.isEmpty()) {
+                    message.setSnippet(collapsed.length() > snippetChars
+                        ? collapsed.substring(0, snippetChars) : collapsed);
+                }
+            }
+        }
+
+        private void store(MimePart part) throws IOException {
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            long size = Files.size(spool);
+            String mimeType = part.getContentType();
+            String key = contentStore.store(tenantId, sha256, size, spool, mimeType);
+            String filename = part.getFilename();
+            message.getAttachments().add(Attachment.builder()
+                .filename(filename != null && !filename.isBlank() ? filename : "attachment-" + part.getPath())
+                .sizeBytes(size)
+                .mimeType(mimeType)
+                .blobPointer(key)
+                .checksumSha256(sha256)
+                .isInline(part.isInline())
+                .contentId(part.getContentId())
+                .scanStatus(PENDING_SCAN)
+                .build());
+        }
+
+        /**
+         * Undo a parse that failed part way
+         */
+        void abort() {
+            if (spoolOut != null) {
+                try {
+                    spoolOut.close();
+                } catch (IOException e) {
+                    // Deleted below regardless
+                }
+                spoolOut = null;
+            }
+            deleteSpool();
+            List<Attachment> stored = new ArrayList<>(message.getAttachments());
+            message.getAttachments().clear();
+            for (Attachment attachment : stored) {
+                contentStore.release(attachment.getBlobPointer());
+            }
+        }
+
+        private void deleteSpool() {
+            if (spool == null) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                log.warn("Failed to delete ingest spool file {}: {}", spool, e.getMessage());
+            }
+            spool = null;
+        }
+
+        private LocalDateTime date(String value) {
+            try {
+                return LocalDateTime.ofInstant(dateFormat.parse(value).toInstant(), ZoneId.systemDefault());
+            } catch (ParseException e) {
+                return null;
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Keeps the first limit bytes written and drops the rest
+     */
+    private static final class BoundedBuffer extends ByteArrayOutputStream {
+
+        private final int limit;
+
+        BoundedBuffer(int limit) {
+            super(Math.min(limit, 8192));
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (count < limit) {
+                super.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int room = limit - count;
+            if (room > 0) {
+                super.write(b, off, Math.min(room, len));
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // The caller owns the source stream
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.projects.simpleemailclient.service.mime;
+
+import jakarta.mail.internet.MimeUtility;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The message, or one part of it, as described by its content headers
+ * Only the Content-* headers are kept; the handler sees every header as it is read.
+ */
+public final class MimePart {
+
+    private static final Pattern PARAMETER = Pattern.compile(
+        ";\\s*([A-Za-z0-9_.*-]+)\\s*=\\s*(?:\"((?:[^\"\\\\]|\\\\.)*)\"|([^;\\s]+))");
+
+    private final MimePart parent;
+    private final String path;
+    private final int depth;
+
+    private String contentType;
+    private String boundary;
+    private String charsetName;
+    private String transferEncoding = "7bit";
+    private String disposition;
+    private String filename;
+    private String name;
+    private String contentId;
+
+    MimePart(MimePart parent, int index) {
+        this.parent = parent;
+        if (parent == null) {
+            this.path = "";
+            this.depth = 0;
+        } else {
+            this.path = parent.path.isEmpty() ? String.valueOf(index) : parent.path + "." + index;
+            this.depth = parent.depth + 1;
+        }
+        this.contentType = parent != null && parent.contentType.equals("multipart/digest")
+            ? "message/rfc822" : "text/plain";
+    }
+
+    void apply(String header, String value) {
+        switch (header.toLowerCase(Locale.ROOT)) {
+            case "content-type":
+                contentType = token(value);
+                boundary = parameter(value, "boundary");
+                charsetName = parameter(value, "charset");
+                name = parameter(value, "name");
+                break;
+            case "content-transfer-encoding":
+                transferEncoding = value.trim().toLowerCase(Locale.ROOT);
+                break;
+            case "content-disposition":
+                disposition = token(value);
+                filename = parameter(value, "filename");
+                break;
+            case "content-id":
+                contentId = value.trim();
+                break;
+            default:
+                break;
+        }
+    }
+
+    public MimePart getParent() {
+        return parent;
+    }
+
+    /**
+     * IMAP section number, such as "1.2"; empty for the message itself
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Lower-cased type/subtype, without parameters
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getBoundary() {
+        return boundary;
+    }
+
+    public String getTransferEncoding() {
+        return transferEncoding;
+    }
+
+    public String getDisposition() {
+        return disposition;
+    }
+
+    public String getContentId() {
+        return contentId;
+    }
+
+    /**
+     * Decoded filename from Content-Disposition, else the Content-Type name; null if neither
+     */
+    public String getFilename() {
+        String raw = filename != null ? filename : name;
+        if (raw == null) {
+            return null;
+        }
+        try {
+            return MimeUtility.decodeText(raw);
+        } catch (UnsupportedEncodingException e) {
+            return raw;
+        }
+    }
+
+    public boolean isMultipart() {
+        return contentType.startsWith("multipart/") && boundary != null;
+    }
+
+    public boolean isText() {
+        return contentType.equals("text/plain") || contentType.equals("text/html");
+    }
+
+    public boolean isAttachment() {
+        return !isMultipart() && ("attachment".equals(disposition) || filename != null || name != null);
+    }
+
+    public boolean isInline() {
+        return "inline".equals(disposition);
+    }
+
+    /**
+     * Declared charset; UTF-8 if there is none or it is unknown
+     */
+    public Charset charset() {
+        if (charsetName != null) {
+            try {
+                return Charset.forName(charsetName);
+            } catch (IllegalArgumentException e) {
+                // Unknown or malformed charset name; fall through to the default
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static String token(String value) {
+        int semicolon = value.indexOf(';');
+        return (semicolon >= 0 ? value.substring(0, semicolon) : value).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * A parameter's value, including the RFC 2231 charset''percent-encoded form
+     */
+    private static String parameter(String value, String parameter) {
+        Matcher matcher = PARAMETER.matcher(value);
+        while (matcher.find()) {
+            String found = matcher.group(1);
+            String raw = matcher.group(2) != null ? matcher.group(2).replaceAll("\\\\(.)", "$1") : matcher.group(3);
+            if (found.equalsIgnoreCase(parameter)) {
+                return raw;
+            }
+            if (found.equalsIgnoreCase(parameter + "*")) {
+                return extended(raw);
+            }
+        }
+        return null;
+    }
+
+    private static String extended(String raw) {
+        int first = raw.indexOf('\'');
+        int second = first >= 0 ? raw.indexOf('\'', first + 1) : -1;
+        if (second < 0) {
+            return raw;
+        }
+        try {
+            Charset charset = first == 0 ? StandardCharsets.US_ASCII : Charset.forName(raw.substring(0, first));
+            return URLDecoder.decode(raw.substring(second + 1).replace("+", "%2B"), charset);
+        } catch (IllegalArgumentException e) {
+            return raw.substring(second + 1);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.projects.simpleemailclient.service.mime;
+
+import com.example.projects.simpleemailclient.model.Attachment;
+import com.example.projects.simpleemailclient.model.Message;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What ingest needs from a raw message, as extracted by MimeIngestParser
+ * Header values are decoded but not truncated; toMessage fits them to the columns.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ParsedMessage {
+    private String subject;
+    private String fromAddress;
+    private String toAddresses;
+    private String ccAddresses;
+    private LocalDateTime messageDate;
+    private String messageId;
+    private String inReplyTo;
+    private String references;
+    private String listId;
+    private String priority;
+    private String contentType;
+    private String snippet;
+    private Boolean hasAttachments;
+    private Long sizeBytes;
+
+    /**
+     * Attachments whose content is already stored; messageId is not set
+     */
+    @Builder.Default
+    private List<Attachment> attachments = new ArrayList<>();
+
+    /**
+     * A message builder with the parsed fields; the caller adds the user, mailbox, UID,
+     * MIME pointer, flags and modification sequences
+     */
+    public Message.MessageBuilder toMessage() {
+        return Message.builder()
+            .subject(truncate(subject != null ? subject : "", 1000))
+            .fromAddress(truncate(fromAddress != null ? fromAddress : "", 500))
+            .toAddresses(truncate(toAddresses != null ? toAddresses : "", 2000))
+            .ccAddresses(truncate(ccAddresses, 2000))
+            .messageDate(messageDate != null ? messageDate : LocalDateTime.now())
+            .messageId(truncate(messageId, 100))
+            .inReplyTo(truncate(inReplyTo, 500))
+            .references(truncate(references, 1000))
+            .listId(truncate(listId, 500))
+            .priority(truncate(priority, 50))
+            .contentType(truncate(contentType, 100))
+            .snippet(truncate(snippet, 500))
+            .hasAttachments(Boolean.TRUE.equals(hasAttachments))
+            .sizeBytes(sizeBytes);
+    }
+
+    /**
+     * The attachments, linked to the saved message
+     */
+    public List<Attachment> attachmentsFor(Long messageId) {
+        attachments.forEach(attachment -> attachment.setMessageId(messageId));
+        return attachments;
+    }
+
+    private static String truncate(String value, int length) {
+        return value == null || value.length() <= length ? value : value.substring(0, length);
+    }
+}
@@ -0,0 +1,425 @@
+package com.example.projects.simpleemailclient.service.mime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Event-based MIME parser that reads a raw message once, front to back
+ * Headers and parts are reported to a MimeHandler as they are read (see there). A body
+ * is decoded only if the handler asks for it, straight into the handler's stream, so
+ * attachments can be piped to storage while skipped parts cost no more than a scan for
+ * the next boundary. Memory is bounded whatever the message size: one read buffer, one
+ * line, and at most MAX_HEADER_BYTES of each entity's headers. Malformed input is read
+ * leniently: a missing closing boundary ends at the enclosing one or end of input, and
+ * multiparts nested beyond MAX_DEPTH are reported as a single part.
+ */
+public final class StreamingMimeParser {
+
+    static final int MAX_DEPTH = 16;
+    static final int MAX_HEADER_BYTES = 65536;
+    private static final int MAX_LINE_BYTES = 8192;
+    private static final int BODY = -2;
+    private static final int END = -1;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] BASE64 = new byte[256];
+
+    static {
+        Arrays.fill(BASE64, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final LineReader lines;
+    private final MimeHandler handler;
+    private final List<byte[]> boundaries = new ArrayList<>();
+    private final byte[] decoded = new byte[MAX_LINE_BYTES];
+    // Whether the last boundary line matched was a closing delimiter
+    private boolean closing;
+
+    private StreamingMimeParser(InputStream in, MimeHandler handler) {
+        this.lines = new LineReader(in);
+        this.handler = handler;
+    }
+
+    /**
+     * @param in Raw message, headers first; read to the end but not closed
+     */
+    public static void parse(InputStream in, MimeHandler handler) throws IOException {
+        new StreamingMimeParser(in, handler).entity(new MimePart(null, 0));
+    }
+
+    /**
+     * Read one entity, headers and body
+     * @return Level in the boundary stack of the boundary line that ended it; END at end of input
+     */
+    private int entity(MimePart part) throws IOException {
+        int level = headers(part);
+        if (level == BODY) {
+            level = part.isMultipart() && part.getDepth() < MAX_DEPTH ? multipart(part) : leaf(part);
+        }
+        handler.endPart(part);
+        return level;
+    }
+
+    private int multipart(MimePart part) throws IOException {
+        boundaries.add(part.getBoundary().getBytes(StandardCharsets.ISO_8859_1));
+        int own = boundaries.size() - 1;
+        // Preamble
+        int level = skip();
+        int index = 0;
+        while (level == own && !closing) {
+            level = entity(new MimePart(part, ++index));
+        }
+        boundaries.remove(own);
+        // After the closing delimiter, the epilogue runs to an enclosing boundary
+        return level == own ? skip() : level;
+    }
+
+    private int leaf(MimePart part) throws IOException {
+        OutputStream out = handler.body(part);
+        if (out == null) {
+            return skip();
+        }
+        Decoder decoder;
+        if (part.getTransferEncoding().equals("base64")) {
+            decoder = new Base64Decoder(out, decoded);
+        } else if (part.getTransferEncoding().equals("quoted-printable")) {
+            decoder = new QuotedPrintableDecoder(out, decoded);
+        } else {
+            decoder = new IdentityDecoder(out);
+        }
+        int level = END;
+        while (lines.next()) {
+            if (lines.start && (level = boundary()) != END) {
+                break;
+            }
+            decoder.line(lines.line, lines.length, lines.terminated);
+        }
+        decoder.finish();
+        return level;
+    }
+
+    /**
+     * Skip lines up to a boundary line
+     * @return Its level, or END at end of input
+     */
+    private int skip() throws IOException {
+        while (lines.next()) {
+            if (lines.start) {
+                int level = boundary();
+                if (level != END) {
+                    return level;
+                }
+            }
+        }
+        return END;
+    }
+
+    /**
+     * Read an entity's headers, up to the empty line that ends them
+     * @return BODY if a body follows; otherwise the level of a boundary line that cut
+     * the headers short, or END at end of input
+     */
+    private int headers(MimePart part) throws IOException {
+        StringBuilder current = null;
+        int bytes = 0;
+        while (lines.next()) {
+            if (lines.start) {
+                if (lines.length == 0) {
+                    header(part, current);
+                    return BODY;
+                }
+                int level = boundary();
+                if (level != END) {
+                    header(part, current);
+                    return level;
+                }
+            }
+            bytes += lines.length;
+            if (bytes > MAX_HEADER_BYTES) {
+                // Keep reading to the end of the headers, but keep no more of them
+                continue;
+            }
+            String text = text(lines.line, lines.length);
+            if (!lines.start) {
+                if (current != null) {
+                    current.append(text);
+                }
+            } else if ((text.charAt(0) == ' ' || text.charAt(0) == '\t') && current != null) {
+                current.append(' ').append(text.trim());
+            } else {
+                header(part, current);
+                current = new StringBuilder(text);
+            }
+        }
+        header(part, current);
+        return END;
+    }
+
+    private void header(MimePart part, StringBuilder header) throws IOException {
+        if (header == null) {
+            return;
+        }
+        int colon = header.indexOf(":");
+        if (colon <= 0) {
+            return;
+        }
+        String name = header.substring(0, colon).trim();
+        String value = header.substring(colon + 1).trim();
+        part.apply(name, value);
+        handler.header(part, name, value);
+    }
+
+    /**
+     * @return Level of the innermost boundary the current line delimits, or END if none
+     */
+    private int boundary() {
+        byte[] line = lines.line;
+        int length = lines.length;
+        if (length < 2 || line[0] != '-' || line[1] != '-') {
+            return END;
+        }
+        for (int level = boundaries.size() - 1; level >= 0; level--) {
+            byte[] boundary = boundaries.get(level);
+            if (length < boundary.length + 2
+                || !Arrays.equals(line, 2, boundary.length + 2, boundary, 0, boundary.length)) {
+                continue;
+            }
+            int rest = boundary.length + 2;
+            boolean close = length >= rest + 2 && line[rest] == '-' && line[rest + 1] == '-';
+            if (close) {
+                rest += 2;
+            }
+            while (rest < length && (line[rest] == ' ' || line[rest] == '\t')) {
+                rest++;
+            }
+            if (rest == length) {
+                closing = close;
+                return level;
+            }
+        }
+        return END;
+    }
+
+    /**
+     * Header bytes as text: UTF-8 where they are valid UTF-8 (RFC 6532), else ISO-8859-1
+     */
+    private static String text(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] < 0) {
+                try {
+                    return StandardCharsets.UTF_8.newDecoder()
+                        .decode(ByteBuffer.wrap(bytes, 0, length))
+                        .toString();
+                } catch (CharacterCodingException e) {
+                    break;
+                }
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Removes a transfer encoding from body lines
+     */
+    private abstract static class Decoder {
+
+        final OutputStream out;
+
+        Decoder(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * @param terminated Whether the line ended with a line break, rather than being
+         * the first piece of an over-long line or the last line of the input
+         */
+        abstract void line(byte[] line, int length, boolean terminated) throws IOException;
+
+        void finish() throws IOException {
+        }
+    }
+
+    /**
+     * 7bit, 8bit and binary; line breaks become CRLF. The break before a boundary line
+     * belongs to the boundary and is not written.
+     */
+    private static final class IdentityDecoder extends Decoder {
+
+        private boolean newline;
+
+        IdentityDecoder(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        void line(byte[] line, int length, boolean terminated) throws IOException {
+            if (newline) {
+                out.write(CRLF);
+            }
+            out.write(line, 0, length);
+            newline = terminated;
+        }
+    }
+
+    private static final class QuotedPrintableDecoder extends Decoder {
+
+        private final byte[] decoded;
+        private boolean newline;
+
+        QuotedPrintableDecoder(OutputStream out, byte[] decoded) {
+            super(out);
+            this.decoded = decoded;
+        }
+
+        @Override
+        void line(byte[] line, int length, boolean terminated) throws IOException {
+            if (newline) {
+                out.write(CRLF);
+            }
+            int end = length;
+            if (terminated) {
+                // Transport padding
+                while (end > 0 && (line[end - 1] == ' ' || line[end - 1] == '\t')) {
+                    end--;
+                }
+            }
+            boolean soft = terminated && end > 0 && line[end - 1] == '=';
+            if (soft) {
+                end--;
+            }
+            int count = 0;
+            for (int i = 0; i < end; i++) {
+                byte b = line[i];
+                if (b == '=' && i + 2 < end) {
+                    int high = Character.digit(line[i + 1], 16);
+                    int low = Character.digit(line[i + 2], 16);
+                    if (high >= 0 && low >= 0) {
+                        decoded[count++] = (byte) (high << 4 | low);
+                        i += 2;
+                        continue;
+                    }
+                }
+                decoded[count++] = b;
+            }
+            out.write(decoded, 0, count);
+            newline = terminated && !soft;
+        }
+    }
+
+    /**
+     * Ignores characters outside the alphabet, line breaks included
+     */
+    private static final class Base64Decoder extends Decoder {
+
+        private final byte[] decoded;
+        private int quantum;
+        private int sextets;
+
+        Base64Decoder(OutputStream out, byte[] decoded) {
+            super(out);
+            this.decoded = decoded;
+        }
+
+        @Override
+        void line(byte[] line, int length, boolean terminated) throws IOException {
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                int value = BASE64[line[i] & 0xff];
+                if (value < 0) {
+                    continue;
+                }
+                quantum = quantum << 6 | value;
+                if (++sextets == 4) {
+                    decoded[count++] = (byte) (quantum >> 16);
+                    decoded[count++] = (byte) (quantum >> 8);
+                    decoded[count++] = (byte) quantum;
+                    quantum = 0;
+                    sextets = 0;
+                }
+            }
+            out.write(decoded, 0, count);
+        }
+
+        @Override
+        void finish() throws IOException {
+            // Unpadded or padded tail
+            if (sextets == 2) {
+                out.write(quantum >> 4);
+            } else if (sextets == 3) {
+                out.write(quantum >> 10);
+                out.write(quantum >> 2);
+            }
+        }
+    }
+
+    /**
+     * Lines of raw bytes, without their line break
+     * Lines longer than MAX_LINE_BYTES come back in pieces; only the first piece has
+     * start set, and only the last terminated.
+     */
+    private static final class LineReader {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[65536];
+        final byte[] line = new byte[MAX_LINE_BYTES];
+        int length;
+        boolean start;
+        boolean terminated = true;
+        private int position;
+        private int limit;
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return false at end of input
+         */
+        boolean next() throws IOException {
+            start = terminated;
+            length = 0;
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        terminated = false;
+                        return length > 0;
+                    }
+                }
+                // Copy up to the next line feed in one go
+                int stop = Math.min(limit, position + line.length - length);
+                int i = position;
+                while (i < stop && buffer[i] != '\n') {
+                    i++;
+                }
+                System.arraycopy(buffer, position, line, length, i - position);
+                length += i - position;
+                position = i;
+                if (i < limit && buffer[i] == '\n') {
+                    position++;
+                    if (length > 0 && line[length - 1] == '\r') {
+                        length--;
+                    }
+                    terminated = true;
+                    return true;
+                }
+                if (length == line.length) {
+                    terminated = false;
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over lower-cased literal patterns
+ * Finds every pattern occurring in a text in a single pass, independent of
+ * the number of patterns. Input is case-folded per character, so both
+ * pre-lowered header values and raw streamed body text can be scanned.
+ */
+final class AhoCorasick {
+
+    private static final int ROOT = 0;
+    private static final int ASCII = 128;
+    private static final int[] NONE = new int[0];
+
+    private final int patternCount;
+    private final BitSet emptyPatterns = new BitSet();
+    private final int[] rootAscii = new int[ASCII];
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    // Pattern ids ending at each state, including those reachable via fail links
+    private final int[][] outputs;
+
+    /**
+     * @param patterns Lower-cased patterns; the pattern id is the list index
+     */
+    AhoCorasick(List<String> patterns) {
+        this.patternCount = patterns.size();
+
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        ends.add(new ArrayList<>());
+        for (int id = 0; id < patterns.size(); id++) {
+            String pattern = patterns.get(id);
+            if (pattern.isEmpty()) {
+                emptyPatterns.set(id);
+                continue;
+            }
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(c, next);
+                    trie.add(new TreeMap<>());
+                    ends.add(new ArrayList<>());
+                }
+                state = next;
+            }
+            ends.get(state).add(id);
+        }
+
+        int states = trie.size();
+        this.edgeChars = new char[states][];
+        this.edgeTargets = new int[states][];
+        for (int state = 0; state < states; state++) {
+            Map<Character, Integer> edges = trie.get(state);
+            edgeChars[state] = new char[edges.size()];
+            edgeTargets[state] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[state][i] = edge.getKey();
+                edgeTargets[state][i] = edge.getValue();
+                i++;
+            }
+        }
+        Arrays.fill(rootAscii, -1);
+        for (int i = 0; i < edgeChars[ROOT].length; i++) {
+            if (edgeChars[ROOT][i] < ASCII) {
+                rootAscii[edgeChars[ROOT][i]] = edgeTargets[ROOT][i];
+            }
+        }
+
+        // Breadth-first so a state's fail target is complete before the state itself
+        this.fail = new int[states];
+        this.outputs = new int[states][];
+        outputs[ROOT] = NONE;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : edgeTargets[ROOT]) {
+            fail[child] = ROOT;
+            outputs[child] = toArray(ends.get(child), NONE);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < edgeChars[state].length; i++) {
+                int child = edgeTargets[state][i];
+                int target = step(fail[state], edgeChars[state][i]);
+                fail[child] = target;
+                outputs[child] = toArray(ends.get(child), outputs[target]);
+                queue.add(child);
+            }
+        }
+    }
+
+    int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Scan a lower-cased text
+     * @param hits Receives the ids of all patterns found
+     */
+    void scan(String text, BitSet hits) {
+        hits.or(emptyPatterns);
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            if (outputs[state].length > 0 && record(state, hits)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Scan streamed text, folding case as it goes; stops early once every pattern was found
+     * @param hits Receives the ids of all patterns found
+     */
+    void scan(Reader reader, BitSet hits) throws IOException {
+        hits.or(emptyPatterns);
+        if (hits.cardinality() == patternCount) {
+            return;
+        }
+        char[] buffer = new char[8192];
+        int state = ROOT;
+        int read;
+        while ((read = reader.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                state = step(state, Character.toLowerCase(buffer[i]));
+                if (outputs[state].length > 0 && record(state, hits)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true once all patterns have been found
+     */
+    private boolean record(int state, BitSet hits) {
+        for (int id : outputs[state]) {
+            hits.set(id);
+        }
+        return hits.cardinality() == patternCount;
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            int next = transition(state, c);
+            if (next >= 0) {
+                return next;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    private int transition(int state, char c) {
+        if (state == ROOT && c < ASCII) {
+            return rootAscii[c];
+        }
+        int i = Arrays.binarySearch(edgeChars[state], c);
+        return i >= 0 ? edgeTargets[state][i] : -1;
+    }
+
+    private static int[] toArray(List<Integer> own, int[] inherited) {
+        if (own.isEmpty()) {
+            return inherited;
+        }
+        int[] merged = Arrays.copyOf(inherited, inherited.length + own.size());
+        for (int i = 0; i < own.size(); i++) {
+            merged[inherited.length + i] = own.get(i);
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.service.storage.MessageContentStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads message bodies for rule evaluation straight from the stored MIME object
+ * The header block is skipped and at most a bounded prefix of the body is read.
+ */
+@Component
+@RequiredArgsConstructor
+public class BlobMessageBodySource implements MessageBodySource {
+
+    private final MessageContentStore messageContentStore;
+
+    @Value("${email.rules.body-scan-max-bytes:1048576}")
+    private long maxBodyBytes;
+
+    @Override
+    public Reader open(Message message) throws IOException {
+        if (message.getMimePointer() == null || message.getMimePointer().isBlank()) {
+            return null;
+        }
+        InputStream in = new BufferedInputStream(messageContentStore.open(message.getMimePointer()));
+        try {
+            skipHeaders(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new InputStreamReader(new LimitedInputStream(in, maxBodyBytes), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Consume the header block up to and including the first empty line
+     */
+    static void skipHeaders(InputStream in) throws IOException {
+        int previous = -1;
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n' && previous == '\n') {
+                return;
+            }
+            if (b != '\r') {
+                previous = b;
+            }
+        }
+    }
+
+    /**
+     * Reports end of stream after a fixed number of bytes
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
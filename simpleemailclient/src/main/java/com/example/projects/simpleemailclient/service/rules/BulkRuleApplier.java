@@ -0,0 +1,510 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Mailbox.MailboxType;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageTombstoneRepository;
+import com.example.projects.simpleemailclient.service.SearchService;
+import com.example.projects.simpleemailclient.service.UserService;
+import com.example.projects.simpleemailclient.service.attachment.AttachmentContentStore;
+import com.example.projects.simpleemailclient.service.impl.MessageMetadataServiceImpl;
+import com.example.projects.simpleemailclient.service.search.SearchResultCache;
+import com.example.projects.simpleemailclient.service.search.VirtualFolderService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies a compiled rule set retroactively to every message in a mailbox
+ * Messages are read in keyset pages by id, evaluated in parallel on a bounded
+ * pool, and each page's outcomes are written as a handful of set-based
+ * UPDATE/DELETE statements in one transaction; flag changes no other message
+ * shares go out as a single JDBC batch. Changed messages are re-matched
+ * against saved searches in the same transaction, and once it commits they
+ * are reindexed and the user's cached search results made stale. Mailbox
+ * counters are recounted once when the job ends. Forward and reply actions
+ * are never replayed on existing mail.
+ */
+@Component
+@Slf4j
+public class BulkRuleApplier {
+
+    // Smallest slice of a page handed to one evaluation thread
+    private static final int MIN_CHUNK = 64;
+
+    // Flag changes no other message in the page shares; sent as one JDBC batch
+    private static final String REPLACE_FLAGS_SQL =
+        "UPDATE messages SET flags = ?, modseq = ?, version = version + 1, updated_at = ? "
+            + "WHERE id = ? AND mailbox_id = ? AND flags = ?";
+
+    private final MessageRepository messageRepository;
+    private final MailboxRepository mailboxRepository;
+    private final MessageTombstoneRepository tombstoneRepository;
+    private final UserService userService;
+    private final MessageBodySource messageBodySource;
+    private final RuleExecutionStats ruleExecutionStats;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final VirtualFolderService virtualFolderService;
+    private final AttachmentContentStore attachmentContentStore;
+    private final SearchService searchService;
+    private final SearchResultCache resultCache;
+
+    private final int pageSize;
+    private final int parallelism;
+    private final Duration jobRetention;
+    private final ExecutorService jobExecutor;
+    private final ThreadPoolExecutor evaluationPool;
+    private final Map<String, BulkRuleJob> jobs = new ConcurrentHashMap<>();
+
+    public BulkRuleApplier(MessageRepository messageRepository,
+                           MailboxRepository mailboxRepository,
+                           MessageTombstoneRepository tombstoneRepository,
+                           UserService userService,
+                           MessageBodySource messageBodySource,
+                           RuleExecutionStats ruleExecutionStats,
+                           TransactionTemplate transactionTemplate,
+                           JdbcTemplate jdbcTemplate,
+                           VirtualFolderService virtualFolderService,
+                           AttachmentContentStore attachmentContentStore,
+                           SearchService searchService,
+                           SearchResultCache resultCache,
+                           @Value("${email.rules.bulk.page-size:1000}") int pageSize,
+                           @Value("${email.rules.bulk.threads:0}") int threads,
+                           @Value("${email.rules.bulk.max-concurrent-jobs:2}") int maxConcurrentJobs,
+                           @Value("${email.rules.bulk.job-retention-minutes:60}") long jobRetentionMinutes) {
+        this.messageRepository = messageRepository;
+        this.mailboxRepository = mailboxRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.userService = userService;
+        this.messageBodySource = messageBodySource;
+        this.ruleExecutionStats = ruleExecutionStats;
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.virtualFolderService = virtualFolderService;
+        this.attachmentContentStore = attachmentContentStore;
+        this.searchService = searchService;
+        this.resultCache = resultCache;
+        this.pageSize = pageSize;
+        this.parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.jobRetention = Duration.ofMinutes(jobRetentionMinutes);
+        this.jobExecutor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), threadFactory("bulk-rules-job-"));
+        // Bounded queue; when full the submitting job thread evaluates the chunk itself
+        this.evaluationPool = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(parallelism * 4), threadFactory("bulk-rules-eval-"),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Queue a job applying the rule set to every message currently in a mailbox
+     * @param ruleSet Compiled rules to apply, in priority order
+     * @param mailboxId Mailbox to scan; must belong to the rule set's user
+     * @param ruleId Single rule being applied, or null for a whole rule set; informational only
+     * @return Job handle for progress and cancellation
+     */
+    public BulkRuleJob submit(CompiledRuleSet ruleSet, Long mailboxId, Long ruleId) {
+        evictFinishedJobs();
+        BulkRuleJob job = new BulkRuleJob(ruleSet.getUserId(), mailboxId, ruleId);
+        jobs.put(job.getId(), job);
+        job.attach(jobExecutor.submit(() -> run(job, ruleSet)));
+        log.info("Queued bulk rule job {} for mailbox {} of user {}", job.getId(), mailboxId, ruleSet.getUserId());
+        return job;
+    }
+
+    /**
+     * Look up a job started within the retention window
+     */
+    public Optional<BulkRuleJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * Run a job on the calling thread
+     */
+    void run(BulkRuleJob job, CompiledRuleSet ruleSet) {
+        if (job.isDone()) {
+            return;
+        }
+        if (job.isCancelRequested()) {
+            job.finish(BulkRuleJob.Status.CANCELLED, null);
+            return;
+        }
+        job.start();
+
+        Long sourceMailboxId = job.getMailboxId();
+        Set<Long> touchedMailboxes = new LinkedHashSet<>();
+        touchedMailboxes.add(sourceMailboxId);
+        BulkRuleJob.Status finalStatus = BulkRuleJob.Status.COMPLETED;
+        String failure = null;
+        try {
+            Targets targets = new Targets(mailboxRepository.findByUserId(job.getUserId()));
+            long afterId = 0L;
+            while (!job.isCancelRequested()) {
+                List<Message> page = messageRepository.findPageByMailboxIdAfter(
+                    sourceMailboxId, afterId, PageRequest.of(0, pageSize));
+                if (page.isEmpty()) {
+                    break;
+                }
+                afterId = page.get(page.size() - 1).getId();
+
+                List<Outcome> outcomes = evaluate(page, ruleSet, targets, job);
+                if (job.isCancelRequested()) {
+                    // The page may be partially evaluated; leave it untouched
+                    break;
+                }
+                job.addScanned(page.size());
+                if (!outcomes.isEmpty()) {
+                    transactionTemplate.executeWithoutResult(status -> write(job, outcomes, touchedMailboxes));
+                    reindex(job, outcomes);
+                    for (Outcome outcome : outcomes) {
+                        outcome.matched.forEach(ruleExecutionStats::record);
+                    }
+                    job.addMatched(outcomes.size());
+                }
+                if (page.size() < pageSize) {
+                    break;
+                }
+            }
+            if (job.isCancelRequested()) {
+                finalStatus = BulkRuleJob.Status.CANCELLED;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finalStatus = BulkRuleJob.Status.CANCELLED;
+        } catch (RuntimeException e) {
+            log.error("Bulk rule job {} failed after {} messages", job.getId(), job.getScanned(), e);
+            finalStatus = BulkRuleJob.Status.FAILED;
+            failure = e.getMessage();
+        } finally {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    mailboxRepository.recalculateCounts(touchedMailboxes);
+                    virtualFolderService.recount(job.getUserId());
+                });
+            } catch (RuntimeException e) {
+                log.error("Failed to recount mailboxes {} after bulk rule job {}", touchedMailboxes, job.getId(), e);
+            }
+            job.finish(finalStatus, failure);
+        }
+
+        log.info("Bulk rule job {} {}: scanned {}, matched {}, moved {}, flagged {}, deleted {} in {} ms",
+            job.getId(), finalStatus, job.getScanned(), job.getMatched(), job.getMoved(),
+            job.getFlagged(), job.getDeleted(), job.getElapsed().toMillis());
+    }
+
+    /**
+     * Evaluate a page in parallel chunks
+     * @return Outcomes of messages whose mailbox or flags change, in page order
+     */
+    private List<Outcome> evaluate(List<Message> page, CompiledRuleSet ruleSet, Targets targets,
+                                   BulkRuleJob job) throws InterruptedException {
+        int chunks = Math.max(1, Math.min(parallelism, page.size() / MIN_CHUNK));
+        int chunkSize = (page.size() + chunks - 1) / chunks;
+        List<Future<List<Outcome>>> futures = new ArrayList<>(chunks);
+        for (int from = 0; from < page.size(); from += chunkSize) {
+            List<Message> chunk = page.subList(from, Math.min(page.size(), from + chunkSize));
+            futures.add(evaluationPool.submit(() -> evaluateChunk(chunk, ruleSet, targets, job)));
+        }
+
+        List<Outcome> outcomes = new ArrayList<>();
+        try {
+            for (Future<List<Outcome>> future : futures) {
+                outcomes.addAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException
+                ? (RuntimeException) cause
+                : new IllegalStateException("Rule evaluation failed", cause);
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+        return outcomes;
+    }
+
+    private List<Outcome> evaluateChunk(List<Message> chunk, CompiledRuleSet ruleSet, Targets targets,
+                                        BulkRuleJob job) {
+        List<Outcome> outcomes = new ArrayList<>();
+        for (Message message : chunk) {
+            if (job.isCancelRequested()) {
+                break;
+            }
+            List<CompiledRule> matched = ruleSet.match(RuleEvaluationContext.of(message, messageBodySource));
+            if (!matched.isEmpty()) {
+                Outcome outcome = plan(message, matched, targets);
+                if (outcome.changes()) {
+                    outcomes.add(outcome);
+                }
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Fold the matched rules' actions into the message's final mailbox and flags
+     * Actions apply in rule and action order, as RulesService.applyRules would.
+     */
+    static Outcome plan(Message message, List<CompiledRule> matched, Targets targets) {
+        Set<String> originalFlags = MessageMetadataServiceImpl.parseFlags(message.getFlags());
+        Set<String> flags = new LinkedHashSet<>(originalFlags);
+        Long mailboxId = message.getMailboxId();
+        boolean delete = false;
+
+        rules:
+        for (CompiledRule rule : matched) {
+            for (RuleAction action : rule.getActions()) {
+                switch (action.getType()) {
+                    case MOVE:
+                    case FILE_INTO:
+                        Long target = targets.resolve(action);
+                        if (target != null) {
+                            mailboxId = target;
+                        }
+                        break;
+                    case ADD_FLAG:
+                        flags.add(action.getValue());
+                        break;
+                    case REMOVE_FLAG:
+                        flags.remove(action.getValue());
+                        break;
+                    case MARK_READ:
+                        flags.add(MessageMetadataServiceImpl.FLAG_READ);
+                        break;
+                    case DELETE:
+                        delete = true;
+                        break rules;
+                    default:
+                        // FORWARD/REPLY are not replayed on existing mail
+                        break;
+                }
+            }
+        }
+
+        Outcome outcome = new Outcome(message, matched);
+        outcome.delete = delete;
+        if (!delete) {
+            if (!mailboxId.equals(message.getMailboxId())) {
+                outcome.targetMailboxId = mailboxId;
+            }
+            if (!flags.equals(originalFlags)) {
+                outcome.newFlags = String.join(",", flags);
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * Write one page's outcomes as set-based statements; runs in a transaction
+     */
+    private void write(BulkRuleJob job, List<Outcome> outcomes, Set<Long> touchedMailboxes) {
+        Long sourceMailboxId = job.getMailboxId();
+        Map<String, Map<String, List<Long>>> flagChanges = new LinkedHashMap<>();
+        Map<Long, List<Long>> moves = new LinkedHashMap<>();
+        List<Long> deletes = new ArrayList<>();
+        Map<Long, Boolean> wasUnread = new HashMap<>();
+        for (Outcome outcome : outcomes) {
+            Long id = outcome.message.getId();
+            if (outcome.delete) {
+                deletes.add(id);
+                virtualFolderService.remove(outcome.message);
+                continue;
+            }
+            wasUnread.put(id, !MessageMetadataServiceImpl.parseFlags(outcome.message.getFlags())
+                .contains(MessageMetadataServiceImpl.FLAG_READ));
+            if (outcome.newFlags != null) {
+                String oldFlags = outcome.message.getFlags() != null ? outcome.message.getFlags() : "";
+                flagChanges.computeIfAbsent(oldFlags, f -> new HashMap<>())
+                    .computeIfAbsent(outcome.newFlags, f -> new ArrayList<>())
+                    .add(id);
+            }
+            if (outcome.targetMailboxId != null) {
+                moves.computeIfAbsent(outcome.targetMailboxId, t -> new ArrayList<>()).add(id);
+            }
+        }
+
+        // Flags first, in the source mailbox; moved messages then take the target's modseq
+        LocalDateTime now = LocalDateTime.now();
+        if (!flagChanges.isEmpty()) {
+            long modseq = mailboxRepository.nextModseq(sourceMailboxId);
+            List<Object[]> singles = new ArrayList<>();
+            for (Map.Entry<String, Map<String, List<Long>>> byOld : flagChanges.entrySet()) {
+                for (Map.Entry<String, List<Long>> byNew : byOld.getValue().entrySet()) {
+                    List<Long> ids = byNew.getValue();
+                    if (ids.size() > 1) {
+                        job.addFlagged(messageRepository.replaceFlags(
+                            ids, sourceMailboxId, byOld.getKey(), byNew.getKey(), modseq));
+                    } else {
+                        singles.add(new Object[] {byNew.getKey(), modseq, Timestamp.valueOf(now), ids.get(0),
+                            sourceMailboxId, byOld.getKey()});
+                    }
+                }
+            }
+            if (!singles.isEmpty()) {
+                for (int updated : jdbcTemplate.batchUpdate(REPLACE_FLAGS_SQL, singles)) {
+                    // Drivers may report SUCCESS_NO_INFO (-2) for batched statements
+                    job.addFlagged(updated != 0 ? 1 : 0);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, List<Long>> move : moves.entrySet()) {
+            Long targetMailboxId = move.getKey();
+            tombstone(move.getValue(), sourceMailboxId, now);
+            long modseq = mailboxRepository.nextModseq(targetMailboxId);
+            job.addMoved(messageRepository.moveAll(move.getValue(), sourceMailboxId, targetMailboxId, modseq));
+            touchedMailboxes.add(targetMailboxId);
+        }
+
+        // Re-match moved and reflagged messages as they now are, as MessageMetadataServiceImpl does
+        if (!wasUnread.isEmpty()) {
+            for (Message message : messageRepository.findAllById(wasUnread.keySet())) {
+                virtualFolderService.refresh(message, wasUnread.get(message.getId()));
+            }
+        }
+
+        if (!deletes.isEmpty()) {
+            tombstone(deletes, sourceMailboxId, now);
+            long freedBytes = messageRepository.sumSizeBytes(deletes, sourceMailboxId);
+            // Also gives the attachments' bytes back to the quota
+            attachmentContentStore.deleteAttachments(job.getUserId(), deletes);
+            job.addDeleted(messageRepository.deleteAllInMailbox(deletes, sourceMailboxId));
+            if (freedBytes > 0) {
+                userService.updateUsedStorage(job.getUserId(), -freedBytes);
+            }
+        }
+    }
+
+    /**
+     * Bring the search index and cached search results up to date with a committed page
+     * A failure leaves the index stale until the user is reindexed; the job goes on.
+     */
+    private void reindex(BulkRuleJob job, List<Outcome> outcomes) {
+        List<Long> changed = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+        for (Outcome outcome : outcomes) {
+            (outcome.delete ? deleted : changed).add(outcome.message.getId());
+        }
+        try {
+            if (!changed.isEmpty()) {
+                searchService.bulkIndexMessages(changed);
+            }
+            deleted.forEach(searchService::removeFromIndex);
+        } catch (RuntimeException e) {
+            log.warn("Failed to update the search index for bulk rule job {}: {}", job.getId(), e.getMessage());
+        }
+        resultCache.invalidate(job.getUserId());
+    }
+
+    private void tombstone(Collection<Long> messageIds, Long mailboxId, LocalDateTime now) {
+        long modseq = mailboxRepository.nextModseq(mailboxId);
+        tombstoneRepository.insertForMessages(messageIds, mailboxId, modseq, now);
+    }
+
+    private void evictFinishedJobs() {
+        Instant cutoff = Instant.now().minus(jobRetention);
+        jobs.values().removeIf(job -> job.isDone() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobs.values().forEach(BulkRuleJob::cancel);
+        jobExecutor.shutdownNow();
+        evaluationPool.shutdownNow();
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Final effect of the matched rules on one message
+     */
+    static final class Outcome {
+        final Message message;
+        final List<CompiledRule> matched;
+        Long targetMailboxId;
+        String newFlags;
+        boolean delete;
+
+        Outcome(Message message, List<CompiledRule> matched) {
+            this.message = message;
+            this.matched = matched;
+        }
+
+        boolean changes() {
+            return delete || targetMailboxId != null || newFlags != null;
+        }
+    }
+
+    /**
+     * The user's mailboxes, resolved once per job so move targets cost no queries
+     */
+    static final class Targets {
+        private final Set<Long> ids = new HashSet<>();
+        private final Map<String, Long> idsByName = new HashMap<>();
+        private Long inboxId;
+
+        Targets(List<Mailbox> mailboxes) {
+            for (Mailbox mailbox : mailboxes) {
+                ids.add(mailbox.getId());
+                idsByName.putIfAbsent(mailbox.getName(), mailbox.getId());
+                if (mailbox.getMailboxType() == MailboxType.INBOX) {
+                    inboxId = mailbox.getId();
+                }
+            }
+        }
+
+        /**
+         * @return Target mailbox ID, or null to keep the message where it is
+         */
+        Long resolve(RuleAction action) {
+            if (action.getType() == RuleAction.Type.MOVE) {
+                return ids.contains(action.getMailboxId()) ? action.getMailboxId() : null;
+            }
+            Long id = idsByName.get(action.getValue());
+            if (id == null && "INBOX".equalsIgnoreCase(action.getValue())) {
+                return inboxId;
+            }
+            return id;
+        }
+    }
+}
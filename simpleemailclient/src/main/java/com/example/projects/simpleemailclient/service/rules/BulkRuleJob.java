@@ -0,0 +1,180 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handle for a retroactive rule application over one mailbox
+ * Progress counters are updated as pages commit; cancelling stops the job
+ * after the page in flight and leaves earlier pages applied.
+ */
+public final class BulkRuleJob {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final Long userId;
+    private final Long mailboxId;
+    private final Long ruleId;
+    private final Instant createdAt = Instant.now();
+
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong matched = new AtomicLong();
+    private final AtomicLong moved = new AtomicLong();
+    private final AtomicLong flagged = new AtomicLong();
+    private final AtomicLong deleted = new AtomicLong();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private volatile Future<?> future;
+
+    /**
+     * @param ruleId Single rule being applied, or null for the user's whole rule set
+     */
+    public BulkRuleJob(Long userId, Long mailboxId, Long ruleId) {
+        this.userId = userId;
+        this.mailboxId = mailboxId;
+        this.ruleId = ruleId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getMailboxId() {
+        return mailboxId;
+    }
+
+    public Long getRuleId() {
+        return ruleId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getScanned() {
+        return scanned.get();
+    }
+
+    public long getMatched() {
+        return matched.get();
+    }
+
+    public long getMoved() {
+        return moved.get();
+    }
+
+    public long getFlagged() {
+        return flagged.get();
+    }
+
+    public long getDeleted() {
+        return deleted.get();
+    }
+
+    public boolean isDone() {
+        return status == Status.COMPLETED || status == Status.CANCELLED || status == Status.FAILED;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * Wall-clock time spent running so far, or in total once finished
+     */
+    public Duration getElapsed() {
+        Instant start = startedAt;
+        if (start == null) {
+            return Duration.ZERO;
+        }
+        Instant end = finishedAt;
+        return Duration.between(start, end != null ? end : Instant.now());
+    }
+
+    /**
+     * Request cancellation
+     * @return false if the job had already finished
+     */
+    public boolean cancel() {
+        if (isDone()) {
+            return false;
+        }
+        cancelRequested = true;
+        Future<?> running = future;
+        if (running != null && status == Status.QUEUED) {
+            // Not started yet: drop it from the job queue
+            running.cancel(false);
+            finish(Status.CANCELLED, null);
+        }
+        return true;
+    }
+
+    void attach(Future<?> future) {
+        this.future = future;
+    }
+
+    void start() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void finish(Status finalStatus, String failure) {
+        error = failure;
+        finishedAt = Instant.now();
+        status = finalStatus;
+    }
+
+    void addScanned(long count) {
+        scanned.addAndGet(count);
+    }
+
+    void addMatched(long count) {
+        matched.addAndGet(count);
+    }
+
+    void addMoved(long count) {
+        moved.addAndGet(count);
+    }
+
+    void addFlagged(long count) {
+        flagged.addAndGet(count);
+    }
+
+    void addDeleted(long count) {
+        deleted.addAndGet(count);
+    }
+}
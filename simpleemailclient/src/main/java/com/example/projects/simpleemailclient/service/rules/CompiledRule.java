@@ -0,0 +1,77 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Rule.RuleType;
+
+import java.util.List;
+
+/**
+ * Immutable compiled form of a Rule row
+ * Carries the row's @Version so stale compiled forms can be detected
+ */
+public final class CompiledRule {
+
+    private final Long ruleId;
+    private final Long version;
+    private final int priority;
+    private final RuleType ruleType;
+    private final Condition condition;
+    private final List<RuleAction> actions;
+    private final boolean stop;
+
+    public CompiledRule(Long ruleId, Long version, int priority, RuleType ruleType,
+                        Condition condition, List<RuleAction> actions, boolean stop) {
+        this.ruleId = ruleId;
+        this.version = version;
+        this.priority = priority;
+        this.ruleType = ruleType;
+        this.condition = condition;
+        this.actions = List.copyOf(actions);
+        this.stop = stop;
+    }
+
+    public Long getRuleId() {
+        return ruleId;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public RuleType getRuleType() {
+        return ruleType;
+    }
+
+    public Condition getCondition() {
+        return condition;
+    }
+
+    public List<RuleAction> getActions() {
+        return actions;
+    }
+
+    /**
+     * Whether later rules are skipped once this rule matches
+     */
+    public boolean isStop() {
+        return stop;
+    }
+
+    /**
+     * Whether the rule matches; false once the context's budget is exceeded, including
+     * when it runs out part way through this rule's condition
+     */
+    public boolean matches(RuleEvaluationContext context) {
+        if (context.isBudgetExceeded()) {
+            return false;
+        }
+        try {
+            return condition.matches(context);
+        } catch (StepBudget.Exhausted e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, priority-ordered set of a user's compiled active rules
+ * Matching goes through a RuleMatchNetwork so only candidate rules are evaluated,
+ * and all contains conditions are answered by one automaton scan per field
+ */
+public final class CompiledRuleSet {
+
+    private static final Comparator<CompiledRule> EXECUTION_ORDER =
+        Comparator.comparingInt(CompiledRule::getPriority).thenComparing(CompiledRule::getRuleId);
+
+    private final Long userId;
+    private final List<CompiledRule> rules;
+    private final Map<Long, CompiledRule> rulesById;
+    private final int sharedConditions;
+    private final RuleMatchNetwork network;
+    private final long evaluationBudget;
+    // Built on first match; a rule change replaces the whole set
+    private volatile ContainsIndex containsIndex;
+
+    public CompiledRuleSet(Long userId, List<CompiledRule> rules) {
+        this(userId, rules, 0);
+    }
+
+    /**
+     * @param sharedConditions Number of interned shared conditions used by the rules
+     */
+    public CompiledRuleSet(Long userId, List<CompiledRule> rules, int sharedConditions) {
+        this(userId, rules, sharedConditions, StepBudget.UNLIMITED);
+    }
+
+    /**
+     * @param evaluationBudget Maximum evaluation steps per message across all rules
+     */
+    public CompiledRuleSet(Long userId, List<CompiledRule> rules, int sharedConditions, long evaluationBudget) {
+        List<CompiledRule> ordered = new ArrayList<>(rules);
+        ordered.sort(EXECUTION_ORDER);
+        this.userId = userId;
+        this.rules = Collections.unmodifiableList(ordered);
+        this.rulesById = new HashMap<>();
+        for (CompiledRule rule : ordered) {
+            rulesById.put(rule.getRuleId(), rule);
+        }
+        this.sharedConditions = sharedConditions;
+        this.network = new RuleMatchNetwork(this.rules);
+        this.evaluationBudget = evaluationBudget;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public List<CompiledRule> getRules() {
+        return rules;
+    }
+
+    public CompiledRule getRule(Long ruleId) {
+        return rulesById.get(ruleId);
+    }
+
+    public long getEvaluationBudget() {
+        return evaluationBudget;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Number of rules reachable through the match network's index
+     */
+    public int getIndexedRuleCount() {
+        return network.getIndexedRuleCount();
+    }
+
+    /**
+     * Evaluate all rules in priority order
+     * @param context Per-message evaluation context; its budget is reset to the rule set's
+     * @return Matching rules in execution order, truncated after the first matching stop rule
+     * or where the evaluation budget ran out
+     */
+    public List<CompiledRule> match(RuleEvaluationContext context) {
+        context.withBudget(evaluationBudget);
+        context.resetMemo(sharedConditions);
+        ContainsIndex index = containsIndex();
+        context.bind(index.isEmpty() ? null : index);
+        BitSet candidates = network.candidates(context);
+        List<CompiledRule> matched = null;
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            CompiledRule rule = rules.get(i);
+            boolean matches = rule.matches(context);
+            if (context.isBudgetExceeded()) {
+                // The rule that ran out is dropped along with all later ones
+                break;
+            }
+            if (matches) {
+                if (matched == null) {
+                    matched = new ArrayList<>(4);
+                }
+                matched.add(rule);
+                if (rule.isStop()) {
+                    break;
+                }
+            }
+        }
+        return matched != null ? matched : Collections.emptyList();
+    }
+
+    private ContainsIndex containsIndex() {
+        ContainsIndex index = containsIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = containsIndex;
+                if (index == null) {
+                    index = ContainsIndex.build(rules);
+                    containsIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Evaluate every rule without the match network or contains index; reference for tests and benchmarks
+     */
+    List<CompiledRule> matchAll(RuleEvaluationContext context) {
+        context.withBudget(evaluationBudget);
+        context.resetMemo(sharedConditions);
+        context.bind(null);
+        List<CompiledRule> matched = null;
+        for (CompiledRule rule : rules) {
+            boolean matches = rule.matches(context);
+            if (context.isBudgetExceeded()) {
+                // The rule that ran out is dropped along with all later ones
+                break;
+            }
+            if (matches) {
+                if (matched == null) {
+                    matched = new ArrayList<>(4);
+                }
+                matched.add(rule);
+                if (rule.isStop()) {
+                    break;
+                }
+            }
+        }
+        return matched != null ? matched : Collections.emptyList();
+    }
+}
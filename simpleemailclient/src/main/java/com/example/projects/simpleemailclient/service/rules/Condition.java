@@ -0,0 +1,15 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+/**
+ * Compiled, immutable rule condition
+ * Instances are shared across threads and evaluated without allocation
+ */
+public interface Condition {
+
+    /**
+     * Evaluate the condition against a message
+     * @param context Per-message evaluation context
+     * @return true if the condition matches
+     */
+    boolean matches(RuleEvaluationContext context);
+}
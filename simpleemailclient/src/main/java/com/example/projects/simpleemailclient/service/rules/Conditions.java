@@ -0,0 +1,388 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Factory and node types for the compiled condition tree
+ */
+public final class Conditions {
+
+    private static final Condition ALWAYS = new Always();
+
+    private Conditions() {
+    }
+
+    public static Condition always() {
+        return ALWAYS;
+    }
+
+    public static Condition allOf(List<Condition> children) {
+        return children.isEmpty() ? ALWAYS : children.size() == 1 ? children.get(0) : new AllOf(children);
+    }
+
+    public static Condition anyOf(List<Condition> children) {
+        return children.size() == 1 ? children.get(0) : new AnyOf(children);
+    }
+
+    public static Condition not(Condition child) {
+        return new Not(child);
+    }
+
+    public static Condition text(RuleField field, TextOperator operator, List<String> operands) {
+        return new Text(field, operator, operands);
+    }
+
+    public static Condition numeric(RuleField field, NumericOperator operator, double operand) {
+        return new Numeric(field, operator, operand);
+    }
+
+    public static Condition bool(RuleField field, boolean expected) {
+        return new Bool(field, expected);
+    }
+
+    /**
+     * True if a text field has at least one value
+     */
+    public static Condition exists(RuleField field) {
+        return new Exists(field);
+    }
+
+    /**
+     * Memoize a condition under a rule-set-wide slot; see RuleEvaluationContext#resetMemo
+     */
+    public static Condition shared(int slot, Condition delegate) {
+        return new Shared(slot, delegate);
+    }
+
+    /**
+     * Unwrap a shared condition to the node it memoizes
+     */
+    public static Condition unwrap(Condition condition) {
+        return condition instanceof Shared ? ((Shared) condition).getDelegate() : condition;
+    }
+
+    /**
+     * Estimated upper bound on the evaluation steps a condition can consume for one message
+     * Text conditions are linear in the field length (regexes in program size x length),
+     * so the bound follows from the column limits of the fields they read. Body
+     * conditions stream through an automaton in constant work per byte and are not counted.
+     */
+    public static long worstCaseSteps(Condition condition) {
+        if (condition instanceof Shared) {
+            return worstCaseSteps(((Shared) condition).getDelegate());
+        }
+        if (condition instanceof Not) {
+            return worstCaseSteps(((Not) condition).getChild());
+        }
+        List<Condition> children = condition instanceof AllOf ? ((AllOf) condition).getChildren()
+            : condition instanceof AnyOf ? ((AnyOf) condition).getChildren() : List.of();
+        long steps = 0;
+        for (Condition child : children) {
+            steps += worstCaseSteps(child);
+        }
+        if (condition instanceof Text) {
+            steps += ((Text) condition).worstCaseSteps();
+        }
+        return steps;
+    }
+
+    /**
+     * Maximum normalized length of a text field, from the message column sizes
+     */
+    static int maxLength(RuleField field) {
+        switch (field) {
+            case TO:
+            case CC:
+                return 2000;
+            case RECIPIENT:
+                return 4000;
+            case SUBJECT:
+                return 1000;
+            case BODY:
+                return 0;
+            default:
+                return 500;
+        }
+    }
+
+    /**
+     * Comparison operators for numeric fields
+     */
+    public enum NumericOperator {
+        GREATER_THAN("greaterThan"),
+        LESS_THAN("lessThan"),
+        EQUALS("equals");
+
+        private final String jsonName;
+
+        NumericOperator(String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        public static NumericOperator fromJsonName(String name) {
+            for (NumericOperator operator : values()) {
+                if (operator.jsonName.equalsIgnoreCase(name)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final class Always implements Condition {
+        @Override
+        public boolean matches(RuleEvaluationContext context) {
+            return true;
+        }
+    }
+
+    public static final class AllOf implements Condition {
+        private final Condition[] children;
+
+        AllOf(List<Condition> children) {
+            this.children = children.toArray(new Condition[0]);
+        }
+
+        public List<Condition> getChildren() {
+            return Arrays.asList(children);
+        }
+
+        @Override
+        public boolean matches(RuleEvaluationContext context) {
+            for (Condition child : children) {
+                if (!child.matches(context)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static final class AnyOf implements Condition {
+        private final Condition[] children;
+
+        AnyOf(List<Condition> children) {
+            this.children = children.toArray(new Condition[0]);
+        }
+
+        public List<Condition> getChildren() {
+            return Arrays.asList(children);
+        }
+
+        @Override
+        public boolean matches(RuleEvaluationContext context) {
+            for (Condition child : children) {
+                if (child.matches(context)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static final class Not implements Condition {
+        private final Condition child;
+
+        Not(Condition child) {
+            this.child = child;
+        }
+
+        public Condition getChild() {
+            return child;
+        }
+
+        @Override
+        public boolean matches(RuleEvaluationContext context) {
+            return !child.matches(context);
+        }
+    }
+
+    /**
+     * Text test; true if any field value matches any operand
+     */
+    public static final class Text implements Condition {
+        private final RuleField field;
+        private final TextOperator operator;
+        private final String[] operands;
+        private final LinearRegex[] patterns;
+        // Single-condition automaton for body scans outside an indexed rule set
+        private final AhoCorasick bodyMatcher;
+
+        Text(RuleField field, TextOperator operator, List<String> operands) {
+            this.field = field;
+            this.operator = operator;
+            this.operands = new String[operands.size()];
+            this.patterns = operator == TextOperator.MATCHES ? new LinearRegex[operands.size()] : null;
+            for (int i = 0; i < operands.size(); i++) {
+                if (patterns != null) {
+                    this.operands[i] = operands.get(i);
+                    this.patterns[i] = LinearRegex.compile(operands.get(i));
+                } else {
+                    this.operands[i] = operands.get(i).toLowerCase(Locale.ROOT);
+                }
+            }
+            this.bodyMatcher = field == RuleField.BODY ? new AhoCorasick(Arrays.asList(this.operands)) : null;
+        }
+
+        public RuleField getField() {
+            return field;
+        }
+
+        public TextOperator getOperator() {
+            return operator;
+        }
+
+        public List<String> getOperands() {
+            return Arrays.asList(operands);
+        }
+
+        long worstCaseSteps() {
+            int length = maxLength(field);
+            long steps = 0;
+            for (int i = 0; i < operands.length; i++) {
+                steps += patterns != null ? patterns[i].cost(length) : length;
+            }
+            return steps;
+        }
+
+        @Override
+        public boolean matches(RuleEvaluationContext context) {
+            if (operator == TextOperator.CONTAINS) {
+                ContainsIndex index = context.containsIndex();
+                if (index != null && index.patternId(field, operands[0]) >= 0) {
+                    for (String operand : operands) {
+                        if (context.containsHit(field, index.patternId(field, operand))) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (bodyMatcher != null) {
+                    return !context.scanBody(bodyMatcher).isEmpty();
+                }
+            }
+            StepBudget budget = context.budget();
+            for (String value : context.text(field)) {
+                if (patterns != null) {
+                    for (LinearRegex pattern : patterns) {
+                        if (pattern.find(value, budget)) {
+                            return true;
+                        }
+                    }
+                } else {
+                    budget.charge((long) value.length() * operands.length);
+                    for (String operand : operands) {
+                        if (operator.test(value, operand)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Leaf condition interned across a rule set; evaluated at most once per message
+     */
+    public static final class Shared implements Condition {
+        private final int slot;
+        private final Condition delegate;
+
+        Shared(int slot, Condition delegate) {
+            this.slot = slot;
+            this.delegate = delegate;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        public Condition getDelegate() {
+            return delegate;
+        }
+
+        @Override
+        public boolean matches(RuleEvaluationContext context) {
+            if (!context.hasMemo(slot)) {
+                // Evaluated outside its rule set, e.g. a single rule
+                return delegate.matches(context);
+            }
+            byte state = context.memo(slot);
+            if (state != 0) {
+                return state == 1;
+            }
+            boolean result = delegate.matches(context);
+            context.memo(slot, result);
+            return result;
+        }
+    }
+
+    public static final class Numeric implements Condition {
+        private final RuleField field;
+        private final NumericOperator operator;
+        private final double operand;
+
+        Numeric(RuleField field, NumericOperator operator, double operand) {
+            this.field = field;
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        public RuleField getField() {
+            return field;
+        }
+
+        @Override
+        public boolean matches(RuleEvaluationContext context) {
+            double value = context.numeric(field);
+            switch (operator) {
+                case GREATER_THAN:
+                    return value > operand;
+                case LESS_THAN:
+                    return value < operand;
+                default:
+                    return value == operand;
+            }
+        }
+    }
+
+    public static final class Exists implements Condition {
+        private final RuleField field;
+
+        Exists(RuleField field) {
+            this.field = field;
+        }
+
+        public RuleField getField() {
+            return field;
+        }
+
+        @Override
+        public boolean matches(RuleEvaluationContext context) {
+            String[] values = context.text(field);
+            return values.length > 0 && !values[0].isEmpty();
+        }
+    }
+
+    public static final class Bool implements Condition {
+        private final RuleField field;
+        private final boolean expected;
+
+        Bool(RuleField field, boolean expected) {
+            this.field = field;
+            this.expected = expected;
+        }
+
+        public RuleField getField() {
+            return field;
+        }
+
+        @Override
+        public boolean matches(RuleEvaluationContext context) {
+            return context.bool(field) == expected;
+        }
+    }
+}
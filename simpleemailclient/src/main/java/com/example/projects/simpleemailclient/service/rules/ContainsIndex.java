@@ -0,0 +1,87 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All "contains" operands of a rule set, compiled into one automaton per field
+ * Each field value (or the streamed body) is scanned once per message and the
+ * result answers every contains condition of every rule on that field.
+ */
+final class ContainsIndex {
+
+    private final Map<RuleField, Map<String, Integer>> patternIds = new EnumMap<>(RuleField.class);
+    private final Map<RuleField, AhoCorasick> automata = new EnumMap<>(RuleField.class);
+
+    private ContainsIndex() {
+    }
+
+    static ContainsIndex build(List<CompiledRule> rules) {
+        ContainsIndex index = new ContainsIndex();
+        Map<RuleField, List<String>> patterns = new EnumMap<>(RuleField.class);
+        for (CompiledRule rule : rules) {
+            index.collect(rule.getCondition(), patterns);
+        }
+        for (Map.Entry<RuleField, List<String>> entry : patterns.entrySet()) {
+            index.automata.put(entry.getKey(), new AhoCorasick(entry.getValue()));
+        }
+        return index;
+    }
+
+    private void collect(Condition condition, Map<RuleField, List<String>> patterns) {
+        Condition node = Conditions.unwrap(condition);
+        if (node instanceof Conditions.AllOf) {
+            for (Condition child : ((Conditions.AllOf) node).getChildren()) {
+                collect(child, patterns);
+            }
+        } else if (node instanceof Conditions.AnyOf) {
+            for (Condition child : ((Conditions.AnyOf) node).getChildren()) {
+                collect(child, patterns);
+            }
+        } else if (node instanceof Conditions.Not) {
+            collect(((Conditions.Not) node).getChild(), patterns);
+        } else if (node instanceof Conditions.Text && ((Conditions.Text) node).getOperator() == TextOperator.CONTAINS) {
+            Conditions.Text text = (Conditions.Text) node;
+            Map<String, Integer> ids = patternIds.computeIfAbsent(text.getField(), f -> new HashMap<>());
+            List<String> fieldPatterns = patterns.computeIfAbsent(text.getField(), f -> new ArrayList<>());
+            for (String operand : text.getOperands()) {
+                if (!ids.containsKey(operand)) {
+                    ids.put(operand, fieldPatterns.size());
+                    fieldPatterns.add(operand);
+                }
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return automata.isEmpty();
+    }
+
+    /**
+     * @return Pattern id of the operand on this field, or -1 if it is not indexed
+     */
+    int patternId(RuleField field, String operand) {
+        Map<String, Integer> ids = patternIds.get(field);
+        Integer id = ids != null ? ids.get(operand) : null;
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Scan a field of the message once for all of its patterns
+     */
+    BitSet scan(RuleField field, RuleEvaluationContext context) {
+        AhoCorasick automaton = automata.get(field);
+        if (field == RuleField.BODY) {
+            return context.scanBody(automaton);
+        }
+        BitSet hits = new BitSet(automaton.getPatternCount());
+        for (String value : context.text(field)) {
+            automaton.scan(value, hits);
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,816 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Case-insensitive regular expressions matched in linear time
+ * Patterns compile to a Thompson NFA that is simulated breadth-first (Pike VM),
+ * so matching costs at most program size x text length steps whatever the
+ * pattern; there is no backtracking to blow up. The syntax is the java.util.regex
+ * subset without backtracking-only features: literals, '.', classes with ranges
+ * and \d \w \s, anchors ^ $ \A \z \Z \b \B, groups, alternation, greedy or lazy
+ * * + ? {n,m}, \Q...\E and the usual escapes. Backreferences, lookaround,
+ * atomic groups and possessive quantifiers are rejected.
+ */
+final class LinearRegex {
+
+    // Upper bound on compiled instructions, so {n,m} cannot inflate a program
+    static final int MAX_PROGRAM_SIZE = 10_000;
+    private static final int MAX_REPEAT = 1000;
+
+    private static final int CHAR = 0;
+    private static final int ANY = 1;
+    private static final int CLASS = 2;
+    private static final int SPLIT = 3;
+    private static final int JMP = 4;
+    private static final int ASSERT = 5;
+    private static final int MATCH = 6;
+
+    private static final int BEGIN_TEXT = 0;
+    private static final int END_TEXT = 1;
+    private static final int END_LINE = 2;
+    private static final int WORD_BOUNDARY = 3;
+    private static final int NOT_WORD_BOUNDARY = 4;
+
+    private final String pattern;
+    private final int[] ops;
+    private final int[] args;
+    private final int[] targets;
+    private final CharClass[] classes;
+    private final boolean anchored;
+
+    private LinearRegex(String pattern, Program program) {
+        this.pattern = pattern;
+        this.ops = program.ops.stream().mapToInt(Integer::intValue).toArray();
+        this.args = program.args.stream().mapToInt(Integer::intValue).toArray();
+        this.targets = program.targets.stream().mapToInt(Integer::intValue).toArray();
+        this.classes = program.classes.toArray(new CharClass[0]);
+        this.anchored = ops[0] == ASSERT && args[0] == BEGIN_TEXT;
+    }
+
+    /**
+     * Compile a pattern
+     * @throws PatternSyntaxException if the pattern is malformed or uses unsupported syntax
+     */
+    static LinearRegex compile(String pattern) {
+        Node root = new Parser(pattern).parse();
+        Program program = new Program(pattern);
+        root.emit(program);
+        program.add(MATCH, 0, 0);
+        return new LinearRegex(pattern, program);
+    }
+
+    String pattern() {
+        return pattern;
+    }
+
+    int programSize() {
+        return ops.length;
+    }
+
+    /**
+     * Worst-case steps to search a text of the given length
+     */
+    long cost(int textLength) {
+        return (long) ops.length * (textLength + 1);
+    }
+
+    boolean find(CharSequence text) {
+        return find(text, null);
+    }
+
+    /**
+     * Whether the pattern matches anywhere in the text
+     * @param budget Charged one step per live thread per character; null for no limit
+     * @return Whether there is a match
+     * @throws StepBudget.Exhausted if the budget runs out first
+     */
+    boolean find(CharSequence text, StepBudget budget) {
+        int length = text.length();
+        ThreadList current = new ThreadList(ops.length);
+        ThreadList next = new ThreadList(ops.length);
+        // Each instruction is added once per position and pushes at most two successors
+        int[] stack = new int[ops.length * 2 + 1];
+
+        for (int pos = 0; pos <= length; pos++) {
+            if (!anchored || pos == 0) {
+                addThread(current, 0, text, pos, stack);
+            }
+            if (current.size == 0) {
+                if (anchored) {
+                    return false;
+                }
+                continue;
+            }
+            if (budget != null) {
+                budget.charge(current.size);
+            }
+            int c = pos < length ? text.charAt(pos) : -1;
+            for (int i = 0; i < current.size; i++) {
+                int pc = current.dense[i];
+                switch (ops[pc]) {
+                    case MATCH:
+                        return true;
+                    case CHAR:
+                        if (c >= 0 && fold(c) == args[pc]) {
+                            addThread(next, pc + 1, text, pos + 1, stack);
+                        }
+                        break;
+                    case ANY:
+                        if (c >= 0 && !isLineTerminator(c)) {
+                            addThread(next, pc + 1, text, pos + 1, stack);
+                        }
+                        break;
+                    case CLASS:
+                        if (c >= 0 && classes[args[pc]].matchesIgnoreCase((char) c)) {
+                            addThread(next, pc + 1, text, pos + 1, stack);
+                        }
+                        break;
+                    default:
+                        // SPLIT/JMP/ASSERT were followed when the thread was added
+                        break;
+                }
+            }
+            ThreadList swap = current;
+            current = next;
+            next = swap;
+            next.clear();
+        }
+        return false;
+    }
+
+    /**
+     * Add a thread and follow its epsilon transitions at the given position
+     */
+    private void addThread(ThreadList list, int start, CharSequence text, int pos, int[] stack) {
+        int top = 0;
+        stack[top++] = start;
+        while (top > 0) {
+            int pc = stack[--top];
+            if (!list.add(pc)) {
+                continue;
+            }
+            switch (ops[pc]) {
+                case JMP:
+                    stack[top++] = targets[pc];
+                    break;
+                case SPLIT:
+                    stack[top++] = targets[pc];
+                    stack[top++] = args[pc];
+                    break;
+                case ASSERT:
+                    if (holds(args[pc], text, pos)) {
+                        stack[top++] = pc + 1;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static boolean holds(int assertion, CharSequence text, int pos) {
+        int length = text.length();
+        switch (assertion) {
+            case BEGIN_TEXT:
+                return pos == 0;
+            case END_TEXT:
+                return pos == length;
+            case END_LINE:
+                // Like java.util.regex '$': end of input or before a final line terminator
+                return pos == length || (pos == length - 1 && text.charAt(pos) == '\n');
+            case WORD_BOUNDARY:
+                return isWordAt(text, pos - 1) != isWordAt(text, pos);
+            case NOT_WORD_BOUNDARY:
+                return isWordAt(text, pos - 1) == isWordAt(text, pos);
+            default:
+                throw new IllegalStateException("Unknown assertion " + assertion);
+        }
+    }
+
+    private static boolean isLineTerminator(int c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isWordAt(CharSequence text, int pos) {
+        if (pos < 0 || pos >= text.length()) {
+            return false;
+        }
+        char c = text.charAt(pos);
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    private static int fold(int c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Sparse set of program counters; insertion-ordered, O(1) add/contains/clear
+     */
+    private static final class ThreadList {
+        final int[] dense;
+        final int[] sparse;
+        int size;
+
+        ThreadList(int capacity) {
+            dense = new int[capacity];
+            sparse = new int[capacity];
+        }
+
+        boolean add(int pc) {
+            int index = sparse[pc];
+            if (index < size && dense[index] == pc) {
+                return false;
+            }
+            sparse[pc] = size;
+            dense[size++] = pc;
+            return true;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Character set built from ranges and predefined classes
+     */
+    static final class CharClass {
+        private final List<char[]> ranges = new ArrayList<>();
+        private final List<CharClass> nested = new ArrayList<>();
+        private boolean negated;
+
+        static CharClass of(char... bounds) {
+            CharClass charClass = new CharClass();
+            for (int i = 0; i < bounds.length; i += 2) {
+                charClass.ranges.add(new char[] {bounds[i], bounds[i + 1]});
+            }
+            return charClass;
+        }
+
+        static CharClass predefined(char name) {
+            CharClass charClass;
+            switch (Character.toLowerCase(name)) {
+                case 'd':
+                    charClass = of('0', '9');
+                    break;
+                case 'w':
+                    charClass = of('a', 'z', 'A', 'Z', '0', '9', '_', '_');
+                    break;
+                case 's':
+                    charClass = of(' ', ' ', '\t', '\r');
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown class \\" + name);
+            }
+            charClass.negated = Character.isUpperCase(name);
+            return charClass;
+        }
+
+        /**
+         * Membership of any case variant; [^a-z] therefore rejects 'A' too, as with CASE_INSENSITIVE
+         */
+        boolean matchesIgnoreCase(char c) {
+            boolean in = contains(c) || contains(Character.toUpperCase(c)) || contains(Character.toLowerCase(c));
+            return in != negated;
+        }
+
+        private boolean contains(char c) {
+            for (char[] range : ranges) {
+                if (c >= range[0] && c <= range[1]) {
+                    return true;
+                }
+            }
+            for (CharClass charClass : nested) {
+                if (charClass.matchesIgnoreCase(c)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Program under construction
+     */
+    private static final class Program {
+        final String pattern;
+        final List<Integer> ops = new ArrayList<>();
+        final List<Integer> args = new ArrayList<>();
+        final List<Integer> targets = new ArrayList<>();
+        final List<CharClass> classes = new ArrayList<>();
+
+        Program(String pattern) {
+            this.pattern = pattern;
+        }
+
+        int add(int op, int arg, int target) {
+            if (ops.size() >= MAX_PROGRAM_SIZE) {
+                throw new PatternSyntaxException("Pattern is too large", pattern, -1);
+            }
+            ops.add(op);
+            args.add(arg);
+            targets.add(target);
+            return ops.size() - 1;
+        }
+
+        int size() {
+            return ops.size();
+        }
+
+        void patch(int pc, int arg, int target) {
+            args.set(pc, arg);
+            targets.set(pc, target);
+        }
+    }
+
+    /**
+     * Parsed pattern; emits itself as NFA instructions
+     */
+    private abstract static class Node {
+        abstract void emit(Program program);
+    }
+
+    private static final class Literal extends Node {
+        final char c;
+
+        Literal(char c) {
+            this.c = c;
+        }
+
+        @Override
+        void emit(Program program) {
+            program.add(CHAR, fold(c), 0);
+        }
+    }
+
+    private static final class Any extends Node {
+        @Override
+        void emit(Program program) {
+            program.add(ANY, 0, 0);
+        }
+    }
+
+    private static final class ClassNode extends Node {
+        final CharClass charClass;
+
+        ClassNode(CharClass charClass) {
+            this.charClass = charClass;
+        }
+
+        @Override
+        void emit(Program program) {
+            program.classes.add(charClass);
+            program.add(CLASS, program.classes.size() - 1, 0);
+        }
+    }
+
+    private static final class Assertion extends Node {
+        final int kind;
+
+        Assertion(int kind) {
+            this.kind = kind;
+        }
+
+        @Override
+        void emit(Program program) {
+            program.add(ASSERT, kind, 0);
+        }
+    }
+
+    private static final class Concat extends Node {
+        final List<Node> parts;
+
+        Concat(List<Node> parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        void emit(Program program) {
+            for (Node part : parts) {
+                part.emit(program);
+            }
+        }
+    }
+
+    private static final class Alternation extends Node {
+        final List<Node> branches;
+
+        Alternation(List<Node> branches) {
+            this.branches = branches;
+        }
+
+        @Override
+        void emit(Program program) {
+            // split L1, next; L1: branch; jmp end; next: split ... last branch; end:
+            List<Integer> jumps = new ArrayList<>();
+            for (int i = 0; i < branches.size() - 1; i++) {
+                int split = program.add(SPLIT, 0, 0);
+                branches.get(i).emit(program);
+                jumps.add(program.add(JMP, 0, 0));
+                program.patch(split, split + 1, program.size());
+            }
+            branches.get(branches.size() - 1).emit(program);
+            for (int jump : jumps) {
+                program.patch(jump, 0, program.size());
+            }
+        }
+    }
+
+    private static final class Repeat extends Node {
+        final Node body;
+        final int min;
+        final int max;
+
+        /**
+         * @param max Maximum count, or -1 for unbounded
+         */
+        Repeat(Node body, int min, int max) {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        void emit(Program program) {
+            for (int i = 0; i < min; i++) {
+                body.emit(program);
+            }
+            if (max < 0) {
+                // loop: split body, end; body; jmp loop; end:
+                int loop = program.add(SPLIT, 0, 0);
+                body.emit(program);
+                program.add(JMP, 0, loop);
+                program.patch(loop, loop + 1, program.size());
+                return;
+            }
+            List<Integer> splits = new ArrayList<>();
+            for (int i = min; i < max; i++) {
+                splits.add(program.add(SPLIT, 0, 0));
+                body.emit(program);
+            }
+            for (int split : splits) {
+                program.patch(split, split + 1, program.size());
+            }
+        }
+    }
+
+    /**
+     * Recursive-descent parser for the supported syntax
+     */
+    private static final class Parser {
+        private final String pattern;
+        private int pos;
+
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        Node parse() {
+            Node node = alternation();
+            if (pos < pattern.length()) {
+                throw error(pattern.charAt(pos) == ')' ? "Unmatched closing ')'" : "Unexpected character");
+            }
+            return node;
+        }
+
+        private Node alternation() {
+            List<Node> branches = new ArrayList<>();
+            branches.add(concatenation());
+            while (pos < pattern.length() && pattern.charAt(pos) == '|') {
+                pos++;
+                branches.add(concatenation());
+            }
+            return branches.size() == 1 ? branches.get(0) : new Alternation(branches);
+        }
+
+        private Node concatenation() {
+            List<Node> parts = new ArrayList<>();
+            while (pos < pattern.length()) {
+                char c = pattern.charAt(pos);
+                if (c == '|' || c == ')') {
+                    break;
+                }
+                if (c == '\\' && pattern.startsWith("Q", pos + 1)) {
+                    quoted(parts);
+                    continue;
+                }
+                Node atom = atom();
+                if (atom != null) {
+                    parts.add(quantified(atom));
+                }
+            }
+            return parts.size() == 1 ? parts.get(0) : new Concat(parts);
+        }
+
+        /**
+         * \Q...\E: everything up to \E (or the end) is literal
+         */
+        private void quoted(List<Node> parts) {
+            pos += 2;
+            int end = pattern.indexOf("\\E", pos);
+            int stop = end >= 0 ? end : pattern.length();
+            for (; pos < stop; pos++) {
+                parts.add(new Literal(pattern.charAt(pos)));
+            }
+            pos = end >= 0 ? end + 2 : stop;
+        }
+
+        /**
+         * @return The atom, or null for a flag group that matches nothing
+         */
+        private Node atom() {
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case '.':
+                    return new Any();
+                case '^':
+                    return new Assertion(BEGIN_TEXT);
+                case '$':
+                    return new Assertion(END_LINE);
+                case '[':
+                    return new ClassNode(charClass());
+                case '(':
+                    return group();
+                case '\\':
+                    return escape();
+                case '*':
+                case '+':
+                case '?':
+                    throw error("Dangling meta character '" + c + "'");
+                case '{':
+                    throw error("Illegal repetition");
+                default:
+                    return new Literal(c);
+            }
+        }
+
+        private Node group() {
+            if (pattern.startsWith("?", pos)) {
+                pos++;
+                if (pos >= pattern.length()) {
+                    throw error("Unknown group type");
+                }
+                char kind = pattern.charAt(pos);
+                if (kind == ':') {
+                    pos++;
+                } else if (kind == '<' && pos + 1 < pattern.length() && Character.isLetter(pattern.charAt(pos + 1))) {
+                    int close = pattern.indexOf('>', pos);
+                    if (close < 0) {
+                        throw error("Named group is not closed");
+                    }
+                    pos = close + 1;
+                } else if (kind == '=' || kind == '!' || kind == '<') {
+                    throw error("Lookaround is not supported");
+                } else if (kind == '>') {
+                    throw error("Atomic groups are not supported");
+                } else {
+                    return flags();
+                }
+            }
+            return grouped();
+        }
+
+        /**
+         * Group body up to the closing parenthesis; wrapped so a quantifier may follow an assertion
+         */
+        private Node grouped() {
+            Node body = alternation();
+            expect(')');
+            return body instanceof Assertion ? new Concat(List.of(body)) : body;
+        }
+
+        /**
+         * (?i) and (?i:...): matching is always case-insensitive, so only 'i' is accepted
+         */
+        private Node flags() {
+            while (pos < pattern.length() && pattern.charAt(pos) == 'i') {
+                pos++;
+            }
+            if (pos < pattern.length() && pattern.charAt(pos) == ')') {
+                pos++;
+                return null;
+            }
+            if (pos < pattern.length() && pattern.charAt(pos) == ':') {
+                pos++;
+                return grouped();
+            }
+            throw error("Unsupported inline flag");
+        }
+
+        private Node quantified(Node atom) {
+            Node node = atom;
+            while (pos < pattern.length()) {
+                char c = pattern.charAt(pos);
+                int min;
+                int max;
+                if (c == '*') {
+                    min = 0;
+                    max = -1;
+                    pos++;
+                } else if (c == '+') {
+                    min = 1;
+                    max = -1;
+                    pos++;
+                } else if (c == '?') {
+                    min = 0;
+                    max = 1;
+                    pos++;
+                } else if (c == '{') {
+                    int[] bounds = bounds();
+                    min = bounds[0];
+                    max = bounds[1];
+                } else {
+                    break;
+                }
+                if (node instanceof Assertion) {
+                    throw error("Nothing to repeat");
+                }
+                if (pos < pattern.length() && pattern.charAt(pos) == '?') {
+                    // Lazy: only affects which match is reported, not whether one exists
+                    pos++;
+                } else if (pos < pattern.length() && pattern.charAt(pos) == '+') {
+                    throw error("Possessive quantifiers are not supported");
+                }
+                node = new Repeat(node, min, max);
+            }
+            return node;
+        }
+
+        private int[] bounds() {
+            int start = pos;
+            pos++;
+            int min = number();
+            int max = min;
+            if (pos < pattern.length() && pattern.charAt(pos) == ',') {
+                pos++;
+                max = pos < pattern.length() && pattern.charAt(pos) == '}' ? -1 : number();
+            }
+            if (pos >= pattern.length() || pattern.charAt(pos) != '}') {
+                pos = start;
+                throw error("Illegal repetition");
+            }
+            pos++;
+            if (min > MAX_REPEAT || max > MAX_REPEAT) {
+                throw error("Repetition count above " + MAX_REPEAT);
+            }
+            if (max >= 0 && max < min) {
+                throw error("Illegal repetition range");
+            }
+            return new int[] {min, max};
+        }
+
+        private int number() {
+            int start = pos;
+            while (pos < pattern.length() && Character.isDigit(pattern.charAt(pos)) && pos - start < 6) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("Illegal repetition");
+            }
+            return Integer.parseInt(pattern.substring(start, pos));
+        }
+
+        private Node escape() {
+            if (pos >= pattern.length()) {
+                throw error("Unexpected internal error");
+            }
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case 'd':
+                case 'D':
+                case 'w':
+                case 'W':
+                case 's':
+                case 'S':
+                    return new ClassNode(CharClass.predefined(c));
+                case 'b':
+                    return new Assertion(WORD_BOUNDARY);
+                case 'B':
+                    return new Assertion(NOT_WORD_BOUNDARY);
+                case 'A':
+                    return new Assertion(BEGIN_TEXT);
+                case 'z':
+                    return new Assertion(END_TEXT);
+                case 'Z':
+                    return new Assertion(END_LINE);
+                default:
+                    return new Literal(escapedChar(c));
+            }
+        }
+
+        /**
+         * Character escapes valid both inside and outside classes
+         */
+        private char escapedChar(char c) {
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'e':
+                    return '\u001B';
+                case 'a':
+                    return '\u0007';
+                case 'x':
+                    return (char) hex(2);
+                case 'u':
+                    return (char) hex(4);
+                case 'k':
+                    throw error("Backreferences are not supported");
+                default:
+                    if (c >= '1' && c <= '9') {
+                        throw error("Backreferences are not supported");
+                    }
+                    if (Character.isLetterOrDigit(c)) {
+                        throw error("Illegal/unsupported escape sequence");
+                    }
+                    return c;
+            }
+        }
+
+        private int hex(int digits) {
+            if (pos + digits > pattern.length()) {
+                throw error("Illegal hexadecimal escape sequence");
+            }
+            try {
+                int value = Integer.parseInt(pattern.substring(pos, pos + digits), 16);
+                pos += digits;
+                return value;
+            } catch (NumberFormatException e) {
+                throw error("Illegal hexadecimal escape sequence");
+            }
+        }
+
+        private CharClass charClass() {
+            CharClass charClass = new CharClass();
+            if (pos < pattern.length() && pattern.charAt(pos) == '^') {
+                charClass.negated = true;
+                pos++;
+            }
+            boolean first = true;
+            while (true) {
+                if (pos >= pattern.length()) {
+                    throw error("Unclosed character class");
+                }
+                char c = pattern.charAt(pos);
+                if (c == ']' && !first) {
+                    pos++;
+                    return charClass;
+                }
+                first = false;
+                if (c == '[' || pattern.startsWith("&&", pos)) {
+                    throw error("Nested classes and intersections are not supported");
+                }
+                pos++;
+                char low;
+                if (c == '\\') {
+                    if (pos >= pattern.length()) {
+                        throw error("Unclosed character class");
+                    }
+                    char e = pattern.charAt(pos++);
+                    if ("dDwWsS".indexOf(e) >= 0) {
+                        charClass.nested.add(CharClass.predefined(e));
+                        continue;
+                    }
+                    low = escapedChar(e);
+                } else {
+                    low = c;
+                }
+                char high = low;
+                if (pos + 1 < pattern.length() && pattern.charAt(pos) == '-' && pattern.charAt(pos + 1) != ']') {
+                    pos++;
+                    char h = pattern.charAt(pos++);
+                    if (h == '\\') {
+                        if (pos >= pattern.length()) {
+                            throw error("Unclosed character class");
+                        }
+                        h = escapedChar(pattern.charAt(pos++));
+                    }
+                    if (h < low) {
+                        throw error("Illegal character range");
+                    }
+                    high = h;
+                }
+                charClass.ranges.add(new char[] {low, high});
+            }
+        }
+
+        private void expect(char c) {
+            if (pos >= pattern.length() || pattern.charAt(pos) != c) {
+                throw error("Unclosed group");
+            }
+            pos++;
+        }
+
+        private PatternSyntaxException error(String description) {
+            return new PatternSyntaxException(description, pattern, Math.min(pos, pattern.length()) - 1);
+        }
+    }
+}
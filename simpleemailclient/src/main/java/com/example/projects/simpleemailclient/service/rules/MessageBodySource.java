@@ -0,0 +1,20 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Message;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streams message body text to body conditions without materializing it
+ */
+public interface MessageBodySource {
+
+    /**
+     * Open the body of a message
+     * @param message Message
+     * @return Reader over the body text, or null if the message has no stored body; caller closes it
+     * @throws IOException if the body cannot be read
+     */
+    Reader open(Message message) throws IOException;
+}
@@ -0,0 +1,324 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides whether a vacation/auto-reply may be sent, replying to each sender at most once per N days
+ * Each responder keeps one set of 64-bit sender hashes per day in Redis, shared by all nodes, with
+ * a TTL. Every node caches the replies it has seen in memory, so repeat mail from a sender already
+ * answered never leaves the node; on a local miss the window's daily sets are checked in Redis and
+ * the reply is claimed with SADD on today's set, which only one node can win. Mail that must never
+ * be auto-answered (mailing lists, bounces, no-reply senders) is rejected up front, and a per-day
+ * cap bounds both memory and the number of replies a storm of distinct senders can cause.
+ */
+@Component
+@Slf4j
+public class ReplySuppressionCache {
+
+    private static final String KEY_PREFIX = "email:reply-suppression:";
+    private static final List<String> AUTOMATED_LOCAL_PARTS = List.of(
+        "mailer-daemon", "postmaster", "noreply", "no-reply", "do-not-reply", "donotreply", "listserv", "majordomo");
+
+    private final StringRedisTemplate redisTemplate;
+    private final Map<String, Counter> suppressed = new HashMap<>();
+    private final ConcurrentHashMap<String, Responder> responders = new ConcurrentHashMap<>();
+
+    @Value("${email.rules.reply-suppression.max-days:30}")
+    private int maxDays = 30;
+
+    @Value("${email.rules.reply-suppression.max-senders-per-day:5000}")
+    private int maxSendersPerDay = 5000;
+
+    @Value("${email.rules.reply-suppression.max-responders:100000}")
+    private int maxResponders = 100000;
+
+    Clock clock = Clock.systemUTC();
+
+    public ReplySuppressionCache(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        for (String reason : List.of("automated", "recent", "limit")) {
+            suppressed.put(reason, Counter.builder("email.rules.replies.suppressed")
+                .description("Automatic replies not sent")
+                .tag("reason", reason)
+                .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Check whether an automatic reply may be sent and, if so, record it atomically
+     * @param userId Owner of the responder
+     * @param responderId Rule that sends the reply; each responder tracks senders separately
+     * @param message Incoming message
+     * @param days Minimum days between replies to the same sender
+     * @return true if the caller should send the reply now
+     */
+    public boolean tryAcquire(Long userId, Long responderId, Message message, int days) {
+        String sender = RuleEvaluationContext.normalizeAddress(message.getFromAddress());
+        if (isAutomated(message, sender)) {
+            suppressed.get("automated").increment();
+            return false;
+        }
+
+        long today = LocalDate.now(clock).toEpochDay();
+        int window = Math.max(1, Math.min(days, maxDays));
+        long hash = hash(sender);
+        String responderKey = responderKey(userId, responderId);
+        Responder responder = responder(responderKey);
+        String outcome;
+        synchronized (responder) {
+            responder.expire(today - maxDays);
+            if (responder.contains(hash, today - window)) {
+                outcome = "recent";
+            } else if (responder.size(today) >= maxSendersPerDay) {
+                outcome = "limit";
+            } else {
+                outcome = null;
+            }
+        }
+        if (outcome == null) {
+            // Another node may have replied since this one last saw the sender
+            Long repliedOn = claim(responderKey, today, window, hash);
+            synchronized (responder) {
+                responder.add(repliedOn != null ? repliedOn : today, hash);
+            }
+            if (repliedOn != null) {
+                outcome = "recent";
+            }
+        }
+
+        if (outcome != null) {
+            suppressed.get(outcome).increment();
+            if ("limit".equals(outcome)) {
+                log.warn("Auto-reply limit of {} senders per day reached for responder {} of user {}",
+                    maxSendersPerDay, responderId, userId);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drop all tracked senders of a responder, e.g. when its rule is deleted
+     */
+    public void forget(Long userId, Long responderId) {
+        String responderKey = responderKey(userId, responderId);
+        responders.remove(responderKey);
+        long today = LocalDate.now(clock).toEpochDay();
+        List<String> keys = new ArrayList<>(maxDays + 1);
+        for (long day = today - maxDays; day <= today; day++) {
+            keys.add(responderKey + ":" + day);
+        }
+        try {
+            redisTemplate.delete(keys);
+        } catch (DataAccessException e) {
+            log.warn("Failed to delete reply suppression state of responder {}: {}", responderId, e.getMessage());
+        }
+    }
+
+    /**
+     * RFC 3834: never auto-reply to list traffic, bounces or senders that do not accept replies
+     */
+    static boolean isAutomated(Message message, String sender) {
+        if (sender.isEmpty() || sender.indexOf('@') < 0) {
+            return true;
+        }
+        if (message.getListId() != null && !message.getListId().isBlank()) {
+            return true;
+        }
+        String localPart = sender.substring(0, sender.indexOf('@'));
+        return AUTOMATED_LOCAL_PARTS.contains(localPart)
+            || localPart.startsWith("owner-")
+            || localPart.endsWith("-request")
+            || localPart.endsWith("-bounces");
+    }
+
+    private Responder responder(String responderKey) {
+        Responder responder = responders.get(responderKey);
+        if (responder != null) {
+            return responder;
+        }
+        evictIfFull();
+        Responder created = new Responder();
+        Responder existing = responders.putIfAbsent(responderKey, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * Look for a reply to the sender inside the window in Redis and, if there is none, record one today
+     * SADD is atomic, so when nodes race for the same sender only one of them gets to reply.
+     * @return Day of the earlier reply, or null if the caller now holds today's reply
+     */
+    private Long claim(String responderKey, long today, int window, long hash) {
+        String member = Long.toHexString(hash);
+        String key = responderKey + ":" + today;
+        try {
+            for (long day = today - window; day < today; day++) {
+                if (Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(responderKey + ":" + day, member))) {
+                    return day;
+                }
+            }
+            Long added = redisTemplate.opsForSet().add(key, member);
+            // Keep the set until it falls out of the longest window
+            redisTemplate.expire(key, Duration.ofDays(maxDays + 2L));
+            return added != null && added == 0 ? today : null;
+        } catch (DataAccessException e) {
+            // Decide locally: at worst one extra reply per sender, never a missed message
+            log.warn("Failed to check reply suppression entry {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void evictIfFull() {
+        if (responders.size() < maxResponders) {
+            return;
+        }
+        // Approximate eviction: drop an arbitrary tenth; evicted responders reload from Redis
+        Iterator<String> keys = responders.keySet().iterator();
+        for (int i = 0; i < Math.max(1, maxResponders / 10) && keys.hasNext(); i++) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static String responderKey(Long userId, Long responderId) {
+        return KEY_PREFIX + userId + ":" + responderId;
+    }
+
+    /**
+     * First 64 bits of SHA-256; stable across restarts so persisted hashes stay valid
+     */
+    static long hash(String sender) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sender.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Daily sender sets of one responder, keyed by epoch day
+     */
+    static final class Responder {
+        private final Map<Long, LongSet> days = new HashMap<>();
+
+        boolean contains(long hash, long sinceDay) {
+            for (Map.Entry<Long, LongSet> day : days.entrySet()) {
+                if (day.getKey() >= sinceDay && day.getValue().contains(hash)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int size(long day) {
+            LongSet set = days.get(day);
+            return set != null ? set.size() : 0;
+        }
+
+        void add(long day, long hash) {
+            days.computeIfAbsent(day, d -> new LongSet()).add(hash);
+        }
+
+        void expire(long beforeDay) {
+            days.keySet().removeIf(day -> day < beforeDay);
+        }
+    }
+
+    /**
+     * Open-addressing set of longs; 8 bytes per slot, no boxing
+     */
+    static final class LongSet {
+        private static final long EMPTY = 0L;
+
+        private long[] slots = new long[16];
+        private int size;
+        private boolean containsEmpty;
+
+        int size() {
+            return size;
+        }
+
+        boolean contains(long value) {
+            if (value == EMPTY) {
+                return containsEmpty;
+            }
+            int mask = slots.length - 1;
+            for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+                if (slots[i] == value) {
+                    return true;
+                }
+                if (slots[i] == EMPTY) {
+                    return false;
+                }
+            }
+        }
+
+        void add(long value) {
+            if (value == EMPTY) {
+                if (!containsEmpty) {
+                    containsEmpty = true;
+                    size++;
+                }
+                return;
+            }
+            if ((size + 1) * 2 > slots.length) {
+                grow();
+            }
+            if (insert(slots, value)) {
+                size++;
+            }
+        }
+
+        private void grow() {
+            long[] grown = new long[slots.length * 2];
+            for (long value : slots) {
+                if (value != EMPTY) {
+                    insert(grown, value);
+                }
+            }
+            slots = grown;
+        }
+
+        private static boolean insert(long[] table, long value) {
+            int mask = table.length - 1;
+            for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+                if (table[i] == value) {
+                    return false;
+                }
+                if (table[i] == EMPTY) {
+                    table[i] = value;
+                    return true;
+                }
+            }
+        }
+
+        private static int mix(long value) {
+            return (int) (value ^ (value >>> 32));
+        }
+    }
+}
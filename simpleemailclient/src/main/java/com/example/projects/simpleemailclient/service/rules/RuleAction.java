@@ -0,0 +1,90 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+/**
+ * Compiled, immutable rule action
+ */
+public final class RuleAction {
+
+    public enum Type {
+        MOVE,
+        FILE_INTO,
+        ADD_FLAG,
+        REMOVE_FLAG,
+        MARK_READ,
+        DELETE,
+        FORWARD,
+        REPLY
+    }
+
+    private final Type type;
+    private final Long mailboxId;
+    private final String value;
+    private final int days;
+
+    private RuleAction(Type type, Long mailboxId, String value, int days) {
+        this.type = type;
+        this.mailboxId = mailboxId;
+        this.value = value;
+        this.days = days;
+    }
+
+    public static RuleAction move(Long mailboxId) {
+        return new RuleAction(Type.MOVE, mailboxId, null, 0);
+    }
+
+    /**
+     * Move to a mailbox by name, resolved when the action runs
+     */
+    public static RuleAction fileInto(String mailboxName) {
+        return new RuleAction(Type.FILE_INTO, null, mailboxName, 0);
+    }
+
+    public static RuleAction addFlag(String flag) {
+        return new RuleAction(Type.ADD_FLAG, null, flag, 0);
+    }
+
+    public static RuleAction removeFlag(String flag) {
+        return new RuleAction(Type.REMOVE_FLAG, null, flag, 0);
+    }
+
+    public static RuleAction markRead() {
+        return new RuleAction(Type.MARK_READ, null, null, 0);
+    }
+
+    public static RuleAction delete() {
+        return new RuleAction(Type.DELETE, null, null, 0);
+    }
+
+    public static RuleAction forward(String address) {
+        return new RuleAction(Type.FORWARD, null, address, 0);
+    }
+
+    public static RuleAction reply(String body, int days) {
+        return new RuleAction(Type.REPLY, null, body, days);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Target mailbox for MOVE
+     */
+    public Long getMailboxId() {
+        return mailboxId;
+    }
+
+    /**
+     * Flag for ADD_FLAG/REMOVE_FLAG, mailbox name for FILE_INTO, address for FORWARD, reply text for REPLY
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Minimum days between replies to the same sender for REPLY
+     */
+    public int getDays() {
+        return days;
+    }
+}
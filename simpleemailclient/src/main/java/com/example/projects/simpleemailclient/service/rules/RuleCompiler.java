@@ -0,0 +1,302 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.exception.InvalidRuleException;
+import com.example.projects.simpleemailclient.model.Rule;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles Rule.conditionJson/actionJson into immutable condition and action trees.
+ *
+ * Condition JSON:
+ * <pre>
+ * {"all": [cond, ...]}  {"any": [cond, ...]}  {"not": cond}
+ * {"field": "from", "op": "contains", "value": "billing"}
+ * {"field": "subject", "op": "equals", "value": ["a", "b"]}
+ * {"field": "body", "op": "contains", "value": "unsubscribe"}
+ * {"field": "size", "op": "greaterThan", "value": 1048576}
+ * {"field": "hasAttachments", "value": true}
+ * </pre>
+ *
+ * Action JSON:
+ * <pre>
+ * {"actions": [{"type": "move", "mailboxId": 12}, {"type": "label", "label": "work"}], "stop": true}
+ * </pre>
+ * Action types: move, label/addFlag, removeFlag, markRead, delete, forward, reply.
+ */
+@Component
+public class RuleCompiler {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${email.rules.evaluation-budget-steps:2000000}")
+    private long evaluationBudget = 2_000_000;
+
+    public RuleCompiler(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Compile a persisted rule
+     * @param rule Rule entity
+     * @return Compiled rule
+     * @throws InvalidRuleException if either JSON document is malformed
+     */
+    public CompiledRule compile(Rule rule) {
+        return compile(rule, null);
+    }
+
+    private CompiledRule compile(Rule rule, Interner interner) {
+        JsonNode actionNode = parse(rule.getActionJson(), "actionJson");
+        return new CompiledRule(
+            rule.getId(),
+            rule.getVersion(),
+            rule.getPriority() != null ? rule.getPriority() : Integer.MAX_VALUE,
+            rule.getRuleType(),
+            compileCondition(parse(rule.getConditionJson(), "conditionJson"), interner),
+            compileActions(actionNode),
+            actionNode.path("stop").asBoolean(false));
+    }
+
+    /**
+     * Compile rules into a priority-ordered set
+     * Identical leaf conditions are interned across rules so each is
+     * evaluated at most once per message
+     * @param userId Owner of the rules
+     * @param rules Active rules
+     * @return Compiled rule set
+     */
+    public CompiledRuleSet compileAll(Long userId, List<Rule> rules) {
+        return compileAll(userId, rules, List.of(), 0);
+    }
+
+    /**
+     * Compile rules together with rules compiled elsewhere, e.g. from a Sieve script
+     * @param precompiled Additional compiled rules
+     * @param precompiledSharedConditions Memo slots used by the additional rules, starting at 0
+     */
+    public CompiledRuleSet compileAll(Long userId, List<Rule> rules, List<CompiledRule> precompiled,
+                                      int precompiledSharedConditions) {
+        Interner interner = new Interner(precompiledSharedConditions);
+        List<CompiledRule> compiled = new ArrayList<>(rules.size() + precompiled.size());
+        for (Rule rule : rules) {
+            compiled.add(compile(rule, interner));
+        }
+        compiled.addAll(precompiled);
+        return new CompiledRuleSet(userId, compiled, interner.slots(), evaluationBudget);
+    }
+
+    /**
+     * Maximum evaluation steps per message for one user's rule set
+     */
+    public long getEvaluationBudget() {
+        return evaluationBudget;
+    }
+
+    /**
+     * Whether a condition's worst case fits in the per-message evaluation budget on its own
+     */
+    public boolean fitsBudget(Condition condition) {
+        return Conditions.worstCaseSteps(condition) <= evaluationBudget;
+    }
+
+    public Condition compileCondition(String conditionJson) {
+        return compileCondition(parse(conditionJson, "conditionJson"), null);
+    }
+
+    public List<RuleAction> compileActions(String actionJson) {
+        return compileActions(parse(actionJson, "actionJson"));
+    }
+
+    private JsonNode parse(String json, String what) {
+        if (json == null || json.isBlank()) {
+            throw new InvalidRuleException(what + " is empty");
+        }
+        try {
+            return objectMapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new InvalidRuleException(what + " is not valid JSON: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    private Condition compileCondition(JsonNode node, Interner interner) {
+        if (!node.isObject()) {
+            throw new InvalidRuleException("Condition must be an object: " + node);
+        }
+        if (node.has("all")) {
+            return Conditions.allOf(compileChildren(node.get("all"), interner));
+        }
+        if (node.has("any")) {
+            List<Condition> children = compileChildren(node.get("any"), interner);
+            if (children.isEmpty()) {
+                throw new InvalidRuleException("\"any\" needs at least one condition");
+            }
+            return Conditions.anyOf(children);
+        }
+        if (node.has("not")) {
+            return Conditions.not(compileCondition(node.get("not"), interner));
+        }
+        Condition leaf = compileLeaf(node);
+        return interner != null ? interner.intern(leafKey(node), leaf) : leaf;
+    }
+
+    private List<Condition> compileChildren(JsonNode array, Interner interner) {
+        if (!array.isArray()) {
+            throw new InvalidRuleException("Expected an array of conditions: " + array);
+        }
+        List<Condition> children = new ArrayList<>(array.size());
+        for (JsonNode child : array) {
+            children.add(compileCondition(child, interner));
+        }
+        return children;
+    }
+
+    private static String leafKey(JsonNode node) {
+        String op = node.path("op").asText("");
+        String value = node.get("value").toString();
+        if (!TextOperator.MATCHES.getJsonName().equalsIgnoreCase(op)) {
+            value = value.toLowerCase(Locale.ROOT);
+        }
+        return RuleField.fromJsonName(node.path("field").asText()) + "\u0000" + op.toLowerCase(Locale.ROOT) + "\u0000" + value;
+    }
+
+    private Condition compileLeaf(JsonNode node) {
+        RuleField field = RuleField.fromJsonName(node.path("field").asText(null));
+        if (field == null) {
+            throw new InvalidRuleException("Unknown condition field: " + node.path("field"));
+        }
+        JsonNode value = node.get("value");
+        if (value == null || value.isNull()) {
+            throw new InvalidRuleException("Condition on " + field.getJsonName() + " has no value");
+        }
+        String op = node.path("op").asText("");
+
+        switch (field.getKind()) {
+            case NUMERIC: {
+                Conditions.NumericOperator operator = Conditions.NumericOperator.fromJsonName(op);
+                if (operator == null || !value.isNumber()) {
+                    throw new InvalidRuleException("Invalid numeric condition on " + field.getJsonName());
+                }
+                return Conditions.numeric(field, operator, value.asDouble());
+            }
+            case BOOLEAN:
+                if (!value.isBoolean()) {
+                    throw new InvalidRuleException("Condition on " + field.getJsonName() + " needs a boolean");
+                }
+                return Conditions.bool(field, value.asBoolean());
+            default: {
+                TextOperator operator = TextOperator.fromJsonName(op);
+                if (operator == null) {
+                    throw new InvalidRuleException("Unknown text operator: " + op);
+                }
+                if (field == RuleField.BODY && operator != TextOperator.CONTAINS) {
+                    throw new InvalidRuleException("Body conditions only support \"contains\"");
+                }
+                try {
+                    return Conditions.text(field, operator, textOperands(value));
+                } catch (PatternSyntaxException e) {
+                    throw new InvalidRuleException("Invalid pattern: " + e.getDescription(), e);
+                }
+            }
+        }
+    }
+
+    private List<String> textOperands(JsonNode value) {
+        List<String> operands = new ArrayList<>();
+        if (value.isArray()) {
+            for (JsonNode element : value) {
+                operands.add(element.asText());
+            }
+        } else {
+            operands.add(value.asText());
+        }
+        if (operands.isEmpty()) {
+            throw new InvalidRuleException("Text condition needs at least one value");
+        }
+        return operands;
+    }
+
+    private List<RuleAction> compileActions(JsonNode node) {
+        JsonNode actions = node.isArray() ? node : node.get("actions");
+        if (actions == null || !actions.isArray() || actions.isEmpty()) {
+            throw new InvalidRuleException("actionJson needs a non-empty \"actions\" array");
+        }
+        List<RuleAction> compiled = new ArrayList<>(actions.size());
+        for (JsonNode action : actions) {
+            compiled.add(compileAction(action));
+        }
+        return compiled;
+    }
+
+    private RuleAction compileAction(JsonNode action) {
+        String type = action.path("type").asText("");
+        switch (type) {
+            case "move":
+                if (!action.path("mailboxId").canConvertToLong()) {
+                    throw new InvalidRuleException("move action needs a mailboxId");
+                }
+                return RuleAction.move(action.get("mailboxId").asLong());
+            case "label":
+                return RuleAction.addFlag(requiredText(action, "label"));
+            case "addFlag":
+                return RuleAction.addFlag(requiredText(action, "flag"));
+            case "removeFlag":
+                return RuleAction.removeFlag(requiredText(action, "flag"));
+            case "markRead":
+                return RuleAction.markRead();
+            case "delete":
+                return RuleAction.delete();
+            case "forward":
+                return RuleAction.forward(requiredText(action, "to"));
+            case "reply":
+                return RuleAction.reply(requiredText(action, "body"), action.path("days").asInt(7));
+            default:
+                throw new InvalidRuleException("Unknown action type: " + type);
+        }
+    }
+
+    /**
+     * Shares identical leaf conditions within one rule set
+     */
+    private static final class Interner {
+        private final Map<String, Condition> shared = new HashMap<>();
+        private final int firstSlot;
+
+        Interner(int firstSlot) {
+            this.firstSlot = firstSlot;
+        }
+
+        Condition intern(String key, Condition leaf) {
+            return shared.computeIfAbsent(key, k -> new Conditions.Shared(firstSlot + shared.size(), leaf));
+        }
+
+        /**
+         * Memo slots in use, including those reserved before the first slot
+         */
+        int slots() {
+            return firstSlot + shared.size();
+        }
+    }
+
+    private String requiredText(JsonNode action, String property) {
+        String value = action.path(property).asText("");
+        if (value.isBlank()) {
+            throw new InvalidRuleException(action.path("type").asText() + " action needs \"" + property + "\"");
+        }
+        // Flags are comma-separated on Message, so they cannot contain commas themselves
+        if (!"body".equals(property) && value.indexOf(',') >= 0) {
+            throw new InvalidRuleException("\"" + property + "\" must not contain commas");
+        }
+        return value.trim();
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Per-message view used while evaluating a compiled rule set
+ * Header fields are normalized once here so conditions only compare
+ * precomputed strings and never allocate during evaluation
+ */
+public final class RuleEvaluationContext {
+
+    private static final Logger log = LoggerFactory.getLogger(RuleEvaluationContext.class);
+    private static final String[] EMPTY = new String[0];
+
+    private final Message message;
+    private final MessageBodySource bodySource;
+    private final String[][] textValues = new String[RuleField.values().length][];
+    private final long sizeBytes;
+    private final double spamScore;
+    private final boolean hasAttachments;
+
+    // Results of shared sub-conditions: 0 = not evaluated, 1 = true, 2 = false
+    private byte[] memo = new byte[0];
+    private int memoSlots;
+    private Set<String> subjectWords;
+
+    // Contains index of the rule set being evaluated and its per-field scan results
+    private ContainsIndex containsIndex;
+    private final BitSet[] containsHits = new BitSet[RuleField.values().length];
+
+    private StepBudget budget = new StepBudget(StepBudget.UNLIMITED);
+
+    private RuleEvaluationContext(Message message, MessageBodySource bodySource) {
+        this.message = message;
+        this.bodySource = bodySource;
+
+        String from = normalizeAddress(message.getFromAddress());
+        String[] to = parseAddressList(message.getToAddresses());
+        String[] cc = parseAddressList(message.getCcAddresses());
+
+        textValues[RuleField.FROM.ordinal()] = from.isEmpty() ? EMPTY : new String[] {from};
+        textValues[RuleField.FROM_DOMAIN.ordinal()] = from.isEmpty() ? EMPTY : new String[] {domainOf(from)};
+        textValues[RuleField.TO.ordinal()] = to;
+        textValues[RuleField.CC.ordinal()] = cc;
+        textValues[RuleField.RECIPIENT.ordinal()] = concat(to, cc);
+        textValues[RuleField.SUBJECT.ordinal()] = new String[] {lower(message.getSubject())};
+        String listId = normalizeAddress(message.getListId());
+        textValues[RuleField.LIST_ID.ordinal()] = listId.isEmpty() ? EMPTY : new String[] {listId};
+
+        this.sizeBytes = message.getSizeBytes() != null ? message.getSizeBytes() : 0L;
+        this.spamScore = message.getSpamScore() != null ? message.getSpamScore() : 0.0;
+        this.hasAttachments = Boolean.TRUE.equals(message.getHasAttachments());
+    }
+
+    /**
+     * Context without body access; body conditions see an empty body
+     */
+    public static RuleEvaluationContext of(Message message) {
+        return new RuleEvaluationContext(message, null);
+    }
+
+    public static RuleEvaluationContext of(Message message, MessageBodySource bodySource) {
+        return new RuleEvaluationContext(message, bodySource);
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Limit the work spent evaluating conditions against this message
+     * Once the budget is used up, the rule being evaluated is abandoned and no further rules match.
+     * @param steps Maximum evaluation steps; see StepBudget
+     * @return This context
+     */
+    public RuleEvaluationContext withBudget(long steps) {
+        budget = new StepBudget(steps);
+        return this;
+    }
+
+    /**
+     * Whether evaluation stopped early because the budget ran out
+     */
+    public boolean isBudgetExceeded() {
+        return budget.isExceeded();
+    }
+
+    public long getBudgetUsed() {
+        return budget.getUsed();
+    }
+
+    StepBudget budget() {
+        return budget;
+    }
+
+    /**
+     * Normalized values of a text field; multi-valued for recipient lists
+     */
+    public String[] text(RuleField field) {
+        String[] values = textValues[field.ordinal()];
+        return values != null ? values : EMPTY;
+    }
+
+    public double numeric(RuleField field) {
+        switch (field) {
+            case SIZE:
+                return sizeBytes;
+            case SPAM_SCORE:
+                return spamScore;
+            default:
+                throw new IllegalArgumentException("Not a numeric field: " + field);
+        }
+    }
+
+    public boolean bool(RuleField field) {
+        if (field == RuleField.HAS_ATTACHMENTS) {
+            return hasAttachments;
+        }
+        throw new IllegalArgumentException("Not a boolean field: " + field);
+    }
+
+    /**
+     * Lower-cased alphanumeric tokens of the subject, computed on first use
+     */
+    public Set<String> subjectWords() {
+        if (subjectWords == null) {
+            subjectWords = new HashSet<>(Arrays.asList(words(text(RuleField.SUBJECT)[0])));
+        }
+        return subjectWords;
+    }
+
+    /**
+     * Reset shared sub-condition results before evaluating a rule set
+     * @param slots Number of shared conditions in the rule set
+     */
+    void resetMemo(int slots) {
+        if (memo.length < slots) {
+            memo = new byte[slots];
+        } else {
+            Arrays.fill(memo, 0, slots, (byte) 0);
+        }
+        memoSlots = slots;
+    }
+
+    /**
+     * Answer contains conditions from a rule set's shared automata
+     * @param index Contains index, or null to test each condition directly
+     */
+    void bind(ContainsIndex index) {
+        if (index != containsIndex) {
+            containsIndex = index;
+            Arrays.fill(containsHits, null);
+        }
+    }
+
+    ContainsIndex containsIndex() {
+        return containsIndex;
+    }
+
+    /**
+     * Whether a pattern of the bound contains index occurs in the field; scans the field on first use
+     */
+    boolean containsHit(RuleField field, int patternId) {
+        BitSet hits = containsHits[field.ordinal()];
+        if (hits == null) {
+            hits = containsIndex.scan(field, this);
+            containsHits[field.ordinal()] = hits;
+        }
+        return hits.get(patternId);
+    }
+
+    /**
+     * Stream the message body through an automaton
+     * @return Ids of the patterns found; none if the body cannot be read
+     */
+    BitSet scanBody(AhoCorasick automaton) {
+        BitSet hits = new BitSet();
+        if (bodySource == null) {
+            automaton.scan("", hits);
+            return hits;
+        }
+        try (Reader reader = bodySource.open(message)) {
+            if (reader != null) {
+                automaton.scan(reader, hits);
+            } else {
+                automaton.scan("", hits);
+            }
+        } catch (IOException e) {
+            log.warn("Could not read body of message {} for rule evaluation: {}", message.getId(), e.getMessage());
+        }
+        return hits;
+    }
+
+    boolean hasMemo(int slot) {
+        return slot < memoSlots;
+    }
+
+    byte memo(int slot) {
+        return memo[slot];
+    }
+
+    void memo(int slot, boolean result) {
+        memo[slot] = result ? (byte) 1 : (byte) 2;
+    }
+
+    /**
+     * Split text into maximal runs of letters/digits
+     */
+    static String[] words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words.toArray(EMPTY);
+    }
+
+    static String lower(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Reduce "Display Name <user@host>" to a lower-cased bare address
+     */
+    static String normalizeAddress(String address) {
+        if (address == null) {
+            return "";
+        }
+        String trimmed = address.trim();
+        int open = trimmed.lastIndexOf('<');
+        int close = trimmed.lastIndexOf('>');
+        if (open >= 0 && close > open) {
+            trimmed = trimmed.substring(open + 1, close).trim();
+        }
+        return trimmed.toLowerCase(Locale.ROOT);
+    }
+
+    static String domainOf(String address) {
+        int at = address.lastIndexOf('@');
+        return at >= 0 ? address.substring(at + 1) : "";
+    }
+
+    static String[] parseAddressList(String addresses) {
+        if (addresses == null || addresses.isBlank()) {
+            return EMPTY;
+        }
+        List<String> parsed = new ArrayList<>();
+        for (String address : addresses.split(",")) {
+            String normalized = normalizeAddress(address);
+            if (!normalized.isEmpty()) {
+                parsed.add(normalized);
+            }
+        }
+        return parsed.toArray(EMPTY);
+    }
+
+    private static String[] concat(String[] first, String[] second) {
+        if (second.length == 0) {
+            return first;
+        }
+        if (first.length == 0) {
+            return second;
+        }
+        String[] combined = new String[first.length + second.length];
+        System.arraycopy(first, 0, combined, 0, first.length);
+        System.arraycopy(second, 0, combined, first.length, second.length);
+        return combined;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Rule.RuleType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory rule hit counters, flushed to the rules table in batches
+ * Recording a hit never touches the database. Flushes use plain SQL so the
+ * rule's @Version is not bumped and concurrent rule edits do not conflict.
+ */
+@Component
+@Slf4j
+public class RuleExecutionStats {
+
+    private static final String FLUSH_SQL =
+        "UPDATE rules SET execution_count = COALESCE(execution_count, 0) + ?, "
+            + "last_executed_at = CASE WHEN last_executed_at IS NULL OR last_executed_at < ? "
+            + "THEN ? ELSE last_executed_at END "
+            + "WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentHashMap<Long, RuleCounter> counters = new ConcurrentHashMap<>();
+    private final Map<RuleType, Counter> hitCounters = new EnumMap<>(RuleType.class);
+    private final Timer flushTimer;
+
+    public RuleExecutionStats(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        for (RuleType type : RuleType.values()) {
+            hitCounters.put(type, Counter.builder("email.rules.hits")
+                .description("Rule matches applied to messages")
+                .tag("type", type.name())
+                .register(meterRegistry));
+        }
+        this.flushTimer = Timer.builder("email.rules.stats.flush")
+            .description("Batched rule statistics flushes")
+            .register(meterRegistry);
+        Gauge.builder("email.rules.stats.pending", this, RuleExecutionStats::pendingHits)
+            .description("Rule hits not yet written to the database")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Record one execution of a rule
+     * @param rule Executed rule
+     */
+    public void record(CompiledRule rule) {
+        // Rules compiled from Sieve scripts have no row to flush to
+        if (rule.getRuleType() != RuleType.SIEVE) {
+            counters.computeIfAbsent(rule.getRuleId(), id -> new RuleCounter()).record(System.currentTimeMillis());
+        }
+        if (rule.getRuleType() != null) {
+            hitCounters.get(rule.getRuleType()).increment();
+        }
+    }
+
+    /**
+     * Drop pending statistics of a deleted rule
+     * @param ruleId Rule ID
+     */
+    public void forget(Long ruleId) {
+        counters.remove(ruleId);
+    }
+
+    /**
+     * Hits recorded since the last flush
+     */
+    public long pendingHits() {
+        long pending = 0;
+        for (RuleCounter counter : counters.values()) {
+            pending += counter.hits.sum();
+        }
+        return pending;
+    }
+
+    /**
+     * Write accumulated hits in one batched UPDATE
+     * @return Number of rules updated
+     */
+    @Scheduled(fixedDelayString = "${email.rules.stats.flush-interval-ms:10000}")
+    @PreDestroy
+    public int flush() {
+        List<Long> ruleIds = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>();
+        for (Map.Entry<Long, RuleCounter> entry : counters.entrySet()) {
+            RuleCounter counter = entry.getValue();
+            long hits = counter.hits.sumThenReset();
+            if (hits == 0) {
+                continue;
+            }
+            Timestamp lastExecuted = new Timestamp(counter.lastExecuted.getThenReset());
+            ruleIds.add(entry.getKey());
+            batch.add(new Object[] {hits, lastExecuted, lastExecuted, entry.getKey()});
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            flushTimer.record(() -> jdbcTemplate.batchUpdate(FLUSH_SQL, batch));
+            log.debug("Flushed execution statistics for {} rules", batch.size());
+            return batch.size();
+        } catch (DataAccessException e) {
+            // Put the hits back so the next flush retries them
+            for (int i = 0; i < batch.size(); i++) {
+                Object[] row = batch.get(i);
+                counters.computeIfAbsent(ruleIds.get(i), id -> new RuleCounter())
+                    .restore((Long) row[0], ((Timestamp) row[1]).getTime());
+            }
+            log.warn("Failed to flush rule execution statistics for {} rules: {}", batch.size(), e.getMessage());
+            return 0;
+        }
+    }
+
+    private static final class RuleCounter {
+        private final LongAdder hits = new LongAdder();
+        private final LongAccumulator lastExecuted = new LongAccumulator(Math::max, 0L);
+
+        void record(long now) {
+            hits.increment();
+            lastExecuted.accumulate(now);
+        }
+
+        void restore(long pendingHits, long executedAt) {
+            hits.add(pendingHits);
+            lastExecuted.accumulate(executedAt);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Message fields a rule condition can test
+ */
+public enum RuleField {
+    FROM("from", Kind.TEXT),
+    FROM_DOMAIN("fromDomain", Kind.TEXT),
+    TO("to", Kind.TEXT),
+    CC("cc", Kind.TEXT),
+    RECIPIENT("recipient", Kind.TEXT),
+    SUBJECT("subject", Kind.TEXT),
+    LIST_ID("listId", Kind.TEXT),
+    // Streamed from the stored MIME body; contains only
+    BODY("body", Kind.TEXT),
+    SIZE("size", Kind.NUMERIC),
+    SPAM_SCORE("spamScore", Kind.NUMERIC),
+    HAS_ATTACHMENTS("hasAttachments", Kind.BOOLEAN);
+
+    public enum Kind {
+        TEXT,
+        NUMERIC,
+        BOOLEAN
+    }
+
+    private static final Map<String, RuleField> BY_JSON_NAME = new HashMap<>();
+
+    static {
+        for (RuleField field : values()) {
+            BY_JSON_NAME.put(field.jsonName.toLowerCase(Locale.ROOT), field);
+        }
+    }
+
+    private final String jsonName;
+    private final Kind kind;
+
+    RuleField(String jsonName, Kind kind) {
+        this.jsonName = jsonName;
+        this.kind = kind;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Resolve a field from its conditionJson name (case-insensitive)
+     * @param name Field name
+     * @return Field, or null if unknown
+     */
+    public static RuleField fromJsonName(String name) {
+        return name == null ? null : BY_JSON_NAME.get(name.toLowerCase(Locale.ROOT));
+    }
+}
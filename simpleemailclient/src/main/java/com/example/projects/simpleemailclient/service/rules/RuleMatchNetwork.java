@@ -0,0 +1,216 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Discrimination index over a priority-ordered rule list.
+ * Each rule whose condition implies an exact from-address, sender domain,
+ * list-id or subject word is filed under that key; all other rules are
+ * always candidates. For a message only the candidate rules are evaluated,
+ * still in priority order, so results and stop semantics are unchanged.
+ */
+final class RuleMatchNetwork {
+
+    /**
+     * Message attributes rules can be indexed by, most specific first
+     */
+    enum KeyType {
+        FROM,
+        LIST_ID,
+        FROM_DOMAIN,
+        SUBJECT_WORD
+    }
+
+    private static final class Key {
+        final KeyType type;
+        final String value;
+
+        Key(KeyType type, String value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    private final Map<KeyType, Map<String, BitSet>> postings = new EnumMap<>(KeyType.class);
+    private final BitSet unindexed = new BitSet();
+    private final int indexedRules;
+
+    RuleMatchNetwork(List<CompiledRule> orderedRules) {
+        for (KeyType type : KeyType.values()) {
+            postings.put(type, new HashMap<>());
+        }
+        int indexed = 0;
+        for (int ordinal = 0; ordinal < orderedRules.size(); ordinal++) {
+            List<Key> keys = keysFor(orderedRules.get(ordinal).getCondition());
+            if (keys == null) {
+                unindexed.set(ordinal);
+                continue;
+            }
+            indexed++;
+            for (Key key : keys) {
+                postings.get(key.type).computeIfAbsent(key.value, v -> new BitSet()).set(ordinal);
+            }
+        }
+        this.indexedRules = indexed;
+    }
+
+    int getIndexedRuleCount() {
+        return indexedRules;
+    }
+
+    /**
+     * Ordinals of rules that may match the message; a superset of the matching rules
+     */
+    BitSet candidates(RuleEvaluationContext context) {
+        BitSet candidates = (BitSet) unindexed.clone();
+        if (indexedRules == 0) {
+            return candidates;
+        }
+        addPostings(candidates, KeyType.FROM, context.text(RuleField.FROM));
+        addPostings(candidates, KeyType.FROM_DOMAIN, context.text(RuleField.FROM_DOMAIN));
+        addPostings(candidates, KeyType.LIST_ID, context.text(RuleField.LIST_ID));
+        Map<String, BitSet> wordPostings = postings.get(KeyType.SUBJECT_WORD);
+        if (!wordPostings.isEmpty()) {
+            for (String word : context.subjectWords()) {
+                BitSet rules = wordPostings.get(word);
+                if (rules != null) {
+                    candidates.or(rules);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private void addPostings(BitSet candidates, KeyType type, String[] values) {
+        Map<String, BitSet> typePostings = postings.get(type);
+        for (String value : values) {
+            BitSet rules = typePostings.get(value);
+            if (rules != null) {
+                candidates.or(rules);
+            }
+        }
+    }
+
+    /**
+     * Keys such that the condition can only match if the message has at least one of them
+     * @return Keys, or null if the condition is not indexable
+     */
+    private static List<Key> keysFor(Condition condition) {
+        Condition node = Conditions.unwrap(condition);
+        if (node instanceof Conditions.Text) {
+            return keysForText((Conditions.Text) node);
+        }
+        if (node instanceof Conditions.AllOf) {
+            // Any one conjunct is a valid filter; use the most specific one
+            List<Key> best = null;
+            for (Condition child : ((Conditions.AllOf) node).getChildren()) {
+                List<Key> keys = keysFor(child);
+                if (keys != null && (best == null || rank(keys) < rank(best))) {
+                    best = keys;
+                }
+            }
+            return best;
+        }
+        if (node instanceof Conditions.AnyOf) {
+            // Every disjunct must be indexable
+            List<Key> union = new ArrayList<>();
+            for (Condition child : ((Conditions.AnyOf) node).getChildren()) {
+                List<Key> keys = keysFor(child);
+                if (keys == null) {
+                    return null;
+                }
+                union.addAll(keys);
+            }
+            return union;
+        }
+        return null;
+    }
+
+    private static List<Key> keysForText(Conditions.Text text) {
+        List<Key> keys = new ArrayList<>();
+        for (String operand : text.getOperands()) {
+            Key key = keyForOperand(text.getField(), text.getOperator(), operand);
+            if (key == null) {
+                return null;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private static Key keyForOperand(RuleField field, TextOperator operator, String operand) {
+        switch (field) {
+            case FROM:
+                if (operator == TextOperator.EQUALS) {
+                    return new Key(KeyType.FROM, operand);
+                }
+                // endsWith "@example.com" pins the sender domain
+                if (operator == TextOperator.ENDS_WITH && operand.lastIndexOf('@') == 0 && operand.length() > 1) {
+                    return new Key(KeyType.FROM_DOMAIN, operand.substring(1));
+                }
+                return null;
+            case FROM_DOMAIN:
+                return operator == TextOperator.EQUALS ? new Key(KeyType.FROM_DOMAIN, operand) : null;
+            case LIST_ID:
+                return operator == TextOperator.EQUALS ? new Key(KeyType.LIST_ID, operand) : null;
+            case SUBJECT:
+                String word = subjectWordFor(operator, operand);
+                return word != null ? new Key(KeyType.SUBJECT_WORD, word) : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * A word of the operand guaranteed to be a whole subject word whenever the condition holds.
+     * For hasWord every word qualifies; for contains only words bounded by separators inside
+     * the operand qualify, since the operand's first and last words may be parts of longer words.
+     */
+    static String subjectWordFor(TextOperator operator, String operand) {
+        if (operator == TextOperator.HAS_WORD || operator == TextOperator.EQUALS) {
+            String[] words = RuleEvaluationContext.words(operand);
+            return longest(words, 0, words.length);
+        }
+        if (operator != TextOperator.CONTAINS && operator != TextOperator.STARTS_WITH
+                && operator != TextOperator.ENDS_WITH) {
+            return null;
+        }
+        String[] words = RuleEvaluationContext.words(operand);
+        if (words.length == 0) {
+            return null;
+        }
+        boolean firstBounded = operator == TextOperator.STARTS_WITH
+            || !Character.isLetterOrDigit(operand.charAt(0));
+        boolean lastBounded = operator == TextOperator.ENDS_WITH
+            || !Character.isLetterOrDigit(operand.charAt(operand.length() - 1));
+        int from = firstBounded ? 0 : 1;
+        int to = lastBounded ? words.length : words.length - 1;
+        return longest(words, from, to);
+    }
+
+    private static String longest(String[] words, int from, int to) {
+        String longest = null;
+        for (int i = from; i < to; i++) {
+            if (longest == null || words[i].length() > longest.length()) {
+                longest = words[i];
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Lower is more selective: fewer keys first, then the least specific key type
+     */
+    private static int rank(List<Key> keys) {
+        int leastSpecific = 0;
+        for (Key key : keys) {
+            leastSpecific = Math.max(leastSpecific, key.type.ordinal());
+        }
+        return keys.size() * KeyType.values().length + leastSpecific;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Per-user cache of compiled rule sets
+ * Evaluating a cached user's rules needs no DB access and no JSON parsing.
+ * A load first puts a placeholder entry and installs its set only if that
+ * placeholder is still there; every rule mutation removes the user's entry, so
+ * a set compiled from rows read before an invalidation is never installed.
+ * The map holds one entry per cached or loading user and is bounded by
+ * max-users.
+ */
+@Component
+@Slf4j
+public class RuleSetCache {
+
+    private final ConcurrentHashMap<Long, Entry> ruleSets = new ConcurrentHashMap<>();
+
+    @Value("${email.rules.cache.max-users:100000}")
+    private int maxUsers = 100000;
+
+    /**
+     * Get the compiled rule set for a user, loading and compiling on a miss
+     * @param userId User ID
+     * @param loader Loads and compiles the user's active rules and Sieve script
+     * @return Compiled rule set
+     */
+    public CompiledRuleSet get(Long userId, Function<Long, CompiledRuleSet> loader) {
+        Entry cached = ruleSets.get(userId);
+        if (cached != null && cached.ruleSet != null) {
+            return cached.ruleSet;
+        }
+
+        evictIfFull();
+        Entry loading = new Entry(null);
+        Entry current = ruleSets.compute(userId, (id, entry) ->
+            entry != null && entry.ruleSet != null ? entry : loading);
+        if (current != loading) {
+            return current.ruleSet;
+        }
+        CompiledRuleSet compiled;
+        try {
+            compiled = loader.apply(userId);
+        } catch (RuntimeException e) {
+            ruleSets.remove(userId, loading);
+            throw e;
+        }
+
+        // Entries compare by identity: an invalidation or eviction since the load began wins
+        ruleSets.replace(userId, loading, new Entry(compiled));
+        log.debug("Compiled {} rules for user {}", compiled.getRules().size(), userId);
+        return compiled;
+    }
+
+    /**
+     * Drop a user's compiled rules now and again after the current transaction
+     * commits, so a concurrent reload cannot cache pre-commit rows
+     * @param userId User ID
+     */
+    public void invalidate(Long userId) {
+        ruleSets.remove(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ruleSets.remove(userId);
+                }
+            });
+        }
+    }
+
+    int size() {
+        return ruleSets.size();
+    }
+
+    private void evictIfFull() {
+        if (ruleSets.size() < maxUsers) {
+            return;
+        }
+        // Approximate eviction: drop an arbitrary tenth; sets are cheap to recompile
+        Iterator<Long> userIds = ruleSets.keySet().iterator();
+        for (int i = 0; i < Math.max(1, maxUsers / 10) && userIds.hasNext(); i++) {
+            userIds.next();
+            userIds.remove();
+        }
+    }
+
+    /**
+     * A cached set, or with a null set a load in progress
+     */
+    private static final class Entry {
+
+        final CompiledRuleSet ruleSet;
+
+        Entry(CompiledRuleSet ruleSet) {
+            this.ruleSet = ruleSet;
+        }
+    }
+}
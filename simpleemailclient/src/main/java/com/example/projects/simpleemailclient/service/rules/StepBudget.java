@@ -0,0 +1,59 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+/**
+ * Evaluation work allowed for one message, in abstract steps
+ * A step is roughly one character compared by one condition or one regex
+ * thread advanced by one character, so the limit bounds CPU time per
+ * message independently of what the rules contain.
+ */
+final class StepBudget {
+
+    static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final long limit;
+    private long used;
+    private boolean exceeded;
+
+    StepBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Consume steps
+     * @throws Exhausted once the budget is used up, abandoning the condition being evaluated
+     */
+    void charge(long steps) {
+        if (exceeded) {
+            throw new Exhausted();
+        }
+        used += steps;
+        if (used > limit) {
+            exceeded = true;
+            throw new Exhausted();
+        }
+    }
+
+    boolean isExceeded() {
+        return exceeded;
+    }
+
+    long getUsed() {
+        return used;
+    }
+
+    long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Unwinds a condition tree whose evaluation ran out of budget
+     * Thrown rather than returned as false so that no "not", "allof" or "anyof" can
+     * decide anything from a sub-condition that never finished.
+     */
+    static final class Exhausted extends RuntimeException {
+
+        Exhausted() {
+            super("Rule evaluation budget exceeded", null, false, false);
+        }
+    }
+}
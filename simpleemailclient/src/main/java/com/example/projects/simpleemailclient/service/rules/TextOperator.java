@@ -0,0 +1,76 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+/**
+ * Operators for text conditions
+ * Operands are lower-cased at compile time and fields at context creation,
+ * so matching is case-insensitive without per-evaluation folding
+ */
+public enum TextOperator {
+    EQUALS("equals"),
+    CONTAINS("contains"),
+    STARTS_WITH("startsWith"),
+    ENDS_WITH("endsWith"),
+    HAS_WORD("hasWord"),
+    MATCHES("matches");
+
+    private final String jsonName;
+
+    TextOperator(String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    /**
+     * Test a literal operand against a field value. MATCHES is handled by the
+     * condition itself using its precompiled pattern.
+     */
+    boolean test(String value, String operand) {
+        switch (this) {
+            case EQUALS:
+                return value.equals(operand);
+            case CONTAINS:
+                return value.contains(operand);
+            case STARTS_WITH:
+                return value.startsWith(operand);
+            case ENDS_WITH:
+                return value.endsWith(operand);
+            case HAS_WORD:
+                return containsWord(value, operand);
+            default:
+                throw new IllegalStateException("Operator " + this + " has no literal test");
+        }
+    }
+
+    /**
+     * Whether operand occurs in value bounded by non-alphanumerics on both sides
+     */
+    static boolean containsWord(String value, String operand) {
+        if (operand.isEmpty()) {
+            return false;
+        }
+        int from = 0;
+        int at;
+        while ((at = value.indexOf(operand, from)) >= 0) {
+            int end = at + operand.length();
+            boolean startsWord = at == 0 || !Character.isLetterOrDigit(value.charAt(at - 1));
+            boolean endsWord = end == value.length() || !Character.isLetterOrDigit(value.charAt(end));
+            if (startsWord && endsWord) {
+                return true;
+            }
+            from = at + 1;
+        }
+        return false;
+    }
+
+    public static TextOperator fromJsonName(String name) {
+        for (TextOperator operator : values()) {
+            if (operator.jsonName.equalsIgnoreCase(name)) {
+                return operator;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limiter whose rate follows downstream latency (additive increase, multiplicative decrease)
+ * Workers reserve permits before each batch and report how long the database read and the
+ * index write took. While the smoothed latencies stay under their targets the rate grows by a
+ * fixed step; as soon as either exceeds its target the rate is cut, so a slow database or a
+ * saturated index cluster pushes back within a few batches. Shared by all workers of a node.
+ */
+public final class AdaptiveThrottle {
+
+    private static final double SMOOTHING = 0.3;
+    private static final double DECREASE_FACTOR = 0.7;
+    private static final int INCREASE_STEPS = 50;
+
+    private final double minRate;
+    private final double maxRate;
+    private final double increaseStep;
+    private final long dbTargetNanos;
+    private final long indexTargetNanos;
+    private final LongSupplier nanoClock;
+
+    private double rate;
+    private long nextFreeNanos;
+    private double dbLatencyNanos;
+    private double indexLatencyNanos;
+
+    /**
+     * @param minRate Lowest rate in permits per second
+     * @param maxRate Highest rate in permits per second; also the starting rate's ceiling
+     * @param dbTargetMillis Smoothed database latency per batch to stay under
+     * @param indexTargetMillis Smoothed index latency per batch to stay under
+     */
+    public AdaptiveThrottle(double minRate, double maxRate, long dbTargetMillis, long indexTargetMillis) {
+        this(minRate, maxRate, dbTargetMillis, indexTargetMillis, System::nanoTime);
+    }
+
+    AdaptiveThrottle(double minRate, double maxRate, long dbTargetMillis, long indexTargetMillis, LongSupplier nanoClock) {
+        if (minRate <= 0 || maxRate < minRate) {
+            throw new IllegalArgumentException("Invalid throttle range " + minRate + ".." + maxRate);
+        }
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increaseStep = (maxRate - minRate) / INCREASE_STEPS;
+        this.dbTargetNanos = TimeUnit.MILLISECONDS.toNanos(dbTargetMillis);
+        this.indexTargetNanos = TimeUnit.MILLISECONDS.toNanos(indexTargetMillis);
+        this.nanoClock = nanoClock;
+        // Start low and ramp up rather than hitting a cold cluster at full rate
+        this.rate = Math.max(minRate, maxRate / 4);
+        this.nextFreeNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Block until the permits are available at the current rate
+     */
+    public void acquire(int permits) throws InterruptedException {
+        long waitNanos = reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Reserve permits
+     * @return Nanoseconds the caller has to wait before using them
+     */
+    synchronized long reserve(int permits) {
+        long now = nanoClock.getAsLong();
+        long start = Math.max(now, nextFreeNanos);
+        nextFreeNanos = start + (long) (permits / rate * 1_000_000_000L);
+        return start - now;
+    }
+
+    /**
+     * Report the latencies of one batch and adjust the rate
+     */
+    public synchronized void record(long dbNanos, long indexNanos) {
+        dbLatencyNanos = dbLatencyNanos == 0 ? dbNanos : dbLatencyNanos + SMOOTHING * (dbNanos - dbLatencyNanos);
+        indexLatencyNanos = indexLatencyNanos == 0 ? indexNanos
+            : indexLatencyNanos + SMOOTHING * (indexNanos - indexLatencyNanos);
+        if (dbLatencyNanos > dbTargetNanos || indexLatencyNanos > indexTargetNanos) {
+            rate = Math.max(minRate, rate * DECREASE_FACTOR);
+        } else {
+            rate = Math.min(maxRate, rate + increaseStep);
+        }
+    }
+
+    /**
+     * Current rate in permits per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized long getDbLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis((long) dbLatencyNanos);
+    }
+
+    public synchronized long getIndexLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis((long) indexLatencyNanos);
+    }
+}
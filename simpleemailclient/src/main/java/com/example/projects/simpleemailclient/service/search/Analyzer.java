@@ -0,0 +1,80 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Splits text into index terms: lower-cased maximal runs of letters and digits
+ * Addresses therefore index as their parts ("alice@example.com" gives alice, example, com).
+ * Runs longer than MAX_TOKEN_LENGTH are dropped; they are almost always encoded data.
+ */
+public final class Analyzer {
+
+    static final int MAX_TOKEN_LENGTH = 40;
+
+    private Analyzer() {
+    }
+
+    public static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text != null) {
+            Tokenizer tokenizer = new Tokenizer(tokens::add);
+            for (int i = 0; i < text.length(); i++) {
+                tokenizer.accept(text.charAt(i));
+            }
+            tokenizer.finish();
+        }
+        return tokens;
+    }
+
+    /**
+     * Tokenize streamed text
+     * @param maxChars Characters to read at most
+     */
+    public static void tokens(Reader reader, long maxChars, Consumer<String> sink) throws IOException {
+        Tokenizer tokenizer = new Tokenizer(sink);
+        char[] buffer = new char[8192];
+        long remaining = maxChars;
+        int read;
+        while (remaining > 0 && (read = reader.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+            for (int i = 0; i < read; i++) {
+                tokenizer.accept(buffer[i]);
+            }
+            remaining -= read;
+        }
+        tokenizer.finish();
+    }
+
+    private static final class Tokenizer {
+        private final Consumer<String> sink;
+        private final StringBuilder token = new StringBuilder();
+        private boolean overlong;
+
+        Tokenizer(Consumer<String> sink) {
+            this.sink = sink;
+        }
+
+        void accept(char c) {
+            if (Character.isLetterOrDigit(c)) {
+                if (token.length() < MAX_TOKEN_LENGTH) {
+                    token.append(Character.toLowerCase(c));
+                } else {
+                    overlong = true;
+                }
+            } else {
+                finish();
+            }
+        }
+
+        void finish() {
+            if (token.length() > 0 && !overlong) {
+                sink.accept(token.toString());
+            }
+            token.setLength(0);
+            overlong = false;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.service.storage.MessageContentStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Ranged reads of stored messages, decompressed
+ */
+@Component
+@RequiredArgsConstructor
+public class BlobMimeRangeSource implements MimeRangeSource {
+
+    private final MessageContentStore messageContentStore;
+
+    @Override
+    public InputStream openRange(String mimePointer, long offset, long length) throws IOException {
+        return messageContentStore.openRange(mimePointer, offset, length);
+    }
+}
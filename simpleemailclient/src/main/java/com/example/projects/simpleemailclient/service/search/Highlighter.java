@@ -0,0 +1,169 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the passage of a text that best covers a query's terms and marks the matches
+ * Text is split into words with the Analyzer's rules, so a passage matches exactly the
+ * terms the index matched. The passage is the window of at most maxChars that contains
+ * the most distinct terms, then the most matches. Output is HTML: the text is escaped
+ * and every match is wrapped in &lt;em&gt;.
+ */
+public final class Highlighter {
+
+    public static final String OPEN = "<em>";
+    public static final String CLOSE = "</em>";
+    private static final String ELLIPSIS = "\u2026";
+    private static final int LEAD_CHARS = 30;
+
+    private Highlighter() {
+    }
+
+    /**
+     * @param terms Lower-cased query terms, as produced by Analyzer.tokens
+     * @return Highlighted passage, or null if no term occurs in the text
+     */
+    public static String highlight(String text, List<String> terms, int maxChars) {
+        if (text == null || text.isEmpty() || terms.isEmpty()) {
+            return null;
+        }
+        Map<String, Integer> termIds = new HashMap<>();
+        for (String term : terms) {
+            termIds.putIfAbsent(term, termIds.size());
+        }
+        List<int[]> matches = matches(text, termIds);
+        if (matches.isEmpty()) {
+            return null;
+        }
+
+        // Sliding window over matches: most distinct terms, then most matches
+        int[] counts = new int[termIds.size()];
+        int distinct = 0;
+        int bestFirst = 0;
+        int bestDistinct = -1;
+        int bestCount = -1;
+        int first = 0;
+        for (int last = 0; last < matches.size(); last++) {
+            if (counts[matches.get(last)[2]]++ == 0) {
+                distinct++;
+            }
+            while (matches.get(last)[1] - matches.get(first)[0] > maxChars) {
+                if (--counts[matches.get(first)[2]] == 0) {
+                    distinct--;
+                }
+                first++;
+            }
+            int count = last - first + 1;
+            if (distinct > bestDistinct || distinct == bestDistinct && count > bestCount) {
+                bestDistinct = distinct;
+                bestCount = count;
+                bestFirst = first;
+            }
+        }
+
+        int start = Math.max(0, matches.get(bestFirst)[0] - LEAD_CHARS);
+        if (start > 0) {
+            // Begin at a word
+            int space = text.indexOf(' ', start);
+            start = space >= 0 && space < matches.get(bestFirst)[0] ? space + 1 : matches.get(bestFirst)[0];
+        }
+        int end = Math.min(text.length(), start + maxChars);
+        if (end < text.length()) {
+            int space = text.lastIndexOf(' ', end);
+            if (space > start) {
+                end = space;
+            }
+        }
+
+        StringBuilder out = new StringBuilder(maxChars + 64);
+        if (start > 0) {
+            out.append(ELLIPSIS);
+        }
+        int position = start;
+        for (int i = bestFirst; i < matches.size() && matches.get(i)[1] <= end; i++) {
+            int[] match = matches.get(i);
+            escape(text, position, match[0], out);
+            out.append(OPEN);
+            escape(text, match[0], match[1], out);
+            out.append(CLOSE);
+            position = match[1];
+        }
+        escape(text, position, end, out);
+        if (end < text.length()) {
+            out.append(ELLIPSIS);
+        }
+        return out.toString();
+    }
+
+    /**
+     * The start of a text, escaped, for results without a passage to show
+     */
+    public static String plain(String text, int maxChars) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder();
+        int end = Math.min(text.length(), maxChars);
+        escape(text, 0, end, out);
+        if (end < text.length()) {
+            out.append(ELLIPSIS);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Positions of the words that are terms: {start, end, term id}
+     */
+    private static List<int[]> matches(String text, Map<String, Integer> termIds) {
+        List<int[]> matches = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (start < 0) {
+                    start = i;
+                    word.setLength(0);
+                }
+                if (word.length() <= Analyzer.MAX_TOKEN_LENGTH) {
+                    word.append(Character.toLowerCase(c));
+                }
+            } else if (start >= 0) {
+                Integer id = word.length() <= Analyzer.MAX_TOKEN_LENGTH ? termIds.get(word.toString()) : null;
+                if (id != null) {
+                    matches.add(new int[] {start, i, id});
+                }
+                start = -1;
+            }
+        }
+        return matches;
+    }
+
+    private static void escape(String text, int from, int to, StringBuilder out) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                case '\'':
+                    out.append("&#39;");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,613 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * One user's index: immutable on-disk segments plus an in-memory buffer of recent documents
+ * Writers hold the partition lock only to update the buffer and delete sets; a search takes a
+ * snapshot under the lock and then reads without it. The buffer is searchable immediately
+ * and is written out as a new segment on flush. Merges run outside the lock and are swapped
+ * in atomically, carrying over deletes that happened meanwhile.
+ *
+ * The commit file lists the live segments and the generation of each one's delete set, and
+ * is replaced atomically, so a crash leaves the last committed state; unreferenced files are
+ * removed on open.
+ */
+public final class IndexPartition {
+
+    static final String COMMIT_FILE = "segments";
+    static final String SAVED_SEARCHES_FILE = "saved-searches.properties";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String DELETES_SUFFIX = ".del";
+
+    // BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Path directory;
+    private final List<Entry> segments = new ArrayList<>();
+    private final TreeMap<Long, IndexedDocument> pending = new TreeMap<>();
+    private Segment pendingSegment;
+    private long generation;
+    private boolean dirty;
+    private boolean merging;
+    private boolean closed;
+
+    private IndexPartition(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Open or create the partition stored in a directory
+     */
+    public static IndexPartition open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        IndexPartition partition = new IndexPartition(directory);
+        partition.load();
+        return partition;
+    }
+
+    private void load() throws IOException {
+        Path commit = directory.resolve(COMMIT_FILE);
+        Set<String> referenced = new HashSet<>(Set.of(COMMIT_FILE, SAVED_SEARCHES_FILE));
+        if (Files.exists(commit)) {
+            List<String> lines = Files.readAllLines(commit, StandardCharsets.UTF_8);
+            generation = Long.parseLong(lines.get(0).trim());
+            for (String line : lines.subList(1, lines.size())) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] parts = line.trim().split(" ");
+                Entry entry = new Entry(Segment.open(directory.resolve(parts[0] + SEGMENT_SUFFIX)), new BitSet());
+                entry.deletesGeneration = Long.parseLong(parts[1]);
+                referenced.add(parts[0] + SEGMENT_SUFFIX);
+                if (entry.deletesGeneration > 0) {
+                    String deletes = deletesFile(parts[0], entry.deletesGeneration);
+                    entry.deleted = BitSet.valueOf(Files.readAllBytes(directory.resolve(deletes)));
+                    referenced.add(deletes);
+                }
+                segments.add(entry);
+            }
+        }
+        // Leftovers of a flush or merge that never committed
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!referenced.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add or replace a document
+     */
+    public synchronized void add(IndexedDocument document) {
+        checkOpen();
+        deleteFromSegments(document.getMessageId());
+        pending.put(document.getMessageId(), document);
+        pendingSegment = null;
+    }
+
+    public synchronized void delete(long messageId) {
+        checkOpen();
+        if (pending.remove(messageId) != null) {
+            pendingSegment = null;
+        }
+        deleteFromSegments(messageId);
+    }
+
+    private void deleteFromSegments(long messageId) {
+        for (Entry entry : segments) {
+            int doc = entry.segment.findDoc(messageId);
+            if (doc >= 0 && !entry.deleted.get(doc)) {
+                entry.deleted.set(doc);
+                entry.deletesDirty = true;
+                dirty = true;
+            }
+        }
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Write buffered documents as a new segment and commit pending deletes
+     */
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (!pending.isEmpty()) {
+            String name = nextSegmentName();
+            Path file = directory.resolve(name + SEGMENT_SUFFIX);
+            writeAtomically(file, SegmentWriter.write(new ArrayList<>(pending.values())));
+            segments.add(new Entry(Segment.open(file), new BitSet()));
+            pending.clear();
+            pendingSegment = null;
+            dirty = true;
+        }
+        if (dirty) {
+            commit();
+        }
+    }
+
+    /**
+     * Drop all documents; saved searches are kept
+     */
+    public synchronized void clear() throws IOException {
+        checkOpen();
+        List<Entry> dropped = new ArrayList<>(segments);
+        segments.clear();
+        pending.clear();
+        pendingSegment = null;
+        commit();
+        for (Entry entry : dropped) {
+            deleteFiles(entry);
+        }
+    }
+
+    /**
+     * Flush and stop accepting writes; in-flight searches keep their snapshot
+     */
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            flush();
+            closed = true;
+        }
+    }
+
+    /**
+     * Merge the smallest segments once there are at least mergeFactor of them
+     * @param maxSegmentBytes Segments are only merged while the result stays below this size
+     * @return true if a merge was done
+     */
+    public boolean maybeMerge(int mergeFactor, long maxSegmentBytes) throws IOException {
+        MergeSpec spec = planMerge(mergeFactor, maxSegmentBytes);
+        if (spec == null) {
+            return false;
+        }
+        Path file = null;
+        try {
+            List<Segment> sources = new ArrayList<>();
+            for (Entry entry : spec.sources) {
+                sources.add(entry.segment);
+            }
+            ByteBuffer merged = SegmentWriter.merge(sources, spec.deletedAtStart);
+            file = directory.resolve(nextSegmentName() + SEGMENT_SUFFIX);
+            writeAtomically(file, merged);
+            boolean committed = commitMerge(spec, Segment.open(file));
+            if (!committed) {
+                Files.deleteIfExists(file);
+            }
+            return committed;
+        } catch (IOException | RuntimeException e) {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+            throw e;
+        } finally {
+            synchronized (this) {
+                merging = false;
+            }
+        }
+    }
+
+    private synchronized MergeSpec planMerge(int mergeFactor, long maxSegmentBytes) {
+        if (closed || merging || segments.size() < mergeFactor) {
+            return null;
+        }
+        List<Entry> bySize = new ArrayList<>(segments);
+        bySize.sort(Comparator.comparingInt(entry -> entry.segment.sizeBytes()));
+        List<Entry> sources = new ArrayList<>();
+        long bytes = 0;
+        for (Entry entry : bySize) {
+            if (sources.size() == mergeFactor || bytes + entry.segment.sizeBytes() > maxSegmentBytes) {
+                break;
+            }
+            sources.add(entry);
+            bytes += entry.segment.sizeBytes();
+        }
+        if (sources.size() < 2) {
+            return null;
+        }
+        List<BitSet> deleted = new ArrayList<>(sources.size());
+        for (Entry entry : sources) {
+            deleted.add((BitSet) entry.deleted.clone());
+        }
+        merging = true;
+        return new MergeSpec(sources, deleted);
+    }
+
+    private synchronized boolean commitMerge(MergeSpec spec, Segment merged) throws IOException {
+        if (closed || !segments.containsAll(spec.sources)) {
+            // Cleared or closed while merging
+            return false;
+        }
+        // Deletes that arrived while the merge ran
+        BitSet deleted = new BitSet();
+        for (int s = 0; s < spec.sources.size(); s++) {
+            Entry source = spec.sources.get(s);
+            BitSet arrived = (BitSet) source.deleted.clone();
+            arrived.andNot(spec.deletedAtStart.get(s));
+            for (int doc = arrived.nextSetBit(0); doc >= 0; doc = arrived.nextSetBit(doc + 1)) {
+                int mergedDoc = merged.findDoc(source.segment.messageId(doc));
+                if (mergedDoc >= 0) {
+                    deleted.set(mergedDoc);
+                }
+            }
+        }
+        Entry entry = new Entry(merged, deleted);
+        entry.deletesDirty = !deleted.isEmpty();
+        int position = segments.indexOf(spec.sources.get(0));
+        segments.removeAll(spec.sources);
+        segments.add(Math.min(position, segments.size()), entry);
+        commit();
+        for (Entry source : spec.sources) {
+            deleteFiles(source);
+        }
+        return true;
+    }
+
+    /**
+     * Find matching documents
+     * @param offset Matches to skip in rank order
+     * @param limit Matches to return at most
+     */
+    public Hits search(SearchQuery query, int offset, int limit) {
+        if (query.matchesNothing()) {
+            return new Hits(0, List.of());
+        }
+        List<Segment> snapshot = new ArrayList<>();
+        List<BitSet> deletes = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : segments) {
+                snapshot.add(entry.segment);
+                deletes.add((BitSet) entry.deleted.clone());
+            }
+            if (!pending.isEmpty()) {
+                if (pendingSegment == null) {
+                    pendingSegment = new Segment("pending", SegmentWriter.write(new ArrayList<>(pending.values())));
+                }
+                snapshot.add(pendingSegment);
+                deletes.add(new BitSet());
+            }
+        }
+        return search(query, offset, limit, snapshot, deletes);
+    }
+
+    private static Hits search(SearchQuery query, int offset, int limit, List<Segment> segments, List<BitSet> deletes) {
+        List<byte[]> terms = query.termBytes();
+        long totalDocs = 0;
+        long liveDocs = 0;
+        long sumLength = 0;
+        int[][] termNumbers = new int[segments.size()][terms.size()];
+        long[] docFreqs = new long[terms.size()];
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            totalDocs += segment.docCount();
+            liveDocs += segment.docCount() - deletes.get(s).cardinality();
+            sumLength += segment.sumDocLength();
+            for (int t = 0; t < terms.size(); t++) {
+                termNumbers[s][t] = segment.findTerm(terms.get(t));
+                if (termNumbers[s][t] >= 0) {
+                    docFreqs[t] += segment.docFreq(termNumbers[s][t]);
+                }
+            }
+        }
+        double averageLength = totalDocs > 0 ? Math.max(1.0, (double) sumLength / totalDocs) : 1.0;
+        double[] idf = new double[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            idf[t] = Math.log(1 + (liveDocs - docFreqs[t] + 0.5) / (docFreqs[t] + 0.5));
+        }
+
+        int wanted = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        // Worst hit first, so the heap keeps the best `wanted`
+        PriorityQueue<Candidate> top = new PriorityQueue<>(Candidate.RANK.reversed());
+        long total = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            BitSet deleted = deletes.get(s);
+            if (terms.isEmpty()) {
+                for (int doc = deleted.nextClearBit(0); doc < segment.docCount(); doc = deleted.nextClearBit(doc + 1)) {
+                    if (query.inRange(segment.dateMillis(doc)) && query.allows(segment.messageId(doc))) {
+                        total++;
+                        offer(top, wanted, new Candidate(0, segment.dateMillis(doc), segment.messageId(doc), s, doc));
+                    }
+                }
+                continue;
+            }
+            total += searchSegment(query, segment, s, deleted, termNumbers[s], idf, averageLength, top, wanted);
+        }
+
+        List<Candidate> ranked = new ArrayList<>(top);
+        ranked.sort(Candidate.RANK);
+        List<SearchHit> hits = new ArrayList<>();
+        for (int i = offset; i < ranked.size(); i++) {
+            Candidate candidate = ranked.get(i);
+            Segment segment = segments.get(candidate.segment);
+            String[] stored = segment.stored(candidate.doc);
+            hits.add(new SearchHit(candidate.messageId, stored[0], stored[1],
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(candidate.dateMillis), ZoneOffset.UTC), stored[2],
+                terms.isEmpty() ? null : candidate.score));
+        }
+        return new Hits(total, hits);
+    }
+
+    /**
+     * Intersect the query's postings in one segment, rarest term first
+     * @return Number of matches in the segment
+     */
+    private static long searchSegment(SearchQuery query, Segment segment, int segmentIndex, BitSet deleted,
+                                      int[] termNumbers, double[] idf, double averageLength,
+                                      PriorityQueue<Candidate> top, int wanted) {
+        int terms = termNumbers.length;
+        Segment.Postings[] postings = new Segment.Postings[terms];
+        for (int t = 0; t < terms; t++) {
+            if (termNumbers[t] < 0) {
+                return 0;
+            }
+            postings[t] = segment.postings(termNumbers[t]);
+        }
+        Integer[] order = new Integer[terms];
+        for (int t = 0; t < terms; t++) {
+            order[t] = t;
+        }
+        Arrays.sort(order, Comparator.comparingInt(t -> postings[t].size()));
+
+        Segment.Postings lead = postings[order[0]];
+        int[] cursors = new int[terms];
+        long matches = 0;
+        candidates:
+        for (int i = 0; i < lead.size(); i++) {
+            int doc = lead.doc(i);
+            cursors[order[0]] = i;
+            for (int k = 1; k < terms; k++) {
+                int t = order[k];
+                cursors[t] = postings[t].advance(cursors[t], doc);
+                if (cursors[t] >= postings[t].size()) {
+                    break candidates;
+                }
+                if (postings[t].doc(cursors[t]) != doc) {
+                    continue candidates;
+                }
+            }
+            if (deleted.get(doc) || !query.inRange(segment.dateMillis(doc)) || !query.allows(segment.messageId(doc))) {
+                continue;
+            }
+            double norm = K1 * (1 - B + B * segment.length(doc) / averageLength);
+            double score = 0;
+            for (int t = 0; t < terms; t++) {
+                int freq = postings[t].freq(cursors[t]);
+                score += idf[t] * freq * (K1 + 1) / (freq + norm);
+            }
+            matches++;
+            offer(top, wanted,
+                new Candidate(score, segment.dateMillis(doc), segment.messageId(doc), segmentIndex, doc));
+        }
+        return matches;
+    }
+
+    private static void offer(PriorityQueue<Candidate> top, int wanted, Candidate candidate) {
+        if (wanted <= 0) {
+            return;
+        }
+        if (top.size() < wanted) {
+            top.add(candidate);
+        } else if (Candidate.RANK.compare(candidate, top.peek()) < 0) {
+            top.poll();
+            top.add(candidate);
+        }
+    }
+
+    public synchronized void saveSearch(String name, String query) throws IOException {
+        Properties searches = readSavedSearches();
+        searches.setProperty(name, query);
+        Path file = directory.resolve(SAVED_SEARCHES_FILE);
+        Path temp = directory.resolve(SAVED_SEARCHES_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            searches.store(out, null);
+        }
+        move(temp, file);
+    }
+
+    public synchronized Map<String, String> savedSearches() throws IOException {
+        Properties searches = readSavedSearches();
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String name : new TreeSet<>(searches.stringPropertyNames())) {
+            result.put(name, searches.getProperty(name));
+        }
+        return result;
+    }
+
+    private Properties readSavedSearches() throws IOException {
+        Properties searches = new Properties();
+        Path file = directory.resolve(SAVED_SEARCHES_FILE);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                searches.load(in);
+            }
+        }
+        return searches;
+    }
+
+    private void commit() throws IOException {
+        long commitGeneration = ++generation;
+        List<Entry> written = new ArrayList<>();
+        StringBuilder commit = new StringBuilder().append(commitGeneration).append('\n');
+        for (Entry entry : segments) {
+            if (entry.deletesDirty) {
+                writeAtomically(directory.resolve(deletesFile(baseName(entry.segment), commitGeneration)),
+                    ByteBuffer.wrap(entry.deleted.toByteArray()));
+                written.add(entry);
+            }
+            long deletesGeneration = entry.deletesDirty ? commitGeneration : entry.deletesGeneration;
+            commit.append(baseName(entry.segment)).append(' ').append(deletesGeneration).append('\n');
+        }
+        writeAtomically(directory.resolve(COMMIT_FILE), ByteBuffer.wrap(commit.toString().getBytes(StandardCharsets.UTF_8)));
+        for (Entry entry : written) {
+            if (entry.deletesGeneration > 0) {
+                Files.deleteIfExists(directory.resolve(deletesFile(baseName(entry.segment), entry.deletesGeneration)));
+            }
+            entry.deletesGeneration = commitGeneration;
+            entry.deletesDirty = false;
+        }
+        dirty = false;
+    }
+
+    private void deleteFiles(Entry entry) throws IOException {
+        Files.deleteIfExists(directory.resolve(entry.segment.getName()));
+        if (entry.deletesGeneration > 0) {
+            Files.deleteIfExists(directory.resolve(deletesFile(baseName(entry.segment), entry.deletesGeneration)));
+        }
+    }
+
+    private synchronized String nextSegmentName() {
+        return "seg-" + (++generation);
+    }
+
+    private static String baseName(Segment segment) {
+        String name = segment.getName();
+        return name.endsWith(SEGMENT_SUFFIX) ? name.substring(0, name.length() - SEGMENT_SUFFIX.length()) : name;
+    }
+
+    private static String deletesFile(String baseName, long deletesGeneration) {
+        return baseName + "_" + deletesGeneration + DELETES_SUFFIX;
+    }
+
+    /**
+     * Write to a temporary file, force it to disk and rename it into place
+     */
+    private static void writeAtomically(Path file, ByteBuffer content) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer source = content.duplicate();
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+            channel.force(true);
+        }
+        move(temp, file);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Index partition " + directory + " is closed");
+        }
+    }
+
+    /**
+     * Committed segment and its delete set
+     */
+    private static final class Entry {
+        final Segment segment;
+        BitSet deleted;
+        long deletesGeneration;
+        boolean deletesDirty;
+
+        Entry(Segment segment, BitSet deleted) {
+            this.segment = segment;
+            this.deleted = deleted;
+        }
+    }
+
+    private static final class MergeSpec {
+        final List<Entry> sources;
+        final List<BitSet> deletedAtStart;
+
+        MergeSpec(List<Entry> sources, List<BitSet> deletedAtStart) {
+            this.sources = sources;
+            this.deletedAtStart = deletedAtStart;
+        }
+    }
+
+    /**
+     * Matching document before stored fields are loaded
+     */
+    private static final class Candidate {
+        // Best first: higher score, then newer, then higher message id so equal hits page stably
+        static final Comparator<Candidate> RANK = Comparator.comparingDouble((Candidate c) -> c.score).reversed()
+            .thenComparing(Comparator.comparingLong((Candidate c) -> c.dateMillis).reversed())
+            .thenComparing(Comparator.comparingLong((Candidate c) -> c.messageId).reversed());
+
+        final double score;
+        final long dateMillis;
+        final long messageId;
+        final int segment;
+        final int doc;
+
+        Candidate(double score, long dateMillis, long messageId, int segment, int doc) {
+            this.score = score;
+            this.dateMillis = dateMillis;
+            this.messageId = messageId;
+            this.segment = segment;
+            this.doc = doc;
+        }
+    }
+
+    /**
+     * One page of matches and the total number of matches
+     */
+    public static final class Hits {
+        private final long total;
+        private final List<SearchHit> hits;
+
+        Hits(long total, List<SearchHit> hits) {
+            this.total = total;
+            this.hits = hits;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public List<SearchHit> getHits() {
+            return hits;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Message;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Analyzed form of one message, ready to be written into a segment
+ * Every token is indexed in the default field; subject, sender and recipient tokens
+ * are also indexed under a field prefix for field-restricted queries.
+ */
+public final class IndexedDocument {
+
+    public static final String SUBJECT = "subject:";
+    public static final String FROM = "from:";
+    public static final String TO = "to:";
+
+    private final long messageId;
+    private final long dateMillis;
+    private final String subject;
+    private final String fromAddress;
+    private final String snippet;
+    private final Map<String, Integer> termFrequencies = new HashMap<>();
+    private int length;
+
+    private IndexedDocument(long messageId, long dateMillis, String subject, String fromAddress, String snippet) {
+        this.messageId = messageId;
+        this.dateMillis = dateMillis;
+        this.subject = subject != null ? subject : "";
+        this.fromAddress = fromAddress != null ? fromAddress : "";
+        this.snippet = snippet != null ? snippet : "";
+    }
+
+    /**
+     * Analyze a message
+     * @param body Body text, or null to index headers only
+     * @param maxBodyChars Body characters to index at most
+     */
+    public static IndexedDocument of(Message message, Reader body, long maxBodyChars) throws IOException {
+        IndexedDocument document = new IndexedDocument(message.getId(), toMillis(message.getMessageDate()),
+            message.getSubject(), message.getFromAddress(), message.getSnippet());
+        document.addField(SUBJECT, message.getSubject());
+        document.addField(FROM, message.getFromAddress());
+        document.addField(TO, message.getToAddresses());
+        document.addField(TO, message.getCcAddresses());
+        if (body != null) {
+            Analyzer.tokens(body, maxBodyChars, document::addTerm);
+        }
+        return document;
+    }
+
+    /**
+     * Document rebuilt from stored fields; used by merges, which copy postings directly
+     */
+    static IndexedDocument stored(long messageId, long dateMillis, int length, String[] storedFields) {
+        IndexedDocument document = new IndexedDocument(messageId, dateMillis, storedFields[0], storedFields[1],
+            storedFields[2]);
+        document.length = length;
+        return document;
+    }
+
+    public static long toMillis(LocalDateTime date) {
+        return date != null ? date.toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+    }
+
+    private void addField(String prefix, String text) {
+        for (String token : Analyzer.tokens(text)) {
+            addTerm(token);
+            termFrequencies.merge(prefix + token, 1, Integer::sum);
+        }
+    }
+
+    private void addTerm(String token) {
+        termFrequencies.merge(token, 1, Integer::sum);
+        length++;
+    }
+
+    public long getMessageId() {
+        return messageId;
+    }
+
+    public long getDateMillis() {
+        return dateMillis;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getFromAddress() {
+        return fromAddress;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    /**
+     * Number of tokens in the default field; the BM25 document length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    Map<String, Integer> getTermFrequencies() {
+        return termFrequencies;
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Typed search query tree produced by MailQueryParser
+ * Leaves are either full-text conditions (Text) or structured filters the database
+ * can answer from its indexes (attachments, read state, date, mailbox).
+ */
+public abstract class MailQuery {
+
+    public enum Field {
+        TEXT, FROM, TO, SUBJECT
+    }
+
+    private MailQuery() {
+    }
+
+    /**
+     * Whether the database alone can evaluate the query; free text needs the full-text index
+     */
+    public abstract boolean isStructured();
+
+    /**
+     * Top-level clauses that must all match
+     */
+    public List<MailQuery> conjuncts() {
+        return List.of(this);
+    }
+
+    public static MailQuery and(List<MailQuery> clauses) {
+        List<MailQuery> flat = new ArrayList<>();
+        for (MailQuery clause : clauses) {
+            flat.addAll(clause.conjuncts());
+        }
+        return flat.size() == 1 ? flat.get(0) : new And(flat);
+    }
+
+    public static MailQuery or(List<MailQuery> clauses) {
+        return clauses.size() == 1 ? clauses.get(0) : new Or(clauses);
+    }
+
+    public static MailQuery not(MailQuery clause) {
+        return clause instanceof Not ? ((Not) clause).getClause() : new Not(clause);
+    }
+
+    /**
+     * Words that must all occur in a field; TEXT means any field including the body
+     */
+    public static final class Text extends MailQuery {
+
+        private final Field field;
+        private final String text;
+
+        public Text(Field field, String text) {
+            this.field = field;
+            this.text = text;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public boolean isStructured() {
+            // Header fields are columns; only the body needs the full-text index
+            return field != Field.TEXT;
+        }
+
+        @Override
+        public String toString() {
+            return (field == Field.TEXT ? "" : field.name().toLowerCase(Locale.ROOT) + ":") + "\"" + text + "\"";
+        }
+    }
+
+    public static final class HasAttachment extends MailQuery {
+
+        @Override
+        public boolean isStructured() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "has:attachment";
+        }
+    }
+
+    public static final class Unread extends MailQuery {
+
+        private final boolean unread;
+
+        public Unread(boolean unread) {
+            this.unread = unread;
+        }
+
+        public boolean isUnread() {
+            return unread;
+        }
+
+        @Override
+        public boolean isStructured() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return unread ? "is:unread" : "is:read";
+        }
+    }
+
+    /**
+     * Messages dated in [after, before); either bound may be null
+     */
+    public static final class DateRange extends MailQuery {
+
+        private final LocalDateTime after;
+        private final LocalDateTime before;
+
+        public DateRange(LocalDateTime after, LocalDateTime before) {
+            this.after = after;
+            this.before = before;
+        }
+
+        public LocalDateTime getAfter() {
+            return after;
+        }
+
+        public LocalDateTime getBefore() {
+            return before;
+        }
+
+        @Override
+        public boolean isStructured() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return (after != null ? "after:" + after.toLocalDate() : "")
+                + (after != null && before != null ? " " : "")
+                + (before != null ? "before:" + before.toLocalDate() : "");
+        }
+    }
+
+    /**
+     * Messages in the user's mailbox of that name, or of that type for the standard folders
+     */
+    public static final class InMailbox extends MailQuery {
+
+        private final String name;
+
+        public InMailbox(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isStructured() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "in:\"" + name + "\"";
+        }
+    }
+
+    public static final class And extends MailQuery {
+
+        private final List<MailQuery> clauses;
+
+        private And(List<MailQuery> clauses) {
+            this.clauses = Collections.unmodifiableList(clauses);
+        }
+
+        public List<MailQuery> getClauses() {
+            return clauses;
+        }
+
+        @Override
+        public List<MailQuery> conjuncts() {
+            return clauses;
+        }
+
+        @Override
+        public boolean isStructured() {
+            return clauses.stream().allMatch(MailQuery::isStructured);
+        }
+
+        @Override
+        public String toString() {
+            return clauses.stream().map(MailQuery::toString).collect(Collectors.joining(" ", "(", ")"));
+        }
+    }
+
+    public static final class Or extends MailQuery {
+
+        private final List<MailQuery> clauses;
+
+        private Or(List<MailQuery> clauses) {
+            this.clauses = Collections.unmodifiableList(new ArrayList<>(clauses));
+        }
+
+        public List<MailQuery> getClauses() {
+            return clauses;
+        }
+
+        @Override
+        public boolean isStructured() {
+            return clauses.stream().allMatch(MailQuery::isStructured);
+        }
+
+        @Override
+        public String toString() {
+            return clauses.stream().map(MailQuery::toString).collect(Collectors.joining(" OR ", "(", ")"));
+        }
+    }
+
+    public static final class Not extends MailQuery {
+
+        private final MailQuery clause;
+
+        private Not(MailQuery clause) {
+            this.clause = clause;
+        }
+
+        public MailQuery getClause() {
+            return clause;
+        }
+
+        @Override
+        public boolean isStructured() {
+            return clause.isStructured();
+        }
+
+        @Override
+        public String toString() {
+            return "-" + clause;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.service.search.MailQuery.Field;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parser for the search query language
+ * <pre>
+ *   query   := clause*                       all clauses must match
+ *   clause  := unary ("OR" unary)*           OR binds tighter than juxtaposition
+ *   unary   := "-" unary | "(" query ")" | term
+ *   term    := key ":" value | word | "quoted words"
+ * </pre>
+ * Keys: from, to, subject (header text), has:attachment, is:unread, is:read,
+ * before:date and after:date (yyyy-MM-dd or yyyy/MM/dd; after is inclusive,
+ * before exclusive) and in:mailbox. A word with any other key, such as "re:plans",
+ * is plain text. Quoted words must all match but not necessarily as a phrase.
+ */
+public final class MailQueryParser {
+
+    private static final int MAX_LENGTH = 2000;
+    private static final int MAX_DEPTH = 32;
+    private static final DateTimeFormatter SLASHED_DATE = DateTimeFormatter.ofPattern("uuuu/MM/dd");
+
+    private final String input;
+    private int position;
+    private int depth;
+
+    private MailQueryParser(String input) {
+        this.input = input;
+    }
+
+    /**
+     * Parse a query; blank input matches every message
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    public static MailQuery parse(String query) {
+        String input = query != null ? query : "";
+        if (input.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("Search query is longer than " + MAX_LENGTH + " characters");
+        }
+        return new MailQueryParser(input).parseConjunction(false);
+    }
+
+    private MailQuery parseConjunction(boolean nested) {
+        List<MailQuery> clauses = new ArrayList<>();
+        while (true) {
+            skipWhitespace();
+            if (atEnd()) {
+                if (nested) {
+                    throw error("missing )");
+                }
+                break;
+            }
+            if (peek() == ')') {
+                if (!nested) {
+                    throw error("unexpected )");
+                }
+                position++;
+                break;
+            }
+            clauses.add(parseDisjunction());
+        }
+        return MailQuery.and(clauses);
+    }
+
+    private MailQuery parseDisjunction() {
+        List<MailQuery> alternatives = new ArrayList<>();
+        alternatives.add(parseUnary());
+        while (consumeOr()) {
+            skipWhitespace();
+            if (atEnd() || peek() == ')') {
+                throw error("OR needs a clause on both sides");
+            }
+            alternatives.add(parseUnary());
+        }
+        return MailQuery.or(alternatives);
+    }
+
+    private MailQuery parseUnary() {
+        skipWhitespace();
+        char c = peek();
+        if (c == '-') {
+            position++;
+            if (atEnd() || Character.isWhitespace(peek())) {
+                throw error("- must precede a clause");
+            }
+            return MailQuery.not(parseUnary());
+        }
+        if (c == '(') {
+            if (++depth > MAX_DEPTH) {
+                throw error("too deeply nested");
+            }
+            position++;
+            MailQuery group = parseConjunction(true);
+            depth--;
+            return group;
+        }
+        if (c == '"') {
+            return text(Field.TEXT, quoted());
+        }
+        return parseTerm();
+    }
+
+    private MailQuery parseTerm() {
+        int start = position;
+        while (!atEnd() && !isDelimiter(peek()) && peek() != ':') {
+            position++;
+        }
+        String key = input.substring(start, position).toLowerCase(Locale.ROOT);
+        if (atEnd() || peek() != ':' || !isKey(key)) {
+            // Not a known key: the whole word, colons included, is text
+            position = start;
+            return text(Field.TEXT, word());
+        }
+        position++;
+        if (atEnd() || isDelimiter(peek()) && peek() != '"') {
+            throw error("missing value for " + key + ":");
+        }
+        String value = peek() == '"' ? quoted() : word();
+        switch (key) {
+            case "from":
+                return text(Field.FROM, value);
+            case "to":
+                return text(Field.TO, value);
+            case "subject":
+                return text(Field.SUBJECT, value);
+            case "has":
+                if (!value.equalsIgnoreCase("attachment") && !value.equalsIgnoreCase("attachments")) {
+                    throw error("unsupported has:" + value);
+                }
+                return new MailQuery.HasAttachment();
+            case "is":
+                if (value.equalsIgnoreCase("unread")) {
+                    return new MailQuery.Unread(true);
+                }
+                if (value.equalsIgnoreCase("read")) {
+                    return new MailQuery.Unread(false);
+                }
+                throw error("unsupported is:" + value);
+            case "before":
+                return new MailQuery.DateRange(null, date(value).atStartOfDay());
+            case "after":
+                return new MailQuery.DateRange(date(value).atStartOfDay(), null);
+            default:
+                return new MailQuery.InMailbox(value);
+        }
+    }
+
+    private MailQuery text(Field field, String value) {
+        String text = value.trim();
+        if (text.isEmpty()) {
+            throw error("empty search text");
+        }
+        return new MailQuery.Text(field, text);
+    }
+
+    private String word() {
+        int start = position;
+        while (!atEnd() && !isDelimiter(peek())) {
+            position++;
+        }
+        return input.substring(start, position);
+    }
+
+    private String quoted() {
+        int start = ++position;
+        while (!atEnd() && peek() != '"') {
+            position++;
+        }
+        if (atEnd()) {
+            throw error("unterminated quote");
+        }
+        return input.substring(start, position++);
+    }
+
+    private boolean consumeOr() {
+        int start = position;
+        skipWhitespace();
+        if (input.startsWith("OR", position)
+                && (position + 2 == input.length() || Character.isWhitespace(input.charAt(position + 2))
+                    || input.charAt(position + 2) == '(')) {
+            position += 2;
+            return true;
+        }
+        position = start;
+        return false;
+    }
+
+    private LocalDate date(String value) {
+        try {
+            return value.indexOf('/') >= 0 ? LocalDate.parse(value, SLASHED_DATE) : LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw error("invalid date " + value);
+        }
+    }
+
+    private static boolean isKey(String key) {
+        switch (key) {
+            case "from":
+            case "to":
+            case "subject":
+            case "has":
+            case "is":
+            case "before":
+            case "after":
+            case "in":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isDelimiter(char c) {
+        return Character.isWhitespace(c) || c == '(' || c == ')' || c == '"';
+    }
+
+    private void skipWhitespace() {
+        while (!atEnd() && Character.isWhitespace(peek())) {
+            position++;
+        }
+    }
+
+    private boolean atEnd() {
+        return position >= input.length();
+    }
+
+    private char peek() {
+        return input.charAt(position);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid search query at position " + position + ": " + message);
+    }
+}
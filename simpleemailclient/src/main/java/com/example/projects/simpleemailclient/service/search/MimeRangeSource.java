@@ -0,0 +1,16 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Byte ranges of stored MIME objects
+ */
+public interface MimeRangeSource {
+
+    /**
+     * Open a range of the object a message's mimePointer names
+     * @return Up to length bytes from offset; fewer, or none, past the end of the object
+     */
+    InputStream openRange(String mimePointer, long offset, long length) throws IOException;
+}
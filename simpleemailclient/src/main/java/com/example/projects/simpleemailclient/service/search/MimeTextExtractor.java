@@ -0,0 +1,314 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pulls the readable body text out of a raw MIME message in one forward pass
+ * The first text/plain or text/html part that is not an attachment is decoded
+ * (base64 or quoted-printable, then its charset); HTML loses its tags. Parts before it
+ * are skipped line by line without being buffered, and reading stops once that part is
+ * done or enough text has been collected, so a caller streaming the object only fetches
+ * the bytes up to that point.
+ */
+public final class MimeTextExtractor {
+
+    private static final int MAX_LINE_BYTES = 8192;
+    private static final int MAX_DEPTH = 8;
+    private static final Pattern PARAMETER = Pattern.compile(
+        ";\\s*([A-Za-z0-9_.-]+)\\s*=\\s*(?:\"([^\"]*)\"|([^;\\s]+))");
+    private static final Pattern TAG = Pattern.compile("<[^>]*>");
+    private static final Pattern INVISIBLE = Pattern.compile("(?is)<(script|style|head)\\b.*?</\\1\\s*>");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final LineReader lines;
+    private final int maxChars;
+    private String text;
+
+    private MimeTextExtractor(InputStream in, int maxChars) {
+        this.lines = new LineReader(in);
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * @param in Raw message, headers first; not closed
+     * @param maxChars Text characters to return at most
+     * @return Whitespace-collapsed body text, or an empty string if the message has none
+     */
+    public static String extract(InputStream in, int maxChars) throws IOException {
+        MimeTextExtractor extractor = new MimeTextExtractor(in, maxChars);
+        extractor.entity(extractor.headers(), null, 0);
+        return extractor.text != null ? extractor.text : "";
+    }
+
+    /**
+     * Read one entity
+     * @param boundary Boundary of the enclosing multipart, or null at the top level
+     * @return The enclosing boundary line that ended the entity, or null to stop reading
+     */
+    private String entity(Headers headers, String boundary, int depth) throws IOException {
+        if (headers.type.startsWith("multipart/") && headers.boundary != null && depth < MAX_DEPTH) {
+            String inner = headers.boundary;
+            // Preamble
+            String line = skipTo(inner, boundary);
+            while (line != null && isBoundary(line, inner) && !isClosing(line, inner)) {
+                line = entity(headers(), inner, depth + 1);
+                if (text != null) {
+                    return null;
+                }
+            }
+            if (line == null || boundary == null) {
+                return null;
+            }
+            // Epilogue up to the enclosing boundary
+            return isBoundary(line, boundary) ? line : skipTo(boundary, null);
+        }
+        boolean wanted = !headers.attachment
+            && (headers.type.equals("text/plain") || headers.type.equals("text/html"));
+        if (!wanted) {
+            return skipTo(boundary, null);
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        StringBuilder base64 = headers.encoding.equals("base64") ? new StringBuilder() : null;
+        String line;
+        while ((line = lines.next()) != null && (boundary == null || !isBoundary(line, boundary))) {
+            if (base64 != null) {
+                appendBase64(base64, line, body);
+            } else if (headers.encoding.equals("quoted-printable")) {
+                decodeQuotedPrintable(line, body);
+            } else {
+                body.write(line.getBytes(StandardCharsets.ISO_8859_1), 0, line.length());
+                body.write('\n');
+            }
+            if (body.size() > (long) maxChars * 4) {
+                // Enough bytes for the text wanted even at four bytes per character
+                line = null;
+                break;
+            }
+        }
+        if (base64 != null) {
+            flushBase64(base64, body);
+        }
+        String decoded = new String(body.toByteArray(), headers.charset());
+        String collapsed = WHITESPACE.matcher(headers.type.equals("text/html") ? stripHtml(decoded) : decoded)
+            .replaceAll(" ").trim();
+        if (!collapsed.isEmpty()) {
+            text = collapsed.length() > maxChars ? collapsed.substring(0, maxChars) : collapsed;
+            return null;
+        }
+        return line;
+    }
+
+    /**
+     * Skip lines up to a boundary line of either multipart
+     * @return That line, or null at end of input
+     */
+    private String skipTo(String boundary, String outerBoundary) throws IOException {
+        String line;
+        while ((line = lines.next()) != null) {
+            if (boundary != null && isBoundary(line, boundary)
+                || outerBoundary != null && isBoundary(line, outerBoundary)) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private Headers headers() throws IOException {
+        Headers headers = new Headers();
+        StringBuilder current = null;
+        String line;
+        while ((line = lines.next()) != null && !line.isEmpty()) {
+            if ((line.charAt(0) == ' ' || line.charAt(0) == '\t') && current != null) {
+                current.append(' ').append(line.trim());
+                continue;
+            }
+            if (current != null) {
+                headers.add(current.toString());
+            }
+            current = new StringBuilder(line);
+        }
+        if (current != null) {
+            headers.add(current.toString());
+        }
+        return headers;
+    }
+
+    private static boolean isBoundary(String line, String boundary) {
+        return line.startsWith("--") && line.startsWith(boundary, 2)
+            && (line.length() == boundary.length() + 2 || isClosing(line, boundary)
+                || line.substring(boundary.length() + 2).isBlank());
+    }
+
+    private static boolean isClosing(String line, String boundary) {
+        return line.startsWith("--", boundary.length() + 2) && line.startsWith("--" + boundary);
+    }
+
+    private static void appendBase64(StringBuilder pending, String line, ByteArrayOutputStream out) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9'
+                || c == '+' || c == '/' || c == '=') {
+                pending.append(c);
+            }
+        }
+        int whole = pending.length() - pending.length() % 4;
+        if (whole > 0) {
+            decodeBase64(pending.substring(0, whole), out);
+            pending.delete(0, whole);
+        }
+    }
+
+    private static void flushBase64(StringBuilder pending, ByteArrayOutputStream out) {
+        if (pending.length() > 1) {
+            decodeBase64(pending.toString(), out);
+        }
+        pending.setLength(0);
+    }
+
+    private static void decodeBase64(String chunk, ByteArrayOutputStream out) {
+        try {
+            byte[] decoded = Base64.getDecoder().decode(chunk);
+            out.write(decoded, 0, decoded.length);
+        } catch (IllegalArgumentException e) {
+            // Corrupt or padded mid-stream; the rest of the part may still decode
+        }
+    }
+
+    private static void decodeQuotedPrintable(String line, ByteArrayOutputStream out) {
+        String trimmed = line.stripTrailing();
+        boolean soft = trimmed.endsWith("=");
+        int end = soft ? trimmed.length() - 1 : trimmed.length();
+        for (int i = 0; i < end; i++) {
+            char c = trimmed.charAt(i);
+            if (c == '=' && i + 2 < end) {
+                int high = Character.digit(trimmed.charAt(i + 1), 16);
+                int low = Character.digit(trimmed.charAt(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    out.write(high << 4 | low);
+                    i += 2;
+                    continue;
+                }
+            }
+            out.write(c);
+        }
+        if (!soft) {
+            out.write('\n');
+        }
+    }
+
+    public static String stripHtml(String html) {
+        String visible = INVISIBLE.matcher(html).replaceAll(" ");
+        visible = TAG.matcher(visible).replaceAll(" ");
+        return visible.replace("&nbsp;", " ").replace("&lt;", "<").replace("&gt;", ">")
+            .replace("&quot;", "\"").replace("&#39;", "'").replace("&amp;", "&");
+    }
+
+    /**
+     * Content headers of one entity
+     */
+    private static final class Headers {
+
+        String type = "text/plain";
+        String boundary;
+        String charsetName;
+        String encoding = "7bit";
+        boolean attachment;
+
+        void add(String header) {
+            int colon = header.indexOf(':');
+            if (colon <= 0) {
+                return;
+            }
+            String name = header.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = header.substring(colon + 1).trim();
+            switch (name) {
+                case "content-type":
+                    int semicolon = value.indexOf(';');
+                    type = (semicolon >= 0 ? value.substring(0, semicolon) : value).trim().toLowerCase(Locale.ROOT);
+                    boundary = parameter(value, "boundary");
+                    charsetName = parameter(value, "charset");
+                    break;
+                case "content-transfer-encoding":
+                    encoding = value.toLowerCase(Locale.ROOT);
+                    break;
+                case "content-disposition":
+                    attachment = value.toLowerCase(Locale.ROOT).startsWith("attachment");
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        Charset charset() {
+            if (charsetName != null) {
+                try {
+                    return Charset.forName(charsetName);
+                } catch (IllegalArgumentException e) {
+                    // Unknown or malformed charset name; fall through to the default
+                }
+            }
+            return StandardCharsets.UTF_8;
+        }
+
+        private static String parameter(String value, String name) {
+            Matcher matcher = PARAMETER.matcher(value);
+            while (matcher.find()) {
+                if (matcher.group(1).equalsIgnoreCase(name)) {
+                    return matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Byte lines as ISO-8859-1 strings, so bytes survive until their part's charset is known
+     * Lines longer than MAX_LINE_BYTES come back in pieces.
+     */
+    private static final class LineReader {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[8192];
+        private final byte[] line = new byte[MAX_LINE_BYTES];
+        private int position;
+        private int limit;
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        String next() throws IOException {
+            int length = 0;
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return length > 0 ? new String(line, 0, length, StandardCharsets.ISO_8859_1) : null;
+                    }
+                }
+                byte b = buffer[position++];
+                if (b == '\n') {
+                    if (length > 0 && line[length - 1] == '\r') {
+                        length--;
+                    }
+                    return new String(line, 0, length, StandardCharsets.ISO_8859_1);
+                }
+                line[length++] = b;
+                if (length == line.length) {
+                    return new String(line, 0, length, StandardCharsets.ISO_8859_1);
+                }
+            }
+        }
+    }
+}
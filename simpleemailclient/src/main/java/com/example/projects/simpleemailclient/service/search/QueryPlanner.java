@@ -0,0 +1,439 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Mailbox.MailboxType;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.service.SearchService;
+import com.example.projects.simpleemailclient.service.SearchService.SearchResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Runs search queries written in the MailQueryParser language
+ * Free text and positive header text go to the full-text index through
+ * SearchService.advancedSearch; attachment, read state, date, mailbox and any negated
+ * or alternative clauses compile to SQL over the messages table, served by its
+ * (user, date), (mailbox, date) and attachment indexes. When a query has both, the
+ * planner counts the database candidates up to a cap and compares them with the
+ * full-text hit count: a small candidate set is fetched first and handed to the index
+ * as an id restriction, otherwise full-text hits are streamed in rank order and
+ * checked against the database in chunks. A structured-only query never touches the
+ * full-text index. Pages of text queries get snippets highlighting the free-text terms.
+ */
+@Component
+@Slf4j
+public class QueryPlanner {
+
+    public enum Strategy {
+        /** Structured filters only, answered from database indexes */
+        DB_ONLY,
+        /** Text and dates only, answered by the full-text index */
+        FTS_ONLY,
+        /** Database candidates restrict the full-text search */
+        DB_FIRST,
+        /** Full-text hits are filtered through the database */
+        TEXT_FIRST
+    }
+
+    private static final int MAX_UNPAGED_RESULTS = 1000;
+    private static final String FROM_MESSAGES = " FROM messages m WHERE ";
+    private static final String NEWEST_FIRST = " ORDER BY m.message_date DESC, m.id DESC";
+
+    private final SearchService searchService;
+    private final MailboxRepository mailboxRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final SnippetService snippetService;
+    private final Map<Strategy, Counter> plans = new EnumMap<>(Strategy.class);
+
+    private final int maxCandidates;
+    private final int chunkSize;
+    private final int maxScan;
+
+    public QueryPlanner(SearchService searchService,
+                        MailboxRepository mailboxRepository,
+                        JdbcTemplate jdbcTemplate,
+                        SnippetService snippetService,
+                        MeterRegistry meterRegistry,
+                        @Value("${email.search.planner.max-candidates:5000}") int maxCandidates,
+                        @Value("${email.search.planner.chunk-size:500}") int chunkSize,
+                        @Value("${email.search.planner.max-scan:20000}") int maxScan) {
+        this.searchService = searchService;
+        this.mailboxRepository = mailboxRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.snippetService = snippetService;
+        this.maxCandidates = maxCandidates;
+        this.chunkSize = chunkSize;
+        this.maxScan = maxScan;
+        for (Strategy strategy : Strategy.values()) {
+            plans.put(strategy, Counter.builder("email.search.plans")
+                .description("Search queries by execution strategy")
+                .tag("strategy", strategy.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Search a user's messages; results are ranked by relevance when the query has
+     * text, otherwise newest first
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    public Page<SearchResult> search(Long userId, String query, Pageable pageable) {
+        Compiled compiled = compile(userId, MailQueryParser.parse(query));
+        Plan plan = plan(userId, compiled);
+        plans.get(plan.getStrategy()).increment();
+        log.debug("Search plan for user {}: {} ({})", userId, plan, query);
+        Pageable page = pageable.isPaged() ? pageable : PageRequest.of(0, MAX_UNPAGED_RESULTS);
+        Page<SearchResult> results;
+        switch (plan.getStrategy()) {
+            case DB_ONLY:
+                return searchDatabase(compiled, page);
+            case FTS_ONLY:
+                results = searchService.advancedSearch(userId, compiled.criteria, page);
+                break;
+            case DB_FIRST:
+                results = searchCandidates(userId, compiled, page);
+                break;
+            default:
+                results = searchText(userId, compiled, page, plan.getTextEstimate());
+                break;
+        }
+        return snippetService.highlight(results, compiled.terms);
+    }
+
+    /**
+     * Choose a strategy without running the query
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    public Plan plan(Long userId, String query) {
+        return plan(userId, compile(userId, MailQueryParser.parse(query)));
+    }
+
+    private Plan plan(Long userId, Compiled compiled) {
+        if (!compiled.hasText()) {
+            return new Plan(Strategy.DB_ONLY, -1, -1);
+        }
+        if (!compiled.hasFilters) {
+            return new Plan(Strategy.FTS_ONLY, -1, -1);
+        }
+        long candidates = countCandidates(compiled, maxCandidates + 1);
+        if (candidates <= chunkSize) {
+            // One index lookup restricted to a handful of ids beats any text-first scan
+            return new Plan(Strategy.DB_FIRST, candidates, -1);
+        }
+        long textHits = searchService.advancedSearch(userId, compiled.criteria, PageRequest.of(0, 1))
+            .getTotalElements();
+        if (candidates <= maxCandidates && candidates <= textHits) {
+            return new Plan(Strategy.DB_FIRST, candidates, textHits);
+        }
+        return new Plan(Strategy.TEXT_FIRST, candidates, textHits);
+    }
+
+    private long countCandidates(Compiled compiled, int cap) {
+        List<Object> args = new ArrayList<>(compiled.args);
+        args.add(cap);
+        Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM (SELECT 1" + FROM_MESSAGES
+            + compiled.where + " LIMIT ?) c", Long.class, args.toArray());
+        return count != null ? count : 0L;
+    }
+
+    private Page<SearchResult> searchDatabase(Compiled compiled, Pageable page) {
+        List<Object> args = new ArrayList<>(compiled.args);
+        args.add(page.getPageSize());
+        args.add(page.getOffset());
+        List<SearchResult> results = jdbcTemplate.query(
+            "SELECT m.id, m.subject, m.from_address, m.message_date, m.snippet" + FROM_MESSAGES
+                + compiled.where + NEWEST_FIRST + " LIMIT ? OFFSET ?",
+            (rs, rowNum) -> new SearchHit(rs.getLong("id"), rs.getString("subject"),
+                rs.getString("from_address"), rs.getTimestamp("message_date").toLocalDateTime(),
+                rs.getString("snippet"), null),
+            args.toArray());
+        Long total = jdbcTemplate.queryForObject("SELECT count(*)" + FROM_MESSAGES + compiled.where,
+            Long.class, compiled.args.toArray());
+        return new PageImpl<>(results, page, total != null ? total : 0L);
+    }
+
+    private Page<SearchResult> searchCandidates(Long userId, Compiled compiled, Pageable page) {
+        List<Object> args = new ArrayList<>(compiled.args);
+        args.add(maxCandidates);
+        List<Long> candidates = jdbcTemplate.queryForList("SELECT m.id" + FROM_MESSAGES + compiled.where
+            + NEWEST_FIRST + " LIMIT ?", Long.class, args.toArray());
+        if (candidates.isEmpty()) {
+            return new PageImpl<>(List.of(), page, 0);
+        }
+        Map<String, Object> criteria = new LinkedHashMap<>(compiled.criteria);
+        criteria.put("messageIds", candidates);
+        return searchService.advancedSearch(userId, criteria, page);
+    }
+
+    /**
+     * Walk full-text hits in rank order, keeping those the database filter accepts,
+     * until the page is filled, the hits run out or max-scan hits were checked
+     */
+    private Page<SearchResult> searchText(Long userId, Compiled compiled, Pageable page, long textHits) {
+        long wanted = page.getOffset() + page.getPageSize();
+        List<SearchResult> matches = new ArrayList<>();
+        long scanned = 0;
+        boolean exhausted = false;
+        for (int chunk = 0; matches.size() < wanted && scanned < maxScan; chunk++) {
+            Page<SearchResult> hits = searchService.advancedSearch(userId, compiled.criteria,
+                PageRequest.of(chunk, chunkSize));
+            Set<Long> accepted = filter(compiled, hits.getContent());
+            for (SearchResult hit : hits.getContent()) {
+                if (accepted.contains(hit.getMessageId())) {
+                    matches.add(hit);
+                }
+            }
+            scanned += hits.getNumberOfElements();
+            if (!hits.hasNext() || hits.getNumberOfElements() == 0) {
+                exhausted = true;
+                break;
+            }
+        }
+        long total = matches.size();
+        if (!exhausted && scanned > 0) {
+            // Extrapolate the filter's pass rate over the hits not checked
+            total = Math.max(total, Math.round((double) matches.size() * Math.max(textHits, scanned) / scanned));
+        }
+        int from = (int) Math.min(page.getOffset(), matches.size());
+        int to = (int) Math.min(wanted, matches.size());
+        return new PageImpl<>(new ArrayList<>(matches.subList(from, to)), page, total);
+    }
+
+    private Set<Long> filter(Compiled compiled, List<SearchResult> hits) {
+        if (hits.isEmpty()) {
+            return Collections.emptySet();
+        }
+        StringBuilder sql = new StringBuilder("SELECT m.id").append(FROM_MESSAGES).append(compiled.where)
+            .append(" AND m.id IN (");
+        List<Object> args = new ArrayList<>(compiled.args);
+        for (int i = 0; i < hits.size(); i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+            args.add(hits.get(i).getMessageId());
+        }
+        sql.append(')');
+        return new HashSet<>(jdbcTemplate.queryForList(sql.toString(), Long.class, args.toArray()));
+    }
+
+    /**
+     * Split the top-level clauses between full-text criteria and the SQL filter
+     */
+    private Compiled compile(Long userId, MailQuery query) {
+        Compiled compiled = new Compiled();
+        compiled.where.append("m.user_id = ?");
+        compiled.args.add(userId);
+        Map<String, StringBuilder> texts = new LinkedHashMap<>();
+        LocalDateTime after = null;
+        LocalDateTime before = null;
+        for (MailQuery clause : query.conjuncts()) {
+            if (clause instanceof MailQuery.Text) {
+                MailQuery.Text text = (MailQuery.Text) clause;
+                StringBuilder words = texts.computeIfAbsent(criterion(text.getField()), key -> new StringBuilder());
+                words.append(words.length() > 0 ? " " : "").append(text.getText());
+                if (text.getField() == MailQuery.Field.TEXT) {
+                    compiled.terms.addAll(Analyzer.tokens(text.getText()));
+                }
+                continue;
+            }
+            if (!clause.isStructured()) {
+                throw new IllegalArgumentException("Free text cannot be negated or combined with OR: " + clause);
+            }
+            if (clause instanceof MailQuery.DateRange) {
+                MailQuery.DateRange range = (MailQuery.DateRange) clause;
+                if (range.getAfter() != null && (after == null || range.getAfter().isAfter(after))) {
+                    after = range.getAfter();
+                }
+                if (range.getBefore() != null && (before == null || range.getBefore().isBefore(before))) {
+                    before = range.getBefore();
+                }
+            } else {
+                compiled.hasFilters = true;
+            }
+            compiled.where.append(" AND ");
+            appendSql(userId, clause, compiled.where, compiled.args);
+        }
+        texts.forEach((key, words) -> compiled.criteria.put(key, words.toString()));
+        if (after != null) {
+            compiled.criteria.put("startDate", after);
+        }
+        if (before != null) {
+            // The index bounds are inclusive
+            compiled.criteria.put("endDate", before.minusNanos(1_000_000));
+        }
+        return compiled;
+    }
+
+    private static String criterion(MailQuery.Field field) {
+        return field == MailQuery.Field.TEXT ? "query" : field.name().toLowerCase(Locale.ROOT);
+    }
+
+    private void appendSql(Long userId, MailQuery clause, StringBuilder sql, List<Object> args) {
+        if (clause instanceof MailQuery.HasAttachment) {
+            sql.append("m.has_attachments = TRUE");
+        } else if (clause instanceof MailQuery.Unread) {
+            sql.append(((MailQuery.Unread) clause).isUnread() ? "m.flags NOT LIKE '%READ%'" : "m.flags LIKE '%READ%'");
+        } else if (clause instanceof MailQuery.DateRange) {
+            MailQuery.DateRange range = (MailQuery.DateRange) clause;
+            sql.append('(');
+            if (range.getAfter() != null) {
+                sql.append("m.message_date >= ?");
+                args.add(Timestamp.valueOf(range.getAfter()));
+            }
+            if (range.getBefore() != null) {
+                sql.append(range.getAfter() != null ? " AND " : "").append("m.message_date < ?");
+                args.add(Timestamp.valueOf(range.getBefore()));
+            }
+            sql.append(')');
+        } else if (clause instanceof MailQuery.InMailbox) {
+            String name = ((MailQuery.InMailbox) clause).getName();
+            Optional<Long> mailboxId = resolveMailbox(mailboxRepository, userId, name);
+            if (mailboxId.isPresent()) {
+                sql.append("m.mailbox_id = ?");
+                args.add(mailboxId.get());
+            } else {
+                sql.append("1 = 0");
+            }
+        } else if (clause instanceof MailQuery.Text) {
+            appendTextSql((MailQuery.Text) clause, sql, args);
+        } else if (clause instanceof MailQuery.Not) {
+            sql.append("NOT (");
+            appendSql(userId, ((MailQuery.Not) clause).getClause(), sql, args);
+            sql.append(')');
+        } else if (clause instanceof MailQuery.And) {
+            appendJunction(userId, ((MailQuery.And) clause).getClauses(), " AND ", "1 = 1", sql, args);
+        } else if (clause instanceof MailQuery.Or) {
+            appendJunction(userId, ((MailQuery.Or) clause).getClauses(), " OR ", "1 = 0", sql, args);
+        } else {
+            throw new IllegalArgumentException("Unsupported search clause: " + clause);
+        }
+    }
+
+    private void appendJunction(Long userId, List<MailQuery> clauses, String operator, String empty,
+                                StringBuilder sql, List<Object> args) {
+        if (clauses.isEmpty()) {
+            sql.append(empty);
+            return;
+        }
+        sql.append('(');
+        for (int i = 0; i < clauses.size(); i++) {
+            if (i > 0) {
+                sql.append(operator);
+            }
+            appendSql(userId, clauses.get(i), sql, args);
+        }
+        sql.append(')');
+    }
+
+    /**
+     * Header text under OR or negation: a case-insensitive substring match on the column
+     */
+    private static void appendTextSql(MailQuery.Text text, StringBuilder sql, List<Object> args) {
+        String pattern = "%" + text.getText().toLowerCase(Locale.ROOT)
+            .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        switch (text.getField()) {
+            case FROM:
+                sql.append("lower(m.from_address) LIKE ? ESCAPE '\\'");
+                args.add(pattern);
+                break;
+            case TO:
+                sql.append("(lower(m.to_addresses) LIKE ? ESCAPE '\\' OR lower(coalesce(m.cc_addresses, '')) LIKE ? ESCAPE '\\')");
+                args.add(pattern);
+                args.add(pattern);
+                break;
+            case SUBJECT:
+                sql.append("lower(m.subject) LIKE ? ESCAPE '\\'");
+                args.add(pattern);
+                break;
+            default:
+                throw new IllegalArgumentException("Free text cannot be negated or combined with OR: " + text);
+        }
+    }
+
+    /**
+     * A mailbox by name, else a standard mailbox by type ("junk" is the spam folder)
+     */
+    static Optional<Long> resolveMailbox(MailboxRepository mailboxRepository, Long userId, String name) {
+        Optional<Mailbox> mailbox = mailboxRepository.findByUserIdAndName(userId, name);
+        if (mailbox.isEmpty()) {
+            String type = name.equalsIgnoreCase("junk") ? "SPAM" : name.toUpperCase(Locale.ROOT);
+            for (MailboxType mailboxType : MailboxType.values()) {
+                if (mailboxType != MailboxType.CUSTOM && mailboxType.name().equals(type)) {
+                    mailbox = mailboxRepository.findByUserIdAndMailboxType(userId, mailboxType);
+                }
+            }
+        }
+        return mailbox.map(Mailbox::getId);
+    }
+
+    /**
+     * A query split into full-text criteria and a SQL filter over messages m
+     */
+    private static final class Compiled {
+
+        final Map<String, Object> criteria = new LinkedHashMap<>();
+        final StringBuilder where = new StringBuilder();
+        final List<Object> args = new ArrayList<>();
+        // Free-text terms, for highlighting
+        final List<String> terms = new ArrayList<>();
+        // Whether the filter has more than the owner and date bounds the index applies too
+        boolean hasFilters;
+
+        boolean hasText() {
+            return criteria.containsKey("query") || criteria.containsKey("from")
+                || criteria.containsKey("to") || criteria.containsKey("subject");
+        }
+    }
+
+    /**
+     * Chosen strategy with the estimates behind it; -1 where not needed
+     */
+    public static final class Plan {
+
+        private final Strategy strategy;
+        private final long candidateEstimate;
+        private final long textEstimate;
+
+        Plan(Strategy strategy, long candidateEstimate, long textEstimate) {
+            this.strategy = strategy;
+            this.candidateEstimate = candidateEstimate;
+            this.textEstimate = textEstimate;
+        }
+
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        public long getCandidateEstimate() {
+            return candidateEstimate;
+        }
+
+        public long getTextEstimate() {
+            return textEstimate;
+        }
+
+        @Override
+        public String toString() {
+            return strategy + "[candidates=" + candidateEstimate + ", textHits=" + textEstimate + "]";
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a stored MIME object as a sequence of fixed-size ranges, fetched as they are needed
+ * A reader that stops early never causes the rest of the object to be transferred, and no
+ * more than maxBytes are ever read in total.
+ */
+final class RangedInputStream extends InputStream {
+
+    private final MimeRangeSource source;
+    private final String mimePointer;
+    private final long rangeBytes;
+    private long remaining;
+    private long offset;
+    private InputStream range;
+    private long rangeRemaining;
+    private boolean ended;
+
+    RangedInputStream(MimeRangeSource source, String mimePointer, long rangeBytes, long maxBytes) {
+        this.source = source;
+        this.mimePointer = mimePointer;
+        this.rangeBytes = rangeBytes;
+        this.remaining = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) > 0 ? one[0] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (!ended && remaining > 0) {
+            if (range == null) {
+                rangeRemaining = Math.min(rangeBytes, remaining);
+                range = source.openRange(mimePointer, offset, rangeRemaining);
+            }
+            int read = range.read(buffer, off, (int) Math.min(len, rangeRemaining));
+            if (read > 0) {
+                offset += read;
+                remaining -= read;
+                rangeRemaining -= read;
+                return read;
+            }
+            // A range that ends short ends the object
+            ended = rangeRemaining > 0;
+            closeRange();
+        }
+        return -1;
+    }
+
+    /**
+     * Bytes fetched so far
+     */
+    long position() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ended = true;
+        closeRange();
+    }
+
+    private void closeRange() throws IOException {
+        if (range != null) {
+            InputStream closing = range;
+            range = null;
+            closing.close();
+        }
+    }
+}
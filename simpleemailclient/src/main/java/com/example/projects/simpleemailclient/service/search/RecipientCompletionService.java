@@ -0,0 +1,185 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.dto.RecipientSuggestionDTO;
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Mailbox.MailboxType;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository.AddressView;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * In-memory recipient autocomplete, one RecipientIndex per active user
+ * A user's index is built from their newest messages on the first lookup: the
+ * recipients of sent messages and the senders of received ones. New messages update
+ * loaded indexes after commit; users not loaded pick them up when next built. The
+ * least recently used indexes are dropped beyond max-users.
+ */
+@Component
+@Slf4j
+public class RecipientCompletionService {
+
+    private static final int MAX_SUGGESTIONS = 50;
+
+    private final MessageRepository messageRepository;
+    private final MailboxRepository mailboxRepository;
+    private final LinkedHashMap<Long, UserIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int maxUsers;
+    private final int buildMessages;
+    private final int maxContacts;
+    private final long halfLifeMillis;
+
+    public RecipientCompletionService(MessageRepository messageRepository,
+                                      MailboxRepository mailboxRepository,
+                                      @Value("${email.autocomplete.max-users:10000}") int maxUsers,
+                                      @Value("${email.autocomplete.build-messages:5000}") int buildMessages,
+                                      @Value("${email.autocomplete.max-contacts:5000}") int maxContacts,
+                                      @Value("${email.autocomplete.half-life-days:30}") int halfLifeDays) {
+        this.messageRepository = messageRepository;
+        this.mailboxRepository = mailboxRepository;
+        this.maxUsers = maxUsers;
+        this.buildMessages = buildMessages;
+        this.maxContacts = maxContacts;
+        this.halfLifeMillis = Duration.ofDays(halfLifeDays).toMillis();
+    }
+
+    /**
+     * Addresses the user corresponds with that match a typed prefix, best first
+     * @param userId User ID
+     * @param prefix Start of an address, of a part of its local part or of a name word
+     * @param limit Maximum number of suggestions
+     */
+    public List<RecipientSuggestionDTO> complete(Long userId, String prefix, int limit) {
+        if (prefix == null || prefix.isBlank()) {
+            return List.of();
+        }
+        UserIndex user = user(userId);
+        List<RecipientIndex.Suggestion> suggestions;
+        synchronized (user) {
+            if (!user.built) {
+                build(userId, user.index);
+                user.built = true;
+            }
+            suggestions = user.index.complete(prefix, Math.min(limit, MAX_SUGGESTIONS));
+        }
+        List<RecipientSuggestionDTO> results = new ArrayList<>(suggestions.size());
+        for (RecipientIndex.Suggestion suggestion : suggestions) {
+            results.add(RecipientSuggestionDTO.builder()
+                .address(suggestion.getAddress())
+                .name(suggestion.getName().isEmpty() ? null : suggestion.getName())
+                .build());
+        }
+        return results;
+    }
+
+    /**
+     * Count the addresses of a stored message once its transaction commits
+     * Only indexes already in memory change; the others are built from the database.
+     */
+    public void recordMessage(Message message) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(message);
+                }
+            });
+        } else {
+            record(message);
+        }
+    }
+
+    private void record(Message message) {
+        UserIndex user;
+        synchronized (indexes) {
+            user = indexes.get(message.getUserId());
+        }
+        if (user == null) {
+            return;
+        }
+        boolean sent = mailboxRepository.findById(message.getMailboxId())
+            .map(Mailbox::getMailboxType)
+            .filter(type -> type == MailboxType.SENT)
+            .isPresent();
+        synchronized (user) {
+            // An index still to be built reads the committed message itself
+            if (user.built) {
+                add(user.index, message.getFromAddress(), message.getToAddresses(), message.getCcAddresses(),
+                    message.getMessageDate(), sent);
+            }
+        }
+    }
+
+    /**
+     * The user's entry, created empty; the first lookup builds it under the entry's
+     * own lock, so lookups of other users never wait for a build
+     */
+    private UserIndex user(Long userId) {
+        synchronized (indexes) {
+            UserIndex user = indexes.get(userId);
+            if (user == null) {
+                user = new UserIndex(new RecipientIndex(halfLifeMillis, maxContacts));
+                indexes.put(userId, user);
+                if (indexes.size() > maxUsers) {
+                    Long eldest = indexes.keySet().iterator().next();
+                    indexes.remove(eldest);
+                    log.debug("Evicted recipient index of user {}", eldest);
+                }
+            }
+            return user;
+        }
+    }
+
+    private void build(Long userId, RecipientIndex index) {
+        long start = System.nanoTime();
+        List<AddressView> messages = messageRepository.findAddressesByUserId(userId,
+            PageRequest.of(0, buildMessages));
+        // Oldest first, so a contact's latest display name wins
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            AddressView message = messages.get(i);
+            add(index, message.getFromAddress(), message.getToAddresses(), message.getCcAddresses(),
+                message.getMessageDate(), message.getMailboxType() == MailboxType.SENT);
+        }
+        log.debug("Built recipient index of user {} with {} contacts from {} messages in {} ms",
+            userId, index.size(), messages.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void add(RecipientIndex index, String from, String to, String cc,
+                            LocalDateTime date, boolean sent) {
+        long millis = (date != null ? date : LocalDateTime.now()).toInstant(ZoneOffset.UTC).toEpochMilli();
+        if (sent) {
+            for (String address : RecipientIndex.parseAddressList(to)) {
+                index.add(address, true, millis);
+            }
+            for (String address : RecipientIndex.parseAddressList(cc)) {
+                index.add(address, true, millis);
+            }
+        } else {
+            index.add(from, false, millis);
+        }
+    }
+
+    private static final class UserIndex {
+
+        final RecipientIndex index;
+        boolean built;
+
+        UserIndex(RecipientIndex index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Prefix-completion index over the addresses one user corresponds with
+ * Every contact is reachable by its address, the parts of its local part and the
+ * words of its display name. The keys live in one sorted array, the leaf level of a
+ * sorted trie: a prefix is a contiguous range found by binary search, and the best
+ * contacts in the range are picked with a small heap. A new contact shifts the array
+ * once; later mentions only change its weight.
+ * Weights use forward decay: a mention at time t adds 2^((t - epoch) / half-life),
+ * held as a base-2 logarithm. Stored weights therefore never need rescaling as time
+ * passes, yet a recent contact outranks an old one mentioned a few times as often.
+ * Not thread-safe; the owner serializes access.
+ */
+public final class RecipientIndex {
+
+    private static final int MAX_KEY_LENGTH = 64;
+    private static final double SENT_BOOST = 1.0;
+    private static final Pattern LOCAL_PART_SEPARATORS = Pattern.compile("[._+\\-]");
+    private static final Pattern NAME_SEPARATORS = Pattern.compile("[\\s,.\"']+");
+
+    private final double halfLifeMillis;
+    private final int maxContacts;
+
+    private final Map<String, Integer> contactIds = new HashMap<>();
+    private final List<String> addresses = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private double[] weights = new double[16];
+
+    private String[] keys = new String[64];
+    private int[] keyContacts = new int[64];
+    private int keyCount;
+
+    /**
+     * @param halfLifeMillis Age at which a mention counts half
+     * @param maxContacts Contacts kept; the lightest tenth is dropped when exceeded
+     */
+    public RecipientIndex(long halfLifeMillis, int maxContacts) {
+        this.halfLifeMillis = halfLifeMillis;
+        this.maxContacts = maxContacts;
+    }
+
+    /**
+     * Count a mention of an address
+     * @param address Bare or "Display Name &lt;user@host&gt;" address
+     * @param sent Whether the user wrote to it, which weighs twice a received message
+     * @param epochMillis When the message was sent or received
+     */
+    public void add(String address, boolean sent, long epochMillis) {
+        String name = displayName(address);
+        String bare = bareAddress(address);
+        if (bare.isEmpty() || bare.indexOf('@') < 0) {
+            return;
+        }
+        double mention = epochMillis / halfLifeMillis + (sent ? SENT_BOOST : 0);
+        Integer id = contactIds.get(bare);
+        if (id == null) {
+            id = addresses.size();
+            contactIds.put(bare, id);
+            addresses.add(bare);
+            names.add(name);
+            if (id == weights.length) {
+                weights = Arrays.copyOf(weights, id * 2);
+            }
+            weights[id] = mention;
+            for (String key : keys(bare, name)) {
+                insertKey(key, id);
+            }
+            if (addresses.size() > maxContacts) {
+                dropLightest();
+            }
+            return;
+        }
+        weights[id] = logSum(weights[id], mention);
+        if (!name.isEmpty() && !name.equals(names.get(id))) {
+            // Keys of the earlier name stay; they still lead to the same contact
+            String previous = names.get(id);
+            names.set(id, name);
+            Set<String> added = keys(bare, name);
+            added.removeAll(keys(bare, previous));
+            for (String key : added) {
+                insertKey(key, id);
+            }
+        }
+    }
+
+    /**
+     * Best contacts with a key starting with the prefix, heaviest first
+     */
+    public List<Suggestion> complete(String prefix, int limit) {
+        String normalized = prefix == null ? "" : prefix.trim().toLowerCase(Locale.ROOT);
+        if (normalized.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        int from = lowerBound(normalized);
+        // Lowest weight on top, so the heap keeps the best `limit` contacts
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, (a, b) -> Double.compare(weights[a], weights[b]));
+        Set<Integer> seen = new HashSet<>();
+        for (int i = from; i < keyCount && keys[i].startsWith(normalized); i++) {
+            int id = keyContacts[i];
+            if (!seen.add(id)) {
+                continue;
+            }
+            if (best.size() < limit) {
+                best.add(id);
+            } else if (weights[id] > weights[best.peek()]) {
+                best.poll();
+                best.add(id);
+            }
+        }
+        List<Suggestion> suggestions = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            int id = best.poll();
+            suggestions.add(new Suggestion(addresses.get(id), names.get(id), weights[id]));
+        }
+        Collections.reverse(suggestions);
+        return suggestions;
+    }
+
+    public int size() {
+        return addresses.size();
+    }
+
+    private void insertKey(String key, int id) {
+        int at = lowerBound(key);
+        for (int i = at; i < keyCount && keys[i].equals(key); i++) {
+            if (keyContacts[i] == id) {
+                return;
+            }
+        }
+        if (keyCount == keys.length) {
+            keys = Arrays.copyOf(keys, keyCount * 2);
+            keyContacts = Arrays.copyOf(keyContacts, keyCount * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, keyCount - at);
+        System.arraycopy(keyContacts, at, keyContacts, at + 1, keyCount - at);
+        keys[at] = key;
+        keyContacts[at] = id;
+        keyCount++;
+    }
+
+    /**
+     * First key not less than the given one
+     */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keyCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Forget the lightest tenth of the contacts and renumber the rest
+     */
+    private void dropLightest() {
+        Integer[] order = new Integer[addresses.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(weights[b], weights[a]));
+        int keep = order.length - Math.max(1, order.length / 10);
+        List<String> keptAddresses = new ArrayList<>(keep);
+        List<String> keptNames = new ArrayList<>(keep);
+        double[] keptWeights = new double[Math.max(16, keep * 2)];
+        for (int i = 0; i < keep; i++) {
+            keptAddresses.add(addresses.get(order[i]));
+            keptNames.add(names.get(order[i]));
+            keptWeights[i] = weights[order[i]];
+        }
+        contactIds.clear();
+        addresses.clear();
+        names.clear();
+        weights = keptWeights;
+        List<String> keptKeys = new ArrayList<>();
+        List<Integer> keptKeyContacts = new ArrayList<>();
+        for (int id = 0; id < keep; id++) {
+            contactIds.put(keptAddresses.get(id), id);
+            addresses.add(keptAddresses.get(id));
+            names.add(keptNames.get(id));
+            for (String key : keys(keptAddresses.get(id), keptNames.get(id))) {
+                keptKeys.add(key);
+                keptKeyContacts.add(id);
+            }
+        }
+        // Sort once instead of shifting the array for every key
+        Integer[] byKey = new Integer[keptKeys.size()];
+        for (int i = 0; i < byKey.length; i++) {
+            byKey[i] = i;
+        }
+        Arrays.sort(byKey, (a, b) -> keptKeys.get(a).compareTo(keptKeys.get(b)));
+        keys = new String[Math.max(64, byKey.length * 2)];
+        keyContacts = new int[keys.length];
+        for (int i = 0; i < byKey.length; i++) {
+            keys[i] = keptKeys.get(byKey[i]);
+            keyContacts[i] = keptKeyContacts.get(byKey[i]);
+        }
+        keyCount = byKey.length;
+    }
+
+    /**
+     * The address itself, the parts of its local part and the words of the name
+     */
+    private static Set<String> keys(String address, String name) {
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(truncate(address));
+        String local = address.substring(0, address.indexOf('@'));
+        for (String part : LOCAL_PART_SEPARATORS.split(local)) {
+            if (!part.isEmpty()) {
+                keys.add(truncate(part + "\u0000" + address));
+            }
+        }
+        for (String word : NAME_SEPARATORS.split(name.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                keys.add(truncate(word + "\u0000" + address));
+            }
+        }
+        return keys;
+    }
+
+    private static String truncate(String key) {
+        return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+    }
+
+    private static double logSum(double a, double b) {
+        double high = Math.max(a, b);
+        return high + Math.log1p(Math.pow(2, Math.min(a, b) - high)) / Math.log(2);
+    }
+
+    static String bareAddress(String address) {
+        if (address == null) {
+            return "";
+        }
+        String trimmed = address.trim();
+        int open = trimmed.lastIndexOf('<');
+        int close = trimmed.lastIndexOf('>');
+        if (open >= 0 && close > open) {
+            trimmed = trimmed.substring(open + 1, close).trim();
+        }
+        return trimmed.toLowerCase(Locale.ROOT);
+    }
+
+    static String displayName(String address) {
+        if (address == null) {
+            return "";
+        }
+        int open = address.lastIndexOf('<');
+        if (open <= 0) {
+            return "";
+        }
+        String name = address.substring(0, open).trim();
+        if (name.length() >= 2 && name.charAt(0) == '"' && name.charAt(name.length() - 1) == '"') {
+            name = name.substring(1, name.length() - 1).trim();
+        }
+        return name;
+    }
+
+    /**
+     * Split a comma-joined address header; commas inside quoted names do not split
+     */
+    public static List<String> parseAddressList(String header) {
+        List<String> parsed = new ArrayList<>();
+        if (header == null || header.isBlank()) {
+            return parsed;
+        }
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i <= header.length(); i++) {
+            char c = i < header.length() ? header.charAt(i) : ',';
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                String address = header.substring(start, i).trim();
+                if (!address.isEmpty()) {
+                    parsed.add(address);
+                }
+                start = i + 1;
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * A completion with its log2 weight
+     */
+    public static final class Suggestion {
+
+        private final String address;
+        private final String name;
+        private final double weight;
+
+        Suggestion(String address, String name, double weight) {
+            this.address = address;
+            this.name = name;
+            this.weight = weight;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+    }
+}
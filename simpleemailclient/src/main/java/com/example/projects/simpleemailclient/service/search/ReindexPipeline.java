@@ -0,0 +1,342 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.dto.ReindexStatusDTO;
+import com.example.projects.simpleemailclient.model.ReindexShard;
+import com.example.projects.simpleemailclient.model.ReindexShard.Status;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository.MessageKey;
+import com.example.projects.simpleemailclient.repository.ReindexShardRepository;
+import com.example.projects.simpleemailclient.service.SearchService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rebuilds the search index from the message table, resumably and across nodes
+ * A job splits the user id range into shards stored in reindex_shards. Every node
+ * polls for open shards, leases as many as it has worker threads, and streams each
+ * shard's message keys in keyset pages of (userId, id) into bulk index calls. After
+ * every page the shard's checkpoint and lease are advanced in one conditional update;
+ * a node that crashes stops renewing, and once its lease runs out another node
+ * continues from the checkpoint. Index writes are keyed by message id, so pages
+ * replayed after a takeover are harmless. All workers of a node share one
+ * AdaptiveThrottle fed with the page read and index latencies.
+ */
+@Component
+@Slf4j
+public class ReindexPipeline {
+
+    private static final Set<Status> OPEN = EnumSet.of(Status.PENDING, Status.RUNNING);
+
+    private final SearchService searchService;
+    private final MessageRepository messageRepository;
+    private final ReindexShardRepository shardRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final AdaptiveThrottle throttle;
+    private final Counter indexedDocuments;
+
+    private final int shardCount;
+    private final int threads;
+    private final int pageSize;
+    private final Duration lease;
+    private final String nodeId;
+    private final ExecutorService workers;
+    private final Set<Long> activeShards = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopping;
+
+    Clock clock = Clock.systemUTC();
+
+    public ReindexPipeline(SearchService searchService,
+                           MessageRepository messageRepository,
+                           ReindexShardRepository shardRepository,
+                           TransactionTemplate transactionTemplate,
+                           MeterRegistry meterRegistry,
+                           @Value("${email.search.reindex.shards:64}") int shardCount,
+                           @Value("${email.search.reindex.threads:4}") int threads,
+                           @Value("${email.search.reindex.page-size:1000}") int pageSize,
+                           @Value("${email.search.reindex.lease-seconds:300}") long leaseSeconds,
+                           @Value("${email.search.reindex.db-latency-target-ms:200}") long dbLatencyTargetMs,
+                           @Value("${email.search.reindex.index-latency-target-ms:500}") long indexLatencyTargetMs,
+                           @Value("${email.search.reindex.min-docs-per-second:100}") double minRate,
+                           @Value("${email.search.reindex.max-docs-per-second:20000}") double maxRate) {
+        this.searchService = searchService;
+        this.messageRepository = messageRepository;
+        this.shardRepository = shardRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.shardCount = shardCount;
+        this.threads = threads;
+        this.pageSize = pageSize;
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.nodeId = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.throttle = new AdaptiveThrottle(minRate, maxRate, dbLatencyTargetMs, indexLatencyTargetMs);
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "search-reindex-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.indexedDocuments = Counter.builder("email.search.reindex.documents")
+            .description("Messages handed to the search index by reindex workers on this node")
+            .register(meterRegistry);
+        Gauge.builder("email.search.reindex.rate", throttle, AdaptiveThrottle::getRate)
+            .description("Current reindex throttle in documents per second")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Create a job covering every user with messages, unless one is already open
+     * @return Id of the new or already open job, or null if there are no messages
+     */
+    public String start() {
+        return transactionTemplate.execute(status -> {
+            List<String> open = shardRepository.findJobIdsWithStatus(OPEN);
+            if (!open.isEmpty()) {
+                return open.get(0);
+            }
+            Long minUserId = messageRepository.findMinUserId();
+            Long maxUserId = messageRepository.findMaxUserId();
+            if (minUserId == null) {
+                return null;
+            }
+
+            String jobId = UUID.randomUUID().toString();
+            long span = maxUserId - minUserId + 1;
+            long step = Math.max(1, (span + shardCount - 1) / shardCount);
+            List<ReindexShard> shards = new ArrayList<>();
+            for (long from = minUserId; from <= maxUserId; from += step) {
+                long to = Math.min(maxUserId, from + step - 1);
+                shards.add(ReindexShard.builder()
+                    .jobId(jobId)
+                    .shardNumber(shards.size())
+                    .fromUserId(from)
+                    .toUserId(to)
+                    .lastUserId(from - 1)
+                    .lastMessageId(0L)
+                    .indexedCount(0L)
+                    .estimatedCount(messageRepository.countByUserIdBetween(from, to))
+                    .status(Status.PENDING)
+                    .build());
+            }
+            shardRepository.saveAll(shards);
+            log.info("Created reindex job {} with {} shards over users {}..{}", jobId, shards.size(),
+                minUserId, maxUserId);
+            return jobId;
+        });
+    }
+
+    /**
+     * Cancel every open job; workers stop at their next checkpoint
+     * @return Number of shards cancelled
+     */
+    public int cancel() {
+        Integer cancelled = transactionTemplate.execute(status -> {
+            int count = 0;
+            LocalDateTime now = LocalDateTime.now(clock);
+            for (String jobId : shardRepository.findJobIdsWithStatus(OPEN)) {
+                count += shardRepository.cancel(jobId, now, OPEN, Status.CANCELLED);
+            }
+            return count;
+        });
+        return cancelled != null ? cancelled : 0;
+    }
+
+    /**
+     * Lease open shards up to the number of idle worker threads
+     */
+    @Scheduled(fixedDelayString = "${email.search.reindex.poll-interval-ms:30000}")
+    public void claimWork() {
+        if (stopping) {
+            return;
+        }
+        for (String jobId : shardRepository.findJobIdsWithStatus(OPEN)) {
+            for (ReindexShard shard : shardRepository.findByJobIdOrderByShardNumber(jobId)) {
+                if (activeShards.size() >= threads) {
+                    return;
+                }
+                if (!OPEN.contains(shard.getStatus()) || activeShards.contains(shard.getId())) {
+                    continue;
+                }
+                LocalDateTime now = LocalDateTime.now(clock);
+                // Re-read after the claim; the previous owner may have checkpointed since the listing
+                ReindexShard claimed = transactionTemplate.execute(status -> shardRepository.claim(
+                    shard.getId(), nodeId, now, now.plus(lease), Status.PENDING, Status.RUNNING) == 1
+                    ? shardRepository.findById(shard.getId()).orElse(null) : null);
+                if (claimed != null && activeShards.add(claimed.getId())) {
+                    log.info("Node {} took shard {} of reindex job {} at user {} message {}", nodeId,
+                        claimed.getShardNumber(), jobId, claimed.getLastUserId(), claimed.getLastMessageId());
+                    workers.submit(() -> {
+                        try {
+                            runShard(claimed);
+                        } finally {
+                            activeShards.remove(claimed.getId());
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream one leased shard into the index from its checkpoint to the end of its range
+     */
+    void runShard(ReindexShard shard) {
+        long lastUserId = shard.getLastUserId();
+        long lastMessageId = shard.getLastMessageId();
+        try {
+            while (!stopping) {
+                throttle.acquire(pageSize);
+
+                long readStart = System.nanoTime();
+                List<MessageKey> keys = messageRepository.findKeysInUserRangeAfter(shard.getFromUserId(),
+                    shard.getToUserId(), lastUserId, lastMessageId, PageRequest.of(0, pageSize));
+                long indexStart = System.nanoTime();
+                if (!keys.isEmpty()) {
+                    List<Long> ids = new ArrayList<>(keys.size());
+                    keys.forEach(key -> ids.add(key.getId()));
+                    searchService.bulkIndexMessages(ids);
+                }
+                throttle.record(indexStart - readStart, System.nanoTime() - indexStart);
+
+                if (!keys.isEmpty()) {
+                    MessageKey last = keys.get(keys.size() - 1);
+                    lastUserId = last.getUserId();
+                    lastMessageId = last.getId();
+                    if (!checkpoint(shard, lastUserId, lastMessageId, keys.size())) {
+                        log.info("Node {} lost shard {} of reindex job {}", nodeId, shard.getShardNumber(),
+                            shard.getJobId());
+                        return;
+                    }
+                    indexedDocuments.increment(keys.size());
+                }
+                if (keys.size() < pageSize) {
+                    finish(shard, Status.COMPLETED, null);
+                    log.info("Completed shard {} of reindex job {}", shard.getShardNumber(), shard.getJobId());
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Leave the lease to expire; another node resumes from the checkpoint
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Shard {} of reindex job {} failed at user {} message {}", shard.getShardNumber(),
+                shard.getJobId(), lastUserId, lastMessageId, e);
+            finish(shard, Status.FAILED, truncate(e.getMessage()));
+        }
+    }
+
+    private boolean checkpoint(ReindexShard shard, long lastUserId, long lastMessageId, int indexed) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        Integer updated = transactionTemplate.execute(status -> shardRepository.checkpoint(shard.getId(), nodeId,
+            lastUserId, lastMessageId, indexed, now, now.plus(lease), Status.RUNNING));
+        return updated != null && updated == 1;
+    }
+
+    private void finish(ReindexShard shard, Status status, String failure) {
+        try {
+            transactionTemplate.executeWithoutResult(tx -> shardRepository.finish(shard.getId(), nodeId, status,
+                failure, LocalDateTime.now(clock), Status.RUNNING));
+        } catch (RuntimeException e) {
+            log.error("Failed to mark shard {} of reindex job {} {}", shard.getShardNumber(), shard.getJobId(),
+                status, e);
+        }
+    }
+
+    /**
+     * Progress of the open job, or of the most recent one if none is open
+     */
+    public Optional<ReindexStatusDTO> status() {
+        List<String> open = shardRepository.findJobIdsWithStatus(OPEN);
+        String jobId = !open.isEmpty() ? open.get(0)
+            : shardRepository.findRecentJobIds(PageRequest.of(0, 1)).stream().findFirst().orElse(null);
+        if (jobId == null) {
+            return Optional.empty();
+        }
+
+        List<ReindexShard> shards = shardRepository.findByJobIdOrderByShardNumber(jobId);
+        Map<String, Long> byStatus = new LinkedHashMap<>();
+        for (Status status : Status.values()) {
+            byStatus.put(status.name(), 0L);
+        }
+        long indexed = 0;
+        long estimated = 0;
+        LocalDateTime startedAt = null;
+        for (ReindexShard shard : shards) {
+            byStatus.merge(shard.getStatus().name(), 1L, Long::sum);
+            indexed += shard.getIndexedCount();
+            estimated += shard.getEstimatedCount();
+            if (startedAt == null || shard.getCreatedAt().isBefore(startedAt)) {
+                startedAt = shard.getCreatedAt();
+            }
+        }
+
+        double elapsedSeconds = startedAt != null
+            ? Duration.between(startedAt, LocalDateTime.now(clock)).toMillis() / 1000.0 : 0;
+        double docsPerSecond = elapsedSeconds > 0 ? indexed / elapsedSeconds : 0;
+        boolean running = byStatus.get(Status.PENDING.name()) + byStatus.get(Status.RUNNING.name()) > 0;
+        Long eta = null;
+        if (running && docsPerSecond > 0) {
+            eta = (long) Math.ceil(Math.max(0, estimated - indexed) / docsPerSecond);
+        }
+
+        return Optional.of(ReindexStatusDTO.builder()
+            .jobId(jobId)
+            .startedAt(startedAt)
+            .shards(byStatus)
+            .indexed(indexed)
+            .estimated(estimated)
+            .docsPerSecond(docsPerSecond)
+            .etaSeconds(eta)
+            .throttleRate(throttle.getRate())
+            .dbLatencyMillis(throttle.getDbLatencyMillis())
+            .indexLatencyMillis(throttle.getIndexLatencyMillis())
+            .activeShards(activeShards.size())
+            .build());
+    }
+
+    String getNodeId() {
+        return nodeId;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        stopping = true;
+        workers.shutdownNow();
+    }
+
+    private static String truncate(String failure) {
+        return failure != null && failure.length() > 1000 ? failure.substring(0, 1000) : failure;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "node";
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A saved query compiled for matching single messages, the percolator side of search
+ * Words match like the full-text index: a Text clause needs all of its tokens in the
+ * field, and free text also looks in the body. Mailbox names are resolved to ids at
+ * compile time. Conjunctions test body-free clauses first, so a message is only read
+ * when its headers, flags, date and mailbox already match.
+ */
+public final class SavedSearchMatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(SavedSearchMatcher.class);
+    private static final String FLAG_READ = "READ";
+
+    private final Predicate<Candidate> predicate;
+    private final boolean readsBody;
+
+    private SavedSearchMatcher(Predicate<Candidate> predicate, boolean readsBody) {
+        this.predicate = predicate;
+        this.readsBody = readsBody;
+    }
+
+    /**
+     * @param query Parsed query
+     * @param mailboxes Ids of the user's mailboxes an in: name refers to; empty if none
+     */
+    public static SavedSearchMatcher compile(MailQuery query, Function<String, Set<Long>> mailboxes) {
+        Compiled compiled = compileNode(query, mailboxes);
+        return new SavedSearchMatcher(compiled.predicate, compiled.readsBody);
+    }
+
+    public boolean matches(Candidate candidate) {
+        return predicate.test(candidate);
+    }
+
+    /**
+     * Whether matching may need the message body
+     */
+    public boolean readsBody() {
+        return readsBody;
+    }
+
+    private static Compiled compileNode(MailQuery query, Function<String, Set<Long>> mailboxes) {
+        if (query instanceof MailQuery.Text) {
+            return compileText((MailQuery.Text) query);
+        }
+        if (query instanceof MailQuery.HasAttachment) {
+            return new Compiled(candidate -> Boolean.TRUE.equals(candidate.message.getHasAttachments()), false);
+        }
+        if (query instanceof MailQuery.Unread) {
+            boolean unread = ((MailQuery.Unread) query).isUnread();
+            return new Compiled(candidate -> candidate.isUnread() == unread, false);
+        }
+        if (query instanceof MailQuery.DateRange) {
+            MailQuery.DateRange range = (MailQuery.DateRange) query;
+            return new Compiled(candidate -> inRange(candidate.message.getMessageDate(), range), false);
+        }
+        if (query instanceof MailQuery.InMailbox) {
+            Set<Long> ids = Set.copyOf(mailboxes.apply(((MailQuery.InMailbox) query).getName()));
+            return new Compiled(candidate -> ids.contains(candidate.message.getMailboxId()), false);
+        }
+        if (query instanceof MailQuery.Not) {
+            Compiled clause = compileNode(((MailQuery.Not) query).getClause(), mailboxes);
+            return new Compiled(clause.predicate.negate(), clause.readsBody);
+        }
+        if (query instanceof MailQuery.Or) {
+            List<Compiled> clauses = compileAll(((MailQuery.Or) query).getClauses(), mailboxes);
+            return new Compiled(candidate -> {
+                for (Compiled clause : clauses) {
+                    if (clause.predicate.test(candidate)) {
+                        return true;
+                    }
+                }
+                return false;
+            }, clauses.stream().anyMatch(clause -> clause.readsBody));
+        }
+        // And, or a blank query: no conjuncts, so every message matches
+        List<Compiled> clauses = compileAll(query.conjuncts(), mailboxes);
+        return new Compiled(candidate -> {
+            for (Compiled clause : clauses) {
+                if (!clause.predicate.test(candidate)) {
+                    return false;
+                }
+            }
+            return true;
+        }, clauses.stream().anyMatch(clause -> clause.readsBody));
+    }
+
+    /**
+     * Compile clauses, body-free ones first
+     */
+    private static List<Compiled> compileAll(List<MailQuery> queries, Function<String, Set<Long>> mailboxes) {
+        List<Compiled> cheap = new ArrayList<>();
+        List<Compiled> body = new ArrayList<>();
+        for (MailQuery query : queries) {
+            Compiled compiled = compileNode(query, mailboxes);
+            (compiled.readsBody ? body : cheap).add(compiled);
+        }
+        cheap.addAll(body);
+        return cheap;
+    }
+
+    private static Compiled compileText(MailQuery.Text text) {
+        Set<String> tokens = new LinkedHashSet<>(Analyzer.tokens(text.getText()));
+        if (tokens.isEmpty()) {
+            // Same as the index: a query without tokens matches nothing
+            return new Compiled(candidate -> false, false);
+        }
+        switch (text.getField()) {
+            case FROM:
+                return new Compiled(candidate -> candidate.from().containsAll(tokens), false);
+            case TO:
+                return new Compiled(candidate -> candidate.to().containsAll(tokens), false);
+            case SUBJECT:
+                return new Compiled(candidate -> candidate.subject().containsAll(tokens), false);
+            default:
+                return new Compiled(candidate -> candidate.containsText(tokens), true);
+        }
+    }
+
+    private static boolean inRange(LocalDateTime date, MailQuery.DateRange range) {
+        if (date == null) {
+            return false;
+        }
+        return (range.getAfter() == null || !date.isBefore(range.getAfter()))
+            && (range.getBefore() == null || date.isBefore(range.getBefore()));
+    }
+
+    private static final class Compiled {
+
+        final Predicate<Candidate> predicate;
+        final boolean readsBody;
+
+        Compiled(Predicate<Candidate> predicate, boolean readsBody) {
+            this.predicate = predicate;
+            this.readsBody = readsBody;
+        }
+    }
+
+    /**
+     * One message being matched against all of a user's saved searches
+     * Field tokens are computed on first use and the body is read at most once.
+     */
+    public static final class Candidate {
+
+        private final Message message;
+        private final MessageBodySource bodySource;
+        private final long maxBodyChars;
+
+        private Set<String> subject;
+        private Set<String> from;
+        private Set<String> to;
+        private Set<String> body;
+
+        private Candidate(Message message, MessageBodySource bodySource, long maxBodyChars) {
+            this.message = message;
+            this.bodySource = bodySource;
+            this.maxBodyChars = maxBodyChars;
+        }
+
+        /**
+         * @param bodySource Body access, or null to match free text against headers only
+         * @param maxBodyChars Body characters to read at most, as for indexing
+         */
+        public static Candidate of(Message message, MessageBodySource bodySource, long maxBodyChars) {
+            return new Candidate(message, bodySource, maxBodyChars);
+        }
+
+        public Message getMessage() {
+            return message;
+        }
+
+        public boolean isUnread() {
+            if (message.getFlags() != null) {
+                for (String flag : message.getFlags().split(",")) {
+                    if (flag.trim().equals(FLAG_READ)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Whether the body has been read
+         */
+        boolean bodyRead() {
+            return body != null;
+        }
+
+        Set<String> subject() {
+            if (subject == null) {
+                subject = new HashSet<>(Analyzer.tokens(message.getSubject()));
+            }
+            return subject;
+        }
+
+        Set<String> from() {
+            if (from == null) {
+                from = new HashSet<>(Analyzer.tokens(message.getFromAddress()));
+            }
+            return from;
+        }
+
+        Set<String> to() {
+            if (to == null) {
+                to = new HashSet<>(Analyzer.tokens(message.getToAddresses()));
+                to.addAll(Analyzer.tokens(message.getCcAddresses()));
+            }
+            return to;
+        }
+
+        boolean containsText(Set<String> tokens) {
+            for (String token : tokens) {
+                if (!subject().contains(token) && !from().contains(token) && !to().contains(token)
+                    && !body().contains(token)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Set<String> body() {
+            if (body == null) {
+                body = new HashSet<>();
+                if (bodySource != null) {
+                    try (Reader reader = bodySource.open(message)) {
+                        if (reader != null) {
+                            Analyzer.tokens(reader, maxBodyChars, body::add);
+                        }
+                    } catch (IOException e) {
+                        log.warn("Could not read body of message {} for saved searches: {}",
+                            message.getId(), e.getMessage());
+                    }
+                }
+            }
+            return body;
+        }
+    }
+}
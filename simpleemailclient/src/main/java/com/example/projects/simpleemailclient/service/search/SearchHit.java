@@ -0,0 +1,61 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.service.SearchService;
+
+import java.time.LocalDateTime;
+
+/**
+ * Search result built from a segment's stored fields
+ */
+public final class SearchHit implements SearchService.SearchResult {
+
+    private final Long messageId;
+    private final String subject;
+    private final String fromAddress;
+    private final LocalDateTime messageDate;
+    private final String snippet;
+    private final Double score;
+
+    public SearchHit(Long messageId, String subject, String fromAddress, LocalDateTime messageDate,
+                     String snippet, Double score) {
+        this.messageId = messageId;
+        this.subject = subject;
+        this.fromAddress = fromAddress;
+        this.messageDate = messageDate;
+        this.snippet = snippet;
+        this.score = score;
+    }
+
+    @Override
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    @Override
+    public String getSubject() {
+        return subject;
+    }
+
+    @Override
+    public String getFromAddress() {
+        return fromAddress;
+    }
+
+    @Override
+    public LocalDateTime getMessageDate() {
+        return messageDate;
+    }
+
+    @Override
+    public String getSnippet() {
+        return snippet;
+    }
+
+    /**
+     * BM25 relevance; null for queries without terms, which are ordered by date
+     */
+    @Override
+    public Double getScore() {
+        return score;
+    }
+}
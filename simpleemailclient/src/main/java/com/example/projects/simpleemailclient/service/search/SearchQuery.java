@@ -0,0 +1,100 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Conjunctive query over the index: every term must match, optionally within a date range
+ * Matches are ranked by BM25, or by date when the query has no terms.
+ */
+public final class SearchQuery {
+
+    private final Set<String> terms = new LinkedHashSet<>();
+    private long fromMillis = Long.MIN_VALUE;
+    private long toMillis = Long.MAX_VALUE;
+    private Set<Long> messageIds;
+    private boolean matchesNothing;
+
+    /**
+     * Require every token of a text in a field
+     * @param field Field prefix from IndexedDocument, or "" for the default field
+     * @param text Free text; text without any token makes the query match nothing
+     */
+    public SearchQuery text(String field, String text) {
+        List<String> tokens = Analyzer.tokens(text);
+        if (tokens.isEmpty()) {
+            matchesNothing = true;
+        }
+        for (String token : tokens) {
+            terms.add(field + token);
+        }
+        return this;
+    }
+
+    /**
+     * Restrict to messages dated in [start, end]; either bound may be null
+     */
+    public SearchQuery between(LocalDateTime start, LocalDateTime end) {
+        if (start != null) {
+            fromMillis = Math.max(fromMillis, IndexedDocument.toMillis(start));
+        }
+        if (end != null) {
+            toMillis = Math.min(toMillis, IndexedDocument.toMillis(end));
+        }
+        return this;
+    }
+
+    /**
+     * Restrict to the given messages, for callers that filtered candidates elsewhere
+     * Restricted queries are not cached; the ids are not part of the canonical form.
+     */
+    public SearchQuery restrictTo(Collection<Long> ids) {
+        if (messageIds == null) {
+            messageIds = new HashSet<>(ids);
+        } else {
+            messageIds.retainAll(ids);
+        }
+        return this;
+    }
+
+    public boolean isRestricted() {
+        return messageIds != null;
+    }
+
+    public boolean hasTerms() {
+        return !terms.isEmpty();
+    }
+
+    public boolean matchesNothing() {
+        return matchesNothing || fromMillis > toMillis || messageIds != null && messageIds.isEmpty();
+    }
+
+    boolean inRange(long dateMillis) {
+        return dateMillis >= fromMillis && dateMillis <= toMillis;
+    }
+
+    boolean allows(long messageId) {
+        return messageIds == null || messageIds.contains(messageId);
+    }
+
+    List<byte[]> termBytes() {
+        List<byte[]> bytes = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            bytes.add(term.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        // Canonical form; also the result cache key
+        return "SearchQuery" + terms + (fromMillis != Long.MIN_VALUE || toMillis != Long.MAX_VALUE
+            ? "[" + fromMillis + ".." + toMillis + "]" : "") + (messageIds != null ? "[" + messageIds.size() + " ids]" : "") + (matchesNothing ? "[none]" : "");
+    }
+}
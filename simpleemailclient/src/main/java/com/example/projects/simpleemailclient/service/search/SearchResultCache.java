@@ -0,0 +1,234 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.service.SearchService.SearchResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Redis cache of ranked search results, keyed by (userId, normalized query, sort)
+ * Every user has an index generation that the search backend bumps once a change to the
+ * user's documents is visible to searches. Entries are stored under the generation they
+ * were computed at, so a change makes all of the user's entries unreachable at once and
+ * they simply expire; nothing is ever flushed. An entry holds the ranked ids and scores of
+ * the first result pages, and any page inside them is served from the list, with only the
+ * page's rows loaded from the database.
+ */
+@Component
+@Slf4j
+public class SearchResultCache {
+
+    private static final String GENERATION_PREFIX = "search:gen:";
+    private static final String RESULTS_PREFIX = "search:results:";
+    // Outlives every entry, so a generation that expired and restarts never revives one
+    private static final Duration GENERATION_TTL = Duration.ofDays(7);
+
+    private final StringRedisTemplate redisTemplate;
+    private final MessageRepository messageRepository;
+    private final Map<String, Counter> requests = new HashMap<>();
+
+    private final boolean enabled;
+    private final int depth;
+    private final Duration ttl;
+
+    public SearchResultCache(StringRedisTemplate redisTemplate,
+                             MessageRepository messageRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${email.search.cache.enabled:true}") boolean enabled,
+                             @Value("${email.search.cache.depth:200}") int depth,
+                             @Value("${email.search.cache.ttl-seconds:600}") long ttlSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.messageRepository = messageRepository;
+        this.enabled = enabled;
+        this.depth = depth;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        for (String result : List.of("hit", "miss", "bypass")) {
+            requests.put(result, Counter.builder("email.search.cache.requests")
+                .description("Search requests by result cache outcome")
+                .tag("result", result)
+                .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Serve a page from the cached ranking, computing and caching the ranking on a miss
+     * @param userId Owner of the searched messages
+     * @param query Canonical form of the query; equal queries must produce equal strings
+     * @param pageable Requested page; pages beyond the cached depth go to the backend
+     * @param backend Runs the query for a page, ranked as the backend would
+     */
+    public Page<SearchResult> search(Long userId, String query, Pageable pageable,
+                                     Function<Pageable, Page<SearchResult>> backend) {
+        if (!enabled || pageable.isUnpaged() || pageable.getOffset() + pageable.getPageSize() > depth) {
+            requests.get("bypass").increment();
+            return backend.apply(pageable);
+        }
+
+        String key;
+        String cached;
+        try {
+            key = resultsKey(userId, generation(userId), query, pageable);
+            cached = redisTemplate.opsForValue().get(key);
+        } catch (DataAccessException e) {
+            log.warn("Search result cache unavailable; searching without it: {}", e.getMessage());
+            requests.get("bypass").increment();
+            return backend.apply(pageable);
+        }
+
+        if (cached != null) {
+            requests.get("hit").increment();
+            return page(Ranking.decode(cached), pageable);
+        }
+
+        requests.get("miss").increment();
+        Page<SearchResult> ranked = backend.apply(PageRequest.of(0, depth, pageable.getSort()));
+        Ranking ranking = Ranking.of(ranked);
+        try {
+            redisTemplate.opsForValue().set(key, ranking.encode(), ttl);
+        } catch (DataAccessException e) {
+            log.warn("Failed to cache search results for user {}: {}", userId, e.getMessage());
+        }
+        int from = (int) Math.min(pageable.getOffset(), ranked.getContent().size());
+        int to = Math.min(from + pageable.getPageSize(), ranked.getContent().size());
+        return new PageImpl<>(new ArrayList<>(ranked.getContent().subList(from, to)), pageable,
+            ranked.getTotalElements());
+    }
+
+    /**
+     * Make every cached result of a user stale; call once the change is searchable
+     */
+    public void invalidate(Long userId) {
+        if (!enabled) {
+            return;
+        }
+        String key = GENERATION_PREFIX + userId;
+        try {
+            redisTemplate.opsForValue().increment(key);
+            redisTemplate.expire(key, GENERATION_TTL);
+        } catch (DataAccessException e) {
+            // Entries of the old generation stay reachable until they expire
+            log.warn("Failed to bump search index generation of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    public void invalidateAll(Collection<Long> userIds) {
+        userIds.forEach(this::invalidate);
+    }
+
+    /**
+     * Lower-case and collapse whitespace, for backends that take the raw query text
+     */
+    public static String normalize(String text) {
+        return text == null ? "" : text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private long generation(Long userId) {
+        String generation = redisTemplate.opsForValue().get(GENERATION_PREFIX + userId);
+        return generation != null ? Long.parseLong(generation) : 0L;
+    }
+
+    private static String resultsKey(Long userId, long generation, String query, Pageable pageable) {
+        String hash = UUID.nameUUIDFromBytes((query + "|" + pageable.getSort())
+            .getBytes(StandardCharsets.UTF_8)).toString();
+        return RESULTS_PREFIX + userId + ":" + generation + ":" + hash;
+    }
+
+    /**
+     * Load one page of a cached ranking; messages deleted since are skipped
+     */
+    private Page<SearchResult> page(Ranking ranking, Pageable pageable) {
+        int from = (int) Math.min(pageable.getOffset(), ranking.ids.size());
+        int to = Math.min(from + pageable.getPageSize(), ranking.ids.size());
+        List<Long> ids = ranking.ids.subList(from, to);
+        Map<Long, Message> messages = new HashMap<>();
+        if (!ids.isEmpty()) {
+            messageRepository.findAllById(ids).forEach(message -> messages.put(message.getId(), message));
+        }
+        List<SearchResult> results = new ArrayList<>(ids.size());
+        for (int i = from; i < to; i++) {
+            Message message = messages.get(ranking.ids.get(i));
+            if (message != null) {
+                results.add(new SearchHit(message.getId(), message.getSubject(), message.getFromAddress(),
+                    message.getMessageDate(), message.getSnippet(), ranking.scores.get(i)));
+            }
+        }
+        return new PageImpl<>(results, pageable, ranking.total);
+    }
+
+    /**
+     * Ranked ids and scores with the query's total hit count
+     * Encoded as "total;id:score,id,..." where unscored ids carry no score.
+     */
+    static final class Ranking {
+
+        final long total;
+        final List<Long> ids;
+        final List<Double> scores;
+
+        private Ranking(long total, List<Long> ids, List<Double> scores) {
+            this.total = total;
+            this.ids = ids;
+            this.scores = scores;
+        }
+
+        static Ranking of(Page<SearchResult> page) {
+            List<Long> ids = new ArrayList<>(page.getNumberOfElements());
+            List<Double> scores = new ArrayList<>(page.getNumberOfElements());
+            for (SearchResult result : page.getContent()) {
+                ids.add(result.getMessageId());
+                scores.add(result.getScore());
+            }
+            return new Ranking(page.getTotalElements(), ids, scores);
+        }
+
+        String encode() {
+            StringBuilder encoded = new StringBuilder(16 + ids.size() * 16).append(total).append(';');
+            for (int i = 0; i < ids.size(); i++) {
+                if (i > 0) {
+                    encoded.append(',');
+                }
+                encoded.append(ids.get(i));
+                if (scores.get(i) != null) {
+                    encoded.append(':').append(scores.get(i));
+                }
+            }
+            return encoded.toString();
+        }
+
+        static Ranking decode(String encoded) {
+            int separator = encoded.indexOf(';');
+            long total = Long.parseLong(encoded.substring(0, separator));
+            List<Long> ids = new ArrayList<>();
+            List<Double> scores = new ArrayList<>();
+            if (separator + 1 < encoded.length()) {
+                for (String entry : encoded.substring(separator + 1).split(",")) {
+                    int colon = entry.indexOf(':');
+                    ids.add(Long.valueOf(colon < 0 ? entry : entry.substring(0, colon)));
+                    scores.add(colon < 0 ? null : Double.valueOf(entry.substring(colon + 1)));
+                }
+            }
+            return new Ranking(total, ids, scores);
+        }
+    }
+}
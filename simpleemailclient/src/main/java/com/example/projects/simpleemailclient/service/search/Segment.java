@@ -0,0 +1,279 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable, read-only view of one index segment
+ * On disk segments are memory-mapped, so lookups read straight from the page cache
+ * and nothing is loaded on open. All reads use absolute positions, so one instance
+ * is safe to share between concurrent searches.
+ *
+ * Layout (big-endian; pointers are relative to their section):
+ * <pre>
+ * header   magic, version, docCount, termCount, sumDocLength(long),
+ *          docsOffset, storedOffset, termIndexOffset, termsOffset, postingsOffset
+ * docs     docCount x (messageId long, dateMillis long, length int, storedPointer int), ascending messageId
+ * stored   per doc: subject, from, snippet as vint length + UTF-8
+ * index    termCount x termPointer int
+ * terms    per term, ascending UTF-8 order: vint length + UTF-8, vint docFreq, vint postingsPointer
+ * postings per term: docFreq x vint (docDelta &lt;&lt; 1 | freqIsOne), then vint freq unless freqIsOne
+ * </pre>
+ */
+public final class Segment {
+
+    static final int MAGIC = 0x45534547;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 48;
+    static final int DOC_BYTES = 24;
+
+    private final String name;
+    private final ByteBuffer buffer;
+    private final int docCount;
+    private final int termCount;
+    private final long sumDocLength;
+    private final int docsOffset;
+    private final int storedOffset;
+    private final int termIndexOffset;
+    private final int termsOffset;
+    private final int postingsOffset;
+
+    Segment(String name, ByteBuffer buffer) {
+        this.name = name;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not an index segment: " + name);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Unsupported segment version " + buffer.getInt(4) + " in " + name);
+        }
+        this.docCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        this.sumDocLength = buffer.getLong(16);
+        this.docsOffset = buffer.getInt(24);
+        this.storedOffset = buffer.getInt(28);
+        this.termIndexOffset = buffer.getInt(32);
+        this.termsOffset = buffer.getInt(36);
+        this.postingsOffset = buffer.getInt(40);
+    }
+
+    /**
+     * Memory-map a segment file
+     */
+    static Segment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new Segment(file.getFileName().toString(), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int docCount() {
+        return docCount;
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    public long sumDocLength() {
+        return sumDocLength;
+    }
+
+    public int sizeBytes() {
+        return buffer.capacity();
+    }
+
+    public long messageId(int doc) {
+        return buffer.getLong(docsOffset + doc * DOC_BYTES);
+    }
+
+    public long dateMillis(int doc) {
+        return buffer.getLong(docsOffset + doc * DOC_BYTES + 8);
+    }
+
+    public int length(int doc) {
+        return buffer.getInt(docsOffset + doc * DOC_BYTES + 16);
+    }
+
+    /**
+     * Stored subject, sender and snippet of a document
+     */
+    public String[] stored(int doc) {
+        int[] position = {storedOffset + buffer.getInt(docsOffset + doc * DOC_BYTES + 20)};
+        return new String[] {readString(position), readString(position), readString(position)};
+    }
+
+    /**
+     * Document number of a message
+     * @return Document number, or -1 if the message is not in this segment
+     */
+    public int findDoc(long messageId) {
+        int low = 0;
+        int high = docCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long id = messageId(mid);
+            if (id < messageId) {
+                low = mid + 1;
+            } else if (id > messageId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Term number of a term
+     * @param term UTF-8 bytes
+     * @return Term number, or -1 if no document contains the term
+     */
+    public int findTerm(byte[] term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = compareTerm(mid, term);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public byte[] term(int termNumber) {
+        int[] position = {termEntry(termNumber)};
+        int length = readVInt(position);
+        byte[] term = new byte[length];
+        buffer.get(position[0], term);
+        return term;
+    }
+
+    public int docFreq(int termNumber) {
+        int[] position = {termEntry(termNumber)};
+        int termLength = readVInt(position);
+        position[0] += termLength;
+        return readVInt(position);
+    }
+
+    /**
+     * Decode the postings of a term
+     */
+    public Postings postings(int termNumber) {
+        int[] position = {termEntry(termNumber)};
+        int termLength = readVInt(position);
+        position[0] += termLength;
+        int docFreq = readVInt(position);
+        position[0] = postingsOffset + readVInt(position);
+
+        int[] docs = new int[docFreq];
+        int[] freqs = new int[docFreq];
+        int doc = 0;
+        for (int i = 0; i < docFreq; i++) {
+            int code = readVInt(position);
+            doc += code >>> 1;
+            docs[i] = doc;
+            freqs[i] = (code & 1) != 0 ? 1 : readVInt(position);
+        }
+        return new Postings(docs, freqs);
+    }
+
+    private int termEntry(int termNumber) {
+        return termsOffset + buffer.getInt(termIndexOffset + termNumber * 4);
+    }
+
+    private int compareTerm(int termNumber, byte[] term) {
+        int[] position = {termEntry(termNumber)};
+        int length = readVInt(position);
+        int start = position[0];
+        int common = Math.min(length, term.length);
+        for (int i = 0; i < common; i++) {
+            int compare = Integer.compare(buffer.get(start + i) & 0xff, term[i] & 0xff);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return Integer.compare(length, term.length);
+    }
+
+    private String readString(int[] position) {
+        int length = readVInt(position);
+        byte[] bytes = new byte[length];
+        buffer.get(position[0], bytes);
+        position[0] += length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readVInt(int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position[0]++);
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[docs=" + docCount + ", terms=" + termCount + ", bytes=" + sizeBytes() + "]";
+    }
+
+    /**
+     * Decoded postings list: ascending document numbers and their term frequencies
+     */
+    public static final class Postings {
+        private final int[] docs;
+        private final int[] freqs;
+
+        Postings(int[] docs, int[] freqs) {
+            this.docs = docs;
+            this.freqs = freqs;
+        }
+
+        public int size() {
+            return docs.length;
+        }
+
+        public int doc(int i) {
+            return docs[i];
+        }
+
+        public int freq(int i) {
+            return freqs[i];
+        }
+
+        /**
+         * Index of the first posting at or after a document, searching from an index
+         * @return Index, or size() if there is none
+         */
+        int advance(int from, int target) {
+            int low = from;
+            int high = docs.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (docs[mid] < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+    }
+}
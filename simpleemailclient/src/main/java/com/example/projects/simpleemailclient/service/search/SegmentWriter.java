@@ -0,0 +1,328 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Encodes segments in the layout described on Segment
+ * New segments are built from analyzed documents; merges combine existing
+ * segments by remapping their postings, without re-analyzing any text.
+ */
+public final class SegmentWriter {
+
+    private static final Comparator<byte[]> UTF8_ORDER = Arrays::compareUnsigned;
+
+    private SegmentWriter() {
+    }
+
+    /**
+     * Encode documents into a new segment
+     * @param documents Documents with distinct message ids, in any order
+     */
+    public static ByteBuffer write(List<IndexedDocument> documents) {
+        List<IndexedDocument> sorted = new ArrayList<>(documents);
+        sorted.sort(Comparator.comparingLong(IndexedDocument::getMessageId));
+
+        TreeMap<byte[], List<int[]>> terms = new TreeMap<>(UTF8_ORDER);
+        for (int doc = 0; doc < sorted.size(); doc++) {
+            for (Map.Entry<String, Integer> entry : sorted.get(doc).getTermFrequencies().entrySet()) {
+                terms.computeIfAbsent(entry.getKey().getBytes(StandardCharsets.UTF_8), t -> new ArrayList<>())
+                    .add(new int[] {doc, entry.getValue()});
+            }
+        }
+
+        Iterator<Map.Entry<byte[], List<int[]>>> entries = terms.entrySet().iterator();
+        return encode(sorted, new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public TermPostings next() {
+                Map.Entry<byte[], List<int[]>> entry = entries.next();
+                List<int[]> postings = entry.getValue();
+                int[] docs = new int[postings.size()];
+                int[] freqs = new int[postings.size()];
+                for (int i = 0; i < docs.length; i++) {
+                    docs[i] = postings.get(i)[0];
+                    freqs[i] = postings.get(i)[1];
+                }
+                return new TermPostings(entry.getKey(), docs, freqs, docs.length);
+            }
+        });
+    }
+
+    /**
+     * Merge segments into one, dropping deleted documents
+     * @param sources Segments to merge
+     * @param deleted Deleted documents of each source, same order
+     */
+    public static ByteBuffer merge(List<Segment> sources, List<BitSet> deleted) {
+        // New document numbers: live documents of all sources, in ascending message id order
+        int[][] docMap = new int[sources.size()][];
+        List<IndexedDocument> documents = new ArrayList<>();
+        PriorityQueue<int[]> heads = new PriorityQueue<>(
+            Comparator.comparingLong(head -> sources.get(head[0]).messageId(head[1])));
+        for (int s = 0; s < sources.size(); s++) {
+            docMap[s] = new int[sources.get(s).docCount()];
+            Arrays.fill(docMap[s], -1);
+            int first = deleted.get(s).nextClearBit(0);
+            if (first < sources.get(s).docCount()) {
+                heads.add(new int[] {s, first});
+            }
+        }
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            Segment source = sources.get(head[0]);
+            docMap[head[0]][head[1]] = documents.size();
+            documents.add(IndexedDocument.stored(source.messageId(head[1]), source.dateMillis(head[1]),
+                source.length(head[1]), source.stored(head[1])));
+            int next = deleted.get(head[0]).nextClearBit(head[1] + 1);
+            if (next < source.docCount()) {
+                heads.add(new int[] {head[0], next});
+            }
+        }
+        return encode(documents, new MergedTerms(sources, docMap));
+    }
+
+    private static ByteBuffer encode(List<IndexedDocument> documents, Iterator<TermPostings> terms) {
+        Bytes stored = new Bytes(documents.size() * 64);
+        int[] storedPointers = new int[documents.size()];
+        long sumDocLength = 0;
+        for (int doc = 0; doc < documents.size(); doc++) {
+            IndexedDocument document = documents.get(doc);
+            storedPointers[doc] = stored.size();
+            stored.writeString(document.getSubject());
+            stored.writeString(document.getFromAddress());
+            stored.writeString(document.getSnippet());
+            sumDocLength += document.getLength();
+        }
+
+        Bytes termBytes = new Bytes(4096);
+        Bytes postings = new Bytes(4096);
+        Bytes termIndex = new Bytes(4096);
+        int termCount = 0;
+        while (terms.hasNext()) {
+            TermPostings term = terms.next();
+            if (term.count == 0) {
+                continue;
+            }
+            termIndex.writeInt(termBytes.size());
+            termBytes.writeVInt(term.term.length);
+            termBytes.write(term.term);
+            termBytes.writeVInt(term.count);
+            termBytes.writeVInt(postings.size());
+            int previous = 0;
+            for (int i = 0; i < term.count; i++) {
+                int delta = term.docs[i] - previous;
+                previous = term.docs[i];
+                if (term.freqs[i] == 1) {
+                    postings.writeVInt(delta << 1 | 1);
+                } else {
+                    postings.writeVInt(delta << 1);
+                    postings.writeVInt(term.freqs[i]);
+                }
+            }
+            termCount++;
+        }
+
+        long docsOffset = Segment.HEADER_BYTES;
+        long storedOffset = docsOffset + (long) documents.size() * Segment.DOC_BYTES;
+        long termIndexOffset = storedOffset + stored.size();
+        long termsOffset = termIndexOffset + termIndex.size();
+        long postingsOffset = termsOffset + termBytes.size();
+        long total = postingsOffset + postings.size();
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Segment of " + total + " bytes exceeds the 2 GB limit");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) total);
+        buffer.putInt(Segment.MAGIC)
+            .putInt(Segment.VERSION)
+            .putInt(documents.size())
+            .putInt(termCount)
+            .putLong(sumDocLength)
+            .putInt((int) docsOffset)
+            .putInt((int) storedOffset)
+            .putInt((int) termIndexOffset)
+            .putInt((int) termsOffset)
+            .putInt((int) postingsOffset);
+        buffer.position((int) docsOffset);
+        for (int doc = 0; doc < documents.size(); doc++) {
+            IndexedDocument document = documents.get(doc);
+            buffer.putLong(document.getMessageId())
+                .putLong(document.getDateMillis())
+                .putInt(document.getLength())
+                .putInt(storedPointers[doc]);
+        }
+        stored.copyTo(buffer);
+        termIndex.copyTo(buffer);
+        termBytes.copyTo(buffer);
+        postings.copyTo(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Postings of one term
+     */
+    private static final class TermPostings {
+        final byte[] term;
+        final int[] docs;
+        final int[] freqs;
+        final int count;
+
+        TermPostings(byte[] term, int[] docs, int[] freqs, int count) {
+            this.term = term;
+            this.docs = docs;
+            this.freqs = freqs;
+            this.count = count;
+        }
+    }
+
+    /**
+     * K-way merge of the sources' sorted term dictionaries with document numbers remapped
+     */
+    private static final class MergedTerms implements Iterator<TermPostings> {
+        private final List<Segment> sources;
+        private final int[][] docMap;
+        private final PriorityQueue<TermCursor> cursors = new PriorityQueue<>((a, b) -> UTF8_ORDER.compare(a.term, b.term));
+
+        MergedTerms(List<Segment> sources, int[][] docMap) {
+            this.sources = sources;
+            this.docMap = docMap;
+            for (int s = 0; s < sources.size(); s++) {
+                TermCursor cursor = new TermCursor(s);
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cursors.isEmpty();
+        }
+
+        @Override
+        public TermPostings next() {
+            if (cursors.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            byte[] term = cursors.peek().term;
+            // Pack (newDoc, freq) so one sort orders postings gathered from all sources
+            long[] packed = new long[16];
+            int count = 0;
+            while (!cursors.isEmpty() && Arrays.equals(cursors.peek().term, term)) {
+                TermCursor cursor = cursors.poll();
+                Segment.Postings postings = sources.get(cursor.source).postings(cursor.termNumber);
+                int[] map = docMap[cursor.source];
+                for (int i = 0; i < postings.size(); i++) {
+                    int doc = map[postings.doc(i)];
+                    if (doc >= 0) {
+                        if (count == packed.length) {
+                            packed = Arrays.copyOf(packed, count * 2);
+                        }
+                        packed[count++] = (long) doc << 32 | postings.freq(i);
+                    }
+                }
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+            Arrays.sort(packed, 0, count);
+            int[] docs = new int[count];
+            int[] freqs = new int[count];
+            for (int i = 0; i < count; i++) {
+                docs[i] = (int) (packed[i] >>> 32);
+                freqs[i] = (int) packed[i];
+            }
+            return new TermPostings(term, docs, freqs, count);
+        }
+
+        private final class TermCursor {
+            final int source;
+            int termNumber = -1;
+            byte[] term;
+
+            TermCursor(int source) {
+                this.source = source;
+            }
+
+            boolean advance() {
+                termNumber++;
+                if (termNumber >= sources.get(source).termCount()) {
+                    return false;
+                }
+                term = sources.get(source).term(termNumber);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Growable byte buffer with variable-length integer encoding
+     */
+    private static final class Bytes {
+        private byte[] bytes;
+        private int size;
+
+        Bytes(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeVInt(int value) {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            bytes[size++] = (byte) (value >>> 24);
+            bytes[size++] = (byte) (value >>> 16);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        void write(byte[] data) {
+            ensure(data.length);
+            System.arraycopy(data, 0, bytes, size, data.length);
+            size += data.length;
+        }
+
+        void writeString(String value) {
+            byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            writeVInt(data.length);
+            write(data);
+        }
+
+        void copyTo(ByteBuffer buffer) {
+            buffer.put(bytes, 0, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
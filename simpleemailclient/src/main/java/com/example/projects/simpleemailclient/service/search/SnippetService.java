@@ -0,0 +1,172 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.service.SearchService.SearchResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Query-aware snippets for search result pages
+ * A hit's snippet is the passage of its body text that best covers the query terms, with
+ * the terms marked (see Highlighter). The text comes from the message's MIME object in
+ * MinIO, read in small ranges only as far as the first text part: a message whose text
+ * follows a large attachment costs at most maxBytes of transfer, never the whole object,
+ * and nothing beyond one part's text is held in memory. Snippets are cached per
+ * (message, query terms); a message's MIME object never changes, so entries are only
+ * evicted, never invalidated. Hits whose object cannot be read keep their stored
+ * snippet, highlighted where it contains a term.
+ */
+@Component
+@Slf4j
+public class SnippetService {
+
+    private final MimeRangeSource mimeRangeSource;
+    private final MessageRepository messageRepository;
+    private final ThreadPoolExecutor readers;
+    private final Map<String, String> cache;
+
+    private final long maxBytes;
+    private final long rangeBytes;
+    private final int snippetChars;
+    private final int textChars;
+
+    public SnippetService(MimeRangeSource mimeRangeSource,
+                          MessageRepository messageRepository,
+                          @Value("${email.search.snippets.max-bytes:262144}") long maxBytes,
+                          @Value("${email.search.snippets.range-bytes:32768}") long rangeBytes,
+                          @Value("${email.search.snippets.snippet-chars:200}") int snippetChars,
+                          @Value("${email.search.snippets.text-chars:20000}") int textChars,
+                          @Value("${email.search.snippets.cache-size:10000}") int cacheSize,
+                          @Value("${email.search.snippets.threads:4}") int threads) {
+        this.mimeRangeSource = mimeRangeSource;
+        this.messageRepository = messageRepository;
+        this.maxBytes = maxBytes;
+        this.rangeBytes = rangeBytes;
+        this.snippetChars = snippetChars;
+        this.textChars = textChars;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        AtomicInteger counter = new AtomicInteger();
+        // Bounded queue; when full the requesting thread reads the message itself
+        this.readers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads * 16), runnable -> {
+                Thread thread = new Thread(runnable, "search-snippets-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Replace the snippets of a result page with highlighted passages
+     * @param terms Query terms, as produced by Analyzer.tokens; none leaves the page as it is
+     */
+    public Page<SearchResult> highlight(Page<SearchResult> page, List<String> terms) {
+        if (terms.isEmpty() || page.isEmpty()) {
+            return page;
+        }
+        List<String> distinct = new ArrayList<>(new TreeSet<>(terms));
+        String termKey = String.join(" ", distinct);
+
+        Map<Long, String> snippets = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        synchronized (cache) {
+            for (SearchResult hit : page.getContent()) {
+                String cached = cache.get(hit.getMessageId() + ":" + termKey);
+                if (cached != null) {
+                    snippets.put(hit.getMessageId(), cached);
+                } else {
+                    misses.add(hit.getMessageId());
+                }
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            Map<Long, Future<String>> reads = new HashMap<>();
+            for (Message message : messageRepository.findAllById(misses)) {
+                if (message.getMimePointer() != null && !message.getMimePointer().isBlank()) {
+                    reads.put(message.getId(), readers.submit(() -> snippet(message.getMimePointer(), distinct)));
+                }
+            }
+            for (Map.Entry<Long, Future<String>> read : reads.entrySet()) {
+                String snippet = await(read.getKey(), read.getValue());
+                if (snippet != null) {
+                    snippets.put(read.getKey(), snippet);
+                    synchronized (cache) {
+                        cache.put(read.getKey() + ":" + termKey, snippet);
+                    }
+                }
+            }
+        }
+
+        List<SearchResult> hits = new ArrayList<>(page.getNumberOfElements());
+        for (SearchResult hit : page.getContent()) {
+            String snippet = snippets.get(hit.getMessageId());
+            if (snippet == null) {
+                snippet = stored(hit.getSnippet(), distinct);
+            }
+            hits.add(new SearchHit(hit.getMessageId(), hit.getSubject(), hit.getFromAddress(),
+                hit.getMessageDate(), snippet, hit.getScore()));
+        }
+        return new PageImpl<>(hits, page.getPageable(), page.getTotalElements());
+    }
+
+    /**
+     * Highlighted passage of a message's body text; the start of the text if no term occurs
+     */
+    String snippet(String mimePointer, List<String> terms) throws IOException {
+        String text;
+        try (InputStream in = new RangedInputStream(mimeRangeSource, mimePointer, rangeBytes, maxBytes)) {
+            text = MimeTextExtractor.extract(in, textChars);
+        }
+        String highlighted = Highlighter.highlight(text, terms, snippetChars);
+        return highlighted != null ? highlighted : Highlighter.plain(text, snippetChars);
+    }
+
+    private String stored(String snippet, List<String> terms) {
+        String highlighted = Highlighter.highlight(snippet, terms, snippetChars);
+        return highlighted != null ? highlighted : Highlighter.plain(snippet, snippetChars);
+    }
+
+    private String await(Long messageId, Future<String> read) {
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            read.cancel(true);
+            return null;
+        } catch (ExecutionException e) {
+            log.warn("Failed to build snippet for message {}; using the stored one: {}",
+                messageId, e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        readers.shutdownNow();
+    }
+}
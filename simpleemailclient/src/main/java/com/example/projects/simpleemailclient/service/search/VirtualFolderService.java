@@ -0,0 +1,386 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.exception.ResourceNotFoundException;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.SavedSearch;
+import com.example.projects.simpleemailclient.model.SavedSearchMember;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.SavedSearchMemberRepository;
+import com.example.projects.simpleemailclient.repository.SavedSearchRepository;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Saved searches kept as live virtual folders
+ * Each user's saved queries are compiled once into SavedSearchMatchers and cached.
+ * Every new message is matched against them inside its own transaction and stored as
+ * a member of the folders it matches, with total and unread counters maintained the
+ * way Mailbox counters are; flag changes, edits and deletes adjust membership and
+ * counters the same way. Opening a folder is then a page over its membership index.
+ * A new or changed saved search is backfilled from the user's newest messages.
+ */
+@Component
+@Slf4j
+public class VirtualFolderService {
+
+    private static final int MAX_NAME_LENGTH = 100;
+
+    private final SavedSearchRepository savedSearchRepository;
+    private final SavedSearchMemberRepository memberRepository;
+    private final MessageRepository messageRepository;
+    private final MailboxRepository mailboxRepository;
+    private final MessageBodySource messageBodySource;
+
+    private final LinkedHashMap<Long, Entry> folders = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int maxPerUser;
+    private final int backfillMessages;
+    private final int pageSize;
+    private final int maxUsers;
+    private final long maxBodyChars;
+
+    public VirtualFolderService(SavedSearchRepository savedSearchRepository,
+                                SavedSearchMemberRepository memberRepository,
+                                MessageRepository messageRepository,
+                                MailboxRepository mailboxRepository,
+                                MessageBodySource messageBodySource,
+                                @Value("${email.folders.max-per-user:50}") int maxPerUser,
+                                @Value("${email.folders.backfill-messages:10000}") int backfillMessages,
+                                @Value("${email.folders.page-size:500}") int pageSize,
+                                @Value("${email.folders.cache.max-users:10000}") int maxUsers,
+                                @Value("${email.search.embedded.max-body-chars:65536}") long maxBodyChars) {
+        this.savedSearchRepository = savedSearchRepository;
+        this.memberRepository = memberRepository;
+        this.messageRepository = messageRepository;
+        this.mailboxRepository = mailboxRepository;
+        this.messageBodySource = messageBodySource;
+        this.maxPerUser = maxPerUser;
+        this.backfillMessages = backfillMessages;
+        this.pageSize = pageSize;
+        this.maxUsers = maxUsers;
+        this.maxBodyChars = maxBodyChars;
+    }
+
+    /**
+     * Create a virtual folder, or replace the query of the user's folder of that name,
+     * and fill it from the user's newest messages
+     * @param query Query in MailQueryParser syntax
+     * @return Saved folder with its counts
+     */
+    @Transactional
+    public SavedSearch saveFolder(Long userId, String name, String query) {
+        if (name == null || name.isBlank() || name.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Saved search name must be 1 to " + MAX_NAME_LENGTH + " characters");
+        }
+        MailQuery parsed = MailQueryParser.parse(query);
+
+        SavedSearch folder = savedSearchRepository.findByUserIdAndName(userId, name).orElse(null);
+        if (folder == null) {
+            if (savedSearchRepository.findByUserIdOrderByNameAsc(userId).size() >= maxPerUser) {
+                throw new IllegalArgumentException("At most " + maxPerUser + " saved searches per user");
+            }
+            folder = SavedSearch.builder().userId(userId).name(name).build();
+        } else {
+            memberRepository.deleteBySavedSearchId(folder.getId());
+        }
+        folder.setQuery(query);
+        folder = savedSearchRepository.save(folder);
+        invalidate(userId);
+
+        backfill(folder, compile(userId, parsed));
+        return savedSearchRepository.save(folder);
+    }
+
+    @Transactional(readOnly = true)
+    public List<SavedSearch> getFolders(Long userId) {
+        return savedSearchRepository.findByUserIdOrderByNameAsc(userId);
+    }
+
+    /**
+     * Messages of a virtual folder, newest first
+     */
+    @Transactional(readOnly = true)
+    public Page<Message> openFolder(Long userId, Long folderId, Pageable pageable) {
+        SavedSearch folder = savedSearchRepository.findByIdAndUserId(folderId, userId)
+            .orElseThrow(() -> new ResourceNotFoundException("SavedSearch", folderId));
+        return memberRepository.findMessages(folder.getId(), pageable);
+    }
+
+    @Transactional
+    public void deleteFolder(Long userId, Long folderId) {
+        SavedSearch folder = savedSearchRepository.findByIdAndUserId(folderId, userId)
+            .orElseThrow(() -> new ResourceNotFoundException("SavedSearch", folderId));
+        memberRepository.deleteBySavedSearchId(folder.getId());
+        savedSearchRepository.delete(folder);
+        invalidate(userId);
+    }
+
+    /**
+     * Add a newly stored message to the folders it matches; runs in the caller's transaction
+     */
+    public void percolate(Message message) {
+        List<Folder> userFolders = folders(message.getUserId());
+        if (userFolders.isEmpty()) {
+            return;
+        }
+        SavedSearchMatcher.Candidate candidate = candidate(message);
+        List<Long> matched = match(userFolders, candidate);
+        if (matched.isEmpty()) {
+            return;
+        }
+        addMembers(matched, message);
+        savedSearchRepository.incrementTotalCount(matched, 1);
+        if (candidate.isUnread()) {
+            savedSearchRepository.incrementUnreadCount(matched, 1);
+        }
+        log.debug("Message {} matched saved searches {}", message.getId(), matched);
+    }
+
+    /**
+     * Re-match a changed message, moving it in or out of folders and keeping unread counts current
+     * @param wasUnread Whether the message was unread before the change
+     */
+    public void refresh(Message message, boolean wasUnread) {
+        List<Folder> userFolders = folders(message.getUserId());
+        if (userFolders.isEmpty()) {
+            return;
+        }
+        SavedSearchMatcher.Candidate candidate = candidate(message);
+        boolean isUnread = candidate.isUnread();
+        Set<Long> matched = new HashSet<>(match(userFolders, candidate));
+        Set<Long> current = new HashSet<>(memberRepository.findSavedSearchIdsByMessageId(message.getId()));
+
+        List<Long> removed = new ArrayList<>();
+        List<Long> kept = new ArrayList<>();
+        for (Long id : current) {
+            (matched.contains(id) ? kept : removed).add(id);
+        }
+        List<Long> added = new ArrayList<>();
+        for (Long id : matched) {
+            if (!current.contains(id)) {
+                added.add(id);
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            memberRepository.deleteByMessageIdAndSavedSearchIds(message.getId(), removed);
+            savedSearchRepository.incrementTotalCount(removed, -1);
+            if (wasUnread) {
+                savedSearchRepository.incrementUnreadCount(removed, -1);
+            }
+        }
+        if (!added.isEmpty()) {
+            addMembers(added, message);
+            savedSearchRepository.incrementTotalCount(added, 1);
+            if (isUnread) {
+                savedSearchRepository.incrementUnreadCount(added, 1);
+            }
+        }
+        if (!kept.isEmpty() && wasUnread != isUnread) {
+            savedSearchRepository.incrementUnreadCount(kept, isUnread ? 1 : -1);
+        }
+    }
+
+    /**
+     * Drop a deleted message from its folders; runs in the caller's transaction
+     */
+    public void remove(Message message) {
+        if (folders(message.getUserId()).isEmpty()) {
+            return;
+        }
+        List<Long> current = memberRepository.findSavedSearchIdsByMessageId(message.getId());
+        if (current.isEmpty()) {
+            return;
+        }
+        memberRepository.deleteByMessageIdAndSavedSearchIds(message.getId(), current);
+        savedSearchRepository.incrementTotalCount(current, -1);
+        if (candidate(message).isUnread()) {
+            savedSearchRepository.incrementUnreadCount(current, -1);
+        }
+    }
+
+    /**
+     * Drop members whose message is gone and recount a user's folders
+     * For bulk changes that bypass the per-message hooks.
+     */
+    @Transactional
+    public void recount(Long userId) {
+        int orphans = memberRepository.deleteOrphans(userId);
+        savedSearchRepository.recalculateCounts(userId);
+        log.debug("Recounted saved searches of user {}, dropped {} stale members", userId, orphans);
+    }
+
+    /**
+     * Drop a user's compiled folders now and again after the current transaction commits;
+     * also needed when mailboxes named by in: clauses change
+     */
+    public void invalidate(Long userId) {
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    private void backfill(SavedSearch folder, SavedSearchMatcher matcher) {
+        long start = System.nanoTime();
+        int total = 0;
+        int unread = 0;
+        int scanned = 0;
+        long beforeId = Long.MAX_VALUE;
+        while (scanned < backfillMessages) {
+            int limit = Math.min(pageSize, backfillMessages - scanned);
+            List<Message> page = messageRepository.findPageByUserIdBefore(folder.getUserId(), beforeId,
+                PageRequest.of(0, limit));
+            if (page.isEmpty()) {
+                break;
+            }
+            List<SavedSearchMember> members = new ArrayList<>();
+            for (Message message : page) {
+                SavedSearchMatcher.Candidate candidate = candidate(message);
+                if (matcher.matches(candidate)) {
+                    members.add(member(folder.getId(), message));
+                    if (candidate.isUnread()) {
+                        unread++;
+                    }
+                }
+            }
+            if (!members.isEmpty()) {
+                memberRepository.saveAll(members);
+            }
+            total += members.size();
+            scanned += page.size();
+            beforeId = page.get(page.size() - 1).getId();
+            if (page.size() < limit) {
+                break;
+            }
+        }
+        folder.setTotalCount(total);
+        folder.setUnreadCount(unread);
+        log.debug("Backfilled saved search {} of user {}: {} of {} messages matched in {} ms", folder.getName(),
+            folder.getUserId(), total, scanned, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private List<Long> match(List<Folder> userFolders, SavedSearchMatcher.Candidate candidate) {
+        List<Long> matched = new ArrayList<>();
+        for (Folder folder : userFolders) {
+            if (folder.matcher.matches(candidate)) {
+                matched.add(folder.id);
+            }
+        }
+        return matched;
+    }
+
+    private void addMembers(List<Long> savedSearchIds, Message message) {
+        List<SavedSearchMember> members = new ArrayList<>(savedSearchIds.size());
+        for (Long id : savedSearchIds) {
+            members.add(member(id, message));
+        }
+        memberRepository.saveAll(members);
+    }
+
+    private static SavedSearchMember member(Long savedSearchId, Message message) {
+        return SavedSearchMember.builder()
+            .savedSearchId(savedSearchId)
+            .messageId(message.getId())
+            .messageDate(message.getMessageDate())
+            .build();
+    }
+
+    private SavedSearchMatcher.Candidate candidate(Message message) {
+        return SavedSearchMatcher.Candidate.of(message, messageBodySource, maxBodyChars);
+    }
+
+    private SavedSearchMatcher compile(Long userId, MailQuery query) {
+        return SavedSearchMatcher.compile(query, name -> QueryPlanner.resolveMailbox(mailboxRepository, userId, name)
+            .map(Set::of).orElse(Set.of()));
+    }
+
+    /**
+     * The user's compiled folders, loading on a miss
+     * A load first puts a placeholder entry and installs its list only if that placeholder
+     * is still there, so a list compiled from rows read before an invalidation is not cached.
+     */
+    private List<Folder> folders(Long userId) {
+        Entry loading = new Entry(null);
+        synchronized (folders) {
+            Entry cached = folders.get(userId);
+            if (cached != null && cached.folders != null) {
+                return cached.folders;
+            }
+            folders.put(userId, loading);
+            if (folders.size() > maxUsers) {
+                folders.remove(folders.keySet().iterator().next());
+            }
+        }
+        List<Folder> compiled = new ArrayList<>();
+        try {
+            for (SavedSearch savedSearch : savedSearchRepository.findByUserIdOrderByNameAsc(userId)) {
+                try {
+                    MailQuery query = MailQueryParser.parse(savedSearch.getQuery());
+                    compiled.add(new Folder(savedSearch.getId(), compile(userId, query)));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Skipping saved search {} of user {}: {}", savedSearch.getId(), userId, e.getMessage());
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (folders) {
+                folders.remove(userId, loading);
+            }
+            throw e;
+        }
+        synchronized (folders) {
+            // Entries compare by identity: an invalidation or eviction since the load began wins
+            folders.replace(userId, loading, new Entry(compiled));
+        }
+        return compiled;
+    }
+
+    private void evict(Long userId) {
+        synchronized (folders) {
+            folders.remove(userId);
+        }
+    }
+
+    private static final class Folder {
+
+        final Long id;
+        final SavedSearchMatcher matcher;
+
+        Folder(Long id, SavedSearchMatcher matcher) {
+            this.id = id;
+            this.matcher = matcher;
+        }
+    }
+
+    /**
+     * A user's compiled folders, or with null folders a load in progress
+     */
+    private static final class Entry {
+
+        final List<Folder> folders;
+
+        Entry(List<Folder> folders) {
+            this.folders = folders;
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package com.example.projects.simpleemailclient.service.sieve;
+
+import com.example.projects.simpleemailclient.exception.InvalidRuleException;
+import com.example.projects.simpleemailclient.model.Rule.RuleType;
+import com.example.projects.simpleemailclient.service.rules.CompiledRule;
+import com.example.projects.simpleemailclient.service.rules.Condition;
+import com.example.projects.simpleemailclient.service.rules.Conditions;
+import com.example.projects.simpleemailclient.service.rules.RuleAction;
+import com.example.projects.simpleemailclient.service.rules.RuleField;
+import com.example.projects.simpleemailclient.service.rules.TextOperator;
+import com.example.projects.simpleemailclient.service.sieve.SieveParser.Argument;
+import com.example.projects.simpleemailclient.service.sieve.SieveParser.Command;
+import com.example.projects.simpleemailclient.service.sieve.SieveParser.Test;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Compiles Sieve scripts (RFC 5228 with the fileinto and vacation extensions)
+ * into the same compiled rules that native rules use.
+ *
+ * Sieve runs commands top to bottom and "stop" ends processing. Each run of
+ * actions becomes one rule whose condition is the conjunction of the enclosing
+ * if/elsif/else branches (an elsif or else branch also requires every earlier
+ * test of its chain to be false). Rules keep script order, and a "stop" makes
+ * the rule it ends a stop rule, so rule-set matching reproduces script
+ * execution without interpreting the script per message.
+ *
+ * Supported tests: address, header, exists, size, allof, anyof, not, true, false.
+ * Match types :is, :contains and :matches; address parts :all, :localpart and
+ * :domain; comparator i;ascii-casemap. Actions: keep, discard, fileinto,
+ * redirect, vacation and stop.
+ */
+@Component
+public class SieveCompiler {
+
+    /**
+     * Compiled Sieve rules get ids from here upwards, below any real rule id
+     */
+    public static final long RULE_ID_BASE = Long.MIN_VALUE / 2;
+
+    private static final Set<String> CAPABILITIES = Set.of("fileinto", "vacation", "comparator-i;ascii-casemap");
+    private static final String DEFAULT_COMPARATOR = "i;ascii-casemap";
+    private static final int DEFAULT_VACATION_DAYS = 7;
+
+    /**
+     * Compile a script
+     * @param script Sieve script source
+     * @param priority Priority of every compiled rule relative to native rules
+     * @return Compiled program
+     * @throws InvalidRuleException on syntax errors and unsupported commands, tests or extensions
+     */
+    public SieveProgram compile(String script, int priority) {
+        if (script == null) {
+            throw new InvalidRuleException("Sieve script is empty");
+        }
+        Compilation compilation = new Compilation(priority);
+        compilation.block(SieveParser.parse(script), Collections.emptyList(), true);
+        return new SieveProgram(compilation.rules, compilation.sharedSlots);
+    }
+
+    /**
+     * State of one script compilation
+     */
+    private static final class Compilation {
+        private final int priority;
+        private final List<CompiledRule> rules = new ArrayList<>();
+        private final Set<String> required = new HashSet<>();
+        private int sharedSlots;
+
+        Compilation(int priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * Compile a command block under the given branch conditions
+         * @return true if the block ends in an unconditional stop
+         */
+        boolean block(List<Command> commands, List<Condition> path, boolean topLevel) {
+            List<RuleAction> pending = new ArrayList<>();
+            boolean requireAllowed = topLevel;
+            for (int i = 0; i < commands.size(); i++) {
+                Command command = commands.get(i);
+                if (!"require".equals(command.name)) {
+                    requireAllowed = false;
+                }
+                switch (command.name) {
+                    case "require":
+                        if (!requireAllowed) {
+                            throw error(command.line, "require must come before all other commands");
+                        }
+                        require(command);
+                        break;
+                    case "if":
+                        emit(pending, path, false);
+                        pending = new ArrayList<>();
+                        i = ifChain(commands, i, path) - 1;
+                        break;
+                    case "elsif":
+                    case "else":
+                        throw error(command.line, command.name + " without a preceding if");
+                    case "stop":
+                        noArguments(command);
+                        emit(pending, path, true);
+                        // Anything after an unconditional stop is unreachable
+                        return true;
+                    default:
+                        RuleAction action = action(command);
+                        if (action != null) {
+                            pending.add(action);
+                        }
+                }
+            }
+            emit(pending, path, false);
+            return false;
+        }
+
+        /**
+         * Compile an if/elsif/else chain starting at commands[start]
+         * @return Index of the first command after the chain
+         */
+        private int ifChain(List<Command> commands, int start, List<Condition> path) {
+            int end = start + 1;
+            while (end < commands.size() && ("elsif".equals(commands.get(end).name) || "else".equals(commands.get(end).name))) {
+                end++;
+                if ("else".equals(commands.get(end - 1).name)) {
+                    break;
+                }
+            }
+            boolean chained = end - start > 1;
+
+            List<Condition> previousFalse = new ArrayList<>();
+            for (int i = start; i < end; i++) {
+                Command branch = commands.get(i);
+                if (branch.block == null) {
+                    throw error(branch.line, branch.name + " needs a block");
+                }
+                List<Condition> branchPath = new ArrayList<>(path);
+                branchPath.addAll(previousFalse);
+                if ("else".equals(branch.name)) {
+                    if (!branch.arguments.isEmpty() || !branch.tests.isEmpty()) {
+                        throw error(branch.line, "else takes no test");
+                    }
+                } else {
+                    if (!branch.arguments.isEmpty() || branch.tests.size() != 1) {
+                        throw error(branch.line, branch.name + " needs exactly one test");
+                    }
+                    Condition condition = test(branch.tests.get(0));
+                    // Chained tests are re-checked (negated) by later branches; evaluate each once
+                    if (chained) {
+                        condition = Conditions.shared(sharedSlots++, condition);
+                    }
+                    branchPath.add(condition);
+                    previousFalse.add(Conditions.not(condition));
+                }
+                block(branch.block, branchPath, false);
+            }
+            return end;
+        }
+
+        private void emit(List<RuleAction> actions, List<Condition> path, boolean stop) {
+            if (actions.isEmpty() && !stop) {
+                return;
+            }
+            long ruleId = RULE_ID_BASE + rules.size();
+            rules.add(new CompiledRule(ruleId, 0L, priority, RuleType.SIEVE,
+                Conditions.allOf(new ArrayList<>(path)), actions, stop));
+        }
+
+        private void require(Command command) {
+            List<String> capabilities = singleStringList(command.line, command.name, command.arguments);
+            for (String capability : capabilities) {
+                String normalized = capability.toLowerCase(Locale.ROOT);
+                if (!CAPABILITIES.contains(normalized)) {
+                    throw error(command.line, "unsupported extension \"" + capability + "\"");
+                }
+                required.add(normalized);
+            }
+        }
+
+        /**
+         * @return Action, or null for keep (the implicit default)
+         */
+        private RuleAction action(Command command) {
+            if (command.block != null || !command.tests.isEmpty()) {
+                throw error(command.line, command.name + " does not take a test or block");
+            }
+            switch (command.name) {
+                case "keep":
+                    noArguments(command);
+                    return null;
+                case "discard":
+                    noArguments(command);
+                    return RuleAction.delete();
+                case "fileinto":
+                    requireCapability(command, "fileinto");
+                    return RuleAction.fileInto(singleString(command, command.arguments));
+                case "redirect":
+                    return RuleAction.forward(singleString(command, command.arguments));
+                case "vacation":
+                    requireCapability(command, "vacation");
+                    return vacation(command);
+                default:
+                    throw error(command.line, "unsupported command \"" + command.name + "\"");
+            }
+        }
+
+        /**
+         * vacation [:days n] [:subject s] [:from s] [:addresses list] [:mime] [:handle s] reason
+         */
+        private RuleAction vacation(Command command) {
+            int days = DEFAULT_VACATION_DAYS;
+            String reason = null;
+            List<Argument> arguments = command.arguments;
+            for (int i = 0; i < arguments.size(); i++) {
+                Argument argument = arguments.get(i);
+                if (!argument.isTag()) {
+                    if (i != arguments.size() - 1 || !argument.isStrings() || argument.strings.size() != 1) {
+                        throw error(argument.line, "vacation expects a single reason string last");
+                    }
+                    reason = argument.strings.get(0);
+                    continue;
+                }
+                switch (argument.tag) {
+                    case ":days":
+                        Argument value = valueOf(arguments, ++i);
+                        if (!value.isNumber()) {
+                            throw error(value.line, ":days needs a number");
+                        }
+                        days = (int) Math.max(1, Math.min(value.number, 365));
+                        break;
+                    case ":subject":
+                    case ":from":
+                    case ":handle":
+                    case ":addresses":
+                        valueOf(arguments, ++i);
+                        break;
+                    case ":mime":
+                        break;
+                    default:
+                        throw error(argument.line, "unknown vacation argument " + argument.tag);
+                }
+            }
+            if (reason == null) {
+                throw error(command.line, "vacation needs a reason");
+            }
+            return RuleAction.reply(reason, days);
+        }
+
+        private Condition test(Test test) {
+            switch (test.name) {
+                case "true":
+                    noArguments(test);
+                    return Conditions.always();
+                case "false":
+                    noArguments(test);
+                    return Conditions.not(Conditions.always());
+                case "not":
+                    if (!test.arguments.isEmpty() || test.tests.size() != 1) {
+                        throw error(test.line, "not needs exactly one test");
+                    }
+                    return Conditions.not(test(test.tests.get(0)));
+                case "allof":
+                case "anyof":
+                    if (!test.arguments.isEmpty() || test.tests.isEmpty()) {
+                        throw error(test.line, test.name + " needs a list of tests");
+                    }
+                    List<Condition> children = new ArrayList<>(test.tests.size());
+                    for (Test child : test.tests) {
+                        children.add(test(child));
+                    }
+                    return "allof".equals(test.name) ? Conditions.allOf(children) : Conditions.anyOf(children);
+                case "exists":
+                    return exists(test);
+                case "size":
+                    return size(test);
+                case "header":
+                case "address":
+                    return match(test);
+                default:
+                    throw error(test.line, "unsupported test \"" + test.name + "\"");
+            }
+        }
+
+        private Condition exists(Test test) {
+            List<String> headers = singleStringList(test.line, test.name, test.arguments);
+            List<Condition> all = new ArrayList<>(headers.size());
+            for (String header : headers) {
+                all.add(Conditions.exists(headerField(test, header, false)));
+            }
+            return Conditions.allOf(all);
+        }
+
+        private Condition size(Test test) {
+            if (test.arguments.size() != 2 || !test.arguments.get(0).isTag() || !test.arguments.get(1).isNumber()
+                    || !test.tests.isEmpty()) {
+                throw error(test.line, "size expects :over or :under and a number");
+            }
+            String tag = test.arguments.get(0).tag;
+            double limit = test.arguments.get(1).number;
+            switch (tag) {
+                case ":over":
+                    return Conditions.numeric(RuleField.SIZE, Conditions.NumericOperator.GREATER_THAN, limit);
+                case ":under":
+                    return Conditions.numeric(RuleField.SIZE, Conditions.NumericOperator.LESS_THAN, limit);
+                default:
+                    throw error(test.line, "size expects :over or :under");
+            }
+        }
+
+        /**
+         * header/address [:comparator c] [address-part] [match-type] header-list key-list
+         */
+        private Condition match(Test test) {
+            boolean address = "address".equals(test.name);
+            String matchType = ":is";
+            String addressPart = ":all";
+            List<List<String>> positional = new ArrayList<>();
+            List<Argument> arguments = test.arguments;
+            for (int i = 0; i < arguments.size(); i++) {
+                Argument argument = arguments.get(i);
+                if (!argument.isTag()) {
+                    if (!argument.isStrings()) {
+                        throw error(argument.line, test.name + " expects string lists");
+                    }
+                    positional.add(argument.strings);
+                    continue;
+                }
+                switch (argument.tag) {
+                    case ":is":
+                    case ":contains":
+                    case ":matches":
+                        matchType = argument.tag;
+                        break;
+                    case ":all":
+                    case ":localpart":
+                    case ":domain":
+                        if (!address) {
+                            throw error(argument.line, argument.tag + " is only valid for address tests");
+                        }
+                        addressPart = argument.tag;
+                        break;
+                    case ":comparator":
+                        Argument comparator = valueOf(arguments, ++i);
+                        if (!comparator.isStrings() || comparator.strings.size() != 1
+                                || !DEFAULT_COMPARATOR.equalsIgnoreCase(comparator.strings.get(0))) {
+                            throw error(comparator.line, "only the i;ascii-casemap comparator is supported");
+                        }
+                        break;
+                    default:
+                        throw error(argument.line, "unsupported argument " + argument.tag + " for " + test.name);
+                }
+            }
+            if (positional.size() != 2 || !test.tests.isEmpty()) {
+                throw error(test.line, test.name + " expects a header list and a key list");
+            }
+
+            List<Condition> any = new ArrayList<>();
+            for (String header : positional.get(0)) {
+                RuleField field = headerField(test, header, address);
+                any.add(address ? SieveMatch.address(field, addressPart, matchType, positional.get(1))
+                    : SieveMatch.header(field, matchType, positional.get(1)));
+            }
+            return Conditions.anyOf(any);
+        }
+
+        private RuleField headerField(Test test, String header, boolean address) {
+            switch (header.toLowerCase(Locale.ROOT)) {
+                case "from":
+                    return RuleField.FROM;
+                case "to":
+                    return RuleField.TO;
+                case "cc":
+                    return RuleField.CC;
+                case "subject":
+                    if (!address) {
+                        return RuleField.SUBJECT;
+                    }
+                    break;
+                case "list-id":
+                    if (!address) {
+                        return RuleField.LIST_ID;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            throw error(test.line, "header \"" + header + "\" is not available to " + test.name + " tests");
+        }
+
+        private void requireCapability(Command command, String capability) {
+            if (!required.contains(capability)) {
+                throw error(command.line, command.name + " used without require \"" + capability + "\"");
+            }
+        }
+
+        private static Argument valueOf(List<Argument> arguments, int index) {
+            if (index >= arguments.size() || arguments.get(index).isTag()) {
+                throw error(arguments.get(index - 1).line, arguments.get(index - 1).tag + " needs a value");
+            }
+            return arguments.get(index);
+        }
+
+        private static String singleString(Command command, List<Argument> arguments) {
+            List<String> strings = singleStringList(command.line, command.name, arguments);
+            if (strings.size() != 1) {
+                throw error(command.line, command.name + " expects a single string");
+            }
+            return strings.get(0);
+        }
+
+        private static List<String> singleStringList(int line, String name, List<Argument> arguments) {
+            if (arguments.size() != 1 || !arguments.get(0).isStrings()) {
+                throw error(line, name + " expects a string or string list");
+            }
+            return arguments.get(0).strings;
+        }
+
+        private static void noArguments(Command command) {
+            if (!command.arguments.isEmpty() || !command.tests.isEmpty() || command.block != null) {
+                throw error(command.line, command.name + " takes no arguments");
+            }
+        }
+
+        private static void noArguments(Test test) {
+            if (!test.arguments.isEmpty() || !test.tests.isEmpty()) {
+                throw error(test.line, test.name + " takes no arguments");
+            }
+        }
+
+        private static InvalidRuleException error(int line, String message) {
+            return new InvalidRuleException("Sieve line " + line + ": " + message);
+        }
+    }
+}
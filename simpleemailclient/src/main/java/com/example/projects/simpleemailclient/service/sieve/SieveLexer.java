@@ -0,0 +1,270 @@
+package com.example.projects.simpleemailclient.service.sieve;
+
+import com.example.projects.simpleemailclient.exception.InvalidRuleException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tokenizer for RFC 5228 Sieve scripts
+ * Handles quoted and multi-line strings, number quantifiers (K/M/G)
+ * and both comment forms.
+ */
+final class SieveLexer {
+
+    enum Type {
+        IDENTIFIER,
+        TAG,
+        NUMBER,
+        STRING,
+        LEFT_BRACKET,
+        RIGHT_BRACKET,
+        LEFT_PAREN,
+        RIGHT_PAREN,
+        LEFT_BRACE,
+        RIGHT_BRACE,
+        SEMICOLON,
+        COMMA,
+        END
+    }
+
+    static final class Token {
+        final Type type;
+        final String text;
+        final long number;
+        final int line;
+
+        Token(Type type, String text, long number, int line) {
+            this.type = type;
+            this.text = text;
+            this.number = number;
+            this.line = line;
+        }
+
+        @Override
+        public String toString() {
+            return type == Type.END ? "end of script" : type == Type.STRING ? "\"" + text + "\"" : text;
+        }
+    }
+
+    private final String source;
+    private int position;
+    private int line = 1;
+
+    private SieveLexer(String source) {
+        this.source = source;
+    }
+
+    static List<Token> tokenize(String source) {
+        SieveLexer lexer = new SieveLexer(source);
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = lexer.next();
+            tokens.add(token);
+        } while (token.type != Type.END);
+        return tokens;
+    }
+
+    private Token next() {
+        skipWhitespaceAndComments();
+        if (position >= source.length()) {
+            return new Token(Type.END, "", 0, line);
+        }
+        char c = source.charAt(position);
+        switch (c) {
+            case '[':
+                return single(Type.LEFT_BRACKET);
+            case ']':
+                return single(Type.RIGHT_BRACKET);
+            case '(':
+                return single(Type.LEFT_PAREN);
+            case ')':
+                return single(Type.RIGHT_PAREN);
+            case '{':
+                return single(Type.LEFT_BRACE);
+            case '}':
+                return single(Type.RIGHT_BRACE);
+            case ';':
+                return single(Type.SEMICOLON);
+            case ',':
+                return single(Type.COMMA);
+            case '"':
+                return quotedString();
+            case ':':
+                position++;
+                return new Token(Type.TAG, ":" + identifier().toLowerCase(Locale.ROOT), 0, line);
+            default:
+                if (isDigit(c)) {
+                    return number();
+                }
+                if (isIdentifierStart(c)) {
+                    int startLine = line;
+                    String identifier = identifier();
+                    if ("text".equalsIgnoreCase(identifier) && position < source.length() && source.charAt(position) == ':') {
+                        position++;
+                        return new Token(Type.STRING, multiLineString(), 0, startLine);
+                    }
+                    return new Token(Type.IDENTIFIER, identifier.toLowerCase(Locale.ROOT), 0, startLine);
+                }
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Token single(Type type) {
+        position++;
+        return new Token(type, String.valueOf(source.charAt(position - 1)), 0, line);
+    }
+
+    private void skipWhitespaceAndComments() {
+        while (position < source.length()) {
+            char c = source.charAt(position);
+            if (c == '\n') {
+                line++;
+                position++;
+            } else if (Character.isWhitespace(c)) {
+                position++;
+            } else if (c == '#') {
+                skipToEndOfLine();
+            } else if (c == '/' && position + 1 < source.length() && source.charAt(position + 1) == '*') {
+                int end = source.indexOf("*/", position + 2);
+                if (end < 0) {
+                    throw error("Unterminated comment");
+                }
+                countLines(position, end);
+                position = end + 2;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void skipToEndOfLine() {
+        while (position < source.length() && source.charAt(position) != '\n') {
+            position++;
+        }
+    }
+
+    private String identifier() {
+        int start = position;
+        if (position >= source.length() || !isIdentifierStart(source.charAt(position))) {
+            throw error("Expected an identifier");
+        }
+        while (position < source.length() && (isIdentifierStart(source.charAt(position)) || isDigit(source.charAt(position)))) {
+            position++;
+        }
+        return source.substring(start, position);
+    }
+
+    private Token number() {
+        int start = position;
+        while (position < source.length() && isDigit(source.charAt(position))) {
+            position++;
+        }
+        long value;
+        try {
+            value = Long.parseLong(source.substring(start, position));
+        } catch (NumberFormatException e) {
+            throw error("Number out of range");
+        }
+        if (position < source.length()) {
+            switch (Character.toUpperCase(source.charAt(position))) {
+                case 'K':
+                    value <<= 10;
+                    position++;
+                    break;
+                case 'M':
+                    value <<= 20;
+                    position++;
+                    break;
+                case 'G':
+                    value <<= 30;
+                    position++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new Token(Type.NUMBER, source.substring(start, position), value, line);
+    }
+
+    private Token quotedString() {
+        int startLine = line;
+        StringBuilder value = new StringBuilder();
+        position++;
+        while (position < source.length()) {
+            char c = source.charAt(position++);
+            if (c == '"') {
+                return new Token(Type.STRING, value.toString(), 0, startLine);
+            }
+            if (c == '\\' && position < source.length()) {
+                c = source.charAt(position++);
+            }
+            if (c == '\n') {
+                line++;
+            }
+            value.append(c);
+        }
+        throw error("Unterminated string");
+    }
+
+    /**
+     * "text:" up to a line holding a single dot; leading ".." is unstuffed to "."
+     */
+    private String multiLineString() {
+        while (position < source.length() && (source.charAt(position) == ' ' || source.charAt(position) == '\t')) {
+            position++;
+        }
+        if (position < source.length() && source.charAt(position) == '#') {
+            skipToEndOfLine();
+        }
+        if (position < source.length() && source.charAt(position) == '\r') {
+            position++;
+        }
+        if (position >= source.length() || source.charAt(position) != '\n') {
+            throw error("Expected a line break after text:");
+        }
+        position++;
+        line++;
+
+        StringBuilder value = new StringBuilder();
+        while (position < source.length()) {
+            int end = source.indexOf('\n', position);
+            if (end < 0) {
+                end = source.length();
+            }
+            String text = source.substring(position, end);
+            if (text.endsWith("\r")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            position = Math.min(end + 1, source.length());
+            line++;
+            if (text.equals(".")) {
+                return value.toString();
+            }
+            value.append(text.startsWith("..") ? text.substring(1) : text).append("\r\n");
+        }
+        throw error("Unterminated multi-line string");
+    }
+
+    private void countLines(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (source.charAt(i) == '\n') {
+                line++;
+            }
+        }
+    }
+
+    private InvalidRuleException error(String message) {
+        return new InvalidRuleException("Sieve line " + line + ": " + message);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.projects.simpleemailclient.service.sieve;
+
+import com.example.projects.simpleemailclient.service.rules.Condition;
+import com.example.projects.simpleemailclient.service.rules.Conditions;
+import com.example.projects.simpleemailclient.service.rules.RuleField;
+import com.example.projects.simpleemailclient.service.rules.TextOperator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates Sieve match types and address parts into text conditions
+ * Literal matches map to plain operators so the match network and contains
+ * index can use them; only wildcard :matches keys become anchored patterns.
+ */
+final class SieveMatch {
+
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private SieveMatch() {
+    }
+
+    static Condition header(RuleField field, String matchType, List<String> keys) {
+        switch (matchType) {
+            case ":is":
+                return Conditions.text(field, TextOperator.EQUALS, field == RuleField.SUBJECT ? keys : bareAddresses(keys));
+            case ":contains":
+                return Conditions.text(field, TextOperator.CONTAINS, keys);
+            default:
+                return wildcard(field, keys, "^", "$", ".");
+        }
+    }
+
+    static Condition address(RuleField field, String addressPart, String matchType, List<String> keys) {
+        if (":all".equals(addressPart)) {
+            return header(field, matchType, keys);
+        }
+        if (":domain".equals(addressPart)) {
+            if (field == RuleField.FROM) {
+                return header(RuleField.FROM_DOMAIN, matchType, keys);
+            }
+            switch (matchType) {
+                case ":is":
+                    return Conditions.text(field, TextOperator.ENDS_WITH, prefixed("@", keys));
+                case ":contains":
+                    return Conditions.text(field, TextOperator.MATCHES, containsPatterns(keys, "@[^@]*", "[^@]*$"));
+                default:
+                    return wildcard(field, keys, "@", "$", "[^@]");
+            }
+        }
+        switch (matchType) {
+            case ":is":
+                return Conditions.text(field, TextOperator.STARTS_WITH, suffixed(keys, "@"));
+            case ":contains":
+                return Conditions.text(field, TextOperator.MATCHES, containsPatterns(keys, "^[^@]*", "[^@]*@"));
+            default:
+                return wildcard(field, keys, "^", "@[^@]*$", "[^@]");
+        }
+    }
+
+    /**
+     * :matches keys; keys without wildcards compare as literals
+     * @param any Pattern for a single character matched by '?'
+     */
+    private static Condition wildcard(RuleField field, List<String> keys, String prefix, String suffix, String any) {
+        List<String> literals = new ArrayList<>();
+        List<String> patterns = new ArrayList<>();
+        for (String key : keys) {
+            String literal = literalOf(key);
+            if (literal != null && "^".equals(prefix) && "$".equals(suffix)) {
+                literals.add(literal);
+            } else {
+                patterns.add(prefix + globToRegex(key, any) + suffix);
+            }
+        }
+        List<Condition> alternatives = new ArrayList<>(2);
+        if (!literals.isEmpty()) {
+            alternatives.add(Conditions.text(field, TextOperator.EQUALS, literals));
+        }
+        if (!patterns.isEmpty()) {
+            alternatives.add(Conditions.text(field, TextOperator.MATCHES, patterns));
+        }
+        return Conditions.anyOf(alternatives);
+    }
+
+    /**
+     * The unescaped key if it has no wildcards, else null
+     */
+    static String literalOf(String glob) {
+        StringBuilder literal = new StringBuilder(glob.length());
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                return null;
+            }
+            if (c == '\\' && i + 1 < glob.length()) {
+                c = glob.charAt(++i);
+            }
+            literal.append(c);
+        }
+        return literal.toString();
+    }
+
+    static String globToRegex(String glob, String any) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                regex.append(any).append('*');
+            } else if (c == '?') {
+                regex.append(any);
+            } else {
+                if (c == '\\' && i + 1 < glob.length()) {
+                    c = glob.charAt(++i);
+                }
+                appendLiteral(regex, c);
+            }
+        }
+        return regex.toString();
+    }
+
+    private static List<String> containsPatterns(List<String> keys, String prefix, String suffix) {
+        List<String> patterns = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            StringBuilder pattern = new StringBuilder(prefix);
+            for (int i = 0; i < key.length(); i++) {
+                appendLiteral(pattern, key.charAt(i));
+            }
+            patterns.add(pattern.append(suffix).toString());
+        }
+        return patterns;
+    }
+
+    private static void appendLiteral(StringBuilder regex, char c) {
+        if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+            regex.append('\\');
+        }
+        regex.append(c);
+    }
+
+    /**
+     * Address and List-Id values are compared without display names and angle brackets
+     */
+    private static List<String> bareAddresses(List<String> keys) {
+        List<String> result = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            String trimmed = key.trim();
+            int open = trimmed.lastIndexOf('<');
+            int close = trimmed.lastIndexOf('>');
+            result.add(open >= 0 && close > open ? trimmed.substring(open + 1, close).trim() : trimmed);
+        }
+        return result;
+    }
+
+    private static List<String> prefixed(String prefix, List<String> keys) {
+        List<String> result = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            result.add(prefix + key);
+        }
+        return result;
+    }
+
+    private static List<String> suffixed(List<String> keys, String suffix) {
+        List<String> result = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            result.add(key + suffix);
+        }
+        return result;
+    }
+}
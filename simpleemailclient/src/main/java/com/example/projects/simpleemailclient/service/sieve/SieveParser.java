@@ -0,0 +1,189 @@
+package com.example.projects.simpleemailclient.service.sieve;
+
+import com.example.projects.simpleemailclient.exception.InvalidRuleException;
+import com.example.projects.simpleemailclient.service.sieve.SieveLexer.Token;
+import com.example.projects.simpleemailclient.service.sieve.SieveLexer.Type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parser for the RFC 5228 command grammar
+ * Produces a generic command/test tree; command semantics are checked by SieveCompiler.
+ */
+final class SieveParser {
+
+    /**
+     * Positional or tagged argument: a tag, a number or a string list
+     */
+    static final class Argument {
+        final String tag;
+        final Long number;
+        final List<String> strings;
+        final int line;
+
+        private Argument(String tag, Long number, List<String> strings, int line) {
+            this.tag = tag;
+            this.number = number;
+            this.strings = strings;
+            this.line = line;
+        }
+
+        boolean isTag() {
+            return tag != null;
+        }
+
+        boolean isNumber() {
+            return number != null;
+        }
+
+        boolean isStrings() {
+            return strings != null;
+        }
+    }
+
+    static final class Test {
+        final String name;
+        final List<Argument> arguments;
+        final List<Test> tests;
+        final int line;
+
+        Test(String name, List<Argument> arguments, List<Test> tests, int line) {
+            this.name = name;
+            this.arguments = arguments;
+            this.tests = tests;
+            this.line = line;
+        }
+    }
+
+    static final class Command {
+        final String name;
+        final List<Argument> arguments;
+        final List<Test> tests;
+        final List<Command> block;
+        final int line;
+
+        Command(String name, List<Argument> arguments, List<Test> tests, List<Command> block, int line) {
+            this.name = name;
+            this.arguments = arguments;
+            this.tests = tests;
+            this.block = block;
+            this.line = line;
+        }
+    }
+
+    private final List<Token> tokens;
+    private int position;
+
+    private SieveParser(List<Token> tokens) {
+        this.tokens = tokens;
+    }
+
+    static List<Command> parse(String script) {
+        SieveParser parser = new SieveParser(SieveLexer.tokenize(script));
+        List<Command> commands = parser.commands();
+        parser.expect(Type.END);
+        return commands;
+    }
+
+    private List<Command> commands() {
+        List<Command> commands = new ArrayList<>();
+        while (peek().type == Type.IDENTIFIER) {
+            commands.add(command());
+        }
+        return commands;
+    }
+
+    private Command command() {
+        Token name = expect(Type.IDENTIFIER);
+        List<Argument> arguments = arguments();
+        List<Test> tests = testsAfterArguments();
+        if (peek().type == Type.LEFT_BRACE) {
+            advance();
+            List<Command> block = commands();
+            expect(Type.RIGHT_BRACE);
+            return new Command(name.text, arguments, tests, block, name.line);
+        }
+        expect(Type.SEMICOLON);
+        return new Command(name.text, arguments, tests, null, name.line);
+    }
+
+    private Test test() {
+        Token name = expect(Type.IDENTIFIER);
+        return new Test(name.text, arguments(), testsAfterArguments(), name.line);
+    }
+
+    private List<Test> testsAfterArguments() {
+        if (peek().type == Type.IDENTIFIER) {
+            return Collections.singletonList(test());
+        }
+        if (peek().type != Type.LEFT_PAREN) {
+            return Collections.emptyList();
+        }
+        advance();
+        List<Test> tests = new ArrayList<>();
+        tests.add(test());
+        while (peek().type == Type.COMMA) {
+            advance();
+            tests.add(test());
+        }
+        expect(Type.RIGHT_PAREN);
+        return tests;
+    }
+
+    private List<Argument> arguments() {
+        List<Argument> arguments = new ArrayList<>();
+        while (true) {
+            Token token = peek();
+            switch (token.type) {
+                case TAG:
+                    advance();
+                    arguments.add(new Argument(token.text, null, null, token.line));
+                    break;
+                case NUMBER:
+                    advance();
+                    arguments.add(new Argument(null, token.number, null, token.line));
+                    break;
+                case STRING:
+                    advance();
+                    arguments.add(new Argument(null, null, Collections.singletonList(token.text), token.line));
+                    break;
+                case LEFT_BRACKET:
+                    advance();
+                    List<String> strings = new ArrayList<>();
+                    strings.add(expect(Type.STRING).text);
+                    while (peek().type == Type.COMMA) {
+                        advance();
+                        strings.add(expect(Type.STRING).text);
+                    }
+                    expect(Type.RIGHT_BRACKET);
+                    arguments.add(new Argument(null, null, strings, token.line));
+                    break;
+                default:
+                    return arguments;
+            }
+        }
+    }
+
+    private Token peek() {
+        return tokens.get(position);
+    }
+
+    private Token advance() {
+        return tokens.get(position++);
+    }
+
+    private Token expect(Type type) {
+        Token token = peek();
+        if (token.type != type) {
+            throw new InvalidRuleException("Sieve line " + token.line + ": expected " + describe(type) + " but found " + token);
+        }
+        return advance();
+    }
+
+    private static String describe(Type type) {
+        return type.name().toLowerCase(Locale.ROOT).replace('_', ' ');
+    }
+}
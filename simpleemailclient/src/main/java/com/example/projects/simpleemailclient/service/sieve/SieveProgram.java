@@ -0,0 +1,29 @@
+package com.example.projects.simpleemailclient.service.sieve;
+
+import com.example.projects.simpleemailclient.service.rules.CompiledRule;
+
+import java.util.List;
+
+/**
+ * A Sieve script compiled to rules-engine form
+ * Rules are in script execution order; sharedConditions is the number of
+ * memo slots their shared tests use, starting at slot 0.
+ */
+public final class SieveProgram {
+
+    private final List<CompiledRule> rules;
+    private final int sharedConditions;
+
+    SieveProgram(List<CompiledRule> rules, int sharedConditions) {
+        this.rules = List.copyOf(rules);
+        this.sharedConditions = sharedConditions;
+    }
+
+    public List<CompiledRule> getRules() {
+        return rules;
+    }
+
+    public int getSharedConditions() {
+        return sharedConditions;
+    }
+}
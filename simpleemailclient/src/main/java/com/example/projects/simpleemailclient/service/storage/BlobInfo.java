@@ -0,0 +1,26 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+/**
+ * Size and version tag of a stored object
+ */
+public final class BlobInfo {
+
+    private final long size;
+    private final String etag;
+
+    public BlobInfo(long size, String etag) {
+        this.size = size;
+        this.etag = etag;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Changes whenever the object is replaced; unquoted
+     */
+    public String getEtag() {
+        return etag;
+    }
+}
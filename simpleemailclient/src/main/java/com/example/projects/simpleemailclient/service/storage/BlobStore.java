@@ -0,0 +1,46 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Object storage for message and attachment content
+ * Objects live in named buckets (see MinIOConfig) under string keys, and are written whole
+ * and never modified. The backend is chosen with email.blob.backend: "minio", the
+ * default, or "local", a directory tree for single-node installs and tests.
+ */
+public interface BlobStore {
+
+    /**
+     * Store a file's content under a key, replacing any object there
+     * Readers never see a partly written object.
+     */
+    void put(String bucket, String key, Path file, String contentType) throws IOException;
+
+    /**
+     * Open part of an object
+     * @param length Bytes wanted; negative for the rest of the object
+     * @return Up to length bytes from offset; fewer, or none, past the end of the object
+     * @throws java.nio.file.NoSuchFileException if there is no such object
+     */
+    InputStream get(String bucket, String key, long offset, long length) throws IOException;
+
+    /**
+     * @throws java.nio.file.NoSuchFileException if there is no such object
+     */
+    BlobInfo stat(String bucket, String key) throws IOException;
+
+    /**
+     * Copy part of an object to a stream, without buffering more than a small chunk
+     * @param length Bytes to copy; the object must have that many from offset
+     * @return Bytes copied
+     */
+    long transferTo(String bucket, String key, long offset, long length, OutputStream out) throws IOException;
+
+    /**
+     * Remove an object; there is nothing to do if it does not exist
+     */
+    void delete(String bucket, String key) throws IOException;
+}
@@ -0,0 +1,77 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds preset compression dictionaries from sample messages
+ * Deflate matches against a preset dictionary as it would against earlier input, so a
+ * dictionary of the lines a tenant's mail keeps repeating (routine headers, template
+ * markup, signatures, footers) lets even a message's first occurrence of them compress
+ * to back-references. Lines are ranked by the bytes they would save, their length times
+ * the further samples they appear in, and the best go last, where matches are nearest.
+ */
+final class DictionaryTrainer {
+
+    private static final int MIN_LINE_BYTES = 8;
+
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * @return At most maxBytes; empty if no line recurs across samples
+     */
+    static byte[] train(List<byte[]> samples, int maxBytes) {
+        // ISO-8859-1 maps bytes to chars one to one, so lines can key a map losslessly
+        Map<String, Integer> sampleCounts = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<String> seen = new HashSet<>();
+            int start = 0;
+            for (int i = 0; i < sample.length; i++) {
+                if (sample[i] == '\n' || i == sample.length - 1) {
+                    if (i + 1 - start >= MIN_LINE_BYTES) {
+                        seen.add(new String(sample, start, i + 1 - start, StandardCharsets.ISO_8859_1));
+                    }
+                    start = i + 1;
+                }
+            }
+            for (String line : seen) {
+                sampleCounts.merge(line, 1, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<String, Integer>> recurring = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : sampleCounts.entrySet()) {
+            if (entry.getValue() > 1) {
+                recurring.add(entry);
+            }
+        }
+        recurring.sort(Comparator.<Map.Entry<String, Integer>>comparingLong(DictionaryTrainer::savings)
+            .reversed()
+            .thenComparing(Map.Entry::getKey));
+
+        List<String> chosen = new ArrayList<>();
+        int bytes = 0;
+        for (Map.Entry<String, Integer> entry : recurring) {
+            if (bytes + entry.getKey().length() <= maxBytes) {
+                chosen.add(entry.getKey());
+                bytes += entry.getKey().length();
+            }
+        }
+        StringBuilder dictionary = new StringBuilder(bytes);
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            dictionary.append(chosen.get(i));
+        }
+        return dictionary.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static long savings(Map.Entry<String, Integer> entry) {
+        return (long) entry.getKey().length() * (entry.getValue() - 1);
+    }
+}
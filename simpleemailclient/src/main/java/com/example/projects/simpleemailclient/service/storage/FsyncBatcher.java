@@ -0,0 +1,103 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Group commit for fsync
+ * A caller's path joins the open batch. If no flush is running, the caller takes the
+ * batch and syncs every path in it; otherwise it waits, and the next free caller takes
+ * the batch that built up meanwhile. Concurrent writers thus share flushes instead of
+ * queueing one fsync each, and a directory several of them wrote to is synced once.
+ */
+final class FsyncBatcher {
+
+    private final Counter batches;
+    private final Counter syncs;
+    // Guarded by this
+    private Batch open = new Batch();
+    private boolean flushing;
+
+    FsyncBatcher(MeterRegistry meterRegistry) {
+        this.batches = Counter.builder("email.blobs.local.fsync.batches")
+            .description("Group fsyncs of the local blob store")
+            .register(meterRegistry);
+        this.syncs = Counter.builder("email.blobs.local.fsyncs")
+            .description("Files and directories synced by the local blob store")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Return once a file's content, or a directory's entries, are on disk
+     */
+    void sync(Path path) throws IOException {
+        Batch batch;
+        boolean leader = false;
+        synchronized (this) {
+            batch = open;
+            batch.paths.add(path);
+            try {
+                while (flushing && !batch.done) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for fsync of " + path);
+            }
+            if (!batch.done) {
+                leader = true;
+                flushing = true;
+                open = new Batch();
+            }
+        }
+        if (leader) {
+            try {
+                batch.flush();
+            } finally {
+                synchronized (this) {
+                    batch.done = true;
+                    flushing = false;
+                    notifyAll();
+                }
+            }
+            batches.increment();
+            syncs.increment(batch.paths.size());
+        }
+        IOException failure = batch.failures.get(path);
+        if (failure != null) {
+            throw new IOException("Failed to sync " + path, failure);
+        }
+    }
+
+    private static final class Batch {
+
+        final Set<Path> paths = new LinkedHashSet<>();
+        final Map<Path, IOException> failures = new HashMap<>();
+        // Guarded by the batcher
+        boolean done;
+
+        void flush() {
+            for (Path path : paths) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    channel.force(true);
+                } catch (IOException e) {
+                    // Some platforms cannot sync a directory; its entries are as durable as they get
+                    if (!Files.isDirectory(path)) {
+                        failures.put(path, e);
+                    }
+                }
+            }
+        }
+    }
+}
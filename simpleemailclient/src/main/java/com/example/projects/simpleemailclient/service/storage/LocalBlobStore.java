@@ -0,0 +1,248 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * BlobStore in a local directory tree, for single-node installs and tests
+ * An object is a file at root/bucket/xx/yy/name, where xx/yy are the first bytes of the
+ * SHA-256 of its key, so no directory grows past a few thousand entries, and name is the
+ * key, percent-encoded (or its hash, if long). A write copies into a temporary file
+ * beside the target, syncs it, and renames it into place, so readers see the old object
+ * or the new one, never part of one. Concurrent writers share fsyncs (see FsyncBatcher).
+ * Reads are positional reads on a FileChannel, and transferTo hands the copy to the
+ * kernel with FileChannel.transferTo. Files are not memory-mapped: a mapping stays
+ * until the buffer is garbage collected, holding address space and keeping the file
+ * from being deleted on some platforms.
+ */
+@Component
+@ConditionalOnProperty(name = "email.blob.backend", havingValue = "local")
+public class LocalBlobStore implements BlobStore {
+
+    private static final int MAX_NAME_CHARS = 200;
+    private static final String TEMP_PREFIX = ".tmp-";
+    private static final Pattern BUCKET = Pattern.compile("[a-z0-9][a-z0-9.-]*");
+
+    private final Path root;
+    // Null when fsync is off
+    private final FsyncBatcher fsync;
+
+    public LocalBlobStore(@Value("${email.blob.local.root:data/blobs}") String root,
+                          @Value("${email.blob.local.fsync:true}") boolean fsync,
+                          MeterRegistry meterRegistry) {
+        this.root = Path.of(root).toAbsolutePath();
+        this.fsync = fsync ? new FsyncBatcher(meterRegistry) : null;
+    }
+
+    @Override
+    public void put(String bucket, String key, Path file, String contentType) throws IOException {
+        Path target = path(bucket, key);
+        Path directory = target.getParent();
+        createDirectories(directory);
+        Path temp = directory.resolve(TEMP_PREFIX + UUID.randomUUID());
+        try {
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+            sync(temp);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            sync(directory);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public InputStream get(String bucket, String key, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(path(bucket, key), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            long end = length < 0 ? size : Math.min(size, offset + length);
+            if (offset >= end) {
+                channel.close();
+                return InputStream.nullInputStream();
+            }
+            return new RangeInputStream(channel, offset, end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public BlobInfo stat(String bucket, String key) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path(bucket, key), BasicFileAttributes.class);
+        // Objects are replaced, never modified, so the modification time identifies the version
+        long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        return new BlobInfo(attributes.size(), Long.toHexString(modified) + "-" + Long.toHexString(attributes.size()));
+    }
+
+    @Override
+    public long transferTo(String bucket, String key, long offset, long length, OutputStream out)
+            throws IOException {
+        if (length <= 0) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path(bucket, key), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("Object " + key + " ended " + (end - position) + " bytes early");
+                }
+                position += transferred;
+            }
+            return length;
+        }
+    }
+
+    @Override
+    public void delete(String bucket, String key) throws IOException {
+        Files.deleteIfExists(path(bucket, key));
+    }
+
+    Path path(String bucket, String key) {
+        if (!BUCKET.matcher(bucket).matches()) {
+            throw new IllegalArgumentException("Invalid bucket name: " + bucket);
+        }
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Object key is required");
+        }
+        String hash = HexFormat.of().formatHex(sha256(key));
+        String name = encode(key);
+        if (name.length() > MAX_NAME_CHARS) {
+            name = hash;
+        }
+        return root.resolve(bucket).resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(name);
+    }
+
+    /**
+     * Keys may hold any character; file names keep letters, digits, '-', '_' and '.', and
+     * never start with '.', so they cannot clash with temporary files or escape the tree
+     */
+    static String encode(String key) {
+        StringBuilder name = new StringBuilder(key.length() + 16);
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            boolean safe = b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9'
+                || b == '-' || b == '_' || b == '.' && i > 0;
+            if (safe) {
+                name.append((char) b);
+            } else {
+                name.append('%').append(Character.toUpperCase(Character.forDigit(b >> 4, 16)))
+                    .append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+            }
+        }
+        return name.toString();
+    }
+
+    private void createDirectories(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            return;
+        }
+        Files.createDirectories(directory);
+        // Make the new shard directories' own entries durable
+        sync(directory.getParent());
+        sync(directory.getParent().getParent());
+    }
+
+    private void sync(Path path) throws IOException {
+        if (fsync != null) {
+            fsync.sync(path);
+        }
+    }
+
+    private static byte[] sha256(String key) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Positional reads of a byte range; owns the channel
+     */
+    private static final class RangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == 1 ? one[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int wanted = (int) Math.min(length, end - position);
+            int read = channel.read(ByteBuffer.wrap(buffer, offset, wanted), position);
+            if (read <= 0) {
+                return -1;
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+import com.example.projects.simpleemailclient.config.MinIOConfig;
+import com.example.projects.simpleemailclient.model.CompressionDictionary;
+import com.example.projects.simpleemailclient.repository.CompressionDictionaryRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Raw message storage, compressed with per-tenant dictionaries
+ * Messages are deflated with a preset dictionary trained on the tenant's recent mail
+ * (see DictionaryTrainer), which is where newsletters and notifications, mostly the
+ * same template each time, shrink most. Each object records its format, dictionary and
+ * uncompressed size in a header (see MimeBlobFormat), so objects stored uncompressed
+ * before, or with an older dictionary, stay readable. Reads decompress as they stream;
+ * a range of a compressed object is read by decompressing up to its start, while raw
+ * objects still get ranged reads. A message that does not get smaller is stored raw.
+ */
+@Component
+@Slf4j
+public class MessageContentStore {
+
+    private static final String RAW_CONTENT_TYPE = "message/rfc822";
+    private static final String COMPRESSED_CONTENT_TYPE = "application/octet-stream";
+    private static final int BUFFER_BYTES = 16384;
+    // How long a node keeps using a tenant's dictionary before checking for a newer one
+    private static final Duration CURRENT_REFRESH = Duration.ofMinutes(10);
+
+    private final BlobStore blobStore;
+    private final MinIOConfig minIOConfig;
+    private final CompressionDictionaryRepository dictionaryRepository;
+    private final MessageRepository messageRepository;
+    private final UserRepository userRepository;
+    private final Counter rawBytes;
+    private final Counter storedBytes;
+    // Dictionaries never change, so they are kept once loaded
+    private final Map<Long, byte[]> dictionaries = new ConcurrentHashMap<>();
+    private final Map<Long, Current> current = new ConcurrentHashMap<>();
+
+    private final boolean compress;
+    private final int level;
+    private final Path spoolDirectory;
+    private final int dictionaryBytes;
+    private final int sampleMessages;
+    private final int sampleBytes;
+    private final int minSamples;
+    private final Duration dictionaryMaxAge;
+
+    public MessageContentStore(BlobStore blobStore,
+                               MinIOConfig minIOConfig,
+                               CompressionDictionaryRepository dictionaryRepository,
+                               MessageRepository messageRepository,
+                               UserRepository userRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${email.mime.compression.enabled:true}") boolean compress,
+                               @Value("${email.mime.compression.level:6}") int level,
+                               @Value("${email.attachment.upload.spool-dir:${java.io.tmpdir}}") String spoolDirectory,
+                               @Value("${email.mime.compression.dictionary.max-bytes:32768}") int dictionaryBytes,
+                               @Value("${email.mime.compression.dictionary.sample-messages:200}") int sampleMessages,
+                               @Value("${email.mime.compression.dictionary.sample-bytes:65536}") int sampleBytes,
+                               @Value("${email.mime.compression.dictionary.min-samples:50}") int minSamples,
+                               @Value("${email.mime.compression.dictionary.max-age-days:30}") long maxAgeDays) {
+        this.blobStore = blobStore;
+        this.minIOConfig = minIOConfig;
+        this.dictionaryRepository = dictionaryRepository;
+        this.messageRepository = messageRepository;
+        this.userRepository = userRepository;
+        this.compress = compress;
+        this.level = level;
+        this.spoolDirectory = Path.of(spoolDirectory);
+        this.dictionaryBytes = dictionaryBytes;
+        this.sampleMessages = sampleMessages;
+        this.sampleBytes = sampleBytes;
+        this.minSamples = minSamples;
+        this.dictionaryMaxAge = Duration.ofDays(maxAgeDays);
+        this.rawBytes = Counter.builder("email.messages.mime.bytes")
+            .description("MIME bytes stored, before and after compression")
+            .tag("form", "raw")
+            .register(meterRegistry);
+        this.storedBytes = Counter.builder("email.messages.mime.bytes")
+            .description("MIME bytes stored, before and after compression")
+            .tag("form", "stored")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Store a message's MIME content
+     * @param raw Spooled RFC 822 content
+     */
+    public StoredContent store(Long tenantId, Path raw) {
+        String key = "tenants/" + tenantId + "/messages/" + UUID.randomUUID();
+        try {
+            long size = Files.size(raw);
+            Path compressed = compress ? compress(tenantId, raw, size) : null;
+            try {
+                Path file = compressed != null ? compressed : raw;
+                blobStore.put(minIOConfig.getMessagesBucket(), key, file,
+                    compressed != null ? COMPRESSED_CONTENT_TYPE : RAW_CONTENT_TYPE);
+                long stored = Files.size(file);
+                rawBytes.increment(size);
+                storedBytes.increment(stored);
+                return new StoredContent(key, size, stored);
+            } finally {
+                if (compressed != null) {
+                    Files.deleteIfExists(compressed);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store message content " + key, e);
+        }
+    }
+
+    /**
+     * Read a stored message, decompressing as it streams
+     * @throws java.nio.file.NoSuchFileException if there is no such object
+     */
+    public InputStream open(String pointer) throws IOException {
+        InputStream in = blobStore.get(minIOConfig.getMessagesBucket(), pointer, 0, -1);
+        try {
+            byte[] header = in.readNBytes(MimeBlobFormat.HEADER_BYTES);
+            MimeBlobFormat format = MimeBlobFormat.decode(header);
+            if (format == null) {
+                return new SequenceInputStream(new ByteArrayInputStream(header), in);
+            }
+            return inflate(in, format);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read part of a stored message
+     * @param length Bytes wanted; negative for the rest of the message
+     */
+    public InputStream openRange(String pointer, long offset, long length) throws IOException {
+        MimeBlobFormat format = format(pointer);
+        if (format == null) {
+            return blobStore.get(minIOConfig.getMessagesBucket(), pointer, offset, length);
+        }
+        if (offset >= format.getSize() || length == 0) {
+            return InputStream.nullInputStream();
+        }
+        InputStream in = inflate(blobStore.get(minIOConfig.getMessagesBucket(), pointer,
+            MimeBlobFormat.HEADER_BYTES, -1), format);
+        try {
+            in.skipNBytes(offset);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        return length < 0 ? in : new LimitedInputStream(in, length);
+    }
+
+    /**
+     * Uncompressed size and version tag of a stored message
+     * @throws java.nio.file.NoSuchFileException if there is no such object
+     */
+    public BlobInfo stat(String pointer) throws IOException {
+        BlobInfo info = blobStore.stat(minIOConfig.getMessagesBucket(), pointer);
+        MimeBlobFormat format = format(pointer);
+        return format == null ? info : new BlobInfo(format.getSize(), info.getEtag());
+    }
+
+    /**
+     * Copy part of a stored message to a stream
+     * @param length Bytes to copy; the message must have that many from offset
+     */
+    public long transferTo(String pointer, long offset, long length, OutputStream out) throws IOException {
+        if (length <= 0) {
+            return 0;
+        }
+        MimeBlobFormat format = format(pointer);
+        if (format == null) {
+            return blobStore.transferTo(minIOConfig.getMessagesBucket(), pointer, offset, length, out);
+        }
+        try (InputStream in = openRange(pointer, offset, length)) {
+            long copied = in.transferTo(out);
+            if (copied < length) {
+                throw new IOException("Message " + pointer + " ended " + (length - copied) + " bytes early");
+            }
+            return copied;
+        }
+    }
+
+    public void delete(String pointer) throws IOException {
+        blobStore.delete(minIOConfig.getMessagesBucket(), pointer);
+    }
+
+    /**
+     * Train new dictionaries for tenants whose dictionary is missing or older than the
+     * maximum age
+     * @return Number of dictionaries trained
+     */
+    @Scheduled(fixedDelayString = "${email.mime.compression.dictionary.train-interval-ms:86400000}")
+    public int trainDictionaries() {
+        if (!compress) {
+            return 0;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(dictionaryMaxAge);
+        int trained = 0;
+        for (Long tenantId : userRepository.findTenantIds()) {
+            Optional<CompressionDictionary> latest = dictionaryRepository.findFirstByTenantIdOrderByIdDesc(tenantId);
+            if (latest.isPresent() && latest.get().getCreatedAt().isAfter(cutoff)) {
+                continue;
+            }
+            try {
+                if (trainDictionary(tenantId)) {
+                    trained++;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to train compression dictionary for tenant {}: {}", tenantId, e.getMessage());
+            }
+        }
+        return trained;
+    }
+
+    /**
+     * Train a dictionary on the tenant's newest messages and use it for new ones
+     * @return false if the tenant has too few messages, or nothing in them recurs
+     */
+    public boolean trainDictionary(Long tenantId) {
+        List<String> pointers = messageRepository.findRecentMimePointersByTenantId(tenantId,
+            PageRequest.of(0, sampleMessages));
+        if (pointers.size() < minSamples) {
+            return false;
+        }
+        List<byte[]> samples = new ArrayList<>(pointers.size());
+        for (String pointer : pointers) {
+            try (InputStream in = open(pointer)) {
+                samples.add(in.readNBytes(sampleBytes));
+            } catch (IOException e) {
+                log.debug("Skipping message {} as a dictionary sample: {}", pointer, e.getMessage());
+            }
+        }
+        byte[] content = DictionaryTrainer.train(samples, dictionaryBytes);
+        if (content.length == 0) {
+            return false;
+        }
+        CompressionDictionary saved = dictionaryRepository.save(CompressionDictionary.builder()
+            .tenantId(tenantId)
+            .content(content)
+            .sampleCount(samples.size())
+            .build());
+        dictionaries.put(saved.getId(), content);
+        current.put(tenantId, new Current(saved.getId(), content));
+        log.info("Trained compression dictionary {} for tenant {}: {} bytes from {} messages",
+            saved.getId(), tenantId, content.length, samples.size());
+        return true;
+    }
+
+    /**
+     * @return The compressed file, or null if compression does not make the message smaller
+     */
+    private Path compress(Long tenantId, Path raw, long size) throws IOException {
+        Current dictionary = currentDictionary(tenantId);
+        Path spool = Files.createTempFile(spoolDirectory, "mime-", ".z");
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary.content.length > 0) {
+                deflater.setDictionary(dictionary.content);
+            }
+            try (InputStream in = Files.newInputStream(raw);
+                 OutputStream file = Files.newOutputStream(spool);
+                 DeflaterOutputStream out = new DeflaterOutputStream(file, deflater, BUFFER_BYTES)) {
+                file.write(new MimeBlobFormat(MimeBlobFormat.CODEC_DEFLATE, dictionary.id, size).encode());
+                in.transferTo(out);
+            }
+            if (Files.size(spool) < size) {
+                return spool;
+            }
+            Files.deleteIfExists(spool);
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private InputStream inflate(InputStream in, MimeBlobFormat format) throws IOException {
+        Inflater inflater = new Inflater(true);
+        if (format.getDictionaryId() != 0) {
+            inflater.setDictionary(dictionary(format.getDictionaryId()));
+        }
+        return new InflaterInputStream(in, inflater, BUFFER_BYTES) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The object's header, or null if it is stored raw
+     */
+    private MimeBlobFormat format(String pointer) throws IOException {
+        try (InputStream in = blobStore.get(minIOConfig.getMessagesBucket(), pointer, 0,
+                MimeBlobFormat.HEADER_BYTES)) {
+            return MimeBlobFormat.decode(in.readNBytes(MimeBlobFormat.HEADER_BYTES));
+        }
+    }
+
+    private byte[] dictionary(long id) throws IOException {
+        byte[] content = dictionaries.get(id);
+        if (content == null) {
+            content = dictionaryRepository.findById(id)
+                .map(CompressionDictionary::getContent)
+                .orElseThrow(() -> new IOException("Compression dictionary " + id + " not found"));
+            dictionaries.put(id, content);
+        }
+        return content;
+    }
+
+    private Current currentDictionary(Long tenantId) {
+        Current cached = current.get(tenantId);
+        if (cached != null && cached.loadedAt.plus(CURRENT_REFRESH).isAfter(LocalDateTime.now())) {
+            return cached;
+        }
+        Current loaded = dictionaryRepository.findFirstByTenantIdOrderByIdDesc(tenantId)
+            .map(dictionary -> {
+                dictionaries.putIfAbsent(dictionary.getId(), dictionary.getContent());
+                return new Current(dictionary.getId(), dictionary.getContent());
+            })
+            .orElseGet(() -> new Current(0, new byte[0]));
+        current.put(tenantId, loaded);
+        return loaded;
+    }
+
+    /**
+     * The dictionary new messages of a tenant are compressed with; id 0 for none
+     */
+    private static final class Current {
+
+        final long id;
+        final byte[] content;
+        final LocalDateTime loadedAt = LocalDateTime.now();
+
+        Current(long id, byte[] content) {
+            this.id = id;
+            this.content = content;
+        }
+    }
+
+    /**
+     * Reports end of stream after a fixed number of bytes
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+}
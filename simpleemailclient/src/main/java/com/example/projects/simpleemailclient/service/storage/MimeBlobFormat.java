@@ -0,0 +1,80 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Header of a compressed MIME object
+ * A compressed object starts with HEADER_BYTES: the magic bytes 0x89 'E' 'M' 'L', the
+ * format version, the codec, the id of the tenant dictionary it was compressed with
+ * (0 for none) and the uncompressed size, big-endian; the codec's stream follows. An
+ * object without the magic is raw MIME, as stored before compression. A message starts
+ * with an ASCII header field, so it never starts with 0x89.
+ */
+final class MimeBlobFormat {
+
+    static final int HEADER_BYTES = 22;
+    static final int VERSION = 1;
+    // Raw deflate, with the dictionary preset
+    static final int CODEC_DEFLATE = 1;
+
+    private static final byte[] MAGIC = {(byte) 0x89, 'E', 'M', 'L'};
+
+    private final int codec;
+    private final long dictionaryId;
+    private final long size;
+
+    MimeBlobFormat(int codec, long dictionaryId, long size) {
+        this.codec = codec;
+        this.dictionaryId = dictionaryId;
+        this.size = size;
+    }
+
+    int getCodec() {
+        return codec;
+    }
+
+    long getDictionaryId() {
+        return dictionaryId;
+    }
+
+    /**
+     * Size of the MIME content once decompressed
+     */
+    long getSize() {
+        return size;
+    }
+
+    byte[] encode() {
+        return ByteBuffer.allocate(HEADER_BYTES)
+            .put(MAGIC)
+            .put((byte) VERSION)
+            .put((byte) codec)
+            .putLong(dictionaryId)
+            .putLong(size)
+            .array();
+    }
+
+    /**
+     * @param header The first bytes of an object; fewer than HEADER_BYTES if it is shorter
+     * @return The header, or null if the object is raw MIME
+     * @throws IOException if the object is in a format this version cannot read
+     */
+    static MimeBlobFormat decode(byte[] header) throws IOException {
+        if (header.length < HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        for (byte magic : MAGIC) {
+            if (buffer.get() != magic) {
+                return null;
+            }
+        }
+        int version = buffer.get() & 0xff;
+        int codec = buffer.get() & 0xff;
+        if (version != VERSION || codec != CODEC_DEFLATE) {
+            throw new IOException("Unsupported stored message format " + version + "/" + codec);
+        }
+        return new MimeBlobFormat(codec, buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.UploadObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * BlobStore on MinIO, or any S3-compatible service
+ * Reads of part of an object are ranged GETs, so they transfer only the bytes asked for.
+ */
+@Component
+@ConditionalOnProperty(name = "email.blob.backend", havingValue = "minio", matchIfMissing = true)
+public class MinioBlobStore implements BlobStore {
+
+    private final MinioClient minioClient;
+    private final int bufferBytes;
+
+    public MinioBlobStore(MinioClient minioClient,
+                          @Value("${email.blob.minio.buffer-bytes:16384}") int bufferBytes) {
+        this.minioClient = minioClient;
+        this.bufferBytes = bufferBytes;
+    }
+
+    @Override
+    public void put(String bucket, String key, Path file, String contentType) throws IOException {
+        try {
+            minioClient.uploadObject(UploadObjectArgs.builder()
+                .bucket(bucket)
+                .object(key)
+                .filename(file.toString())
+                .contentType(contentType)
+                .build());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to store object " + key, e);
+        }
+    }
+
+    @Override
+    public InputStream get(String bucket, String key, long offset, long length) throws IOException {
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+        GetObjectArgs.Builder args = GetObjectArgs.builder()
+            .bucket(bucket)
+            .object(key)
+            .offset(offset);
+        if (length > 0) {
+            args.length(length);
+        }
+        try {
+            return minioClient.getObject(args.build());
+        } catch (ErrorResponseException e) {
+            if ("InvalidRange".equals(e.errorResponse().code())) {
+                // The range starts at or past the end of the object
+                return InputStream.nullInputStream();
+            }
+            throw failure(key, e);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to read object " + key, e);
+        }
+    }
+
+    @Override
+    public BlobInfo stat(String bucket, String key) throws IOException {
+        try {
+            StatObjectResponse stat = minioClient.statObject(StatObjectArgs.builder()
+                .bucket(bucket)
+                .object(key)
+                .build());
+            return new BlobInfo(stat.size(), stat.etag());
+        } catch (ErrorResponseException e) {
+            throw failure(key, e);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to read object " + key, e);
+        }
+    }
+
+    @Override
+    public long transferTo(String bucket, String key, long offset, long length, OutputStream out)
+            throws IOException {
+        if (length <= 0) {
+            return 0;
+        }
+        try (InputStream in = get(bucket, key, offset, length)) {
+            byte[] buffer = new byte[bufferBytes];
+            long remaining = length;
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+            if (remaining > 0) {
+                throw new IOException("Object " + key + " ended " + remaining + " bytes early");
+            }
+            return length;
+        }
+    }
+
+    @Override
+    public void delete(String bucket, String key) throws IOException {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                .bucket(bucket)
+                .object(key)
+                .build());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to remove object " + key, e);
+        }
+    }
+
+    private static IOException failure(String key, ErrorResponseException e) {
+        if ("NoSuchKey".equals(e.errorResponse().code())) {
+            NoSuchFileException missing = new NoSuchFileException(key);
+            missing.initCause(e);
+            return missing;
+        }
+        return new IOException("Failed to read object " + key, e);
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+/**
+ * Where a message's MIME was stored, and what it takes there
+ */
+public final class StoredContent {
+
+    private final String pointer;
+    private final long sizeBytes;
+    private final long storedSizeBytes;
+
+    public StoredContent(String pointer, long sizeBytes, long storedSizeBytes) {
+        this.pointer = pointer;
+        this.sizeBytes = sizeBytes;
+        this.storedSizeBytes = storedSizeBytes;
+    }
+
+    /**
+     * Key to record as the message's mimePointer
+     */
+    public String getPointer() {
+        return pointer;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Bytes the object takes, after compression
+     */
+    public long getStoredSizeBytes() {
+        return storedSizeBytes;
+    }
+}
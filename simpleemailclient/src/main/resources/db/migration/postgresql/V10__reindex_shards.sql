@@ -0,0 +1,23 @@
+-- Shards of an online reindex job (ReindexPipeline): each covers a user id range and
+-- records how far it got, so a worker can pick up a shard whose lease ran out.
+CREATE TABLE IF NOT EXISTS reindex_shards (
+    id              BIGSERIAL PRIMARY KEY,
+    job_id          VARCHAR(36)   NOT NULL,
+    shard_number    INTEGER       NOT NULL,
+    from_user_id    BIGINT        NOT NULL,
+    to_user_id      BIGINT        NOT NULL,
+    last_user_id    BIGINT        NOT NULL,
+    last_message_id BIGINT        NOT NULL,
+    indexed_count   BIGINT        NOT NULL,
+    estimated_count BIGINT        NOT NULL,
+    status          VARCHAR(20)   NOT NULL
+        CHECK (status IN ('PENDING', 'RUNNING', 'COMPLETED', 'FAILED', 'CANCELLED')),
+    owner           VARCHAR(100),
+    lease_until     TIMESTAMP(6),
+    failure         VARCHAR(1000),
+    created_at      TIMESTAMP(6)  NOT NULL,
+    updated_at      TIMESTAMP(6),
+    CONSTRAINT uk_reindex_shard_job_number UNIQUE (job_id, shard_number)
+);
+
+CREATE INDEX IF NOT EXISTS idx_reindex_shard_job_status ON reindex_shards (job_id, status);
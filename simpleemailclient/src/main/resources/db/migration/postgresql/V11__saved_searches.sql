@@ -0,0 +1,25 @@
+-- Saved searches kept as live virtual folders (VirtualFolderService), and the
+-- messages each one currently matches, paged newest first when a folder is opened.
+CREATE TABLE IF NOT EXISTS saved_searches (
+    id           BIGSERIAL PRIMARY KEY,
+    user_id      BIGINT        NOT NULL,
+    name         VARCHAR(100)  NOT NULL,
+    query        VARCHAR(2000) NOT NULL,
+    total_count  INTEGER       NOT NULL,
+    unread_count INTEGER       NOT NULL,
+    created_at   TIMESTAMP(6)  NOT NULL,
+    updated_at   TIMESTAMP(6)  NOT NULL,
+    CONSTRAINT uk_saved_search_user_name UNIQUE (user_id, name)
+);
+
+CREATE TABLE IF NOT EXISTS saved_search_members (
+    id              BIGSERIAL PRIMARY KEY,
+    saved_search_id BIGINT       NOT NULL,
+    message_id      BIGINT       NOT NULL,
+    message_date    TIMESTAMP(6),
+    CONSTRAINT uk_saved_search_member UNIQUE (saved_search_id, message_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_saved_search_member_date ON saved_search_members (saved_search_id, message_date);
+
+CREATE INDEX IF NOT EXISTS idx_saved_search_member_message ON saved_search_members (message_id);
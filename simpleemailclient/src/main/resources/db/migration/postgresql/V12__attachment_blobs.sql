@@ -0,0 +1,16 @@
+-- Content-addressed attachment bodies (AttachmentContentStore): one blob per tenant
+-- and SHA-256, shared by reference count; unreferenced blobs are collected by age.
+CREATE TABLE IF NOT EXISTS attachment_blobs (
+    id         BIGSERIAL PRIMARY KEY,
+    tenant_id  BIGINT       NOT NULL,
+    sha256     VARCHAR(64)  NOT NULL,
+    blob_key   VARCHAR(500) NOT NULL,
+    size_bytes BIGINT       NOT NULL,
+    ref_count  INTEGER      NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL,
+    CONSTRAINT uk_attachment_blob_hash UNIQUE (tenant_id, sha256),
+    CONSTRAINT uk_attachment_blob_key UNIQUE (blob_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_attachment_blob_orphans ON attachment_blobs (ref_count, updated_at);
@@ -0,0 +1,14 @@
+-- Per-tenant compression dictionaries (MessageContentStore), newest last; stored
+-- messages record the compressed size next to their original size.
+CREATE TABLE IF NOT EXISTS compression_dictionaries (
+    id           BIGSERIAL PRIMARY KEY,
+    tenant_id    BIGINT       NOT NULL,
+    content      BYTEA        NOT NULL,
+    sample_count INTEGER      NOT NULL,
+    created_at   TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_compression_dictionary_tenant ON compression_dictionaries (tenant_id, id);
+
+-- Null for messages stored before compression; adding a nullable column does not rewrite the table.
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS stored_size_bytes BIGINT;
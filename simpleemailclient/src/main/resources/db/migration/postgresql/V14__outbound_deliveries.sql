@@ -0,0 +1,24 @@
+-- Outbound SMTP queue (DeliveryQueue): one row per message and recipient domain,
+-- leased by a sender node and retried with backoff until every recipient is done.
+CREATE TABLE IF NOT EXISTS outbound_deliveries (
+    id                BIGSERIAL PRIMARY KEY,
+    user_id           BIGINT        NOT NULL,
+    message_id        BIGINT        NOT NULL,
+    sender            VARCHAR(500)  NOT NULL,
+    domain            VARCHAR(255)  NOT NULL,
+    recipients        TEXT          NOT NULL,
+    delivered_count   INTEGER       NOT NULL,
+    failed_recipients TEXT,
+    status            VARCHAR(20)   NOT NULL CHECK (status IN ('QUEUED', 'SENDING', 'DONE')),
+    attempts          INTEGER       NOT NULL,
+    next_attempt_at   TIMESTAMP(6)  NOT NULL,
+    owner             VARCHAR(100),
+    lease_until       TIMESTAMP(6),
+    last_error        VARCHAR(1000),
+    created_at        TIMESTAMP(6)  NOT NULL,
+    updated_at        TIMESTAMP(6)
+);
+
+CREATE INDEX IF NOT EXISTS idx_outbound_delivery_due ON outbound_deliveries (status, next_attempt_at);
+
+CREATE INDEX IF NOT EXISTS idx_outbound_delivery_message ON outbound_deliveries (message_id);
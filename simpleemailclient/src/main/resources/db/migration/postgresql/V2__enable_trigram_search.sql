@@ -0,0 +1,5 @@
+-- Trigram matching for the database keyword search path (MessageRepository.searchMessages).
+-- btree_gin lets user_id share the GIN index with the trigrams, so a search only
+-- reads the posting lists of one user.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS btree_gin;
@@ -0,0 +1,5 @@
+-- Built concurrently so writes to messages are not blocked; Flyway runs this
+-- migration outside a transaction. The expression must stay identical to
+-- MessageRepository.SEARCH_TEXT for the planner to use the index.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_message_search_trgm
+    ON messages USING gin (user_id, (lower(subject || ' ' || from_address)) gin_trgm_ops);
@@ -0,0 +1,12 @@
+-- Structured search filters (QueryPlanner): the owner's or mailbox's messages
+-- newest first, and the owner's messages with attachments. Built concurrently
+-- so writes to messages are not blocked; Flyway runs this migration outside a
+-- transaction.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_message_user_date
+    ON messages (user_id, message_date DESC, id DESC);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_message_mailbox_date
+    ON messages (mailbox_id, message_date DESC, id DESC);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_message_user_attachments
+    ON messages (user_id, message_date DESC) WHERE has_attachments;
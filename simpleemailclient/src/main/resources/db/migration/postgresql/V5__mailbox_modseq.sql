@@ -0,0 +1,24 @@
+-- Modseq delta sync (MessageMetadataServiceImpl.changesSince). Existing messages
+-- are backfilled at modseq 1 and their mailboxes at highest_modseq 1, so a client
+-- syncing from 0 sees every message once. The defaults only serve the backfill;
+-- the application always sets these columns.
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS modseq BIGINT NOT NULL DEFAULT 1;
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS added_modseq BIGINT NOT NULL DEFAULT 1;
+ALTER TABLE messages ALTER COLUMN modseq DROP DEFAULT;
+ALTER TABLE messages ALTER COLUMN added_modseq DROP DEFAULT;
+
+ALTER TABLE mailboxes ADD COLUMN IF NOT EXISTS highest_modseq BIGINT NOT NULL DEFAULT 1;
+ALTER TABLE mailboxes ADD COLUMN IF NOT EXISTS tombstone_horizon_modseq BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE mailboxes ALTER COLUMN highest_modseq DROP DEFAULT;
+ALTER TABLE mailboxes ALTER COLUMN tombstone_horizon_modseq DROP DEFAULT;
+
+CREATE TABLE IF NOT EXISTS message_tombstones (
+    id          BIGSERIAL PRIMARY KEY,
+    mailbox_id  BIGINT       NOT NULL,
+    message_id  BIGINT       NOT NULL,
+    modseq      BIGINT       NOT NULL,
+    expunged_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_tombstone_mailbox_modseq ON message_tombstones (mailbox_id, modseq);
+CREATE INDEX IF NOT EXISTS idx_tombstone_expunged_at ON message_tombstones (expunged_at);
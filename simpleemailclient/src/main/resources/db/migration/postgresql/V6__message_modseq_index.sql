@@ -0,0 +1,5 @@
+-- Delta sync reads a mailbox's messages changed after a modseq. Built
+-- concurrently so writes to messages are not blocked; Flyway runs this
+-- migration outside a transaction.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_message_mailbox_modseq
+    ON messages (mailbox_id, modseq);
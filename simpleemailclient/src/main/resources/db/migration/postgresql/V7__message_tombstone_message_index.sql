@@ -0,0 +1,6 @@
+-- Locating an expunged message's owner reads its most recent tombstone by
+-- message id (MessageTombstoneRepository.findFirstByMessageIdOrderByModseqDesc).
+-- Built concurrently so writes to message_tombstones are not blocked; Flyway
+-- runs this migration outside a transaction.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_tombstone_message
+    ON message_tombstones (message_id);
@@ -0,0 +1,3 @@
+-- List-Id header of mailing-list messages, matched by the rules engine's LIST_ID
+-- field. Messages stored before this column existed have no list id.
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS list_id VARCHAR(500);
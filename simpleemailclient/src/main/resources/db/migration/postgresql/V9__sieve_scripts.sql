@@ -0,0 +1,19 @@
+-- One Sieve script per user, compiled into the user's rule set (SieveCompiler).
+CREATE TABLE IF NOT EXISTS sieve_scripts (
+    id         BIGSERIAL PRIMARY KEY,
+    user_id    BIGINT       NOT NULL,
+    name       VARCHAR(200) NOT NULL,
+    script     TEXT         NOT NULL,
+    active     BOOLEAN      NOT NULL,
+    priority   INTEGER      NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL,
+    version    BIGINT,
+    CONSTRAINT uk_sieve_script_user UNIQUE (user_id)
+);
+
+-- The baseline schema was generated by Hibernate, which checks rule_type against
+-- the enum values it knew at the time. Recreate the check so it admits SIEVE.
+ALTER TABLE rules DROP CONSTRAINT IF EXISTS rules_rule_type_check;
+ALTER TABLE rules ADD CONSTRAINT rules_rule_type_check CHECK (rule_type IN (
+    'FILTER', 'VACATION_RESPONDER', 'FORWARD', 'AUTO_REPLY', 'MOVE_TO_FOLDER', 'LABEL', 'DELETE', 'SIEVE'));
@@ -1,9 +1,14 @@
 package com.example.projects.simpleemailclient.controller;
 
+import com.example.projects.simpleemailclient.dto.RecipientSuggestionDTO;
 import com.example.projects.simpleemailclient.dto.UserDTO;
+import com.example.projects.simpleemailclient.dto.VirtualFolderDTO;
+import com.example.projects.simpleemailclient.model.SavedSearch;
 import com.example.projects.simpleemailclient.model.User;
 import com.example.projects.simpleemailclient.model.User.UserStatus;
 import com.example.projects.simpleemailclient.service.UserService;
+import com.example.projects.simpleemailclient.service.search.RecipientCompletionService;
+import com.example.projects.simpleemailclient.service.search.VirtualFolderService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -38,6 +43,12 @@ class UserControllerTest {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private RecipientCompletionService recipientCompletionService;
+
+    @MockBean
+    private VirtualFolderService virtualFolderService;
+
     private User testUser;
     private UserDTO testUserDTO;
 
@@ -216,4 +227,36 @@ class UserControllerTest {
 
         verify(userService).getUsersNearQuota();
     }
+
+    @Test
+    void completeRecipients_Success() throws Exception {
+        // Given
+        when(recipientCompletionService.complete(1L, "ali", 5)).thenReturn(Arrays.asList(
+            RecipientSuggestionDTO.builder().address("alice@example.com").name("Alice Smith").build()));
+
+        // When/Then
+        mockMvc.perform(get("/api/v1/users/1/recipients").param("prefix", "ali").param("limit", "5"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].address").value("alice@example.com"))
+            .andExpect(jsonPath("$[0].name").value("Alice Smith"));
+    }
+
+    @Test
+    void saveVirtualFolder_Success() throws Exception {
+        // Given
+        SavedSearch folder = SavedSearch.builder().id(7L).userId(1L).name("Invoices")
+            .query("subject:invoice is:unread").totalCount(12).unreadCount(3).build();
+        when(virtualFolderService.saveFolder(1L, "Invoices", "subject:invoice is:unread")).thenReturn(folder);
+        VirtualFolderDTO request = VirtualFolderDTO.builder().name("Invoices").query("subject:invoice is:unread").build();
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/users/1/folders")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.id").value(7))
+            .andExpect(jsonPath("$.totalCount").value(12))
+            .andExpect(jsonPath("$.unreadCount").value(3));
+    }
 }
@@ -0,0 +1,194 @@
+package com.example.projects.simpleemailclient.service.attachment;
+
+import com.example.projects.simpleemailclient.config.MinIOConfig;
+import com.example.projects.simpleemailclient.model.Attachment;
+import com.example.projects.simpleemailclient.model.AttachmentBlob;
+import com.example.projects.simpleemailclient.repository.AttachmentBlobRepository;
+import com.example.projects.simpleemailclient.repository.AttachmentRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.service.UserService;
+import com.example.projects.simpleemailclient.service.storage.BlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for AttachmentContentStore
+ */
+@ExtendWith(MockitoExtension.class)
+class AttachmentContentStoreTest {
+
+    private static final String SHA256 = "ab" + "0".repeat(62);
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private MinIOConfig minIOConfig;
+
+    @Mock
+    private AttachmentBlobRepository blobRepository;
+
+    @Mock
+    private AttachmentRepository attachmentRepository;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    Path directory;
+
+    private SimpleMeterRegistry meterRegistry;
+    private AttachmentContentStore store;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        store = new AttachmentContentStore(blobStore, minIOConfig, blobRepository, attachmentRepository,
+            messageRepository, userService, transactionTemplate, meterRegistry, 60, 500);
+        file = Files.writeString(directory.resolve("spool"), "content");
+        lenient().when(minIOConfig.getAttachmentsBucket()).thenReturn("email-attachments");
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+            invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void store_ContentTheTenantHasOnlyAddsAReference() {
+        // Given
+        when(blobRepository.addReference(eq(7L), eq(SHA256), any(LocalDateTime.class))).thenReturn(1);
+        when(blobRepository.findByTenantIdAndSha256(7L, SHA256))
+            .thenReturn(Optional.of(AttachmentBlob.builder().blobKey("tenants/7/blobs/ab/existing").build()));
+
+        // When
+        String key = store.store(7L, SHA256, 7, file, "text/plain");
+
+        // Then
+        assertThat(key).isEqualTo("tenants/7/blobs/ab/existing");
+        verifyNoInteractions(blobStore);
+        verify(blobRepository, never()).saveAndFlush(any());
+        assertThat(meterRegistry.get("email.attachments.blobs").tag("result", "deduplicated").counter().count())
+            .isEqualTo(1.0);
+    }
+
+    @Test
+    void store_NewContentIsUploadedUnderAHashDerivedKey() throws Exception {
+        // Given
+        when(blobRepository.addReference(eq(7L), eq(SHA256), any(LocalDateTime.class))).thenReturn(0);
+
+        // When
+        String key = store.store(7L, SHA256, 7, file, "text/plain");
+
+        // Then
+        assertThat(key).startsWith("tenants/7/blobs/ab/" + SHA256 + "-");
+        verify(blobStore).put("email-attachments", key, file, "text/plain");
+        ArgumentCaptor<AttachmentBlob> blob = ArgumentCaptor.forClass(AttachmentBlob.class);
+        verify(blobRepository).saveAndFlush(blob.capture());
+        assertThat(blob.getValue().getRefCount()).isEqualTo(1);
+        assertThat(blob.getValue().getBlobKey()).isEqualTo(key);
+    }
+
+    @Test
+    void store_LosingAnInsertRaceAdoptsTheOtherBlob() throws Exception {
+        // Given
+        when(blobRepository.addReference(eq(7L), eq(SHA256), any(LocalDateTime.class))).thenReturn(0, 1);
+        when(blobRepository.saveAndFlush(any(AttachmentBlob.class)))
+            .thenThrow(new DataIntegrityViolationException("uk_attachment_blob_hash"));
+        when(blobRepository.findByTenantIdAndSha256(7L, SHA256))
+            .thenReturn(Optional.of(AttachmentBlob.builder().blobKey("tenants/7/blobs/ab/winner").build()));
+
+        // When
+        String key = store.store(7L, SHA256, 7, file, "text/plain");
+
+        // Then
+        assertThat(key).isEqualTo("tenants/7/blobs/ab/winner");
+        verify(blobStore).delete(eq("email-attachments"), startsWith("tenants/7/blobs/ab/" + SHA256 + "-"));
+    }
+
+    @Test
+    void deleteAttachments_ReleasesReferencesAndStorage() {
+        // Given
+        when(attachmentRepository.findByMessageId(10L)).thenReturn(List.of(
+            Attachment.builder().id(1L).messageId(10L).blobPointer("a").sizeBytes(100L).build(),
+            Attachment.builder().id(2L).messageId(10L).blobPointer("b").sizeBytes(50L).build()));
+
+        // When
+        store.deleteAttachments(1L, 10L);
+
+        // Then
+        verify(blobRepository).releaseReference(eq("a"), any(LocalDateTime.class));
+        verify(blobRepository).releaseReference(eq("b"), any(LocalDateTime.class));
+        verify(attachmentRepository).deleteByMessageId(10L);
+        verify(userService).updateUsedStorage(1L, -150L);
+        verifyNoInteractions(blobStore);
+    }
+
+    @Test
+    void deleteAttachments_ManyMessagesReleasesEveryReferenceInOneDelete() {
+        // Given
+        List<Long> messageIds = List.of(10L, 11L, 12L);
+        when(attachmentRepository.findByMessageIds(messageIds)).thenReturn(List.of(
+            Attachment.builder().id(1L).messageId(10L).blobPointer("a").sizeBytes(100L).build(),
+            Attachment.builder().id(2L).messageId(12L).blobPointer("a").sizeBytes(100L).build(),
+            Attachment.builder().id(3L).messageId(12L).blobPointer("b").sizeBytes(50L).build()));
+
+        // When
+        store.deleteAttachments(1L, messageIds);
+
+        // Then
+        verify(blobRepository, times(2)).releaseReference(eq("a"), any(LocalDateTime.class));
+        verify(blobRepository).releaseReference(eq("b"), any(LocalDateTime.class));
+        verify(attachmentRepository).deleteByMessageIds(messageIds);
+        verify(userService).updateUsedStorage(1L, -250L);
+        verifyNoInteractions(blobStore);
+    }
+
+    @Test
+    void collectGarbage_RemovesOnlyBlobsThatAreStillUnreferenced() throws Exception {
+        // Given
+        when(blobRepository.findOrphans(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(
+            AttachmentBlob.builder().id(1L).blobKey("orphan").build(),
+            AttachmentBlob.builder().id(2L).blobKey("revived").build()));
+        when(blobRepository.deleteOrphan(1L)).thenReturn(1);
+        when(blobRepository.deleteOrphan(2L)).thenReturn(0);
+
+        // When
+        int removed = store.collectGarbage();
+
+        // Then
+        assertThat(removed).isEqualTo(1);
+        verify(blobStore).delete("email-attachments", "orphan");
+        verifyNoMoreInteractions(blobStore);
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.projects.simpleemailclient.service.attachment;
+
+import com.example.projects.simpleemailclient.exception.QuotaExceededException;
+import com.example.projects.simpleemailclient.exception.ResourceNotFoundException;
+import com.example.projects.simpleemailclient.model.Attachment;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.User;
+import com.example.projects.simpleemailclient.repository.AttachmentRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for AttachmentUploader
+ */
+@ExtendWith(MockitoExtension.class)
+class AttachmentUploaderTest {
+
+    private static final long MAX_SIZE = 1_000_000;
+
+    @Mock
+    private AttachmentContentStore contentStore;
+
+    @Mock
+    private AttachmentRepository attachmentRepository;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private UserService userService;
+
+    @TempDir
+    Path spoolDirectory;
+
+    private AttachmentUploader uploader;
+
+    @BeforeEach
+    void setUp() {
+        uploader = new AttachmentUploader(contentStore, attachmentRepository, messageRepository, userService,
+            MAX_SIZE, 4, 1000, spoolDirectory.toString());
+        lenient().when(messageRepository.findById(10L))
+            .thenReturn(Optional.of(Message.builder().id(10L).userId(1L).build()));
+    }
+
+    @Test
+    void upload_SpoolsHashesAndStoresByContent() throws Exception {
+        // Given
+        givenUser(0L, 10_000_000L);
+        String sha256 = sha256(300_000);
+        when(contentStore.store(eq(7L), eq(sha256), eq(300_000L), any(Path.class), eq("application/pdf")))
+            .thenAnswer(invocation -> {
+                assertThat(Files.size(invocation.<Path>getArgument(3))).isEqualTo(300_000);
+                return "tenants/7/blobs/key";
+            });
+        when(attachmentRepository.save(any(Attachment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        Attachment attachment = uploader.upload(1L, 10L, "report.pdf", "application/pdf", content(300_000));
+
+        // Then
+        assertThat(attachment.getSizeBytes()).isEqualTo(300_000);
+        assertThat(attachment.getChecksumSha256()).isEqualTo(sha256);
+        assertThat(attachment.getBlobPointer()).isEqualTo("tenants/7/blobs/key");
+        assertThat(attachment.getScanStatus()).isEqualTo("PENDING");
+        verify(userService).updateUsedStorage(1L, 300_000L);
+        assertThat(spoolDirectory).isEmptyDirectory();
+    }
+
+    @Test
+    void upload_StopsWhenTheQuotaRunsOut() {
+        // Given
+        givenUser(9_900_000L, 10_000_000L);
+
+        // When / Then
+        assertThatThrownBy(() -> uploader.upload(1L, 10L, "big.bin", null, content(500_000)))
+            .isInstanceOf(QuotaExceededException.class);
+        verifyNoInteractions(contentStore, attachmentRepository);
+        verify(userService, never()).updateUsedStorage(anyLong(), anyLong());
+        assertThat(spoolDirectory).isEmptyDirectory();
+    }
+
+    @Test
+    void upload_RejectsAttachmentsOverTheMaximumSize() {
+        // Given
+        givenUser(0L, 100_000_000L);
+
+        // When / Then
+        assertThatThrownBy(() -> uploader.upload(1L, 10L, "huge.bin", null, content(MAX_SIZE + 1)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("maximum size");
+        verifyNoInteractions(contentStore, attachmentRepository);
+    }
+
+    @Test
+    void upload_ReleasesTheContentWhenSavingFails() {
+        // Given
+        givenUser(0L, 10_000_000L);
+        when(contentStore.store(anyLong(), anyString(), anyLong(), any(Path.class), anyString()))
+            .thenReturn("tenants/7/blobs/key");
+        when(attachmentRepository.save(any(Attachment.class))).thenThrow(new IllegalStateException("db down"));
+
+        // When / Then
+        assertThatThrownBy(() -> uploader.upload(1L, 10L, "a.txt", "text/plain",
+            new ByteArrayInputStream("hi".getBytes(StandardCharsets.UTF_8))))
+            .isInstanceOf(IllegalStateException.class);
+        verify(contentStore).release("tenants/7/blobs/key");
+    }
+
+    @Test
+    void upload_OtherUsersMessageIsNotFound() {
+        assertThatThrownBy(() -> uploader.upload(2L, 10L, "a.txt", "text/plain", content(10)))
+            .isInstanceOf(ResourceNotFoundException.class);
+        verifyNoInteractions(contentStore);
+    }
+
+    private void givenUser(long usedBytes, long quotaBytes) {
+        when(userService.getUserById(1L)).thenReturn(Optional.of(
+            User.builder().id(1L).tenantId(7L).usedBytes(usedBytes).quotaBytes(quotaBytes).build()));
+    }
+
+    /**
+     * A deterministic stream of the given length that is never held in memory
+     */
+    private static InputStream content(long length) {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() {
+                return position < length ? (int) (position++ * 31 % 251) : -1;
+            }
+        };
+    }
+
+    private static String sha256(long length) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        InputStream in = content(length);
+        int b;
+        while ((b = in.read()) >= 0) {
+            digest.update((byte) b);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.projects.simpleemailclient.service.attachment;
+
+import com.example.projects.simpleemailclient.config.MinIOConfig;
+import com.example.projects.simpleemailclient.exception.ResourceNotFoundException;
+import com.example.projects.simpleemailclient.model.Attachment;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.AttachmentRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.service.storage.BlobInfo;
+import com.example.projects.simpleemailclient.service.storage.BlobStore;
+import com.example.projects.simpleemailclient.service.storage.MessageContentStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ContentDownloader
+ */
+@ExtendWith(MockitoExtension.class)
+class ContentDownloaderTest {
+
+    private static final String SHA256 = "ab" + "0".repeat(62);
+    private static final String ETAG = "\"" + SHA256 + "\"";
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private MessageContentStore messageContentStore;
+
+    @Mock
+    private MinIOConfig minIOConfig;
+
+    @Mock
+    private AttachmentRepository attachmentRepository;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    private ContentDownloader downloader;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        downloader = new ContentDownloader(blobStore, messageContentStore, minIOConfig, attachmentRepository,
+            messageRepository);
+        lenient().when(minIOConfig.getAttachmentsBucket()).thenReturn("email-attachments");
+        lenient().when(messageRepository.findByIdAndUserId(10L, 1L))
+            .thenReturn(Optional.of(Message.builder().id(10L).userId(1L).build()));
+        lenient().when(attachmentRepository.findById(100L)).thenReturn(Optional.of(Attachment.builder()
+            .id(100L)
+            .messageId(10L)
+            .filename("report.pdf")
+            .mimeType("application/pdf")
+            .sizeBytes((long) CONTENT.length)
+            .blobPointer("tenants/1/blobs/ab/" + SHA256)
+            .checksumSha256(SHA256)
+            .build()));
+        lenient().when(blobStore.transferTo(anyString(), anyString(), anyLong(), anyLong(), any(OutputStream.class)))
+            .thenAnswer(invocation -> {
+                int offset = ((Long) invocation.getArgument(2)).intValue();
+                int length = ((Long) invocation.getArgument(3)).intValue();
+                OutputStream out = invocation.getArgument(4);
+                out.write(Arrays.copyOfRange(CONTENT, offset, offset + length));
+                return (long) length;
+            });
+    }
+
+    @Test
+    void attachment_WithoutRange_StreamsWholeObject() throws Exception {
+        // When
+        Download download = downloader.attachment(1L, 10L, 100L, null, null, null);
+
+        // Then
+        assertThat(download.getStatus()).isEqualTo(HttpStatus.OK);
+        assertThat(download.getEtag()).isEqualTo(ETAG);
+        assertThat(download.getContentLength()).isEqualTo(CONTENT.length);
+        assertThat(body(download)).isEqualTo("0123456789abcdefghij");
+    }
+
+    @Test
+    void attachment_WithRange_FetchesOnlyRequestedBytes() throws Exception {
+        // When
+        Download download = downloader.attachment(1L, 10L, 100L, "bytes=5-9", null, null);
+
+        // Then
+        assertThat(download.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(download.getContentLength()).isEqualTo(5);
+        assertThat(download.getContentRange()).isEqualTo("bytes 5-9/20");
+        assertThat(body(download)).isEqualTo("56789");
+        verify(blobStore).transferTo(eq("email-attachments"), eq("tenants/1/blobs/ab/" + SHA256), eq(5L), eq(5L),
+            any(OutputStream.class));
+    }
+
+    @Test
+    void attachment_WithSuffixRange_SendsLastBytes() throws Exception {
+        // When
+        Download download = downloader.attachment(1L, 10L, 100L, "bytes=-3", null, null);
+
+        // Then
+        assertThat(download.getContentRange()).isEqualTo("bytes 17-19/20");
+        assertThat(body(download)).isEqualTo("hij");
+    }
+
+    @Test
+    void attachment_WithOpenRangePastEnd_ClampsToObject() throws Exception {
+        // When
+        Download download = downloader.attachment(1L, 10L, 100L, "bytes=15-1000", null, null);
+
+        // Then
+        assertThat(download.getContentRange()).isEqualTo("bytes 15-19/20");
+        assertThat(body(download)).isEqualTo("fghij");
+    }
+
+    @Test
+    void attachment_WithRangeBeyondObject_IsUnsatisfiable() throws Exception {
+        // When
+        Download download = downloader.attachment(1L, 10L, 100L, "bytes=20-", null, null);
+
+        // Then
+        assertThat(download.getStatus()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(download.getBody()).isNull();
+        verifyNoInteractions(blobStore);
+    }
+
+    @Test
+    void attachment_WithMultipleRanges_SendsWholeObject() throws Exception {
+        // When
+        Download download = downloader.attachment(1L, 10L, 100L, "bytes=0-1,5-6", null, null);
+
+        // Then
+        assertThat(download.getStatus()).isEqualTo(HttpStatus.OK);
+        assertThat(download.getContentLength()).isEqualTo(CONTENT.length);
+    }
+
+    @Test
+    void attachment_WithMatchingETag_IsNotModified() throws Exception {
+        // When
+        Download download = downloader.attachment(1L, 10L, 100L, null, "\"other\", W/" + ETAG, null);
+
+        // Then
+        assertThat(download.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(download.getBody()).isNull();
+        verifyNoInteractions(blobStore);
+    }
+
+    @Test
+    void attachment_WithStaleIfRange_IgnoresRange() throws Exception {
+        // When
+        Download download = downloader.attachment(1L, 10L, 100L, "bytes=5-9", null, "\"stale\"");
+
+        // Then
+        assertThat(download.getStatus()).isEqualTo(HttpStatus.OK);
+        assertThat(body(download)).isEqualTo("0123456789abcdefghij");
+    }
+
+    @Test
+    void attachment_OfAnotherMessage_IsNotFound() {
+        // Given
+        when(messageRepository.findByIdAndUserId(11L, 1L))
+            .thenReturn(Optional.of(Message.builder().id(11L).userId(1L).build()));
+
+        // When / Then
+        assertThatThrownBy(() -> downloader.attachment(1L, 11L, 100L, null, null, null))
+            .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void message_WithoutStoredContent_IsNotFound() {
+        // When / Then
+        assertThatThrownBy(() -> downloader.message(1L, 10L, null, null, null))
+            .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void message_StreamsRangeOfDecompressedMime() throws Exception {
+        // Given
+        when(messageRepository.findByIdAndUserId(12L, 1L))
+            .thenReturn(Optional.of(Message.builder().id(12L).userId(1L).mimePointer("mime/12").build()));
+        when(messageContentStore.stat("mime/12")).thenReturn(new BlobInfo(CONTENT.length, "v1"));
+        when(messageContentStore.transferTo(eq("mime/12"), eq(0L), eq(4L), any(OutputStream.class)))
+            .thenAnswer(invocation -> {
+                invocation.<OutputStream>getArgument(3).write(CONTENT, 0, 4);
+                return 4L;
+            });
+
+        // When
+        Download download = downloader.message(1L, 12L, "bytes=0-3", null, null);
+
+        // Then
+        assertThat(download.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(download.getEtag()).isEqualTo("\"v1\"");
+        assertThat(download.getContentRange()).isEqualTo("bytes 0-3/20");
+        assertThat(body(download)).isEqualTo("0123");
+        verifyNoInteractions(blobStore);
+    }
+
+    @Test
+    void message_WithMissingObject_IsNotFound() throws Exception {
+        // Given
+        when(messageRepository.findByIdAndUserId(12L, 1L))
+            .thenReturn(Optional.of(Message.builder().id(12L).userId(1L).mimePointer("mime/12").build()));
+        when(messageContentStore.stat("mime/12")).thenThrow(new NoSuchFileException("mime/12"));
+
+        // When / Then
+        assertThatThrownBy(() -> downloader.message(1L, 12L, null, null, null))
+            .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    private static String body(Download download) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        download.getBody().writeTo(out);
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+}
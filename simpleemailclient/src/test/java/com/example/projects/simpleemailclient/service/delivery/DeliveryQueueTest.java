@@ -0,0 +1,362 @@
+package com.example.projects.simpleemailclient.service.delivery;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.OutboundDelivery;
+import com.example.projects.simpleemailclient.model.OutboundDelivery.Status;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.OutboundDeliveryRepository;
+import com.example.projects.simpleemailclient.service.NotificationService;
+import com.example.projects.simpleemailclient.service.storage.MessageContentStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for DeliveryQueue, delivering to FakeSmtpServer through an in-memory queue table
+ */
+@ExtendWith(MockitoExtension.class)
+class DeliveryQueueTest {
+
+    private static final Instant NOW = Instant.parse("2025-05-01T10:00:00Z");
+    private static final String MIME = "From: me@example.org\r\nSubject: News\r\n\r\nHello\r\n";
+
+    @Mock
+    private OutboundDeliveryRepository deliveryRepository;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private MessageContentStore messageContentStore;
+
+    @Mock
+    private MxResolver mxResolver;
+
+    @Mock
+    private NotificationService notificationService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private final Map<Long, OutboundDelivery> table = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private FakeSmtpServer server;
+    private SmtpConnectionPool connectionPool;
+    private DeliveryQueue queue;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeSmtpServer(true);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        connectionPool = new SmtpConnectionPool(meterRegistry, "client.test", 5000, 5000, 2, 60, 200);
+        queue = new DeliveryQueue(deliveryRepository, messageRepository, messageContentStore, connectionPool,
+            mxResolver, notificationService, transactionTemplate, meterRegistry,
+            4, 200, 600, 100, 300, 3600, 3);
+        queue.clock = Clock.fixed(NOW, ZoneOffset.UTC);
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+            invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().when(mxResolver.resolve(anyString())).thenReturn(List.of(server.route()));
+        lenient().when(messageRepository.findById(10L))
+            .thenReturn(Optional.of(Message.builder().id(10L).mimePointer("tenants/1/messages/m").build()));
+        lenient().when(messageContentStore.open("tenants/1/messages/m"))
+            .thenAnswer(invocation -> new ByteArrayInputStream(MIME.getBytes(StandardCharsets.US_ASCII)));
+        stubTable();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        queue.stop();
+        connectionPool.close();
+        server.close();
+    }
+
+    @Test
+    void enqueue_GroupsRecipientsByDomain() {
+        // When
+        List<OutboundDelivery> rows = queue.enqueue(1L, 10L, "me@example.org",
+            List.of("a@One.test", "b@one.test", "A@one.test", "c@two.test"));
+
+        // Then
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0).getDomain()).isEqualTo("one.test");
+        assertThat(rows.get(0).getRecipients()).isEqualTo("a@One.test,b@one.test");
+        assertThat(rows.get(1).getRecipients()).isEqualTo("c@two.test");
+        assertThat(rows).allMatch(row -> row.getStatus() == Status.QUEUED);
+    }
+
+    @Test
+    void enqueue_InvalidAddress_Throws() {
+        assertThatThrownBy(() -> queue.enqueue(1L, 10L, "me@example.org", List.of("a@one.test", "nobody")))
+            .isInstanceOf(IllegalArgumentException.class);
+        verify(deliveryRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void dispatch_BulkSend_SharesFewConnections() {
+        // Given
+        List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            recipients.add("user" + i + "@" + (i % 10 < 6 ? "one" : i % 10 < 9 ? "two" : "three") + ".test");
+        }
+        queue.enqueue(1L, 10L, "me@example.org", recipients);
+
+        // When
+        int attempted = queue.dispatch();
+
+        // Then
+        assertThat(attempted).isEqualTo(3);
+        assertThat(server.connections()).isLessThanOrEqualTo(2);
+        // 600, 300 and 100 recipients, at most 100 per transaction
+        assertThat(server.transactions()).hasSize(10);
+        assertThat(server.transactions()).allMatch(transaction -> transaction.recipients.size() <= 100);
+        assertThat(server.transactions().stream().mapToInt(transaction -> transaction.recipients.size()).sum())
+            .isEqualTo(1000);
+        assertThat(server.transactions().get(0).data).isEqualTo(MIME);
+        assertThat(table.values()).allMatch(row -> row.getStatus() == Status.DONE && row.getAttempts() == 1);
+        verify(notificationService, atLeastOnce()).notifyDeliveryStatus(1L, 10L, DeliveryQueue.DELIVERED);
+        verify(notificationService, never()).notifyDeliveryStatus(anyLong(), anyLong(), eq(DeliveryQueue.DEFERRED));
+    }
+
+    @Test
+    void dispatch_TransientRefusal_RetriesWithBackoff() {
+        // Given
+        queue.enqueue(1L, 10L, "me@example.org",
+            List.of("a@one.test", "reject-b@one.test", "later-c@one.test"));
+
+        // When
+        queue.dispatch();
+
+        // Then
+        OutboundDelivery row = table.values().iterator().next();
+        assertThat(row.getStatus()).isEqualTo(Status.QUEUED);
+        assertThat(row.getRecipients()).isEqualTo("later-c@one.test");
+        assertThat(row.getDeliveredCount()).isEqualTo(1);
+        assertThat(row.getFailedRecipients()).startsWith("reject-b@one.test: 550");
+        assertThat(row.getLastError()).startsWith("450");
+        assertThat(row.getNextAttemptAt()).isBetween(at(NOW.plusSeconds(300)), at(NOW.plusSeconds(330)));
+        verify(notificationService).notifyDeliveryStatus(1L, 10L, DeliveryQueue.DEFERRED);
+
+        // Not due yet
+        assertThat(queue.dispatch()).isZero();
+    }
+
+    @Test
+    void dispatch_StillRefusedAtMaxAttempts_GivesUp() {
+        // Given
+        queue.enqueue(1L, 10L, "me@example.org", List.of("a@one.test", "later-c@one.test"));
+
+        // When
+        for (int day = 0; day < 3; day++) {
+            queue.clock = Clock.fixed(NOW.plus(Duration.ofDays(day)), ZoneOffset.UTC);
+            assertThat(queue.dispatch()).isEqualTo(1);
+        }
+
+        // Then
+        OutboundDelivery row = table.values().iterator().next();
+        assertThat(row.getStatus()).isEqualTo(Status.DONE);
+        assertThat(row.getAttempts()).isEqualTo(3);
+        assertThat(row.getRecipients()).isEmpty();
+        assertThat(row.getFailedRecipients()).startsWith("later-c@one.test: Gave up after 3 attempts");
+        verify(notificationService, times(2)).notifyDeliveryStatus(1L, 10L, DeliveryQueue.DEFERRED);
+        verify(notificationService).notifyDeliveryStatus(1L, 10L, DeliveryQueue.PARTIALLY_DELIVERED);
+        assertThat(server.transactions()).hasSize(1);
+    }
+
+    @Test
+    void dispatch_ServerUnreachable_RetriesLater() throws Exception {
+        // Given
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        when(mxResolver.resolve("one.test")).thenReturn(List.of(new Route("127.0.0.1", closedPort)));
+        queue.enqueue(1L, 10L, "me@example.org", List.of("a@one.test"));
+
+        // When
+        queue.dispatch();
+
+        // Then
+        OutboundDelivery row = table.values().iterator().next();
+        assertThat(row.getStatus()).isEqualTo(Status.QUEUED);
+        assertThat(row.getRecipients()).isEqualTo("a@one.test");
+        assertThat(row.getLastError()).startsWith("451");
+        verify(notificationService).notifyDeliveryStatus(1L, 10L, DeliveryQueue.DEFERRED);
+    }
+
+    @Test
+    void dispatch_DomainRefusesMail_FailsAtOnce() throws Exception {
+        // Given
+        when(mxResolver.resolve("nowhere.test"))
+            .thenThrow(new SmtpException(new SmtpReply(550, "5.1.2 Domain nowhere.test not found")));
+        queue.enqueue(1L, 10L, "me@example.org", List.of("a@nowhere.test"));
+
+        // When
+        queue.dispatch();
+
+        // Then
+        OutboundDelivery row = table.values().iterator().next();
+        assertThat(row.getStatus()).isEqualTo(Status.DONE);
+        assertThat(row.getFailedRecipients()).isEqualTo("a@nowhere.test: 550 5.1.2 Domain nowhere.test not found");
+        verify(notificationService).notifyDeliveryStatus(1L, 10L, DeliveryQueue.FAILED);
+        assertThat(server.connections()).isZero();
+    }
+
+    @Test
+    void dispatch_LeaseTakenOverBeforeSending_LeavesRowToNewOwner() throws Exception {
+        // Given
+        queue.enqueue(1L, 10L, "me@example.org", List.of("a@one.test", "b@two.test"));
+        when(mxResolver.resolve("two.test")).thenAnswer(invocation -> {
+            // Our lease ran out and another node claimed the row before the lane reached it
+            OutboundDelivery row = table.get(2L);
+            row.setOwner("other-node");
+            row.setLeaseUntil(at(NOW.plusSeconds(1200)));
+            return List.of(server.route());
+        });
+
+        // When
+        queue.dispatch();
+
+        // Then
+        assertThat(server.transactions()).hasSize(1);
+        assertThat(server.transactions().get(0).recipients).containsExactly("a@one.test");
+        OutboundDelivery taken = table.get(2L);
+        assertThat(taken.getStatus()).isEqualTo(Status.SENDING);
+        assertThat(taken.getOwner()).isEqualTo("other-node");
+        assertThat(taken.getAttempts()).isZero();
+        assertThat(table.get(1L).getStatus()).isEqualTo(Status.DONE);
+    }
+
+    @Test
+    void dispatch_RenewsLeaseBeforeEachTransaction() {
+        // Given
+        List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            recipients.add("user" + i + "@one.test");
+        }
+        queue.enqueue(1L, 10L, "me@example.org", recipients);
+
+        // When
+        queue.dispatch();
+
+        // Then
+        assertThat(server.transactions()).hasSize(3);
+        verify(deliveryRepository, times(3)).renew(eq(1L), anyString(), eq(at(NOW)), eq(at(NOW.plusSeconds(600))),
+            eq(Status.SENDING));
+    }
+
+    @Test
+    void backoff_DoublesUpToMax() {
+        Duration initial = Duration.ofMinutes(5);
+        Duration max = Duration.ofHours(4);
+
+        assertThat(DeliveryQueue.backoff(1, initial, max)).isEqualTo(Duration.ofMinutes(5));
+        assertThat(DeliveryQueue.backoff(2, initial, max)).isEqualTo(Duration.ofMinutes(10));
+        assertThat(DeliveryQueue.backoff(4, initial, max)).isEqualTo(Duration.ofMinutes(40));
+        assertThat(DeliveryQueue.backoff(7, initial, max)).isEqualTo(Duration.ofHours(4));
+        assertThat(DeliveryQueue.backoff(100, initial, max)).isEqualTo(Duration.ofHours(4));
+    }
+
+    private static LocalDateTime at(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    /**
+     * Back the repository with a map, applying claim, renew and finish as their queries do
+     */
+    @SuppressWarnings("unchecked")
+    private void stubTable() {
+        lenient().when(deliveryRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<OutboundDelivery> rows = new ArrayList<>((List<OutboundDelivery>) invocation.getArgument(0));
+            for (OutboundDelivery row : rows) {
+                row.setId(ids.incrementAndGet());
+                table.put(row.getId(), row);
+            }
+            return rows;
+        });
+        lenient().when(deliveryRepository.findDue(any(), any(), any(), any())).thenAnswer(invocation -> {
+            LocalDateTime now = invocation.getArgument(0);
+            return table.values().stream()
+                .filter(row -> row.getStatus() == Status.QUEUED && !row.getNextAttemptAt().isAfter(now))
+                .sorted(Comparator.comparing(OutboundDelivery::getId))
+                .collect(Collectors.toList());
+        });
+        lenient().when(deliveryRepository.claim(anyLong(), anyString(), any(), any(), any(), any()))
+            .thenAnswer(invocation -> {
+                synchronized (table) {
+                    OutboundDelivery row = table.get(invocation.<Long>getArgument(0));
+                    if (row.getStatus() != Status.QUEUED) {
+                        return 0;
+                    }
+                    row.setStatus(Status.SENDING);
+                    row.setOwner(invocation.getArgument(1));
+                    row.setLeaseUntil(invocation.getArgument(3));
+                    return 1;
+                }
+            });
+        lenient().when(deliveryRepository.renew(anyLong(), anyString(), any(), any(), any()))
+            .thenAnswer(invocation -> {
+                synchronized (table) {
+                    OutboundDelivery row = table.get(invocation.<Long>getArgument(0));
+                    if (row.getStatus() != Status.SENDING || !row.getOwner().equals(invocation.getArgument(1))) {
+                        return 0;
+                    }
+                    row.setLeaseUntil(invocation.getArgument(3));
+                    return 1;
+                }
+            });
+        lenient().when(deliveryRepository.finish(anyLong(), anyString(), any(), anyString(), anyInt(), any(), any(),
+                any(), any(), any())).thenAnswer(invocation -> {
+                    synchronized (table) {
+                        OutboundDelivery row = table.get(invocation.<Long>getArgument(0));
+                        if (row.getStatus() != Status.SENDING || !row.getOwner().equals(invocation.getArgument(1))) {
+                            return 0;
+                        }
+                        row.setStatus(invocation.getArgument(2));
+                        row.setRecipients(invocation.getArgument(3));
+                        row.setDeliveredCount(row.getDeliveredCount() + invocation.<Integer>getArgument(4));
+                        row.setFailedRecipients(invocation.getArgument(5));
+                        row.setAttempts(row.getAttempts() + 1);
+                        row.setNextAttemptAt(invocation.getArgument(6));
+                        row.setLastError(invocation.getArgument(7));
+                        row.setOwner(null);
+                        row.setLeaseUntil(null);
+                        return 1;
+                    }
+                });
+        lenient().when(deliveryRepository.findByMessageId(anyLong())).thenAnswer(invocation -> {
+            synchronized (table) {
+                return table.values().stream()
+                    .filter(row -> row.getMessageId().equals(invocation.getArgument(0)))
+                    .collect(Collectors.toList());
+            }
+        });
+    }
+}
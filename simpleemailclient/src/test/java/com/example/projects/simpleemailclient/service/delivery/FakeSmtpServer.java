@@ -0,0 +1,165 @@
+package com.example.projects.simpleemailclient.service.delivery;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process SMTP server for delivery tests
+ * Accepts every recipient except those whose address starts with "reject-" (550) or
+ * "later-" (450), and records the sessions, transactions and pipelined command batches
+ * it sees.
+ */
+final class FakeSmtpServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions = Executors.newCachedThreadPool();
+    private final boolean pipelining;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger pipelinedBatches = new AtomicInteger();
+    private final List<Transaction> transactions = new CopyOnWriteArrayList<>();
+
+    FakeSmtpServer(boolean pipelining) throws IOException {
+        this.pipelining = pipelining;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        sessions.submit(this::acceptLoop);
+    }
+
+    Route route() {
+        return new Route(InetAddress.getLoopbackAddress().getHostAddress(), serverSocket.getLocalPort());
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    int pipelinedBatches() {
+        return pipelinedBatches.get();
+    }
+
+    List<Transaction> transactions() {
+        return Collections.unmodifiableList(transactions);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                sessions.submit(() -> session(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void session(Socket socket) {
+        try (socket;
+             BufferedReader reader = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+             BufferedWriter writer = new BufferedWriter(
+                 new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1))) {
+            reply(writer, "220 fake.test ESMTP");
+            String sender = null;
+            List<String> recipients = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                if (command.equals("EHLO")) {
+                    reply(writer, pipelining ? "250-fake.test\r\n250-PIPELINING\r\n250 8BITMIME" : "250 fake.test");
+                } else if (command.equals("HELO") || command.equals("NOOP")) {
+                    reply(writer, "250 OK");
+                } else if (command.equals("MAIL")) {
+                    // The rest of a pipelined transaction is already waiting
+                    if (reader.ready()) {
+                        pipelinedBatches.incrementAndGet();
+                    }
+                    sender = address(line);
+                    recipients.clear();
+                    reply(writer, "250 OK");
+                } else if (command.equals("RCPT")) {
+                    String recipient = address(line);
+                    if (sender == null) {
+                        reply(writer, "503 Need MAIL first");
+                    } else if (recipient.startsWith("reject-")) {
+                        reply(writer, "550 5.1.1 No such user");
+                    } else if (recipient.startsWith("later-")) {
+                        reply(writer, "450 4.2.1 Try again later");
+                    } else {
+                        recipients.add(recipient);
+                        reply(writer, "250 OK");
+                    }
+                } else if (command.equals("DATA")) {
+                    if (recipients.isEmpty()) {
+                        reply(writer, "554 No valid recipients");
+                        continue;
+                    }
+                    reply(writer, "354 Go ahead");
+                    StringBuilder data = new StringBuilder();
+                    while ((line = reader.readLine()) != null && !line.equals(".")) {
+                        data.append(line.startsWith(".") ? line.substring(1) : line).append("\r\n");
+                    }
+                    transactions.add(new Transaction(sender, new ArrayList<>(recipients), data.toString()));
+                    sender = null;
+                    recipients.clear();
+                    reply(writer, "250 2.0.0 Queued");
+                } else if (command.equals("RSET")) {
+                    sender = null;
+                    recipients.clear();
+                    reply(writer, "250 OK");
+                } else if (command.equals("QUIT")) {
+                    reply(writer, "221 Bye");
+                    return;
+                } else {
+                    reply(writer, "500 Unknown command");
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        }
+    }
+
+    private static String address(String line) {
+        int start = line.indexOf('<');
+        int end = line.indexOf('>', start + 1);
+        return start >= 0 && end > start ? line.substring(start + 1, end) : "";
+    }
+
+    private static void reply(BufferedWriter writer, String text) throws IOException {
+        writer.write(text);
+        writer.write("\r\n");
+        writer.flush();
+    }
+
+    static final class Transaction {
+
+        final String sender;
+        final List<String> recipients;
+        final String data;
+
+        Transaction(String sender, List<String> recipients, String data) {
+            this.sender = sender;
+            this.recipients = recipients;
+            this.data = data;
+        }
+    }
+}
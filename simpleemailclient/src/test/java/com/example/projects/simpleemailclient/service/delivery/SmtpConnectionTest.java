@@ -0,0 +1,133 @@
+package com.example.projects.simpleemailclient.service.delivery;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for SmtpConnection, against FakeSmtpServer
+ */
+class SmtpConnectionTest {
+
+    private FakeSmtpServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeSmtpServer(true);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    void send_PipelinesTransaction() throws Exception {
+        // Given
+        List<String> recipients = List.of("a@example.com", "b@example.com", "c@example.com");
+
+        // When
+        Map<String, SmtpReply> outcome;
+        try (SmtpConnection connection = open()) {
+            outcome = connection.send("me@example.org", recipients, content("Subject: Hi\r\n\r\nHello\r\n"));
+            assertThat(connection.supportsPipelining()).isTrue();
+        }
+
+        // Then
+        assertThat(outcome).containsOnlyKeys(recipients);
+        assertThat(outcome.values()).allMatch(SmtpReply::isPositive);
+        assertThat(server.transactions()).hasSize(1);
+        assertThat(server.transactions().get(0).sender).isEqualTo("me@example.org");
+        assertThat(server.transactions().get(0).recipients).isEqualTo(recipients);
+        assertThat(server.transactions().get(0).data).isEqualTo("Subject: Hi\r\n\r\nHello\r\n");
+        assertThat(server.pipelinedBatches()).isEqualTo(1);
+    }
+
+    @Test
+    void send_NormalisesLineEndingsAndStuffsDots() throws Exception {
+        // Given
+        String message = "Subject: Dots\n\n.leading dot\n..two\nlast line";
+
+        // When
+        try (SmtpConnection connection = open()) {
+            connection.send("me@example.org", List.of("a@example.com"), content(message));
+        }
+
+        // Then
+        assertThat(server.transactions().get(0).data)
+            .isEqualTo("Subject: Dots\r\n\r\n.leading dot\r\n..two\r\nlast line\r\n");
+    }
+
+    @Test
+    void send_ReportsRefusedRecipientsSeparately() throws Exception {
+        // Given
+        List<String> recipients = List.of("a@example.com", "reject-b@example.com", "later-c@example.com");
+
+        // When
+        Map<String, SmtpReply> outcome;
+        try (SmtpConnection connection = open()) {
+            outcome = connection.send("me@example.org", recipients, content("Body\r\n"));
+        }
+
+        // Then
+        assertThat(outcome.get("a@example.com").isPositive()).isTrue();
+        assertThat(outcome.get("reject-b@example.com").isPermanent()).isTrue();
+        assertThat(outcome.get("later-c@example.com").isTransient()).isTrue();
+        assertThat(server.transactions()).hasSize(1);
+        assertThat(server.transactions().get(0).recipients).containsExactly("a@example.com");
+    }
+
+    @Test
+    void send_AllRecipientsRefused_SendsNoContentAndStaysUsable() throws Exception {
+        try (SmtpConnection connection = open()) {
+            // When
+            Map<String, SmtpReply> refused = connection.send("me@example.org",
+                List.of("reject-a@example.com", "reject-b@example.com"), content("Body\r\n"));
+            Map<String, SmtpReply> accepted = connection.send("me@example.org",
+                List.of("c@example.com"), content("Body\r\n"));
+
+            // Then
+            assertThat(refused.values()).allMatch(SmtpReply::isPermanent);
+            assertThat(accepted.get("c@example.com").isPositive()).isTrue();
+            assertThat(connection.isUsable()).isTrue();
+            assertThat(connection.getTransactions()).isEqualTo(2);
+        }
+        assertThat(server.transactions()).hasSize(1);
+        assertThat(server.connections()).isEqualTo(1);
+    }
+
+    @Test
+    void send_WithoutPipelining_RunsCommandsOneByOne() throws Exception {
+        // Given
+        try (FakeSmtpServer plain = new FakeSmtpServer(false);
+             SmtpConnection connection = SmtpConnection.open(plain.route(), "client.test", 5000, 5000)) {
+
+            // When
+            Map<String, SmtpReply> outcome = connection.send("me@example.org",
+                List.of("a@example.com", "reject-b@example.com"), content("Body\r\n"));
+
+            // Then
+            assertThat(connection.supportsPipelining()).isFalse();
+            assertThat(outcome.get("a@example.com").isPositive()).isTrue();
+            assertThat(outcome.get("reject-b@example.com").getCode()).isEqualTo(550);
+            assertThat(plain.transactions()).hasSize(1);
+            assertThat(plain.pipelinedBatches()).isZero();
+        }
+    }
+
+    private SmtpConnection open() throws Exception {
+        return SmtpConnection.open(server.route(), "client.test", 5000, 5000);
+    }
+
+    private static InputStream content(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.projects.simpleemailclient.service.impl;
+
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.MessageTombstone;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageTombstoneRepository;
+import com.example.projects.simpleemailclient.service.SearchService.SearchResult;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import com.example.projects.simpleemailclient.service.search.IndexPartition;
+import com.example.projects.simpleemailclient.service.search.SearchResultCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for EmbeddedSearchService
+ */
+@ExtendWith(MockitoExtension.class)
+class EmbeddedSearchServiceTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2025, 4, 1, 12, 0);
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private MailboxRepository mailboxRepository;
+
+    @Mock
+    private MessageTombstoneRepository tombstoneRepository;
+
+    @Mock
+    private MessageBodySource messageBodySource;
+
+    @TempDir
+    Path directory;
+
+    private SearchResultCache resultCache;
+    private EmbeddedSearchService searchService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        resultCache = spy(new SearchResultCache(mock(StringRedisTemplate.class), messageRepository,
+            new SimpleMeterRegistry(), false, 200, 600));
+        searchService = new EmbeddedSearchService(messageRepository, mailboxRepository, tombstoneRepository,
+            messageBodySource, resultCache, directory.toString(), 2, 2, 2, 512, 65536);
+        lenient().when(messageBodySource.open(any())).thenAnswer(invocation ->
+            new StringReader("body of " + invocation.<Message>getArgument(0).getSubject()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        searchService.shutdown();
+    }
+
+    @Test
+    void indexMessage_MakesMessageSearchableForItsOwnerOnly() {
+        // Given
+        Message message = message(10L, 1L, "Quarterly report", "alice@example.com", 0);
+        when(messageRepository.findById(10L)).thenReturn(Optional.of(message));
+
+        // When
+        searchService.indexMessage(10L);
+        Page<SearchResult> owner = searchService.searchMessages(1L, "quarterly", PageRequest.of(0, 10));
+        Page<SearchResult> other = searchService.searchMessages(2L, "quarterly", PageRequest.of(0, 10));
+
+        // Then
+        assertThat(owner.getTotalElements()).isEqualTo(1);
+        assertThat(owner.getContent().get(0).getMessageId()).isEqualTo(10L);
+        assertThat(owner.getContent().get(0).getScore()).isPositive();
+        assertThat(other.getTotalElements()).isZero();
+        verify(resultCache).invalidate(1L);
+    }
+
+    @Test
+    void indexMessage_IndexesHeadersWhenBodyCannotBeRead() throws IOException {
+        // Given
+        Message message = message(10L, 1L, "Quarterly report", "alice@example.com", 0);
+        when(messageRepository.findById(10L)).thenReturn(Optional.of(message));
+        when(messageBodySource.open(message)).thenThrow(new IOException("gone"));
+
+        // When
+        searchService.indexMessage(10L);
+
+        // Then
+        assertThat(searchService.searchBySubject(1L, "report", PageRequest.of(0, 10)).getTotalElements()).isEqualTo(1);
+        assertThat(searchService.searchMessages(1L, "body", PageRequest.of(0, 10)).getTotalElements()).isZero();
+    }
+
+    @Test
+    void bulkIndexMessages_FlushesSegmentsAndKeepsEverythingSearchable() {
+        // Given
+        List<Message> messages = List.of(
+            message(1L, 1L, "Build passed", "ci@example.com", 0),
+            message(2L, 1L, "Build failed", "ci@example.com", 1),
+            message(3L, 1L, "Build passed", "ci@example.com", 2),
+            message(4L, 1L, "Lunch", "bob@example.com", 3),
+            message(5L, 1L, "Build passed", "ci@example.com", 4));
+        when(messageRepository.findAllById(anyList())).thenAnswer(invocation -> messages.stream()
+            .filter(m -> invocation.<List<Long>>getArgument(0).contains(m.getId()))
+            .toList());
+
+        // When
+        searchService.bulkIndexMessages(List.of(1L, 2L, 3L, 4L, 5L));
+        Page<SearchResult> fromCi = searchService.searchBySender(1L, "ci@example.com", PageRequest.of(0, 2));
+        Page<SearchResult> passed = searchService.searchBySubject(1L, "build passed", PageRequest.of(0, 10));
+
+        // Then
+        assertThat(fromCi.getTotalElements()).isEqualTo(4);
+        assertThat(fromCi.getContent()).hasSize(2);
+        assertThat(passed.getContent()).extracting(SearchResult::getMessageId).containsExactly(5L, 3L, 1L);
+    }
+
+    @Test
+    void removeFromIndex_ResolvesOwnerOfExpungedMessageThroughTombstone() {
+        // Given
+        Message message = message(10L, 1L, "Quarterly report", "alice@example.com", 0);
+        when(messageRepository.findById(10L)).thenReturn(Optional.of(message), Optional.empty());
+        when(tombstoneRepository.findFirstByMessageIdOrderByModseqDesc(10L))
+            .thenReturn(Optional.of(MessageTombstone.builder().messageId(10L).mailboxId(100L).modseq(7L).build()));
+        when(mailboxRepository.findById(100L)).thenReturn(Optional.of(Mailbox.builder().id(100L).userId(1L).build()));
+        searchService.indexMessage(10L);
+
+        // When
+        searchService.removeFromIndex(10L);
+
+        // Then
+        assertThat(searchService.searchMessages(1L, "quarterly", PageRequest.of(0, 10)).getTotalElements()).isZero();
+    }
+
+    @Test
+    void reindexUserMessages_ReplacesIndexWithRepositoryContents() {
+        // Given
+        Message stale = message(1L, 1L, "Stale subject", "old@example.com", 0);
+        when(messageRepository.findById(1L)).thenReturn(Optional.of(stale));
+        searchService.indexMessage(1L);
+        when(messageRepository.findPageByUserIdAfter(eq(1L), anyLong(), any()))
+            .thenReturn(List.of(message(1L, 1L, "Fresh subject", "new@example.com", 0),
+                message(2L, 1L, "Another fresh one", "new@example.com", 1)))
+            .thenReturn(List.of(message(3L, 1L, "Last fresh", "new@example.com", 2)));
+
+        // When
+        searchService.reindexUserMessages(1L);
+
+        // Then
+        assertThat(searchService.searchMessages(1L, "stale", PageRequest.of(0, 10)).getTotalElements()).isZero();
+        assertThat(searchService.searchMessages(1L, "fresh", PageRequest.of(0, 10)).getTotalElements()).isEqualTo(3);
+        verify(messageRepository).findPageByUserIdAfter(eq(1L), eq(2L), any());
+    }
+
+    @Test
+    void advancedSearch_CombinesTextAndDateCriteria() {
+        // Given
+        for (long id = 1; id <= 4; id++) {
+            Message message = message(id, 1L, "Invoice " + id, "billing@example.com", (int) id);
+            when(messageRepository.findById(id)).thenReturn(Optional.of(message));
+            searchService.indexMessage(id);
+        }
+
+        // When
+        Page<SearchResult> results = searchService.advancedSearch(1L, Map.of(
+            "from", "billing",
+            "subject", "invoice",
+            "startDate", DATE.plusDays(2),
+            "endDate", DATE.plusDays(3).toString()), PageRequest.of(0, 10));
+        Page<SearchResult> byDate = searchService.searchByDateRange(1L, DATE.plusDays(4), null, PageRequest.of(0, 10));
+
+        // Then
+        assertThat(results.getContent()).extracting(SearchResult::getMessageId).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(byDate.getContent()).extracting(SearchResult::getMessageId).containsExactly(4L);
+        assertThat(byDate.getContent().get(0).getScore()).isNull();
+        assertThatThrownBy(() -> searchService.advancedSearch(1L, Map.of("folder", "x"), PageRequest.of(0, 10)))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void partitions_SurviveEvictionAndRestart() {
+        // Given
+        for (long userId = 1; userId <= 3; userId++) {
+            Message message = message(userId * 10, userId, "Hello from " + userId, "a@example.com", 0);
+            when(messageRepository.findById(userId * 10)).thenReturn(Optional.of(message));
+            searchService.indexMessage(userId * 10);
+        }
+        searchService.saveSearch(1L, "greetings", "hello");
+
+        // When
+        searchService.shutdown();
+        searchService = new EmbeddedSearchService(messageRepository, mailboxRepository, tombstoneRepository,
+            messageBodySource, resultCache, directory.toString(), 2, 2, 2, 512, 65536);
+
+        // Then
+        for (long userId = 1; userId <= 3; userId++) {
+            assertThat(searchService.searchMessages(userId, "hello", PageRequest.of(0, 10)).getContent())
+                .extracting(SearchResult::getMessageId).containsExactly(userId * 10);
+        }
+        assertThat(searchService.getSavedSearches(1L)).containsEntry("greetings", "hello");
+    }
+
+    @Test
+    void partition_EvictionKeepsPartitionWithMergeQueued() {
+        // Given
+        IndexPartition merging = searchService.partition(1L);
+        IndexPartition idle = searchService.partition(2L);
+        searchService.mergesQueued.add(1L);
+
+        // When
+        searchService.partition(3L);
+
+        // Then
+        assertThat(merging.isClosed()).isFalse();
+        assertThat(searchService.partition(1L)).isSameAs(merging);
+        assertThat(idle.isClosed()).isTrue();
+    }
+
+    @Test
+    void partition_ConcurrentLookupsShareOneInstance() throws Exception {
+        // Given
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<IndexPartition>> lookups = new ArrayList<>();
+        Set<IndexPartition> opened = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // When
+        try {
+            for (int i = 0; i < 8; i++) {
+                lookups.add(pool.submit(() -> {
+                    start.await();
+                    return searchService.partition(5L);
+                }));
+            }
+            start.countDown();
+            for (Future<IndexPartition> lookup : lookups) {
+                opened.add(lookup.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Then
+        assertThat(opened).hasSize(1);
+        assertThat(opened.iterator().next().isClosed()).isFalse();
+    }
+
+    private static Message message(Long id, Long userId, String subject, String from, int daysAfter) {
+        return Message.builder()
+            .id(id)
+            .userId(userId)
+            .mailboxId(100L)
+            .subject(subject)
+            .fromAddress(from)
+            .toAddresses("me@example.com")
+            .messageDate(DATE.plusDays(daysAfter))
+            .snippet(subject)
+            .build();
+    }
+}
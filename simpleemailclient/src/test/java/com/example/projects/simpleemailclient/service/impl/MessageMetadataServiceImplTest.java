@@ -0,0 +1,418 @@
+package com.example.projects.simpleemailclient.service.impl;
+
+import com.example.projects.simpleemailclient.dto.MailboxChangesDTO;
+import com.example.projects.simpleemailclient.exception.QuotaExceededException;
+import com.example.projects.simpleemailclient.exception.ResourceNotFoundException;
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.MessageTombstone;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository.ModseqView;
+import com.example.projects.simpleemailclient.repository.MessageTombstoneRepository;
+import com.example.projects.simpleemailclient.service.SearchService;
+import com.example.projects.simpleemailclient.service.SearchService.SearchResult;
+import com.example.projects.simpleemailclient.service.UserService;
+import com.example.projects.simpleemailclient.service.attachment.AttachmentContentStore;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import com.example.projects.simpleemailclient.service.search.RecipientCompletionService;
+import com.example.projects.simpleemailclient.service.search.SearchResultCache;
+import com.example.projects.simpleemailclient.service.search.VirtualFolderService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for MessageMetadataServiceImpl
+ */
+@ExtendWith(MockitoExtension.class)
+class MessageMetadataServiceImplTest {
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private MailboxRepository mailboxRepository;
+
+    @Mock
+    private MessageTombstoneRepository tombstoneRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private RecipientCompletionService recipientCompletionService;
+
+    @Mock
+    private VirtualFolderService virtualFolderService;
+
+    @Mock
+    private AttachmentContentStore attachmentContentStore;
+
+    @Mock
+    private SearchService searchService;
+
+    @Mock
+    private MessageBodySource messageBodySource;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @InjectMocks
+    private MessageMetadataServiceImpl messageService;
+
+    @TempDir
+    Path indexDirectory;
+
+    private EmbeddedSearchService embeddedSearchService;
+
+    private Message testMessage;
+    private Mailbox testMailbox;
+
+    @BeforeEach
+    void setUp() {
+        testMessage = Message.builder()
+            .id(10L)
+            .userId(1L)
+            .mailboxId(100L)
+            .msgUid("uid-10")
+            .subject("Quarterly report")
+            .fromAddress("alice@example.com")
+            .toAddresses("bob@example.com")
+            .messageDate(LocalDateTime.now())
+            .sizeBytes(2048L)
+            .flags("")
+            .mimePointer("messages/uid-10")
+            .hasAttachments(false)
+            .modseq(5L)
+            .addedModseq(3L)
+            .build();
+
+        testMailbox = Mailbox.builder()
+            .id(100L)
+            .userId(1L)
+            .name("INBOX")
+            .mailboxType(Mailbox.MailboxType.INBOX)
+            .unreadCount(1)
+            .totalCount(1)
+            .sortOrder(0)
+            .highestModseq(5L)
+            .tombstoneHorizonModseq(0L)
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (embeddedSearchService != null) {
+            embeddedSearchService.shutdown();
+        }
+    }
+
+    @Test
+    void createMessage_AssignsModseqAndUpdatesCounts() {
+        // Given
+        testMessage.setId(null);
+        testMessage.setModseq(null);
+        testMessage.setAddedModseq(null);
+        testMessage.setThreadId(7L);
+        when(userService.hasQuota(1L, 2048L)).thenReturn(true);
+        when(mailboxRepository.nextModseq(100L)).thenReturn(6L);
+        when(messageRepository.save(any(Message.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        Message created = messageService.createMessage(testMessage);
+
+        // Then
+        assertThat(created.getModseq()).isEqualTo(6L);
+        assertThat(created.getAddedModseq()).isEqualTo(6L);
+        verify(mailboxRepository).incrementTotalCount(100L, 1);
+        verify(mailboxRepository).incrementUnreadCount(100L, 1);
+        verify(userService).updateUsedStorage(1L, 2048L);
+        verify(recipientCompletionService).recordMessage(created);
+        verify(virtualFolderService).percolate(created);
+        verify(searchService).indexMessage(created.getId());
+    }
+
+    @Test
+    void createMessage_MakesMessageSearchable() throws Exception {
+        // Given
+        MessageMetadataServiceImpl service = indexedMessageService(searchResultCache(false));
+        when(userService.hasQuota(1L, 2048L)).thenReturn(true);
+        when(mailboxRepository.nextModseq(100L)).thenReturn(6L);
+        when(messageRepository.save(any(Message.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(messageRepository.findById(10L)).thenReturn(Optional.of(testMessage));
+        when(messageBodySource.open(testMessage)).thenReturn(new StringReader("Numbers attached"));
+
+        // When
+        service.createMessage(testMessage);
+
+        // Then
+        assertThat(embeddedSearchService.searchMessages(1L, "quarterly", PageRequest.of(0, 10)))
+            .extracting(SearchResult::getMessageId)
+            .containsExactly(10L);
+    }
+
+    @Test
+    void createMessage_QuotaExceeded_ThrowsException() {
+        // Given
+        when(userService.hasQuota(1L, 2048L)).thenReturn(false);
+
+        // When/Then
+        assertThatThrownBy(() -> messageService.createMessage(testMessage))
+            .isInstanceOf(QuotaExceededException.class);
+
+        verify(messageRepository, never()).save(any(Message.class));
+        verify(mailboxRepository, never()).nextModseq(anyLong());
+    }
+
+    @Test
+    void moveMessage_TombstonesSourceAndBumpsTarget() {
+        // Given
+        when(messageRepository.findByIdAndUserId(10L, 1L)).thenReturn(Optional.of(testMessage));
+        when(mailboxRepository.findByIdAndUserId(200L, 1L)).thenReturn(Optional.of(Mailbox.builder().id(200L).build()));
+        when(mailboxRepository.nextModseq(100L)).thenReturn(6L);
+        when(mailboxRepository.nextModseq(200L)).thenReturn(41L);
+        when(messageRepository.save(any(Message.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        Message moved = messageService.moveMessage(10L, 200L, 1L);
+
+        // Then
+        assertThat(moved.getMailboxId()).isEqualTo(200L);
+        assertThat(moved.getModseq()).isEqualTo(41L);
+        assertThat(moved.getAddedModseq()).isEqualTo(41L);
+        verify(tombstoneRepository).save(argThat((MessageTombstone t) ->
+            t.getMailboxId().equals(100L) && t.getMessageId().equals(10L) && t.getModseq().equals(6L)));
+        verify(mailboxRepository).incrementUnreadCount(100L, -1);
+        verify(mailboxRepository).incrementUnreadCount(200L, 1);
+    }
+
+    @Test
+    void moveMessageAndUpdateFlags_BumpSearchGeneration() throws Exception {
+        // Given
+        Map<String, String> redis = new HashMap<>();
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.increment(anyString())).thenAnswer(invocation ->
+            Long.valueOf(redis.merge(invocation.getArgument(0), "1",
+                (current, one) -> String.valueOf(Long.parseLong(current) + 1))));
+        MessageMetadataServiceImpl service = indexedMessageService(searchResultCache(true));
+        when(messageRepository.findByIdAndUserId(10L, 1L)).thenReturn(Optional.of(testMessage));
+        when(messageRepository.findById(10L)).thenReturn(Optional.of(testMessage));
+        when(messageRepository.save(any(Message.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(mailboxRepository.findByIdAndUserId(200L, 1L)).thenReturn(Optional.of(Mailbox.builder().id(200L).build()));
+        when(messageBodySource.open(testMessage)).thenAnswer(invocation -> new StringReader("Numbers attached"));
+
+        // When
+        service.moveMessage(10L, 200L, 1L);
+        String afterMove = redis.get("search:gen:1");
+        service.markAsRead(10L, 1L);
+        service.markAsRead(10L, 1L);
+
+        // Then
+        assertThat(afterMove).isEqualTo("1");
+        assertThat(redis).containsEntry("search:gen:1", "2");
+    }
+
+    @Test
+    void updateFlags_UnchangedFlags_DoesNotBumpModseq() {
+        // Given
+        testMessage.setFlags("READ,STARRED");
+        when(messageRepository.findByIdAndUserId(10L, 1L)).thenReturn(Optional.of(testMessage));
+
+        // When
+        messageService.updateFlags(10L, "STARRED, READ", 1L);
+
+        // Then
+        verify(mailboxRepository, never()).nextModseq(anyLong());
+        verify(messageRepository, never()).save(any(Message.class));
+    }
+
+    @Test
+    void markAsRead_BumpsModseqAndDecrementsUnread() {
+        // Given
+        when(messageRepository.findByIdAndUserId(10L, 1L)).thenReturn(Optional.of(testMessage));
+        when(mailboxRepository.nextModseq(100L)).thenReturn(6L);
+        when(messageRepository.save(any(Message.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        Message updated = messageService.markAsRead(10L, 1L);
+
+        // Then
+        assertThat(updated.getFlags()).isEqualTo("READ");
+        assertThat(updated.getModseq()).isEqualTo(6L);
+        verify(mailboxRepository).incrementUnreadCount(100L, -1);
+        verify(virtualFolderService).refresh(updated, true);
+    }
+
+    @Test
+    void deleteMessage_RecordsTombstone() {
+        // Given
+        when(messageRepository.findByIdAndUserId(10L, 1L)).thenReturn(Optional.of(testMessage));
+        when(mailboxRepository.nextModseq(100L)).thenReturn(6L);
+
+        // When
+        messageService.deleteMessage(10L, 1L);
+
+        // Then
+        verify(tombstoneRepository).save(argThat((MessageTombstone t) -> t.getModseq().equals(6L)));
+        verify(virtualFolderService).remove(testMessage);
+        verify(attachmentContentStore).deleteAttachments(1L, 10L);
+        verify(messageRepository).delete(testMessage);
+        verify(mailboxRepository).incrementTotalCount(100L, -1);
+        verify(userService).updateUsedStorage(1L, -2048L);
+        verify(searchService).removeFromIndex(10L);
+    }
+
+    @Test
+    void deleteMessage_RemovesMessageFromSearch() throws Exception {
+        // Given
+        MessageMetadataServiceImpl service = indexedMessageService(searchResultCache(false));
+        when(messageRepository.findById(10L)).thenReturn(Optional.of(testMessage));
+        when(messageBodySource.open(testMessage)).thenReturn(new StringReader("Numbers attached"));
+        embeddedSearchService.indexMessage(10L);
+        when(messageRepository.findByIdAndUserId(10L, 1L)).thenReturn(Optional.of(testMessage));
+        when(mailboxRepository.nextModseq(100L)).thenReturn(6L);
+
+        // When
+        service.deleteMessage(10L, 1L);
+
+        // Then
+        assertThat(embeddedSearchService.searchMessages(1L, "quarterly", PageRequest.of(0, 10))).isEmpty();
+    }
+
+    @Test
+    void searchMessages_NormalizesKeywordAndEscapesLikePattern() {
+        // Given
+        when(messageRepository.searchMessages(eq(1L), anyString(), anyString(), any()))
+            .thenReturn(new PageImpl<>(List.of(testMessage)));
+
+        // When
+        Page<Message> results = messageService.searchMessages(1L, "  50%_Off\\Sale ",
+            PageRequest.of(2, 20, Sort.by("messageDate")));
+
+        // Then
+        assertThat(results.getContent()).containsExactly(testMessage);
+        verify(messageRepository).searchMessages(1L, "50%_off\\sale", "%50\\%\\_off\\\\sale%", PageRequest.of(2, 20));
+    }
+
+    @Test
+    void changesSince_SplitsAddedChangedAndExpunged() {
+        // Given
+        testMailbox.setHighestModseq(12L);
+        when(mailboxRepository.findByIdAndUserId(100L, 1L)).thenReturn(Optional.of(testMailbox));
+        when(messageRepository.findChangedSince(100L, 4L)).thenReturn(Arrays.asList(
+            view(10L, 8L, 3L),
+            view(11L, 9L, 9L),
+            view(12L, 12L, 11L)));
+        when(tombstoneRepository.findExpungedMessageIdsSince(100L, 4L)).thenReturn(Arrays.asList(7L, 12L));
+
+        // When
+        MailboxChangesDTO changes = messageService.changesSince(100L, 4L, 1L);
+
+        // Then
+        assertThat(changes.getFullResyncRequired()).isFalse();
+        assertThat(changes.getHighestModseq()).isEqualTo(12L);
+        assertThat(changes.getAdded()).containsExactly(11L, 12L);
+        assertThat(changes.getChanged()).containsExactly(10L);
+        assertThat(changes.getExpunged()).containsExactly(7L);
+    }
+
+    @Test
+    void changesSince_UpToDate_ReturnsEmptyWithoutQueries() {
+        // Given
+        when(mailboxRepository.findByIdAndUserId(100L, 1L)).thenReturn(Optional.of(testMailbox));
+
+        // When
+        MailboxChangesDTO changes = messageService.changesSince(100L, 5L, 1L);
+
+        // Then
+        assertThat(changes.getAdded()).isEmpty();
+        assertThat(changes.getExpunged()).isEmpty();
+        verify(messageRepository, never()).findChangedSince(anyLong(), anyLong());
+    }
+
+    @Test
+    void changesSince_BeforeTombstoneHorizon_RequiresFullResync() {
+        // Given
+        testMailbox.setTombstoneHorizonModseq(3L);
+        when(mailboxRepository.findByIdAndUserId(100L, 1L)).thenReturn(Optional.of(testMailbox));
+
+        // When
+        MailboxChangesDTO changes = messageService.changesSince(100L, 2L, 1L);
+
+        // Then
+        assertThat(changes.getFullResyncRequired()).isTrue();
+        verify(tombstoneRepository, never()).findExpungedMessageIdsSince(anyLong(), anyLong());
+    }
+
+    @Test
+    void changesSince_MailboxNotFound_ThrowsException() {
+        // Given
+        when(mailboxRepository.findByIdAndUserId(999L, 1L)).thenReturn(Optional.empty());
+
+        // When/Then
+        assertThatThrownBy(() -> messageService.changesSince(999L, 0L, 1L))
+            .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    /**
+     * Service wired to a real embedded index, so tests can search for what it wrote
+     */
+    private MessageMetadataServiceImpl indexedMessageService(SearchResultCache resultCache) {
+        embeddedSearchService = new EmbeddedSearchService(messageRepository, mailboxRepository, tombstoneRepository,
+            messageBodySource, resultCache, indexDirectory.toString(), 10, 1000, 8, 512, 65536);
+        return new MessageMetadataServiceImpl(messageRepository, mailboxRepository, tombstoneRepository, userService,
+            recipientCompletionService, virtualFolderService, attachmentContentStore, embeddedSearchService);
+    }
+
+    private SearchResultCache searchResultCache(boolean enabled) {
+        return new SearchResultCache(redisTemplate, messageRepository, new SimpleMeterRegistry(), enabled, 200, 600);
+    }
+
+    private static ModseqView view(Long id, Long modseq, Long addedModseq) {
+        return new ModseqView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Long getModseq() {
+                return modseq;
+            }
+
+            @Override
+            public Long getAddedModseq() {
+                return addedModseq;
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.projects.simpleemailclient.service.impl;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageTombstoneRepository;
+import com.example.projects.simpleemailclient.service.SearchService.SearchResult;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import com.example.projects.simpleemailclient.service.search.SearchResultCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.HttpHost;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.opensearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.opensearch.action.admin.indices.refresh.RefreshRequest;
+import org.opensearch.client.RequestOptions;
+import org.opensearch.client.RestClient;
+import org.opensearch.client.RestHighLevelClient;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * OpenSearchSearchService against a local single-node OpenSearch
+ * Run with: mvn test -Dopensearch.url=http://localhost:9200
+ */
+@EnabledIfSystemProperty(named = "opensearch.url", matches = ".+")
+class OpenSearchSearchServiceIntegrationTest {
+
+    private static final int USERS = 200;
+    private static final int MESSAGES_PER_USER = 50;
+    private static final int QUERIES = 500;
+
+    private final String index = "it-messages-" + System.nanoTime();
+    private RestHighLevelClient client;
+    private MessageRepository messageRepository;
+    private SearchResultCache resultCache;
+    private OpenSearchSearchService searchService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(System.getProperty("opensearch.url"))));
+        messageRepository = mock(MessageRepository.class);
+        MessageBodySource bodySource = mock(MessageBodySource.class);
+        when(bodySource.open(any())).thenAnswer(invocation ->
+            new StringReader("body of " + invocation.<Message>getArgument(0).getSubject()));
+        resultCache = new SearchResultCache(mock(StringRedisTemplate.class), messageRepository,
+            new SimpleMeterRegistry(), false, 200, 600);
+        searchService = new OpenSearchSearchService(client, messageRepository, mock(MailboxRepository.class),
+            mock(MessageTombstoneRepository.class), bodySource, resultCache, index, index + "-saved", 4, 0, 65536,
+            1000, 5, 200, 1, 2000);
+        searchService.createIndices();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        searchService.shutdown();
+        client.indices().delete(new DeleteIndexRequest(index, index + "-saved"), RequestOptions.DEFAULT);
+        client.close();
+    }
+
+    @Test
+    void indexAndSearch_StaysWithinEachUsersMessages() throws Exception {
+        // Given
+        Random random = new Random(3);
+        List<Message> messages = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        for (long userId = 1; userId <= USERS; userId++) {
+            for (int i = 0; i < MESSAGES_PER_USER; i++) {
+                long id = userId * 1000 + i;
+                messages.add(Message.builder()
+                    .id(id)
+                    .userId(userId)
+                    .mailboxId(userId)
+                    .subject("Topic" + random.nextInt(20) + " update " + i)
+                    .fromAddress("sender" + random.nextInt(50) + "@example.com")
+                    .toAddresses("user" + userId + "@example.com")
+                    .messageDate(LocalDateTime.of(2025, 1, 1, 0, 0).plusHours(i))
+                    .snippet("snippet " + i)
+                    .hasAttachments(false)
+                    .build());
+                ids.add(id);
+            }
+        }
+        when(messageRepository.findAllById(anyList())).thenReturn(messages);
+        searchService.bulkIndexMessages(ids);
+        searchService.shutdown();
+        client.indices().refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+        searchService = new OpenSearchSearchService(client, messageRepository, mock(MailboxRepository.class),
+            mock(MessageTombstoneRepository.class), mock(MessageBodySource.class), resultCache, index, index + "-saved", 4, 0,
+            65536, 1000, 5, 200, 1, 2000);
+
+        // When
+        long[] nanos = new long[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            long userId = 1 + random.nextInt(USERS);
+            long start = System.nanoTime();
+            List<SearchResult> results = searchService.searchMessages(userId, "update",
+                PageRequest.of(0, 10)).getContent();
+            nanos[q] = System.nanoTime() - start;
+
+            // Then
+            assertThat(results).hasSize(10);
+            assertThat(results).allSatisfy(result -> assertThat(result.getMessageId() / 1000).isEqualTo(userId));
+        }
+        Arrays.sort(nanos);
+        long p95 = nanos[QUERIES * 95 / 100] / 1_000_000;
+        System.out.printf("users=%d messages=%d p95=%d ms%n", USERS, messages.size(), p95);
+        assertThat(p95).isLessThan(2000);
+        assertThat(searchService.searchBySender(1L, "nobody@nowhere.invalid", PageRequest.of(0, 10))
+            .getTotalElements()).isZero();
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.projects.simpleemailclient.service.impl;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageTombstoneRepository;
+import com.example.projects.simpleemailclient.service.SearchService.SearchResult;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import com.example.projects.simpleemailclient.service.search.SearchResultCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.lucene.search.TotalHits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.opensearch.action.DocWriteRequest;
+import org.opensearch.action.DocWriteResponse;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.delete.DeleteRequest;
+import org.opensearch.action.delete.DeleteResponse;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.action.index.IndexResponse;
+import org.opensearch.action.search.SearchRequest;
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.client.RestHighLevelClient;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.index.shard.ShardId;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.index.reindex.DeleteByQueryRequest;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.SearchHits;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for OpenSearchSearchService
+ */
+@ExtendWith(MockitoExtension.class)
+class OpenSearchSearchServiceTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2025, 4, 1, 12, 0);
+
+    @Mock
+    private RestHighLevelClient client;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private MailboxRepository mailboxRepository;
+
+    @Mock
+    private MessageTombstoneRepository tombstoneRepository;
+
+    @Mock
+    private MessageBodySource messageBodySource;
+
+    private final List<BulkRequest> bulks = new CopyOnWriteArrayList<>();
+    // Document id -> status its next bulk item fails with
+    private final Map<String, RestStatus> failures = new ConcurrentHashMap<>();
+    private SearchResultCache resultCache;
+    private OpenSearchSearchService searchService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        lenient().doAnswer(invocation -> {
+            BulkRequest request = invocation.getArgument(0);
+            bulks.add(request);
+            invocation.<ActionListener<BulkResponse>>getArgument(2).onResponse(respond(request));
+            return null;
+        }).when(client).bulkAsync(any(), any(), any());
+        lenient().when(messageBodySource.open(any())).thenAnswer(invocation -> new StringReader("body text"));
+        resultCache = spy(new SearchResultCache(mock(StringRedisTemplate.class), messageRepository,
+            new SimpleMeterRegistry(), false, 200, 600));
+        searchService = service(2, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        searchService.shutdown();
+    }
+
+    @Test
+    void indexMessage_RoutesDocumentsByUserAndFlushesByActionCount() {
+        // Given
+        when(messageRepository.findById(10L)).thenReturn(Optional.of(message(10L, 1L)));
+        when(messageRepository.findById(20L)).thenReturn(Optional.of(message(20L, 2L)));
+
+        // When
+        searchService.indexMessage(10L);
+        int bulksAfterOne = bulks.size();
+        searchService.indexMessage(20L);
+
+        // Then
+        assertThat(bulksAfterOne).isZero();
+        assertThat(bulks).hasSize(1);
+        List<DocWriteRequest<?>> requests = bulks.get(0).requests();
+        assertThat(requests).extracting(DocWriteRequest::id).containsExactly("10", "20");
+        assertThat(requests).extracting(DocWriteRequest::routing).containsExactly("1", "2");
+        Map<String, Object> source = ((IndexRequest) requests.get(0)).sourceAsMap();
+        assertThat(source).containsEntry("body", "body text").containsEntry("subject", "Subject 10");
+    }
+
+    @Test
+    void bulkIndexMessages_FlushesOnInterval() {
+        // Given
+        searchService.shutdown();
+        searchService = service(1000, 50);
+        when(messageRepository.findAllById(anyList())).thenReturn(List.of(message(10L, 1L)));
+
+        // When
+        searchService.bulkIndexMessages(List.of(10L));
+
+        // Then
+        verify(client, timeout(2000)).bulkAsync(any(), any(), any());
+        assertThat(bulks.get(0).numberOfActions()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidateRefreshedResults_WaitsOneIntervalAfterTheBulkCompletes() {
+        // Given
+        when(messageRepository.findById(10L)).thenReturn(Optional.of(message(10L, 1L)));
+        when(messageRepository.findById(20L)).thenReturn(Optional.of(message(20L, 2L)));
+        searchService.indexMessage(10L);
+        searchService.indexMessage(20L);
+
+        // When
+        searchService.invalidateRefreshedResults();
+        verify(resultCache, never()).invalidate(anyLong());
+        searchService.invalidateRefreshedResults();
+
+        // Then
+        verify(resultCache).invalidate(1L);
+        verify(resultCache).invalidate(2L);
+        searchService.invalidateRefreshedResults();
+        verify(resultCache, times(2)).invalidate(anyLong());
+    }
+
+    @Test
+    void retryFailedWrites_ResendsTransientFailuresAndDropsMappingErrors() {
+        // Given
+        searchService.shutdown();
+        searchService = service(1, 60_000);
+        when(messageRepository.findById(10L)).thenReturn(Optional.of(message(10L, 1L)));
+        when(messageRepository.findById(20L)).thenReturn(Optional.of(message(20L, 2L)));
+        when(messageRepository.findAllById(List.of(10L))).thenReturn(List.of(message(10L, 1L)));
+        failures.put("10", RestStatus.SERVICE_UNAVAILABLE);
+        failures.put("20", RestStatus.BAD_REQUEST);
+        searchService.indexMessage(10L);
+        searchService.indexMessage(20L);
+        searchService.invalidateRefreshedResults();
+        searchService.invalidateRefreshedResults();
+        verify(resultCache, never()).invalidate(anyLong());
+
+        // When
+        searchService.retryFailedWrites();
+        searchService.invalidateRefreshedResults();
+        searchService.invalidateRefreshedResults();
+
+        // Then
+        assertThat(bulks).hasSize(3);
+        assertThat(bulks.get(2).requests()).extracting(DocWriteRequest::id).containsExactly("10");
+        verify(resultCache).invalidate(1L);
+        verify(resultCache, never()).invalidate(2L);
+    }
+
+    @Test
+    void retryFailedWrites_ResendsFailedDeletes() {
+        // Given
+        searchService.shutdown();
+        searchService = service(1, 60_000);
+        when(messageRepository.findById(10L)).thenReturn(Optional.of(message(10L, 1L)));
+        failures.put("10", RestStatus.BAD_GATEWAY);
+        searchService.removeFromIndex(10L);
+
+        // When
+        searchService.retryFailedWrites();
+
+        // Then
+        assertThat(bulks).hasSize(2);
+        assertThat(bulks.get(1).requests()).singleElement().isInstanceOf(DeleteRequest.class)
+            .extracting(DocWriteRequest::id).isEqualTo("10");
+    }
+
+    @Test
+    void removeFromIndex_RoutesKnownOwnersAndBatchesTheRest() throws Exception {
+        // Given
+        when(messageRepository.findById(anyLong())).thenAnswer(invocation ->
+            invocation.<Long>getArgument(0) == 10L ? Optional.of(message(10L, 1L)) : Optional.empty());
+        when(tombstoneRepository.findFirstByMessageIdOrderByModseqDesc(anyLong())).thenReturn(Optional.empty());
+
+        // When
+        searchService.removeFromIndex(10L);
+        searchService.removeFromIndex(11L);
+        searchService.removeFromIndex(12L);
+        searchService.flushUnroutedDeletes();
+        searchService.shutdown();
+
+        // Then
+        assertThat(bulks).hasSize(1);
+        DeleteRequest delete = (DeleteRequest) bulks.get(0).requests().get(0);
+        assertThat(delete.id()).isEqualTo("10");
+        assertThat(delete.routing()).isEqualTo("1");
+        ArgumentCaptor<DeleteByQueryRequest> byQuery = ArgumentCaptor.forClass(DeleteByQueryRequest.class);
+        verify(client, times(1)).deleteByQuery(byQuery.capture(), any());
+        assertThat(byQuery.getValue().getSearchRequest().source().query().toString()).contains("11", "12");
+    }
+
+    @Test
+    void searchMessages_QueriesOnlyTheOwnersShard() throws Exception {
+        // Given
+        SearchHit hit = mock(SearchHit.class);
+        when(hit.getId()).thenReturn("10");
+        when(hit.getScore()).thenReturn(2.5f);
+        when(hit.getSourceAsMap()).thenReturn(Map.of(
+            "subject", "Quarterly report",
+            "fromAddress", "alice@example.com",
+            "messageDate", DATE.toInstant(ZoneOffset.UTC).toEpochMilli(),
+            "snippet", "numbers"));
+        SearchResponse response = mock(SearchResponse.class);
+        when(response.getHits()).thenReturn(new SearchHits(new SearchHit[] {hit},
+            new TotalHits(41, TotalHits.Relation.EQUAL_TO), 2.5f));
+        when(client.search(any(), any())).thenReturn(response);
+
+        // When
+        Page<SearchResult> results = searchService.searchMessages(7L, "quarterly report", PageRequest.of(2, 20));
+
+        // Then
+        ArgumentCaptor<SearchRequest> request = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(client).search(request.capture(), any());
+        assertThat(request.getValue().routing()).isEqualTo("7");
+        assertThat(request.getValue().source().from()).isEqualTo(40);
+        assertThat(request.getValue().source().query().toString()).contains("\"userId\"", "quarterly report");
+        assertThat(results.getTotalElements()).isEqualTo(41);
+        SearchResult result = results.getContent().get(0);
+        assertThat(result.getMessageId()).isEqualTo(10L);
+        assertThat(result.getMessageDate()).isEqualTo(DATE);
+        assertThat(result.getScore()).isEqualTo(2.5);
+    }
+
+    @Test
+    void searchByDateRange_SortsNewestFirstWithoutScore() throws Exception {
+        // Given
+        SearchResponse response = mock(SearchResponse.class);
+        when(response.getHits()).thenReturn(new SearchHits(new SearchHit[0],
+            new TotalHits(0, TotalHits.Relation.EQUAL_TO), Float.NaN));
+        when(client.search(any(), any())).thenReturn(response);
+
+        // When
+        searchService.searchByDateRange(7L, DATE, null, PageRequest.of(0, 20));
+
+        // Then
+        ArgumentCaptor<SearchRequest> request = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(client).search(request.capture(), any());
+        assertThat(request.getValue().routing()).isEqualTo("7");
+        assertThat(request.getValue().source().sorts()).hasSize(1);
+        assertThat(request.getValue().source().sorts().get(0).toString()).contains("messageDate");
+    }
+
+    private BulkResponse respond(BulkRequest request) {
+        List<DocWriteRequest<?>> actions = request.requests();
+        BulkItemResponse[] items = new BulkItemResponse[actions.size()];
+        for (int i = 0; i < items.length; i++) {
+            DocWriteRequest<?> action = actions.get(i);
+            RestStatus failure = failures.remove(action.id());
+            if (failure != null) {
+                items[i] = BulkItemResponse.failure(i, action.opType(), new BulkItemResponse.Failure(
+                    action.index(), action.id(), new IllegalStateException(failure.name()), failure));
+            } else {
+                ShardId shard = new ShardId(action.index(), "_na_", 0);
+                DocWriteResponse written = action.opType() == DocWriteRequest.OpType.DELETE
+                    ? new DeleteResponse(shard, action.id(), 1, 1, 1, true)
+                    : new IndexResponse(shard, action.id(), 1, 1, 1, true);
+                items[i] = BulkItemResponse.success(i, action.opType(), written);
+            }
+        }
+        return new BulkResponse(items, 1);
+    }
+
+    private OpenSearchSearchService service(int bulkActions, long flushIntervalMs) {
+        return new OpenSearchSearchService(client, messageRepository, mailboxRepository, tombstoneRepository,
+            messageBodySource, resultCache, "email-messages", "email-saved-searches", 1, 0, 65536,
+            bulkActions, 5, flushIntervalMs, 0, 2000);
+    }
+
+    private static Message message(Long id, Long userId) {
+        return Message.builder()
+            .id(id)
+            .userId(userId)
+            .mailboxId(100L)
+            .subject("Subject " + id)
+            .fromAddress("alice@example.com")
+            .toAddresses("bob@example.com")
+            .messageDate(DATE)
+            .snippet("snippet")
+            .hasAttachments(false)
+            .build();
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.projects.simpleemailclient.service.impl;
+
+import com.example.projects.simpleemailclient.exception.InvalidRuleException;
+import com.example.projects.simpleemailclient.exception.ResourceNotFoundException;
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.Rule;
+import com.example.projects.simpleemailclient.model.Rule.RuleType;
+import com.example.projects.simpleemailclient.model.SieveScript;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.RuleRepository;
+import com.example.projects.simpleemailclient.repository.SieveScriptRepository;
+import com.example.projects.simpleemailclient.service.AuditService;
+import com.example.projects.simpleemailclient.service.ComposeService;
+import com.example.projects.simpleemailclient.service.MessageMetadataService;
+import com.example.projects.simpleemailclient.service.rules.BulkRuleApplier;
+import com.example.projects.simpleemailclient.service.rules.BulkRuleJob;
+import com.example.projects.simpleemailclient.service.rules.CompiledRuleSet;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import com.example.projects.simpleemailclient.service.rules.ReplySuppressionCache;
+import com.example.projects.simpleemailclient.service.rules.RuleCompiler;
+import com.example.projects.simpleemailclient.service.rules.RuleExecutionStats;
+import com.example.projects.simpleemailclient.service.rules.RuleSetCache;
+import com.example.projects.simpleemailclient.service.sieve.SieveCompiler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for RulesServiceImpl
+ */
+@ExtendWith(MockitoExtension.class)
+class RulesServiceImplTest {
+
+    @Mock
+    private RuleRepository ruleRepository;
+
+    @Mock
+    private SieveScriptRepository sieveScriptRepository;
+
+    @Mock
+    private MailboxRepository mailboxRepository;
+
+    @Mock
+    private MessageMetadataService messageMetadataService;
+
+    @Mock
+    private ComposeService composeService;
+
+    @Mock
+    private AuditService auditService;
+
+    @Mock
+    private MessageBodySource messageBodySource;
+
+    @Mock
+    private RuleExecutionStats ruleExecutionStats;
+
+    @Mock
+    private BulkRuleApplier bulkRuleApplier;
+
+    @Mock
+    private ReplySuppressionCache replySuppressionCache;
+
+    private RulesServiceImpl rulesService;
+    private Rule labelRule;
+    private Rule moveRule;
+    private Message message;
+
+    @BeforeEach
+    void setUp() {
+        RuleCompiler ruleCompiler = new RuleCompiler(new ObjectMapper());
+        rulesService = new RulesServiceImpl(ruleRepository, sieveScriptRepository, mailboxRepository,
+            ruleCompiler, new SieveCompiler(), new RuleSetCache(), messageBodySource, ruleExecutionStats,
+            bulkRuleApplier, replySuppressionCache, messageMetadataService, composeService, auditService);
+
+        labelRule = Rule.builder()
+            .id(1L)
+            .userId(1L)
+            .name("Label invoices")
+            .ruleType(RuleType.LABEL)
+            .conditionJson("{\"field\":\"subject\",\"op\":\"contains\",\"value\":\"invoice\"}")
+            .actionJson("{\"actions\":[{\"type\":\"label\",\"label\":\"finance\"}]}")
+            .enabled(true)
+            .priority(10)
+            .version(0L)
+            .build();
+
+        moveRule = Rule.builder()
+            .id(2L)
+            .userId(1L)
+            .name("File vendor mail")
+            .ruleType(RuleType.MOVE_TO_FOLDER)
+            .conditionJson("{\"field\":\"fromDomain\",\"op\":\"equals\",\"value\":\"vendor.example\"}")
+            .actionJson("{\"actions\":[{\"type\":\"move\",\"mailboxId\":200}],\"stop\":true}")
+            .enabled(true)
+            .priority(20)
+            .version(0L)
+            .build();
+
+        message = Message.builder()
+            .id(10L)
+            .userId(1L)
+            .mailboxId(100L)
+            .subject("Invoice 42")
+            .fromAddress("billing@vendor.example")
+            .toAddresses("me@example.com")
+            .messageDate(LocalDateTime.now())
+            .sizeBytes(1024L)
+            .flags("")
+            .hasAttachments(false)
+            .build();
+    }
+
+    @Test
+    void applyRules_CompilesOnceAndReusesCache() {
+        // Given
+        when(ruleRepository.findActiveRulesByUserId(1L)).thenReturn(Arrays.asList(labelRule, moveRule));
+        when(messageMetadataService.updateFlags(eq(10L), eq("finance"), eq(1L))).thenAnswer(invocation -> {
+            message.setFlags("finance");
+            return message;
+        });
+        when(messageMetadataService.moveMessage(10L, 200L, 1L)).thenReturn(message);
+
+        // When
+        List<Long> first = rulesService.applyRules(message);
+        message.setFlags("finance");
+        List<Long> second = rulesService.applyRules(message);
+
+        // Then
+        assertThat(first).containsExactly(1L, 2L);
+        assertThat(second).containsExactly(1L, 2L);
+        verify(ruleRepository, times(1)).findActiveRulesByUserId(1L);
+        verify(ruleExecutionStats, times(4)).record(any());
+        verify(ruleRepository, never()).save(any(Rule.class));
+        verify(messageMetadataService, times(1)).updateFlags(eq(10L), eq("finance"), eq(1L));
+    }
+
+    @Test
+    void applyRules_StopRuleSkipsLowerPriorityRules() {
+        // Given
+        moveRule.setPriority(5);
+        when(ruleRepository.findActiveRulesByUserId(1L)).thenReturn(Arrays.asList(labelRule, moveRule));
+        when(messageMetadataService.moveMessage(10L, 200L, 1L)).thenReturn(message);
+
+        // When
+        List<Long> applied = rulesService.applyRules(message);
+
+        // Then
+        assertThat(applied).containsExactly(2L);
+        verify(messageMetadataService, never()).updateFlags(anyLong(), anyString(), anyLong());
+    }
+
+    @Test
+    void disableRule_InvalidatesCompiledRules() {
+        // Given
+        when(ruleRepository.findActiveRulesByUserId(1L))
+            .thenReturn(Collections.singletonList(labelRule))
+            .thenReturn(Collections.emptyList());
+        when(ruleRepository.findByIdAndUserId(1L, 1L)).thenReturn(Optional.of(labelRule));
+        when(ruleRepository.save(any(Rule.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(messageMetadataService.updateFlags(anyLong(), anyString(), anyLong())).thenReturn(message);
+
+        // When
+        List<Long> before = rulesService.applyRules(message);
+        rulesService.disableRule(1L, 1L);
+        List<Long> after = rulesService.applyRules(message);
+
+        // Then
+        assertThat(before).containsExactly(1L);
+        assertThat(after).isEmpty();
+        verify(ruleRepository, times(2)).findActiveRulesByUserId(1L);
+        verify(auditService).log(1L, "RULE_DISABLED", 1L, "RULE");
+    }
+
+    @Test
+    void createRule_InvalidCondition_ThrowsException() {
+        // Given
+        labelRule.setId(null);
+        labelRule.setConditionJson("{\"field\":\"subject\",\"op\":\"sounds-like\",\"value\":\"x\"}");
+
+        // When/Then
+        assertThatThrownBy(() -> rulesService.createRule(labelRule))
+            .isInstanceOf(InvalidRuleException.class);
+
+        verify(ruleRepository, never()).save(any(Rule.class));
+    }
+
+    @Test
+    void validateRule_ReturnsFalseForMalformedJson() {
+        assertThat(rulesService.validateRule(labelRule.getConditionJson(), labelRule.getActionJson())).isTrue();
+        assertThat(rulesService.validateRule("{", labelRule.getActionJson())).isFalse();
+        assertThat(rulesService.validateRule(labelRule.getConditionJson(), "{\"actions\":[]}")).isFalse();
+    }
+
+    @Test
+    void validateRule_ReturnsFalseWhenWorstCaseExceedsBudget() {
+        // Given: about 1000 regex steps per character; subjects are at most 1000 chars, recipients 4000
+        String subject = "{\"field\":\"subject\",\"op\":\"matches\",\"value\":\"[a-z]{1000}\"}";
+        String recipient = "{\"field\":\"recipient\",\"op\":\"matches\",\"value\":\"[a-z]{1000}\"}";
+
+        // When/Then
+        assertThat(rulesService.validateRule(subject, labelRule.getActionJson())).isTrue();
+        assertThat(rulesService.validateRule(recipient, labelRule.getActionJson())).isFalse();
+    }
+
+    @Test
+    void applyRules_BodyContainsStreamsBodyOnce() throws Exception {
+        // Given
+        labelRule.setConditionJson("{\"any\":[{\"field\":\"body\",\"op\":\"contains\",\"value\":\"Unsubscribe\"},"
+            + "{\"field\":\"body\",\"op\":\"contains\",\"value\":\"view in browser\"}]}");
+        moveRule.setConditionJson("{\"field\":\"body\",\"op\":\"contains\",\"value\":\"wire transfer\"}");
+        when(ruleRepository.findActiveRulesByUserId(1L)).thenReturn(Arrays.asList(labelRule, moveRule));
+        when(messageBodySource.open(message)).thenAnswer(invocation -> new StringReader("Hello,\r\nTo UNSUBSCRIBE click here"));
+        when(messageMetadataService.updateFlags(eq(10L), eq("finance"), eq(1L))).thenReturn(message);
+
+        // When
+        List<Long> applied = rulesService.applyRules(message);
+
+        // Then
+        assertThat(applied).containsExactly(1L);
+        verify(messageBodySource, times(1)).open(message);
+    }
+
+    @Test
+    void applyRules_RunsSieveScriptAfterNativeRules() {
+        // Given
+        SieveScript script = SieveScript.builder()
+            .id(5L)
+            .userId(1L)
+            .name("migrated")
+            .script("require \"fileinto\";\n"
+                + "if address :domain :is \"from\" \"vendor.example\" { fileinto \"Vendors\"; stop; }\n"
+                + "discard;\n")
+            .active(true)
+            .priority(1000)
+            .build();
+        Mailbox vendors = Mailbox.builder().id(300L).userId(1L).name("Vendors").build();
+        when(ruleRepository.findActiveRulesByUserId(1L)).thenReturn(Collections.singletonList(labelRule));
+        when(sieveScriptRepository.findByUserIdAndActiveTrue(1L)).thenReturn(Optional.of(script));
+        when(messageMetadataService.updateFlags(eq(10L), eq("finance"), eq(1L))).thenReturn(message);
+        when(mailboxRepository.findByUserIdAndName(1L, "Vendors")).thenReturn(Optional.of(vendors));
+        when(messageMetadataService.moveMessage(10L, 300L, 1L)).thenReturn(message);
+
+        // When
+        List<Long> applied = rulesService.applyRules(message);
+
+        // Then
+        assertThat(applied).hasSize(2).startsWith(1L);
+        verify(messageMetadataService).moveMessage(10L, 300L, 1L);
+        verify(messageMetadataService, never()).deleteMessage(anyLong(), anyLong());
+    }
+
+    @Test
+    void saveSieveScript_InvalidScript_ThrowsException() {
+        // When/Then
+        assertThatThrownBy(() -> rulesService.saveSieveScript(1L, "broken", "if header :is \"x-spam\" \"yes\" { discard; }"))
+            .isInstanceOf(InvalidRuleException.class)
+            .hasMessageContaining("x-spam");
+
+        verify(sieveScriptRepository, never()).save(any(SieveScript.class));
+    }
+
+    @Test
+    void applyRulesToMailbox_SingleRuleSubmitsOneRuleSet() {
+        // Given
+        Mailbox inbox = Mailbox.builder().id(100L).userId(1L).name("INBOX").build();
+        BulkRuleJob job = new BulkRuleJob(1L, 100L, 2L);
+        when(mailboxRepository.findByIdAndUserId(100L, 1L)).thenReturn(Optional.of(inbox));
+        when(ruleRepository.findActiveRulesByUserId(1L)).thenReturn(Arrays.asList(labelRule, moveRule));
+        when(bulkRuleApplier.submit(any(CompiledRuleSet.class), eq(100L), eq(2L))).thenReturn(job);
+
+        // When
+        BulkRuleJob submitted = rulesService.applyRulesToMailbox(1L, 100L, 2L);
+
+        // Then
+        ArgumentCaptor<CompiledRuleSet> ruleSet = ArgumentCaptor.forClass(CompiledRuleSet.class);
+        verify(bulkRuleApplier).submit(ruleSet.capture(), eq(100L), eq(2L));
+        assertThat(ruleSet.getValue().getRules()).extracting(rule -> rule.getRuleId()).containsExactly(2L);
+        assertThat(submitted).isSameAs(job);
+        verify(auditService).log(1L, "RULES_BULK_APPLY_STARTED", 100L, "MAILBOX");
+    }
+
+    @Test
+    void applyRulesToMailbox_ForeignMailbox_ThrowsException() {
+        // Given
+        when(mailboxRepository.findByIdAndUserId(100L, 2L)).thenReturn(Optional.empty());
+
+        // When/Then
+        assertThatThrownBy(() -> rulesService.applyRulesToMailbox(2L, 100L, null))
+            .isInstanceOf(ResourceNotFoundException.class);
+
+        verify(bulkRuleApplier, never()).submit(any(), anyLong(), any());
+    }
+
+    @Test
+    void applyRules_SuppressedReplyIsNotSent() {
+        // Given
+        labelRule.setRuleType(RuleType.VACATION_RESPONDER);
+        labelRule.setActionJson("{\"actions\":[{\"type\":\"reply\",\"body\":\"Out of office\",\"days\":5}]}");
+        when(ruleRepository.findActiveRulesByUserId(1L)).thenReturn(Collections.singletonList(labelRule));
+        when(replySuppressionCache.tryAcquire(1L, 1L, message, 5)).thenReturn(false);
+
+        // When
+        List<Long> applied = rulesService.applyRules(message);
+
+        // Then
+        assertThat(applied).containsExactly(1L);
+        verify(composeService, never()).createReply(anyLong(), anyString(), anyLong());
+        verify(composeService, never()).sendMessage(anyLong(), anyLong());
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.projects.simpleemailclient.service.mime;
+
+import com.example.projects.simpleemailclient.model.Attachment;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.service.attachment.AttachmentContentStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for MimeIngestParser
+ */
+@ExtendWith(MockitoExtension.class)
+class MimeIngestParserTest {
+
+    private static final byte[] PDF = "%PDF-1.4\n\u0000binary content".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final String MIME = "From: =?UTF-8?Q?Ren=C3=A9e?= <renee@example.com>\r\n"
+        + "To: bob@example.com, carol@example.com\r\n"
+        + "Subject: =?UTF-8?B?UXVhcnRlcmx5IHJlcG9ydA==?=\r\n"
+        + "Date: Mon, 5 Oct 2026 09:30:00 +0000\r\n"
+        + "Message-ID: <q3@example.com>\r\n"
+        + "In-Reply-To: <q2@example.com>\r\n"
+        + "X-Priority: 1\r\n"
+        + "Content-Type: multipart/mixed; boundary=\"outer\"\r\n\r\n"
+        + "--outer\r\n"
+        + "Content-Type: text/html; charset=utf-8\r\n\r\n"
+        + "<html><head><style>p {}</style></head>\r\n"
+        + "<body><p>Numbers   are\r\n in &amp; attached</p></body></html>\r\n"
+        + "--outer\r\n"
+        + "Content-Type: image/png\r\n"
+        + "Content-Disposition: inline; filename=logo.png\r\n"
+        + "Content-ID: <logo>\r\n"
+        + "Content-Transfer-Encoding: base64\r\n\r\n"
+        + "iVBORw0KGgo=\r\n"
+        + "--outer\r\n"
+        + "Content-Type: application/pdf\r\n"
+        + "Content-Disposition: attachment; filename=\"report.pdf\"\r\n"
+        + "Content-Transfer-Encoding: base64\r\n\r\n"
+        + Base64.getMimeEncoder().encodeToString(PDF) + "\r\n"
+        + "--outer--\r\n";
+
+    @Mock
+    private AttachmentContentStore contentStore;
+
+    @TempDir
+    Path spool;
+
+    private MimeIngestParser parser;
+
+    @BeforeEach
+    void setUp() {
+        parser = new MimeIngestParser(contentStore, 200, spool.toString());
+    }
+
+    @Test
+    void parse_ExtractsHeadersSnippetAndAttachments() throws Exception {
+        // Given
+        when(contentStore.store(eq(7L), anyString(), anyLong(), any(Path.class), anyString()))
+            .thenAnswer(invocation -> {
+                // The content is complete by the time it is stored
+                byte[] stored = Files.readAllBytes(invocation.getArgument(3));
+                assertThat(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(stored)))
+                    .isEqualTo(invocation.getArgument(1));
+                assertThat(invocation.<Long>getArgument(2)).isEqualTo(stored.length);
+                return "key-" + invocation.getArgument(4);
+            });
+
+        // When
+        ParsedMessage parsed = parser.parse(7L, stream(MIME));
+
+        // Then
+        assertThat(parsed.getSubject()).isEqualTo("Quarterly report");
+        assertThat(parsed.getFromAddress()).isEqualTo("Renée <renee@example.com>");
+        assertThat(parsed.getToAddresses()).isEqualTo("bob@example.com, carol@example.com");
+        assertThat(parsed.getMessageId()).isEqualTo("<q3@example.com>");
+        assertThat(parsed.getInReplyTo()).isEqualTo("<q2@example.com>");
+        assertThat(parsed.getPriority()).isEqualTo("1");
+        assertThat(parsed.getMessageDate()).isNotNull();
+        assertThat(parsed.getContentType()).isEqualTo("multipart/mixed");
+        assertThat(parsed.getSnippet()).isEqualTo("Numbers are in & attached");
+        assertThat(parsed.getHasAttachments()).isTrue();
+        assertThat(parsed.getSizeBytes()).isEqualTo(MIME.getBytes(StandardCharsets.UTF_8).length);
+
+        List<Attachment> attachments = parsed.attachmentsFor(42L);
+        assertThat(attachments).extracting(Attachment::getFilename).containsExactly("logo.png", "report.pdf");
+        assertThat(attachments).allSatisfy(attachment -> {
+            assertThat(attachment.getMessageId()).isEqualTo(42L);
+            assertThat(attachment.getScanStatus()).isEqualTo("PENDING");
+        });
+        assertThat(attachments.get(0).getIsInline()).isTrue();
+        assertThat(attachments.get(0).getContentId()).isEqualTo("<logo>");
+        assertThat(attachments.get(1).getBlobPointer()).isEqualTo("key-application/pdf");
+        assertThat(attachments.get(1).getSizeBytes()).isEqualTo(PDF.length);
+        assertThat(attachments.get(1).getChecksumSha256())
+            .isEqualTo(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(PDF)));
+        try (Stream<Path> files = Files.list(spool)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void parse_OnlyInlineParts_HasNoAttachments() {
+        // Given
+        String mime = "Subject: Logo\r\n"
+            + "Content-Type: multipart/related; boundary=r\r\n\r\n"
+            + "--r\r\n"
+            + "Content-Type: text/plain\r\n\r\n"
+            + "See the logo\r\n"
+            + "--r\r\n"
+            + "Content-Type: image/png\r\nContent-Disposition: inline; filename=logo.png\r\n\r\n"
+            + "png\r\n"
+            + "--r--\r\n";
+        when(contentStore.store(anyLong(), anyString(), anyLong(), any(Path.class), anyString())).thenReturn("key");
+
+        // When
+        ParsedMessage parsed = parser.parse(7L, stream(mime));
+
+        // Then
+        assertThat(parsed.getHasAttachments()).isFalse();
+        assertThat(parsed.getAttachments()).hasSize(1);
+        assertThat(parsed.getSnippet()).isEqualTo("See the logo");
+    }
+
+    @Test
+    void parse_ReadFailure_ReleasesStoredAttachments() throws IOException {
+        // Given: the stream fails after the first attachment has been stored
+        byte[] head = ("Content-Type: multipart/mixed; boundary=b\r\n\r\n"
+            + "--b\r\n"
+            + "Content-Disposition: attachment; filename=a.txt\r\n\r\n"
+            + "first\r\n"
+            + "--b\r\n"
+            + "Content-Disposition: attachment; filename=b.txt\r\n\r\n"
+            + "second, cut short").getBytes(StandardCharsets.US_ASCII);
+        InputStream failing = new SequenceInputStream(new ByteArrayInputStream(head), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        });
+        when(contentStore.store(anyLong(), anyString(), anyLong(), any(Path.class), anyString())).thenReturn("key-a");
+
+        // When / Then
+        assertThatThrownBy(() -> parser.parse(7L, failing))
+            .isInstanceOf(UncheckedIOException.class);
+        verify(contentStore).release("key-a");
+        try (Stream<Path> files = Files.list(spool)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void toMessage_FitsValuesToColumns() {
+        // Given
+        ParsedMessage parsed = ParsedMessage.builder()
+            .subject("s".repeat(2000))
+            .fromAddress("a@example.com")
+            .hasAttachments(true)
+            .sizeBytes(10L)
+            .build();
+
+        // When
+        Message message = parsed.toMessage().userId(1L).build();
+
+        // Then
+        assertThat(message.getSubject()).hasSize(1000);
+        assertThat(message.getToAddresses()).isEmpty();
+        assertThat(message.getMessageDate()).isNotNull();
+        assertThat(message.getHasAttachments()).isTrue();
+    }
+
+    private static ByteArrayInputStream stream(String mime) {
+        return new ByteArrayInputStream(mime.getBytes(StandardCharsets.UTF_8));
+    }
+}
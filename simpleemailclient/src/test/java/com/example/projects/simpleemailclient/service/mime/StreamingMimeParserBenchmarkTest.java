@@ -0,0 +1,161 @@
+package com.example.projects.simpleemailclient.service.mime;
+
+import jakarta.mail.BodyPart;
+import jakarta.mail.Multipart;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Ingest parsing of a 50 MB message: StreamingMimeParser against jakarta.mail's MimeMessage
+ * Both read the headers and the text, and decode and hash every attachment.
+ * Run with: mvn -Pbenchmark test
+ */
+@Tag("benchmark")
+class StreamingMimeParserBenchmarkTest {
+
+    private static final int ATTACHMENTS = 3;
+    private static final int ATTACHMENT_BYTES = 12 * 1024 * 1024;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void parse_50MbMessage() throws Exception {
+        // Given
+        byte[] raw = message(new Random(7));
+        Session session = Session.getInstance(new Properties());
+
+        // When: warm up, then time each parser
+        for (int i = 0; i < 2; i++) {
+            streaming(raw);
+            mimeMessage(raw, session);
+        }
+        long streamingAllocated = allocated();
+        long streamingStart = System.nanoTime();
+        List<String> streamed = null;
+        for (int i = 0; i < ROUNDS; i++) {
+            streamed = streaming(raw);
+        }
+        long streamingNanos = (System.nanoTime() - streamingStart) / ROUNDS;
+        streamingAllocated = (allocated() - streamingAllocated) / ROUNDS;
+
+        long mimeAllocated = allocated();
+        long mimeStart = System.nanoTime();
+        List<String> parsed = null;
+        for (int i = 0; i < ROUNDS; i++) {
+            parsed = mimeMessage(raw, session);
+        }
+        long mimeNanos = (System.nanoTime() - mimeStart) / ROUNDS;
+        mimeAllocated = (allocated() - mimeAllocated) / ROUNDS;
+
+        // Then
+        double megabytes = raw.length / (1024.0 * 1024.0);
+        System.out.printf("message=%.1f MB streaming=%d ms (%.0f MB/s, %d KB allocated) "
+                + "MimeMessage=%d ms (%.0f MB/s, %d KB allocated)%n",
+            megabytes, streamingNanos / 1_000_000, megabytes / (streamingNanos / 1e9), streamingAllocated / 1024,
+            mimeNanos / 1_000_000, megabytes / (mimeNanos / 1e9), mimeAllocated / 1024);
+        assertThat(streamed).isEqualTo(parsed).hasSize(ATTACHMENTS + 1);
+        // Bounded by the parser's buffers, not the message
+        assertThat(streamingAllocated).isLessThan(4L * 1024 * 1024);
+    }
+
+    /**
+     * @return The subject, then the SHA-256 of each attachment
+     */
+    private static List<String> streaming(byte[] raw) throws Exception {
+        List<String> results = new ArrayList<>();
+        StreamingMimeParser.parse(new ByteArrayInputStream(raw), new MimeHandler() {
+            private final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            @Override
+            public void header(MimePart part, String name, String value) {
+                if (part.getDepth() == 0 && name.equalsIgnoreCase("Subject")) {
+                    results.add(value);
+                }
+            }
+
+            @Override
+            public OutputStream body(MimePart part) {
+                return part.isAttachment() ? new DigestOutputStream(OutputStream.nullOutputStream(), digest) : null;
+            }
+
+            @Override
+            public void endPart(MimePart part) {
+                if (part.isAttachment()) {
+                    results.add(HexFormat.of().formatHex(digest.digest()));
+                }
+            }
+        });
+        return results;
+    }
+
+    private static List<String> mimeMessage(byte[] raw, Session session) throws Exception {
+        List<String> results = new ArrayList<>();
+        MimeMessage message = new MimeMessage(session, new ByteArrayInputStream(raw));
+        results.add(message.getSubject());
+        Multipart multipart = (Multipart) message.getContent();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[8192];
+        for (int i = 0; i < multipart.getCount(); i++) {
+            BodyPart part = multipart.getBodyPart(i);
+            if (part.getFileName() == null) {
+                continue;
+            }
+            try (InputStream in = part.getInputStream()) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            results.add(HexFormat.of().formatHex(digest.digest()));
+        }
+        return results;
+    }
+
+    private static byte[] message(Random random) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(ATTACHMENTS * ATTACHMENT_BYTES * 4 / 3 + 1024 * 1024);
+        StringBuilder head = new StringBuilder()
+            .append("From: alice@example.com\r\nTo: bob@example.com\r\nSubject: Quarterly numbers\r\n")
+            .append("Date: Mon, 5 Oct 2026 09:30:00 +0000\r\nMIME-Version: 1.0\r\n")
+            .append("Content-Type: multipart/mixed; boundary=\"=_outer\"\r\n\r\n")
+            .append("--=_outer\r\nContent-Type: text/plain; charset=utf-8\r\n\r\n");
+        for (int i = 0; i < 2000; i++) {
+            head.append("Line ").append(i).append(" of the report body, with the numbers discussed.\r\n");
+        }
+        out.writeBytes(head.toString().getBytes(StandardCharsets.US_ASCII));
+        Base64.Encoder encoder = Base64.getMimeEncoder();
+        for (int i = 0; i < ATTACHMENTS; i++) {
+            byte[] content = new byte[ATTACHMENT_BYTES];
+            random.nextBytes(content);
+            out.writeBytes(("--=_outer\r\nContent-Type: application/octet-stream\r\n"
+                + "Content-Disposition: attachment; filename=\"part" + i + ".bin\"\r\n"
+                + "Content-Transfer-Encoding: base64\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.writeBytes(encoder.encode(content));
+            out.writeBytes("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        out.writeBytes("--=_outer--\r\n".getBytes(StandardCharsets.US_ASCII));
+        return out.toByteArray();
+    }
+
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
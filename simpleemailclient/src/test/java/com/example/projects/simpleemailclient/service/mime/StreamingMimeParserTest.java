@@ -0,0 +1,203 @@
+package com.example.projects.simpleemailclient.service.mime;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for StreamingMimeParser
+ */
+class StreamingMimeParserTest {
+
+    private static final String NESTED = "From: alice@example.com\r\n"
+        + "Subject: Quarterly\r\n numbers\r\n"
+        + "Content-Type: multipart/mixed; boundary=\"outer\"\r\n\r\n"
+        + "preamble\r\n"
+        + "--outer\r\n"
+        + "Content-Type: multipart/alternative; boundary=inner\r\n\r\n"
+        + "--inner\r\n"
+        + "Content-Type: text/plain; charset=ISO-8859-1\r\n"
+        + "Content-Transfer-Encoding: quoted-printable\r\n\r\n"
+        + "Gr=FC=DFe aus M=\r\n"
+        + "=FCnchen\r\n"
+        + "second line\r\n"
+        + "--inner\r\n"
+        + "Content-Type: text/html\r\n\r\n"
+        + "<p>Gr&uuml;&szlig;e</p>\r\n"
+        + "--inner--\r\n"
+        + "--outer\r\n"
+        + "Content-Type: application/pdf; name=\"ignored.pdf\"\r\n"
+        + "Content-Disposition: attachment; filename*=utf-8''r%C3%A9sum%C3%A9.pdf\r\n"
+        + "Content-Transfer-Encoding: base64\r\n\r\n"
+        + Base64.getMimeEncoder().encodeToString("%PDF-1.4\n\u0000binary".getBytes(StandardCharsets.ISO_8859_1))
+        + "\r\n"
+        + "--outer--\r\n"
+        + "epilogue\r\n";
+
+    @Test
+    void parse_ReportsHeadersAndPartsInOrder() throws IOException {
+        // Given
+        Recorder recorder = new Recorder(false);
+
+        // When
+        StreamingMimeParser.parse(stream(NESTED), recorder);
+
+        // Then
+        assertThat(recorder.events).containsExactly(
+            "header  From=alice@example.com",
+            "header  Subject=Quarterly numbers",
+            "header  Content-Type=multipart/mixed; boundary=\"outer\"",
+            "header 1 Content-Type=multipart/alternative; boundary=inner",
+            "header 1.1 Content-Type=text/plain; charset=ISO-8859-1",
+            "header 1.1 Content-Transfer-Encoding=quoted-printable",
+            "end 1.1 text/plain",
+            "header 1.2 Content-Type=text/html",
+            "end 1.2 text/html",
+            "end 1 multipart/alternative",
+            "header 2 Content-Type=application/pdf; name=\"ignored.pdf\"",
+            "header 2 Content-Disposition=attachment; filename*=utf-8''r%C3%A9sum%C3%A9.pdf",
+            "header 2 Content-Transfer-Encoding=base64",
+            "end 2 application/pdf",
+            "end  multipart/mixed");
+    }
+
+    @Test
+    void parse_DecodesRequestedBodies() throws IOException {
+        // Given
+        Recorder recorder = new Recorder(true);
+
+        // When
+        StreamingMimeParser.parse(stream(NESTED), recorder);
+
+        // Then
+        assertThat(recorder.text("1.1")).isEqualTo("Grüße aus München\r\nsecond line");
+        assertThat(recorder.text("1.2")).isEqualTo("<p>Gr&uuml;&szlig;e</p>");
+        assertThat(recorder.bodies.get("2").toByteArray())
+            .isEqualTo("%PDF-1.4\n\u0000binary".getBytes(StandardCharsets.ISO_8859_1));
+        assertThat(recorder.parts.get("2").isAttachment()).isTrue();
+        assertThat(recorder.parts.get("2").getFilename()).isEqualTo("résumé.pdf");
+        assertThat(recorder.parts.get("1.1").isAttachment()).isFalse();
+    }
+
+    @Test
+    void parse_BodyWithLongLinesAndNoClosingBoundary() throws IOException {
+        // Given: one 130 KB base64 line, and the message ends without a closing delimiter
+        byte[] content = new byte[100_000];
+        new Random(7).nextBytes(content);
+        String mime = "Content-Type: multipart/mixed; boundary=b\r\n\r\n"
+            + "--b\r\n"
+            + "Content-Disposition: attachment; filename=data.bin\r\n"
+            + "Content-Transfer-Encoding: base64\r\n\r\n"
+            + Base64.getEncoder().encodeToString(content) + "\r\n";
+        Recorder recorder = new Recorder(true);
+
+        // When
+        StreamingMimeParser.parse(stream(mime), recorder);
+
+        // Then
+        assertThat(recorder.bodies.get("1").toByteArray()).isEqualTo(content);
+        assertThat(recorder.events).endsWith("end 1 text/plain", "end  multipart/mixed");
+    }
+
+    @Test
+    void parse_LineThatOnlyStartsLikeABoundaryIsBody() throws IOException {
+        // Given
+        String mime = "Content-Type: multipart/mixed; boundary=b\r\n\r\n"
+            + "--b\r\n\r\n"
+            + "--bx is not a boundary\r\n"
+            + "--b --\r\n";
+        Recorder recorder = new Recorder(true);
+
+        // When
+        StreamingMimeParser.parse(stream(mime), recorder);
+
+        // Then
+        assertThat(recorder.text("1")).isEqualTo("--bx is not a boundary\r\n--b --");
+    }
+
+    @Test
+    void parse_SinglePartMessage() throws IOException {
+        // Given
+        String mime = "Subject: Hi\r\n\r\nHello\r\nBob\r\n";
+        Recorder recorder = new Recorder(true);
+
+        // When
+        StreamingMimeParser.parse(stream(mime), recorder);
+
+        // Then
+        assertThat(recorder.parts.get("").getContentType()).isEqualTo("text/plain");
+        assertThat(recorder.text("")).isEqualTo("Hello\r\nBob");
+    }
+
+    @Test
+    void parse_DigestPartsDefaultToMessages() throws IOException {
+        // Given
+        String mime = "Content-Type: multipart/digest; boundary=d\r\n\r\n"
+            + "--d\r\n\r\n"
+            + "Subject: first\r\n\r\nbody\r\n"
+            + "--d--\r\n";
+        Recorder recorder = new Recorder(false);
+
+        // When
+        StreamingMimeParser.parse(stream(mime), recorder);
+
+        // Then
+        assertThat(recorder.parts.get("1").getContentType()).isEqualTo("message/rfc822");
+    }
+
+    private static ByteArrayInputStream stream(String mime) {
+        return new ByteArrayInputStream(mime.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Records events, and the bodies of every part if asked to
+     */
+    private static final class Recorder implements MimeHandler {
+
+        final List<String> events = new ArrayList<>();
+        final Map<String, MimePart> parts = new LinkedHashMap<>();
+        final Map<String, ByteArrayOutputStream> bodies = new LinkedHashMap<>();
+        private final boolean decode;
+
+        Recorder(boolean decode) {
+            this.decode = decode;
+        }
+
+        @Override
+        public void header(MimePart part, String name, String value) {
+            events.add("header " + part.getPath() + " " + name + "=" + value);
+        }
+
+        @Override
+        public OutputStream body(MimePart part) {
+            if (!decode) {
+                return null;
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            bodies.put(part.getPath(), body);
+            return body;
+        }
+
+        @Override
+        public void endPart(MimePart part) {
+            parts.put(part.getPath(), part);
+            events.add("end " + part.getPath() + " " + part.getContentType());
+        }
+
+        String text(String path) {
+            return bodies.get(path).toString(parts.get(path).charset());
+        }
+    }
+}
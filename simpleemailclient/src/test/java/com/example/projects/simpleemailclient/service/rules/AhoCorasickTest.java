@@ -0,0 +1,67 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for AhoCorasick
+ */
+class AhoCorasickTest {
+
+    @Test
+    void scan_FindsOverlappingAndNestedPatterns() {
+        // Given
+        AhoCorasick automaton = new AhoCorasick(Arrays.asList("he", "she", "his", "hers", "xyz"));
+        BitSet hits = new BitSet();
+
+        // When
+        automaton.scan("ushers", hits);
+
+        // Then
+        assertThat(hits.stream().toArray()).containsExactly(0, 1, 3);
+    }
+
+    @Test
+    void scanReader_FoldsCase() throws Exception {
+        // Given
+        AhoCorasick automaton = new AhoCorasick(Arrays.asList("unsubscribe", "wire transfer"));
+        BitSet hits = new BitSet();
+
+        // When
+        automaton.scan(new StringReader("Click to UnSubscribe"), hits);
+
+        // Then
+        assertThat(hits.stream().toArray()).containsExactly(0);
+    }
+
+    @Test
+    void scan_AgreesWithStringContains() {
+        // Given
+        Random random = new Random(3);
+        List<String> patterns = Arrays.asList("ab", "abc", "bca", "c", "aaa", "cab", "bb", "");
+        AhoCorasick automaton = new AhoCorasick(patterns);
+
+        for (int round = 0; round < 500; round++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = random.nextInt(12); i > 0; i--) {
+                text.append((char) ('a' + random.nextInt(3)));
+            }
+
+            // When
+            BitSet hits = new BitSet();
+            automaton.scan(text.toString(), hits);
+
+            // Then
+            for (int id = 0; id < patterns.size(); id++) {
+                assertThat(hits.get(id)).as("%s in %s", patterns.get(id), text).isEqualTo(text.toString().contains(patterns.get(id)));
+            }
+        }
+    }
+}
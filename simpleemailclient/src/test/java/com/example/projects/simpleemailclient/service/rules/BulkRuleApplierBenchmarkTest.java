@@ -0,0 +1,98 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Mailbox.MailboxType;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageTombstoneRepository;
+import com.example.projects.simpleemailclient.service.SearchService;
+import com.example.projects.simpleemailclient.service.UserService;
+import com.example.projects.simpleemailclient.service.attachment.AttachmentContentStore;
+import com.example.projects.simpleemailclient.service.search.SearchResultCache;
+import com.example.projects.simpleemailclient.service.search.VirtualFolderService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Bulk application of a 1000-rule set to a 500k-message mailbox, excluding database time
+ * Run with: mvn -Pbenchmark test
+ */
+@Tag("benchmark")
+class BulkRuleApplierBenchmarkTest {
+
+    private static final int RULES = 1000;
+    private static final int MESSAGES = 500_000;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void applyToMailbox_500kMessages() {
+        // Given
+        Random random = new Random(7);
+        CompiledRuleSet ruleSet = new RuleCompiler(new ObjectMapper()).compileAll(1L, RuleCorpus.rules(RULES, random));
+        List<Message> messages = RuleCorpus.messages(MESSAGES, random);
+
+        MessageRepository messageRepository = mock(MessageRepository.class);
+        MailboxRepository mailboxRepository = mock(MailboxRepository.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(mailboxRepository.findByUserId(1L)).thenReturn(List.of(
+            Mailbox.builder().id(100L).userId(1L).name("INBOX").mailboxType(MailboxType.INBOX).build()));
+        // Message ids are 1..n, so a keyset page starts at index afterId
+        when(messageRepository.findPageByMailboxIdAfter(eq(100L), anyLong(), any(Pageable.class)))
+            .thenAnswer(invocation -> {
+                int from = (int) Math.min(invocation.<Long>getArgument(1), (long) messages.size());
+                int size = invocation.<Pageable>getArgument(2).getPageSize();
+                return new ArrayList<>(messages.subList(from, Math.min(messages.size(), from + size)));
+            });
+        when(messageRepository.replaceFlags(anyCollection(), anyLong(), anyString(), anyString(), anyLong()))
+            .thenAnswer(invocation -> invocation.<Collection<Long>>getArgument(0).size());
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            int[] updated = new int[invocation.<List<Object[]>>getArgument(1).size()];
+            Arrays.fill(updated, 1);
+            return updated;
+        });
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        BulkRuleApplier applier = new BulkRuleApplier(messageRepository, mailboxRepository,
+            mock(MessageTombstoneRepository.class), mock(UserService.class), message -> null,
+            mock(RuleExecutionStats.class), transactionTemplate, jdbcTemplate, mock(VirtualFolderService.class),
+            mock(AttachmentContentStore.class), mock(SearchService.class), mock(SearchResultCache.class),
+            1000, 0, 1, 60);
+        BulkRuleJob job = new BulkRuleJob(1L, 100L, null);
+
+        // When
+        try {
+            applier.run(job, ruleSet);
+        } finally {
+            applier.shutdown();
+        }
+
+        // Then
+        System.out.printf("rules=%d messages=%d matched=%d flagged=%d threads=%d elapsed=%d ms%n",
+            RULES, MESSAGES, job.getMatched(), job.getFlagged(),
+            Runtime.getRuntime().availableProcessors(), job.getElapsed().toMillis());
+        assertThat(job.getStatus()).isEqualTo(BulkRuleJob.Status.COMPLETED);
+        assertThat(job.getScanned()).isEqualTo(MESSAGES);
+        assertThat(job.getElapsed().toSeconds()).isLessThan(60);
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Mailbox.MailboxType;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.Rule;
+import com.example.projects.simpleemailclient.model.Rule.RuleType;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageTombstoneRepository;
+import com.example.projects.simpleemailclient.service.SearchService;
+import com.example.projects.simpleemailclient.service.UserService;
+import com.example.projects.simpleemailclient.service.attachment.AttachmentContentStore;
+import com.example.projects.simpleemailclient.service.search.SearchResultCache;
+import com.example.projects.simpleemailclient.service.search.VirtualFolderService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for BulkRuleApplier
+ */
+@ExtendWith(MockitoExtension.class)
+class BulkRuleApplierTest {
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private MailboxRepository mailboxRepository;
+
+    @Mock
+    private MessageTombstoneRepository tombstoneRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private MessageBodySource messageBodySource;
+
+    @Mock
+    private RuleExecutionStats ruleExecutionStats;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private VirtualFolderService virtualFolderService;
+
+    @Mock
+    private AttachmentContentStore attachmentContentStore;
+
+    @Mock
+    private SearchService searchService;
+
+    @Mock
+    private SearchResultCache resultCache;
+
+    private final RuleCompiler ruleCompiler = new RuleCompiler(new ObjectMapper());
+    private BulkRuleApplier applier;
+    private List<Mailbox> mailboxes;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        applier = new BulkRuleApplier(messageRepository, mailboxRepository, tombstoneRepository, userService,
+            messageBodySource, ruleExecutionStats, transactionTemplate, jdbcTemplate, virtualFolderService,
+            attachmentContentStore, searchService, resultCache, 3, 2, 1, 60);
+        mailboxes = Arrays.asList(
+            Mailbox.builder().id(100L).userId(1L).name("INBOX").mailboxType(MailboxType.INBOX).build(),
+            Mailbox.builder().id(200L).userId(1L).name("Work").mailboxType(MailboxType.CUSTOM).build());
+        lenient().doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        applier.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void run_WritesPagesAsSetBasedUpdatesAndRecountsOnce() {
+        // Given
+        CompiledRuleSet ruleSet = ruleCompiler.compileAll(1L, Arrays.asList(
+            rule(1L, "{\"field\":\"from\",\"op\":\"equals\",\"value\":\"boss@corp.com\"}",
+                "{\"actions\":[{\"type\":\"label\",\"label\":\"work\"},{\"type\":\"move\",\"mailboxId\":200}]}"),
+            rule(2L, "{\"field\":\"subject\",\"op\":\"hasWord\",\"value\":\"newsletter\"}",
+                "{\"actions\":[{\"type\":\"markRead\"}]}")));
+        List<Message> inbox = Arrays.asList(
+            message(1L, "boss@corp.com", "Quarterly plan"),
+            message(2L, "news@list.org", "Weekly newsletter"),
+            message(4L, "news@list.org", "Another newsletter"),
+            message(5L, "friend@home.net", "Dinner"),
+            message(6L, "boss@corp.com", "Offsite"));
+        servePages(inbox);
+        when(mailboxRepository.findByUserId(1L)).thenReturn(mailboxes);
+        when(messageRepository.replaceFlags(anyCollection(), eq(100L), anyString(), anyString(), anyLong()))
+            .thenAnswer(invocation -> invocation.<Collection<Long>>getArgument(0).size());
+        when(messageRepository.moveAll(anyCollection(), eq(100L), eq(200L), anyLong()))
+            .thenAnswer(invocation -> invocation.<Collection<Long>>getArgument(0).size());
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+            .thenAnswer(invocation -> batchResult(invocation.<List<Object[]>>getArgument(1).size()));
+        BulkRuleJob job = new BulkRuleJob(1L, 100L, null);
+
+        // When
+        applier.run(job, ruleSet);
+
+        // Then
+        assertThat(job.getStatus()).isEqualTo(BulkRuleJob.Status.COMPLETED);
+        assertThat(job.getScanned()).isEqualTo(5);
+        assertThat(job.getMatched()).isEqualTo(4);
+        assertThat(job.getMoved()).isEqualTo(2);
+        assertThat(job.getFlagged()).isEqualTo(4);
+
+        // Shared flag changes are one statement; unique ones are batched
+        verify(messageRepository).replaceFlags(List.of(2L, 4L), 100L, "", "READ", 0L);
+        ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), batches.capture());
+        List<Object[]> rows = batches.getAllValues().stream().flatMap(List::stream).collect(Collectors.toList());
+        assertThat(rows).extracting(row -> row[3], row -> row[0])
+            .containsExactly(tuple(1L, "work"), tuple(6L, "work"));
+        verify(tombstoneRepository).insertForMessages(eq(List.of(1L)), eq(100L), anyLong(), any(LocalDateTime.class));
+        verify(messageRepository).moveAll(List.of(1L), 100L, 200L, 0L);
+        verify(messageRepository).moveAll(List.of(6L), 100L, 200L, 0L);
+        verify(messageRepository, never()).deleteAllInMailbox(anyCollection(), anyLong());
+
+        ArgumentCaptor<Collection<Long>> recounted = ArgumentCaptor.forClass(Collection.class);
+        verify(mailboxRepository, times(1)).recalculateCounts(recounted.capture());
+        assertThat(recounted.getValue()).containsExactlyInAnyOrder(100L, 200L);
+        verify(virtualFolderService).recount(1L);
+        verify(ruleExecutionStats, times(4)).record(any(CompiledRule.class));
+    }
+
+    @Test
+    void run_DeleteReleasesAttachmentsBeforeRemovingMessages() {
+        // Given
+        CompiledRuleSet ruleSet = ruleCompiler.compileAll(1L, List.of(
+            rule(1L, "{\"field\":\"subject\",\"op\":\"contains\",\"value\":\"plan\"}",
+                "{\"actions\":[{\"type\":\"delete\"}]}")));
+        servePages(Arrays.asList(
+            message(1L, "boss@corp.com", "Quarterly plan"),
+            message(2L, "friend@home.net", "Dinner"),
+            message(3L, "boss@corp.com", "Annual plan")));
+        when(mailboxRepository.findByUserId(1L)).thenReturn(mailboxes);
+        when(messageRepository.sumSizeBytes(List.of(1L, 3L), 100L)).thenReturn(2000L);
+        when(messageRepository.deleteAllInMailbox(List.of(1L, 3L), 100L)).thenReturn(2);
+        BulkRuleJob job = new BulkRuleJob(1L, 100L, 1L);
+
+        // When
+        applier.run(job, ruleSet);
+
+        // Then
+        assertThat(job.getStatus()).isEqualTo(BulkRuleJob.Status.COMPLETED);
+        assertThat(job.getDeleted()).isEqualTo(2);
+        InOrder order = inOrder(attachmentContentStore, messageRepository);
+        order.verify(attachmentContentStore).deleteAttachments(1L, List.of(1L, 3L));
+        order.verify(messageRepository).deleteAllInMailbox(List.of(1L, 3L), 100L);
+        verify(userService).updateUsedStorage(1L, -2000L);
+        verify(virtualFolderService, times(2)).remove(any(Message.class));
+        verify(searchService).removeFromIndex(1L);
+        verify(searchService).removeFromIndex(3L);
+        verify(searchService, never()).bulkIndexMessages(any());
+    }
+
+    @Test
+    void run_RefreshesFoldersAndReindexesChangedMessagesAfterEachPage() {
+        // Given
+        CompiledRuleSet ruleSet = ruleCompiler.compileAll(1L, List.of(
+            rule(1L, "{\"field\":\"subject\",\"op\":\"hasWord\",\"value\":\"newsletter\"}",
+                "{\"actions\":[{\"type\":\"markRead\"},{\"type\":\"move\",\"mailboxId\":200}]}")));
+        servePages(Arrays.asList(
+            message(1L, "news@list.org", "Weekly newsletter"),
+            message(2L, "friend@home.net", "Dinner"),
+            message(3L, "news@list.org", "Monthly newsletter"),
+            message(4L, "news@list.org", "Last newsletter")));
+        when(mailboxRepository.findByUserId(1L)).thenReturn(mailboxes);
+        when(messageRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            List<Message> moved = new ArrayList<>();
+            for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+                Message message = message(id, "news@list.org", "newsletter");
+                message.setMailboxId(200L);
+                message.setFlags("READ");
+                moved.add(message);
+            }
+            return moved;
+        });
+        BulkRuleJob job = new BulkRuleJob(1L, 100L, 1L);
+
+        // When
+        applier.run(job, ruleSet);
+
+        // Then
+        assertThat(job.getStatus()).isEqualTo(BulkRuleJob.Status.COMPLETED);
+        ArgumentCaptor<Message> refreshed = ArgumentCaptor.forClass(Message.class);
+        verify(virtualFolderService, times(3)).refresh(refreshed.capture(), eq(true));
+        assertThat(refreshed.getAllValues()).extracting(Message::getId).containsExactlyInAnyOrder(1L, 3L, 4L);
+        assertThat(refreshed.getAllValues()).extracting(Message::getMailboxId).containsOnly(200L);
+
+        // One index call and one generation bump per committed page
+        InOrder order = inOrder(transactionTemplate, searchService, resultCache);
+        order.verify(transactionTemplate).executeWithoutResult(any());
+        order.verify(searchService).bulkIndexMessages(List.of(1L, 3L));
+        order.verify(resultCache).invalidate(1L);
+        order.verify(transactionTemplate).executeWithoutResult(any());
+        order.verify(searchService).bulkIndexMessages(List.of(4L));
+        order.verify(resultCache).invalidate(1L);
+        verify(searchService, never()).removeFromIndex(anyLong());
+    }
+
+    @Test
+    void run_CancelledDuringPageLeavesItUntouched() {
+        // Given
+        CompiledRuleSet ruleSet = ruleCompiler.compileAll(1L, List.of(
+            rule(1L, "{\"field\":\"subject\",\"op\":\"contains\",\"value\":\"plan\"}",
+                "{\"actions\":[{\"type\":\"delete\"}]}")));
+        BulkRuleJob job = new BulkRuleJob(1L, 100L, 1L);
+        when(mailboxRepository.findByUserId(1L)).thenReturn(mailboxes);
+        when(messageRepository.findPageByMailboxIdAfter(eq(100L), eq(0L), any(Pageable.class)))
+            .thenAnswer(invocation -> {
+                job.cancel();
+                return List.of(message(1L, "boss@corp.com", "Quarterly plan"),
+                    message(2L, "boss@corp.com", "Annual plan"));
+            });
+
+        // When
+        applier.run(job, ruleSet);
+
+        // Then
+        assertThat(job.getStatus()).isEqualTo(BulkRuleJob.Status.CANCELLED);
+        assertThat(job.getScanned()).isZero();
+        verify(messageRepository, never()).deleteAllInMailbox(anyCollection(), anyLong());
+        verify(userService, never()).updateUsedStorage(anyLong(), anyLong());
+        verify(mailboxRepository).recalculateCounts(anyCollection());
+    }
+
+    @Test
+    void plan_DeleteStopsFurtherActionsAndUnknownTargetsKeepMessage() {
+        // Given
+        BulkRuleApplier.Targets targets = new BulkRuleApplier.Targets(mailboxes);
+        Message message = message(1L, "boss@corp.com", "Quarterly plan");
+        CompiledRule foreignMove = compiled(1L,
+            "{\"actions\":[{\"type\":\"move\",\"mailboxId\":999},{\"type\":\"forward\",\"to\":\"x@y.com\"}]}");
+        CompiledRule deleteRule = compiled(2L,
+            "{\"actions\":[{\"type\":\"delete\"},{\"type\":\"label\",\"label\":\"never\"}]}");
+
+        // When
+        BulkRuleApplier.Outcome kept = BulkRuleApplier.plan(message, List.of(foreignMove), targets);
+        BulkRuleApplier.Outcome deleted = BulkRuleApplier.plan(message, List.of(foreignMove, deleteRule), targets);
+
+        // Then
+        assertThat(kept.changes()).isFalse();
+        assertThat(deleted.delete).isTrue();
+        assertThat(deleted.newFlags).isNull();
+        assertThat(deleted.targetMailboxId).isNull();
+    }
+
+    @Test
+    void plan_FileIntoResolvesByNameWithInboxFallback() {
+        // Given
+        BulkRuleApplier.Targets targets = new BulkRuleApplier.Targets(mailboxes);
+        Message archived = message(1L, "boss@corp.com", "Quarterly plan");
+        archived.setMailboxId(200L);
+
+        // When
+        BulkRuleApplier.Outcome toWork = BulkRuleApplier.plan(message(2L, "a@b.c", "x"),
+            List.of(new CompiledRule(1L, 0L, 1, RuleType.SIEVE, Conditions.always(),
+                List.of(RuleAction.fileInto("Work")), false)), targets);
+        BulkRuleApplier.Outcome toInbox = BulkRuleApplier.plan(archived,
+            List.of(new CompiledRule(2L, 0L, 1, RuleType.SIEVE, Conditions.always(),
+                List.of(RuleAction.fileInto("inbox")), false)), targets);
+
+        // Then
+        assertThat(toWork.targetMailboxId).isEqualTo(200L);
+        assertThat(toInbox.targetMailboxId).isEqualTo(100L);
+    }
+
+    private void servePages(List<Message> messages) {
+        when(messageRepository.findPageByMailboxIdAfter(eq(100L), anyLong(), any(Pageable.class)))
+            .thenAnswer(invocation -> {
+                long afterId = invocation.getArgument(1);
+                Pageable page = invocation.getArgument(2);
+                return messages.stream()
+                    .filter(m -> m.getId() > afterId)
+                    .limit(page.getPageSize())
+                    .collect(Collectors.toList());
+            });
+    }
+
+    private static int[] batchResult(int rows) {
+        int[] updated = new int[rows];
+        Arrays.fill(updated, 1);
+        return updated;
+    }
+
+    private CompiledRule compiled(Long id, String actionJson) {
+        return ruleCompiler.compile(rule(id, "{\"field\":\"size\",\"op\":\"greaterThan\",\"value\":0}", actionJson));
+    }
+
+    private static Rule rule(Long id, String conditionJson, String actionJson) {
+        return Rule.builder()
+            .id(id)
+            .userId(1L)
+            .name("rule-" + id)
+            .ruleType(RuleType.FILTER)
+            .conditionJson(conditionJson)
+            .actionJson(actionJson)
+            .enabled(true)
+            .priority(id.intValue())
+            .version(0L)
+            .build();
+    }
+
+    private static Message message(Long id, String from, String subject) {
+        return Message.builder()
+            .id(id)
+            .userId(1L)
+            .mailboxId(100L)
+            .subject(subject)
+            .fromAddress(from)
+            .toAddresses("me@example.com")
+            .messageDate(LocalDateTime.now())
+            .sizeBytes(1000L)
+            .flags("")
+            .hasAttachments(false)
+            .build();
+    }
+}
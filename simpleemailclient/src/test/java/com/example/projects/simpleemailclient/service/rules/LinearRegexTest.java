@@ -0,0 +1,167 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for LinearRegex
+ */
+class LinearRegexTest {
+
+    private static final int PATTERN_DEPTH = 3;
+
+    @Test
+    void find_AgreesWithJavaUtilRegex() {
+        // Given
+        List<String> patterns = List.of(
+            "invoice\\s+for", "^re:", "^[^@]*@example\\.com$", "\\bsale\\b", "a.c", "colou?r", "x{2,3}y",
+            "(foo|bar)+baz", "[\\d-]{3}", "\\Q$1.00\\E", "(?i)hello", "(?:ab){2}", "[^a-z]", "end$", "\\Aabc\\z",
+            "^.*@[^@]*\\.example$", "\\x41\\u0042", "a*?b", "(?<word>\\w+)@");
+        List<String> texts = List.of(
+            "your invoice for march", "re: status", "alice@example.com", "big sale today", "presales",
+            "abc", "a\nc", "color", "colour", "xxxy", "foobarfoobaz", "123-456", "$1.00", "Hello", "ABAB",
+            "ABC", "the end\n", "endless", "x@mail.example", "", "word@", "ab");
+
+        // When/Then
+        for (String pattern : patterns) {
+            Pattern reference = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+            LinearRegex regex = LinearRegex.compile(pattern);
+            for (String text : texts) {
+                assertThat(regex.find(text))
+                    .as("%s in \"%s\"", pattern, text)
+                    .isEqualTo(reference.matcher(text).find());
+            }
+        }
+    }
+
+    @Test
+    void find_AgreesWithJavaUtilRegexOnRandomPatterns() {
+        // Given
+        Random random = new Random(17);
+
+        // When/Then
+        for (int i = 0; i < 2000; i++) {
+            String pattern = randomPattern(random, PATTERN_DEPTH);
+            Pattern reference = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+            LinearRegex regex = LinearRegex.compile(pattern);
+            for (int j = 0; j < 10; j++) {
+                String text = randomText(random);
+                assertThat(regex.find(text))
+                    .as("%s in \"%s\"", pattern, text)
+                    .isEqualTo(reference.matcher(text).find());
+            }
+        }
+    }
+
+    @Test
+    void find_CatastrophicPatternsRunInLinearTime() {
+        // Given: exponential for a backtracking matcher
+        String text = "a".repeat(20_000) + "!";
+        LinearRegex nested = LinearRegex.compile("(a+)+$");
+        LinearRegex alternation = LinearRegex.compile("^(a|aa)*b");
+        StepBudget budget = new StepBudget(StepBudget.UNLIMITED);
+
+        // When
+        long start = System.nanoTime();
+        boolean nestedMatched = nested.find(text, budget);
+        boolean alternationMatched = alternation.find(text);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Then
+        assertThat(nestedMatched).isFalse();
+        assertThat(alternationMatched).isFalse();
+        assertThat(budget.getUsed()).isLessThanOrEqualTo(nested.cost(text.length()));
+        assertThat(elapsedMillis).isLessThan(5000);
+    }
+
+    @Test
+    void find_StopsWhenBudgetRunsOut() {
+        // Given
+        LinearRegex regex = LinearRegex.compile("[a-z]+z");
+        StepBudget budget = new StepBudget(100);
+
+        // When/Then
+        assertThatThrownBy(() -> regex.find("a".repeat(1000) + "z", budget))
+            .isInstanceOf(StepBudget.Exhausted.class);
+        assertThat(budget.isExceeded()).isTrue();
+        assertThat(regex.find("a".repeat(1000) + "z")).isTrue();
+    }
+
+    @Test
+    void compile_MatchesSieveWildcardTranslations() {
+        // Given: what SieveMatch generates for "*@*.example" and "Re: ?rder *"
+        LinearRegex domain = LinearRegex.compile("^.*@[^@]*\\.example$");
+        LinearRegex subject = LinearRegex.compile("^re: .rder .*$");
+
+        // When/Then
+        assertThat(domain.find("bob@mail.example")).isTrue();
+        assertThat(domain.find("bob@mail.example.com")).isFalse();
+        assertThat(subject.find("re: order 42")).isTrue();
+        assertThat(subject.find("fw: re: order 42")).isFalse();
+    }
+
+    @Test
+    void compile_RejectsBacktrackingOnlySyntax() {
+        for (String pattern : List.of("(a)\\1", "\\k<x>", "a(?=b)", "a(?!b)", "(?<=a)b", "(?<!a)b",
+                "(?>ab)", "a++", "a*+", "(?s)a", "[a[b]]", "(", "a)", "*a", "[a", "a{2,1}", "(a{1000}){1000}")) {
+            assertThatThrownBy(() -> LinearRegex.compile(pattern))
+                .as(pattern)
+                .isInstanceOf(PatternSyntaxException.class);
+        }
+    }
+
+    private static String randomPattern(Random random, int depth) {
+        StringBuilder pattern = new StringBuilder();
+        int atoms = 1 + random.nextInt(4);
+        for (int i = 0; i < atoms; i++) {
+            int kind = random.nextInt(depth > 0 ? 9 : 6);
+            if (kind == 3 && depth < PATTERN_DEPTH) {
+                // java.util.regex treats empty iterations of a group holding an anchor differently; keep anchors outside
+                kind = 4;
+            }
+            switch (kind) {
+                case 0:
+                    pattern.append('.');
+                    break;
+                case 1:
+                    pattern.append("[ab]");
+                    break;
+                case 2:
+                    pattern.append("[^a]");
+                    break;
+                case 3:
+                    pattern.append(random.nextBoolean() ? '^' : '$');
+                    continue;
+                case 6:
+                case 7:
+                    pattern.append('(').append(randomPattern(random, depth - 1)).append(')');
+                    break;
+                case 8:
+                    pattern.append('(').append(randomPattern(random, depth - 1))
+                        .append('|').append(randomPattern(random, depth - 1)).append(')');
+                    break;
+                default:
+                    pattern.append("abC".charAt(random.nextInt(3)));
+                    break;
+            }
+            String[] quantifiers = {"", "", "", "*", "+", "?", "{2}", "{1,2}", "*?"};
+            pattern.append(quantifiers[random.nextInt(quantifiers.length)]);
+        }
+        return pattern.toString();
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            text.append("abcA\n".charAt(random.nextInt(5)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ReplySuppressionCache
+ */
+@ExtendWith(MockitoExtension.class)
+class ReplySuppressionCacheTest {
+
+    private static final Instant NOW = Instant.parse("2025-06-02T10:00:00Z");
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private SetOperations<String, String> setOperations;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReplySuppressionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        lenient().when(setOperations.add(anyString(), any(String[].class))).thenReturn(1L);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new ReplySuppressionCache(redisTemplate, meterRegistry);
+        cache.clock = Clock.fixed(NOW, ZoneOffset.UTC);
+    }
+
+    @Test
+    void tryAcquire_RepliesOncePerSenderWithinWindow() {
+        // Given
+        Message message = message("Alice <Alice@Example.com>", null);
+
+        // When
+        boolean first = cache.tryAcquire(1L, 7L, message, 3);
+        boolean again = cache.tryAcquire(1L, 7L, message("alice@example.com", null), 3);
+        cache.clock = Clock.fixed(NOW.plus(Duration.ofDays(3)), ZoneOffset.UTC);
+        boolean afterThreeDays = cache.tryAcquire(1L, 7L, message, 3);
+        cache.clock = Clock.fixed(NOW.plus(Duration.ofDays(4)), ZoneOffset.UTC);
+        boolean afterFourDays = cache.tryAcquire(1L, 7L, message, 3);
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(again).isFalse();
+        assertThat(afterThreeDays).isFalse();
+        assertThat(afterFourDays).isTrue();
+        assertThat(cache.tryAcquire(1L, 8L, message, 3)).as("responders track senders separately").isTrue();
+        verify(setOperations, times(3)).add(anyString(), any(String[].class));
+    }
+
+    @Test
+    void tryAcquire_StormFromOneSenderSendsOneReply() {
+        // Given
+        Message message = message("storm@example.com", null);
+
+        // When
+        int replies = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (cache.tryAcquire(1L, 7L, message, 7)) {
+                replies++;
+            }
+        }
+
+        // Then
+        assertThat(replies).isEqualTo(1);
+        verify(setOperations, times(1)).add(anyString(), any(String[].class));
+        assertThat(meterRegistry.get("email.rules.replies.suppressed").tag("reason", "recent").counter().count())
+            .isEqualTo(9999);
+    }
+
+    @Test
+    void tryAcquire_NeverRepliesToListsOrAutomatedSenders() {
+        // When/Then
+        assertThat(cache.tryAcquire(1L, 7L, message("news@example.com", "<weekly.example.com>"), 7)).isFalse();
+        assertThat(cache.tryAcquire(1L, 7L, message("MAILER-DAEMON@example.com", null), 7)).isFalse();
+        assertThat(cache.tryAcquire(1L, 7L, message("no-reply@example.com", null), 7)).isFalse();
+        assertThat(cache.tryAcquire(1L, 7L, message("dev-request@lists.example.com", null), 7)).isFalse();
+        assertThat(cache.tryAcquire(1L, 7L, message("<>", null), 7)).isFalse();
+
+        verifyNoInteractions(setOperations);
+    }
+
+    @Test
+    void tryAcquire_CapsDistinctSendersPerDay() {
+        // When
+        int replies = 0;
+        for (int i = 0; i < 6000; i++) {
+            if (cache.tryAcquire(1L, 7L, message("sender" + i + "@example.com", null), 7)) {
+                replies++;
+            }
+        }
+
+        // Then
+        assertThat(replies).isEqualTo(5000);
+    }
+
+    @Test
+    void tryAcquire_SeesRepliesSentByOtherNodes() {
+        // Given
+        long yesterday = LocalDate.ofInstant(NOW, ZoneOffset.UTC).toEpochDay() - 1;
+        String alice = Long.toHexString(ReplySuppressionCache.hash("alice@example.com"));
+        lenient().when(setOperations.isMember("email:reply-suppression:1:7:" + yesterday, alice)).thenReturn(true);
+
+        // When
+        boolean first = cache.tryAcquire(1L, 7L, message("alice@example.com", null), 7);
+        clearInvocations(setOperations);
+        boolean again = cache.tryAcquire(1L, 7L, message("alice@example.com", null), 7);
+        boolean bob = cache.tryAcquire(1L, 7L, message("bob@example.com", null), 7);
+
+        // Then
+        assertThat(first).isFalse();
+        assertThat(again).isFalse();
+        assertThat(bob).isTrue();
+        // The repeat is answered from memory
+        verify(setOperations, never()).isMember(anyString(), eq(alice));
+        verify(setOperations, never()).add(anyString(), eq(alice));
+    }
+
+    @Test
+    void tryAcquire_LosesRaceToNodeThatRepliedToday() {
+        // Given
+        long today = LocalDate.ofInstant(NOW, ZoneOffset.UTC).toEpochDay();
+        String carol = Long.toHexString(ReplySuppressionCache.hash("carol@example.com"));
+        when(setOperations.add("email:reply-suppression:1:7:" + today, carol)).thenReturn(0L);
+
+        // When
+        boolean replied = cache.tryAcquire(1L, 7L, message("carol@example.com", null), 7);
+
+        // Then
+        assertThat(replied).isFalse();
+        assertThat(meterRegistry.get("email.rules.replies.suppressed").tag("reason", "recent").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void longSet_AgreesWithHashSet() {
+        // Given
+        Random random = new Random(11);
+        ReplySuppressionCache.LongSet set = new ReplySuppressionCache.LongSet();
+        Set<Long> reference = new HashSet<>();
+
+        // When
+        for (int i = 0; i < 20000; i++) {
+            long value = random.nextInt(3) == 0 ? random.nextInt(100) : random.nextLong();
+            set.add(value);
+            reference.add(value);
+        }
+
+        // Then
+        assertThat(set.size()).isEqualTo(reference.size());
+        for (long value : reference) {
+            assertThat(set.contains(value)).isTrue();
+        }
+        assertThat(set.contains(Long.MIN_VALUE + 12345)).isEqualTo(reference.contains(Long.MIN_VALUE + 12345));
+    }
+
+    private static Message message(String from, String listId) {
+        return Message.builder()
+            .id(1L)
+            .userId(1L)
+            .mailboxId(100L)
+            .subject("Hello")
+            .fromAddress(from)
+            .toAddresses("me@example.com")
+            .listId(listId)
+            .flags("")
+            .build();
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.exception.InvalidRuleException;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.Rule;
+import com.example.projects.simpleemailclient.model.Rule.RuleType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for RuleCompiler and the compiled rule tree
+ */
+class RuleCompilerTest {
+
+    private RuleCompiler ruleCompiler;
+    private Message message;
+
+    @BeforeEach
+    void setUp() {
+        ruleCompiler = new RuleCompiler(new ObjectMapper());
+        message = Message.builder()
+            .id(10L)
+            .userId(1L)
+            .mailboxId(100L)
+            .subject("Your INVOICE for March")
+            .fromAddress("Billing Team <Billing@Vendor.example>")
+            .toAddresses("me@example.com, team@example.com")
+            .ccAddresses("boss@example.com")
+            .messageDate(LocalDateTime.now())
+            .sizeBytes(2_000_000L)
+            .flags("")
+            .hasAttachments(true)
+            .build();
+    }
+
+    @Test
+    void compileCondition_TextOperatorsAreCaseInsensitive() {
+        RuleEvaluationContext context = RuleEvaluationContext.of(message);
+
+        assertThat(matches("{\"field\":\"subject\",\"op\":\"contains\",\"value\":\"invoice\"}", context)).isTrue();
+        assertThat(matches("{\"field\":\"from\",\"op\":\"equals\",\"value\":\"billing@vendor.example\"}", context)).isTrue();
+        assertThat(matches("{\"field\":\"fromDomain\",\"op\":\"equals\",\"value\":\"VENDOR.example\"}", context)).isTrue();
+        assertThat(matches("{\"field\":\"subject\",\"op\":\"startsWith\",\"value\":\"invoice\"}", context)).isFalse();
+    }
+
+    @Test
+    void compileCondition_RecipientFieldsAreMultiValued() {
+        RuleEvaluationContext context = RuleEvaluationContext.of(message);
+
+        assertThat(matches("{\"field\":\"to\",\"op\":\"equals\",\"value\":\"team@example.com\"}", context)).isTrue();
+        assertThat(matches("{\"field\":\"recipient\",\"op\":\"equals\",\"value\":\"boss@example.com\"}", context)).isTrue();
+        assertThat(matches("{\"field\":\"to\",\"op\":\"equals\",\"value\":\"boss@example.com\"}", context)).isFalse();
+    }
+
+    @Test
+    void compileCondition_BooleanCombinators() {
+        RuleEvaluationContext context = RuleEvaluationContext.of(message);
+        String json = "{\"all\":["
+            + "{\"field\":\"hasAttachments\",\"value\":true},"
+            + "{\"field\":\"size\",\"op\":\"greaterThan\",\"value\":1048576},"
+            + "{\"not\":{\"field\":\"subject\",\"op\":\"contains\",\"value\":[\"newsletter\",\"digest\"]}},"
+            + "{\"any\":[{\"field\":\"from\",\"op\":\"endsWith\",\"value\":\"@nowhere.example\"},"
+            + "{\"field\":\"subject\",\"op\":\"matches\",\"value\":\"invoice\\\\s+for\"}]}"
+            + "]}";
+
+        assertThat(matches(json, context)).isTrue();
+    }
+
+    @Test
+    void compileCondition_InvalidDefinitions_ThrowInvalidRuleException() {
+        assertThatThrownBy(() -> ruleCompiler.compileCondition("not json"))
+            .isInstanceOf(InvalidRuleException.class);
+        assertThatThrownBy(() -> ruleCompiler.compileCondition("{\"field\":\"unknown\",\"op\":\"equals\",\"value\":\"x\"}"))
+            .isInstanceOf(InvalidRuleException.class)
+            .hasMessageContaining("Unknown condition field");
+        assertThatThrownBy(() -> ruleCompiler.compileCondition("{\"field\":\"subject\",\"op\":\"matches\",\"value\":\"(\"}"))
+            .isInstanceOf(InvalidRuleException.class);
+        assertThatThrownBy(() -> ruleCompiler.compileActions("{\"actions\":[{\"type\":\"move\"}]}"))
+            .isInstanceOf(InvalidRuleException.class)
+            .hasMessageContaining("mailboxId");
+    }
+
+    @Test
+    void compileActions_ParsesAllActionTypes() {
+        List<RuleAction> actions = ruleCompiler.compileActions("{\"actions\":["
+            + "{\"type\":\"move\",\"mailboxId\":12},"
+            + "{\"type\":\"label\",\"label\":\"work\"},"
+            + "{\"type\":\"markRead\"},"
+            + "{\"type\":\"forward\",\"to\":\"archive@example.com\"},"
+            + "{\"type\":\"reply\",\"body\":\"Out of office\",\"days\":3}]}");
+
+        assertThat(actions).extracting(RuleAction::getType).containsExactly(
+            RuleAction.Type.MOVE, RuleAction.Type.ADD_FLAG, RuleAction.Type.MARK_READ,
+            RuleAction.Type.FORWARD, RuleAction.Type.REPLY);
+        assertThat(actions.get(0).getMailboxId()).isEqualTo(12L);
+        assertThat(actions.get(1).getValue()).isEqualTo("work");
+        assertThat(actions.get(4).getDays()).isEqualTo(3);
+    }
+
+    @Test
+    void compileAll_MatchesInPriorityOrderAndHonoursStop() {
+        CompiledRuleSet ruleSet = ruleCompiler.compileAll(1L, Arrays.asList(
+            rule(1L, 30, "{\"field\":\"subject\",\"op\":\"contains\",\"value\":\"march\"}", false),
+            rule(2L, 10, "{\"field\":\"fromDomain\",\"op\":\"equals\",\"value\":\"vendor.example\"}", false),
+            rule(3L, 20, "{\"field\":\"hasAttachments\",\"value\":true}", true),
+            rule(4L, 5, "{\"field\":\"subject\",\"op\":\"contains\",\"value\":\"unrelated\"}", false)));
+
+        List<CompiledRule> matched = ruleSet.match(RuleEvaluationContext.of(message));
+
+        assertThat(matched).extracting(CompiledRule::getRuleId).containsExactly(2L, 3L);
+    }
+
+    @Test
+    void match_StopsWhenEvaluationBudgetIsExceeded() {
+        CompiledRule notZzz = ruleCompiler.compile(
+            rule(1L, 10, "{\"not\":{\"field\":\"subject\",\"op\":\"matches\",\"value\":\"[a-z]+zzz\"}}", false));
+        CompiledRule attachments = ruleCompiler.compile(rule(2L, 20, "{\"field\":\"hasAttachments\",\"value\":true}", false));
+        CompiledRuleSet unlimited = new CompiledRuleSet(1L, List.of(notZzz, attachments));
+        CompiledRuleSet limited = new CompiledRuleSet(1L, List.of(notZzz, attachments), 0, 20);
+        RuleEvaluationContext context = RuleEvaluationContext.of(message);
+
+        assertThat(unlimited.match(context)).extracting(CompiledRule::getRuleId).containsExactly(1L, 2L);
+        assertThat(context.isBudgetExceeded()).isFalse();
+        // The aborted regex must not make the "not" match
+        assertThat(limited.match(context)).isEmpty();
+        assertThat(context.isBudgetExceeded()).isTrue();
+    }
+
+    @Test
+    void match_NotOverRegexThatExhaustsBudget_NeverFires() {
+        // Given
+        String json = "{\"all\":[{\"field\":\"hasAttachments\",\"value\":true},"
+            + "{\"not\":{\"field\":\"subject\",\"op\":\"matches\",\"value\":\"[a-z]+zzz\"}}]}";
+        CompiledRule rule = ruleCompiler.compile(rule(1L, 10, json, false));
+        CompiledRuleSet limited = new CompiledRuleSet(1L, List.of(rule), 0, 5);
+
+        // When/Then: evaluation is abandoned rather than the regex counting as no match
+        assertThatThrownBy(() -> matches(json, RuleEvaluationContext.of(message).withBudget(5)))
+            .isInstanceOf(StepBudget.Exhausted.class);
+        assertThat(rule.matches(RuleEvaluationContext.of(message).withBudget(5))).isFalse();
+        assertThat(limited.match(RuleEvaluationContext.of(message))).isEmpty();
+        assertThat(limited.matchAll(RuleEvaluationContext.of(message))).isEmpty();
+        assertThat(rule.matches(RuleEvaluationContext.of(message))).isTrue();
+    }
+
+    private boolean matches(String conditionJson, RuleEvaluationContext context) {
+        return ruleCompiler.compileCondition(conditionJson).matches(context);
+    }
+
+    private static Rule rule(Long id, int priority, String conditionJson, boolean stop) {
+        return Rule.builder()
+            .id(id)
+            .userId(1L)
+            .name("rule-" + id)
+            .ruleType(RuleType.FILTER)
+            .conditionJson(conditionJson)
+            .actionJson("{\"actions\":[{\"type\":\"label\",\"label\":\"r" + id + "\"}],\"stop\":" + stop + "}")
+            .enabled(true)
+            .priority(priority)
+            .version(0L)
+            .build();
+    }
+}
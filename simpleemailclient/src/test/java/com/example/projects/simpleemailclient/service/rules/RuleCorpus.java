@@ -0,0 +1,105 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.Rule;
+import com.example.projects.simpleemailclient.model.Rule.RuleType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic power-user rule sets and mail for rules engine tests and benchmarks
+ */
+final class RuleCorpus {
+
+    private static final String[] WORDS = {
+        "invoice", "meeting", "report", "weekly", "digest", "alert", "build", "failed",
+        "offer", "sale", "newsletter", "security", "password", "shipping", "order", "review"
+    };
+
+    private RuleCorpus() {
+    }
+
+    static String sender(int i) {
+        return "user" + i + "@domain" + (i % 97) + ".example";
+    }
+
+    static String domain(int i) {
+        return "domain" + i + ".example";
+    }
+
+    static String listId(int i) {
+        return "list" + i + ".lists.example";
+    }
+
+    /**
+     * Mix of indexable (sender, domain, list, subject word) and unindexable rules
+     */
+    static List<Rule> rules(int count, Random random) {
+        List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String condition;
+            int kind = random.nextInt(20);
+            if (kind < 8) {
+                condition = leaf("from", "equals", sender(random.nextInt(5000)));
+            } else if (kind < 11) {
+                condition = "{\"all\":[" + leaf("fromDomain", "equals", domain(random.nextInt(97)))
+                    + "," + leaf("subject", "contains", WORDS[random.nextInt(WORDS.length)]) + "]}";
+            } else if (kind < 13) {
+                condition = leaf("listId", "equals", listId(random.nextInt(200)));
+            } else if (kind < 16) {
+                condition = leaf("subject", "hasWord", WORDS[random.nextInt(WORDS.length)]);
+            } else if (kind < 18) {
+                condition = leaf("subject", "contains", "[" + WORDS[random.nextInt(WORDS.length)] + "]");
+            } else {
+                // Not indexable: always evaluated
+                condition = "{\"all\":[" + leaf("subject", "contains", WORDS[random.nextInt(WORDS.length)])
+                    + ",{\"field\":\"size\",\"op\":\"greaterThan\",\"value\":" + random.nextInt(100000) + "}]}";
+            }
+            rules.add(Rule.builder()
+                .id((long) i + 1)
+                .userId(1L)
+                .name("rule-" + i)
+                .ruleType(RuleType.FILTER)
+                .conditionJson(condition)
+                .actionJson("{\"actions\":[{\"type\":\"label\",\"label\":\"l" + i + "\"}],\"stop\":"
+                    + (random.nextInt(50) == 0) + "}")
+                .enabled(true)
+                .priority(random.nextInt(1000))
+                .version(0L)
+                .build());
+        }
+        return rules;
+    }
+
+    static List<Message> messages(int count, Random random) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder subject = new StringBuilder();
+            for (int w = 0; w < 6; w++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                subject.append(random.nextInt(8) == 0 ? "[" + word + "]" : word).append(' ');
+            }
+            messages.add(Message.builder()
+                .id((long) i + 1)
+                .userId(1L)
+                .mailboxId(100L)
+                .subject(subject.toString().trim())
+                .fromAddress(sender(random.nextInt(5000)))
+                .toAddresses("me@example.com")
+                .listId(random.nextInt(3) == 0 ? "<" + listId(random.nextInt(200)) + ">" : null)
+                .messageDate(LocalDateTime.now())
+                .sizeBytes((long) random.nextInt(200000))
+                .flags("")
+                .hasAttachments(false)
+                .build());
+        }
+        return messages;
+    }
+
+    private static String leaf(String field, String op, String value) {
+        return "{\"field\":\"" + field + "\",\"op\":\"" + op + "\",\"value\":\"" + value + "\"}";
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Rule.RuleType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for RuleExecutionStats
+ */
+@ExtendWith(MockitoExtension.class)
+class RuleExecutionStatsTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RuleExecutionStats stats;
+    private CompiledRule first;
+    private CompiledRule second;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        stats = new RuleExecutionStats(jdbcTemplate, meterRegistry);
+        first = rule(1L);
+        second = rule(2L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_WritesOneBatchAndResetsCounters() {
+        // Given
+        stats.record(first);
+        stats.record(first);
+        stats.record(second);
+
+        // When
+        int flushed = stats.flush();
+        int flushedAgain = stats.flush();
+
+        // Then
+        ArgumentCaptor<List<Object[]>> batch = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), batch.capture());
+        assertThat(batch.getValue()).extracting(row -> row[3], row -> row[0])
+            .containsExactlyInAnyOrder(tuple(1L, 2L), tuple(2L, 1L));
+        assertThat(flushed).isEqualTo(2);
+        assertThat(flushedAgain).isZero();
+        assertThat(meterRegistry.get("email.rules.hits").tag("type", "FILTER").counter().count()).isEqualTo(3.0);
+    }
+
+    @Test
+    void flush_DatabaseFailure_KeepsHitsForNextFlush() {
+        // Given
+        stats.record(first);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+            .thenThrow(new QueryTimeoutException("timeout"))
+            .thenReturn(new int[] {1});
+
+        // When
+        int failed = stats.flush();
+
+        // Then
+        assertThat(failed).isZero();
+        assertThat(stats.pendingHits()).isEqualTo(1);
+        assertThat(stats.flush()).isEqualTo(1);
+        assertThat(stats.pendingHits()).isZero();
+    }
+
+    private static CompiledRule rule(Long id) {
+        return new CompiledRule(id, 0L, 1, RuleType.FILTER, Conditions.always(),
+            Collections.singletonList(RuleAction.markRead()), false);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Throughput of a 1000-rule power-user rule set, linear scan vs match network
+ * Run with: mvn -Pbenchmark test
+ */
+@Tag("benchmark")
+class RuleMatchNetworkBenchmarkTest {
+
+    private static final int RULES = 1000;
+    private static final int MESSAGES = 20000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void matchNetwork_VersusLinearScan() {
+        // Given
+        Random random = new Random(7);
+        CompiledRuleSet ruleSet = new RuleCompiler(new ObjectMapper()).compileAll(1L, RuleCorpus.rules(RULES, random));
+        List<Message> messages = RuleCorpus.messages(MESSAGES, random);
+
+        // When
+        long scanNanos = 0;
+        long networkNanos = 0;
+        long scanMatches = 0;
+        long networkMatches = 0;
+        for (int round = 0; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            long matches = run(ruleSet, messages, CompiledRuleSet::matchAll);
+            long middle = System.nanoTime();
+            long networkRound = run(ruleSet, messages, CompiledRuleSet::match);
+            long end = System.nanoTime();
+            // Round 0 is warm-up
+            if (round > 0) {
+                scanNanos += middle - start;
+                networkNanos += end - middle;
+                scanMatches += matches;
+                networkMatches += networkRound;
+            }
+        }
+
+        // Then
+        System.out.printf("rules=%d indexed=%d messages=%d scan=%.2fus/msg network=%.2fus/msg speedup=%.1fx%n",
+            RULES, ruleSet.getIndexedRuleCount(), MESSAGES,
+            scanNanos / 1000.0 / ROUNDS / MESSAGES, networkNanos / 1000.0 / ROUNDS / MESSAGES,
+            (double) scanNanos / networkNanos);
+        assertThat(networkMatches).isEqualTo(scanMatches);
+    }
+
+    private static long run(CompiledRuleSet ruleSet, List<Message> messages,
+                            BiFunction<CompiledRuleSet, RuleEvaluationContext, List<CompiledRule>> matcher) {
+        long matches = 0;
+        for (Message message : messages) {
+            matches += matcher.apply(ruleSet, RuleEvaluationContext.of(message)).size();
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.Rule;
+import com.example.projects.simpleemailclient.model.Rule.RuleType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for RuleMatchNetwork candidate selection
+ */
+class RuleMatchNetworkTest {
+
+    private final RuleCompiler ruleCompiler = new RuleCompiler(new ObjectMapper());
+
+    @Test
+    void match_SameResultsAsFullScan() {
+        // Given
+        Random random = new Random(42);
+        CompiledRuleSet ruleSet = ruleCompiler.compileAll(1L, RuleCorpus.rules(1000, random));
+
+        // When/Then
+        assertThat(ruleSet.getIndexedRuleCount()).isGreaterThan(800);
+        for (Message message : RuleCorpus.messages(2000, random)) {
+            List<CompiledRule> expected = ruleSet.matchAll(RuleEvaluationContext.of(message));
+            List<CompiledRule> actual = ruleSet.match(RuleEvaluationContext.of(message));
+            assertThat(actual).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    void subjectWordFor_OnlyReturnsWordsBoundedInsideOperand() {
+        assertThat(RuleMatchNetwork.subjectWordFor(TextOperator.CONTAINS, "invoice")).isNull();
+        assertThat(RuleMatchNetwork.subjectWordFor(TextOperator.CONTAINS, "[invoice]")).isEqualTo("invoice");
+        assertThat(RuleMatchNetwork.subjectWordFor(TextOperator.CONTAINS, "big quarterly rep")).isEqualTo("quarterly");
+        assertThat(RuleMatchNetwork.subjectWordFor(TextOperator.STARTS_WITH, "alert: disk")).isEqualTo("alert");
+        assertThat(RuleMatchNetwork.subjectWordFor(TextOperator.HAS_WORD, "invoice")).isEqualTo("invoice");
+        assertThat(RuleMatchNetwork.subjectWordFor(TextOperator.MATCHES, "invoice")).isNull();
+    }
+
+    @Test
+    void compileAll_InternsIdenticalLeafConditions() {
+        // Given
+        String condition = "{\"field\":\"subject\",\"op\":\"contains\",\"value\":\"report\"}";
+        CompiledRuleSet ruleSet = ruleCompiler.compileAll(1L, List.of(
+            rule(1L, condition), rule(2L, "{\"all\":[" + condition + ",{\"field\":\"hasAttachments\",\"value\":false}]}")));
+
+        // Then
+        Conditions.AllOf second = (Conditions.AllOf) ruleSet.getRule(2L).getCondition();
+        assertThat(second.getChildren().get(0)).isSameAs(ruleSet.getRule(1L).getCondition());
+    }
+
+    private static Rule rule(Long id, String conditionJson) {
+        return Rule.builder()
+            .id(id)
+            .userId(1L)
+            .name("rule-" + id)
+            .ruleType(RuleType.FILTER)
+            .conditionJson(conditionJson)
+            .actionJson("{\"actions\":[{\"type\":\"markRead\"}]}")
+            .enabled(true)
+            .priority(id.intValue())
+            .version(0L)
+            .build();
+    }
+}
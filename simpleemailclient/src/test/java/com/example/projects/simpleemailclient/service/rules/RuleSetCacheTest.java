@@ -0,0 +1,90 @@
+package com.example.projects.simpleemailclient.service.rules;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for RuleSetCache
+ */
+class RuleSetCacheTest {
+
+    private RuleSetCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = new RuleSetCache();
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void get_CachesUntilInvalidated() {
+        // Given
+        CompiledRuleSet first = cache.get(1L, this::load);
+
+        // When
+        CompiledRuleSet cached = cache.get(1L, this::load);
+        cache.invalidate(1L);
+        CompiledRuleSet reloaded = cache.get(1L, this::load);
+
+        // Then
+        assertThat(cached).isSameAs(first);
+        assertThat(reloaded).isNotSameAs(first);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void get_InvalidatedWhileLoading_DoesNotInstallStaleSet() {
+        // Given
+        CompiledRuleSet stale = cache.get(1L, userId -> {
+            cache.invalidate(userId);
+            return load(userId);
+        });
+
+        // When
+        CompiledRuleSet next = cache.get(1L, this::load);
+
+        // Then
+        assertThat(next).isNotSameAs(stale);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void get_FailedLoad_LeavesNoEntry() {
+        // When
+        assertThatThrownBy(() -> cache.get(1L, userId -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        // Then
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get(1L, this::load)).isNotNull();
+    }
+
+    @Test
+    void get_ManyUsers_StaysBounded() {
+        // Given
+        ReflectionTestUtils.setField(cache, "maxUsers", 100);
+
+        // When
+        for (long userId = 0; userId < 10_000; userId++) {
+            cache.get(userId, this::load);
+            cache.invalidate(userId);
+            cache.get(userId, this::load);
+        }
+
+        // Then
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+    }
+
+    private CompiledRuleSet load(Long userId) {
+        loads.incrementAndGet();
+        return new CompiledRuleSet(userId, List.of());
+    }
+}
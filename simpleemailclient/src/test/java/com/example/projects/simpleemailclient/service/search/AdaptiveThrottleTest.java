@@ -0,0 +1,82 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for AdaptiveThrottle
+ */
+class AdaptiveThrottleTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void reserve_SpacesPermitsAtTheCurrentRate() {
+        // Given
+        AdaptiveThrottle throttle = new AdaptiveThrottle(100, 4000, 100, 100, now::get);
+
+        // When
+        long first = throttle.reserve(1000);
+        long second = throttle.reserve(1000);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        long afterIdle = throttle.reserve(1000);
+
+        // Then
+        assertThat(throttle.getRate()).isEqualTo(1000);
+        assertThat(first).isZero();
+        assertThat(second).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(afterIdle).isZero();
+    }
+
+    @Test
+    void record_IncreasesAdditivelyUnderTargetAndBacksOffWhenEitherSideIsSlow() {
+        // Given
+        AdaptiveThrottle throttle = new AdaptiveThrottle(100, 4000, 100, 100, now::get);
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            throttle.record(20 * MS, 30 * MS);
+        }
+        double ramped = throttle.getRate();
+        throttle.record(20 * MS, 2000 * MS);
+        double afterSlowIndex = throttle.getRate();
+
+        // Then
+        assertThat(ramped).isCloseTo(1000 + 10 * 78, within(0.001));
+        assertThat(afterSlowIndex).isCloseTo(ramped * 0.7, within(0.001));
+        assertThat(throttle.getIndexLatencyMillis()).isGreaterThan(100);
+    }
+
+    @Test
+    void record_StaysWithinBounds() {
+        // Given
+        AdaptiveThrottle throttle = new AdaptiveThrottle(100, 4000, 100, 100, now::get);
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            throttle.record(500 * MS, MS);
+        }
+        double floor = throttle.getRate();
+        for (int i = 0; i < 500; i++) {
+            throttle.record(MS, MS);
+        }
+
+        // Then
+        assertThat(floor).isEqualTo(100);
+        assertThat(throttle.getRate()).isEqualTo(4000);
+    }
+
+    @Test
+    void constructor_RejectsAnEmptyRange() {
+        assertThatThrownBy(() -> new AdaptiveThrottle(0, 10, 100, 100))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveThrottle(10, 5, 100, 100))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
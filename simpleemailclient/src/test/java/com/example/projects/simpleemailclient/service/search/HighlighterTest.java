@@ -0,0 +1,44 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for Highlighter
+ */
+class HighlighterTest {
+
+    @Test
+    void highlight_MarksWholeWordsCaseInsensitively() {
+        String text = "The Budget for budgeting: budget.";
+
+        assertThat(Highlighter.highlight(text, List.of("budget"), 200))
+            .isEqualTo("The <em>Budget</em> for budgeting: <em>budget</em>.");
+        assertThat(Highlighter.highlight(text, List.of("forecast"), 200)).isNull();
+    }
+
+    @Test
+    void highlight_PrefersThePassageWithMoreDistinctTerms() {
+        // Given
+        String filler = "lorem ipsum dolor sit amet ".repeat(10);
+        String text = "budget budget budget " + filler + "the budget forecast is ready " + filler;
+
+        // When
+        String snippet = Highlighter.highlight(text, List.of("budget", "forecast"), 60);
+
+        // Then
+        assertThat(snippet).startsWith("…").endsWith("…")
+            .contains("the <em>budget</em> <em>forecast</em> is ready");
+        assertThat(snippet.replace("<em>", "").replace("</em>", "").length()).isLessThanOrEqualTo(62);
+    }
+
+    @Test
+    void highlight_EscapesHtml() {
+        assertThat(Highlighter.highlight("<b>budget</b> & \"more\"", List.of("budget"), 200))
+            .isEqualTo("&lt;b&gt;<em>budget</em>&lt;/b&gt; &amp; &quot;more&quot;");
+        assertThat(Highlighter.plain("a < b and more", 5)).isEqualTo("a &lt; b…");
+    }
+}
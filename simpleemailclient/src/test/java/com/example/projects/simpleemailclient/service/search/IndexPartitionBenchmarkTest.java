@@ -0,0 +1,93 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Message;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Query latency of one large mailbox in the embedded index
+ * Run with: mvn -Pbenchmark test
+ */
+@Tag("benchmark")
+class IndexPartitionBenchmarkTest {
+
+    private static final int MESSAGES = 200_000;
+    private static final int VOCABULARY = 20_000;
+    private static final int BODY_WORDS = 120;
+    private static final int QUERIES = 1000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void search_200kMessageMailbox() throws IOException {
+        // Given
+        Random random = new Random(17);
+        IndexPartition partition = IndexPartition.open(directory);
+        long start = System.nanoTime();
+        for (long id = 1; id <= MESSAGES; id++) {
+            partition.add(IndexedDocument.of(message(id, random), new StringReader(text(random, BODY_WORDS)),
+                Long.MAX_VALUE));
+            if (id % 10_000 == 0) {
+                partition.flush();
+                while (partition.maybeMerge(8, Long.MAX_VALUE)) {
+                    // Keep the segment count bounded as a background merger would
+                }
+            }
+        }
+        partition.flush();
+        long indexMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // When
+        long[] nanos = new long[QUERIES];
+        long matches = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            SearchQuery query = new SearchQuery().text("", text(random, 1 + random.nextInt(3)));
+            long queryStart = System.nanoTime();
+            matches += partition.search(query, 0, 50).getTotal();
+            nanos[i] = System.nanoTime() - queryStart;
+        }
+        Arrays.sort(nanos);
+
+        // Then
+        long p50 = nanos[QUERIES / 2] / 1000;
+        long p95 = nanos[QUERIES * 95 / 100] / 1000;
+        long p99 = nanos[QUERIES * 99 / 100] / 1000;
+        System.out.printf("messages=%d segments=%d index=%d ms matches=%d p50=%d us p95=%d us p99=%d us%n",
+            MESSAGES, partition.segmentCount(), indexMillis, matches, p50, p95, p99);
+        assertThat(p95).isLessThan(100_000);
+    }
+
+    private static Message message(long id, Random random) {
+        return Message.builder()
+            .id(id)
+            .subject(text(random, 6))
+            .fromAddress("user" + random.nextInt(2000) + "@example.com")
+            .toAddresses("me@example.com")
+            .messageDate(LocalDateTime.of(2020, 1, 1, 0, 0).plusMinutes(id))
+            .snippet(text(random, 20))
+            .build();
+    }
+
+    /**
+     * Words with a Zipf-like distribution, so common words have long postings
+     */
+    private static String text(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            int rank = (int) Math.pow(VOCABULARY, random.nextDouble());
+            text.append("w").append(rank).append(' ');
+        }
+        return text.toString();
+    }
+}
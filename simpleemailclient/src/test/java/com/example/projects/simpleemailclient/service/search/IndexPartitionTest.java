@@ -0,0 +1,257 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Message;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for IndexPartition and the segment format
+ */
+class IndexPartitionTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2025, 3, 1, 9, 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void search_FindsBufferedAndFlushedDocuments() throws IOException {
+        // Given
+        IndexPartition partition = IndexPartition.open(directory);
+        partition.add(document(1L, "Quarterly report", "alice@example.com", "numbers for the quarter", 0));
+        partition.flush();
+        partition.add(document(2L, "Lunch", "bob@example.com", "quarterly lunch with the team", 1));
+
+        // When
+        IndexPartition.Hits report = partition.search(new SearchQuery().text("", "quarterly"), 0, 10);
+        IndexPartition.Hits lunch = partition.search(new SearchQuery().text(IndexedDocument.SUBJECT, "lunch"), 0, 10);
+
+        // Then
+        assertThat(report.getTotal()).isEqualTo(2);
+        assertThat(ids(report)).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(ids(lunch)).containsExactly(2L);
+        assertThat(lunch.getHits().get(0).getSubject()).isEqualTo("Lunch");
+        assertThat(lunch.getHits().get(0).getFromAddress()).isEqualTo("bob@example.com");
+        assertThat(lunch.getHits().get(0).getMessageDate()).isEqualTo(DATE.plusDays(1));
+        assertThat(lunch.getHits().get(0).getScore()).isPositive();
+    }
+
+    @Test
+    void search_RanksByBm25() throws IOException {
+        // Given
+        IndexPartition partition = IndexPartition.open(directory);
+        partition.add(document(1L, "Status", "a@example.com", "invoice attached", 0));
+        partition.add(document(2L, "Invoice", "b@example.com", "invoice invoice overdue invoice", 0));
+        partition.add(document(3L, "Holiday", "c@example.com", "see you next week", 0));
+        partition.flush();
+
+        // When
+        IndexPartition.Hits hits = partition.search(new SearchQuery().text("", "invoice"), 0, 10);
+        IndexPartition.Hits both = partition.search(new SearchQuery().text("", "invoice overdue"), 0, 10);
+
+        // Then
+        assertThat(ids(hits)).containsExactly(2L, 1L);
+        assertThat(hits.getHits().get(0).getScore()).isGreaterThan(hits.getHits().get(1).getScore());
+        assertThat(ids(both)).containsExactly(2L);
+    }
+
+    @Test
+    void search_DateOnlyQueryReturnsNewestFirstWithoutScore() throws IOException {
+        // Given
+        IndexPartition partition = IndexPartition.open(directory);
+        for (long id = 1; id <= 5; id++) {
+            partition.add(document(id, "Message " + id, "a@example.com", "body", (int) id));
+        }
+        partition.flush();
+
+        // When
+        IndexPartition.Hits hits = partition.search(new SearchQuery().between(DATE.plusDays(2), DATE.plusDays(4)), 0, 2);
+
+        // Then
+        assertThat(hits.getTotal()).isEqualTo(3);
+        assertThat(ids(hits)).containsExactly(4L, 3L);
+        assertThat(hits.getHits().get(0).getScore()).isNull();
+    }
+
+    @Test
+    void search_PagesThroughMatchesInRankOrder() throws IOException {
+        // Given
+        IndexPartition partition = IndexPartition.open(directory);
+        for (long id = 1; id <= 25; id++) {
+            partition.add(document(id, "Weekly digest", "news@example.com", "digest", (int) id));
+        }
+        partition.flush();
+        SearchQuery query = new SearchQuery().text("", "digest");
+
+        // When
+        List<Long> first = ids(partition.search(query, 0, 10));
+        List<Long> third = ids(partition.search(query, 20, 10));
+
+        // Then
+        assertThat(first).startsWith(25L, 24L).hasSize(10);
+        assertThat(third).containsExactly(5L, 4L, 3L, 2L, 1L);
+    }
+
+    @Test
+    void search_EqualScoreAndDateRankByMessageIdDescending() throws IOException {
+        // Given
+        IndexPartition partition = IndexPartition.open(directory);
+        for (long id : new long[] {3L, 6L, 1L}) {
+            partition.add(document(id, "Weekly digest", "news@example.com", "digest", 0));
+        }
+        partition.flush();
+        for (long id : new long[] {5L, 2L, 4L}) {
+            partition.add(document(id, "Weekly digest", "news@example.com", "digest", 0));
+        }
+        SearchQuery query = new SearchQuery().text("", "digest");
+
+        // When
+        List<Long> first = ids(partition.search(query, 0, 2));
+        List<Long> second = ids(partition.search(query, 2, 2));
+        List<Long> third = ids(partition.search(query, 4, 2));
+
+        // Then
+        assertThat(first).containsExactly(6L, 5L);
+        assertThat(second).containsExactly(4L, 3L);
+        assertThat(third).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void delete_SurvivesReopen() throws IOException {
+        // Given
+        IndexPartition partition = IndexPartition.open(directory);
+        partition.add(document(1L, "Keep", "a@example.com", "project plan", 0));
+        partition.add(document(2L, "Drop", "a@example.com", "project budget", 0));
+        partition.flush();
+        partition.delete(2L);
+        partition.close();
+
+        // When
+        IndexPartition reopened = IndexPartition.open(directory);
+
+        // Then
+        assertThat(ids(reopened.search(new SearchQuery().text("", "project"), 0, 10))).containsExactly(1L);
+        assertThatThrownBy(() -> partition.add(document(3L, "Late", "a@example.com", "x", 0)))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void add_ReplacesEarlierVersionOfMessage() throws IOException {
+        // Given
+        IndexPartition partition = IndexPartition.open(directory);
+        partition.add(document(1L, "Draft", "a@example.com", "first version", 0));
+        partition.flush();
+
+        // When
+        partition.add(document(1L, "Draft", "a@example.com", "second version", 0));
+
+        // Then
+        assertThat(partition.search(new SearchQuery().text("", "first"), 0, 10).getTotal()).isZero();
+        assertThat(ids(partition.search(new SearchQuery().text("", "version"), 0, 10))).containsExactly(1L);
+    }
+
+    @Test
+    void maybeMerge_CombinesSegmentsAndDropsDeletedDocuments() throws IOException {
+        // Given
+        IndexPartition partition = IndexPartition.open(directory);
+        for (long id = 1; id <= 40; id++) {
+            partition.add(document(id, "Build " + id, "ci@example.com", id % 2 == 0 ? "build passed" : "build failed", 0));
+            if (id % 10 == 0) {
+                partition.flush();
+            }
+        }
+        partition.delete(3L);
+        partition.delete(4L);
+        partition.flush();
+
+        // When
+        boolean merged = partition.maybeMerge(4, Long.MAX_VALUE);
+
+        // Then
+        assertThat(merged).isTrue();
+        assertThat(partition.segmentCount()).isEqualTo(1);
+        assertThat(partition.search(new SearchQuery().text("", "build"), 0, 100).getTotal()).isEqualTo(38);
+        assertThat(partition.search(new SearchQuery().text("", "passed"), 0, 100).getTotal()).isEqualTo(19);
+        assertThat(partition.maybeMerge(4, Long.MAX_VALUE)).isFalse();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.map(file -> file.getFileName().toString()).filter(name -> name.endsWith(".seg")))
+                .hasSize(1);
+        }
+
+        IndexPartition reopened = IndexPartition.open(directory);
+        assertThat(reopened.search(new SearchQuery().text(IndexedDocument.FROM, "ci"), 0, 100).getTotal()).isEqualTo(38);
+    }
+
+    @Test
+    void clear_KeepsSavedSearches() throws IOException {
+        // Given
+        IndexPartition partition = IndexPartition.open(directory);
+        partition.add(document(1L, "Hello", "a@example.com", "hello", 0));
+        partition.flush();
+        partition.saveSearch("greetings", "hello");
+
+        // When
+        partition.clear();
+
+        // Then
+        assertThat(partition.search(new SearchQuery().text("", "hello"), 0, 10).getTotal()).isZero();
+        assertThat(IndexPartition.open(directory).savedSearches()).containsEntry("greetings", "hello");
+    }
+
+    @Test
+    void search_RestrictedQueryOnlyMatchesGivenMessages() throws IOException {
+        // Given
+        IndexPartition partition = IndexPartition.open(directory);
+        for (long id = 1; id <= 4; id++) {
+            partition.add(document(id, "Budget " + id, "a@example.com", "budget", (int) id));
+        }
+        partition.flush();
+
+        // When
+        IndexPartition.Hits text = partition.search(new SearchQuery().text("", "budget").restrictTo(List.of(2L, 4L)), 0, 10);
+        IndexPartition.Hits dated = partition.search(new SearchQuery().between(DATE, null).restrictTo(List.of(3L)), 0, 10);
+        IndexPartition.Hits none = partition.search(new SearchQuery().text("", "budget").restrictTo(List.of()), 0, 10);
+
+        // Then
+        assertThat(text.getTotal()).isEqualTo(2);
+        assertThat(ids(text)).containsExactlyInAnyOrder(2L, 4L);
+        assertThat(ids(dated)).containsExactly(3L);
+        assertThat(none.getTotal()).isZero();
+    }
+
+    @Test
+    void query_WithoutTokensMatchesNothing() throws IOException {
+        // Given
+        IndexPartition partition = IndexPartition.open(directory);
+        partition.add(document(1L, "Hello", "a@example.com", "hello", 0));
+
+        // When / Then
+        assertThat(partition.search(new SearchQuery().text("", "  ?! "), 0, 10).getTotal()).isZero();
+    }
+
+    static IndexedDocument document(long id, String subject, String from, String body, int daysAfter) throws IOException {
+        Message message = Message.builder()
+            .id(id)
+            .subject(subject)
+            .fromAddress(from)
+            .toAddresses("me@example.com")
+            .messageDate(DATE.plusDays(daysAfter))
+            .snippet(body)
+            .build();
+        return IndexedDocument.of(message, new StringReader(body), Long.MAX_VALUE);
+    }
+
+    private static List<Long> ids(IndexPartition.Hits hits) {
+        return hits.getHits().stream().map(SearchHit::getMessageId).toList();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.service.search.MailQuery.Field;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for MailQueryParser
+ */
+class MailQueryParserTest {
+
+    @Test
+    void parse_KeysAndWordsBecomeConjuncts() {
+        // When
+        MailQuery query = MailQueryParser.parse("from:alice quarterly report has:attachment is:unread");
+
+        // Then
+        assertThat(query.conjuncts()).hasSize(5);
+        MailQuery.Text from = (MailQuery.Text) query.conjuncts().get(0);
+        assertThat(from.getField()).isEqualTo(Field.FROM);
+        assertThat(from.getText()).isEqualTo("alice");
+        assertThat(query.conjuncts().get(1)).hasToString("\"quarterly\"");
+        assertThat(query.conjuncts().get(3)).isInstanceOf(MailQuery.HasAttachment.class);
+        assertThat(((MailQuery.Unread) query.conjuncts().get(4)).isUnread()).isTrue();
+        assertThat(query.isStructured()).isFalse();
+    }
+
+    @Test
+    void parse_OrBindsTighterThanJuxtaposition() {
+        // When
+        MailQuery query = MailQueryParser.parse("from:alice OR from:bob subject:\"weekly sync\"");
+
+        // Then
+        assertThat(query).hasToString("((from:\"alice\" OR from:\"bob\") subject:\"weekly sync\")");
+        assertThat(query.isStructured()).isTrue();
+    }
+
+    @Test
+    void parse_NegationAndGroups() {
+        // When
+        MailQuery query = MailQueryParser.parse("-is:read (in:Work OR -has:attachment)");
+
+        // Then
+        assertThat(query).hasToString("(-is:read (in:\"Work\" OR -has:attachment))");
+        assertThat(MailQueryParser.parse("-(-is:unread)")).hasToString("is:unread");
+    }
+
+    @Test
+    void parse_DatesBoundTheRangeByDay() {
+        // When
+        MailQuery query = MailQueryParser.parse("after:2025/03/01 before:2025-04-01");
+
+        // Then
+        MailQuery.DateRange after = (MailQuery.DateRange) query.conjuncts().get(0);
+        MailQuery.DateRange before = (MailQuery.DateRange) query.conjuncts().get(1);
+        assertThat(after.getAfter()).isEqualTo(LocalDateTime.of(2025, 3, 1, 0, 0));
+        assertThat(after.getBefore()).isNull();
+        assertThat(before.getBefore()).isEqualTo(LocalDateTime.of(2025, 4, 1, 0, 0));
+    }
+
+    @Test
+    void parse_KeysAreCaseInsensitiveAndUnknownKeysAreText() {
+        // When
+        MailQuery query = MailQueryParser.parse("SUBJECT:Budget re:plans 10:30");
+
+        // Then
+        assertThat(query).hasToString("(subject:\"Budget\" \"re:plans\" \"10:30\")");
+    }
+
+    @Test
+    void parse_BlankQueryMatchesEverything() {
+        // When
+        MailQuery query = MailQueryParser.parse("   ");
+
+        // Then
+        assertThat(query.conjuncts()).isEmpty();
+        assertThat(query.isStructured()).isTrue();
+    }
+
+    @Test
+    void parse_RejectsMalformedQueries() {
+        assertThatThrownBy(() -> MailQueryParser.parse("(from:alice"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("missing )");
+        assertThatThrownBy(() -> MailQueryParser.parse("from:alice OR"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MailQueryParser.parse("subject:\"open"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("unterminated quote");
+        assertThatThrownBy(() -> MailQueryParser.parse("before:2025-13-01"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("invalid date");
+        assertThatThrownBy(() -> MailQueryParser.parse("has:star"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MailQueryParser.parse("from: alice"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("missing value");
+    }
+}
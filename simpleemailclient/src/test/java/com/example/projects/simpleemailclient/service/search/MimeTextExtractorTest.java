@@ -0,0 +1,93 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for MimeTextExtractor
+ */
+class MimeTextExtractorTest {
+
+    @Test
+    void extract_PlainMessageBody() throws IOException {
+        String mime = "From: alice@example.com\r\nSubject: Hi\r\n\r\nHello   Bob,\r\nsee you\r\n";
+
+        assertThat(extract(mime, 1000)).isEqualTo("Hello Bob, see you");
+        assertThat(extract(mime, 5)).isEqualTo("Hello");
+    }
+
+    @Test
+    void extract_SkipsAttachmentsAndDecodesTheTextPart() throws IOException {
+        // Given
+        String html = Base64.getMimeEncoder().encodeToString(
+            "<html><head><style>p {}</style></head><p>Café &amp; budget</p></html>"
+                .getBytes(StandardCharsets.UTF_8));
+        String mime = "Content-Type: multipart/mixed; boundary=\"outer\"\r\n\r\n"
+            + "preamble\r\n"
+            + "--outer\r\n"
+            + "Content-Type: application/pdf\r\nContent-Disposition: attachment; filename=a.pdf\r\n"
+            + "Content-Transfer-Encoding: base64\r\n\r\n"
+            + "JVBERi0xLjQK\r\n"
+            + "--outer\r\n"
+            + "Content-Type: multipart/alternative; boundary=inner\r\n\r\n"
+            + "--inner\r\n"
+            + "Content-Type: text/html; charset=utf-8\r\nContent-Transfer-Encoding: base64\r\n\r\n"
+            + html + "\r\n"
+            + "--inner--\r\n"
+            + "--outer--\r\n";
+
+        // When / Then
+        assertThat(extract(mime, 1000)).isEqualTo("Café & budget");
+    }
+
+    @Test
+    void extract_QuotedPrintableWithSoftBreaksAndCharset() throws IOException {
+        String mime = "Content-Type: text/plain; charset=ISO-8859-1\r\n"
+            + "Content-Transfer-Encoding: quoted-printable\r\n\r\n"
+            + "Gr=FC=DFe aus M=\r\n"
+            + "=FCnchen=\r\n";
+
+        assertThat(extract(mime, 1000)).isEqualTo("Grüße aus München");
+    }
+
+    @Test
+    void extract_StopsReadingOnceTheTextIsFound() throws IOException {
+        // Given: a text part followed by a large attachment
+        StringBuilder mime = new StringBuilder("Content-Type: multipart/mixed; boundary=b\r\n\r\n--b\r\n"
+            + "Content-Type: text/plain\r\n\r\nShort note\r\n--b\r\n"
+            + "Content-Type: application/octet-stream\r\n\r\n");
+        for (int i = 0; i < 10_000; i++) {
+            mime.append("AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\r\n");
+        }
+        mime.append("--b--\r\n");
+        byte[] bytes = mime.toString().getBytes(StandardCharsets.US_ASCII);
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+
+        // When
+        String text = MimeTextExtractor.extract(in, 1000);
+
+        // Then
+        assertThat(text).isEqualTo("Short note");
+        assertThat(bytes.length - in.available()).isLessThan(16_384);
+    }
+
+    @Test
+    void extract_MessageWithoutTextIsEmpty() throws IOException {
+        String mime = "Content-Type: image/png\r\nContent-Transfer-Encoding: base64\r\n\r\niVBORw0KGgo=\r\n";
+
+        assertThat(extract(mime, 1000)).isEmpty();
+        assertThat(extract("", 1000)).isEmpty();
+    }
+
+    private static String extract(String mime, int maxChars) throws IOException {
+        InputStream in = new ByteArrayInputStream(mime.getBytes(StandardCharsets.UTF_8));
+        return MimeTextExtractor.extract(in, maxChars);
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Mailbox.MailboxType;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.service.SearchService;
+import com.example.projects.simpleemailclient.service.SearchService.SearchResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for QueryPlanner against an in-memory messages table
+ */
+@ExtendWith(MockitoExtension.class)
+class QueryPlannerTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2025, 3, 1, 12, 0);
+
+    @Mock
+    private SearchService searchService;
+
+    @Mock
+    private MailboxRepository mailboxRepository;
+
+    @Mock
+    private SnippetService snippetService;
+
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private QueryPlanner planner;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+            "jdbc:h2:mem:planner;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE messages (id BIGINT PRIMARY KEY, user_id BIGINT, mailbox_id BIGINT, "
+            + "subject VARCHAR(1000), from_address VARCHAR(500), to_addresses VARCHAR(2000), "
+            + "cc_addresses VARCHAR(2000), message_date TIMESTAMP, snippet VARCHAR(500), "
+            + "flags VARCHAR(100), has_attachments BOOLEAN)");
+        meterRegistry = new SimpleMeterRegistry();
+        lenient().when(snippetService.highlight(any(), anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        planner = new QueryPlanner(searchService, mailboxRepository, jdbcTemplate, snippetService, meterRegistry,
+            50, 10, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP TABLE messages");
+    }
+
+    @Test
+    void search_StructuredQueryNeverTouchesTheTextIndex() {
+        // Given
+        insert(1L, 10L, "alice@example.com", DATE, "", true);
+        insert(2L, 10L, "bob@example.com", DATE.plusDays(1), "", true);
+        insert(3L, 10L, "carol@example.com", DATE.plusDays(2), "READ", true);
+        insert(4L, 11L, "dave@example.com", DATE.plusDays(3), "", true);
+        when(mailboxRepository.findByUserIdAndName(1L, "inbox")).thenReturn(Optional.empty());
+        when(mailboxRepository.findByUserIdAndMailboxType(1L, MailboxType.INBOX))
+            .thenReturn(Optional.of(Mailbox.builder().id(10L).build()));
+
+        // When
+        Page<SearchResult> page = planner.search(1L, "in:inbox has:attachment is:unread -from:alice",
+            PageRequest.of(0, 10));
+
+        // Then
+        assertThat(ids(page)).containsExactly(2L);
+        assertThat(page.getTotalElements()).isEqualTo(1);
+        assertThat(page.getContent().get(0).getScore()).isNull();
+        verifyNoInteractions(searchService, snippetService);
+        assertThat(meterRegistry.get("email.search.plans").tag("strategy", "db_only").counter().count())
+            .isEqualTo(1.0);
+    }
+
+    @Test
+    void search_DateRangeOnlyListsNewestFirst() {
+        // Given
+        insert(1L, 10L, "alice@example.com", DATE.minusDays(1), "", false);
+        insert(2L, 10L, "alice@example.com", DATE, "", false);
+        insert(3L, 10L, "alice@example.com", DATE.plusDays(1), "", false);
+        insert(4L, 10L, "alice@example.com", DATE.plusDays(2), "", false);
+
+        // When
+        Page<SearchResult> page = planner.search(1L, "after:2025-03-01 before:2025-03-03", PageRequest.of(0, 10));
+
+        // Then
+        assertThat(ids(page)).containsExactly(3L, 2L);
+        verifyNoInteractions(searchService);
+    }
+
+    @Test
+    void search_TextWithoutFiltersGoesToTheIndexWithDatesPushedDown() {
+        // Given
+        when(searchService.advancedSearch(eq(1L), anyMap(), any(Pageable.class)))
+            .thenReturn(new PageImpl<>(List.of()));
+
+        // When
+        planner.search(1L, "from:alice budget after:2025-03-01 before:2025-04-01", PageRequest.of(0, 10));
+
+        // Then
+        Map<String, Object> criteria = criteria();
+        assertThat(criteria).containsEntry("from", "alice").containsEntry("query", "budget")
+            .containsEntry("startDate", LocalDateTime.of(2025, 3, 1, 0, 0))
+            .containsEntry("endDate", LocalDateTime.of(2025, 3, 31, 23, 59, 59, 999_000_000))
+            .doesNotContainKey("messageIds");
+        // Only free text is highlighted in the body
+        verify(snippetService).highlight(any(), eq(List.of("budget")));
+    }
+
+    @Test
+    void search_SelectiveFilterRestrictsTheIndexToItsCandidates() {
+        // Given
+        insert(1L, 10L, "alice@example.com", DATE, "", true);
+        insert(2L, 10L, "alice@example.com", DATE, "", false);
+        insert(3L, 10L, "alice@example.com", DATE.plusDays(1), "", true);
+        when(searchService.advancedSearch(eq(1L), anyMap(), any(Pageable.class)))
+            .thenReturn(new PageImpl<>(List.of(hit(3L))));
+
+        // When
+        Page<SearchResult> page = planner.search(1L, "budget has:attachment", PageRequest.of(0, 10));
+
+        // Then
+        assertThat(ids(page)).containsExactly(3L);
+        assertThat(criteria()).containsEntry("query", "budget").containsEntry("messageIds", List.of(3L, 1L));
+        assertThat(planner.plan(1L, "budget has:attachment").getStrategy()).isEqualTo(QueryPlanner.Strategy.DB_FIRST);
+    }
+
+    @Test
+    void search_BroadFilterChecksTextHitsInRankOrder() {
+        // Given: 60 unread messages, more than max-candidates, and a rare word
+        for (long id = 1; id <= 120; id++) {
+            insert(id, 10L, "alice@example.com", DATE, id % 2 == 0 ? "READ" : "", false);
+        }
+        List<SearchResult> ranked = List.of(hit(2L), hit(1L), hit(4L), hit(3L), hit(5L));
+        when(searchService.advancedSearch(eq(1L), anyMap(), any(Pageable.class)))
+            .thenReturn(new PageImpl<>(ranked, PageRequest.of(0, 10), ranked.size()));
+
+        // When
+        QueryPlanner.Plan plan = planner.plan(1L, "budget is:unread");
+        Page<SearchResult> page = planner.search(1L, "budget is:unread", PageRequest.of(0, 2));
+
+        // Then
+        assertThat(plan.getStrategy()).isEqualTo(QueryPlanner.Strategy.TEXT_FIRST);
+        assertThat(plan.getCandidateEstimate()).isEqualTo(51);
+        assertThat(ids(page)).containsExactly(1L, 3L);
+        assertThat(page.getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    void search_HeaderTextUnderOrIsMatchedInTheDatabase() {
+        // Given
+        insert(1L, 10L, "alice@example.com", DATE, "", false);
+        insert(2L, 10L, "bob@example.com", DATE, "", false);
+        insert(3L, 10L, "100%_real@example.com", DATE, "", false);
+
+        // When
+        Page<SearchResult> either = planner.search(1L, "from:ALICE OR from:bob", PageRequest.of(0, 10));
+        Page<SearchResult> literal = planner.search(1L, "from:100% OR from:nobody", PageRequest.of(0, 10));
+
+        // Then
+        assertThat(ids(either)).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(ids(literal)).containsExactly(3L);
+        verifyNoInteractions(searchService);
+    }
+
+    @Test
+    void search_UnknownMailboxMatchesNothing() {
+        // Given
+        insert(1L, 10L, "alice@example.com", DATE, "", false);
+        when(mailboxRepository.findByUserIdAndName(1L, "Projects")).thenReturn(Optional.empty());
+
+        // When
+        Page<SearchResult> page = planner.search(1L, "budget in:Projects", PageRequest.of(0, 10));
+
+        // Then
+        assertThat(page.getContent()).isEmpty();
+        verifyNoInteractions(searchService);
+    }
+
+    @Test
+    void search_RejectsFreeTextUnderOr() {
+        assertThatThrownBy(() -> planner.search(1L, "budget OR forecast", PageRequest.of(0, 10)))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> planner.search(1L, "-budget", PageRequest.of(0, 10)))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Map<String, Object> criteria() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(searchService, atLeastOnce()).advancedSearch(eq(1L), captor.capture(), any(Pageable.class));
+        return captor.getValue();
+    }
+
+    private void insert(Long id, Long mailboxId, String from, LocalDateTime date, String flags, boolean attachments) {
+        jdbcTemplate.update("INSERT INTO messages VALUES (?, 1, ?, 'Subject', ?, 'me@example.com', NULL, ?, '', ?, ?)",
+            id, mailboxId, from, Timestamp.valueOf(date), flags, attachments);
+    }
+
+    private static SearchResult hit(Long id) {
+        return new SearchHit(id, "Subject", "alice@example.com", DATE, "", 1.0);
+    }
+
+    private static List<Long> ids(Page<SearchResult> page) {
+        return page.getContent().stream().map(SearchResult::getMessageId).collect(Collectors.toCollection(ArrayList::new));
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.dto.RecipientSuggestionDTO;
+import com.example.projects.simpleemailclient.model.Mailbox;
+import com.example.projects.simpleemailclient.model.Mailbox.MailboxType;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository.AddressView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for RecipientCompletionService
+ */
+@ExtendWith(MockitoExtension.class)
+class RecipientCompletionServiceTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2025, 5, 1, 9, 0);
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private MailboxRepository mailboxRepository;
+
+    private RecipientCompletionService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new RecipientCompletionService(messageRepository, mailboxRepository, 2, 100, 100, 30);
+    }
+
+    @Test
+    void complete_BuildsFromSentRecipientsAndReceivedSenders() {
+        // Given
+        when(messageRepository.findAddressesByUserId(eq(1L), any(Pageable.class))).thenReturn(List.of(
+            view("me@example.com", "\"Alice Smith\" <alice@example.com>", "carol@example.com", MailboxType.SENT),
+            view("Alan <alan@example.com>", "me@example.com, albert@example.com", null, MailboxType.INBOX)));
+
+        // When
+        List<RecipientSuggestionDTO> suggestions = service.complete(1L, "al", 10);
+
+        // Then: addresses only cc'd on received mail are not contacts
+        assertThat(suggestions).extracting(RecipientSuggestionDTO::getAddress)
+            .containsExactly("alice@example.com", "alan@example.com");
+        assertThat(suggestions.get(0).getName()).isEqualTo("Alice Smith");
+        assertThat(service.complete(1L, "car", 10)).hasSize(1);
+        verify(messageRepository, times(1)).findAddressesByUserId(eq(1L), any(Pageable.class));
+    }
+
+    @Test
+    void recordMessage_UpdatesLoadedIndexesOnly() {
+        // Given
+        when(messageRepository.findAddressesByUserId(eq(1L), any(Pageable.class))).thenReturn(List.of());
+        when(mailboxRepository.findById(5L)).thenReturn(Optional.of(Mailbox.builder().id(5L)
+            .mailboxType(MailboxType.SENT).build()));
+        service.complete(1L, "x", 10);
+
+        // When
+        service.recordMessage(Message.builder().userId(1L).mailboxId(5L).fromAddress("me@example.com")
+            .toAddresses("dora@example.com").messageDate(DATE).build());
+        service.recordMessage(Message.builder().userId(2L).mailboxId(6L).fromAddress("erin@example.com")
+            .toAddresses("someone@example.com").messageDate(DATE).build());
+
+        // Then
+        assertThat(service.complete(1L, "do", 10)).extracting(RecipientSuggestionDTO::getAddress)
+            .containsExactly("dora@example.com");
+        verify(mailboxRepository, never()).findById(6L);
+    }
+
+    @Test
+    void complete_EvictsTheLeastRecentlyUsedUser() {
+        // Given
+        when(messageRepository.findAddressesByUserId(anyLong(), any(Pageable.class))).thenReturn(List.of());
+        service.complete(1L, "a", 10);
+        service.complete(2L, "a", 10);
+        service.complete(1L, "a", 10);
+
+        // When
+        service.complete(3L, "a", 10);
+        service.complete(1L, "a", 10);
+        service.complete(2L, "a", 10);
+
+        // Then: user 2 was evicted and rebuilt, user 1 stayed loaded
+        verify(messageRepository, times(1)).findAddressesByUserId(eq(1L), any(Pageable.class));
+        verify(messageRepository, times(2)).findAddressesByUserId(eq(2L), any(Pageable.class));
+    }
+
+    private static AddressView view(String from, String to, String cc, MailboxType mailboxType) {
+        return new AddressView() {
+            @Override
+            public String getFromAddress() {
+                return from;
+            }
+
+            @Override
+            public String getToAddresses() {
+                return to;
+            }
+
+            @Override
+            public String getCcAddresses() {
+                return cc;
+            }
+
+            @Override
+            public LocalDateTime getMessageDate() {
+                return DATE;
+            }
+
+            @Override
+            public MailboxType getMailboxType() {
+                return mailboxType;
+            }
+        };
+    }
+}
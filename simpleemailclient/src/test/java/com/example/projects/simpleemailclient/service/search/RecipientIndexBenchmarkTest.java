@@ -0,0 +1,67 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Keystroke lookup latency of a full recipient index
+ * Run with: mvn -Pbenchmark test
+ */
+@Tag("benchmark")
+class RecipientIndexBenchmarkTest {
+
+    private static final int CONTACTS = 5000;
+    private static final int MENTIONS = 100_000;
+    private static final int QUERIES = 100_000;
+
+    @Test
+    void complete_5000Contacts() {
+        // Given
+        Random random = new Random(23);
+        RecipientIndex index = new RecipientIndex(Duration.ofDays(30).toMillis(), CONTACTS);
+        String[] contacts = new String[CONTACTS];
+        for (int i = 0; i < CONTACTS; i++) {
+            contacts[i] = "\"" + word(random) + " " + word(random) + "\" <" + word(random) + "." + word(random)
+                + "@" + word(random) + ".com>";
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MENTIONS; i++) {
+            // Skewed towards the first contacts, as real correspondence is
+            int contact = (int) (CONTACTS * Math.pow(random.nextDouble(), 3));
+            index.add(contacts[contact], random.nextBoolean(), 1_700_000_000_000L + i * 60_000L);
+        }
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // When
+        long[] nanos = new long[QUERIES];
+        long suggestions = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            String prefix = word(random).substring(0, 1 + random.nextInt(3));
+            long queryStart = System.nanoTime();
+            suggestions += index.complete(prefix, 10).size();
+            nanos[i] = System.nanoTime() - queryStart;
+        }
+        Arrays.sort(nanos);
+
+        // Then
+        long p50 = nanos[QUERIES / 2] / 1000;
+        long p99 = nanos[QUERIES * 99 / 100] / 1000;
+        System.out.printf("contacts=%d build=%d ms suggestions=%d p50=%d us p99=%d us%n",
+            index.size(), buildMillis, suggestions, p50, p99);
+        assertThat(p99).isLessThan(1000);
+    }
+
+    private static String word(Random random) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0, length = 3 + random.nextInt(6); i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+}
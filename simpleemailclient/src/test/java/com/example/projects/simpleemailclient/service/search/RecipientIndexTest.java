@@ -0,0 +1,91 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for RecipientIndex
+ */
+class RecipientIndexTest {
+
+    private static final long HALF_LIFE = Duration.ofDays(30).toMillis();
+    private static final long NOW = 1_750_000_000_000L;
+
+    @Test
+    void complete_MatchesAddressLocalPartsAndNameWords() {
+        // Given
+        RecipientIndex index = new RecipientIndex(HALF_LIFE, 100);
+        index.add("\"Smith, Alice\" <alice.smith@example.com>", true, NOW);
+        index.add("bob@example.com", true, NOW);
+
+        // When / Then
+        assertThat(addresses(index.complete("ali", 10))).containsExactly("alice.smith@example.com");
+        assertThat(addresses(index.complete("smi", 10))).containsExactly("alice.smith@example.com");
+        assertThat(addresses(index.complete("ALICE.S", 10))).containsExactly("alice.smith@example.com");
+        assertThat(addresses(index.complete("b", 10))).containsExactly("bob@example.com");
+        assertThat(index.complete("ali", 10).get(0).getName()).isEqualTo("Smith, Alice");
+        assertThat(index.complete("carol", 10)).isEmpty();
+        assertThat(index.complete(" ", 10)).isEmpty();
+    }
+
+    @Test
+    void complete_RanksFrequentAndSentAboveOccasional() {
+        // Given
+        RecipientIndex index = new RecipientIndex(HALF_LIFE, 100);
+        index.add("anna@example.com", false, NOW);
+        for (int i = 0; i < 4; i++) {
+            index.add("andrew@example.com", false, NOW);
+        }
+        index.add("amy@example.com", true, NOW);
+        index.add("amy@example.com", false, NOW);
+
+        // When
+        List<RecipientIndex.Suggestion> suggestions = index.complete("a", 10);
+
+        // Then: four received beat one sent and one received, which beat one received
+        assertThat(addresses(suggestions)).containsExactly("andrew@example.com", "amy@example.com", "anna@example.com");
+        assertThat(addresses(index.complete("a", 2))).containsExactly("andrew@example.com", "amy@example.com");
+    }
+
+    @Test
+    void complete_RecentContactOutranksOldFrequentOne() {
+        // Given: four mentions three half-lives ago count half of one mention today
+        RecipientIndex index = new RecipientIndex(HALF_LIFE, 100);
+        for (int i = 0; i < 4; i++) {
+            index.add("old@example.com", false, NOW - 3 * HALF_LIFE);
+        }
+        index.add("olivia@example.com", false, NOW);
+
+        // When / Then
+        assertThat(addresses(index.complete("o", 10))).containsExactly("olivia@example.com", "old@example.com");
+    }
+
+    @Test
+    void add_DropsTheLightestContactsBeyondTheLimit() {
+        // Given
+        RecipientIndex index = new RecipientIndex(HALF_LIFE, 10);
+        for (int i = 0; i < 11; i++) {
+            index.add("user" + i + "@example.com", false, NOW + i * HALF_LIFE);
+        }
+
+        // When / Then
+        assertThat(index.size()).isEqualTo(10);
+        assertThat(index.complete("user0", 10)).isEmpty();
+        assertThat(addresses(index.complete("user1", 10))).containsExactly("user10@example.com", "user1@example.com");
+    }
+
+    @Test
+    void parseAddressList_KeepsQuotedCommas() {
+        assertThat(RecipientIndex.parseAddressList("\"Smith, Alice\" <alice@example.com>, bob@example.com,"))
+            .containsExactly("\"Smith, Alice\" <alice@example.com>", "bob@example.com");
+        assertThat(RecipientIndex.parseAddressList(null)).isEmpty();
+    }
+
+    private static List<String> addresses(List<RecipientIndex.Suggestion> suggestions) {
+        return suggestions.stream().map(RecipientIndex.Suggestion::getAddress).toList();
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.dto.ReindexStatusDTO;
+import com.example.projects.simpleemailclient.model.ReindexShard;
+import com.example.projects.simpleemailclient.model.ReindexShard.Status;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository.MessageKey;
+import com.example.projects.simpleemailclient.repository.ReindexShardRepository;
+import com.example.projects.simpleemailclient.service.SearchService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ReindexPipeline
+ */
+@ExtendWith(MockitoExtension.class)
+class ReindexPipelineTest {
+
+    private static final Instant NOW = Instant.parse("2025-05-01T10:00:00Z");
+
+    @Mock
+    private SearchService searchService;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private ReindexShardRepository shardRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private ReindexPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new ReindexPipeline(searchService, messageRepository, shardRepository, transactionTemplate,
+            new SimpleMeterRegistry(), 4, 1, 2, 300, 1000, 1000, 1_000_000, 1_000_000);
+        pipeline.clock = Clock.fixed(NOW, ZoneOffset.UTC);
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+            invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void start_SplitsTheUserRangeIntoShards() {
+        // Given
+        when(shardRepository.findJobIdsWithStatus(any())).thenReturn(List.of());
+        when(messageRepository.findMinUserId()).thenReturn(1L);
+        when(messageRepository.findMaxUserId()).thenReturn(10L);
+        when(messageRepository.countByUserIdBetween(anyLong(), anyLong())).thenReturn(5L);
+
+        // When
+        String jobId = pipeline.start();
+
+        // Then
+        ArgumentCaptor<List<ReindexShard>> saved = ArgumentCaptor.forClass(List.class);
+        verify(shardRepository).saveAll(saved.capture());
+        assertThat(saved.getValue()).extracting(ReindexShard::getFromUserId, ReindexShard::getToUserId)
+            .containsExactly(tuple(1L, 3L), tuple(4L, 6L), tuple(7L, 9L), tuple(10L, 10L));
+        assertThat(saved.getValue()).allSatisfy(shard -> {
+            assertThat(shard.getJobId()).isEqualTo(jobId);
+            assertThat(shard.getLastUserId()).isEqualTo(shard.getFromUserId() - 1);
+            assertThat(shard.getStatus()).isEqualTo(Status.PENDING);
+        });
+    }
+
+    @Test
+    void start_ReturnsTheOpenJobInsteadOfCreatingAnother() {
+        // Given
+        when(shardRepository.findJobIdsWithStatus(any())).thenReturn(List.of("job-1"));
+
+        // When
+        String jobId = pipeline.start();
+
+        // Then
+        assertThat(jobId).isEqualTo("job-1");
+        verify(shardRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void runShard_ResumesFromCheckpointAndCompletesOnShortPage() {
+        // Given
+        ReindexShard shard = shard(7L, 7L);
+        when(messageRepository.findKeysInUserRangeAfter(eq(1L), eq(10L), anyLong(), anyLong(), any()))
+            .thenAnswer(invocation -> keysAfter(invocation.getArgument(2), invocation.getArgument(3)));
+        when(shardRepository.checkpoint(eq(1L), eq(pipeline.getNodeId()), anyLong(), anyLong(), anyLong(),
+            any(), any(), eq(Status.RUNNING))).thenReturn(1);
+
+        // When
+        pipeline.runShard(shard);
+
+        // Then
+        List<Long> indexed = new ArrayList<>();
+        ArgumentCaptor<Iterable<Long>> batches = batchCaptor();
+        verify(searchService, times(2)).bulkIndexMessages(batches.capture());
+        batches.getAllValues().forEach(batch -> batch.forEach(indexed::add));
+        assertThat(indexed).containsExactly(8L, 9L, 10L);
+        verify(shardRepository).checkpoint(eq(1L), anyString(), eq(7L), eq(9L), eq(2L), any(), any(), any());
+        verify(shardRepository).checkpoint(eq(1L), anyString(), eq(7L), eq(10L), eq(1L), any(), any(), any());
+        verify(shardRepository).finish(1L, pipeline.getNodeId(), Status.COMPLETED, null,
+            LocalDateTime.ofInstant(NOW, ZoneOffset.UTC), Status.RUNNING);
+    }
+
+    @Test
+    void runShard_StopsWhenTheLeaseIsLost() {
+        // Given
+        ReindexShard shard = shard(0L, 0L);
+        when(messageRepository.findKeysInUserRangeAfter(eq(1L), eq(10L), anyLong(), anyLong(), any()))
+            .thenAnswer(invocation -> keysAfter(invocation.getArgument(2), invocation.getArgument(3)));
+        when(shardRepository.checkpoint(anyLong(), anyString(), anyLong(), anyLong(), anyLong(),
+            any(), any(), any())).thenReturn(0);
+
+        // When
+        pipeline.runShard(shard);
+
+        // Then
+        verify(searchService, times(1)).bulkIndexMessages(any());
+        verify(shardRepository, never()).finish(anyLong(), anyString(), any(), any(), any(), any());
+    }
+
+    @Test
+    void runShard_MarksTheShardFailedOnError() {
+        // Given
+        ReindexShard shard = shard(0L, 0L);
+        when(messageRepository.findKeysInUserRangeAfter(anyLong(), anyLong(), anyLong(), anyLong(), any()))
+            .thenThrow(new IllegalStateException("connection reset"));
+
+        // When
+        pipeline.runShard(shard);
+
+        // Then
+        verify(shardRepository).finish(eq(1L), anyString(), eq(Status.FAILED), eq("connection reset"), any(),
+            eq(Status.RUNNING));
+    }
+
+    @Test
+    void status_ReportsProgressAndEta() {
+        // Given
+        LocalDateTime started = LocalDateTime.ofInstant(NOW, ZoneOffset.UTC).minusSeconds(100);
+        ReindexShard done = shard(10L, 10L);
+        done.setStatus(Status.COMPLETED);
+        done.setIndexedCount(600L);
+        done.setCreatedAt(started);
+        ReindexShard running = shard(4L, 4L);
+        running.setIndexedCount(400L);
+        running.setCreatedAt(started);
+        when(shardRepository.findJobIdsWithStatus(any())).thenReturn(List.of("job-1"));
+        when(shardRepository.findByJobIdOrderByShardNumber("job-1")).thenReturn(List.of(done, running));
+
+        // When
+        ReindexStatusDTO status = pipeline.status().orElseThrow();
+
+        // Then
+        assertThat(status.getShards()).containsEntry("COMPLETED", 1L).containsEntry("RUNNING", 1L);
+        assertThat(status.getIndexed()).isEqualTo(1000L);
+        assertThat(status.getEstimated()).isEqualTo(2000L);
+        assertThat(status.getDocsPerSecond()).isEqualTo(10.0);
+        assertThat(status.getEtaSeconds()).isEqualTo(100L);
+    }
+
+    private static ReindexShard shard(Long lastUserId, Long lastMessageId) {
+        return ReindexShard.builder()
+            .id(1L)
+            .jobId("job-1")
+            .shardNumber(0)
+            .fromUserId(1L)
+            .toUserId(10L)
+            .lastUserId(lastUserId)
+            .lastMessageId(lastMessageId)
+            .indexedCount(0L)
+            .estimatedCount(1000L)
+            .status(Status.RUNNING)
+            .build();
+    }
+
+    /**
+     * Page of two keys from user 7's messages 1..10 after the given key
+     */
+    private static List<MessageKey> keysAfter(Long afterUserId, Long afterId) {
+        List<MessageKey> keys = new ArrayList<>();
+        for (long id = 1; id <= 10 && keys.size() < 2; id++) {
+            if (7L > afterUserId || id > afterId) {
+                keys.add(key(7L, id));
+            }
+        }
+        return keys;
+    }
+
+    private static MessageKey key(Long userId, Long id) {
+        return new MessageKey() {
+            @Override
+            public Long getUserId() {
+                return userId;
+            }
+
+            @Override
+            public Long getId() {
+                return id;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<Iterable<Long>> batchCaptor() {
+        return ArgumentCaptor.forClass(Iterable.class);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for SavedSearchMatcher
+ */
+class SavedSearchMatcherTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2025, 3, 10, 9, 0);
+    private static final Map<String, Set<Long>> MAILBOXES = Map.of("Work", Set.of(20L), "inbox", Set.of(10L));
+
+    @Test
+    void matches_HeaderWordsFlagsDatesAndMailboxes() {
+        // Given
+        Message message = message("Quarterly budget review", "Alice Smith <alice@example.com>", "", true, 10L);
+
+        // When / Then
+        assertThat(matches("from:alice subject:budget", message)).isTrue();
+        assertThat(matches("subject:\"review budget\"", message)).isTrue();
+        assertThat(matches("from:malice", message)).isFalse();
+        assertThat(matches("has:attachment is:unread in:inbox", message)).isTrue();
+        assertThat(matches("in:Work", message)).isFalse();
+        assertThat(matches("in:Archive", message)).isFalse();
+        assertThat(matches("after:2025-03-10 before:2025-03-11", message)).isTrue();
+        assertThat(matches("before:2025-03-10", message)).isFalse();
+        assertThat(matches("to:me", message)).isTrue();
+        assertThat(matches("subject:\"?!\"", message)).isFalse();
+    }
+
+    @Test
+    void matches_OrAndNegation() {
+        // Given
+        Message read = message("Lunch", "bob@example.com", "READ", false, 20L);
+
+        // When / Then
+        assertThat(matches("from:alice OR from:bob", read)).isTrue();
+        assertThat(matches("-is:read", read)).isFalse();
+        assertThat(matches("is:unread OR (in:Work -has:attachment)", read)).isTrue();
+        assertThat(matches("", read)).isTrue();
+    }
+
+    @Test
+    void matches_FreeTextReadsTheBodyOnlyWhenNeededAndOnce() {
+        // Given
+        AtomicInteger opens = new AtomicInteger();
+        MessageBodySource body = message -> {
+            opens.incrementAndGet();
+            return new StringReader("Please find the signed contract attached");
+        };
+        Message message = message("Documents", "carol@example.com", "", false, 10L);
+        SavedSearchMatcher contract = compile("contract in:inbox");
+        SavedSearchMatcher headerOnly = compile("documents carol");
+        SavedSearchMatcher elsewhere = compile("contract in:Work");
+
+        // When
+        SavedSearchMatcher.Candidate candidate = SavedSearchMatcher.Candidate.of(message, body, 1000);
+        boolean headerMatch = headerOnly.matches(candidate);
+        boolean elsewhereMatch = elsewhere.matches(candidate);
+        int opensBeforeBody = opens.get();
+        boolean contractMatch = contract.matches(candidate);
+        boolean again = compile("signed OR unsigned").matches(candidate);
+
+        // Then
+        assertThat(headerMatch).isTrue();
+        assertThat(elsewhereMatch).isFalse();
+        assertThat(opensBeforeBody).isZero();
+        assertThat(contractMatch).isTrue();
+        assertThat(again).isTrue();
+        assertThat(opens.get()).isEqualTo(1);
+        assertThat(contract.readsBody()).isTrue();
+        assertThat(compile("from:carol is:unread").readsBody()).isFalse();
+    }
+
+    private static boolean matches(String query, Message message) {
+        return compile(query).matches(SavedSearchMatcher.Candidate.of(message, null, 1000));
+    }
+
+    private static SavedSearchMatcher compile(String query) {
+        return SavedSearchMatcher.compile(MailQueryParser.parse(query), name -> MAILBOXES.getOrDefault(name, Set.of()));
+    }
+
+    private static Message message(String subject, String from, String flags, boolean attachments, Long mailboxId) {
+        return Message.builder()
+            .id(1L)
+            .userId(1L)
+            .mailboxId(mailboxId)
+            .subject(subject)
+            .fromAddress(from)
+            .toAddresses("me@example.com")
+            .flags(flags)
+            .hasAttachments(attachments)
+            .messageDate(DATE)
+            .build();
+    }
+}
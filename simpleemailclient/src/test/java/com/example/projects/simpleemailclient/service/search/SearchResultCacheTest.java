@@ -0,0 +1,207 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.service.SearchService.SearchResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for SearchResultCache
+ */
+@ExtendWith(MockitoExtension.class)
+class SearchResultCacheTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2025, 4, 1, 12, 0);
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    private final Map<String, String> redis = new HashMap<>();
+    private final List<Pageable> backendCalls = new ArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private SearchResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(valueOperations.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        lenient().doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(valueOperations).set(anyString(), anyString(), any(Duration.class));
+        lenient().when(valueOperations.increment(anyString())).thenAnswer(invocation ->
+            Long.valueOf(redis.merge(invocation.getArgument(0), "1",
+                (current, one) -> String.valueOf(Long.parseLong(current) + 1))));
+        lenient().when(messageRepository.findAllById(anyList())).thenAnswer(invocation -> {
+            List<Message> messages = new ArrayList<>();
+            for (Long id : invocation.<List<Long>>getArgument(0)) {
+                messages.add(message(id));
+            }
+            return messages;
+        });
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new SearchResultCache(redisTemplate, messageRepository, meterRegistry, true, 20, 600);
+    }
+
+    @Test
+    void search_CachesTheRankingAndServesLaterPagesFromIt() {
+        // When
+        Page<SearchResult> first = cache.search(1L, "report", PageRequest.of(0, 5), backend(12));
+        Page<SearchResult> second = cache.search(1L, "report", PageRequest.of(1, 5), backend(12));
+        Page<SearchResult> last = cache.search(1L, "report", PageRequest.of(3, 5), backend(12));
+
+        // Then
+        assertThat(backendCalls).containsExactly(PageRequest.of(0, 20));
+        assertThat(first.getContent()).extracting(SearchResult::getMessageId).containsExactly(100L, 99L, 98L, 97L, 96L);
+        assertThat(second.getContent()).extracting(SearchResult::getMessageId).containsExactly(95L, 94L, 93L, 92L, 91L);
+        assertThat(second.getContent()).extracting(SearchResult::getScore).containsExactly(7.0, 6.0, 5.0, 4.0, 3.0);
+        assertThat(second.getContent().get(0).getSubject()).isEqualTo("Subject 95");
+        assertThat(second.getTotalElements()).isEqualTo(12);
+        assertThat(last.getContent()).isEmpty();
+        assertThat(meterRegistry.counter("email.search.cache.requests", "result", "hit").count()).isEqualTo(2);
+    }
+
+    @Test
+    void search_MissesAfterTheUsersGenerationIsBumped() {
+        // Given
+        cache.search(1L, "report", PageRequest.of(0, 5), backend(12));
+        cache.search(2L, "report", PageRequest.of(0, 5), backend(12));
+
+        // When
+        cache.invalidate(1L);
+        cache.search(1L, "report", PageRequest.of(0, 5), backend(12));
+        cache.search(2L, "report", PageRequest.of(0, 5), backend(12));
+
+        // Then
+        assertThat(backendCalls).hasSize(3);
+        assertThat(redis).containsEntry("search:gen:1", "1");
+        verify(redisTemplate).expire("search:gen:1", Duration.ofDays(7));
+    }
+
+    @Test
+    void search_KeysBySort() {
+        // When
+        cache.search(1L, "report", PageRequest.of(0, 5), backend(12));
+        cache.search(1L, "report", PageRequest.of(0, 5, Sort.by("messageDate")), backend(12));
+
+        // Then
+        assertThat(backendCalls).hasSize(2);
+    }
+
+    @Test
+    void search_BypassesPagesBeyondTheCachedDepthAndUnpagedRequests() {
+        // When
+        cache.search(1L, "report", PageRequest.of(4, 5), backend(30));
+        cache.search(1L, "report", Pageable.unpaged(), backend(30));
+
+        // Then
+        assertThat(backendCalls).containsExactly(PageRequest.of(4, 5), Pageable.unpaged());
+        verifyNoInteractions(valueOperations);
+    }
+
+    @Test
+    void search_FallsBackToTheBackendWhenRedisFails() {
+        // Given
+        when(valueOperations.get(anyString())).thenThrow(new QueryTimeoutException("timeout"));
+
+        // When
+        Page<SearchResult> page = cache.search(1L, "report", PageRequest.of(0, 5), backend(12));
+
+        // Then
+        assertThat(page.getContent()).hasSize(5);
+        assertThat(backendCalls).containsExactly(PageRequest.of(0, 5));
+    }
+
+    @Test
+    void search_SkipsMessagesDeletedSinceTheRankingWasCached() {
+        // Given
+        cache.search(1L, "report", PageRequest.of(0, 5), backend(12));
+        when(messageRepository.findAllById(anyList())).thenReturn(List.of(message(100L), message(98L)));
+
+        // When
+        Page<SearchResult> page = cache.search(1L, "report", PageRequest.of(0, 3), backend(12));
+
+        // Then
+        assertThat(page.getContent()).extracting(SearchResult::getMessageId).containsExactly(100L, 98L);
+    }
+
+    @Test
+    void ranking_RoundTripsScoresAndUnscoredResults() {
+        // Given
+        Page<SearchResult> page = new PageImpl<>(Arrays.asList(
+            new SearchHit(5L, null, null, null, null, 1.25),
+            new SearchHit(3L, null, null, null, null, null)), PageRequest.of(0, 20), 42);
+
+        // When
+        SearchResultCache.Ranking ranking = SearchResultCache.Ranking.decode(SearchResultCache.Ranking.of(page).encode());
+
+        // Then
+        assertThat(ranking.total).isEqualTo(42);
+        assertThat(ranking.ids).containsExactly(5L, 3L);
+        assertThat(ranking.scores).containsExactly(1.25, null);
+        assertThat(SearchResultCache.Ranking.decode("0;").ids).isEmpty();
+    }
+
+    @Test
+    void normalize_LowerCasesAndCollapsesWhitespace() {
+        assertThat(SearchResultCache.normalize("  Quarterly \t REPORT ")).isEqualTo("quarterly report");
+        assertThat(SearchResultCache.normalize(null)).isEmpty();
+    }
+
+    /**
+     * Backend ranking message ids 100, 99, ... with descending scores
+     */
+    private Function<Pageable, Page<SearchResult>> backend(int total) {
+        return pageable -> {
+            backendCalls.add(pageable);
+            Pageable page = pageable.isPaged() ? pageable : PageRequest.of(0, total);
+            List<SearchResult> results = new ArrayList<>();
+            for (long i = page.getOffset(); i < Math.min(total, page.getOffset() + page.getPageSize()); i++) {
+                results.add(new SearchHit(100L - i, "Subject " + (100L - i), "alice@example.com", DATE, "",
+                    (double) (total - i)));
+            }
+            return new PageImpl<>(results, page, total);
+        };
+    }
+
+    private static Message message(Long id) {
+        return Message.builder()
+            .id(id)
+            .userId(1L)
+            .subject("Subject " + id)
+            .fromAddress("alice@example.com")
+            .messageDate(DATE)
+            .snippet("")
+            .build();
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.service.SearchService.SearchResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for SnippetService
+ */
+@ExtendWith(MockitoExtension.class)
+class SnippetServiceTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2025, 3, 10, 9, 0);
+    private static final String MIME = "Subject: Plans\r\n\r\nHello team, the budget forecast is attached.\r\n";
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    private final List<long[]> ranges = new ArrayList<>();
+    private SnippetService service;
+
+    @BeforeEach
+    void setUp() {
+        MimeRangeSource source = (pointer, offset, length) -> {
+            if (pointer.equals("broken")) {
+                throw new IOException("connection reset");
+            }
+            ranges.add(new long[] {offset, length});
+            byte[] object = MIME.getBytes(StandardCharsets.UTF_8);
+            int from = (int) Math.min(offset, object.length);
+            int to = (int) Math.min(offset + length, object.length);
+            return new ByteArrayInputStream(Arrays.copyOfRange(object, from, to));
+        };
+        service = new SnippetService(source, messageRepository, 1024, 16, 200, 1000, 100, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void highlight_ReadsTheBodyInRangesAndCachesPerTerms() {
+        // Given
+        when(messageRepository.findAllById(List.of(1L))).thenReturn(List.of(message(1L, "user/1.eml")));
+
+        // When
+        Page<SearchResult> first = service.highlight(page(hit(1L, "stored")), List.of("forecast", "budget"));
+        Page<SearchResult> again = service.highlight(page(hit(1L, "stored")), List.of("budget", "forecast"));
+
+        // Then
+        assertThat(first.getContent().get(0).getSnippet())
+            .isEqualTo("Hello team, the <em>budget</em> <em>forecast</em> is attached.");
+        assertThat(again.getContent().get(0).getSnippet()).isEqualTo(first.getContent().get(0).getSnippet());
+        verify(messageRepository, times(1)).findAllById(anyList());
+        assertThat(ranges).allSatisfy(range -> assertThat(range[1]).isLessThanOrEqualTo(16));
+        assertThat(ranges.get(1)[0]).isEqualTo(16);
+    }
+
+    @Test
+    void highlight_UnreadableObjectFallsBackToTheStoredSnippet() {
+        // Given
+        when(messageRepository.findAllById(List.of(1L, 2L)))
+            .thenReturn(List.of(message(1L, "broken"), message(2L, null)));
+
+        // When
+        Page<SearchResult> page = service.highlight(
+            page(hit(1L, "About the budget"), hit(2L, "No match here")), List.of("budget"));
+
+        // Then
+        assertThat(page.getContent()).extracting(SearchResult::getSnippet)
+            .containsExactly("About the <em>budget</em>", "No match here");
+        assertThat(page.getContent().get(0).getScore()).isEqualTo(1.0);
+    }
+
+    @Test
+    void highlight_WithoutTermsLeavesThePageAlone() {
+        Page<SearchResult> page = page(hit(1L, "stored"));
+
+        assertThat(service.highlight(page, List.of())).isSameAs(page);
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void rangedStream_StopsAtMaxBytes() throws IOException {
+        // Given
+        RangedInputStream in = new RangedInputStream((pointer, offset, length) -> {
+            ranges.add(new long[] {offset, length});
+            return new ByteArrayInputStream(new byte[(int) length]);
+        }, "big.eml", 10, 25);
+
+        // When
+        byte[] read = in.readAllBytes();
+
+        // Then
+        assertThat(read).hasSize(25);
+        assertThat(ranges).extracting(range -> range[1]).containsExactly(10L, 10L, 5L);
+    }
+
+    private static Page<SearchResult> page(SearchResult... hits) {
+        return new PageImpl<>(List.of(hits));
+    }
+
+    private static SearchResult hit(Long id, String snippet) {
+        return new SearchHit(id, "Plans", "alice@example.com", DATE, snippet, 1.0);
+    }
+
+    private static Message message(Long id, String mimePointer) {
+        return Message.builder().id(id).userId(1L).mimePointer(mimePointer).build();
+    }
+}
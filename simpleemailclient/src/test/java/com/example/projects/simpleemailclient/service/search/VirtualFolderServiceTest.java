@@ -0,0 +1,206 @@
+package com.example.projects.simpleemailclient.service.search;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.SavedSearch;
+import com.example.projects.simpleemailclient.model.SavedSearchMember;
+import com.example.projects.simpleemailclient.repository.MailboxRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.SavedSearchMemberRepository;
+import com.example.projects.simpleemailclient.repository.SavedSearchRepository;
+import com.example.projects.simpleemailclient.service.rules.MessageBodySource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for VirtualFolderService
+ */
+@ExtendWith(MockitoExtension.class)
+class VirtualFolderServiceTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2025, 3, 10, 9, 0);
+
+    @Mock
+    private SavedSearchRepository savedSearchRepository;
+
+    @Mock
+    private SavedSearchMemberRepository memberRepository;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private MailboxRepository mailboxRepository;
+
+    @Mock
+    private MessageBodySource messageBodySource;
+
+    private VirtualFolderService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new VirtualFolderService(savedSearchRepository, memberRepository, messageRepository,
+            mailboxRepository, messageBodySource, 3, 100, 2, 100, 1000);
+    }
+
+    @Test
+    void saveFolder_BackfillsFromTheNewestMessages() {
+        // Given
+        when(savedSearchRepository.findByUserIdAndName(1L, "Alice")).thenReturn(Optional.empty());
+        when(savedSearchRepository.findByUserIdOrderByNameAsc(1L)).thenReturn(List.of());
+        when(savedSearchRepository.save(any(SavedSearch.class))).thenAnswer(invocation -> {
+            SavedSearch saved = invocation.getArgument(0);
+            saved.setId(7L);
+            return saved;
+        });
+        when(messageRepository.findPageByUserIdBefore(eq(1L), eq(Long.MAX_VALUE), any(Pageable.class)))
+            .thenReturn(List.of(message(5L, "alice@example.com", ""), message(4L, "bob@example.com", "")));
+        when(messageRepository.findPageByUserIdBefore(eq(1L), eq(4L), any(Pageable.class)))
+            .thenReturn(List.of(message(3L, "alice@example.com", "READ")));
+
+        // When
+        SavedSearch folder = service.saveFolder(1L, "Alice", "from:alice");
+
+        // Then
+        assertThat(folder.getTotalCount()).isEqualTo(2);
+        assertThat(folder.getUnreadCount()).isEqualTo(1);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SavedSearchMember>> members = ArgumentCaptor.forClass(List.class);
+        verify(memberRepository, times(2)).saveAll(members.capture());
+        assertThat(members.getAllValues().stream().flatMap(List::stream).map(SavedSearchMember::getMessageId))
+            .containsExactly(5L, 3L);
+        verify(memberRepository, never()).deleteBySavedSearchId(anyLong());
+        verifyNoInteractions(messageBodySource);
+    }
+
+    @Test
+    void saveFolder_RejectsInvalidQueriesAndTooManyFolders() {
+        assertThatThrownBy(() -> service.saveFolder(1L, "Broken", "(from:alice"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.saveFolder(1L, " ", "from:alice"))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        when(savedSearchRepository.findByUserIdAndName(1L, "Fourth")).thenReturn(Optional.empty());
+        when(savedSearchRepository.findByUserIdOrderByNameAsc(1L)).thenReturn(List.of(
+            folder(1L, "a"), folder(2L, "b"), folder(3L, "c")));
+        assertThatThrownBy(() -> service.saveFolder(1L, "Fourth", "from:alice"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("At most 3");
+    }
+
+    @Test
+    void percolate_AddsTheMessageToMatchingFoldersAndCountsIt() {
+        // Given
+        when(savedSearchRepository.findByUserIdOrderByNameAsc(1L)).thenReturn(List.of(
+            folder(7L, "from:alice"), folder(8L, "is:unread"), folder(9L, "from:bob")));
+
+        // When
+        service.percolate(message(5L, "alice@example.com", ""));
+        service.percolate(message(6L, "carol@example.com", "READ"));
+
+        // Then
+        verify(savedSearchRepository).incrementTotalCount(List.of(7L, 8L), 1);
+        verify(savedSearchRepository).incrementUnreadCount(List.of(7L, 8L), 1);
+        verify(memberRepository, times(1)).saveAll(anyList());
+        // Compiled once for both messages
+        verify(savedSearchRepository, times(1)).findByUserIdOrderByNameAsc(1L);
+    }
+
+    @Test
+    void refresh_MarkingReadLeavesUnreadFolderAndUpdatesCounts() {
+        // Given
+        when(savedSearchRepository.findByUserIdOrderByNameAsc(1L)).thenReturn(List.of(
+            folder(7L, "from:alice"), folder(8L, "is:unread")));
+        when(memberRepository.findSavedSearchIdsByMessageId(5L)).thenReturn(List.of(7L, 8L));
+
+        // When
+        service.refresh(message(5L, "alice@example.com", "READ"), true);
+
+        // Then
+        verify(memberRepository).deleteByMessageIdAndSavedSearchIds(5L, List.of(8L));
+        verify(savedSearchRepository).incrementTotalCount(List.of(8L), -1);
+        verify(savedSearchRepository).incrementUnreadCount(List.of(8L), -1);
+        verify(savedSearchRepository).incrementUnreadCount(List.of(7L), -1);
+        verify(memberRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void remove_DropsMembershipsAndCounts() {
+        // Given
+        when(savedSearchRepository.findByUserIdOrderByNameAsc(1L)).thenReturn(List.of(folder(7L, "from:alice")));
+        when(memberRepository.findSavedSearchIdsByMessageId(5L)).thenReturn(List.of(7L));
+
+        // When
+        service.remove(message(5L, "alice@example.com", ""));
+
+        // Then
+        verify(memberRepository).deleteByMessageIdAndSavedSearchIds(5L, List.of(7L));
+        verify(savedSearchRepository).incrementTotalCount(List.of(7L), -1);
+        verify(savedSearchRepository).incrementUnreadCount(List.of(7L), -1);
+    }
+
+    @Test
+    void remove_UserWithoutFoldersSkipsMembershipLookup() {
+        // Given
+        when(savedSearchRepository.findByUserIdOrderByNameAsc(1L)).thenReturn(List.of());
+
+        // When
+        service.remove(message(5L, "alice@example.com", ""));
+        service.percolate(message(6L, "alice@example.com", ""));
+
+        // Then
+        verifyNoInteractions(memberRepository);
+        verify(savedSearchRepository, times(1)).findByUserIdOrderByNameAsc(1L);
+    }
+
+    @Test
+    void percolate_FoldersInvalidatedDuringTheirLoadAreNotCached() {
+        // Given
+        AtomicInteger loads = new AtomicInteger();
+        when(savedSearchRepository.findByUserIdOrderByNameAsc(1L)).thenAnswer(invocation -> {
+            if (loads.incrementAndGet() == 1) {
+                service.invalidate(1L);
+            }
+            return List.of();
+        });
+
+        // When
+        service.percolate(message(5L, "alice@example.com", ""));
+        service.percolate(message(6L, "alice@example.com", ""));
+        service.percolate(message(7L, "alice@example.com", ""));
+
+        // Then
+        verify(savedSearchRepository, times(2)).findByUserIdOrderByNameAsc(1L);
+    }
+
+    private static SavedSearch folder(Long id, String query) {
+        return SavedSearch.builder().id(id).userId(1L).name("Folder " + id).query(query).build();
+    }
+
+    private static Message message(Long id, String from, String flags) {
+        return Message.builder()
+            .id(id)
+            .userId(1L)
+            .mailboxId(10L)
+            .subject("Hello")
+            .fromAddress(from)
+            .toAddresses("me@example.com")
+            .flags(flags)
+            .hasAttachments(false)
+            .messageDate(DATE)
+            .build();
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.projects.simpleemailclient.service.sieve;
+
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.model.Rule;
+import com.example.projects.simpleemailclient.model.Rule.RuleType;
+import com.example.projects.simpleemailclient.service.rules.CompiledRuleSet;
+import com.example.projects.simpleemailclient.service.rules.RuleCompiler;
+import com.example.projects.simpleemailclient.service.rules.RuleEvaluationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Sieve evaluation cost: re-interpreting the script per message vs the cached
+ * compiled form vs equivalent native rules
+ * Run with: mvn -Pbenchmark test
+ */
+@Tag("benchmark")
+class SieveCompilerBenchmarkTest {
+
+    private static final String[] CORPUS = {
+        "roundcube-managesieve.sieve", "mailing-lists.sieve", "spam-and-security.sieve", "forwarding.sieve"
+    };
+    private static final int MIGRATED_RULES = 500;
+    private static final int MESSAGES = 5000;
+    private static final int ROUNDS = 5;
+
+    private final SieveCompiler sieveCompiler = new SieveCompiler();
+    private final RuleCompiler ruleCompiler = new RuleCompiler(new ObjectMapper());
+
+    @Test
+    void corpusScripts() throws Exception {
+        Random random = new Random(11);
+        List<Message> messages = messages(random);
+        for (String name : CORPUS) {
+            report(name, SieveCompilerTest.load(name), messages);
+        }
+    }
+
+    @Test
+    void largeMigratedScript_VersusNativeRules() {
+        // Given
+        Random random = new Random(13);
+        StringBuilder script = new StringBuilder("require [\"fileinto\", \"vacation\"];\n");
+        List<Rule> nativeRules = new ArrayList<>();
+        for (int i = 0; i < MIGRATED_RULES; i++) {
+            String sender = "user" + random.nextInt(5000) + "@domain" + random.nextInt(97) + ".example";
+            String word = "word" + random.nextInt(400);
+            script.append("if anyof (address :is \"from\" \"").append(sender)
+                .append("\", header :contains \"subject\" \"").append(word).append("\") {\n")
+                .append("    fileinto \"Folder").append(i).append("\";\n}\n");
+            nativeRules.add(Rule.builder()
+                .id((long) i + 1)
+                .userId(1L)
+                .name("rule-" + i)
+                .ruleType(RuleType.FILTER)
+                .conditionJson("{\"any\":[{\"field\":\"from\",\"op\":\"equals\",\"value\":\"" + sender + "\"},"
+                    + "{\"field\":\"subject\",\"op\":\"contains\",\"value\":\"" + word + "\"}]}")
+                .actionJson("{\"actions\":[{\"type\":\"label\",\"label\":\"Folder" + i + "\"}]}")
+                .enabled(true)
+                .priority(i)
+                .version(0L)
+                .build());
+        }
+        List<Message> messages = messages(random);
+
+        // When
+        long compiledMatches = report("migrated-" + MIGRATED_RULES, script.toString(), messages);
+        CompiledRuleSet nativeSet = ruleCompiler.compileAll(1L, nativeRules);
+        long nativeNanos = 0;
+        long nativeMatches = 0;
+        for (int round = 0; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            long matches = run(messages, message -> nativeSet);
+            if (round > 0) {
+                nativeNanos += System.nanoTime() - start;
+                nativeMatches += matches;
+            }
+        }
+        System.out.printf("  native rules: %.2fus/msg%n", nativeNanos / 1000.0 / ROUNDS / MESSAGES);
+
+        // Then
+        assertThat(compiledMatches).isEqualTo(nativeMatches / ROUNDS);
+    }
+
+    /**
+     * @return Matches per round of the compiled form
+     */
+    private long report(String name, String script, List<Message> messages) {
+        long compileStart = System.nanoTime();
+        SieveProgram program = sieveCompiler.compile(script, 1000);
+        long compileNanos = System.nanoTime() - compileStart;
+        CompiledRuleSet compiled = ruleSet(program);
+
+        long interpretedNanos = 0;
+        long compiledNanos = 0;
+        long compiledMatches = 0;
+        for (int round = 0; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            // A tenth of the messages, scaled up; re-parsing every message is slow
+            run(messages.subList(0, MESSAGES / 10), message -> ruleSet(sieveCompiler.compile(script, 1000)));
+            long middle = System.nanoTime();
+            long matches = run(messages, message -> compiled);
+            long end = System.nanoTime();
+            if (round > 0) {
+                interpretedNanos += (middle - start) * 10;
+                compiledNanos += end - middle;
+                compiledMatches = matches;
+            }
+        }
+        System.out.printf("%s: rules=%d compile=%.2fms per-message re-parse=%.2fus/msg compiled=%.2fus/msg%n",
+            name, program.getRules().size(), compileNanos / 1e6,
+            interpretedNanos / 1000.0 / ROUNDS / MESSAGES, compiledNanos / 1000.0 / ROUNDS / MESSAGES);
+        return compiledMatches;
+    }
+
+    private CompiledRuleSet ruleSet(SieveProgram program) {
+        return ruleCompiler.compileAll(1L, List.of(), program.getRules(), program.getSharedConditions());
+    }
+
+    private static long run(List<Message> messages, Function<Message, CompiledRuleSet> ruleSets) {
+        long matches = 0;
+        for (Message message : messages) {
+            matches += ruleSets.apply(message).match(RuleEvaluationContext.of(message)).size();
+        }
+        return matches;
+    }
+
+    private static List<Message> messages(Random random) {
+        String[] subjects = {"Invoice", "Weekly newsletter", "Password reset", "Re: lunch", "CRITICAL alert"};
+        List<Message> messages = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            String subject = subjects[random.nextInt(subjects.length)] + " word" + random.nextInt(400);
+            String from = "user" + random.nextInt(5000) + "@domain" + random.nextInt(97) + ".example";
+            String listId = random.nextInt(4) == 0 ? "<dev.lists.example>" : null;
+            messages.add(SieveCompilerTest.message(from, subject, listId));
+        }
+        return messages;
+    }
+}
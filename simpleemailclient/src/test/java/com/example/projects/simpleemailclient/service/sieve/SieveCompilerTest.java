@@ -0,0 +1,183 @@
+package com.example.projects.simpleemailclient.service.sieve;
+
+import com.example.projects.simpleemailclient.exception.InvalidRuleException;
+import com.example.projects.simpleemailclient.model.Message;
+import com.example.projects.simpleemailclient.service.rules.CompiledRule;
+import com.example.projects.simpleemailclient.service.rules.CompiledRuleSet;
+import com.example.projects.simpleemailclient.service.rules.RuleAction;
+import com.example.projects.simpleemailclient.service.rules.RuleCompiler;
+import com.example.projects.simpleemailclient.service.rules.RuleEvaluationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for SieveCompiler
+ */
+class SieveCompilerTest {
+
+    private final SieveCompiler sieveCompiler = new SieveCompiler();
+    private final RuleCompiler ruleCompiler = new RuleCompiler(new ObjectMapper());
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "roundcube-managesieve.sieve", "mailing-lists.sieve", "spam-and-security.sieve", "forwarding.sieve"
+    })
+    void compile_CorpusScripts(String name) throws IOException {
+        // When
+        SieveProgram program = sieveCompiler.compile(load(name), 1000);
+
+        // Then
+        assertThat(program.getRules()).isNotEmpty();
+    }
+
+    @Test
+    void elsifChain_OnlyFirstMatchingBranchRuns() throws IOException {
+        // Given
+        CompiledRuleSet ruleSet = ruleSet(load("mailing-lists.sieve"));
+
+        // When/Then
+        assertThat(fileIntos(ruleSet, message("a@lists.example", "Hello", "<dev.lists.example>"))).containsExactly("Lists/dev");
+        assertThat(fileIntos(ruleSet, message("a@lists.example", "Hello", "<x.announce.example>"))).containsExactly("Lists/announce");
+        assertThat(fileIntos(ruleSet, message("a@lists.example", "Hello", "Kernel <kernel.vger.example>"))).containsExactly("Lists/kernel");
+        assertThat(fileIntos(ruleSet, message("a@lists.example", "Hello", "<misc.example>"))).containsExactly("Lists/other");
+        assertThat(fileIntos(ruleSet, message("a@lists.example", "Hello", null))).isEmpty();
+    }
+
+    @Test
+    void stop_EndsProcessing() throws IOException {
+        // Given
+        CompiledRuleSet ruleSet = ruleSet(load("spam-and-security.sieve"));
+
+        // When
+        List<RuleAction> actions = actions(ruleSet, message("noreply@bulk.example", "You have WON", null));
+
+        // Then
+        assertThat(actions).extracting(RuleAction::getType).containsExactly(RuleAction.Type.DELETE);
+    }
+
+    @Test
+    void nestedIf_RequiresOuterTest() throws IOException {
+        // Given
+        CompiledRuleSet ruleSet = ruleSet(load("spam-and-security.sieve"));
+
+        // When/Then
+        assertThat(fileIntos(ruleSet, message("it@phish.example", "Your password reset link", null)))
+            .containsExactly("Suspicious");
+        assertThat(fileIntos(ruleSet, message("it@corp.example", "Your password reset link", null)))
+            .isEmpty();
+        assertThat(fileIntos(ruleSet, message("noreply@corp.example", "Your password reset link", null)))
+            .containsExactly("Notifications");
+    }
+
+    @Test
+    void vacation_MultiLineReasonIsDotUnstuffed() throws IOException {
+        // Given
+        CompiledRuleSet ruleSet = ruleSet(load("roundcube-managesieve.sieve"));
+
+        // When
+        List<RuleAction> actions = actions(ruleSet, message("friend@else.example", "Lunch?", null));
+
+        // Then
+        RuleAction reply = actions.get(actions.size() - 1);
+        assertThat(reply.getType()).isEqualTo(RuleAction.Type.REPLY);
+        assertThat(reply.getDays()).isEqualTo(3);
+        assertThat(reply.getValue()).isEqualTo("Hi,\r\n\r\nI am out of the office until Monday.\r\n.and will reply when I am back.\r\n");
+    }
+
+    @Test
+    void addressParts_MatchLocalPartAndDomain() {
+        // Given
+        CompiledRuleSet ruleSet = ruleSet("require \"fileinto\";\n"
+            + "if address :localpart :contains \"to\" \"sales\" { fileinto \"Sales\"; }\n"
+            + "if address :domain :matches \"to\" \"*.example\" { fileinto \"Example\"; }\n"
+            + "if header :matches \"subject\" \"Re: ?rder *\" { fileinto \"Orders\"; }\n");
+
+        // When/Then
+        assertThat(fileIntos(ruleSet, message("x@y.example", "Re: Order 42", null)))
+            .containsExactly("Sales", "Example", "Orders");
+    }
+
+    @Test
+    void compile_RejectsUnsupportedScripts() {
+        assertThatThrownBy(() -> sieveCompiler.compile("require \"imap4flags\";", 1000))
+            .isInstanceOf(InvalidRuleException.class)
+            .hasMessageContaining("imap4flags");
+        assertThatThrownBy(() -> sieveCompiler.compile("fileinto \"Work\";", 1000))
+            .hasMessageContaining("require \"fileinto\"");
+        assertThatThrownBy(() -> sieveCompiler.compile("keep;\nif true {\n  discard\n}", 1000))
+            .hasMessageContaining("Sieve line 4");
+        assertThatThrownBy(() -> sieveCompiler.compile("if header :comparator \"i;octet\" :is \"subject\" \"x\" { stop; }", 1000))
+            .hasMessageContaining("comparator");
+    }
+
+    @Test
+    void not_BudgetRunsOutInsideTest_DoesNotDiscard() {
+        // Given
+        String script = "if not header :matches \"subject\" \"*zzz\" { discard; }\n";
+        SieveProgram program = sieveCompiler.compile(script, 1000);
+        CompiledRuleSet limited = new CompiledRuleSet(1L, program.getRules(), program.getSharedConditions(), 5);
+        Message message = message("x@y.example", "Quarterly report for the whole team", null);
+
+        // When/Then
+        assertThat(actions(ruleSet(script), message)).extracting(RuleAction::getType)
+            .contains(RuleAction.Type.DELETE);
+        assertThat(actions(limited, message)).extracting(RuleAction::getType)
+            .doesNotContain(RuleAction.Type.DELETE);
+    }
+
+    private CompiledRuleSet ruleSet(String script) {
+        SieveProgram program = sieveCompiler.compile(script, 1000);
+        return ruleCompiler.compileAll(1L, List.of(), program.getRules(), program.getSharedConditions());
+    }
+
+    private static List<RuleAction> actions(CompiledRuleSet ruleSet, Message message) {
+        List<RuleAction> actions = new ArrayList<>();
+        for (CompiledRule rule : ruleSet.match(RuleEvaluationContext.of(message))) {
+            actions.addAll(rule.getActions());
+        }
+        return actions;
+    }
+
+    private static List<String> fileIntos(CompiledRuleSet ruleSet, Message message) {
+        List<String> folders = new ArrayList<>();
+        for (RuleAction action : actions(ruleSet, message)) {
+            if (action.getType() == RuleAction.Type.FILE_INTO) {
+                folders.add(action.getValue());
+            }
+        }
+        return folders;
+    }
+
+    static String load(String name) throws IOException {
+        try (InputStream in = SieveCompilerTest.class.getResourceAsStream("/sieve/" + name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static Message message(String from, String subject, String listId) {
+        return Message.builder()
+            .id(1L)
+            .userId(1L)
+            .mailboxId(100L)
+            .subject(subject)
+            .fromAddress(from)
+            .toAddresses("sales-team@corp.example")
+            .listId(listId)
+            .messageDate(LocalDateTime.now())
+            .sizeBytes(2048L)
+            .flags("")
+            .hasAttachments(false)
+            .build();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for DictionaryTrainer
+ */
+class DictionaryTrainerTest {
+
+    @Test
+    void train_KeepsOnlyLinesThatRecurAcrossSamples() {
+        // Given
+        List<byte[]> samples = List.of(
+            bytes("Subject: one\r\n<p class=\"footer\">Unsubscribe</p>\r\n"),
+            bytes("Subject: two\r\n<p class=\"footer\">Unsubscribe</p>\r\n"));
+
+        // When
+        String dictionary = new String(DictionaryTrainer.train(samples, 1024), StandardCharsets.ISO_8859_1);
+
+        // Then
+        assertThat(dictionary).isEqualTo("<p class=\"footer\">Unsubscribe</p>\r\n");
+    }
+
+    @Test
+    void train_PutsMostValuableLinesLastWithinTheLimit() {
+        // Given
+        String common = "<td class=\"headline\">\r\n";
+        String rarer = "<td class=\"more\">\r\n";
+        List<byte[]> samples = List.of(
+            bytes(common + rarer), bytes(common + rarer), bytes(common), bytes(common));
+
+        // When
+        String all = new String(DictionaryTrainer.train(samples, 1024), StandardCharsets.ISO_8859_1);
+        String limited = new String(DictionaryTrainer.train(samples, common.length()), StandardCharsets.ISO_8859_1);
+
+        // Then
+        assertThat(all).isEqualTo(rarer + common);
+        assertThat(limited).isEqualTo(common);
+    }
+
+    @Test
+    void train_WithNothingInCommon_IsEmpty() {
+        // When
+        byte[] dictionary = DictionaryTrainer.train(List.of(bytes("first message\r\n"), bytes("second message\r\n")),
+            1024);
+
+        // Then
+        assertThat(dictionary).isEmpty();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for LocalBlobStore
+ */
+class LocalBlobStoreTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @TempDir
+    Path directory;
+
+    private SimpleMeterRegistry meterRegistry;
+    private LocalBlobStore store;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        store = new LocalBlobStore(directory.resolve("blobs").toString(), true, meterRegistry);
+        file = Files.writeString(directory.resolve("upload"), CONTENT);
+    }
+
+    @Test
+    void put_StoresUnderShardedPathWithoutTemporaryFiles() throws Exception {
+        // When
+        store.put("email-attachments", "tenants/7/blobs/ab/key", file, "text/plain");
+
+        // Then
+        Path path = store.path("email-attachments", "tenants/7/blobs/ab/key");
+        assertThat(path).hasContent(CONTENT);
+        assertThat(directory.resolve("blobs").relativize(path).getNameCount()).isEqualTo(4);
+        try (Stream<Path> files = Files.walk(directory.resolve("blobs"))) {
+            assertThat(files.filter(Files::isRegularFile)).containsExactly(path);
+        }
+        assertThat(meterRegistry.get("email.blobs.local.fsyncs").counter().count()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void put_ReplacesExistingObject() throws Exception {
+        // Given
+        store.put("email-messages", "mime/1", file, "message/rfc822");
+        Path replacement = Files.writeString(directory.resolve("replacement"), "new");
+
+        // When
+        store.put("email-messages", "mime/1", replacement, "message/rfc822");
+
+        // Then
+        assertThat(read(store.get("email-messages", "mime/1", 0, -1))).isEqualTo("new");
+    }
+
+    @Test
+    void get_ReadsRequestedRange() throws Exception {
+        // Given
+        store.put("email-messages", "mime/1", file, "message/rfc822");
+
+        // When / Then
+        assertThat(read(store.get("email-messages", "mime/1", 5, 5))).isEqualTo("56789");
+        assertThat(read(store.get("email-messages", "mime/1", 15, 100))).isEqualTo("fghij");
+        assertThat(read(store.get("email-messages", "mime/1", 10, -1))).isEqualTo("abcdefghij");
+        assertThat(read(store.get("email-messages", "mime/1", 20, 5))).isEmpty();
+    }
+
+    @Test
+    void get_OfMissingObject_ThrowsNoSuchFile() {
+        // When / Then
+        assertThatThrownBy(() -> store.get("email-messages", "missing", 0, -1))
+            .isInstanceOf(NoSuchFileException.class);
+        assertThatThrownBy(() -> store.stat("email-messages", "missing"))
+            .isInstanceOf(NoSuchFileException.class);
+    }
+
+    @Test
+    void transferTo_CopiesRange() throws Exception {
+        // Given
+        store.put("email-attachments", "key", file, "text/plain");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long copied = store.transferTo("email-attachments", "key", 3, 4, out);
+
+        // Then
+        assertThat(copied).isEqualTo(4);
+        assertThat(out.toString(StandardCharsets.US_ASCII)).isEqualTo("3456");
+    }
+
+    @Test
+    void transferTo_PastEndOfObject_Fails() throws Exception {
+        // Given
+        store.put("email-attachments", "key", file, "text/plain");
+
+        // When / Then
+        assertThatThrownBy(() -> store.transferTo("email-attachments", "key", 15, 10, new ByteArrayOutputStream()))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("early");
+    }
+
+    @Test
+    void stat_ReportsSizeAndChangesEtagOnReplace() throws Exception {
+        // Given
+        store.put("email-messages", "mime/1", file, "message/rfc822");
+        BlobInfo before = store.stat("email-messages", "mime/1");
+
+        // When
+        store.put("email-messages", "mime/1", Files.writeString(directory.resolve("longer"), CONTENT + "!"),
+            "message/rfc822");
+        BlobInfo after = store.stat("email-messages", "mime/1");
+
+        // Then
+        assertThat(before.getSize()).isEqualTo(CONTENT.length());
+        assertThat(after.getSize()).isEqualTo(CONTENT.length() + 1);
+        assertThat(after.getEtag()).isNotEqualTo(before.getEtag());
+    }
+
+    @Test
+    void delete_RemovesObjectAndIgnoresMissing() throws Exception {
+        // Given
+        store.put("email-attachments", "key", file, "text/plain");
+
+        // When
+        store.delete("email-attachments", "key");
+        store.delete("email-attachments", "key");
+
+        // Then
+        assertThat(store.path("email-attachments", "key")).doesNotExist();
+    }
+
+    @Test
+    void path_KeysCannotEscapeTheBucket() {
+        // When
+        Path path = store.path("email-messages", "../../etc/passwd");
+
+        // Then
+        assertThat(path.getFileName().toString()).isEqualTo("%2E.%2F..%2Fetc%2Fpasswd");
+        assertThat(path.normalize()).startsWith(directory.resolve("blobs").resolve("email-messages"));
+        assertThatThrownBy(() -> store.path("../other", "key")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void path_LongKeysUseTheirHash() {
+        // When
+        Path path = store.path("email-messages", "k".repeat(500));
+
+        // Then
+        assertThat(path.getFileName().toString()).hasSize(64);
+    }
+
+    @Test
+    void put_ConcurrentWritersShareFsyncs() throws Exception {
+        // Given
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> writes = new ArrayList<>();
+
+        // When
+        try {
+            for (int i = 0; i < 64; i++) {
+                String key = "tenants/1/blobs/" + i;
+                writes.add(executor.submit(() -> {
+                    store.put("email-attachments", key, file, "text/plain");
+                    return null;
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        for (int i = 0; i < 64; i++) {
+            assertThat(read(store.get("email-attachments", "tenants/1/blobs/" + i, 0, -1))).isEqualTo(CONTENT);
+        }
+        double batches = meterRegistry.get("email.blobs.local.fsync.batches").counter().count();
+        double syncs = meterRegistry.get("email.blobs.local.fsyncs").counter().count();
+        assertThat(batches).isPositive().isLessThanOrEqualTo(syncs);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+}
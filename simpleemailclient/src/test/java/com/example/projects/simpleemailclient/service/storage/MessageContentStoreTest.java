@@ -0,0 +1,231 @@
+package com.example.projects.simpleemailclient.service.storage;
+
+import com.example.projects.simpleemailclient.config.MinIOConfig;
+import com.example.projects.simpleemailclient.model.CompressionDictionary;
+import com.example.projects.simpleemailclient.repository.CompressionDictionaryRepository;
+import com.example.projects.simpleemailclient.repository.MessageRepository;
+import com.example.projects.simpleemailclient.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for MessageContentStore, on a LocalBlobStore
+ */
+@ExtendWith(MockitoExtension.class)
+class MessageContentStoreTest {
+
+    @Mock
+    private MinIOConfig minIOConfig;
+
+    @Mock
+    private CompressionDictionaryRepository dictionaryRepository;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @TempDir
+    Path directory;
+
+    private LocalBlobStore blobStore;
+    private SimpleMeterRegistry meterRegistry;
+    private MessageContentStore store;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        blobStore = new LocalBlobStore(directory.resolve("blobs").toString(), false, meterRegistry);
+        store = newStore();
+        lenient().when(minIOConfig.getMessagesBucket()).thenReturn("email-messages");
+        lenient().when(dictionaryRepository.findFirstByTenantIdOrderByIdDesc(anyLong())).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void store_CompressesAndReadsBack() throws Exception {
+        // Given
+        String mime = newsletter(1);
+
+        // When
+        StoredContent stored = store.store(7L, spool(mime));
+
+        // Then
+        assertThat(stored.getPointer()).startsWith("tenants/7/messages/");
+        assertThat(stored.getSizeBytes()).isEqualTo(mime.length());
+        assertThat(stored.getStoredSizeBytes()).isLessThan(stored.getSizeBytes());
+        assertThat(read(store.open(stored.getPointer()))).isEqualTo(mime);
+        assertThat(store.stat(stored.getPointer()).getSize()).isEqualTo(mime.length());
+        assertThat(meterRegistry.get("email.messages.mime.bytes").tag("form", "stored").counter().count())
+            .isEqualTo(stored.getStoredSizeBytes());
+    }
+
+    @Test
+    void openRange_OfCompressedMessage_DecompressesRange() throws Exception {
+        // Given
+        String mime = newsletter(1);
+        StoredContent stored = store.store(7L, spool(mime));
+
+        // When / Then
+        assertThat(read(store.openRange(stored.getPointer(), 100, 50))).isEqualTo(mime.substring(100, 150));
+        assertThat(read(store.openRange(stored.getPointer(), 100, -1))).isEqualTo(mime.substring(100));
+        assertThat(read(store.openRange(stored.getPointer(), mime.length(), 10))).isEmpty();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.transferTo(stored.getPointer(), 10, 20, out);
+        assertThat(out.toString(StandardCharsets.ISO_8859_1)).isEqualTo(mime.substring(10, 30));
+    }
+
+    @Test
+    void open_OfRawObjectStoredBeforeCompression_ReadsItAsIs() throws Exception {
+        // Given
+        String mime = newsletter(1);
+        blobStore.put("email-messages", "legacy", spool(mime), "message/rfc822");
+
+        // When / Then
+        assertThat(read(store.open("legacy"))).isEqualTo(mime);
+        assertThat(read(store.openRange("legacy", 5, 10))).isEqualTo(mime.substring(5, 15));
+        assertThat(store.stat("legacy").getSize()).isEqualTo(mime.length());
+    }
+
+    @Test
+    void store_IncompressibleContent_IsStoredRaw() throws Exception {
+        // Given
+        byte[] noise = new byte[4096];
+        new Random(1).nextBytes(noise);
+        noise[0] = 'X';
+        Path file = Files.write(directory.resolve("noise"), noise);
+
+        // When
+        StoredContent stored = store.store(7L, file);
+
+        // Then
+        assertThat(stored.getStoredSizeBytes()).isEqualTo(noise.length);
+        try (InputStream in = store.open(stored.getPointer())) {
+            assertThat(in.readAllBytes()).isEqualTo(noise);
+        }
+    }
+
+    @Test
+    void trainDictionary_ShrinksLaterMessagesThatStayReadable() throws Exception {
+        // Given
+        List<String> pointers = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            pointers.add(store.store(7L, spool(newsletter(i))).getPointer());
+        }
+        long withoutDictionary = store.store(7L, spool(newsletter(100))).getStoredSizeBytes();
+        when(messageRepository.findRecentMimePointersByTenantId(eq(7L), any(Pageable.class))).thenReturn(pointers);
+        when(dictionaryRepository.save(any(CompressionDictionary.class))).thenAnswer(invocation -> {
+            CompressionDictionary dictionary = invocation.getArgument(0);
+            dictionary.setId(3L);
+            return dictionary;
+        });
+
+        // When
+        boolean trained = store.trainDictionary(7L);
+        StoredContent stored = store.store(7L, spool(newsletter(100)));
+
+        // Then
+        assertThat(trained).isTrue();
+        assertThat(stored.getStoredSizeBytes()).isLessThan(withoutDictionary);
+        assertThat(read(store.open(stored.getPointer()))).isEqualTo(newsletter(100));
+
+        // A node that has not loaded the dictionary yet fetches it by the id in the header
+        ArgumentCaptor<CompressionDictionary> saved = ArgumentCaptor.forClass(CompressionDictionary.class);
+        verify(dictionaryRepository).save(saved.capture());
+        assertThat(saved.getValue().getTenantId()).isEqualTo(7L);
+        when(dictionaryRepository.findById(3L)).thenReturn(Optional.of(saved.getValue()));
+        assertThat(read(newStore().open(stored.getPointer()))).isEqualTo(newsletter(100));
+    }
+
+    @Test
+    void trainDictionary_WithTooFewMessages_DoesNothing() {
+        // Given
+        when(messageRepository.findRecentMimePointersByTenantId(eq(7L), any(Pageable.class)))
+            .thenReturn(List.of("a", "b"));
+
+        // When
+        boolean trained = store.trainDictionary(7L);
+
+        // Then
+        assertThat(trained).isFalse();
+        verify(dictionaryRepository, never()).save(any());
+    }
+
+    @Test
+    void open_WithUnknownDictionary_Fails() throws Exception {
+        // Given
+        byte[] header = new MimeBlobFormat(MimeBlobFormat.CODEC_DEFLATE, 99, 10).encode();
+        blobStore.put("email-messages", "orphaned", Files.write(directory.resolve("orphaned"), header),
+            "application/octet-stream");
+        when(dictionaryRepository.findById(99L)).thenReturn(Optional.empty());
+
+        // When / Then
+        assertThatThrownBy(() -> store.open("orphaned"))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("99");
+    }
+
+    private MessageContentStore newStore() {
+        return new MessageContentStore(blobStore, minIOConfig, dictionaryRepository, messageRepository,
+            userRepository, meterRegistry, true, 6, directory.toString(), 32768, 200, 65536, 50, 30);
+    }
+
+    private Path spool(String mime) throws IOException {
+        return Files.writeString(Files.createTempFile(directory, "raw-", ".eml"), mime, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * The same template each time, with a few personal lines
+     */
+    private static String newsletter(int n) {
+        StringBuilder mime = new StringBuilder()
+            .append("From: Weekly Digest <digest@news.example.com>\r\n")
+            .append("To: reader").append(n).append("@example.org\r\n")
+            .append("Subject: Your weekly digest #").append(n).append("\r\n")
+            .append("Message-ID: <").append(n * 7919).append(".digest@news.example.com>\r\n")
+            .append("List-Unsubscribe: <https://news.example.com/unsubscribe>\r\n")
+            .append("MIME-Version: 1.0\r\n")
+            .append("Content-Type: text/html; charset=UTF-8\r\n")
+            .append("\r\n")
+            .append("<html><head><style>body { font-family: Helvetica, Arial, sans-serif; color: #333; }</style>")
+            .append("</head>\r\n<body>\r\n");
+        for (int i = 0; i < 10; i++) {
+            mime.append("<table class=\"story\" width=\"600\" cellpadding=\"0\" cellspacing=\"0\" border=\"0\">\r\n")
+                .append("<tr><td class=\"headline\">Story ").append(n * 31 + i).append("</td></tr>\r\n")
+                .append("<tr><td class=\"more\"><a href=\"https://news.example.com/read\">Read more</a></td></tr>\r\n")
+                .append("</table>\r\n");
+        }
+        return mime.append("<p class=\"footer\">You receive this because you subscribed at news.example.com.</p>\r\n")
+            .append("<p class=\"footer\">Example News Ltd, 1 Example Street, Example City</p>\r\n")
+            .append("</body></html>\r\n")
+            .toString();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+    }
+}